@@ -40,6 +40,7 @@ from ucl.physiol.neuroconstruct.project import ProjectManager
 
 from ucl.physiol.neuroconstruct.simulation import SimulationData
 from ucl.physiol.neuroconstruct.simulation import SpikeAnalyser
+from ucl.physiol.neuroconstruct.simulation import SpikeTrainMatrix
 
 from ucl.physiol.neuroconstruct.utils.units import UnitConverter
 from ucl.physiol.neuroconstruct.utils import NumberGenerator
@@ -71,6 +72,36 @@ def loadMepFile(mepFile, scale=1):
         else:
             exp_name = line[:-1]
     return spike_times
+
+
+def loadSpikeTrainMatrix(simDir, cellGroup=None, binSize=1, threshold=-20, startTime=0, stopTime=None):
+    # Load the spike trains of all the cells (optionally only those in cellGroup) recorded in
+    # the simulation in simDir into a SpikeTrainMatrix, e.g. for:
+    #     matrix.getPopulationCrossCorrelogram(50)
+    #     matrix.getSlidingSynchrony(times, 5)
+    # Spike times are taken from spike time data stores, or found with the threshold from voltage traces
+    simData = SimulationData(File(simDir))
+    simData.initialise()
+    times = simData.getAllTimes()
+
+    if stopTime is None:
+        stopTime = times[len(times)-1]
+
+    spikeSets = []
+    voltageRefs = []
+    for dataStore in simData.getAllLoadedDataStores():
+        if cellGroup is None or dataStore.getCellGroupName() == cellGroup:
+            if dataStore.isSpikeTimes():
+                # getDataPoints() would give these converted to a continuous trace
+                spikeTimes = dataStore.getRecordedSpikeTimes()
+                spikeSets.append(SpikeAnalyser.getSpikeTimesInRange(spikeTimes, startTime, stopTime, True))
+            elif dataStore.getVariable() == SimPlot.VOLTAGE and not dataStore.isSynapticMechData():
+                voltageRefs.append(dataStore.getCellSegRef())
+
+    if len(voltageRefs) > 0:
+        spikeSets.extend(simData.getSpikeTimes(voltageRefs, threshold, startTime, stopTime))
+
+    return SpikeTrainMatrix(spikeSets, binSize, startTime, stopTime)
                 
     
 
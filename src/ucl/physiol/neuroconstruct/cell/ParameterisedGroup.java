@@ -287,6 +287,68 @@ public class ParameterisedGroup implements Serializable
     }
     
     
+    /**
+     * Evaluates the parameterisation at fractAlong on all the segments in the group in one pass
+     *
+     * @param distancesFromRoot As given by CellTopologyHelper.getDistancesFromRoot(cell), which can be
+     * reused for all groups on the cell
+     * @return Array indexed by segment id, with NaN for segments not in the group
+     */
+    public double[] evaluateAll(Cell cell, float[] distancesFromRoot, float fractAlong) throws ParameterException
+    {
+        double[] values = new double[distancesFromRoot.length];
+        Arrays.fill(values, Double.NaN);
+        
+        if (!metric.equals(Metric.PATH_LENGTH_FROM_ROOT))
+            return values;
+        
+        ArrayList<Segment> segs = cell.getSegmentsInGroup(group);
+        float[] segLens = new float[segs.size()];
+        
+        float minLen = Float.MAX_VALUE;
+        float maxLen = 0;
+        
+        for(int i=0;i<segs.size();i++)
+        {
+            Segment seg = segs.get(i);
+            float start = distancesFromRoot[seg.getSegmentId()];
+            
+            if (start<0)
+                throw new ParameterException("The segment: "+seg+" is not on the cell: "+ cell);
+            
+            segLens[i] = seg.getSegmentLength();
+            
+            if (start < minLen) minLen = start;
+            if (start + segLens[i] > maxLen) maxLen = start + segLens[i];
+        }
+        
+        for(int i=0;i<segs.size();i++)
+        {
+            Segment seg = segs.get(i);
+            float segLen = distancesFromRoot[seg.getSegmentId()] + segLens[i]*fractAlong;
+            double val = Double.NaN;
+            
+            if (proximalPref.equals(ProximalPref.NO_TRANSLATION))
+            {
+                if (distalPref.equals(DistalPref.NO_NORMALISATION))
+                    val = segLen;
+                else if(distalPref.equals(DistalPref.MOST_DIST_AT_1))
+                    val = segLen/maxLen;
+            }
+            else if (proximalPref.equals(ProximalPref.MOST_PROX_AT_0))
+            {
+                if (distalPref.equals(DistalPref.NO_NORMALISATION))
+                    val = segLen - minLen;
+                else if(distalPref.equals(DistalPref.MOST_DIST_AT_1))
+                    val = (segLen - minLen)/(maxLen - minLen);
+            }
+            values[seg.getSegmentId()] = val;
+        }
+        
+        return values;
+    }
+    
+    
     public double getMinValue(Cell cell) throws ParameterException
     {
         if (metric.equals(Metric.PATH_LENGTH_FROM_ROOT))
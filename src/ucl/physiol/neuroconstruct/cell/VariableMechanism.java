@@ -143,6 +143,18 @@ public class VariableMechanism implements Serializable, IMechanism
     {
         return param.evaluateAt(varParamValue);
     }
+    
+    /**
+     * Evaluates the mechanism at the centre of all the segments in the parameterised group in one pass
+     *
+     * @param distancesFromRoot As given by CellTopologyHelper.getDistancesFromRoot(cell), which can be
+     * reused for all mechanisms on the cell
+     * @return Array indexed by segment id, with NaN for segments not in the group
+     */
+    public double[] evaluateAll(Cell cell, ParameterisedGroup pg, float[] distancesFromRoot) throws ParameterException, EquationException
+    {
+        return param.evaluateAll(pg.evaluateAll(cell, distancesFromRoot, 0.5f));
+    }
 
     @Override
     public String toString()
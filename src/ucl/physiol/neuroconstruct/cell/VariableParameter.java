@@ -55,6 +55,23 @@ public class VariableParameter implements Serializable
     
     private Variable parameterisation =  null;
 
+    /*
+     * Expression compiled with the parameterisation in slot 0, followed by the expressionArgs
+     */
+    private transient volatile CompiledExpression compiled = null;
+
+    /*
+     * Per thread buffer for the values passed to the compiled expression, grown as needed
+     */
+    private static final ThreadLocal<double[]> valueBuffer = new ThreadLocal<double[]>()
+    {
+        @Override
+        protected double[] initialValue()
+        {
+            return new double[4];
+        }
+    };
+
     public VariableParameter()
     {
     }
@@ -109,21 +126,92 @@ public class VariableParameter implements Serializable
         
     }
     
-    public double evaluateAt(double paramVal) throws EquationException
+    private CompiledExpression getCompiled() throws EquationException
     {
-        Argument a0 = new Argument(parameterisation.getName(), paramVal);
-        Argument[] evalArgs =  new Argument[1+expressionArgs.size()];
-        evalArgs[0] = a0;
-        
+        CompiledExpression c = compiled;
+        if (c == null || !c.isCurrent() || !hasSlots(c))
+        {
+            c = expression.compile(getAllVariables());
+            compiled = c;
+        }
+        return c;
+    }
+
+    /*
+     * True if the compiled expression still has the parameterisation in slot 0, followed by the
+     * expressionArgs, which may have been renamed or replaced since it was compiled
+     */
+    private boolean hasSlots(CompiledExpression c)
+    {
+        if (c.getNumVariables() != 1+expressionArgs.size() ||
+            !parameterisation.getName().equals(c.getVariableName(0)))
+            return false;
+
         for(int i=0;i<expressionArgs.size();i++)
         {
-            evalArgs[i+1] = expressionArgs.get(i);
+            if (!expressionArgs.get(i).getName().equals(c.getVariableName(i+1)))
+                return false;
         }
+        return true;
+    }
+
+    /*
+     * The buffer for this thread, with the expressionArgs values filled in from slot 1
+     */
+    private double[] getValues()
+    {
+        int numArgs = expressionArgs.size();
+        double[] values = valueBuffer.get();
+        if (values.length < 1+numArgs)
+        {
+            values = new double[1+numArgs];
+            valueBuffer.set(values);
+        }
+        for(int i=0;i<numArgs;i++)
+        {
+            values[i+1] = expressionArgs.get(i).getValue();
+        }
+        return values;
+    }
+    
+    public double evaluateAt(double paramVal) throws EquationException
+    {
+        CompiledExpression c = getCompiled();
+        
+        double[] values = getValues();
+        values[0] = paramVal;
         
-        return expression.evaluateAt(evalArgs);
+        return c.evaluate(values);
         
     }
 
+    /**
+     * Evaluates the parameter at each of the values of the parameterisation. NaN values are
+     * passed through without being evaluated
+     */
+    public double[] evaluateAll(double[] paramVals) throws EquationException
+    {
+        CompiledExpression c = getCompiled();
+        
+        double[] values = getValues();
+        
+        double[] results = new double[paramVals.length];
+        
+        for(int j=0;j<paramVals.length;j++)
+        {
+            if (Double.isNaN(paramVals[j]))
+            {
+                results[j] = Double.NaN;
+            }
+            else
+            {
+                values[0] = paramVals[j];
+                results[j] = c.evaluate(values);
+            }
+        }
+        return results;
+    }
+
     @Override
     public boolean equals(Object obj)
     {
@@ -206,6 +294,7 @@ public class VariableParameter implements Serializable
     public void setExpression(EquationUnit expression)
     {
         this.expression = expression;
+        this.compiled = null;
     }
         public ArrayList<Argument> getExpressionArgs()
     {
@@ -215,6 +304,7 @@ public class VariableParameter implements Serializable
     public void setExpressionArgs(ArrayList<Argument> expressionArgs)
     {
         this.expressionArgs = expressionArgs;
+        this.compiled = null;
     }
 
     public Variable getParameterisation()
@@ -225,6 +315,7 @@ public class VariableParameter implements Serializable
     public void setParameterisation(Variable parameterisation)
     {
         this.parameterisation = parameterisation;
+        this.compiled = null;
     }
     
     
@@ -0,0 +1,309 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.cell.converters;
+
+import java.io.*;
+import java.util.zip.*;
+
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * A binary cache of the Cell in a morphology file, stored in ProjectStructure.getMorphCacheDir()
+ * under the user's settings (not in the project, so it isn't versioned or zipped with it),
+ * so that the XML doesn't have to be decoded each time the project is opened.
+ * The cache has a header with the length, last modified time and CRC32 checksum of the
+ * morphology file it was made from, and is ignored when they no longer match. If only the
+ * time has changed (e.g. after a checkout from version control) but the checksum matches,
+ * the cache is still used.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class MorphologyCache
+{
+    private static ClassLogger logger = new ClassLogger("MorphologyCache");
+
+    private static final int MAGIC = 0x4E434D43;
+
+    /*
+     * Increase this when the layout of the cache file changes
+     */
+    public static final int CACHE_VERSION = 1;
+
+    /*
+     * Position of the last modified time of the morphology file in the header
+     */
+    private static final int LAST_MODIFIED_OFFSET = 16;
+
+    private static final int CHECKSUM_BUFFER_SIZE = 65536;
+
+
+    private MorphologyCache()
+    {
+    }
+
+
+    /**
+     * @return the cache file for the morphology file. The hash of the full path keeps apart
+     * the caches of files with the same name in different projects
+     */
+    public static File getCacheFile(File morphFile)
+    {
+        String path = morphFile.getAbsolutePath();
+
+        return new File(ProjectStructure.getMorphCacheDir(),
+                        morphFile.getName() + "_" + Integer.toHexString(path.hashCode())
+                        + ProjectStructure.getMorphCacheFileExtension());
+    }
+
+
+    /**
+     * @return true if there is a cache for the morphology file and it was made from the
+     * current contents of the file
+     */
+    public static boolean isUpToDate(File morphFile)
+    {
+        File cacheFile = getCacheFile(morphFile);
+
+        if (!cacheFile.exists() || !morphFile.exists())
+            return false;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+
+            return checkHeader(in, morphFile, cacheFile);
+        }
+        catch (IOException e)
+        {
+            logger.logComment("Problem reading cache: "+cacheFile+": "+e.getMessage());
+            return false;
+        }
+        finally
+        {
+            close(in);
+        }
+    }
+
+
+    /**
+     * @return the Cell in the cache of the morphology file, or null if there is no up to
+     * date cache for it
+     */
+    public static Cell loadCell(File morphFile)
+    {
+        File cacheFile = getCacheFile(morphFile);
+
+        if (!cacheFile.exists() || !morphFile.exists())
+            return null;
+
+        InputStream in = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(cacheFile));
+
+            if (!checkHeader(new DataInputStream(in), morphFile, cacheFile))
+                return null;
+
+            Cell cell = (Cell)new ObjectInputStream(in).readObject();
+
+            logger.logComment("Loaded "+cell+" from cache: "+cacheFile);
+
+            return cell;
+        }
+        catch (IOException e)
+        {
+            logger.logComment("Problem reading cache: "+cacheFile+": "+e.getMessage());
+        }
+        catch (ClassNotFoundException e)
+        {
+            logger.logComment("Problem reading cache: "+cacheFile+": "+e.getMessage());
+        }
+        catch (ClassCastException e)
+        {
+            logger.logComment("Problem reading cache: "+cacheFile+": "+e.getMessage());
+        }
+        finally
+        {
+            close(in);
+        }
+        return null;
+    }
+
+
+    /**
+     * Stores the Cell which has just been loaded from the morphology file in its cache.
+     * Problems writing the cache (e.g. a read only settings directory) are only logged, as
+     * the morphology file can always be read again.
+     * @return true if the cache was written
+     */
+    public static boolean saveCell(Cell cell, File morphFile)
+    {
+        File cacheFile = getCacheFile(morphFile);
+        File tmpFile = new File(cacheFile.getAbsolutePath()+".tmp");
+
+        cacheFile.getParentFile().mkdirs();
+
+        DataOutputStream out = null;
+        try
+        {
+            long length = morphFile.length();
+            long lastModified = morphFile.lastModified();
+            long checksum = getChecksum(morphFile);
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+            out.writeInt(MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeLong(checksum);
+            out.writeUTF(GeneralProperties.getVersionNumber());
+
+            ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(cell);
+            oos.close();
+            out = null;
+
+            cacheFile.delete();
+
+            if (!tmpFile.renameTo(cacheFile))
+            {
+                logger.logComment("Problem renaming "+tmpFile+" to "+cacheFile);
+                tmpFile.delete();
+                return false;
+            }
+            logger.logComment("Saved "+cell+" in cache: "+cacheFile);
+            return true;
+        }
+        catch (IOException e)
+        {
+            logger.logComment("Problem writing cache: "+cacheFile+": "+e.getMessage());
+            close(out);
+            tmpFile.delete();
+            return false;
+        }
+    }
+
+
+    /*
+     * Reads the header, leaving the stream at the start of the serialised Cell. If the
+     * morphology file has a new time but the same contents the time in the cache is updated.
+     */
+    private static boolean checkHeader(DataInputStream in, File morphFile, File cacheFile) throws IOException
+    {
+        if (in.readInt() != MAGIC || in.readInt() != CACHE_VERSION)
+        {
+            logger.logComment("Cache: "+cacheFile+" has an old format");
+            return false;
+        }
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        long checksum = in.readLong();
+
+        if (!in.readUTF().equals(GeneralProperties.getVersionNumber()))
+        {
+            logger.logComment("Cache: "+cacheFile+" made with a different version of neuroConstruct");
+            return false;
+        }
+
+        if (length != morphFile.length())
+            return false;
+
+        if (lastModified != morphFile.lastModified())
+        {
+            if (checksum != getChecksum(morphFile))
+                return false;
+
+            logger.logComment("Contents of "+morphFile+" unchanged, updating time in cache");
+            updateLastModified(cacheFile, morphFile.lastModified());
+        }
+        return true;
+    }
+
+
+    private static void updateLastModified(File cacheFile, long lastModified)
+    {
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile(cacheFile, "rw");
+            raf.seek(LAST_MODIFIED_OFFSET);
+            raf.writeLong(lastModified);
+        }
+        catch (IOException e)
+        {
+            logger.logComment("Problem updating cache: "+cacheFile+": "+e.getMessage());
+        }
+        finally
+        {
+            close(raf);
+        }
+    }
+
+
+    public static long getChecksum(File file) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CHECKSUM_BUFFER_SIZE];
+
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            int num;
+            while ((num = in.read(buffer)) > 0)
+            {
+                crc.update(buffer, 0, num);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+
+    private static void close(Closeable c)
+    {
+        if (c == null) return;
+        try
+        {
+            c.close();
+        }
+        catch (IOException e)
+        {
+            logger.logComment("Problem closing: "+e.getMessage());
+        }
+    }
+
+}
@@ -150,14 +150,17 @@ public class CellTopologyHelper
             }
 
 
-            logger.logComment(cell.getInstanceName() + " being asked for pre-synaptic point of type " + synapseType +
-                              " among my segments");
+            if (logger.isEnabled())
+            {
+                logger.logComment(cell.getInstanceName() + " being asked for pre-synaptic point of type " + synapseType +
+                                  " among my segments");
 
-            logger.logComment("groupsWithSynapse: "+ groupsWithSynapse);
+                logger.logComment("groupsWithSynapse: "+ groupsWithSynapse);
 
 
-            logger.logComment(cell.getInstanceName() + " being asked for post-synaptic point of type " + synapseType +
-                              " among my segments");
+                logger.logComment(cell.getInstanceName() + " being asked for post-synaptic point of type " + synapseType +
+                                  " among my segments");
+            }
 
             if (allSegments.isEmpty())
             {
@@ -204,7 +207,7 @@ public class CellTopologyHelper
                     }
                 }
 
-                logger.logComment("Have found " + idsOfPossibleSegments.size() + " possible segments: " +
+                if (logger.isEnabled()) logger.logComment("Have found " + idsOfPossibleSegments.size() + " possible segments: " +
                                   idsOfPossibleSegments);
 
                 if (idsOfPossibleSegments.isEmpty())
@@ -220,7 +223,7 @@ public class CellTopologyHelper
                     float length = segment.getSegmentLength();
                     lensOfPossibleSegments.setElementAt(length, o);
 
-                    logger.logComment("Looking at segment: " + segment + ", id: " + nextId + ", length: " + length);
+                    if (logger.isEnabled()) logger.logComment("Looking at segment: " + segment + ", id: " + nextId + ", length: " + length);
                     totalLengthOfValidSegments += length;
                 }
                 
@@ -252,7 +255,7 @@ public class CellTopologyHelper
         
             float chosenDistAlongAll = totalLengthOfValidSegments * (ProjectManager.getRandomGenerator().nextFloat());
 
-            logger.logComment("Total length: " + totalLengthOfValidSegments +
+            if (logger.isEnabled()) logger.logComment("Total length: " + totalLengthOfValidSegments +
                               ", chosen point :" + chosenDistAlongAll + " along...");
 
             float distChecked = 0;
@@ -394,10 +397,13 @@ public class CellTopologyHelper
             }
 
 
-            logger.logComment(cell.getInstanceName() + " being asked for pre-synaptic point of type " + typesInfo +
-                              " among my segments");
+            if (logger.isEnabled())
+            {
+                logger.logComment(cell.getInstanceName() + " being asked for pre-synaptic point of type " + typesInfo +
+                                  " among my segments");
 
-            logger.logComment("groupsWithSynapse: "+ groupsWithSynapse);
+                logger.logComment("groupsWithSynapse: "+ groupsWithSynapse);
+            }
 
 
             // Quick return if just a 1 seg cell 
@@ -432,7 +438,7 @@ public class CellTopologyHelper
                         {
                             if (groupsWithSynapse.contains( (String) groups.elementAt(j)))
                             {
-                                logger.logComment("seg is candidate: "+ possSeg);
+                                if (logger.isEnabled()) logger.logComment("seg is candidate: "+ possSeg);
                                 if (!idsOfPossibleSegments.contains(possSeg.getSegmentId()))
                                 {
                                     idsOfPossibleSegments.add(possSeg.getSegmentId());
@@ -442,12 +448,12 @@ public class CellTopologyHelper
                     }
                     else
                     {
-                       logger.logComment("seg is not candidate: "+ possSeg);
+                       if (logger.isEnabled()) logger.logComment("seg is not candidate: "+ possSeg);
                     }
                 }
             }
 
-            logger.logComment("Have found " + idsOfPossibleSegments.size() + " possible segments: " +
+            if (logger.isEnabled()) logger.logComment("Have found " + idsOfPossibleSegments.size() + " possible segments: " +
                               idsOfPossibleSegments);
 
             if (idsOfPossibleSegments.isEmpty())
@@ -463,7 +469,7 @@ public class CellTopologyHelper
                 float length = segment.getSegmentLength();
                 lensOfPossibleSegments.setElementAt(length, o);
                 
-                logger.logComment("Looking at segment: " + segment + ", id: " + nextId + ", length: " + length);
+                if (logger.isEnabled()) logger.logComment("Looking at segment: " + segment + ", id: " + nextId + ", length: " + length);
                 totalLengthOfValidSegments += length;
             }
         
@@ -496,7 +502,7 @@ public class CellTopologyHelper
 
         float chosenDistAlongAll = totalLengthOfValidSegments * (ProjectManager.getRandomGenerator().nextFloat());
 
-        logger.logComment("Total length: " + totalLengthOfValidSegments +
+        if (logger.isEnabled()) logger.logComment("Total length: " + totalLengthOfValidSegments +
                           ", chosen point :" + chosenDistAlongAll + " along...");
 
         float distChecked = 0;
@@ -537,12 +543,38 @@ public class CellTopologyHelper
 
     }
     
-    private static int[] cachedAllCellIds = null;
-    private static String cachedFinishCellGroup = null;
-    private static MaxMinLength cachedMaxMinLength = null;
-    private static Point3f cachedStartPos = null;
-    private static String cachedStartCellType = null;
-    private static RectangularBox cachedCellBoundBox = null;
+    /*
+     * Cached results of getAllowedPostCellIds(). Each is only ever replaced as a whole,
+     * so that net conns being generated on different threads see consistent values.
+     */
+    private static volatile AllowedCellIdsCache cachedAllowedCellIds = null;
+    private static volatile CellBoundBoxCache cachedCellBoundBox = null;
+
+    private static class AllowedCellIdsCache
+    {
+        final String finishCellGroup;
+        final int[] allCellIds;
+
+        AllowedCellIdsCache(String finishCellGroup, int[] allCellIds)
+        {
+            this.finishCellGroup = finishCellGroup;
+            this.allCellIds = allCellIds;
+        }
+    }
+
+    private static class CellBoundBoxCache
+    {
+        final String startCellType;
+        final MaxMinLength maxMin;
+        final RectangularBox cellBox;
+
+        CellBoundBoxCache(String startCellType, MaxMinLength maxMin, RectangularBox cellBox)
+        {
+            this.startCellType = startCellType;
+            this.maxMin = maxMin;
+            this.cellBox = cellBox;
+        }
+    }
     
     
     public static int[] getAllowedPostCellIds(Cell startCell,
@@ -550,15 +582,18 @@ public class CellTopologyHelper
                                               Point3f startCellPos, 
                                               MaxMinLength maxMin, 
                                               String finishCellGroup, 
-                                              ArrayList<PositionRecord> finishPosRecords)
+                                              List<PositionRecord> finishPosRecords)
     {
         boolean maxMinIncludesAll = maxMin.getMinLength()==0 && maxMin.getMaxLength()==Float.MAX_VALUE;
         
+        AllowedCellIdsCache allowedCache = cachedAllowedCellIds;
+
         if (maxMinIncludesAll &&
-            finishCellGroup.equals(cachedFinishCellGroup) &&
-            finishPosRecords.size() == cachedAllCellIds.length)
+            allowedCache != null &&
+            finishCellGroup.equals(allowedCache.finishCellGroup) &&
+            finishPosRecords.size() == allowedCache.allCellIds.length)
         {
-            return cachedAllCellIds;
+            return allowedCache.allCellIds;
         }
         
         int[] allowedFinishCells;
@@ -575,10 +610,12 @@ public class CellTopologyHelper
         else
         {
             RectangularBox cellBox;
+
+            CellBoundBoxCache boxCache = cachedCellBoundBox;
             
-            if(cachedStartCellType!=null && cachedStartCellType.equals(startCell.getInstanceName()))
+            if(boxCache!=null && boxCache.startCellType.equals(startCell.getInstanceName()) && boxCache.maxMin.equals(maxMin))
             {
-                cellBox = cachedCellBoundBox;
+                cellBox = boxCache.cellBox;
             }
             else
             {
@@ -638,8 +675,9 @@ public class CellTopologyHelper
                     cellBox.setParameter(RectangularBox.HEIGHT_PARAM, Float.MAX_VALUE);
                 }               
 
-                cachedStartCellType = startCell.getInstanceName();
-                cachedCellBoundBox = cellBox;
+                MaxMinLength maxMinCopy = new MaxMinLength(maxMin.getMaxLength(), maxMin.getMinLength(),
+                                                           maxMin.getDimension(), maxMin.getNumberAttempts());
+                cachedCellBoundBox = new CellBoundBoxCache(startCell.getInstanceName(), maxMinCopy, cellBox);
             }
                 
             int[] tempPosRecs = new int[finishPosRecords.size()]; // set to max temp
@@ -669,20 +707,18 @@ public class CellTopologyHelper
                 }
                 else
                 {
-                    logger.logComment("No good point: "+pos+" for start cell: "+ startCellPos);
+                    if (logger.isEnabled()) logger.logComment("No good point: "+pos+" for start cell: "+ startCellPos);
                 }
             }
 
             allowedFinishCells = new int[countGoodPos];
             System.arraycopy(tempPosRecs, 0, allowedFinishCells, 0, countGoodPos);
-            logger.logComment("Total finish cells: "+ finishPosRecords.size() +", but returning only: "+ countGoodPos+", box: "+ connBoundBox);
+            if (logger.isEnabled()) logger.logComment("Total finish cells: "+ finishPosRecords.size() +", but returning only: "+ countGoodPos+", box: "+ connBoundBox);
                         
         }
         
         
-        cachedFinishCellGroup = finishCellGroup;
-        cachedAllCellIds = allowedFinishCells;
-        cachedMaxMinLength = maxMin;
+        cachedAllowedCellIds = new AllowedCellIdsCache(finishCellGroup, allowedFinishCells);
         
         return allowedFinishCells;
     }
@@ -751,19 +787,19 @@ public class CellTopologyHelper
     {
         Vector allSegments = cell.getAllSegments();
         Vector<Segment> secSegments = new Vector<Segment>();
-        logger.logComment("Getting all segments in section: "+ section);
+        if (logger.isEnabled()) logger.logComment("Getting all segments in section: "+ section);
         for (int j = 0; j < allSegments.size(); j++)
         {
                 Segment nextSeg = (Segment)allSegments.elementAt(j);
                 if (nextSeg.getSection().equals(section))
                 {
-                    logger.logComment("Found segment: "+ nextSeg);
+                    if (logger.isEnabled()) logger.logComment("Found segment: "+ nextSeg);
                     boolean problem = false;
                     //secSegments.add(nextSeg);
                     for (int k = 0; k < secSegments.size();k++)
                     {
                         Segment oldSeg = (Segment)allSegments.elementAt(k);
-                    logger.logComment("Checking old seg: : "+ oldSeg);
+                    if (logger.isEnabled()) logger.logComment("Checking old seg: : "+ oldSeg);
 
                         if (oldSeg.getParentSegment()!=null && oldSeg.getParentSegment().equals(nextSeg))
                         {
@@ -858,7 +894,7 @@ public class CellTopologyHelper
                                                      Section section,
                                                      float displacementAlong)
     {
-        logger.logComment("Going to convert point on "
+        if (logger.isEnabled()) logger.logComment("Going to convert point on "
                           + cell.getInstanceName()
                           + ", section: "
                           + section
@@ -869,7 +905,7 @@ public class CellTopologyHelper
 
         float totalLengthParentSection = getSectionLength(cell, section);
 
-        logger.logComment("totalLengthParentSection: "+ totalLengthParentSection);
+        if (logger.isEnabled()) logger.logComment("totalLengthParentSection: "+ totalLengthParentSection);
 
         if (totalLengthParentSection==0)
         {
@@ -888,7 +924,7 @@ public class CellTopologyHelper
         {
             Segment nextSeg = (Segment) allSegsInSection.elementAt(count);
             count++;
-            logger.logComment("Old totalSoFar: "+totalSoFar);
+            if (logger.isEnabled()) logger.logComment("Old totalSoFar: "+totalSoFar);
 
             if(totalSoFar + nextSeg.getSegmentLength()>= lengthToGo)
             {
@@ -896,14 +932,14 @@ public class CellTopologyHelper
                 float distAlongSeg = lengthToGo - totalSoFar;
                 fractionAlongSegment = distAlongSeg/nextSeg.getSegmentLength();
 
-                logger.logComment("fractionAlongSegment: "+fractionAlongSegment);
+                if (logger.isEnabled()) logger.logComment("fractionAlongSegment: "+fractionAlongSegment);
 
 
                 segmentContainingPoint = nextSeg;
             }
 
             totalSoFar = totalSoFar + nextSeg.getSegmentLength();
-            logger.logComment("New totalSoFar: "+totalSoFar);
+            if (logger.isEnabled()) logger.logComment("New totalSoFar: "+totalSoFar);
         }
 
         Point3f point = convertSegmentDisplacement(cell,
@@ -987,78 +1023,89 @@ public class CellTopologyHelper
             totalLengthSection = totalLengthSection  + nextSeg.getSegmentLength();
         }
 
-        logger.logComment("totalLengthSection: "+ totalLengthSection);
+        if (logger.isEnabled()) logger.logComment("totalLengthSection: "+ totalLengthSection);
 
         return totalLengthSection;
     }
 
 
     /**
-     * Search through the segments on a cell looking for the one which is
-     * closest to the external point in question
+     * Gets the segments on the cell where synapses of all the given types are allowed, and which
+     * are in the regions (axons, soma, dendrites) allowed by pp for a pre or post synaptic connection.
+     * The segments are in the same order as in cell.getAllSegments()
      *
      * @param cell The cell to check
      * @param synapseTypes String[] with synapse type names
-     * @param extPoint the external point
-     * @return The location of the synapse or null if not supported
-
+     * @param pp The allowed pre/post synaptic locations
+     * @param postSynaptic true if the locations are for the post synaptic side of the connection
      */
-    public static PostSynapticTerminalLocation getClosestPostSynapticTerminalLocation(Cell cell,
-                                                                                      String[] synapseTypes, 
-                                                                                      Point3f extPoint,
-                                                                                      PrePostAllowedLocs pp)
+    public static ArrayList<Segment> getPossibleSynapticSegments(Cell cell,
+                                                                 String[] synapseTypes,
+                                                                 PrePostAllowedLocs pp,
+                                                                 boolean postSynaptic)
     {
-        Vector allSegments = cell.getAllSegments();
-        Vector groupsWithSynapse = cell.getGroupsWithSynapse(synapseTypes[0]); // get first lot
+        // A copy, so the groups stored in the cell aren't changed
+        Vector<String> groupsWithSynapse = new Vector<String>(cell.getGroupsWithSynapse(synapseTypes[0]));
 
-        if (synapseTypes.length > 1)
+        for (int remainingSynIndex = 1; remainingSynIndex < synapseTypes.length; remainingSynIndex++)
         {
-            for (int remainingSynIndex = 0; remainingSynIndex < synapseTypes.length; remainingSynIndex++)
-            {
-                Vector remainingSynGroups = cell.getGroupsWithSynapse(synapseTypes[remainingSynIndex]);
-
-                for (int includedGroups = 0; includedGroups < groupsWithSynapse.size(); includedGroups++)
-                {
-                    String includedGroup = (String) groupsWithSynapse.elementAt(includedGroups);
-                    if (!remainingSynGroups.contains(includedGroup))
-                        groupsWithSynapse.remove(includedGroup);
-                }
-            }
+            groupsWithSynapse.retainAll(cell.getGroupsWithSynapse(synapseTypes[remainingSynIndex]));
         }
 
+        boolean axonsAllowed = postSynaptic ? pp.isAxonsAllowedPost() : pp.isAxonsAllowedPre();
+        boolean somaAllowed = postSynaptic ? pp.isSomaAllowedPost() : pp.isSomaAllowedPre();
+        boolean dendritesAllowed = postSynaptic ? pp.isDendritesAllowedPost() : pp.isDendritesAllowedPre();
 
-        logger.logComment(cell.getInstanceName()
-                          + " being asked for synapse of type "
-                          +  synapseTypes[0]
-                          + ", etc among my dendritic segments, closest to: "
-                          + Utils3D.getShortStringDesc(extPoint));
-
-        Vector<Integer> idsOfPossibleSegments = new Vector<Integer>();
+        ArrayList<Segment> possibleSegments = new ArrayList<Segment>();
 
-        for (int i = 0; i < allSegments.size(); i++)
+        for (Segment seg: cell.getAllSegments())
         {
-            Segment dend = (Segment) allSegments.elementAt(i);
-            Vector groups = dend.getGroups();
-            if ((pp.isAxonsAllowedPost() && groups.contains(Section.AXONAL_GROUP)) || 
-                (pp.isSomaAllowedPost() && groups.contains(Section.SOMA_GROUP)) ||
-                (pp.isDendritesAllowedPost() && groups.contains(Section.DENDRITIC_GROUP)))
+            Vector<String> groups = seg.getGroups();
+            if ((axonsAllowed && groups.contains(Section.AXONAL_GROUP)) ||
+                (somaAllowed && groups.contains(Section.SOMA_GROUP)) ||
+                (dendritesAllowed && groups.contains(Section.DENDRITIC_GROUP)))
             {
-                for (int j = 0; j < groups.size(); j++)
+                for (String group: groups)
                 {
-                    if (groupsWithSynapse.contains( (String) groups.elementAt(j)))
+                    if (groupsWithSynapse.contains(group))
                     {
-                        if (!idsOfPossibleSegments.contains(dend.getSegmentId()))
-                        {
-                            idsOfPossibleSegments.add(dend.getSegmentId());
-                        }
+                        possibleSegments.add(seg);
+                        break;
                     }
                 }
             }
         }
 
-        logger.logComment("Have found " + idsOfPossibleSegments.size() + " possible segments");
+        return possibleSegments;
+    }
+
+
+    /**
+     * Search through the segments on a cell looking for the one which is
+     * closest to the external point in question
+     *
+     * @param cell The cell to check
+     * @param synapseTypes String[] with synapse type names
+     * @param extPoint the external point
+     * @return The location of the synapse or null if not supported
+
+     */
+    public static PostSynapticTerminalLocation getClosestPostSynapticTerminalLocation(Cell cell,
+                                                                                      String[] synapseTypes, 
+                                                                                      Point3f extPoint,
+                                                                                      PrePostAllowedLocs pp)
+    {
+        if (logger.isEnabled()) logger.logComment(cell.getInstanceName()
+                          + " being asked for synapse of type "
+                          +  synapseTypes[0]
+                          + ", etc among my dendritic segments, closest to: "
+                          + Utils3D.getShortStringDesc(extPoint));
+
+        ArrayList<Segment> possibleSegments = getPossibleSynapticSegments(cell, synapseTypes, pp, true);
+
+        if (logger.isEnabled()) logger.logComment("Have found " + possibleSegments.size() + " possible segments");
 
-        if (idsOfPossibleSegments.isEmpty())
+        if (possibleSegments.isEmpty())
         {
             return null;
         }
@@ -1068,13 +1115,11 @@ public class CellTopologyHelper
         int idOfBest = -1;
         float distAlongBest = -1f;
 
-        for (int o = 0; o < idsOfPossibleSegments.size(); o++)
+        for (Segment segment: possibleSegments)
         {
-            int nextId = idsOfPossibleSegments.elementAt(o).intValue();
-            logger.logComment("Checking nextId: " + nextId);
-            Segment segment = cell.getSegmentWithId(nextId);
+            int nextId = segment.getSegmentId();
 
-            logger.logComment("Checking segment: " + segment);
+            if (logger.isEnabled()) logger.logComment("Checking segment: " + segment);
 
             Point3f closestPoint = getClosestPointOnLine(segment.getStartPointPosition(),
                                                             segment.getEndPointPosition(),
@@ -1093,7 +1138,7 @@ public class CellTopologyHelper
                     = (segment.getStartPointPosition().distance(closestPoint)) /
                     (segment.getStartPointPosition().distance(segment.getEndPointPosition()));
 
-                logger.logComment("Best so far: "
+                if (logger.isEnabled()) logger.logComment("Best so far: "
                                   + bestDistanceSoFar
                                   + " idOfBest: "
                                   + idOfBest
@@ -1107,7 +1152,7 @@ public class CellTopologyHelper
         PostSynapticTerminalLocation postSynTerm
             = new PostSynapticTerminalLocation(idOfBest, distAlongBest);
 
-        logger.logComment("Returning: " + postSynTerm);
+        if (logger.isEnabled()) logger.logComment("Returning: " + postSynTerm);
 
         return postSynTerm;
 
@@ -1128,58 +1173,17 @@ public class CellTopologyHelper
                                                                                     Point3f extPoint,
                                                                                     PrePostAllowedLocs pp)
     {
-        Vector allSegments = cell.getAllSegments();
-
-        Vector groupsWithSynapse = cell.getGroupsWithSynapse(synapseTypes[0]); // get first lot
-
-        if (synapseTypes.length > 1)
-        {
-            for (int remainingSynIndex = 0; remainingSynIndex < synapseTypes.length; remainingSynIndex++)
-            {
-                Vector remainingSynGroups = cell.getGroupsWithSynapse(synapseTypes[remainingSynIndex]);
-
-                for (int includedGroups = 0; includedGroups < groupsWithSynapse.size(); includedGroups++)
-                {
-                    String includedGroup = (String) groupsWithSynapse.elementAt(includedGroups);
-                    if (!remainingSynGroups.contains(includedGroup))
-                        groupsWithSynapse.remove(includedGroup);
-                }
-            }
-        }
-
-
-        logger.logComment(cell.getInstanceName()
+        if (logger.isEnabled()) logger.logComment(cell.getInstanceName()
                           + " being asked for synapse of type "
                           + synapseTypes[0]
                           + ", etc. among my axonal segments, closest to: "
                           + Utils3D.getShortStringDesc(extPoint));
 
-        Vector<Integer> idsOfPossibleSegments = new Vector<Integer>();
+        ArrayList<Segment> possibleSegments = getPossibleSynapticSegments(cell, synapseTypes, pp, false);
 
-        for (int i = 0; i < allSegments.size(); i++)
-        {
-            Segment axon = (Segment) allSegments.elementAt(i);
-            Vector groups = axon.getGroups();
-            if ((pp.isAxonsAllowedPre() && groups.contains(Section.AXONAL_GROUP)) || 
-                (pp.isSomaAllowedPre() && groups.contains(Section.SOMA_GROUP)) ||
-                (pp.isDendritesAllowedPre() && groups.contains(Section.DENDRITIC_GROUP)))
-            {
-                for (int j = 0; j < groups.size(); j++)
-                {
-                    if (groupsWithSynapse.contains( (String) groups.elementAt(j)))
-                    {
-                        if (!idsOfPossibleSegments.contains(axon.getSegmentId()))
-                        {
-                            idsOfPossibleSegments.add(axon.getSegmentId());
-                        }
-                    }
-                }
-            }
-        }
-
-        logger.logComment("Have found " + idsOfPossibleSegments.size() + " possible segments");
+        if (logger.isEnabled()) logger.logComment("Have found " + possibleSegments.size() + " possible segments");
 
-        if (idsOfPossibleSegments.isEmpty())
+        if (possibleSegments.isEmpty())
         {
             return null;
         }
@@ -1189,12 +1193,11 @@ public class CellTopologyHelper
         int idOfBest = -1;
         float distAlongBest = -1f;
 
-        for (int o = 0; o < idsOfPossibleSegments.size(); o++)
+        for (Segment segment: possibleSegments)
         {
-            int nextId = idsOfPossibleSegments.elementAt(o).intValue();
-            Segment segment = cell.getSegmentWithId(nextId);
+            int nextId = segment.getSegmentId();
 
-            logger.logComment("Checking segment: " + segment);
+            if (logger.isEnabled()) logger.logComment("Checking segment: " + segment);
 
             Point3f closestPoint = getClosestPointOnLine(segment.getStartPointPosition(),
                                                             segment.getEndPointPosition(),
@@ -1213,7 +1216,7 @@ public class CellTopologyHelper
                     = (segment.getStartPointPosition().distance(closestPoint)) /
                     (segment.getStartPointPosition().distance(segment.getEndPointPosition()));
 
-                logger.logComment("Best so far: "
+                if (logger.isEnabled()) logger.logComment("Best so far: "
                                   + bestDistanceSoFar
                                   + " idOfBest: "
                                   + idOfBest
@@ -1250,7 +1253,7 @@ public class CellTopologyHelper
         PreSynapticTerminalLocation preSynTerm
             = new PreSynapticTerminalLocation(idOfBest, distAlongBest);
 
-        logger.logComment("Returning: " + preSynTerm);
+        if (logger.isEnabled()) logger.logComment("Returning: " + preSynTerm);
 
         return preSynTerm;
     }
@@ -1268,7 +1271,7 @@ public class CellTopologyHelper
                                                             segLocation.getSegmentId(),
                                                             segLocation.getFractAlong());
 
-        logger.logComment("relativePointSegLoc: " +
+        if (logger.isEnabled()) logger.logComment("relativePointSegLoc: " +
                           Utils3D.getShortStringDesc(relativePointSegLoc));
 
         Point3f cellPosition
@@ -1279,7 +1282,7 @@ public class CellTopologyHelper
 
         segLocAbsolutePosition.add(relativePointSegLoc);
 
-        logger.logComment("segLocAbsolutePosition: " +
+        if (logger.isEnabled()) logger.logComment("segLocAbsolutePosition: " +
                           Utils3D.getShortStringDesc(segLocAbsolutePosition));
 
         return segLocAbsolutePosition;
@@ -1291,7 +1294,7 @@ public class CellTopologyHelper
      * Gets the closest point on the line between startPoint and endPoint, from extPoint
      * Note not just perpendicularly closest, has to be to point ON the line
      */
-    private static Point3f getClosestPointOnLine(Point3f startPoint, Point3f endPoint, Point3f extPoint)
+    static Point3f getClosestPointOnLine(Point3f startPoint, Point3f endPoint, Point3f extPoint)
     {
         if (startPoint.equals(endPoint)) return startPoint;
 
@@ -1299,7 +1302,7 @@ public class CellTopologyHelper
         float lengthToStartSquared = extPoint.distanceSquared(startPoint);
         float lengthToEndSquared = extPoint.distanceSquared(endPoint);
 
-        logger.logComment("lengthSquared: " + lengthSquared +
+        if (logger.isEnabled()) logger.logComment("lengthSquared: " + lengthSquared +
                           ", lengthToStartSquared: " + lengthToStartSquared +
                           ", lengthToEndSquared: " + lengthToEndSquared);
 
@@ -1432,7 +1435,7 @@ public class CellTopologyHelper
                                                      SynapticConnectionEndPoint targetEndPoint,
                                                      String dimension)
     {
-        logger.logComment("getSynapticEndpointsDistance called for: "
+        if (logger.isEnabled()) logger.logComment("getSynapticEndpointsDistance called for: "
                           + "sourceCellGroup: " + sourceCellGroup
                           + ", sourceEndPoint: " + sourceEndPoint
                           + ", targetCellGroup: " + targetCellGroup
@@ -1482,7 +1485,7 @@ public class CellTopologyHelper
         // should be r, but just in case something else is entered...
         else dist = targetSynapsePosition.distance(sourceSynapsePosition);
 
-        logger.logComment("Dist between: " + targetSynapsePosition+" and "+sourceSynapsePosition
+        if (logger.isEnabled()) logger.logComment("Dist between: " + targetSynapsePosition+" and "+sourceSynapsePosition
                           +" in dimension: "+ dimension+" = "+dist);
 
         return dist;
@@ -1494,20 +1497,23 @@ public class CellTopologyHelper
      */
     public static Cell translateAllPositions(Cell oldCell, Vector3f translation)
     {
-        logger.logComment("Moving cell: "+ oldCell.getInstanceName() + " with first soma section: ");
-        logger.logComment(oldCell.getFirstSomaSegment().toString());
-        logger.logComment("with translation: "+ translation);
+        if (logger.isEnabled())
+        {
+            logger.logComment("Moving cell: "+ oldCell.getInstanceName() + " with first soma section: ");
+            logger.logComment(oldCell.getFirstSomaSegment().toString());
+            logger.logComment("with translation: "+ translation);
+        }
 
         Vector allSegments = oldCell.getAllSegments();
 
         for (int i = 0; i < allSegments.size(); i++)
         {
             Segment seg = (Segment)allSegments.elementAt(i);
-            logger.logComment("Segment: "+ seg+", --- "+(seg.getEndPointPositionY())+" = "+(translation.y) +" = "+(seg.getEndPointPositionY()+translation.y));
+            if (logger.isEnabled()) logger.logComment("Segment: "+ seg+", --- "+(seg.getEndPointPositionY())+" = "+(translation.y) +" = "+(seg.getEndPointPositionY()+translation.y));
             seg.setEndPointPositionX(seg.getEndPointPositionX()+translation.x);
             seg.setEndPointPositionY(seg.getEndPointPositionY()+translation.y);
             seg.setEndPointPositionZ(seg.getEndPointPositionZ()+translation.z);
-            logger.logComment("Segment: "+ seg);
+            if (logger.isEnabled()) logger.logComment("Segment: "+ seg);
 
             if (seg.isFirstSectionSegment())
             {
@@ -1534,9 +1540,12 @@ public class CellTopologyHelper
         {
             Segment seg = (Segment)allSegments.elementAt(i);
 
-            logger.logComment("Segment (to move?): "+ seg);
+            if (logger.isEnabled())
+            {
+                logger.logComment("Segment (to move?): "+ seg);
 
-            logger.logComment("so far: "+ sectionMovements);
+                logger.logComment("so far: "+ sectionMovements);
+            }
 
             if (seg.isSomaSegment())
             {
@@ -1553,7 +1562,7 @@ public class CellTopologyHelper
                 if (seg.isFirstSectionSegment())
                 {
 
-                    logger.logComment("---  start of new section: "+ seg.getSection().getSectionName());
+                    if (logger.isEnabled()) logger.logComment("---  start of new section: "+ seg.getSection().getSectionName());
 
                   //  Vector3f secTranslationSoFar
                   //      = new Vector3f((Vector3f)sectionMovements.get(parentSegment.getSection().getSectionName()));
@@ -1568,7 +1577,7 @@ public class CellTopologyHelper
                                       parentStart.z + (seg.getFractionAlongParent()) * (parentEnd.z - parentStart.z));
 
 
-                    logger.logComment("Point currently at: "+ seg.getStartPointPosition()
+                    if (logger.isEnabled()) logger.logComment("Point currently at: "+ seg.getStartPointPosition()
                                       + " is supposed to be at: "+ pointToConnectTo);
 
                     Vector3f extraTranslation
@@ -1576,7 +1585,7 @@ public class CellTopologyHelper
                     extraTranslation.sub(seg.getStartPointPosition());
 
 
-                    logger.logComment("Diff: "+ extraTranslation);
+                    if (logger.isEnabled()) logger.logComment("Diff: "+ extraTranslation);
 
                     //secTranslationSoFar.add(extraTranslation);
                     //Vector3f secTranslationSoFar
@@ -1589,7 +1598,7 @@ public class CellTopologyHelper
                 Vector3f translationForSegment
                         = sectionMovements.get(seg.getSection().getSectionName());
 
-                logger.logComment("translationForSegment: "+ translationForSegment);
+                if (logger.isEnabled()) logger.logComment("translationForSegment: "+ translationForSegment);
 
                 seg.setEndPointPositionX(seg.getEndPointPositionX()+translationForSegment.x);
                 seg.setEndPointPositionY(seg.getEndPointPositionY()+translationForSegment.y);
@@ -1770,7 +1779,7 @@ public class CellTopologyHelper
     {
         // Returns an id:distance hashmap for all the segments in the specified group.
         // Segment distance is defined from proximal end.
-        logger.logComment("Mapping out the distance from soma for all segments in cell " 
+        if (logger.isEnabled()) logger.logComment("Mapping out the distance from soma for all segments in cell " 
                 + cell.getInstanceName() + " which has " + cell.getAllSegments().size() + " segments");
         HashMap<Integer, Float> distances= new HashMap<Integer, Float>();
         for(Segment segment: cell.getSegmentsInGroup(group))
@@ -1821,7 +1830,7 @@ public class CellTopologyHelper
     {
         // Returns an id:distance hashmap for all the segments in the specified group.
         // Segment distance is defined from proximal end.
-        logger.logComment("Mapping out the distance from root for all segments in cell " 
+        if (logger.isEnabled()) logger.logComment("Mapping out the distance from root for all segments in cell " 
                 + cell.getInstanceName() + " which has " + cell.getAllSegments().size() + " segments");
         HashMap<Integer, Float> distances= new HashMap<Integer, Float>();
         for(Segment segment: cell.getSegmentsInGroup(group))
@@ -1852,6 +1861,58 @@ public class CellTopologyHelper
     }
     
     
+    /**
+     * Gets the path length from the root to the proximal end of every segment in the cell in
+     * one pass, rather than walking back to the root for each segment as getLengthFromRoot does.
+     * Worth keeping for the cell while evaluating many segments (e.g. all the inhomogeneous
+     * mechanisms on it)
+     *
+     * @return Array indexed by segment id, with -1 for ids not used in the cell
+     */
+    public static float[] getDistancesFromRoot(Cell cell)
+    {
+        Vector<Segment> segments = cell.getAllSegments();
+
+        int maxId = -1;
+        for (Segment seg: segments)
+        {
+            if (seg.getSegmentId()>maxId) maxId = seg.getSegmentId();
+        }
+
+        float[] distances = new float[maxId+1];
+        boolean[] known = new boolean[maxId+1];
+        java.util.Arrays.fill(distances, -1);
+
+        ArrayList<Segment> toRoot = new ArrayList<Segment>();
+
+        for (Segment seg: segments)
+        {
+            Segment next = seg;
+            toRoot.clear();
+
+            while (next != null && !known[next.getSegmentId()])
+            {
+                toRoot.add(next);
+                next = next.getParentSegment();
+            }
+
+            for (int i = toRoot.size()-1; i >= 0; i--)
+            {
+                Segment child = toRoot.get(i);
+                Segment parent = child.getParentSegment();
+                float dist = 0;
+
+                if (parent != null)
+                    dist = distances[parent.getSegmentId()] + (parent.getSegmentLength() * child.getFractionAlongParent());
+
+                distances[child.getSegmentId()] = dist;
+                known[child.getSegmentId()] = true;
+            }
+        }
+        return distances;
+    }
+    
+    
     public static float getLengthFromRoot(Cell cell, SegmentLocation location)
     {
         Segment seg = cell.getSegmentWithId(location.getSegmentId());
@@ -1868,7 +1929,7 @@ public class CellTopologyHelper
             
             seg = parent;
         }
-        logger.logComment("Length at: "+location+" on cell: "+ cell+" is "+totLen);
+        if (logger.isEnabled()) logger.logComment("Length at: "+location+" on cell: "+ cell+" is "+totLen);
         return totLen;
             
     }
@@ -1959,14 +2020,14 @@ public class CellTopologyHelper
         Vector<Segment> allSegments = cell.getAllSegments();
         Vector<Segment> allChildren = new Vector<Segment>();
 
-        logger.logComment("Get all kids called for: "+ segment);
+        if (logger.isEnabled()) logger.logComment("Get all kids called for: "+ segment);
 
         for (int i = 0; i < allSegments.size(); i++)
         {
             Segment nextSeg = allSegments.elementAt(i);
             if (nextSeg.getParentSegment()!=null && nextSeg.getParentSegment().equals(segment))
             {
-                logger.logComment("A kid is: "+ nextSeg);
+                if (logger.isEnabled()) logger.logComment("A kid is: "+ nextSeg);
                 if (onlySameSection)
                 {
                     if(nextSeg.getSection().equals(segment.getSection()))
@@ -1990,7 +2051,7 @@ public class CellTopologyHelper
      */
     public static float getFractionAlongSection(Cell cell, Segment segment, float fractionAlongSegment)
     {
-        logger.logComment("Getting fract along: " + segment);
+        if (logger.isEnabled()) logger.logComment("Getting fract along: " + segment);
         
         if (cell.getAllSegments().size()==1) return fractionAlongSegment; // as only 1 seg & section
 
@@ -2000,7 +2061,7 @@ public class CellTopologyHelper
 
         float totalLengthSection = getSectionLength(cell, segment.getSection());
 
-        logger.logComment("totalLengthSection: "+totalLengthSection);
+        if (logger.isEnabled()) logger.logComment("totalLengthSection: "+totalLengthSection);
 
         Segment nextParentSegment = segment.getParentSegment();
 
@@ -2008,7 +2069,7 @@ public class CellTopologyHelper
         while (nextParentSegment!=null &&
                nextParentSegment.getSection().equals(segment.getSection()))
         {
-            logger.logComment("Parent length: "+nextParentSegment.getSegmentLength());
+            if (logger.isEnabled()) logger.logComment("Parent length: "+nextParentSegment.getSegmentLength());
             distanceToStartOfSection = distanceToStartOfSection + nextParentSegment.getSegmentLength();
             nextParentSegment = nextParentSegment.getParentSegment();
         }
@@ -2037,7 +2098,7 @@ public class CellTopologyHelper
         float totalLengthSection = getSectionLength(cell, section);
 
 
-        logger.logComment("totalLengthSection: "+totalLengthSection);
+        if (logger.isEnabled()) logger.logComment("totalLengthSection: "+totalLengthSection);
         float totalLengthToPass = totalLengthSection*fractionAlongSection;
         float totalLenPassed = 0;
 
@@ -2049,7 +2110,7 @@ public class CellTopologyHelper
                 float lenAlongSeg = totalLengthToPass - totalLenPassed;
                 float fractAlongSeg = lenAlongSeg/segLength;
                 SegmentLocation loc = new SegmentLocation(seg.getSegmentId(), fractAlongSeg);
-                logger.logComment("loc: " + loc);
+                if (logger.isEnabled()) logger.logComment("loc: " + loc);
                 return loc ;
             }
             totalLenPassed = totalLenPassed + segLength;
@@ -2382,7 +2443,7 @@ public class CellTopologyHelper
 
             if (nextMech instanceof String)
             {
-                logger.logComment("----------   Found old channel mechanism: "+ nextMech);
+                if (logger.isEnabled()) logger.logComment("----------   Found old channel mechanism: "+ nextMech);
                 usingOldMethod = true;
             }
         }
@@ -2392,7 +2453,7 @@ public class CellTopologyHelper
 
             Hashtable chanMechs = cell.getChanMechsVsGroups();
 
-            logger.logComment("Old ChanMechsVsGroups: "+ chanMechs);
+            if (logger.isEnabled()) logger.logComment("Old ChanMechsVsGroups: "+ chanMechs);
             Hashtable<ChannelMechanism, Vector<String>> newChanMechs = new Hashtable<ChannelMechanism, Vector<String>>();
 
             Enumeration enumeration = chanMechs.keys();
@@ -2419,7 +2480,7 @@ public class CellTopologyHelper
                 ChannelMechanism newMech = new ChannelMechanism(oldName, defaultVal);
                 newChanMechs.put(newMech, groups);
             }
-            logger.logComment("Created new ChanMechsVsGroups: "+ newChanMechs);
+            if (logger.isEnabled()) logger.logComment("Created new ChanMechsVsGroups: "+ newChanMechs);
             cell.setChanMechsVsGroups(newChanMechs);
         }
 
@@ -2901,16 +2962,16 @@ public class CellTopologyHelper
 
         Segment nextSeg = cell.getAllSegmentsInSection(sec).getFirst().getParentSegment();
         Section nextSecDown = nextSeg.getSection();
-        logger.logComment("totalDistance: "+totalDistance);
+        if (logger.isEnabled()) logger.logComment("totalDistance: "+totalDistance);
 
         while (cell.getApPropSpeedForSection(nextSecDown)!=null)
         {
-                logger.logComment("nextSecDown: "+nextSecDown);
+                if (logger.isEnabled()) logger.logComment("nextSecDown: "+nextSecDown);
             String propSpeedSeg = nextSecDown.getSectionName();
 
             while (nextSeg.getSection().getSectionName().equals(propSpeedSeg))
             {
-                logger.logComment("nextSeg: "+nextSeg);
+                if (logger.isEnabled()) logger.logComment("nextSeg: "+nextSeg);
                 totalDistance = totalDistance + nextSeg.getSegmentLength();
                 nextSeg = nextSeg.getParentSegment();
             }
@@ -2947,17 +3008,17 @@ public class CellTopologyHelper
         Segment nextSeg = cell.getAllSegmentsInSection(sec).getFirst().getParentSegment();
         Section nextSecDown = nextSeg.getSection();
 
-        logger.logComment("totalTime: "+totalTime);
+        if (logger.isEnabled()) logger.logComment("totalTime: "+totalTime);
 
         while (cell.getApPropSpeedForSection(nextSecDown)!=null)
         {
-            logger.logComment("nextSecDown: "+nextSecDown);
+            if (logger.isEnabled()) logger.logComment("nextSecDown: "+nextSecDown);
             String propSpeedSeg = nextSecDown.getSectionName();
             float speed = cell.getApPropSpeedForSection(nextSecDown).getSpeed();
 
             while (nextSeg.getSection().getSectionName().equals(propSpeedSeg))
             {
-                logger.logComment("nextSeg: "+nextSeg);
+                if (logger.isEnabled()) logger.logComment("nextSeg: "+nextSeg);
                 totalTime = totalTime + (nextSeg.getSegmentLength()/speed);
                 nextSeg = nextSeg.getParentSegment();
             }
@@ -3230,7 +3291,7 @@ public class CellTopologyHelper
 
             ArrayList<String> passChanNames = getPassiveChannels(cell, project);
 
-            logger.logComment("Passive chans: "+ passChanNames);
+            if (logger.isEnabled()) logger.logComment("Passive chans: "+ passChanNames);
 
             Hashtable<ChannelMechanism, Vector<String>> chanMechsVsGroups = cell.getChanMechsVsGroups();
 
@@ -3298,7 +3359,7 @@ public class CellTopologyHelper
                     }
                 }
 
-                logger.logComment("mechs here: "+fixedMechs+", "+varMechs);
+                if (logger.isEnabled()) logger.logComment("mechs here: "+fixedMechs+", "+varMechs);
 
                 //int numPassiveChans = 0;
                 ArrayList<ChannelMechanism> passChansHere = new ArrayList<ChannelMechanism>();
@@ -3518,7 +3579,7 @@ public class CellTopologyHelper
         String LT = "<";
         if (html) LT = "&lt;";
 
-        logger.logComment("Comparing " + cellA + " in" +projectA+ " to " + cellB+" in "+ projectB);
+        if (logger.isEnabled()) logger.logComment("Comparing " + cellA + " in" +projectA+ " to " + cellB+" in "+ projectB);
 
         String projAInfo = projectA==null ? "": " from "+projectA.getProjectFile().getAbsolutePath();
         String projBInfo = projectB==null ? "": " from "+projectB.getProjectFile().getAbsolutePath();
@@ -3630,7 +3691,7 @@ public class CellTopologyHelper
         int minSize = Math.min(segmentsA.size(), segmentsB.size());
 
 
-        logger.logComment("Comparing " + segmentsA.size() + " segs to " +segmentsB.size());
+        if (logger.isEnabled()) logger.logComment("Comparing " + segmentsA.size() + " segs to " +segmentsB.size());
         
         StringBuilder segCompare = new StringBuilder();
 
@@ -3981,7 +4042,7 @@ public class CellTopologyHelper
 
                 if (allChanMechsB.contains(chanMechName))
                 {                    
-                    logger.logComment("Checking "+chanMechName);
+                    if (logger.isEnabled()) logger.logComment("Checking "+chanMechName);
                     
                     String chanComp = compareChannelMech(chanMechName, true, projectA, projectB);                  
                                         
@@ -5038,13 +5099,13 @@ public class CellTopologyHelper
 
         for (int segIndex = 0; segIndex < cell.getAllSegments().size(); segIndex++)
         {
-            logger.logComment("--- Checking segIndex: " + segIndex + ", seg: " + cell.getAllSegments().get(segIndex));
+            if (logger.isEnabled()) logger.logComment("--- Checking segIndex: " + segIndex + ", seg: " + cell.getAllSegments().get(segIndex));
 
             if (cell.getAllSegments().get(segIndex).getParentSegment() != null)
             {
                 int segId = cell.getAllSegments().get(segIndex).getSegmentId();
                 int parentId = cell.getAllSegments().get(segIndex).getParentSegment().getSegmentId();
-                logger.logComment("Checking seg at " + segIndex + ", ID: " + segId
+                if (logger.isEnabled()) logger.logComment("Checking seg at " + segIndex + ", ID: " + segId
                                   + ", parent ID: " + parentId);
 
                 int parentIndex = -1;
@@ -5053,7 +5114,7 @@ public class CellTopologyHelper
                     if (cell.getAllSegments().get(parentSearchIndex).getSegmentId() == parentId)
                     {
                         parentIndex = parentSearchIndex;
-                        logger.logComment("1 Found  a parent: "+cell.getAllSegments().get(parentSearchIndex));
+                        if (logger.isEnabled()) logger.logComment("1 Found  a parent: "+cell.getAllSegments().get(parentSearchIndex));
                     }
                 }
                 if (parentIndex < 0)
@@ -5064,12 +5125,12 @@ public class CellTopologyHelper
                         if (cell.getAllSegments().get(parentSearchIndex).getSegmentId() == parentId)
                         {
                             parentIndex = parentSearchIndex;
-                            logger.logComment("2 Found  a parent: "+cell.getAllSegments().get(parentSearchIndex));
+                            if (logger.isEnabled()) logger.logComment("2 Found  a parent: "+cell.getAllSegments().get(parentSearchIndex));
                         }
                     }
                 }
 
-                logger.logComment("Parent found at: " + parentIndex);
+                if (logger.isEnabled()) logger.logComment("Parent found at: " + parentIndex);
 
                 if (parentIndex > segIndex)
                 {
@@ -5080,14 +5141,14 @@ public class CellTopologyHelper
                         if (cell.getAllSegments().get(searchIndex).getSegmentId() == parentId)
                         {
                             Segment parentSeg = cell.getAllSegments().get(searchIndex);
-                            logger.logComment("Found lost parent at " + searchIndex + ", " + parentSeg);
+                            if (logger.isEnabled()) logger.logComment("Found lost parent at " + searchIndex + ", " + parentSeg);
 
                             cell.getAllSegments().removeElementAt(searchIndex);
                             cell.getAllSegments().insertElementAt(parentSeg, segIndex);
 
                             searchIndex = cell.getAllSegments().size();
 
-                            logger.logComment("  Inserted element which was at " + searchIndex + " in at " + segIndex);
+                            if (logger.isEnabled()) logger.logComment("  Inserted element which was at " + searchIndex + " in at " + segIndex);
                             segIndex = segIndex - 1; // to check the parent's parent...
                         }
                     }
@@ -5102,7 +5163,7 @@ public class CellTopologyHelper
         for (int segIndex = 0; segIndex < cell.getAllSegments().size(); segIndex++)
         {
             Segment seg = cell.getAllSegments().get(segIndex);
-            logger.logComment("Index: " + segIndex + ", seg: " + seg.getSegmentName() + ", ID: " + seg.getSegmentId() +
+            if (logger.isEnabled()) logger.logComment("Index: " + segIndex + ", seg: " + seg.getSegmentName() + ", ID: " + seg.getSegmentId() +
                               ", parent: " + seg.getParentSegment());
         }
 
@@ -5134,7 +5195,7 @@ public class CellTopologyHelper
             somaSeg.setSegmentId(0);
         }
 
-        logger.logComment("-----------    Set first soma seg id to 0 (originally "+orig+")...");
+        if (logger.isEnabled()) logger.logComment("-----------    Set first soma seg id to 0 (originally "+orig+")...");
 
     }
 
@@ -0,0 +1,130 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.cell.utils;
+
+import javax.vecmath.Point3f;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.project.*;
+
+/**
+ * Distances between the synaptic end points on cells in 2 cell groups, calculated from the
+ * cell position arrays in GeneratedCellPositions and the SegmentDisplacementTables of the
+ * cell types, without creating any objects. Gives the same values as
+ * CellTopologyHelper.getSynapticEndpointsDistance(). Should be created after the
+ * cell positions are generated.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class EndpointDistanceCalculator
+{
+    private SegmentDisplacementTable fromTable = null;
+    private SegmentDisplacementTable toTable = null;
+
+    private float[] fromX = null;
+    private float[] fromY = null;
+    private float[] fromZ = null;
+
+    private float[] toX = null;
+    private float[] toY = null;
+    private float[] toZ = null;
+
+    public EndpointDistanceCalculator(Project project,
+                                      String fromCellGroup,
+                                      SegmentDisplacementTable fromTable,
+                                      String toCellGroup,
+                                      SegmentDisplacementTable toTable)
+    {
+        this.fromTable = fromTable;
+        this.toTable = toTable;
+
+        fromX = project.generatedCellPositions.getXPositions(fromCellGroup);
+        fromY = project.generatedCellPositions.getYPositions(fromCellGroup);
+        fromZ = project.generatedCellPositions.getZPositions(fromCellGroup);
+
+        toX = project.generatedCellPositions.getXPositions(toCellGroup);
+        toY = project.generatedCellPositions.getYPositions(toCellGroup);
+        toZ = project.generatedCellPositions.getZPositions(toCellGroup);
+    }
+
+    /**
+     * Gets the distance between the point on a cell in the from cell group and one on a cell in the to cell group
+     *
+     * @param dimension One of MaxMinLength.X_DIR, Y_DIR, Z_DIR, or anything else for the radial distance
+     */
+    public float getDistance(int fromCellNumber,
+                             SegmentLocation fromLocation,
+                             int toCellNumber,
+                             SegmentLocation toLocation,
+                             String dimension)
+    {
+        int fromSegId = fromLocation.getSegmentId();
+        float fromFract = fromLocation.getFractAlong();
+        int toSegId = toLocation.getSegmentId();
+        float toFract = toLocation.getFractAlong();
+
+        if (dimension.equals(MaxMinLength.X_DIR))
+        {
+            return Math.abs((toX[toCellNumber] + toTable.getX(toSegId, toFract))
+                            - (fromX[fromCellNumber] + fromTable.getX(fromSegId, fromFract)));
+        }
+        if (dimension.equals(MaxMinLength.Y_DIR))
+        {
+            return Math.abs((toY[toCellNumber] + toTable.getY(toSegId, toFract))
+                            - (fromY[fromCellNumber] + fromTable.getY(fromSegId, fromFract)));
+        }
+        if (dimension.equals(MaxMinLength.Z_DIR))
+        {
+            return Math.abs((toZ[toCellNumber] + toTable.getZ(toSegId, toFract))
+                            - (fromZ[fromCellNumber] + fromTable.getZ(fromSegId, fromFract)));
+        }
+
+        // should be r, but just in case something else is entered...
+        float dx = (toX[toCellNumber] + toTable.getX(toSegId, toFract)) - (fromX[fromCellNumber] + fromTable.getX(fromSegId, fromFract));
+        float dy = (toY[toCellNumber] + toTable.getY(toSegId, toFract)) - (fromY[fromCellNumber] + fromTable.getY(fromSegId, fromFract));
+        float dz = (toZ[toCellNumber] + toTable.getZ(toSegId, toFract)) - (fromZ[fromCellNumber] + fromTable.getZ(fromSegId, fromFract));
+
+        return (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+    /**
+     * Gets the radial distance between points at fixed offsets (e.g. the centre of the soma) from cells in the 2 groups
+     */
+    public float getOffsetsDistance(int fromCellNumber,
+                                    Point3f fromOffset,
+                                    int toCellNumber,
+                                    Point3f toOffset)
+    {
+        float dx = (fromX[fromCellNumber] + fromOffset.x) - (toX[toCellNumber] + toOffset.x);
+        float dy = (fromY[fromCellNumber] + fromOffset.y) - (toY[toCellNumber] + toOffset.y);
+        float dz = (fromZ[fromCellNumber] + fromOffset.z) - (toZ[toCellNumber] + toOffset.z);
+
+        return (float)Math.sqrt(dx*dx + dy*dy + dz*dz);
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.cell.utils;
+
+import javax.vecmath.Point3f;
+import ucl.physiol.neuroconstruct.cell.*;
+
+/**
+ * The start points of the segments of a cell and the vectors from start to end, indexed
+ * by segment id, so points along the segments can be found without looking up the
+ * Segment or creating a Point3f. Gives the same values as
+ * CellTopologyHelper.convertSegmentDisplacement(). Note: the table isn't updated if the
+ * cell's morphology changes.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class SegmentDisplacementTable
+{
+    private float[] startX = null;
+    private float[] startY = null;
+    private float[] startZ = null;
+
+    private float[] alongX = null;
+    private float[] alongY = null;
+    private float[] alongZ = null;
+
+    public SegmentDisplacementTable(Cell cell)
+    {
+        int maxId = -1;
+        for (Segment seg: cell.getAllSegments())
+        {
+            maxId = Math.max(maxId, seg.getSegmentId());
+        }
+
+        startX = new float[maxId+1];
+        startY = new float[maxId+1];
+        startZ = new float[maxId+1];
+        alongX = new float[maxId+1];
+        alongY = new float[maxId+1];
+        alongZ = new float[maxId+1];
+
+        for (Segment seg: cell.getAllSegments())
+        {
+            int id = seg.getSegmentId();
+            Point3f startPoint = seg.getStartPointPosition();
+            Point3f endPoint = seg.getEndPointPosition();
+
+            startX[id] = startPoint.x;
+            startY[id] = startPoint.y;
+            startZ[id] = startPoint.z;
+
+            alongX[id] = endPoint.x - startPoint.x;
+            alongY[id] = endPoint.y - startPoint.y;
+            alongZ[id] = endPoint.z - startPoint.z;
+        }
+    }
+
+    /**
+     * x coordinate, relative to the cell, of the point displacementAlong (0 for start, 1 for end) along the segment
+     */
+    public float getX(int segmentId, float displacementAlong)
+    {
+        return startX[segmentId] + (displacementAlong * alongX[segmentId]);
+    }
+
+    public float getY(int segmentId, float displacementAlong)
+    {
+        return startY[segmentId] + (displacementAlong * alongY[segmentId]);
+    }
+
+    public float getZ(int segmentId, float displacementAlong)
+    {
+        return startZ[segmentId] + (displacementAlong * alongZ[segmentId]);
+    }
+
+}
@@ -0,0 +1,346 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.cell.utils;
+
+import java.util.ArrayList;
+import javax.vecmath.Point3f;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.j3D.*;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * A bounding volume hierarchy over the segments of a cell on which synapses of
+ * a set of types are allowed, for finding the closest synaptic location to a point.
+ * Gives the same locations as CellTopologyHelper.getClosestPostSynapticTerminalLocation()
+ * and getClosestPreSynapticTerminalLocation(), without checking every segment.
+ *
+ * The index is not changed after it's created, so can be shared between threads
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class SegmentSpatialIndex
+{
+    private static ClassLogger logger = new ClassLogger("SegmentSpatialIndex");
+
+    /*
+     * Max number of segments in a leaf node of the tree
+     */
+    private static final int SEGMENTS_PER_LEAF = 4;
+
+    /*
+     * Slack when discarding nodes, so float rounding in the box distance can't
+     * discard a segment which the linear search would find
+     */
+    private static final float PRUNE_SLACK = 1.0001f;
+
+    private boolean postSynaptic;
+
+    private int numSegments;
+
+    private int[] segmentIds = null;
+    private Point3f[] startPoints = null;
+    private Point3f[] endPoints = null;
+
+    /*
+     * Indices of the segments (in the order of CellTopologyHelper.getPossibleSynapticSegments()),
+     * arranged so each node covers a contiguous range
+     */
+    private int[] order = null;
+
+    /*
+     * Node info. Bounds are min x, y, z, max x, y, z for each node. Leaves have
+     * firstChild = -1 and cover order[rangeStart] to order[rangeEnd-1]
+     */
+    private float[] nodeBounds = null;
+    private int[] firstChild = null;
+    private int[] secondChild = null;
+    private int[] rangeStart = null;
+    private int[] rangeEnd = null;
+    private int numNodes = 0;
+    private int maxDepth = 0;
+
+
+    /**
+     * Creates an index over the segments of the cell where synapses of all of synapseTypes are allowed
+     *
+     * @param cell The cell to index
+     * @param synapseTypes String[] with synapse type names
+     * @param pp The allowed pre/post synaptic locations
+     * @param postSynaptic true if the index will give post synaptic locations, false for pre synaptic ones
+     */
+    public SegmentSpatialIndex(Cell cell,
+                               String[] synapseTypes,
+                               PrePostAllowedLocs pp,
+                               boolean postSynaptic)
+    {
+        this.postSynaptic = postSynaptic;
+
+        ArrayList<Segment> segments = CellTopologyHelper.getPossibleSynapticSegments(cell, synapseTypes, pp, postSynaptic);
+
+        numSegments = segments.size();
+
+        segmentIds = new int[numSegments];
+        startPoints = new Point3f[numSegments];
+        endPoints = new Point3f[numSegments];
+        order = new int[numSegments];
+
+        float[] centres = new float[numSegments*3];
+
+        for (int i = 0; i < numSegments; i++)
+        {
+            Segment seg = segments.get(i);
+            segmentIds[i] = seg.getSegmentId();
+            startPoints[i] = seg.getStartPointPosition();
+            endPoints[i] = seg.getEndPointPosition();
+            order[i] = i;
+
+            centres[i*3] = (startPoints[i].x + endPoints[i].x)/2;
+            centres[i*3+1] = (startPoints[i].y + endPoints[i].y)/2;
+            centres[i*3+2] = (startPoints[i].z + endPoints[i].z)/2;
+        }
+
+        int maxNodes = Math.max(1, 2*numSegments);
+
+        nodeBounds = new float[maxNodes*6];
+        firstChild = new int[maxNodes];
+        secondChild = new int[maxNodes];
+        rangeStart = new int[maxNodes];
+        rangeEnd = new int[maxNodes];
+
+        if (numSegments>0)
+            buildNode(0, numSegments, centres, 1);
+
+        if (logger.isEnabled()) logger.logComment("Created index over "+numSegments+" segments of "
+            +cell.getInstanceName()+" with "+numNodes+" nodes, depth: "+maxDepth);
+    }
+
+
+    public int getNumSegments()
+    {
+        return numSegments;
+    }
+
+    public boolean isPostSynaptic()
+    {
+        return postSynaptic;
+    }
+
+
+    /*
+     * Creates the node covering order[start] to order[end-1], splitting on the
+     * median of the segment centres along the longest axis of the node
+     */
+    private int buildNode(int start, int end, float[] centres, int depth)
+    {
+        int node = numNodes;
+        numNodes++;
+        maxDepth = Math.max(maxDepth, depth);
+
+        rangeStart[node] = start;
+        rangeEnd[node] = end;
+        firstChild[node] = -1;
+        secondChild[node] = -1;
+
+        int b = node*6;
+        for (int i = 0; i < 3; i++)
+        {
+            nodeBounds[b+i] = Float.MAX_VALUE;
+            nodeBounds[b+3+i] = -1*Float.MAX_VALUE;
+        }
+
+        for (int i = start; i < end; i++)
+        {
+            int seg = order[i];
+            includePoint(b, startPoints[seg]);
+            includePoint(b, endPoints[seg]);
+        }
+
+        if (end-start <= SEGMENTS_PER_LEAF)
+            return node;
+
+        int axis = 0;
+        float longest = -1;
+        for (int i = 0; i < 3; i++)
+        {
+            float length = nodeBounds[b+3+i] - nodeBounds[b+i];
+            if (length > longest)
+            {
+                longest = length;
+                axis = i;
+            }
+        }
+
+        int middle = (start+end)/2;
+        selectMedian(start, end-1, middle, axis, centres);
+
+        firstChild[node] = buildNode(start, middle, centres, depth+1);
+        secondChild[node] = buildNode(middle, end, centres, depth+1);
+
+        return node;
+    }
+
+
+    private void includePoint(int b, Point3f point)
+    {
+        nodeBounds[b] = Math.min(nodeBounds[b], point.x);
+        nodeBounds[b+1] = Math.min(nodeBounds[b+1], point.y);
+        nodeBounds[b+2] = Math.min(nodeBounds[b+2], point.z);
+        nodeBounds[b+3] = Math.max(nodeBounds[b+3], point.x);
+        nodeBounds[b+4] = Math.max(nodeBounds[b+4], point.y);
+        nodeBounds[b+5] = Math.max(nodeBounds[b+5], point.z);
+    }
+
+
+    /*
+     * Partially orders order[left] to order[right] so that the entry at index k has the
+     * segment with the k'th smallest centre along the axis, with smaller ones before it
+     */
+    private void selectMedian(int left, int right, int k, int axis, float[] centres)
+    {
+        while (right > left)
+        {
+            float pivot = centres[order[(left+right)/2]*3+axis];
+            int i = left;
+            int j = right;
+            while (i <= j)
+            {
+                while (centres[order[i]*3+axis] < pivot) i++;
+                while (centres[order[j]*3+axis] > pivot) j--;
+                if (i <= j)
+                {
+                    int temp = order[i];
+                    order[i] = order[j];
+                    order[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) right = j;
+            else if (k >= i) left = i;
+            else return;
+        }
+    }
+
+
+    private float distanceSquaredToNode(int node, Point3f point)
+    {
+        int b = node*6;
+        float dx = Math.max(0, Math.max(nodeBounds[b] - point.x, point.x - nodeBounds[b+3]));
+        float dy = Math.max(0, Math.max(nodeBounds[b+1] - point.y, point.y - nodeBounds[b+4]));
+        float dz = Math.max(0, Math.max(nodeBounds[b+2] - point.z, point.z - nodeBounds[b+5]));
+
+        return dx*dx + dy*dy + dz*dz;
+    }
+
+
+    /**
+     * Gets the synaptic location on the indexed segments which is closest to extPoint. If 2 segments
+     * are equally close, the one earliest in the cell's list of segments is used, as in the linear search
+     *
+     * @param extPoint the external point, relative to the cell's origin
+     * @return a PostSynapticTerminalLocation or PreSynapticTerminalLocation, or null if no segments allow the synapses
+     */
+    public SegmentLocation getClosestLocation(Point3f extPoint)
+    {
+        if (numSegments==0)
+            return null;
+
+        float bestDistanceSoFar = Float.MAX_VALUE;
+        int indexOfBest = -1;
+        Point3f closestOfBest = null;
+
+        int[] stack = new int[maxDepth+2];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+
+        while (stackSize>0)
+        {
+            int node = stack[--stackSize];
+
+            if (indexOfBest>=0)
+            {
+                float limit = bestDistanceSoFar*PRUNE_SLACK;
+                if (distanceSquaredToNode(node, extPoint) > limit*limit)
+                    continue;
+            }
+
+            if (firstChild[node]<0)
+            {
+                for (int i = rangeStart[node]; i < rangeEnd[node]; i++)
+                {
+                    int seg = order[i];
+
+                    Point3f closestPoint = CellTopologyHelper.getClosestPointOnLine(startPoints[seg],
+                                                                                    endPoints[seg],
+                                                                                    extPoint);
+                    float dist = extPoint.distance(closestPoint);
+
+                    if (dist < bestDistanceSoFar || (dist == bestDistanceSoFar && seg < indexOfBest))
+                    {
+                        bestDistanceSoFar = dist;
+                        indexOfBest = seg;
+                        closestOfBest = closestPoint;
+                    }
+                }
+            }
+            else
+            {
+                int near = firstChild[node];
+                int far = secondChild[node];
+
+                if (distanceSquaredToNode(far, extPoint) < distanceSquaredToNode(near, extPoint))
+                {
+                    near = secondChild[node];
+                    far = firstChild[node];
+                }
+                // the nearer child is checked first
+                stack[stackSize++] = far;
+                stack[stackSize++] = near;
+            }
+        }
+
+        Point3f start = startPoints[indexOfBest];
+        Point3f end = endPoints[indexOfBest];
+
+        float distAlongBest = 0;
+
+        if (start.distance(end)!=0)
+            distAlongBest = start.distance(closestOfBest) / start.distance(end);
+
+        if (logger.isEnabled()) logger.logComment("Closest to "+Utils3D.getShortStringDesc(extPoint)+" is segment "
+            +segmentIds[indexOfBest]+", "+distAlongBest+" along, at distance "+bestDistanceSoFar);
+
+        if (postSynaptic)
+            return new PostSynapticTerminalLocation(segmentIds[indexOfBest], distAlongBest);
+        else
+            return new PreSynapticTerminalLocation(segmentIds[indexOfBest], distAlongBest);
+    }
+
+}
@@ -79,6 +79,32 @@ public class DataSet
     private boolean xValsStrictlyInc = true;
 
 
+    /**
+     * Min & max of the y values over blocks of points, so long traces can be plotted with a few points per pixel
+     */
+    private MinMaxPyramid yValuesSummary = new MinMaxPyramid();
+
+    /**
+     * Indices of the (first) points with the max/min x & y values, or -1 if none, as found by getMaxX(), etc.
+     */
+    private int maxXIndex = -1;
+    private int minXIndex = -1;
+    private int maxYIndex = -1;
+    private int minYIndex = -1;
+
+    /**
+     * Each x value >= the previous one, and none NaN. Unlike xValsStrictlyInc, checked for every point
+     */
+    private boolean xValsNonDecreasing = true;
+
+    private boolean containsNaNOrInfinity = false;
+
+    /**
+     * The summaries above are updated as points are added, but if points are changed or deleted
+     * they're recalculated when next needed
+     */
+    private boolean summariesStale = false;
+
     /**
      * Only stores String comment against (Integer) point num for points which have one
      */
@@ -134,6 +160,22 @@ public class DataSet
         return nextPoint;
     }
 
+    /**
+     * x value of the point, without creating an array as getPoint() does. Note: index isn't checked against getNumberPoints()
+     */
+    public double getX(int index)
+    {
+        return xValues[index];
+    }
+
+    /**
+     * y value of the point, without creating an array as getPoint() does. Note: index isn't checked against getNumberPoints()
+     */
+    public double getY(int index)
+    {
+        return yValues[index];
+    }
+
     public void updateCommentArray()
     {
         logger.logComment("Making sure the pointHasComment array is up to date...");
@@ -213,6 +255,11 @@ public class DataSet
         xValues[numberValidPoints] = x;
         yValues[numberValidPoints] = y;
 
+        if (!summariesStale)
+        {
+            updateSummaries(numberValidPoints);
+        }
+
         if (numberValidPoints>1)
         {
             boolean inc = xValues[numberValidPoints] > xValues[numberValidPoints - 1];
@@ -239,6 +286,77 @@ public class DataSet
         return this.xValsStrictlyInc;
     }
 
+    /*
+     * Includes the point at index (the last point) in the summaries
+     */
+    private void updateSummaries(int index)
+    {
+        double x = xValues[index];
+        double y = yValues[index];
+
+        // Same comparisons as a scan through all the points
+        if (x > (maxXIndex < 0 ? -1 * Double.MAX_VALUE : xValues[maxXIndex])) maxXIndex = index;
+        if (x < (minXIndex < 0 ? Double.MAX_VALUE : xValues[minXIndex])) minXIndex = index;
+        if (y > (maxYIndex < 0 ? -1 * Double.MAX_VALUE : yValues[maxYIndex])) maxYIndex = index;
+        if (y < (minYIndex < 0 ? Double.MAX_VALUE : yValues[minYIndex])) minYIndex = index;
+
+        if (index == 0)
+            xValsNonDecreasing = !Double.isNaN(x);
+        else
+            xValsNonDecreasing = xValsNonDecreasing && x >= xValues[index - 1];
+
+        if (Double.isNaN(x) || Double.isInfinite(x) || Double.isNaN(y) || Double.isInfinite(y))
+            containsNaNOrInfinity = true;
+
+        yValuesSummary.add(y);
+    }
+
+    private void updateSummariesIfStale()
+    {
+        if (!summariesStale) return;
+
+        maxXIndex = -1;
+        minXIndex = -1;
+        maxYIndex = -1;
+        minYIndex = -1;
+        xValsNonDecreasing = true;
+        containsNaNOrInfinity = false;
+        yValuesSummary.reset();
+
+        for (int i = 0; i < numberValidPoints; i++)
+        {
+            updateSummaries(i);
+        }
+        summariesStale = false;
+    }
+
+    /**
+     * True if each x value is greater than or equal to the previous one (and none are NaN), so
+     * points in an x range can be found with a binary search and getMinMaxY() can be used for plotting
+     */
+    public boolean areXvalsNonDecreasing()
+    {
+        updateSummariesIfStale();
+        return xValsNonDecreasing;
+    }
+
+    public boolean containsNaNOrInfinity()
+    {
+        updateSummariesIfStale();
+        return containsNaNOrInfinity;
+    }
+
+    /**
+     * Puts the min & max y values of points fromIndex to toIndex - 1 into minMax[0] & minMax[1],
+     * in O(log(toIndex - fromIndex)) time. NaN values are ignored, and if there are no other values
+     * minMax[0] will be greater than minMax[1]
+     */
+    public void getMinMaxY(int fromIndex, int toIndex, double[] minMax)
+    {
+        updateSummariesIfStale();
+        yValuesSummary.getMinMax(yValues, fromIndex, toIndex, minMax);
+    }
+
     public void deletePoint(int pointNum) throws DataSetException
     {
         logger.logComment("Deleting point " + pointNum + " from " + numberValidPoints + " valid points");
@@ -258,6 +376,7 @@ public class DataSet
                 }
             }
             numberValidPoints--;
+            summariesStale = true;
 
         }
         else
@@ -349,6 +468,7 @@ public class DataSet
                                                                      + ", only " + numberValidPoints +
                                                                      " points.");
         this.xValues[pointNum] = value;
+        summariesStale = true;
         recheckStrictlyInc();
     }
 
@@ -358,6 +478,7 @@ public class DataSet
                                                                      + ", only " + numberValidPoints +
                                                                      " points.");
         this.yValues[pointNum] = value;
+        summariesStale = true;
     }
 
     public double[] getYValues()
@@ -407,20 +528,9 @@ public class DataSet
     {
         if (getNumberPoints()==0) return new double[]{0,0};
 
-        int index = -1;
-
-        double maxVal = -1* Double.MAX_VALUE;
+        updateSummariesIfStale();
 
-        for (int i = 0; i < numberValidPoints; i++)
-        {
-            double nextVal = xValues[i];
-            if ( nextVal > maxVal)
-            {
-                index = i;
-                maxVal = nextVal;
-            }
-        }
-        return getPoint(index);
+        return getPoint(maxXIndex);
     }
 
 
@@ -428,20 +538,9 @@ public class DataSet
     {
         if (getNumberPoints()==0) return new double[]{0,0};
 
-        int index = -1;
-
-        double minVal = Double.MAX_VALUE;
+        updateSummariesIfStale();
 
-        for (int i = 0; i < numberValidPoints; i++)
-        {
-            double nextVal = xValues[i];
-            if ( nextVal < minVal)
-            {
-                index = i;
-                minVal = nextVal;
-            }
-        }
-        return getPoint(index);
+        return getPoint(minXIndex);
     }
 
 
@@ -449,20 +548,9 @@ public class DataSet
     {
         if (getNumberPoints()==0) return new double[]{0,0};
 
-        int index = -1;
+        updateSummariesIfStale();
 
-        double maxVal = -1* Double.MAX_VALUE;
-
-        for (int i = 0; i < numberValidPoints; i++)
-        {
-            double nextVal = yValues[i];
-            if ( nextVal > maxVal)
-            {
-                index = i;
-                maxVal = nextVal;
-            }
-        }
-        return getPoint(index);
+        return getPoint(maxYIndex);
     }
 
 
@@ -470,20 +558,9 @@ public class DataSet
     {
         if (getNumberPoints()==0) return new double[]{0,0};
 
-        int index = -1;
-
-        double minVal = Double.MAX_VALUE;
+        updateSummariesIfStale();
 
-        for (int i = 0; i < numberValidPoints; i++)
-        {
-            double nextVal = yValues[i];
-            if ( nextVal < minVal)
-            {
-                index = i;
-                minVal = nextVal;
-            }
-        }
-        return getPoint(index);
+        return getPoint(minYIndex);
     }
 
 
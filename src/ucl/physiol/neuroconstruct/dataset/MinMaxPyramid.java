@@ -0,0 +1,170 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.dataset;
+
+import java.util.Arrays;
+
+/**
+ * Min & max of a growing list of values over blocks of 16, 32, 64, ... values, so the min & max
+ * of any range of the values can be found by combining O(log n) blocks. Used to plot long traces
+ * with a few points per pixel. NaN values are ignored.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+class MinMaxPyramid
+{
+    /**
+     * The blocks at level 0 have 2^LEAF_SHIFT values, those at level 1 twice that, etc.
+     */
+    private static final int LEAF_SHIFT = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[][] mins = null;
+    private double[][] maxs = null;
+
+    private int size = 0;
+
+    MinMaxPyramid()
+    {
+        reset();
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    void reset()
+    {
+        mins = new double[][]{new double[INITIAL_CAPACITY]};
+        maxs = new double[][]{new double[INITIAL_CAPACITY]};
+        size = 0;
+    }
+
+    /**
+     * Includes the next value in the summary
+     */
+    void add(double value)
+    {
+        int index = size;
+        size++;
+
+        // A new level each time there are enough values to fill one block of it
+        if ((size >> (LEAF_SHIFT + mins.length)) > 0 && mins.length < 31 - LEAF_SHIFT)
+        {
+            addLevel();
+        }
+
+        for (int level = 0; level < mins.length; level++)
+        {
+            int shift = LEAF_SHIFT + level;
+            int block = index >> shift;
+
+            if (block >= mins[level].length)
+            {
+                mins[level] = Arrays.copyOf(mins[level], mins[level].length * 2);
+                maxs[level] = Arrays.copyOf(maxs[level], maxs[level].length * 2);
+            }
+
+            if ((index & ((1 << shift) - 1)) == 0)
+            {
+                mins[level][block] = Double.POSITIVE_INFINITY;
+                maxs[level][block] = Double.NEGATIVE_INFINITY;
+            }
+            if (value < mins[level][block]) mins[level][block] = value;
+            if (value > maxs[level][block]) maxs[level][block] = value;
+        }
+    }
+
+    /*
+     * Adds a level whose first block covers all the values so far, apart from the one being added.
+     * Those are in the first 2 blocks of the level below (the second not yet complete)
+     */
+    private void addLevel()
+    {
+        int level = mins.length;
+
+        mins = Arrays.copyOf(mins, level + 1);
+        maxs = Arrays.copyOf(maxs, level + 1);
+
+        mins[level] = new double[INITIAL_CAPACITY];
+        maxs[level] = new double[INITIAL_CAPACITY];
+
+        mins[level][0] = Math.min(mins[level - 1][0], mins[level - 1][1]);
+        maxs[level][0] = Math.max(maxs[level - 1][0], maxs[level - 1][1]);
+    }
+
+    /**
+     * Puts the min & max of values[fromIndex] to values[toIndex - 1] into minMax[0] & minMax[1].
+     * values should be the array of values which were added. If there are no values in the range
+     * (or all are NaN), minMax[0] will be greater than minMax[1]
+     */
+    void getMinMax(double[] values, int fromIndex, int toIndex, double[] minMax)
+    {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        int index = fromIndex;
+
+        while (index < toIndex)
+        {
+            int level = mins.length - 1;
+
+            // The largest block starting at index which doesn't go past toIndex
+            while (level >= 0)
+            {
+                int shift = LEAF_SHIFT + level;
+                if ((index & ((1 << shift) - 1)) == 0 && index + (1 << shift) <= toIndex)
+                    break;
+                level--;
+            }
+
+            if (level >= 0)
+            {
+                int block = index >> (LEAF_SHIFT + level);
+                if (mins[level][block] < min) min = mins[level][block];
+                if (maxs[level][block] > max) max = maxs[level][block];
+
+                index = index + (1 << (LEAF_SHIFT + level));
+            }
+            else
+            {
+                double value = values[index];
+                if (value < min) min = value;
+                if (value > max) max = value;
+
+                index++;
+            }
+        }
+        minMax[0] = min;
+        minMax[1] = max;
+    }
+
+}
@@ -2768,7 +2768,7 @@ public class GenesisFileManager
             }
             
 
-            ArrayList cellGroupPositions =  project.generatedCellPositions.getPositionRecords(cellGroupName);
+            List cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
 
             String currentRegionName = project.cellGroupsInfo.getRegionName(cellGroupName);
 
@@ -295,6 +295,10 @@ public class GenesisMorphologyGenerator
 
         boolean cellHasVarMechs = (cell.getVarMechsVsParaGroups().size()>0);
 
+        // Values of each variable mechanism on all segments, evaluated the first time they're needed
+        float[] distancesFromRoot = null;
+        Hashtable<VariableMechanism, double[]> varMechValues = new Hashtable<VariableMechanism, double[]>();
+
         boolean warnedLengthLine = false;
 
         for (int ii = 0; ii < segments.size(); ii++)
@@ -799,9 +803,17 @@ public class GenesisMorphologyGenerator
                     ParameterisedGroup pg = cell.getVarMechsVsParaGroups().get(vm);
                     try
                     {
-                        double pgVal = pg.evaluateAt(cell, segment, 0.5f);
+                        double[] vmValues = varMechValues.get(vm);
+                        if (vmValues == null)
+                        {
+                            if (distancesFromRoot == null)
+                                distancesFromRoot = CellTopologyHelper.getDistancesFromRoot(cell);
+
+                            vmValues = vm.evaluateAll(cell, pg, distancesFromRoot);
+                            varMechValues.put(vm, vmValues);
+                        }
 
-                        float dens = (float)vm.evaluateAt(pgVal);
+                        float dens = (float)vmValues[segment.getSegmentId()];
 
                         float genDens =  (float)UnitConverter.getConductanceDensity(
                                 dens,
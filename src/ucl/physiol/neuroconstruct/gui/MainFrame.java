@@ -518,6 +518,7 @@ public class MainFrame extends JFrame implements ProjectEventListener, Generatio
     JLabel jLabelNeuronFormat = new JLabel(" Save data as:");
     JRadioButton jRadioButtonNeuronFormatText = new JRadioButton("Text files");
     JRadioButton jRadioButtonNeuronFormatHDF5 = new JRadioButton("HDF5");
+    JRadioButton jRadioButtonNeuronFormatBinary = new JRadioButton("Binary");
 
     JPanel jPanelNeuronRandomGen =  new JPanel();
     JLabel jLabelNeuronRandomGenDesc = new JLabel("Random seed for NEURON:");
@@ -3613,6 +3614,8 @@ public class MainFrame extends JFrame implements ProjectEventListener, Generatio
         jPanelNeuronRandomGen.add(jRadioButtonNeuronFormatHDF5);
         buttonGroupNeuronFormat.add(jRadioButtonNeuronFormatText);
         buttonGroupNeuronFormat.add(jRadioButtonNeuronFormatHDF5);
+        jPanelNeuronRandomGen.add(jRadioButtonNeuronFormatBinary);
+        buttonGroupNeuronFormat.add(jRadioButtonNeuronFormatBinary);
 
         BorderLayout blComp = new BorderLayout();
         blComp.setHgap(12);
@@ -4639,6 +4642,7 @@ public class MainFrame extends JFrame implements ProjectEventListener, Generatio
         addCheckBoxListner(NEURON_SIMULATOR_TAB, jCheckBoxNeuronModSilent);
         addRadioButtonListner(NEURON_SIMULATOR_TAB, jRadioButtonNeuronFormatText);
         addRadioButtonListner(NEURON_SIMULATOR_TAB, jRadioButtonNeuronFormatHDF5);
+        addRadioButtonListner(NEURON_SIMULATOR_TAB, jRadioButtonNeuronFormatBinary);
        
         addCheckBoxListner(NEURON_SIMULATOR_TAB, jCheckBoxNeuronGenAllMod);
         addCheckBoxListner(NEURON_SIMULATOR_TAB, jCheckBoxNeuronCopySimFiles);
@@ -4781,6 +4785,7 @@ public class MainFrame extends JFrame implements ProjectEventListener, Generatio
         jLabelNeuronFormat.setToolTipText(toolTipText.getToolTip("HDF5 NEURON Save"));
         jRadioButtonNeuronFormatText.setToolTipText(toolTipText.getToolTip("HDF5 NEURON Save"));
         jRadioButtonNeuronFormatHDF5.setToolTipText(toolTipText.getToolTip("HDF5 NEURON Save"));
+        jRadioButtonNeuronFormatBinary.setToolTipText(toolTipText.getToolTip("Binary NEURON Save"));
 
         jCheckBoxGenesisShapePlot.setToolTipText(toolTipText.getToolTip("GENESIS 3D"));
         this.jCheckBoxGenesisSymmetric.setToolTipText(toolTipText.getToolTip("GENESIS Symmetric"));
@@ -5231,6 +5236,10 @@ public class MainFrame extends JFrame implements ProjectEventListener, Generatio
                 {
                     projManager.getCurrentProject().neuronSettings.setDataSaveFormat(NeuronSettings.DataSaveFormat.HDF5_NC);
                 }
+                else if (this.jRadioButtonNeuronFormatBinary.isSelected())
+                {
+                    projManager.getCurrentProject().neuronSettings.setDataSaveFormat(NeuronSettings.DataSaveFormat.BINARY_NC);
+                }
 
 
                 try
@@ -10600,6 +10609,7 @@ public class MainFrame extends JFrame implements ProjectEventListener, Generatio
 
             this.jRadioButtonNeuronFormatText.setSelected(projManager.getCurrentProject().neuronSettings.getDataSaveFormat().equals(NeuronSettings.DataSaveFormat.TEXT_NC));
             this.jRadioButtonNeuronFormatHDF5.setSelected(projManager.getCurrentProject().neuronSettings.getDataSaveFormat().equals(NeuronSettings.DataSaveFormat.HDF5_NC));
+            this.jRadioButtonNeuronFormatBinary.setSelected(projManager.getCurrentProject().neuronSettings.getDataSaveFormat().equals(NeuronSettings.DataSaveFormat.BINARY_NC));
 
             jComboBoxNeuronExtraBlocks.setEnabled(true);
 
@@ -29,11 +29,13 @@ package ucl.physiol.neuroconstruct.gui;
 import java.io.*;
 import java.text.*;
 import java.util.*;
+import java.util.List;
 
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
 
+import javax.media.j3d.Appearance;
 import javax.swing.*;
 import javax.swing.border.*;
 
@@ -97,7 +99,7 @@ public class SimulationRerunFrame extends JFrame
     Hashtable<String, CellChooser> cellGroupsToUse = new Hashtable<String, CellChooser>();
     
 
-    private Hashtable<String, ISIStateInfo> isiInfo = null;
+    private ISIStateInfo[] isiStates = null;
 
     private double[][] rerunValues = null;
 
@@ -106,6 +108,30 @@ public class SimulationRerunFrame extends JFrame
      */
     private String[] rerunCellItemRefs = null;
 
+    /**
+     * Items in the 3D view, cell groups and cell numbers for each of rerunCellItemRefs,
+     * worked out once by resolveRerunTargets()
+     */
+    private ReplayTarget[] rerunTargets = null;
+    private String[] rerunCellGroups = null;
+    private int[] rerunCellNums = null;
+
+    /**
+     * Appearance for each of rerunTargets in the current frame
+     */
+    private Appearance[] frameAppearances = null;
+
+    private AppearancePalette valuePalette = null;
+    private boolean valuePaletteRainbow = false;
+    private float valuePaletteLow = 0;
+    private float valuePaletteHigh = 0;
+
+    private AppearancePalette freqPalette = null;
+    private double freqPaletteLow = 0;
+    private double freqPaletteHigh = 0;
+
+    private Appearance noISIAppearance = null;
+
     ArrayList<String> currentCellItemRefs = null;
     
     boolean standalone = false;
@@ -233,6 +259,7 @@ public class SimulationRerunFrame extends JFrame
     public void setSimInterface(SimulationInterface simInf)
     {
         controlledPanel = simInf;
+        rerunTargets = null;
     }
 
 /*
@@ -940,6 +967,7 @@ public class SimulationRerunFrame extends JFrame
         {
             this.rerunCellItemRefs = new String[currentCellItemRefs.size()];
             this.rerunValues = new double[currentCellItemRefs.size()][myCurrSimData.getNumberTimeSteps()];
+            this.rerunTargets = null;
 
             for (int i=0;i<currentCellItemRefs.size();i++)
             {
@@ -1064,6 +1092,7 @@ public class SimulationRerunFrame extends JFrame
     {
         this.rerunCellItemRefs = null;
         this.rerunValues = null;
+        this.rerunTargets = null;
     }
 
 
@@ -1163,7 +1192,7 @@ public class SimulationRerunFrame extends JFrame
 
         if (this.jRadioButtonISIShading.isSelected())
         {
-            isiInfo = new Hashtable<String, ISIStateInfo>();
+            isiStates = null;
 
         }
 
@@ -1339,26 +1368,18 @@ public class SimulationRerunFrame extends JFrame
 
     private void updateISIs(int timeStep) throws SimulationDataException
     {
-        for (int cellSegIndex = 0;cellSegIndex<this.rerunCellItemRefs.length;cellSegIndex++)
-        {
-            String ref = rerunCellItemRefs[cellSegIndex];
+        if (rerunTargets == null) resolveRerunTargets();
 
-            String cellOnlyReference = SimulationData.getCellOnlyReference(ref);
-            String cellGroupName = myCurrSimData.getCellGroup(cellOnlyReference);
-            int cellNumber = SimulationData.getCellNum(cellOnlyReference);
+        float simTime = (float)myCurrSimData.getSimulationTime(timeStep);
 
+        for (int cellSegIndex = 0;cellSegIndex<this.rerunCellItemRefs.length;cellSegIndex++)
+        {
             double value = this.rerunValues[cellSegIndex][ timeStep];
 
             //logger.logComment("Showing " + voltage + " mV for " + cellSegReferences[j] + " at time: " +
             //                  myCurrSimData.getSimulationTime(timeStep));
 
-            if (isiInfo.get(ref) == null)
-            {
-                ISIStateInfo isiState = new ISIStateInfo();
-                isiInfo.put(ref, isiState);
-            }
-
-            ISIStateInfo isiState = this.isiInfo.get(ref);
+            ISIStateInfo isiState = getISIState(cellSegIndex);
 
             //logger.logComment("Before: " + isiState);
 
@@ -1369,15 +1390,16 @@ public class SimulationRerunFrame extends JFrame
                 if (isiState.timeLastSpike < 0)
                 {
                     logger.logComment("First spike...");
-                    isiState.timeLastSpike = (float)myCurrSimData.getSimulationTime(timeStep);
+                    isiState.timeLastSpike = simTime;
                     isiState.runningISIAverage = 0;
                     isiState.numberISIs = 0;
                 }
                 else
                 {
-                    logger.logComment(cellGroupName+", "+cellNumber+": spiking: There have been " + isiState.numberISIs + " spikes already...");
+                    if (logger.isEnabled()) logger.logComment(rerunCellGroups[cellSegIndex]+", "+rerunCellNums[cellSegIndex]
+                                                              +": spiking: There have been " + isiState.numberISIs + " spikes already...");
 
-                    float newestISI = (float)myCurrSimData.getSimulationTime(timeStep) - isiState.timeLastSpike;
+                    float newestISI = simTime - isiState.timeLastSpike;
 
                     isiState.runningISIAverage
                         = ( (isiState.runningISIAverage * isiState.numberISIs) + newestISI) /
@@ -1385,7 +1407,7 @@ public class SimulationRerunFrame extends JFrame
 
                     isiState.numberISIs++;
 
-                    isiState.timeLastSpike = (float)myCurrSimData.getSimulationTime(timeStep);
+                    isiState.timeLastSpike = simTime;
 
                 }
 
@@ -1400,6 +1422,93 @@ public class SimulationRerunFrame extends JFrame
         }
     }
 
+
+    private ISIStateInfo getISIState(int cellSegIndex)
+    {
+        if (isiStates == null || isiStates.length != rerunCellItemRefs.length)
+        {
+            isiStates = new ISIStateInfo[rerunCellItemRefs.length];
+        }
+        if (isiStates[cellSegIndex] == null)
+        {
+            isiStates[cellSegIndex] = new ISIStateInfo();
+        }
+        return isiStates[cellSegIndex];
+    }
+
+
+    /**
+     * Parses each of rerunCellItemRefs once and gets a handle on the item in the 3D view, so
+     * showing each frame needs no String handling
+     */
+    private void resolveRerunTargets()
+    {
+        int num = rerunCellItemRefs.length;
+
+        rerunTargets = new ReplayTarget[num];
+        rerunCellGroups = new String[num];
+        rerunCellNums = new int[num];
+        frameAppearances = new Appearance[num];
+
+        for (int i = 0; i < num; i++)
+        {
+            String cellOnlyReference = SimulationData.getCellOnlyReference(rerunCellItemRefs[i]);
+
+            rerunCellGroups[i] = myCurrSimData.getCellGroup(cellOnlyReference);
+            rerunCellNums[i] = SimulationData.getCellNum(cellOnlyReference);
+            rerunTargets[i] = controlledPanel.getReplayTarget(rerunCellItemRefs[i]);
+        }
+        logger.logComment("Resolved "+num+" items for rerun");
+    }
+
+
+    /**
+     * Shared appearances for the colours of getColBasedOnValue() between mostNegValue and mostPosValue
+     */
+    private AppearancePalette getValuePalette()
+    {
+        boolean rainbow = jRadioButtonShadRainbow.isSelected();
+
+        if (valuePalette == null || valuePaletteRainbow != rainbow ||
+            valuePaletteLow != mostNegValue || valuePaletteHigh != mostPosValue)
+        {
+            valuePaletteRainbow = rainbow;
+            valuePaletteLow = mostNegValue;
+            valuePaletteHigh = mostPosValue;
+
+            valuePalette = new AppearancePalette(new AppearancePalette.ColourScale()
+            {
+                public Color getColour(float fractionAlong)
+                {
+                    return getColBasedOnValue(valuePaletteLow + fractionAlong * (valuePaletteHigh - valuePaletteLow));
+                }
+            }, AppearancePalette.DEFAULT_NUM_LEVELS);
+        }
+        return valuePalette;
+    }
+
+
+    /**
+     * Shared appearances for the colours of getColorBasedOnFreq() between smallestFreq and largestFreq
+     */
+    private AppearancePalette getFreqPalette()
+    {
+        if (freqPalette == null || freqPaletteLow != smallestFreq || freqPaletteHigh != largestFreq)
+        {
+            freqPaletteLow = smallestFreq;
+            freqPaletteHigh = largestFreq;
+
+            freqPalette = new AppearancePalette(new AppearancePalette.ColourScale()
+            {
+                public Color getColour(float fractionAlong)
+                {
+                    return getColorBasedOnFreq((float)(freqPaletteLow + fractionAlong * (freqPaletteHigh - freqPaletteLow)));
+                }
+            }, AppearancePalette.DEFAULT_NUM_LEVELS);
+        }
+        return freqPalette;
+    }
+
     private void blackenAllCells()
     {
         ArrayList<String> cellSegRefs =  myCurrSimData.getCellSegRefs(false);
@@ -1429,6 +1538,8 @@ public class SimulationRerunFrame extends JFrame
     {
         jTextFieldSimulationTime.setText((float)myCurrSimData.getSimulationTime(timeStep)+"");
 
+        if (rerunTargets == null) resolveRerunTargets();
+
         /** @todo Improve collection handling here... */
 
         Vector<String> allActMonCellNames  = new Vector<String>();
@@ -1436,65 +1547,68 @@ public class SimulationRerunFrame extends JFrame
 
         int[] countActive = new int[activityMonitors.keySet().size()];
 
-        for (int cellSegIndex = 0;cellSegIndex<this.rerunCellItemRefs.length;cellSegIndex++)
-        {
-            String ref = rerunCellItemRefs[cellSegIndex];
+        boolean spikesOnly = jRadioButtonSpikesOnly.isSelected();
+        boolean isiShading = jRadioButtonISIShading.isSelected();
+        boolean valueShading = jRadioButtonShadLinear.isSelected()|| jRadioButtonShadRainbow.isSelected();
+        boolean actMons = jCheckBoxActivityMonitors.isSelected();
+
+        AppearancePalette palette = null;
+        float low = 0;
+        float high = 0;
 
-            String cellOnlyReference = SimulationData.getCellOnlyReference(ref);
+        if (spikesOnly || valueShading)
+        {
+            palette = getValuePalette();
+            low = mostNegValue;
+            high = mostPosValue;
+        }
+        else if (isiShading)
+        {
+            palette = getFreqPalette();
+            if (noISIAppearance == null) noISIAppearance = Utils3D.createGeneralObjectAppearance(Color.black);
+        }
 
-            String cellGroupName = myCurrSimData.getCellGroup(cellOnlyReference);
+        for (int cellSegIndex = 0;cellSegIndex<this.rerunCellItemRefs.length;cellSegIndex++)
+        {
+            String cellGroupName = rerunCellGroups[cellSegIndex];
 
-            int cellNumber = SimulationData.getCellNum(cellOnlyReference);
+            int cellNumber = rerunCellNums[cellSegIndex];
 
             //float value = myCurrSimData.getValueAtTimeStep(timeStep, ref, var);
             double value = this.rerunValues[cellSegIndex][ timeStep];
 
-            logger.logComment("Showing val "+value+" for "+ref+" at time: "+
-                myCurrSimData.getSimulationTime( timeStep));
-
-            Color newColour = null;
+            Appearance newApp = null;
 
-
-            if (this.jRadioButtonSpikesOnly.isSelected())
+            if (spikesOnly)
             {
                 if (value<thresholdForRun)
-                    newColour = getColBasedOnValue(mostNegValue);
+                    newApp = palette.getAppearance(0);
                 else
-                    newColour = getColBasedOnValue(mostPosValue);
+                    newApp = palette.getAppearance(palette.getNumLevels() - 1);
 
             }
-            else if (this.jRadioButtonISIShading.isSelected())
+            else if (isiShading)
             {
-                if (isiInfo.get(ref)==null)
-                {
-                    ISIStateInfo isiState = new ISIStateInfo();
-                    isiInfo.put(ref, isiState);
-                }
-
-                ISIStateInfo isiState = this.isiInfo.get(ref);
-
-                logger.logComment("Current isi info for "+cellGroupName+", "+cellNumber+": "+ isiState);
+                ISIStateInfo isiState = getISIState(cellSegIndex);
 
                 if (isiState.runningISIAverage<=0 || isiState.numberISIs<=0)
                 {
-                    newColour  = Color.black;
+                    newApp  = noISIAppearance;
                 }
                 else
                 {
-                    //newColour = this.getColorBasedOnISI(isiState.runningISIAverage);
-                    newColour = getColorBasedOnFreq(1000/isiState.runningISIAverage);
+                    double freq = 1000/isiState.runningISIAverage;
+                    newApp = palette.getAppearance((freq - smallestFreq) / (largestFreq - smallestFreq));
                 }
             }
-            else if (jRadioButtonShadLinear.isSelected()|| jRadioButtonShadRainbow.isSelected())
+            else if (valueShading)
             {
-                newColour = getColBasedOnValue((float)value);
+                newApp = palette.getAppearance((value - low) / (high - low));
             }
 
-            logger.logComment("Decided on a colour: "+ newColour.toString());
-
-            controlledPanel.setColour(ref, newColour);
+            frameAppearances[cellSegIndex] = newApp;
 
-            if(jCheckBoxActivityMonitors.isSelected() && value > thresholdForRun)
+            if(actMons && value > thresholdForRun)
             {
                 int cellGroupIndex = allActMonCellNames.indexOf(cellGroupName);
                 countActive[cellGroupIndex]++;
@@ -1519,6 +1633,25 @@ public class SimulationRerunFrame extends JFrame
 
         }
 
+        // Only the items whose colour has changed since the last frame are updated in the 3D view
+        int numChanged = 0;
+
+        for (int cellSegIndex = 0;cellSegIndex<rerunTargets.length;cellSegIndex++)
+        {
+            ReplayTarget target = rerunTargets[cellSegIndex];
+
+            if (target != null && frameAppearances[cellSegIndex] != null &&
+                target.setAppearance(frameAppearances[cellSegIndex]))
+            {
+                numChanged++;
+            }
+        }
+
+        ReplayTarget.applyPendingColours(rerunTargets);
+
+        if (logger.isEnabled()) logger.logComment("Changed colour of "+numChanged+" of "+rerunTargets.length
+                                                  +" items at time: "+ myCurrSimData.getSimulationTime(timeStep));
+
         if (jCheckBoxActivityMonitors.isSelected())
         {
 
@@ -1770,7 +1903,7 @@ public class SimulationRerunFrame extends JFrame
 
         activityMonitors = null;
         activityMonitors = new Hashtable<String, ActivityMonitor>();
-        isiInfo = null;
+        isiStates = null;
 
         GeneralProperties.saveToSettingsFile();
     }
@@ -1827,7 +1960,7 @@ public class SimulationRerunFrame extends JFrame
             return;
         }
 
-        ArrayList<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroup);
+        ArrayList<PositionRecord> positions = new ArrayList<PositionRecord>(project.generatedCellPositions.getPositionRecords(cellGroup));
 
         ViewVoltage2D view2d = new ViewVoltage2D(cellGroup, positions, ViewCanvas.Z_X_NEGY_DIR, false);
         view2d.pack();
@@ -28,6 +28,7 @@ package ucl.physiol.neuroconstruct.gui;
 
 import java.io.*;
 import java.util.*;
+import java.util.List;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -141,7 +142,7 @@ public class SlicerFrame extends JFrame
 //    {
 //        for(String cg: project.generatedCellPositions.getNonEmptyCellGroups())
 //        {
-//            ArrayList<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cg);
+//            List<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cg);
 //            //ArrayList<Float> yValsOrdered = new ArrayList<Float>();
 //            
 //            
@@ -351,7 +352,7 @@ public class SlicerFrame extends JFrame
         
         for(String cg: project.generatedCellPositions.getNonEmptyCellGroups())
         {
-            ArrayList<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cg);
+            List<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cg);
             
             for(PositionRecord pos: posRecs)
             {
@@ -78,6 +78,11 @@ public class PlotCanvas extends Canvas
 
 
     private RasterOptions myRasterOptions = new RasterOptions();
+
+    /**
+     * Reused for the min & max y values of the points in each column of pixels when plotting
+     */
+    private double[] minMax = new double[2];
     private SpikeAnalysisOptions spikeOptions = new SpikeAnalysisOptions();
 
 
@@ -1083,10 +1088,48 @@ public class PlotCanvas extends Canvas
 
             for (int dataSetIndex=dataSetIndexStart; dataSetIndex <= dataSetIndexEnd; dataSetIndex++)
             {
-                logger.logComment(">>>>   Plotting data Set: "+ dataSets[dataSetIndex].getReference());
+                DataSet dataSet = dataSets[dataSetIndex];
+                String graphFormat = dataSet.getGraphFormat();
+
+                logger.logComment(">>>>   Plotting data Set: "+ dataSet.getReference());
+
+                int numPoints = dataSet.getNumberPoints();
+
+                if (dataSet.containsNaNOrInfinity())
+                {
+                    foundNaNInfinity = true;
+                }
+
+                g.setColor(dataSet.getGraphColour());
+
+                // Long traces are plotted with a couple of lines per column of pixels
+                if ((plotFrame.isRasterised() ||
+                     graphFormat.equals(USE_LINES_FOR_PLOT) ||
+                     graphFormat.equals(USE_THICK_LINES_FOR_PLOT)) &&
+                    dataSet.areXvalsNonDecreasing() &&
+                    !dataSet.containsNaNOrInfinity() &&
+                    maxXScaleValue > minXScaleValue)
+                {
+                    pointsPlotted = pointsPlotted + paintDecimated(g, dataSet, numSeparateAreas, areaNumber);
+                    continue;
+                }
 
-                int numPoints = dataSets[dataSetIndex].getNumberPoints();
-                // double[] nextPoint = null;
+                double xValueSpacing = -1;
+
+                if (!plotFrame.isRasterised() && graphFormat.equals(USE_BARCHART_FOR_PLOT) && numPoints > 0)
+                {
+                    try
+                    {
+                        xValueSpacing = dataSet.getXSpacing();
+                    }
+                    catch (DataSetException ex)
+                    {
+                        GuiUtils.showErrorMessage(logger,
+                                                  "The set of points are not sequential and evenly spaced, and therefore the bar chart format cannot be used.", ex, this);
+                        plotFrame.flagProblemDueToBarSpacing();
+                        return;
+                    }
+                }
 
                 int lastXVal = Integer.MAX_VALUE;
                 int lastYVal = Integer.MAX_VALUE;
@@ -1098,19 +1141,11 @@ public class PlotCanvas extends Canvas
 
                 for (int pointNum = 0; pointNum < numPoints; pointNum++)
                 {
-                    double[] nextPoint = dataSets[dataSetIndex].getPoint(pointNum);
-
-                    if ((new Double(nextPoint[0])).isNaN() ||
-                        nextPoint[0] == Double.NEGATIVE_INFINITY ||
-                        nextPoint[0] == Double.POSITIVE_INFINITY ||
-                        (new Double(nextPoint[1])).isNaN() ||
-                        nextPoint[1] == Double.NEGATIVE_INFINITY ||
-                        nextPoint[1] == Double.POSITIVE_INFINITY)
-                    {
-                        foundNaNInfinity = true;
-                    }
-                    int xVal = getScreenPosnValForX(nextPoint[0]);
-                    int yVal = getScreenPosnValForY(nextPoint[1], numSeparateAreas, areaNumber);
+                    double nextX = dataSet.getX(pointNum);
+                    double nextY = dataSet.getY(pointNum);
+
+                    int xVal = getScreenPosnValForX(nextX);
+                    int yVal = getScreenPosnValForY(nextY, numSeparateAreas, areaNumber);
 
                     // for first point...
                     if (lastXVal == Integer.MAX_VALUE) lastXVal = xVal;
@@ -1118,8 +1153,6 @@ public class PlotCanvas extends Canvas
 
                     // logger.logComment("Adding point at: (" + xVal + ", " + yVal + ")");
 
-                    g.setColor(dataSets[dataSetIndex].getGraphColour());
-
                     boolean plotEveryDataPoint = false;
 
                     if (xVal != lastXplotted ||
@@ -1128,7 +1161,7 @@ public class PlotCanvas extends Canvas
                     {
                         if (!plotFrame.isRasterised())
                         {
-                            if (dataSets[dataSetIndex].getGraphFormat().equals(USE_CIRCLES_FOR_PLOT))
+                            if (graphFormat.equals(USE_CIRCLES_FOR_PLOT))
                             {
                                 int radius = 2;
                                 int upperXcorner = xVal - radius;
@@ -1144,7 +1177,7 @@ public class PlotCanvas extends Canvas
                                                radius * 2);
                                 }
                             }
-                            else if (dataSets[dataSetIndex].getGraphFormat().equals(USE_CROSSES_FOR_PLOT))
+                            else if (graphFormat.equals(USE_CROSSES_FOR_PLOT))
                             {
                                 int radius = 2;
                                 int upperXcorner = xVal - radius;
@@ -1159,61 +1192,34 @@ public class PlotCanvas extends Canvas
                                     g.drawLine(upperXcorner, lowerYcorner, lowerXcorner, upperYcorner);
                                 }
                             }
-                            else if (dataSets[dataSetIndex].getGraphFormat().equals(USE_LINES_FOR_PLOT))
+                            else if (graphFormat.equals(USE_LINES_FOR_PLOT))
                             {
                                 g.drawLine(xVal, yVal, lastXVal, lastYVal);
                                 lastXVal = xVal;
                                 lastYVal = yVal;
                             }
-                            else if (dataSets[dataSetIndex].getGraphFormat().equals(USE_THICK_LINES_FOR_PLOT))
+                            else if (graphFormat.equals(USE_THICK_LINES_FOR_PLOT))
                             {
-                                // TODO: improve...
-
-                                g.drawLine(xVal, yVal, lastXVal, lastYVal);
-
-                                g.drawLine(xVal-1, yVal-1, lastXVal-1, lastYVal-1);
-                                g.drawLine(xVal-1, yVal+1, lastXVal-1, lastYVal+1);
-                                g.drawLine(xVal+1, yVal-1, lastXVal+1, lastYVal-1);
-                                g.drawLine(xVal+1, yVal+1, lastXVal+1, lastYVal+1);
-
-                                g.drawLine(xVal, yVal-1, lastXVal, lastYVal-1);
-                                g.drawLine(xVal, yVal+1, lastXVal, lastYVal+1);
-                                g.drawLine(xVal-1, yVal, lastXVal-1, lastYVal);
-                                g.drawLine(xVal+1, yVal, lastXVal+1, lastYVal);
-
+                                drawThickLine(g, xVal, yVal, lastXVal, lastYVal);
 
                                 lastXVal = xVal;
                                 lastYVal = yVal;
                             }
-                            else if (dataSets[dataSetIndex].getGraphFormat().equals(USE_POINTS_FOR_PLOT))
+                            else if (graphFormat.equals(USE_POINTS_FOR_PLOT))
                             {
                                 g.drawLine(xVal, yVal, xVal, yVal);
                             }
-                            else if (dataSets[dataSetIndex].getGraphFormat().equals(USE_BARCHART_FOR_PLOT))
+                            else if (graphFormat.equals(USE_BARCHART_FOR_PLOT))
                             {
-                                double xValueSpacing = -1;
-
-                                try
-                                {
-                                    xValueSpacing = dataSets[dataSetIndex].getXSpacing();
-                                }
-                                catch (DataSetException ex)
-                                {
-                                    GuiUtils.showErrorMessage(logger,
-                                                              "The set of points are not sequential and evenly spaced, and therefore the bar chart format cannot be used.", ex, this);
-                                    plotFrame.flagProblemDueToBarSpacing();
-                                    return;
-                                }
-
-                                int xValMinusHalf = getScreenPosnValForX(nextPoint[0] - (xValueSpacing / 2f));
-                                int xValPlusHalf = getScreenPosnValForX(nextPoint[0] + (xValueSpacing / 2f));
+                                int xValMinusHalf = getScreenPosnValForX(nextX - (xValueSpacing / 2f));
+                                int xValPlusHalf = getScreenPosnValForX(nextX + (xValueSpacing / 2f));
 
                                 //g.drawLine(xVal, yVal, xVal, yVal);
 
                                 int topYVal, height;
                                 int atXAxis = getScreenPosnValForY(0, numSeparateAreas, areaNumber);
 
-                                if (nextPoint[1] > 0)
+                                if (nextY > 0)
                                 {
                                     // box is up from x axis...
                                     topYVal = yVal;
@@ -1240,7 +1246,7 @@ public class PlotCanvas extends Canvas
                             else
                             {
                                 GuiUtils.showErrorMessage(logger, "Unknown format for graph: " +
-                                                          dataSets[dataSetIndex].getGraphFormat(), null, this);
+                                                          graphFormat, null, this);
                                 return;
                             }
                             lastXplotted = xVal;
@@ -1252,7 +1258,7 @@ public class PlotCanvas extends Canvas
                         {
                             //logger.logComment("Printing rasta style...");
 
-                            if (nextPoint[1]>myRasterOptions.threshold)
+                            if (nextY>myRasterOptions.threshold)
                             {
                                 if (!insideSpike)
                                 {
@@ -1317,6 +1323,159 @@ public class PlotCanvas extends Canvas
          }
     }
 
+    /*
+     * Plots a data set with non decreasing x values (and no NaN/infinite values) with lines, or
+     * rasterised, looking only at the points in view. Instead of a line to each point, for each
+     * column of pixels there's a line to the first point in the column and a line between the min
+     * & max y values in it, which are taken from the data set's summary, so plotting time depends
+     * on the width of the canvas rather than the number of points. Returns the number of lines drawn
+     */
+    private int paintDecimated(Graphics g, DataSet dataSet, int numSeparateAreas, int areaNumber)
+    {
+        int numPoints = dataSet.getNumberPoints();
+
+        if (numPoints == 0) return 0;
+
+        boolean rasterised = plotFrame.isRasterised();
+        boolean thickLines = dataSet.getGraphFormat().equals(USE_THICK_LINES_FOR_PLOT);
+        double threshold = myRasterOptions.threshold;
+
+        int start = getFirstIndexAtScreenX(dataSet, 0, 0, numPoints);
+        int end = getFirstIndexAtScreenX(dataSet, this.getWidth(), start, numPoints);
+
+        // Start from the last point before the visible area, so the line into it is drawn
+        int lastPoint = Math.max(start - 1, 0);
+        int lastXVal = getScreenPosnValForX(dataSet.getX(lastPoint));
+        int lastYVal = getScreenPosnValForY(dataSet.getY(lastPoint), numSeparateAreas, areaNumber);
+
+        boolean insideSpike = start > 0 && dataSet.getY(start - 1) > threshold;
+
+        double topY = maxYScaleValue
+            - ( (100 - myRasterOptions.getPercentage()) / 200 * (maxYScaleValue - minYScaleValue));
+        double bottomY = minYScaleValue
+            + ( (100 - myRasterOptions.getPercentage()) / 200 * (maxYScaleValue - minYScaleValue));
+
+        int linesDrawn = 0;
+        int index = start;
+
+        while (index < end)
+        {
+            int xVal = getScreenPosnValForX(dataSet.getX(index));
+            int nextIndex = getFirstIndexAtScreenX(dataSet, xVal + 1, index + 1, end);
+
+            dataSet.getMinMaxY(index, nextIndex, minMax);
+
+            if (rasterised)
+            {
+                // Same as checking each point in turn for a crossing of the threshold
+                boolean spikeStarts = false;
+
+                if (minMax[0] > threshold)
+                {
+                    spikeStarts = !insideSpike;
+                }
+                else if (minMax[1] > threshold)
+                {
+                    boolean above = insideSpike;
+                    for (int pointNum = index; pointNum < nextIndex && !spikeStarts; pointNum++)
+                    {
+                        spikeStarts = !above && dataSet.getY(pointNum) > threshold;
+                        above = dataSet.getY(pointNum) > threshold;
+                    }
+                }
+                if (spikeStarts)
+                {
+                    g.drawLine(xVal,
+                               getScreenPosnValForY(topY, numSeparateAreas, areaNumber),
+                               xVal,
+                               getScreenPosnValForY(bottomY, numSeparateAreas, areaNumber));
+                    linesDrawn++;
+                }
+                insideSpike = dataSet.getY(nextIndex - 1) > threshold;
+            }
+            else
+            {
+                int yVal = getScreenPosnValForY(dataSet.getY(index), numSeparateAreas, areaNumber);
+
+                drawPlotLine(g, xVal, yVal, lastXVal, lastYVal, thickLines);
+                linesDrawn++;
+
+                if (nextIndex - index > 1)
+                {
+                    drawPlotLine(g,
+                                 xVal,
+                                 getScreenPosnValForY(minMax[1], numSeparateAreas, areaNumber),
+                                 xVal,
+                                 getScreenPosnValForY(minMax[0], numSeparateAreas, areaNumber),
+                                 thickLines);
+                    linesDrawn++;
+                }
+                lastXVal = xVal;
+                lastYVal = getScreenPosnValForY(dataSet.getY(nextIndex - 1), numSeparateAreas, areaNumber);
+            }
+            index = nextIndex;
+        }
+
+        // The line out of the visible area
+        if (!rasterised && end < numPoints)
+        {
+            drawPlotLine(g,
+                         getScreenPosnValForX(dataSet.getX(end)),
+                         getScreenPosnValForY(dataSet.getY(end), numSeparateAreas, areaNumber),
+                         lastXVal,
+                         lastYVal,
+                         thickLines);
+            linesDrawn++;
+        }
+        return linesDrawn;
+    }
+
+    /*
+     * Binary search for the first point from fromIndex to toIndex - 1 which is at or to the right of
+     * the column of pixels screenX, or toIndex if none. The x values must be non decreasing
+     */
+    private int getFirstIndexAtScreenX(DataSet dataSet, int screenX, int fromIndex, int toIndex)
+    {
+        int low = fromIndex;
+        int high = toIndex;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (getScreenPosnValForX(dataSet.getX(mid)) < screenX)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private void drawPlotLine(Graphics g, int x1, int y1, int x2, int y2, boolean thick)
+    {
+        if (thick)
+            drawThickLine(g, x1, y1, x2, y2);
+        else
+            g.drawLine(x1, y1, x2, y2);
+    }
+
+    private void drawThickLine(Graphics g, int x1, int y1, int x2, int y2)
+    {
+        // TODO: improve...
+
+        g.drawLine(x1, y1, x2, y2);
+
+        g.drawLine(x1-1, y1-1, x2-1, y2-1);
+        g.drawLine(x1-1, y1+1, x2-1, y2+1);
+        g.drawLine(x1+1, y1-1, x2+1, y2-1);
+        g.drawLine(x1+1, y1+1, x2+1, y2+1);
+
+        g.drawLine(x1, y1-1, x2, y2-1);
+        g.drawLine(x1, y1+1, x2, y2+1);
+        g.drawLine(x1-1, y1, x2-1, y2);
+        g.drawLine(x1+1, y1, x2+1, y2);
+    }
+
     public void setKeepDataSetColours(boolean val)
     {
         this.keepDataSetColours = val;
@@ -82,6 +82,7 @@ public class PlotterFrame extends JFrame {
     JMenuItem jMenuImportData = new JMenuItem();
     JMenuItem jMenuGenerateMatplotlib = new JMenuItem();
     JMenuItem jMenuApAnalysis = new JMenuItem();
+    JMenuItem jMenuSpikeCorrelations = new JMenuItem();
     JRadioButtonMenuItem jMenuViewPointsOnly = new JRadioButtonMenuItem();
     JRadioButtonMenuItem jMenuItemViewOrigin = new JRadioButtonMenuItem();
     JRadioButtonMenuItem jMenuItemSelection = new JRadioButtonMenuItem();
@@ -185,12 +186,15 @@ public class PlotterFrame extends JFrame {
         jMenuImportData.setText("Import data from file...");
         jMenuGenerateMatplotlib.setText("Generate matplotlib files for EPS image & PDF (beta)...");
         jMenuApAnalysis.setText("AP shape analysis");
+        jMenuSpikeCorrelations.setText("Spike cross correlations...");
+        jMenuSpikeCorrelations.setToolTipText("Population cross correlogram and synchrony of the spikes in all the Data Sets");
         jMenuTools.add(jMenuDifference);
         jMenuTools.add(jMenuAverage);
         jMenuTools.add(jMenuAddManual);
         jMenuTools.add(jMenuImportData);
         jMenuTools.add(jMenuGenerateMatplotlib);
         jMenuTools.add(jMenuApAnalysis);
+        jMenuTools.add(jMenuSpikeCorrelations);
 
         jMenuDifference.addActionListener(new ActionListener() {
 
@@ -233,6 +237,13 @@ public class PlotterFrame extends JFrame {
             }
         });
 
+        this.jMenuSpikeCorrelations.addActionListener(new ActionListener() {
+
+            public void actionPerformed(ActionEvent e) {
+                jMenuSpikeCorrelations_actionPerformed(e);
+            }
+        });
+
 
         //jMenuHelp.setText("Help");
         jMenuItemViewOrigin.setText("Include origin");
@@ -716,9 +727,11 @@ public class PlotterFrame extends JFrame {
         if (plotCanvas.dataSets.length < 2) {
             jMenuDifference.setEnabled(false);
             jMenuAverage.setEnabled(false);
+            jMenuSpikeCorrelations.setEnabled(false);
         } else {
             jMenuDifference.setEnabled(true);
             jMenuAverage.setEnabled(true);
+            jMenuSpikeCorrelations.setEnabled(true);
         }
 
         logger.logComment("Done updating menus, repainting");
@@ -1519,25 +1532,16 @@ public class PlotterFrame extends JFrame {
 
             double[] yVals = dataSet.getYValues();
 
+            // Only points from startIndex to numPointsOrig - endOffset are correlated with the offset points
+            double[] yValsInRange = new double[N];
             for (int pointIndex = startIndex; pointIndex < numPointsOrig - endOffset; pointIndex++) {
-                double y = yVals[pointIndex];
-
-                int offset = beginOffset;
-
-                while (pointIndex + offset < N && offset <= endOffset) {
-                    int offsetPointIndex = pointIndex + offset;
-                    //logger.logComment("corr of point: " + pointIndex + " with point: "+offsetPointIndex, true);
-                    //double y2 = dataSet.getPoint(offsetPointIndex)[1];
-                    double y2 = yVals[offsetPointIndex];
-
-                    double prod = (y2) * (y);
-                    //double prod = (y2-average)*(y-average);
-                    int pointNum = offset - beginOffset;
-                    acVals[pointNum] += prod;
+                yValsInRange[pointIndex] = yVals[pointIndex];
+            }
 
-                    offset++;
-                }
+            double[] correl = SpikeAnalyser.continuousCrossCorrelation(yValsInRange, yVals, beginOffset, endOffset);
 
+            for (int pointNum = 0; pointNum < numInAC; pointNum++) {
+                acVals[pointNum] = (float) correl[pointNum];
             }
 
             DataSet acDataSet = new DataSet("Autocorrelogram of " + dataSet.getReference(),
@@ -2907,6 +2911,110 @@ public class PlotterFrame extends JFrame {
         }
     }
 
+    void jMenuSpikeCorrelations_actionPerformed(ActionEvent e) {
+
+        logger.logComment("Calculating spike cross correlations...");
+
+        DataSet ds0 = plotCanvas.dataSets[0];
+
+        ArrayList<InputRequestElement> inputs = new ArrayList<InputRequestElement>();
+
+        float suggestedThresh = -20;
+        float suggestedStart = (float) ds0.getMinX()[0];
+        float suggestedEnd = (float) ds0.getMaxX()[0];
+
+        if (PlotterFrame.preferredSpikeValsEntered) {
+            suggestedThresh = plotCanvas.getSpikeOptions().getThreshold();
+            suggestedStart = plotCanvas.getSpikeOptions().getStartTime();
+            suggestedEnd = plotCanvas.getSpikeOptions().getStopTime();
+        }
+
+        InputRequestElement threshInput = new InputRequestElement("threshold", "Threshold for spike", null, suggestedThresh + "", "mV");
+        inputs.add(threshInput);
+        InputRequestElement startInput = new InputRequestElement("start", "Start time from which to analyse the spiking", null, suggestedStart + "", "ms");
+        inputs.add(startInput);
+        InputRequestElement stopInput = new InputRequestElement("stop", "Finish time from which to analyse the spiking", null, suggestedEnd + "", "ms");
+        inputs.add(stopInput);
+        InputRequestElement binInput = new InputRequestElement("bin", "Bin size for the cross correlogram", null, "1", "ms");
+        inputs.add(binInput);
+        InputRequestElement lagInput = new InputRequestElement("lag", "Maximum lag of the cross correlogram", null, "50", "ms");
+        inputs.add(lagInput);
+        InputRequestElement slideInput = new InputRequestElement("slide", "Size of sliding window for synchrony", null, "5", "ms");
+        inputs.add(slideInput);
+
+        InputRequest dlg = new InputRequest(null, "Please enter the parameters for calculating the spike cross correlations", "Parameters for spike cross correlations", inputs, true);
+
+        GuiUtils.centreWindow(dlg);
+
+        dlg.setVisible(true);
+
+        if (dlg.cancelled()) {
+            return;
+        }
+
+        float threshold, startTime, stopTime, binSize, maxLag, slideSize;
+        try {
+            threshold = Float.parseFloat(threshInput.getValue());
+            startTime = Float.parseFloat(startInput.getValue());
+            stopTime = Float.parseFloat(stopInput.getValue());
+            binSize = Float.parseFloat(binInput.getValue());
+            maxLag = Float.parseFloat(lagInput.getValue());
+            slideSize = Float.parseFloat(slideInput.getValue());
+        } catch (Exception ex) {
+            GuiUtils.showErrorMessage(logger, "Invalid value entered", ex, null);
+            return;
+        }
+        if (binSize <= 0 || maxLag < 0 || slideSize <= 0 || stopTime <= startTime) {
+            GuiUtils.showErrorMessage(logger, "Please enter a positive bin size and slide size, a non negative lag, and a stop time after the start time", null, this);
+            return;
+        }
+
+        plotCanvas.getSpikeOptions().setThreshold(threshold);
+        plotCanvas.getSpikeOptions().setStartTime(startTime);
+        plotCanvas.getSpikeOptions().setStopTime(stopTime);
+        PlotterFrame.preferredSpikeValsEntered = true;
+
+        ArrayList<double[]> spikeSets = new ArrayList<double[]>();
+        TreeSet<Double> allTimes = new TreeSet<Double>();
+
+        for (DataSet nextDs : plotCanvas.dataSets) {
+            spikeSets.add(SpikeAnalyser.getSpikeTimes(nextDs.getYValues(), nextDs.getXValues(), threshold, startTime, stopTime));
+
+            for (double t : nextDs.getXValues()) {
+                allTimes.add(t);
+            }
+        }
+
+        SpikeTrainMatrix matrix = new SpikeTrainMatrix(spikeSets, binSize, startTime, stopTime);
+
+        int maxLagBins = (int) Math.ceil(maxLag / binSize);
+        float[] correl = matrix.getPopulationCrossCorrelogram(maxLagBins);
+
+        String desc = "Population cross correlogram of spikes in " + plotCanvas.dataSets.length + " Data Sets in " + this.getTitle()
+                + ", bin size: " + binSize + " ms, threshold: " + threshold + " mV, from " + startTime + " ms to " + stopTime + " ms";
+
+        DataSet correlDataSet = new DataSet("Cross correlogram of " + this.getTitle(), desc, "ms", "", "Lag", "Mean spikes per reference spike");
+        correlDataSet.setGraphFormat(PlotCanvas.USE_BARCHART_FOR_PLOT);
+
+        for (int k = 0; k < correl.length; k++) {
+            correlDataSet.addPoint((k - maxLagBins) * binSize, correl[k]);
+        }
+
+        PlotterFrame correlFrame = PlotManager.getPlotterFrame("Spike cross correlogram of " + this.getTitle(), false, true);
+        correlFrame.addDataSet(correlDataSet);
+
+        double[] times = new double[allTimes.size()];
+        int timeIndex = 0;
+        for (Double t : allTimes) {
+            times[timeIndex++] = t;
+        }
+
+        DataSet syncDataSet = matrix.getSlidingSynchrony(times, slideSize);
+
+        PlotterFrame syncFrame = PlotManager.getPlotterFrame("Spike synchrony of " + this.getTitle(), false, true);
+        syncFrame.addDataSet(syncDataSet);
+    }
+
     void jMenuApAnalysis_actionPerformed(ActionEvent e) {
 
         logger.logComment("Plotting AP shapes...");
@@ -49,6 +49,23 @@ public class MpiConfiguration
 {
     private static ClassLogger logger = new ClassLogger("MpiConfiguration");
 
+    /**
+     * Cells are given to the processors in turn
+     */
+    public static final int ROUND_ROBIN_BALANCING = 0;
+
+    /**
+     * Cells are given to processors so that the estimated computational load (from compartments,
+     * channel mechanisms and synapses) is balanced
+     */
+    public static final int COST_BALANCING = 1;
+
+    /**
+     * As COST_BALANCING, followed by moving connected cells onto the same host where this
+     * doesn't unbalance the load
+     */
+    public static final int COST_AND_CONNECTION_BALANCING = 2;
+
     private String name = null;
 
     private RemoteLogin remoteLogin = null;
@@ -61,6 +78,8 @@ public class MpiConfiguration
 
     private boolean useScp = false;
 
+    private int loadBalancing = ROUND_ROBIN_BALANCING;
+
 
 
     private MpiConfiguration()
@@ -99,6 +118,26 @@ public class MpiConfiguration
         this.useScp = useScp;
     }
 
+    /*
+     * Currently these funcs are only used through Python interface
+     */
+    public int getLoadBalancing()
+    {
+        return loadBalancing;
+    }
+
+    public void setLoadBalancing(int loadBalancing)
+    {
+        this.loadBalancing = loadBalancing;
+    }
+
+    public static String getLoadBalancingDesc(int loadBalancing)
+    {
+        if (loadBalancing == COST_BALANCING) return "Balanced estimated load";
+        if (loadBalancing == COST_AND_CONNECTION_BALANCING) return "Balanced estimated load, connected cells on same host";
+        return "Round robin";
+    }
+
 
 
 
@@ -771,6 +810,10 @@ public class MpiConfiguration
         {
             return false;
         }
+        if (this.loadBalancing != other.loadBalancing)
+        {
+            return false;
+        }
         return true;
     }
 
@@ -784,6 +827,7 @@ public class MpiConfiguration
         hash = 29 * hash + (this.hostList != null ? this.hostList.hashCode() : 0);
         hash = 29 * hash + (this.mpiVersion != null ? this.mpiVersion.hashCode() : 0);
         hash = 29 * hash + (isUseScp() ?  1:0);
+        hash = 29 * hash + loadBalancing;
         return hash;
     }
 
@@ -813,6 +857,7 @@ public class MpiConfiguration
             mc2.setMpiVersion(new String(mpiVersion));
         }
         mc2.setUseScp(this.isUseScp());
+        mc2.setLoadBalancing(this.loadBalancing);
         
         return mc2;
     }
@@ -824,7 +869,8 @@ public class MpiConfiguration
         {
             info.append("MPI version: "+mpiVersion+"\n");
         }
-        info.append("Use scp: "+useScp+"\n\n");
+        info.append("Use scp: "+useScp+"\n");
+        info.append("Load balancing: "+getLoadBalancingDesc(loadBalancing)+"\n\n");
         
         if (this.remoteLogin!=null)
         {
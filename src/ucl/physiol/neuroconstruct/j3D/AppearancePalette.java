@@ -0,0 +1,121 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.j3D;
+
+import java.awt.*;
+import javax.media.j3d.Appearance;
+
+/**
+ * A fixed set of shared Appearances for the colours along a shading scale, so that cells
+ * can be recoloured at every frame of a replayed simulation without creating a new
+ * Appearance per segment
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class AppearancePalette
+{
+    public static final int DEFAULT_NUM_LEVELS = 256;
+
+    private Color[] colours = null;
+    private Appearance[] appearances = null;
+
+    /**
+     * Colour at a fraction (0 to 1) of the way along the shading scale
+     */
+    public interface ColourScale
+    {
+        public Color getColour(float fractionAlong);
+    }
+
+
+    public AppearancePalette(Color[] colours)
+    {
+        this.colours = colours;
+        appearances = new Appearance[colours.length];
+
+        for (int i = 0; i < colours.length; i++)
+        {
+            appearances[i] = Utils3D.createGeneralObjectAppearance(colours[i]);
+        }
+    }
+
+    /**
+     * Palette with numLevels colours evenly spaced along the scale
+     */
+    public AppearancePalette(ColourScale scale, int numLevels)
+    {
+        this(getColours(scale, numLevels));
+    }
+
+
+    private static Color[] getColours(ColourScale scale, int numLevels)
+    {
+        Color[] colours = new Color[numLevels];
+
+        for (int i = 0; i < numLevels; i++)
+        {
+            colours[i] = scale.getColour(numLevels == 1 ? 0 : (float)i / (numLevels - 1));
+        }
+        return colours;
+    }
+
+
+    public int getNumLevels()
+    {
+        return appearances.length;
+    }
+
+    /**
+     * The level nearest to the fraction along the scale, where values outside 0 to 1 are
+     * given the lowest or highest level
+     */
+    public int getLevel(double fractionAlong)
+    {
+        if (!(fractionAlong > 0)) return 0; // includes NaN
+        if (fractionAlong >= 1) return appearances.length - 1;
+
+        return (int)Math.round(fractionAlong * (appearances.length - 1));
+    }
+
+    public Appearance getAppearance(int level)
+    {
+        return appearances[level];
+    }
+
+    public Appearance getAppearance(double fractionAlong)
+    {
+        return appearances[getLevel(fractionAlong)];
+    }
+
+    public Color getColour(int level)
+    {
+        return colours[level];
+    }
+
+}
@@ -65,6 +65,11 @@ public class Base3DPanel extends Panel
 
     public void markPrimitiveAsSelected(Primitive prim){};
 
+    /**
+     * For cells shown with a MergedCellGeometry. cellUserData is the user data of the cell's TransformGroup
+     */
+    public void markMergedSegmentAsSelected(Object cellUserData, int segmentId){};
+
     public Object getViewedObject()
     {
         return viewedObject;
@@ -28,6 +28,7 @@ package ucl.physiol.neuroconstruct.j3D;
 
 import java.io.*;
 import java.util.*;
+import java.util.List;
 import javax.media.j3d.*;
 import javax.vecmath.*;
 
@@ -1008,13 +1009,18 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
         all3DCells = new Hashtable<String, OneCell3D>(project.generatedCellPositions.getNumberInAllCellGroups());
 
+        boolean merged = project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_MERGED_LOD);
+
+        // Built once per cell type and shared by all cells of that type
+        Hashtable<String, MergedCellGeometry> mergedGeometries = new Hashtable<String, MergedCellGeometry>();
+
         for (int j = 0; j < cellGroupNames.size(); j++)
         {
             String cellGroupName = cellGroupNames.get(j);
 
             logger.logComment("Looking at cell group: " + cellGroupName);
 
-            ArrayList currentCellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
+            List currentCellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
 
             if (currentCellGroupPositions == null || currentCellGroupPositions.isEmpty())
             {
@@ -1035,6 +1041,20 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
                 Cell cell = project.cellManager.getCell(cellType);
 
+                MergedCellGeometry mergedGeometry = null;
+
+                if (merged)
+                {
+                    mergedGeometry = mergedGeometries.get(cellType);
+                    if (mergedGeometry == null)
+                    {
+                        mergedGeometry = new MergedCellGeometry(cell,
+                                                                project.proj3Dproperties.getResolution3DElements(),
+                                                                project.proj3Dproperties.getMinRadius());
+                        mergedGeometries.put(cellType, mergedGeometry);
+                    }
+                }
+
 
                 for (int i = 0; i < currentCellGroupPositions.size(); i++)
                 {
@@ -1052,10 +1072,20 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
                     logger.logComment("Added the 3D object class in hashtable as: " +
                                       newCellReference);
 
+                    if (mergedGeometry != null)
+                        cell3D.setMergedGeometry(mergedGeometry);
+
                     cell3D.setDefaultCellAppearance(colorOfCellGroup);
 
                     TransformGroup cellTG = cell3D.createCellTransformGroup();
 
+                    if (mergedGeometry != null)
+                    {
+                        // for finding the cell when a segment is picked
+                        cellTG.setCapability(Node.ENABLE_PICK_REPORTING);
+                        cellTG.setUserData(newCellReference);
+                    }
+
                     Transform3D position3D = new Transform3D();
 
                     Vector3d posn = new Vector3d(posRecord.x_pos,
@@ -1507,28 +1537,49 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
             if (segForPrim>=0)
             {
-                String cellGroup = getCellGroup(nextName);
-                
-                int cellNumber = SimulationData.getCellNum(nextName);
+                showSelectedSegment(nextName, oneCell, segForPrim);
+            }
+        }
 
-                logger.logComment("Found the cell. It's number : " + cellNumber + " in " + cellGroup);
+        if (segForPrim<0)
+        {
+            return;
+        }
 
-                jComboBoxCellGroup.setSelectedItem(cellGroup);
+    }
 
-                jComboBoxCellNum.setSelectedItem("Cell: " + cellNumber);  // updates colour
 
-                Segment seg = oneCell.getDisplayedCell().getSegmentWithId(segForPrim);
+    @Override
+    public void markMergedSegmentAsSelected(Object cellUserData, int segmentId)
+    {
+        logger.logComment("Being told segment " + segmentId + " of " + cellUserData + " has been selected...");
 
-                jTextFieldSegment.setText("ID: "+ seg.getSegmentId()+", "+seg.getSegmentName());
+        if (!(cellUserData instanceof String)) return;
 
-            }
-        }
+        OneCell3D oneCell = this.getOneCell3D((String)cellUserData);
 
-        if (segForPrim<0)
+        if (oneCell != null)
         {
-            return;
+            showSelectedSegment((String)cellUserData, oneCell, segmentId);
         }
+    }
+
 
+    private void showSelectedSegment(String cellReference, OneCell3D oneCell, int segmentId)
+    {
+        String cellGroup = getCellGroup(cellReference);
+
+        int cellNumber = SimulationData.getCellNum(cellReference);
+
+        logger.logComment("Found the cell. It's number : " + cellNumber + " in " + cellGroup);
+
+        jComboBoxCellGroup.setSelectedItem(cellGroup);
+
+        jComboBoxCellNum.setSelectedItem("Cell: " + cellNumber);  // updates colour
+
+        Segment seg = oneCell.getDisplayedCell().getSegmentWithId(segmentId);
+
+        jTextFieldSegment.setText("ID: "+ seg.getSegmentId()+", "+seg.getSegmentName());
     }
 
 
@@ -1950,60 +2001,52 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
      */
     public void setColour(String cellItemReference, Color colour)
     {
-        //System.out.println("Receiving.."+colour.getRGB());
+        ReplayTarget target = getReplayTarget(cellItemReference);
 
-        String cellOnlyReference = SimulationData.getCellOnlyReference(cellItemReference);
+        if (target != null)
+        {
+            target.applyAppearance(Utils3D.getGeneralObjectAppearance(colour), false);
+        }
+    }
 
-        logger.logComment("cellItemReference: "+cellItemReference+", cellOnlyReference: "+cellOnlyReference);
 
-        int id = SimulationData.getSegmentId(cellItemReference);
+    /**
+     * Handle on the segment, synapse or whole cell referred to by cellItemReference, which is
+     * of the same form as for setColour()
+     */
+    public ReplayTarget getReplayTarget(String cellItemReference)
+    {
+        String cellOnlyReference = SimulationData.getCellOnlyReference(cellItemReference);
+
+        if (logger.isEnabled()) logger.logComment("cellItemReference: "+cellItemReference+", cellOnlyReference: "+cellOnlyReference);
 
         OneCell3D oneCell = this.getOneCell3D(cellOnlyReference);
 
+        if (oneCell == null) return null;
+
         PostSynapticObject pso = SimulationData.getPostSynapticObject(cellItemReference);
 
-        if (pso==null)
+        if (pso != null)
         {
-            if (id < 0)
-            {
-                // old way of storing, e.g. CellGroup_0_0.Soma.dat  ...
-                String segName = SimulationData.getSegmentName(cellItemReference);
-
-                if (segName != null)
-                {
-                    Segment seg = oneCell.getDisplayedCell().getSegmentWithName(segName, true);
-                    id = seg.getSegmentId();
+            return ReplayTarget.forSynapse(oneCell, getSynPrimRef(pso.getNetConnName(), pso.getSynapseIndex()));
+        }
 
-                    if (oneCell != null)
-                    {
-                        oneCell.setSegmentAppearance(Utils3D.getGeneralObjectAppearance(colour),
-                                                     id);
-                        return;
-                    }
-                }
+        int id = SimulationData.getSegmentId(cellItemReference);
 
-                oneCell.setWholeCellAppearance(Utils3D.getGeneralObjectAppearance(colour));
-            }
-            else
-            {
-                if (oneCell != null)
-                {
-                    oneCell.setSegmentAppearance(Utils3D.getGeneralObjectAppearance(colour),
-                                                 id);
-                }
-            }
-        }
-        else
+        if (id < 0)
         {
-            String synRef = getSynPrimRef(pso.getNetConnName(), pso.getSynapseIndex());
+            // old way of storing, e.g. CellGroup_0_0.Soma.dat  ...
+            String segName = SimulationData.getSegmentName(cellItemReference);
 
-            if (oneCell != null)
+            if (segName != null)
             {
-                oneCell.setSynapseAppearance(Utils3D.getGeneralObjectAppearance(colour),
-                                             synRef);
+                Segment seg = oneCell.getDisplayedCell().getSegmentWithName(segName, true);
+                return ReplayTarget.forSegment(oneCell, seg.getSegmentId());
             }
 
+            return ReplayTarget.forWholeCell(oneCell);
         }
+        return ReplayTarget.forSegment(oneCell, id);
     }
 
 
@@ -3320,43 +3363,21 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
         double simDuration = (stopTime - startTime);
 
+        ArrayList<String> cellRefs = new ArrayList<String>();
         for (int cellNum = 0; cellNum < total; cellNum++)
         {
-            double[] voltages = null;
-
-
-            String cellRef = SimulationData.getCellSegRef(cellGroup, cellNum, 0, simRerunFrame.isOnlySomaValues());
-
-
-            voltages = simRerunFrame.getVoltageAtAllTimes(cellRef);
+            cellRefs.add(SimulationData.getCellSegRef(cellGroup, cellNum, 0, simRerunFrame.isOnlySomaValues()));
+        }
 
+        ArrayList<double[]> spikeSets = simRerunFrame.getSimulationData().getSpikeTimes(cellRefs, threshold, startTime, stopTime);
 
-            boolean spiking = false;
-            Vector<Double> spikeTimes = new Vector<Double>();
+        for (int cellNum = 0; cellNum < total; cellNum++)
+        {
+            double[] spikeTimes = spikeSets.get(cellNum);
 
-            for (int i = 0; i < voltages.length; i++)
-            {
-                double nextY = voltages[i];
-                if (nextY >= threshold)
-                {
-                    if (!spiking)
-                    {
-                        if (times[i] >= startTime &&
-                            times[i] <= stopTime)
-                        {
-                            spikeTimes.add(new Double(times[i]));
-                        }
-                    }
-                    spiking = true;
-                }
-                else
-                {
-                    spiking = false;
-                }
-            }
-            int numSpikes = spikeTimes.size();
+            int numSpikes = spikeTimes.length;
             //double interspikeInterval = simDuration / (double) spikeTimes.size();
-            double freq = ( spikeTimes.size() / simDuration) * 1000;
+            double freq = ( numSpikes / simDuration) * 1000;
 
             desc.append("Cell num " + cellNum + ": Total num of spikes: " + numSpikes
                         + ", Average frequency: " + freq + " KHz \n");
@@ -3417,7 +3438,7 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
         //int total = project.generatedCellPositions.getNumberInCellGroup(cellGroup);
 
-        ArrayList<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroup);
+        List<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroup);
 
         CellChooser myCellChooser = new AllCells();
         String request = "Please select the cells in cell group: " +
@@ -3733,7 +3754,7 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
         //int total = project.generatedCellPositions.getNumberInCellGroup(cellGroup);
 
-        ArrayList<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroup);
+        List<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroup);
 
         CellChooser myCellChooser = new AllCells();
         String request = "Please select the cells in cell group: " +
@@ -3934,17 +3955,16 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
         preferredSpikeValsEntered = true;
 
-        ArrayList<double[]> spikeSets = new ArrayList<double[]>();
+        ArrayList<String> cellSegRefs = new ArrayList<String>();
 
         for (int i = 0; i <  orderedCellNums.size(); i++)  
         {
             int cellNum = orderedCellNums.get(i);
-            String cellSegRef = SimulationData.getCellSegRef(cellGroup, cellNum, 0, simRerunFrame.isOnlySomaValues());
-           
-            double[] voltages = simRerunFrame.getVoltageAtAllTimes(cellSegRef);
-            spikeSets.add(i, SpikeAnalyser.getSpikeTimes(voltages, times, threshold, startTime, stopTime));
+            cellSegRefs.add(SimulationData.getCellSegRef(cellGroup, cellNum, 0, simRerunFrame.isOnlySomaValues()));
         }
 
+        ArrayList<double[]> spikeSets = simRerunFrame.getSimulationData().getSpikeTimes(cellSegRefs, threshold, startTime, stopTime);
+
         cellGroupSync = SpikeAnalyser.getSlidingSpikeSynchrony(spikeSets, times, slideSize, startTime, stopTime);
 
         
@@ -4025,7 +4045,7 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
         spikeOptions.setThreshold(threshold);
 
 
-        ArrayList<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(chosenCellGroup);
+        List<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(chosenCellGroup);
 
 
         CellChooser myCellChooser = new AllCells();
@@ -4173,7 +4193,7 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
             return;
         }
 
-        ArrayList<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroupSelected);
+        List<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(cellGroupSelected);
 
         int selcellNum = selNums.get(0);
 
@@ -4528,30 +4548,18 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
         //DataSet isiHist = new DataSet("Histogram of spiking of Cell Group "+cellGroup, "...");
 
-        ArrayList<Double> allInterSpikeIntervals = new ArrayList<Double>();
+        ArrayList<String> cellRefs = new ArrayList<String>();
 
         for (int cellNum = 0; cellNum < total; cellNum++)
         {
-            double[] voltages = null;
-
-
-            String cellRef = SimulationData.getCellSegRef(cellGroup, cellNum, 0, simRerunFrame.isOnlySomaValues());
-
-            logger.logComment("Data for soma only present...");
-            voltages = simRerunFrame.getVoltageAtAllTimes(cellRef);
-
-            logger.logComment("Voltages:  ("+voltages.length+"): "+ voltages[0]+", "+ voltages[1]+", ... , "+ voltages[voltages.length-1]);
-
-            ArrayList<Double> latestInterSpikeIntervals
-                = SpikeAnalyser.getInterSpikeIntervals(voltages,
-                                                       times,
-                                                       threshold,
-                                                       startTime,
-                                                       stopTime);
-
-            allInterSpikeIntervals.addAll(latestInterSpikeIntervals);
+            cellRefs.add(SimulationData.getCellSegRef(cellGroup, cellNum, 0, simRerunFrame.isOnlySomaValues()));
         }
 
+        ArrayList<double[]> isiSets = simRerunFrame.getSimulationData().getInterSpikeIntervals(cellRefs,
+                                                                                                 threshold,
+                                                                                                 startTime,
+                                                                                                 stopTime);
+
 
 
         //int numBins = (int)Math.floor((simDuration)/binSize) + 1;
@@ -4566,14 +4574,15 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
 
             int totalHere = 0;
 
-            for (int j = 0; j < allInterSpikeIntervals.size(); j++)
+            for (double[] isis: isiSets)
             {
-                    double isi = (allInterSpikeIntervals.get(j)).doubleValue();
-
+                for (double isi: isis)
+                {
                     if (isi>=startISI && isi<endISI)
                     {
                         totalHere++;
                     }
+                }
             }
             popISIHist.addPoint((endISI+startISI)/2f, totalHere);
 
@@ -4581,13 +4590,14 @@ public class Main3DPanel extends Base3DPanel implements SimulationInterface
         logger.logComment("Done bin allocation...");
         ///check more...
         boolean warn = false;
-        for (int j = 0; j < allInterSpikeIntervals.size(); j++)
+        for (double[] isis: isiSets)
         {
-            double isi = allInterSpikeIntervals.get(j).doubleValue();
-
-            if (isi >= maxSize)
+            for (double isi: isis)
             {
-                warn = true;
+                if (isi >= maxSize)
+                {
+                    warn = true;
+                }
             }
         }
         if (warn)
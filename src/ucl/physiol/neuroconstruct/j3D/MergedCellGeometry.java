@@ -0,0 +1,596 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.j3D;
+
+import java.util.*;
+import javax.media.j3d.*;
+import javax.vecmath.*;
+
+import java.awt.*;
+
+import com.sun.j3d.utils.picking.*;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * The segments of one cell type merged into a single geometry for each level of detail
+ * (solid, lines and soma only), for showing large networks. The coordinate, normal and
+ * index arrays are built once and shared by all cells of that type. Cells which have the
+ * default colour of their cell group are drawn via a Link to a SharedGroup; a cell given
+ * other colours gets its own geometry objects, still using the shared coordinate arrays,
+ * with its own per vertex colours.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class MergedCellGeometry
+{
+    private static ClassLogger logger = new ClassLogger("MergedCellGeometry");
+
+    public static final int LEVEL_SOLID = 0;
+    public static final int LEVEL_LINES = 1;
+    public static final int LEVEL_SOMA_ONLY = 2;
+
+    public static final int NUM_LEVELS = 3;
+
+    /*
+     * The level switches to lines & to soma only at these multiples of the cell's extent
+     */
+    private static final float LINES_DISTANCE_FACTOR = 8;
+    private static final float SOMA_ONLY_DISTANCE_FACTOR = 30;
+
+    /*
+     * Most number of sides of the solid segments, as the resolution of the display
+     * is meant for individual Primitives
+     */
+    private static final int MAX_SIDES = 12;
+
+    private static final int MIN_SIDES = 3;
+
+    private float[][] coords = new float[NUM_LEVELS][];
+    private float[][] normals = new float[NUM_LEVELS][];
+    private int[][] indices = new int[NUM_LEVELS][];
+
+    /*
+     * For each level, the first vertex and the segment id of each segment in the geometry,
+     * in the order they were added
+     */
+    private int[][] firstVertices = new int[NUM_LEVELS][];
+    private int[][] segmentIds = new int[NUM_LEVELS][];
+
+    /*
+     * Index of segment in firstVertices/segmentIds for each level, or -1
+     */
+    private Hashtable<Integer, int[]> segmentEntries = new Hashtable<Integer, int[]>();
+
+    private float extent = 0;
+
+    private Hashtable<Color, SharedGroup[]> sharedGroups = new Hashtable<Color, SharedGroup[]>();
+
+
+    /**
+     * @param cell The cell whose segments are to be merged
+     * @param resolution Resolution of the 3D elements, as in Display3DProperties
+     * @param minRadius Minimum radius to show for the segments
+     */
+    public MergedCellGeometry(Cell cell, int resolution, float minRadius)
+    {
+        int sides = Math.max(MIN_SIDES, Math.min(MAX_SIDES, resolution));
+
+        Vector<Segment> segs = cell.getAllSegments();
+
+        MeshBuilder solid = new MeshBuilder(true);
+        MeshBuilder lines = new MeshBuilder(false);
+        MeshBuilder somaOnly = new MeshBuilder(true);
+
+        for (int i = 0; i < segs.size(); i++)
+        {
+            Segment seg = segs.get(i);
+            int[] entries = new int[]{-1, -1, -1};
+
+            entries[LEVEL_SOLID] = solid.addSegment(seg, sides, minRadius);
+            entries[LEVEL_LINES] = lines.addSegment(seg, sides, minRadius);
+
+            if (seg.isSomaSegment())
+            {
+                entries[LEVEL_SOMA_ONLY] = somaOnly.addSegment(seg, sides, minRadius);
+            }
+            segmentEntries.put(seg.getSegmentId(), entries);
+
+            extent = Math.max(extent, seg.getStartPointPosition().distance(new Point3f()) + seg.getSegmentStartRadius());
+            extent = Math.max(extent, seg.getEndPointPosition().distance(new Point3f()) + seg.getRadius());
+        }
+
+        MeshBuilder[] builders = new MeshBuilder[]{solid, lines, somaOnly};
+
+        for (int level = 0; level < NUM_LEVELS; level++)
+        {
+            coords[level] = builders[level].coords.toArray();
+            firstVertices[level] = builders[level].firstVertices.toArray();
+            segmentIds[level] = builders[level].segmentIds.toArray();
+
+            if (builders[level].solid)
+            {
+                normals[level] = builders[level].normals.toArray();
+                indices[level] = builders[level].indices.toArray();
+            }
+        }
+
+        if (logger.isEnabled()) logger.logComment("Merged "+segs.size()+" segments of "+cell.getInstanceName()
+                                                  +" into "+getNumVertices(LEVEL_SOLID)+" vertices, extent: "+extent);
+    }
+
+
+    public int getNumVertices(int level)
+    {
+        return coords[level].length / 3;
+    }
+
+    /**
+     * Distances from the viewer at which a DistanceLOD should switch to the next level
+     */
+    public float[] getLodDistances()
+    {
+        float size = Math.max(extent, 1);
+        return new float[]{LINES_DISTANCE_FACTOR * size, SOMA_ONLY_DISTANCE_FACTOR * size};
+    }
+
+
+    /**
+     * SharedGroups (one per level) of the cell with every segment in the given colour
+     */
+    public SharedGroup[] getSharedGroups(Color colour)
+    {
+        SharedGroup[] groups = sharedGroups.get(colour);
+
+        if (groups == null)
+        {
+            groups = new SharedGroup[NUM_LEVELS];
+
+            for (int level = 0; level < NUM_LEVELS; level++)
+            {
+                groups[level] = new SharedGroup();
+
+                Shape3D shape = createShape(level, createColours(level, new Color3f(colour)),
+                                            Utils3D.createGeneralObjectAppearance(colour));
+                if (shape != null)
+                {
+                    groups[level].addChild(shape);
+                }
+            }
+            sharedGroups.put(colour, groups);
+        }
+        return groups;
+    }
+
+
+    /**
+     * Array of per vertex colours for the level with every segment in the given colour
+     */
+    public byte[] createColours(int level, Color3f colour)
+    {
+        byte[] colours = new byte[coords[level].length];
+        setColour(colours, 0, colours.length / 3, colour);
+        return colours;
+    }
+
+
+    /**
+     * A new Shape3D for the level, whose geometry uses the shared coordinates and the given
+     * colours, or null if there is nothing to show at that level. The user data of the shape
+     * is a LevelData, for picking
+     */
+    public Shape3D createShape(int level, byte[] colours, Appearance app)
+    {
+        int numVertices = getNumVertices(level);
+        if (numVertices == 0) return null;
+
+        GeometryArray geom = null;
+
+        if (level == LEVEL_LINES)
+        {
+            geom = new LineArray(numVertices,
+                                 GeometryArray.COORDINATES
+                                 | GeometryArray.COLOR_3
+                                 | GeometryArray.BY_REFERENCE);
+
+            // Lighting doesn't apply to the lines
+            app = new Appearance();
+        }
+        else
+        {
+            IndexedTriangleArray ita = new IndexedTriangleArray(numVertices,
+                                                                GeometryArray.COORDINATES
+                                                                | GeometryArray.NORMALS
+                                                                | GeometryArray.COLOR_3
+                                                                | GeometryArray.BY_REFERENCE
+                                                                | GeometryArray.USE_COORD_INDEX_ONLY,
+                                                                indices[level].length);
+            ita.setNormalRefFloat(normals[level]);
+            ita.setCoordinateIndices(0, indices[level]);
+            geom = ita;
+        }
+
+        geom.setCoordRefFloat(coords[level]);
+        geom.setColorRefByte(colours);
+        geom.setCapability(GeometryArray.ALLOW_REF_DATA_WRITE);
+
+        Shape3D shape = new Shape3D(geom, app);
+        shape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
+        shape.setUserData(new LevelData(this, level));
+
+        PickTool.setCapabilities(shape, PickTool.INTERSECT_FULL);
+
+        return shape;
+    }
+
+
+    /**
+     * Sets the colour of one segment in the colours of a Shape3D from createShape()
+     */
+    public void setSegmentColour(Shape3D shape, int level, int segmentId, Color3f colour)
+    {
+        int entry = getEntry(level, segmentId);
+
+        if (entry < 0) return;
+
+        updateColours(shape, firstVertices[level][entry], getNumVertices(level, entry), colour);
+    }
+
+    /**
+     * Sets the colours of the first num of segmentIds in the colours of a Shape3D from
+     * createShape() with a single update of the geometry. Later entries for the same
+     * segment take precedence
+     */
+    public void setSegmentColours(Shape3D shape, final int level, final int[] segmentIds, final Color3f[] colours, final int num)
+    {
+        if (shape == null || num <= 0) return;
+
+        GeometryArray geom = (GeometryArray)shape.getGeometry();
+
+        geom.updateData(new GeometryUpdater()
+        {
+            public void updateData(Geometry geometry)
+            {
+                byte[] colourRef = ((GeometryArray)geometry).getColorRefByte();
+
+                for (int i = 0; i < num; i++)
+                {
+                    int entry = getEntry(level, segmentIds[i]);
+
+                    if (entry >= 0)
+                        setColour(colourRef, firstVertices[level][entry], getNumVertices(level, entry), colours[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the colour of every segment in the colours of a Shape3D from createShape()
+     */
+    public void setAllColours(Shape3D shape, int level, Color3f colour)
+    {
+        updateColours(shape, 0, getNumVertices(level), colour);
+    }
+
+
+    /**
+     * Index of the segment in the vertices of the level, or -1 if it's not shown at that level
+     */
+    private int getEntry(int level, int segmentId)
+    {
+        int[] entries = segmentEntries.get(segmentId);
+
+        if (entries == null) return -1;
+
+        return entries[level];
+    }
+
+    private int getNumVertices(int level, int entry)
+    {
+        int first = firstVertices[level][entry];
+
+        return (entry + 1 < firstVertices[level].length ? firstVertices[level][entry + 1] : getNumVertices(level)) - first;
+    }
+
+
+    private void updateColours(Shape3D shape, final int first, final int num, final Color3f colour)
+    {
+        if (shape == null || num <= 0) return;
+
+        GeometryArray geom = (GeometryArray)shape.getGeometry();
+
+        geom.updateData(new GeometryUpdater()
+        {
+            public void updateData(Geometry geometry)
+            {
+                setColour(((GeometryArray)geometry).getColorRefByte(), first, num, colour);
+            }
+        });
+    }
+
+
+    private static void setColour(byte[] colours, int firstVertex, int numVertices, Color3f colour)
+    {
+        byte r = (byte)Math.round(colour.x * 255);
+        byte g = (byte)Math.round(colour.y * 255);
+        byte b = (byte)Math.round(colour.z * 255);
+
+        for (int i = firstVertex * 3; i < (firstVertex + numVertices) * 3; i = i + 3)
+        {
+            colours[i] = r;
+            colours[i + 1] = g;
+            colours[i + 2] = b;
+        }
+    }
+
+
+    /**
+     * Id of the segment which a vertex of the level belongs to, or -1
+     */
+    public int getSegmentId(int level, int vertexIndex)
+    {
+        int[] firsts = firstVertices[level];
+
+        int pos = Arrays.binarySearch(firsts, vertexIndex);
+        if (pos < 0) pos = -pos - 2; // i.e. the entry starting before the vertex
+
+        if (pos < 0 || vertexIndex >= getNumVertices(level)) return -1;
+
+        return segmentIds[level][pos];
+    }
+
+
+    /**
+     * Set as the user data of the shapes, so the segment picked can be found
+     */
+    public static class LevelData
+    {
+        private MergedCellGeometry geometry;
+        private int level;
+
+        private LevelData(MergedCellGeometry geometry, int level)
+        {
+            this.geometry = geometry;
+            this.level = level;
+        }
+
+        public int getSegmentId(int vertexIndex)
+        {
+            return geometry.getSegmentId(level, vertexIndex);
+        }
+    }
+
+
+    /*
+     * Adds the vertices of each segment, as frustums and spheres (with normals and triangle
+     * indices) or as lines
+     */
+    private static class MeshBuilder
+    {
+        boolean solid;
+
+        FloatList coords = new FloatList();
+        FloatList normals = new FloatList();
+        IntList indices = new IntList();
+
+        IntList firstVertices = new IntList();
+        IntList segmentIds = new IntList();
+
+        int numVertices = 0;
+
+        MeshBuilder(boolean solid)
+        {
+            this.solid = solid;
+        }
+
+        /*
+         * Returns the index of the entry for the segment
+         */
+        int addSegment(Segment seg, int sides, float minRadius)
+        {
+            firstVertices.add(numVertices);
+            segmentIds.add(seg.getSegmentId());
+
+            Point3f start = seg.getStartPointPosition();
+            Point3f end = seg.getEndPointPosition();
+            float startRadius = Math.max(seg.getSegmentStartRadius(), minRadius);
+            float endRadius = Math.max(seg.getRadius(), minRadius);
+
+            boolean spherical = seg.isSpherical() || start.equals(end);
+
+            if (!solid)
+            {
+                if (spherical)
+                {
+                    addVertex(start.x, start.y - endRadius, start.z, 0, 0, 0);
+                    addVertex(start.x, start.y + endRadius, start.z, 0, 0, 0);
+                }
+                else
+                {
+                    addVertex(start.x, start.y, start.z, 0, 0, 0);
+                    addVertex(end.x, end.y, end.z, 0, 0, 0);
+                }
+            }
+            else if (spherical)
+            {
+                addSphere(start, endRadius, sides);
+            }
+            else
+            {
+                addFrustum(start, end, startRadius, endRadius, sides);
+            }
+
+            return firstVertices.size() - 1;
+        }
+
+
+        void addFrustum(Point3f start, Point3f end, float startRadius, float endRadius, int sides)
+        {
+            Vector3f axis = new Vector3f(end);
+            axis.sub(start);
+            axis.normalize();
+
+            Vector3f other = Math.abs(axis.x) < 0.9f ? new Vector3f(1, 0, 0) : new Vector3f(0, 1, 0);
+
+            Vector3f u = new Vector3f();
+            u.cross(axis, other);
+            u.normalize();
+
+            Vector3f v = new Vector3f();
+            v.cross(axis, u);
+
+            int base = numVertices;
+
+            for (int k = 0; k < sides; k++)
+            {
+                double theta = 2 * Math.PI * k / sides;
+                float nx = (float)(Math.cos(theta) * u.x + Math.sin(theta) * v.x);
+                float ny = (float)(Math.cos(theta) * u.y + Math.sin(theta) * v.y);
+                float nz = (float)(Math.cos(theta) * u.z + Math.sin(theta) * v.z);
+
+                addVertex(start.x + startRadius * nx, start.y + startRadius * ny, start.z + startRadius * nz, nx, ny, nz);
+                addVertex(end.x + endRadius * nx, end.y + endRadius * ny, end.z + endRadius * nz, nx, ny, nz);
+            }
+
+            // Counter clockwise when seen from outside
+            for (int k = 0; k < sides; k++)
+            {
+                int a = base + 2 * k;
+                int b = a + 1;
+                int c = base + 2 * ((k + 1) % sides);
+                int d = c + 1;
+
+                addTriangle(a, c, b);
+                addTriangle(b, c, d);
+            }
+        }
+
+
+        void addSphere(Point3f centre, float radius, int sides)
+        {
+            int stacks = Math.max(2, sides / 2);
+            int base = numVertices;
+
+            for (int i = 0; i <= stacks; i++)
+            {
+                double phi = Math.PI * i / stacks;
+
+                for (int k = 0; k < sides; k++)
+                {
+                    double theta = 2 * Math.PI * k / sides;
+
+                    float nx = (float)(Math.sin(phi) * Math.cos(theta));
+                    float ny = (float)Math.cos(phi);
+                    float nz = (float)(Math.sin(phi) * Math.sin(theta));
+
+                    addVertex(centre.x + radius * nx, centre.y + radius * ny, centre.z + radius * nz, nx, ny, nz);
+                }
+            }
+
+            // Counter clockwise when seen from outside
+            for (int i = 0; i < stacks; i++)
+            {
+                for (int k = 0; k < sides; k++)
+                {
+                    int a = base + i * sides + k;
+                    int b = base + i * sides + (k + 1) % sides;
+                    int c = a + sides;
+                    int d = b + sides;
+
+                    addTriangle(a, b, c);
+                    addTriangle(b, d, c);
+                }
+            }
+        }
+
+
+        void addVertex(float x, float y, float z, float nx, float ny, float nz)
+        {
+            coords.add(x);
+            coords.add(y);
+            coords.add(z);
+
+            if (solid)
+            {
+                normals.add(nx);
+                normals.add(ny);
+                normals.add(nz);
+            }
+            numVertices++;
+        }
+
+        void addTriangle(int a, int b, int c)
+        {
+            indices.add(a);
+            indices.add(b);
+            indices.add(c);
+        }
+    }
+
+
+    private static class FloatList
+    {
+        float[] values = new float[64];
+        int size = 0;
+
+        void add(float f)
+        {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = f;
+        }
+
+        float[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static class IntList
+    {
+        int[] values = new int[64];
+        int size = 0;
+
+        void add(int i)
+        {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = i;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
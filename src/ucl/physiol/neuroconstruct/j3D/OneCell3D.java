@@ -88,6 +88,12 @@ public class OneCell3D
     private Appearance cellAppBeforeTempSwitch = null;
     private Appearance cellAppDuringTempSwitch = null;
 
+    /**
+     * Number of appearance changes made other than by a ReplayTarget, so those know to
+     * reapply their colour
+     */
+    private volatile int appearanceChanges = 0;
+
     float stickScalingToVanish = 0.0001f;
 
     /**
@@ -115,6 +121,30 @@ public class OneCell3D
      */
     private LineArray stickSegmentGeom = null;
 
+    /**
+     * For when the cell is shown with the segments merged into one geometry (for large networks)
+     */
+    private MergedCellGeometry mergedGeometry = null;
+
+    /**
+     * Chooses the level of detail of the merged geometry
+     */
+    private Switch lodSwitch = null;
+
+    /**
+     * Shapes of this cell only for each level of the merged geometry, created once the cell
+     * has a colour other than the default
+     */
+    private Shape3D[] ownMergedShapes = null;
+
+    /**
+     * Segment colours set by ReplayTargets on the merged geometry, written to each level
+     * together in applyPendingColours()
+     */
+    private int[] pendingSegmentIds = new int[0];
+    private Color3f[] pendingColours = new Color3f[0];
+    private int numPending = 0;
+
     /**
      * Colours for internal points for NEURON/GENESIS views
      */
@@ -212,7 +242,8 @@ public class OneCell3D
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_NEURITE_SOLID)||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_NEURITE_SOLID_UNSHINY)||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_SOLID_NEURITE_NONE)||
-            project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_SOLID_NEURITE_LINE)/*||
+            project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_SOLID_NEURITE_LINE)||
+            mergedOptionWithoutGeometry()/*||
             //project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_NEURON)||
             //project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_GENESIS_SIMPLE)||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_GENESIS_MULTI)*/;
@@ -228,7 +259,8 @@ public class OneCell3D
         return
             this.showingProjection() ||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_NEURITE_SOLID)||
-            project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_NEURITE_SOLID_UNSHINY)/*||
+            project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_SOMA_NEURITE_SOLID_UNSHINY)||
+            mergedOptionWithoutGeometry()/*||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_NEURON)||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_GENESIS_SIMPLE)||
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_GENESIS_MULTI)*/;
@@ -250,6 +282,30 @@ public class OneCell3D
             project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_GENESIS_MULTI)*/;
     }
 
+    /**
+     * The merged display option is only used when a MergedCellGeometry has been set (i.e. by
+     * Main3DPanel), otherwise all segments are shown solid
+     */
+    private boolean mergedOptionWithoutGeometry()
+    {
+        return mergedGeometry == null &&
+            project.proj3Dproperties.getDisplayOption().equals(Display3DProperties.DISPLAY_MERGED_LOD);
+    }
+
+    /**
+     * Show the cell using the merged geometry of its cell type, instead of creating Primitives for
+     * each segment. Must be set before createCellTransformGroup()
+     */
+    public void setMergedGeometry(MergedCellGeometry mergedGeometry)
+    {
+        this.mergedGeometry = mergedGeometry;
+    }
+
+    public boolean isMerged()
+    {
+        return mergedGeometry != null;
+    }
+
     /**
      * Depending on the display option in Display3DProperties of the project, should the segments be
      * transparent
@@ -297,6 +353,11 @@ public class OneCell3D
     {
         //GeneralUtils.timeCheck("Start creating TransformGroup");
 
+        if (mergedGeometry != null)
+        {
+            return createMergedTransformGroup();
+        }
+
         mainCellTG = new TransformGroup();
 
         logger.logComment("");
@@ -561,6 +622,176 @@ public class OneCell3D
     }
 
 
+    /**
+     * A Switch, changed by a DistanceLOD, between Links to the shared geometry of the cell type
+     * at each level of detail
+     */
+    private TransformGroup createMergedTransformGroup()
+    {
+        mainCellTG = new TransformGroup();
+
+        this.addAxonalArbours(mainCellTG);
+
+        lodSwitch = new Switch(MergedCellGeometry.LEVEL_SOLID);
+        lodSwitch.setCapability(Switch.ALLOW_SWITCH_WRITE);
+        lodSwitch.setCapability(Switch.ALLOW_CHILDREN_READ);
+        lodSwitch.setCapability(Switch.ALLOW_CHILDREN_WRITE);
+
+        SharedGroup[] shared = mergedGeometry.getSharedGroups(currentDefaultSegmentColour);
+
+        for (int level = 0; level < MergedCellGeometry.NUM_LEVELS; level++)
+        {
+            BranchGroup levelBG = new BranchGroup();
+            levelBG.setCapability(BranchGroup.ALLOW_DETACH);
+            levelBG.addChild(new Link(shared[level]));
+
+            lodSwitch.addChild(levelBG);
+        }
+        ownMergedShapes = null;
+
+        mainCellTG.addChild(lodSwitch);
+
+        DistanceLOD lod = new DistanceLOD(mergedGeometry.getLodDistances());
+        lod.addSwitch(lodSwitch);
+        lod.setSchedulingBounds(new BoundingSphere(new Point3d(), Double.MAX_VALUE));
+
+        mainCellTG.addChild(lod);
+
+        return mainCellTG;
+    }
+
+
+    /**
+     * Replaces the Links to the shared geometry with shapes of this cell only, so colours can be
+     * set for this cell's segments
+     */
+    private void createOwnMergedShapes()
+    {
+        if (ownMergedShapes != null) return;
+
+        ownMergedShapes = new Shape3D[MergedCellGeometry.NUM_LEVELS];
+        Color3f colour = new Color3f(currentDefaultSegmentColour);
+
+        for (int level = 0; level < MergedCellGeometry.NUM_LEVELS; level++)
+        {
+            ownMergedShapes[level] = mergedGeometry.createShape(level,
+                                                                mergedGeometry.createColours(level, colour),
+                                                                Utils3D.getGeneralObjectAppearance(currentDefaultSegmentColour));
+
+            BranchGroup levelBG = new BranchGroup();
+            levelBG.setCapability(BranchGroup.ALLOW_DETACH);
+
+            if (ownMergedShapes[level] != null)
+                levelBG.addChild(ownMergedShapes[level]);
+
+            lodSwitch.setChild(levelBG, level);
+        }
+    }
+
+
+    private static Color3f getDiffuseColour(Appearance app)
+    {
+        return getDiffuseColour(app, new Color3f());
+    }
+
+    private static Color3f getDiffuseColour(Appearance app, Color3f colour)
+    {
+        colour.set(1, 1, 1);
+
+        if (app.getMaterial() != null)
+            app.getMaterial().getDiffuseColor(colour);
+
+        return colour;
+    }
+
+
+    private void setMergedSegmentAppearance(Appearance app, int segId)
+    {
+        if (lodSwitch == null) return;
+
+        createOwnMergedShapes();
+
+        Color3f colour = getDiffuseColour(app);
+
+        for (int level = 0; level < MergedCellGeometry.NUM_LEVELS; level++)
+        {
+            mergedGeometry.setSegmentColour(ownMergedShapes[level], level, segId, colour);
+        }
+    }
+
+    /**
+     * Remembers the colour for the segment until applyPendingColours(), so all of the segments
+     * replayed in one frame only need one update of each level's geometry
+     */
+    private synchronized void addPendingColour(Appearance app, int segId)
+    {
+        if (lodSwitch == null) return;
+
+        if (numPending == pendingSegmentIds.length)
+        {
+            int newSize = Math.max(16, numPending * 2);
+
+            pendingSegmentIds = Arrays.copyOf(pendingSegmentIds, newSize);
+            pendingColours = Arrays.copyOf(pendingColours, newSize);
+
+            for (int i = numPending; i < newSize; i++)
+            {
+                pendingColours[i] = new Color3f();
+            }
+        }
+        pendingSegmentIds[numPending] = segId;
+        getDiffuseColour(app, pendingColours[numPending]);
+        numPending++;
+    }
+
+    /**
+     * Writes any segment colours set by ReplayTargets since the last call to the merged geometry
+     */
+    synchronized void applyPendingColours()
+    {
+        if (numPending == 0) return;
+
+        createOwnMergedShapes();
+
+        for (int level = 0; level < MergedCellGeometry.NUM_LEVELS; level++)
+        {
+            mergedGeometry.setSegmentColours(ownMergedShapes[level], level, pendingSegmentIds, pendingColours, numPending);
+        }
+        numPending = 0;
+    }
+
+
+    private void setMergedCellAppearance(Appearance app)
+    {
+        if (lodSwitch == null) return; // the default colour is used when the TransformGroup is created
+
+        synchronized (this)
+        {
+            numPending = 0; // the whole cell colour replaces any segment colours not yet applied
+        }
+
+        Color3f colour = getDiffuseColour(app);
+
+        if (ownMergedShapes == null && colour.equals(new Color3f(currentDefaultSegmentColour)) && !Utils3D.isTransparent(app))
+        {
+            return; // the shared geometry is already in this colour
+        }
+
+        createOwnMergedShapes();
+
+        for (int level = 0; level < MergedCellGeometry.NUM_LEVELS; level++)
+        {
+            mergedGeometry.setAllColours(ownMergedShapes[level], level, colour);
+
+            if (ownMergedShapes[level] != null && level != MergedCellGeometry.LEVEL_LINES)
+            {
+                // The per vertex colours are used for the diffuse colour
+                ownMergedShapes[level].setAppearance(app);
+            }
+        }
+    }
+
+
     private TransformGroup addFirstSomaSeg(Segment soma)
     {
         logger.logComment("_____       Adding first soma segment...   ");
@@ -1018,9 +1249,25 @@ public class OneCell3D
     }
 
 
+    int getAppearanceChanges()
+    {
+        return appearanceChanges;
+    }
+
+
     public void setSynapseAppearance(Appearance app, String synRef)
     {
-        logger.logComment("Setting app of synapse: " + synRef);
+        setSynapseAppearance(app, synRef, false);
+    }
+
+    /**
+     * @param replayed true when set by a ReplayTarget, which keeps track of what it has set itself
+     */
+    void setSynapseAppearance(Appearance app, String synRef, boolean replayed)
+    {
+        if (logger.isEnabled()) logger.logComment("Setting app of synapse: " + synRef);
+
+        if (!replayed) appearanceChanges++;
 
         if (synRef == null)
         {
@@ -1043,7 +1290,14 @@ public class OneCell3D
 
     public void setSegmentAppearance(Appearance app, int segId)//Segment segment)
     {
-        logger.logComment("Setting app of segment: "+ segId);
+        setSegmentAppearance(app, segId, false);
+    }
+
+    void setSegmentAppearance(Appearance app, int segId, boolean replayed)
+    {
+        if (logger.isEnabled()) logger.logComment("Setting app of segment: "+ segId);
+
+        if (!replayed) appearanceChanges++;
 
         if (segId == -1)
         {
@@ -1052,6 +1306,20 @@ public class OneCell3D
 
         }
 
+        if (mergedGeometry != null)
+        {
+            if (replayed)
+                addPendingColour(app, segId);
+            else
+                setMergedSegmentAppearance(app, segId);
+
+            if (wholeCellAppearance != null && !wholeCellAppearance.equals(app))
+            {
+                wholeCellAppearance = null;
+            }
+            return;
+        }
+
         if (showSticks() && stickSegmentGeom!=null)
         {
             Color3f color = new Color3f();
@@ -1072,7 +1340,7 @@ public class OneCell3D
 
                 if (!segmentShape.getAppearance().equals(app))
                 {
-                    logger.logComment("Setting the color of the finite vol cylinder of segment: "+segId);
+                    if (logger.isEnabled()) logger.logComment("Setting the color of the finite vol cylinder of segment: "+segId);
                     //Appearance tempApp = Utils3D.getGeneralObjectAppearance(Color.green);
                     segmentShape.setAppearance(app);
                 }
@@ -1119,8 +1387,22 @@ public class OneCell3D
 
     public void setWholeCellAppearance(Appearance app)
     {
+        setWholeCellAppearance(app, false);
+    }
+
+    void setWholeCellAppearance(Appearance app, boolean replayed)
+    {
+
+        if (logger.isEnabled()) logger.logComment("Setting appearance of cell with " + segmentPrimitives.size() + " segments: "+ app.hashCode());
 
-        logger.logComment("Setting appearance of cell with " + segmentPrimitives.size() + " segments: "+ app.hashCode());
+        if (!replayed) appearanceChanges++;
+
+        if (mergedGeometry != null)
+        {
+            setMergedCellAppearance(app);
+            wholeCellAppearance = app;
+            return;
+        }
 
         if (showSomaDiam())
         {
@@ -1161,9 +1443,16 @@ public class OneCell3D
     {
         cellAppDuringTempSwitch = app;
 
-        Primitive primarySomaPrimitive = segmentPrimitives.elements().nextElement();
+        if (mergedGeometry != null)
+        {
+            cellAppBeforeTempSwitch = wholeCellAppearance != null ? wholeCellAppearance : getDefaultSegmentApp();
+        }
+        else
+        {
+            Primitive primarySomaPrimitive = segmentPrimitives.elements().nextElement();
 
-        cellAppBeforeTempSwitch = primarySomaPrimitive.getAppearance();
+            cellAppBeforeTempSwitch = primarySomaPrimitive.getAppearance();
+        }
 
         setWholeCellAppearance(app);
 
@@ -1289,10 +1289,10 @@ public class OneCell3DPanel extends Base3DPanel implements UpdateOneCell
                 try
                 {
                     ArrayList<Segment> segs = displayedCell.getSegmentsInGroup(pg.getGroup());
+                    double[] vmValues = vm.evaluateAll(displayedCell, pg, CellTopologyHelper.getDistancesFromRoot(displayedCell));
                     for(Segment seg:  segs)
                     {
-                        double pgVal = pg.evaluateAt(displayedCell, seg, 0.5f);
-                        float vmVal = (float)vm.evaluateAt(pgVal);
+                        float vmVal = (float)vmValues[seg.getSegmentId()];
                         float fraction = -1;
                         if (maxVal != minVal)
                         {
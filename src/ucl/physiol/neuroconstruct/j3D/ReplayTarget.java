@@ -0,0 +1,148 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.j3D;
+
+import javax.media.j3d.Appearance;
+
+/**
+ * Direct handle on the segment, synapse or whole cell in the 3D view which a recorded
+ * cell item reference refers to, so the reference only has to be parsed once when a
+ * simulation is replayed. The last Appearance applied is remembered and setting the same
+ * one again does nothing, unless the cell has been recoloured in the meantime (e.g. when
+ * selected in the 3D view).
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class ReplayTarget
+{
+    public static final int WHOLE_CELL = -1;
+
+    private OneCell3D oneCell = null;
+
+    private int segmentId = WHOLE_CELL;
+
+    private String synRef = null;
+
+    private Appearance currentAppearance = null;
+
+    private int appearanceChangesSeen = 0;
+
+
+    private ReplayTarget(OneCell3D oneCell, int segmentId, String synRef)
+    {
+        this.oneCell = oneCell;
+        this.segmentId = segmentId;
+        this.synRef = synRef;
+    }
+
+    public static ReplayTarget forSegment(OneCell3D oneCell, int segmentId)
+    {
+        return new ReplayTarget(oneCell, segmentId, null);
+    }
+
+    public static ReplayTarget forWholeCell(OneCell3D oneCell)
+    {
+        return new ReplayTarget(oneCell, WHOLE_CELL, null);
+    }
+
+    public static ReplayTarget forSynapse(OneCell3D oneCell, String synRef)
+    {
+        return new ReplayTarget(oneCell, WHOLE_CELL, synRef);
+    }
+
+
+    /**
+     * Sets the appearance of the item in the 3D view, unless it's the same instance as was
+     * last set and the cell's appearance hasn't been changed some other way since. For
+     * segments of cells with merged geometry, applyPendingColours() needs to be called after
+     * @return true if the appearance was changed
+     */
+    public boolean setAppearance(Appearance app)
+    {
+        if (app == currentAppearance && oneCell.getAppearanceChanges() == appearanceChangesSeen) return false;
+
+        applyAppearance(app, true);
+
+        currentAppearance = app;
+        appearanceChangesSeen = oneCell.getAppearanceChanges();
+        return true;
+    }
+
+    /**
+     * @param replayed false if this should count as a change to the cell's appearance for
+     * any other ReplayTargets on it, e.g. when set once by Main3DPanel.setColour()
+     */
+    void applyAppearance(Appearance app, boolean replayed)
+    {
+        if (synRef != null)
+        {
+            oneCell.setSynapseAppearance(app, synRef, replayed);
+        }
+        else if (segmentId == WHOLE_CELL)
+        {
+            oneCell.setWholeCellAppearance(app, replayed);
+        }
+        else
+        {
+            oneCell.setSegmentAppearance(app, segmentId, replayed);
+        }
+    }
+
+    /**
+     * Writes the colours set with setAppearance() on segments of cells shown with merged
+     * geometry, which are kept until this is called so each cell's geometry is only updated
+     * once per frame
+     */
+    public static void applyPendingColours(ReplayTarget[] targets)
+    {
+        for (ReplayTarget target: targets)
+        {
+            if (target != null) target.oneCell.applyPendingColours();
+        }
+    }
+
+    /**
+     * Forget the last appearance set, so the next one set is always applied
+     */
+    public void reset()
+    {
+        currentAppearance = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (synRef != null)
+            return "ReplayTarget [synapse: "+synRef+"]";
+        if (segmentId == WHOLE_CELL)
+            return "ReplayTarget [whole cell]";
+
+        return "ReplayTarget [segment: "+segmentId+"]";
+    }
+}
@@ -83,6 +83,11 @@ public class SectionPicker extends PickMouseBehavior
             {
                 Shape3D shape3D = (Shape3D) pr.getNode(PickResult.SHAPE3D);
                 logger.logComment("Shape3d: " + shape3D);
+
+                if (shape3D != null && shape3D.getUserData() instanceof MergedCellGeometry.LevelData)
+                {
+                    pickMergedSegment(pr, (MergedCellGeometry.LevelData)shape3D.getUserData());
+                }
                 //logger.logComment("getGeometryArray: " + pr.getGeometryArray());
                 //logger.logComment("getIntersection: " + pr.getIntersection(0));
                // logger.logComment("getClosestVertexIndex: " + pr.getIntersection(0).getClosestVertexIndex());
@@ -95,5 +100,33 @@ public class SectionPicker extends PickMouseBehavior
             //base3DPanel.markPrimitiveAsSelected(selectedPrim);
         }
     }
+
+    /**
+     * The shapes of a merged cell hold all its segments, so the segment is found from the
+     * vertices of the intersected triangle (or line)
+     */
+    private void pickMergedSegment(PickResult pr, MergedCellGeometry.LevelData levelData)
+    {
+        PickResult geomResult = new PickResult(pr.getSceneGraphPath(), pickCanvas.getPickShape());
+
+        if (geomResult.numIntersections() == 0)
+        {
+            logger.logComment("No intersection with the geometry");
+            return;
+        }
+
+        PickIntersection pi = geomResult.getClosestIntersection(pickCanvas.getStartPosition());
+
+        int segmentId = levelData.getSegmentId(pi.getPrimitiveCoordinateIndices()[0]);
+
+        TransformGroup cellTG = (TransformGroup) pr.getNode(PickResult.TRANSFORM_GROUP);
+
+        logger.logComment("Picked segment "+ segmentId+" of merged cell: "+ (cellTG == null ? null : cellTG.getUserData()));
+
+        if (cellTG != null && segmentId >= 0)
+        {
+            base3DPanel.markMergedSegmentAsSelected(cellTG.getUserData(), segmentId);
+        }
+    }
 }
 
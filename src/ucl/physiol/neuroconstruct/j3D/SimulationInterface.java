@@ -45,6 +45,12 @@ public interface SimulationInterface
      */
     public void setColour(String cellItemRef, Color colour);
     
+    /**
+     * Handle for setting the appearance of a segment, synapse or whole cell directly, without
+     * parsing cellItemRef again. Returns null if the item isn't shown
+     */
+    public ReplayTarget getReplayTarget(String cellItemRef);
+    
     public void setTransparent(String cellItemRef);
     
     public void setTempAppearance(String cellOnlyRef, Appearance app);
@@ -255,15 +255,7 @@ public class Utils3D
             return cachedGenAppearances.get(index);
         }
 
-        Appearance app = new Appearance();
-
-        Color3f objColor = new Color3f(c);
-
-        Material m = new Material(objColor, black, objColor, objColor, 80.0f);
-        //m.setLightingEnable(false);
-        m.setCapability(Material.ALLOW_COMPONENT_READ);
-        app.setCapability(Appearance.ALLOW_MATERIAL_READ);
-        app.setMaterial(m);
+        Appearance app = createGeneralObjectAppearance(c);
 
         //logger.logComment("NOT Reusing app..", true);
 
@@ -279,6 +271,25 @@ public class Utils3D
         return app;
     }
 
+    /**
+     * New instance of the default coloured appearance, not taken from the cache. Used when
+     * a fixed set of appearances is to be shared, e.g. by AppearancePalette
+     */
+    public static Appearance createGeneralObjectAppearance(Color c)
+    {
+        Appearance app = new Appearance();
+
+        Color3f objColor = new Color3f(c);
+
+        Material m = new Material(objColor, black, objColor, objColor, 80.0f);
+        //m.setLightingEnable(false);
+        m.setCapability(Material.ALLOW_COMPONENT_READ);
+        app.setCapability(Appearance.ALLOW_MATERIAL_READ);
+        app.setMaterial(m);
+
+        return app;
+    }
+
     /**
      * Simple unshiny coloured appearance
      */
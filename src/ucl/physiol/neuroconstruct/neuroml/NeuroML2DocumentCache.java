@@ -0,0 +1,231 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.neuroml;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import org.neuroml.model.NeuroMLDocument;
+import org.neuroml.model.util.NeuroMLConverter;
+import ucl.physiol.neuroconstruct.project.GeneralProperties;
+import ucl.physiol.neuroconstruct.utils.ClassLogger;
+
+/**
+ * The NeuroML 2 documents read from the files included in networks (cells, channels, synapses),
+ * kept by a hash of the file contents. The same cell & channel files are often included from
+ * many files, and imported again and again, so are only read by libNeuroML once while unchanged.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class NeuroML2DocumentCache
+{
+    private static ClassLogger logger = new ClassLogger("NeuroML2DocumentCache");
+
+    /*
+     * The least recently used documents are dropped when the files they were read from total
+     * more than this
+     */
+    private static final long MAX_FILE_BYTES = 32L * 1024L * 1024L;
+
+    /*
+     * Each document, and the size of the file it was read from, by the hash of the contents,
+     * in order of access
+     */
+    private static final LinkedHashMap<String, NeuroMLDocument> documents
+        = new LinkedHashMap<String, NeuroMLDocument>(16, 0.75f, true);
+
+    private static final HashMap<String, Long> fileBytes = new HashMap<String, Long>();
+
+    private static long totalFileBytes = 0;
+
+    private NeuroML2DocumentCache()
+    {
+    }
+
+    /**
+     * Gets the document in the file, reading it only if a file with the same contents hasn't been read already
+     */
+    static NeuroMLDocument getDocument(File nml2File) throws NeuroMLException
+    {
+        try
+        {
+            byte[] contents = Files.readAllBytes(nml2File.toPath());
+            String hash = getHash(contents);
+
+            synchronized (NeuroML2DocumentCache.class)
+            {
+                NeuroMLDocument doc = documents.get(hash);
+                if (doc != null)
+                {
+                    logger.logComment("Using the document already read with the contents of: " + nml2File);
+                    return doc;
+                }
+            }
+
+            NeuroMLDocument doc = new NeuroMLConverter().urlToNeuroML(nml2File.toURI().toURL());
+
+            added(hash, doc, contents.length);
+
+            return doc;
+        }
+        catch (IOException e)
+        {
+            throw new NeuroMLException("Problem reading NeuroML2 file: " + nml2File, e);
+        }
+        catch (org.neuroml.model.util.NeuroMLException e)
+        {
+            throw new NeuroMLException("Problem parsing NeuroML2 file: " + nml2File, e);
+        }
+    }
+
+    private static synchronized void added(String hash, NeuroMLDocument doc, long bytes)
+    {
+        documents.put(hash, doc);
+
+        Long previous = fileBytes.put(hash, bytes);
+        if (previous != null) totalFileBytes -= previous;
+        totalFileBytes += bytes;
+
+        Iterator<String> iter = documents.keySet().iterator();
+
+        // The most recent one is always kept, even if it's bigger than the limit
+        while (totalFileBytes > MAX_FILE_BYTES && documents.size() > 1)
+        {
+            String eldest = iter.next();
+            totalFileBytes -= fileBytes.remove(eldest);
+            iter.remove();
+        }
+    }
+
+    /**
+     * Drops all of the documents, e.g. when the project is closed
+     */
+    public static synchronized void clear()
+    {
+        documents.clear();
+        fileBytes.clear();
+        totalFileBytes = 0;
+    }
+
+    /**
+     * Gets the documents in the files, reading those not already read on a pool of
+     * GeneralProperties.getNumProcessorstoUse() threads. The map is in the order of the files
+     */
+    static LinkedHashMap<File, NeuroMLDocument> getDocuments(List<File> nml2Files) throws NeuroMLException
+    {
+        LinkedHashMap<File, NeuroMLDocument> docs = new LinkedHashMap<File, NeuroMLDocument>();
+
+        ArrayList<ReadTask> tasks = new ArrayList<ReadTask>();
+        HashSet<File> filesAdded = new HashSet<File>();
+
+        for (File nml2File: nml2Files)
+        {
+            if (filesAdded.add(nml2File))
+            {
+                tasks.add(new ReadTask(nml2File));
+            }
+        }
+
+        if (tasks.size() == 1)
+        {
+            docs.put(nml2Files.get(0), getDocument(nml2Files.get(0)));
+            return docs;
+        }
+        if (tasks.isEmpty()) return docs;
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(tasks.size(), GeneralProperties.getNumProcessorstoUse()));
+        try
+        {
+            pool.invokeAll(tasks);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        // The first problem, as if the files had been read one at a time
+        for (ReadTask task: tasks)
+        {
+            if (task.failure != null) throw task.failure;
+
+            docs.put(task.nml2File, task.doc);
+        }
+        return docs;
+    }
+
+    private static String getHash(byte[] contents)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(contents);
+
+            StringBuilder hash = new StringBuilder();
+            for (byte b: digest)
+            {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // Every Java platform has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static class ReadTask implements Callable<Object>
+    {
+        File nml2File;
+        NeuroMLDocument doc = null;
+        NeuroMLException failure = null;
+
+        ReadTask(File nml2File)
+        {
+            this.nml2File = nml2File;
+        }
+
+        public Object call()
+        {
+            try
+            {
+                doc = getDocument(nml2File);
+            }
+            catch (NeuroMLException e)
+            {
+                failure = e;
+            }
+            return null;
+        }
+    }
+
+}
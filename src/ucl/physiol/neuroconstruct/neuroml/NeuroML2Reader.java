@@ -27,7 +27,6 @@ package ucl.physiol.neuroconstruct.neuroml;
 
 import java.io.*;
 import java.nio.file.*;
-import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.TreeMap;
 import java.util.LinkedHashMap;
@@ -40,12 +39,7 @@ import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
 import org.neuroml.export.utils.Utils;
-import org.neuroml.model.Connection;
-import org.neuroml.model.ConnectionWD;
-import org.neuroml.model.Input;
 import org.neuroml.model.InputList;
-import org.neuroml.model.Instance;
-import org.neuroml.model.Location;
 import org.neuroml.model.Network;
 import org.neuroml.model.NeuroMLDocument;
 import org.neuroml.model.Population;
@@ -81,6 +75,10 @@ import ucl.physiol.neuroconstruct.simulation.RandomSpikeTrainSettings;
 import ucl.physiol.neuroconstruct.simulation.RandomSpikeTrainExtSettings;
 import ucl.physiol.neuroconstruct.simulation.StimulationSettings;
 import java.util.regex.*;
+import javax.xml.namespace.QName;
+import javax.xml.stream.*;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.XMLEvent;
 import ucl.physiol.neuroconstruct.cell.Section;
 import ucl.physiol.neuroconstruct.cell.Segment;
 import ucl.physiol.neuroconstruct.mechanisms.CellMechanism;
@@ -110,8 +108,6 @@ public class NeuroML2Reader implements NetworkMLnCInfo
 
     private GeneratedNetworkConnections netConns = null;
 
-    private ArrayList<ConnSpecificProps> localConnProps = new ArrayList<ConnSpecificProps>();
-
     private GeneratedElecInputs elecInputs = null;
 
     private Project project = null;
@@ -487,48 +483,19 @@ public class NeuroML2Reader implements NetworkMLnCInfo
 
         int cellCounter;
 
-        if (!projection.getConnection().isEmpty())
-        {
-            for (Connection conn : projection.getConnection())
-            {
-                int preSeg = conn.getPreSegmentId();
-                int postSeg = conn.getPostSegmentId();
-
-                int preCellId = parseForCellNumber(conn.getPreCellId());
-
-                int postCellId = parseForCellNumber(conn.getPostCellId());
-
-                if ((preCellId == postCellId)
-                    && (projection.getPostsynapticPopulation().equals(projection.getPresynapticPopulation())))
-                {
-                    autapsesAllowed = true;
-                }
-
-                preCellSet.add(preCellId);
-
-                preCellList.add(preCellId);
-
-                postCellSet.add(postCellId);
+        // The connections have been added to the generated connections by readNetworkContents()
+        NetConnectionStore connStore = netConns.getConnectionStore(projection.getId());
 
-                postCellList.add(postCellId);
-
-                preCellSegIds.add(preSeg);
-
-                postCellSegIds.add(postSeg);
-
-            }
-        }
-
-        else if (!projection.getConnectionWD().isEmpty())
+        if (connStore != null)
         {
-            for (ConnectionWD conn : projection.getConnectionWD())
+            for (int connIndex = 0; connIndex < connStore.size(); connIndex++)
             {
-                int preSeg = conn.getPreSegmentId();
-                int postSeg = conn.getPostSegmentId();
+                int preSeg = connStore.getSourceSegment(connIndex);
+                int postSeg = connStore.getTargetSegment(connIndex);
 
-                int preCellId = parseForCellNumber(conn.getPreCellId());
+                int preCellId = connStore.getSourceCell(connIndex);
 
-                int postCellId = parseForCellNumber(conn.getPostCellId());
+                int postCellId = connStore.getTargetCell(connIndex);
 
                 if ((preCellId == postCellId)
                     && (projection.getPostsynapticPopulation().equals(projection.getPresynapticPopulation())))
@@ -1638,18 +1605,41 @@ public class NeuroML2Reader implements NetworkMLnCInfo
         {
             NeuroMLConverter neuromlConverter = new NeuroMLConverter();
 
-            NeuroMLDocument neuroml = neuromlConverter.urlToNeuroML(nml2File.toURI().toURL());
+            // The instances, connections & inputs are read separately by readNetworkContents()
+            File withoutContents = getWithoutNetworkContents(nml2File);
+            NeuroMLDocument neuroml;
+            try
+            {
+                neuroml = neuromlConverter.urlToNeuroML(withoutContents.toURI().toURL());
+            }
+            finally
+            {
+                withoutContents.delete();
+            }
 
             logger.logComment("Reading in NeuroML2: " + neuroml.getId(), true);
 
-            /// check included cells and cell mechanisms
+            ArrayList<File> includedInNetworkFiles = new ArrayList<File>();
             for (org.neuroml.model.IncludeType includeInstance : neuroml.getInclude())
             {
-                String include_ref = includeInstance.getHref();
+                includedInNetworkFiles.add(new File(nml2File.getParentFile(), includeInstance.getHref()));
+            }
+            LinkedHashMap<File, NeuroMLDocument> includedDocs = NeuroML2DocumentCache.getDocuments(includedInNetworkFiles);
 
-                File includedInNetwork = new File(nml2File.getParentFile(), include_ref);
+            ArrayList<File> includedInIncludedFiles = new ArrayList<File>();
+            for (File includedInNetwork : includedDocs.keySet())
+            {
+                for (org.neuroml.model.IncludeType includeInIncluded : includedDocs.get(includedInNetwork).getInclude())
+                {
+                    includedInIncludedFiles.add(new File(includedInNetwork.getParentFile(), includeInIncluded.getHref()));
+                }
+            }
+            LinkedHashMap<File, NeuroMLDocument> includedInIncludedDocs = NeuroML2DocumentCache.getDocuments(includedInIncludedFiles);
 
-                NeuroMLDocument neuroml2_doc = neuromlConverter.urlToNeuroML(includedInNetwork.toURI().toURL());
+            /// check included cells and cell mechanisms
+            for (File includedInNetwork : includedInNetworkFiles)
+            {
+                NeuroMLDocument neuroml2_doc = includedDocs.get(includedInNetwork);
 
                 logger.logComment("Reading in NeuroML2: " + neuroml2_doc.getId(), true);
 
@@ -1753,7 +1743,7 @@ public class NeuroML2Reader implements NetworkMLnCInfo
 
                     File includedFile = new File(includedInNetwork.getParentFile(), included_in_cell_ref);
 
-                    NeuroMLDocument neuroml2_included_doc = neuromlConverter.urlToNeuroML(includedFile.toURI().toURL());
+                    NeuroMLDocument neuroml2_included_doc = includedInIncludedDocs.get(includedFile);
 
                     logger.logComment("Reading NeuroML2 file: " + neuroml2_included_doc.getId(), true);
 
@@ -1977,14 +1967,12 @@ public class NeuroML2Reader implements NetworkMLnCInfo
                         }
 
                     }
-                    for (Instance instance : population.getInstance())
-                    {
-                        Location loc = instance.getLocation();
-
-                        logger.logComment("Adding instance " + instance.getId() + " at: " + loc + " in " + population.getId());
-                        this.cellPos.addPosition(population.getId(), new PositionRecord(instance.getId().intValue(), loc.getX(), loc.getY(), loc.getZ()));
-                    }
                 }
+
+                // The connections of these are only read by readNetworkContents(), so their
+                // conditions are inferred after that
+                ArrayList<Projection> projectionsToInfer = new ArrayList<Projection>();
+
                 for (Projection projection : network.getProjection())
                 {
                     String netConn = projection.getId();
@@ -2008,60 +1996,6 @@ public class NeuroML2Reader implements NetworkMLnCInfo
                         }
                     }
 
-                    for (Connection conn : projection.getConnection())
-                    {
-                        int preSeg = conn.getPreSegmentId();
-                        int postSeg = conn.getPostSegmentId();
-
-                        float preFract = (new Double(conn.getPreFractionAlong())).floatValue();
-                        float postFract = (new Double(conn.getPostFractionAlong())).floatValue();
-
-                        this.netConns.addSynapticConnection(netConn,
-                            GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
-                            parseForCellNumber(conn.getPreCellId()),
-                            preSeg,
-                            preFract,
-                            parseForCellNumber(conn.getPostCellId()),
-                            postSeg,
-                            postFract,
-                            0,
-                            null);
-                    }
-
-                    for (ConnectionWD conn : projection.getConnectionWD())
-                    {
-                        int preSeg = conn.getPreSegmentId();
-                        int postSeg = conn.getPostSegmentId();
-
-                        float preFract = (new Double(conn.getPreFractionAlong())).floatValue();
-                        float postFract = (new Double(conn.getPostFractionAlong())).floatValue();
-
-                        String delay = conn.getDelay();
-
-                        Float weight = conn.getWeight();
-
-                        HashMap delay_map;
-
-                        delay_map = getValueAndUnits(delay);
-
-                        ConnSpecificProps csp = new ConnSpecificProps(projection.getSynapse());
-
-                        csp.weight = weight;
-
-                        localConnProps.add(csp);
-
-                        this.netConns.addSynapticConnection(netConn,
-                            GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
-                            parseForCellNumber(conn.getPreCellId()),
-                            preSeg,
-                            preFract,
-                            parseForCellNumber(conn.getPostCellId()),
-                            postSeg,
-                            postFract,
-                            Float.parseFloat((String) delay_map.get("value")),
-                            localConnProps);
-                    }
-
                     if (!(project.morphNetworkConnectionsInfo.getAllSimpleNetConnNames().contains(netConn)
                         || project.volBasedConnsInfo.getAllAAConnNames().contains(netConn)))
                     {
@@ -2074,8 +2008,7 @@ public class NeuroML2Reader implements NetworkMLnCInfo
 
                         if (this.inferConnectivityConditions)
                         {
-                            // connsConds may be elaborated based on the information that can be extracted from NeuroML2 network.
-                            connConds = this.determineConnectivityConditions(projection, prePopSize, postPopSize, preCellType, postCellType);
+                            projectionsToInfer.add(projection);
                         }
                         else
                         {
@@ -2354,6 +2287,11 @@ public class NeuroML2Reader implements NetworkMLnCInfo
                     simConfigToUse.addNetConn(netConn);
 
                 }
+
+                // What an input is depends on the component of its input list, so that's worked
+                // out first, and each input is added as soon as it's read
+                HashMap<String, StreamedInputList> streamedInputLists = new HashMap<String, StreamedInputList>();
+
                 for (InputList inputList : network.getInputList())
                 {
                     String inputId = inputList.getId();
@@ -2571,112 +2509,414 @@ public class NeuroML2Reader implements NetworkMLnCInfo
 
                         }
                     }
+                    streamedInputLists.put(inputId, new StreamedInputList(inputId, currentInputType, currentInputCellGroup, annotate_inputs,
+                                                                          currentElectricalInput, iip, rp, trp));
+                }
 
-                    for (Input input : inputList.getInput())
-                    {
-                        int segmentId = input.getSegmentId() != null ? input.getSegmentId() : 0;
+                readNetworkContents(nml2File, streamedInputLists);
 
-                        float fractAlong = input.getFractionAlong() != null ? input.getFractionAlong().floatValue() : 0.5f;
+                for (Projection projection : projectionsToInfer)
+                {
+                    for (Population pop : network.getPopulation())
+                    {
+                        if (pop.getId().equals(projection.getPresynapticPopulation()))
+                        {
+                            preCellType = pop.getComponent();
 
-                        if (annotate_inputs)
+                            prePopSize = pop.getSize();
+                        }
+                        if (pop.getId().equals(projection.getPostsynapticPopulation()))
                         {
-                            StimulationSettings stim = null;
+                            postCellType = pop.getComponent();
 
-                            String cell_id = Integer.toString(parseForCellNumber(input.getTarget()));
+                            postPopSize = pop.getSize();
+                        }
+                    }
+                    // connsConds may be elaborated based on the information that can be extracted from NeuroML2 network.
+                    ConnectivityConditions connConds = this.determineConnectivityConditions(projection, prePopSize, postPopSize, preCellType, postCellType);
 
-                            CellChooser cellChoose = new IndividualCells(cell_id);
+                    project.morphNetworkConnectionsInfo.setConnectivityConditions(projection.getId(), connConds);
+                }
 
-                            ArrayList<Integer> segs = new ArrayList<Integer>();
+                project.simConfigInfo.add(simConfigToUse);
 
-                            if (input.getSegmentId() == null)
-                            {
-                                segs.add(0);
-                            }
-                            else
-                            {
-                                segs.add(input.getSegmentId());
-                            }
+                logger.logComment(">>>Using simulation configuration: " + simConfigToUse);
+            }
+        }
+        catch (org.neuroml.model.util.NeuroMLException e)
+        {
+            throw new NeuroMLException("Problem parsing NeuroML2 file: " + nml2File, e);
+        }
 
-                            SegmentLocationChooser segChoose = new IndividualSegments(segs);
+    }
 
-                            if (currentInputType.equals(IClamp.TYPE))
-                            {
-                                IClamp iClamp = (IClamp) currentElectricalInput;
-                                stim = new IClampSettings(inputId, currentInputCellGroup, cellChoose, segChoose, iClamp.getDel(), iClamp.getDur(), iClamp.getAmp(), false);
-                                project.elecInputInfo.addStim(stim);
-                                simConfigToUse.addInput(stim.getReference());
+    private int parseForCellNumber(String cellIdString)
+    {
+        //System.out.println("cellIdString: "+cellIdString);
+        int lastSlash = cellIdString.lastIndexOf("/");
+        int secondLastSlash = cellIdString.substring(0, lastSlash).lastIndexOf("/");
+        return Integer.parseInt(cellIdString.substring(secondLastSlash + 1, lastSlash));
+    }
 
-                                project.markProjectAsEdited();
+    /*
+     * The elements of which there can be very many in a network, read by readNetworkContents()
+     */
+    private static boolean isNetworkContents(QName name)
+    {
+        if (!NeuroMLConstants.NAMESPACE_URI_VERSION_2.equals(name.getNamespaceURI()))
+            return false;
 
-                            }
-                            if (currentInputType.equals(PERSISTENT_POISSON))
-                            {
-                                RandomSpikeTrain rst = (RandomSpikeTrain) currentElectricalInput;
-                                stim = new RandomSpikeTrainSettings(inputId, currentInputCellGroup, cellChoose, segChoose, rst.getRate(), rst.getSynapseType());
-                                project.elecInputInfo.addStim(stim);
-                                simConfigToUse.addInput(stim.getReference());
+        String localName = name.getLocalPart();
 
-                                project.markProjectAsEdited();
+        return localName.equals("instance")
+            || localName.equals("location")
+            || localName.equals("connection")
+            || localName.equals("connectionWD")
+            || localName.equals("input");
+    }
 
-                            }
+    /*
+     * A temporary copy of the file without the instances, connections & inputs, so libNeuroML
+     * only creates objects for the definitions, populations, projections & input lists
+     */
+    private static File getWithoutNetworkContents(File nml2File) throws NeuroMLException
+    {
+        InputStream in = null;
+        OutputStream out = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(nml2File));
 
-                            if (currentInputType.equals(TRANSIENT_POISSON))
-                            {
-                                RandomSpikeTrainExt rst = (RandomSpikeTrainExt) currentElectricalInput;
-                                stim = new RandomSpikeTrainExtSettings(inputId, currentInputCellGroup, cellChoose, segChoose, rst.getRate(), rst.getSynapseType(),
-                                    rst.getDelay(), rst.getDuration(), false);
-                                project.elecInputInfo.addStim(stim);
-                                simConfigToUse.addInput(stim.getReference());
+            XMLInputFactory inFactory = XMLInputFactory.newInstance();
+            inFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
 
-                                project.markProjectAsEdited();
+            XMLEventReader reader = inFactory.createFilteredReader(inFactory.createXMLEventReader(in), new EventFilter()
+            {
+                public boolean accept(XMLEvent event)
+                {
+                    if (event.isStartElement())
+                        return !isNetworkContents(event.asStartElement().getName());
+                    if (event.isEndElement())
+                        return !isNetworkContents(event.asEndElement().getName());
 
-                            }
-                            logger.logComment(currentInputType + " electrical input " + inputId + " on the cell group " + currentInputCellGroup + " added to the project.");
+                    // The whitespace which was around the elements removed
+                    return !(event.isCharacters() && event.asCharacters().isWhiteSpace());
+                }
+            });
 
-                        }
-                        currentSingleInput = new SingleElectricalInput(currentInputType, currentInputCellGroup, parseForCellNumber(input.getTarget()), segmentId, fractAlong, null);
-                        logger.logComment("New instance: " + currentSingleInput);
+            // Written in the encoding given in the declaration which is copied over
+            String encoding = "UTF-8";
+            if (reader.peek() != null && reader.peek().isStartDocument())
+            {
+                StartDocument start = (StartDocument) reader.peek();
+                if (start.encodingSet())
+                    encoding = start.getCharacterEncodingScheme();
+            }
 
-                        if (currentInputType.equals(IClamp.TYPE))
-                        {
-                            currentSingleInput.setInstanceProps(iip);
-                        }
+            File withoutContents = File.createTempFile("neuroml2_", ".nml");
+            out = new BufferedOutputStream(new FileOutputStream(withoutContents));
 
-                        if (currentInputType.equals(PERSISTENT_POISSON))
-                        {
-                            currentSingleInput.setInstanceProps(rp);
-                        }
-                        if (currentInputType.equals(TRANSIENT_POISSON))
-                        {
-                            currentSingleInput.setInstanceProps(trp);
-                        }
-                        elecInputs.addSingleInput(inputId, currentSingleInput);
+            XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(out, encoding);
+            writer.add(reader);
+            writer.close();
+            reader.close();
+
+            return withoutContents;
+        }
+        catch (IOException e)
+        {
+            throw new NeuroMLException("Problem reading NeuroML2 file: " + nml2File, e);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new NeuroMLException("Problem parsing NeuroML2 file: " + nml2File, e);
+        }
+        finally
+        {
+            try
+            {
+                if (in != null) in.close();
+                if (out != null) out.close();
+            }
+            catch (IOException ex)
+            {
+                // ignore...
+            }
+        }
+    }
+
+    /*
+     * Reads the instances & connections in the network straight into the generated cell positions
+     * & network connections, and the inputs into the generated inputs, without creating libNeuroML
+     * objects for each one
+     */
+    private void readNetworkContents(File nml2File, HashMap<String, StreamedInputList> streamedInputLists) throws NeuroMLException
+    {
+        InputStream in = null;
+        XMLStreamReader reader = null;
+        try
+        {
+            in = new BufferedInputStream(new FileInputStream(nml2File));
+            reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+
+            String population = null;
+            int cellNumber = -1;
+
+            String projection = null;
+            String synapse = null;
 
+            StreamedInputList inputList = null;
+
+            int numPositions = 0;
+            int numConns = 0;
+
+            while (reader.hasNext())
+            {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT
+                    || !NeuroMLConstants.NAMESPACE_URI_VERSION_2.equals(reader.getNamespaceURI()))
+                {
+                    continue;
+                }
+
+                String name = reader.getLocalName();
+
+                if (name.equals("population"))
+                {
+                    population = reader.getAttributeValue(null, "id");
+                }
+                else if (name.equals("instance"))
+                {
+                    cellNumber = Integer.parseInt(reader.getAttributeValue(null, "id"));
+                }
+                else if (name.equals("location"))
+                {
+                    cellPos.addPosition(population,
+                        cellNumber,
+                        Float.parseFloat(reader.getAttributeValue(null, "x")),
+                        Float.parseFloat(reader.getAttributeValue(null, "y")),
+                        Float.parseFloat(reader.getAttributeValue(null, "z")));
+                    numPositions++;
+                }
+                else if (name.equals("projection"))
+                {
+                    projection = reader.getAttributeValue(null, "id");
+                    synapse = reader.getAttributeValue(null, "synapse");
+                }
+                else if (name.equals("connection") || name.equals("connectionWD"))
+                {
+                    float apPropDelay = 0;
+
+                    ArrayList<ConnSpecificProps> connProps = null;
+
+                    if (name.equals("connectionWD"))
+                    {
+                        HashMap delay_map = getValueAndUnits(reader.getAttributeValue(null, "delay"));
+
+                        apPropDelay = Float.parseFloat((String) delay_map.get("value"));
+
+                        ConnSpecificProps csp = new ConnSpecificProps(synapse);
+
+                        csp.weight = Float.parseFloat(reader.getAttributeValue(null, "weight"));
+
+                        connProps = new ArrayList<ConnSpecificProps>();
+                        connProps.add(csp);
                     }
+
+                    this.netConns.addSynapticConnection(projection,
+                        GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                        parseForCellNumber(reader.getAttributeValue(null, "preCellId")),
+                        getIntAttribute(reader, "preSegmentId", 0),
+                        getFloatAttribute(reader, "preFractionAlong", 0.5f),
+                        parseForCellNumber(reader.getAttributeValue(null, "postCellId")),
+                        getIntAttribute(reader, "postSegmentId", 0),
+                        getFloatAttribute(reader, "postFractionAlong", 0.5f),
+                        apPropDelay,
+                        connProps);
+                    numConns++;
                 }
+                else if (name.equals("inputList"))
+                {
+                    inputList = streamedInputLists.get(reader.getAttributeValue(null, "id"));
+                }
+                else if (name.equals("input"))
+                {
+                    StreamedInput input = new StreamedInput();
 
-                project.simConfigInfo.add(simConfigToUse);
+                    input.cellNumber = parseForCellNumber(reader.getAttributeValue(null, "target"));
 
-                logger.logComment(">>>Using simulation configuration: " + simConfigToUse);
+                    if (reader.getAttributeValue(null, "segmentId") != null)
+                        input.segmentId = Integer.parseInt(reader.getAttributeValue(null, "segmentId"));
+
+                    if (reader.getAttributeValue(null, "fractionAlong") != null)
+                        input.fractionAlong = Float.parseFloat(reader.getAttributeValue(null, "fractionAlong"));
+
+                    if (inputList == null)
+                        throw new NeuroMLException("Input outside of a known inputList in NeuroML2 file: " + nml2File);
+
+                    addStreamedInput(inputList, input);
+                }
             }
+            logger.logComment("Read " + numPositions + " positions and " + numConns + " connections from: " + nml2File, true);
+        }
+        catch (IOException e)
+        {
+            throw new NeuroMLException("Problem reading NeuroML2 file: " + nml2File, e);
         }
-        catch (MalformedURLException e)
+        catch (XMLStreamException e)
         {
             throw new NeuroMLException("Problem parsing NeuroML2 file: " + nml2File, e);
         }
-        catch (org.neuroml.model.util.NeuroMLException e)
+        catch (NumberFormatException e)
         {
             throw new NeuroMLException("Problem parsing NeuroML2 file: " + nml2File, e);
         }
+        finally
+        {
+            try
+            {
+                if (reader != null) reader.close();
+                if (in != null) in.close();
+            }
+            catch (Exception ex)
+            {
+                // ignore...
+            }
+        }
+    }
+
+    /*
+     * Adds an input read by readNetworkContents() to the generated inputs, and to the project's
+     * inputs if the input list isn't already one of them
+     */
+    private void addStreamedInput(StreamedInputList inputList, StreamedInput input)
+    {
+        int segmentId = input.segmentId != null ? input.segmentId : 0;
+
+        float fractAlong = input.fractionAlong != null ? input.fractionAlong : 0.5f;
+
+        if (inputList.annotate)
+        {
+            StimulationSettings stim = null;
+
+            String cell_id = Integer.toString(input.cellNumber);
+
+            CellChooser cellChoose = new IndividualCells(cell_id);
+
+            ArrayList<Integer> segs = new ArrayList<Integer>();
+
+            if (input.segmentId == null)
+            {
+                segs.add(0);
+            }
+            else
+            {
+                segs.add(input.segmentId);
+            }
+
+            SegmentLocationChooser segChoose = new IndividualSegments(segs);
+
+            if (inputList.inputType.equals(IClamp.TYPE))
+            {
+                IClamp iClamp = (IClamp) inputList.electricalInput;
+                stim = new IClampSettings(inputList.inputId, inputList.cellGroup, cellChoose, segChoose, iClamp.getDel(), iClamp.getDur(), iClamp.getAmp(), false);
+                project.elecInputInfo.addStim(stim);
+                simConfigToUse.addInput(stim.getReference());
+
+                project.markProjectAsEdited();
+
+            }
+            if (inputList.inputType.equals(PERSISTENT_POISSON))
+            {
+                RandomSpikeTrain rst = (RandomSpikeTrain) inputList.electricalInput;
+                stim = new RandomSpikeTrainSettings(inputList.inputId, inputList.cellGroup, cellChoose, segChoose, rst.getRate(), rst.getSynapseType());
+                project.elecInputInfo.addStim(stim);
+                simConfigToUse.addInput(stim.getReference());
+
+                project.markProjectAsEdited();
+
+            }
+
+            if (inputList.inputType.equals(TRANSIENT_POISSON))
+            {
+                RandomSpikeTrainExt rst = (RandomSpikeTrainExt) inputList.electricalInput;
+                stim = new RandomSpikeTrainExtSettings(inputList.inputId, inputList.cellGroup, cellChoose, segChoose, rst.getRate(), rst.getSynapseType(),
+                    rst.getDelay(), rst.getDuration(), false);
+                project.elecInputInfo.addStim(stim);
+                simConfigToUse.addInput(stim.getReference());
+
+                project.markProjectAsEdited();
+
+            }
+            logger.logComment(inputList.inputType + " electrical input " + inputList.inputId + " on the cell group " + inputList.cellGroup + " added to the project.");
+
+        }
+        currentSingleInput = new SingleElectricalInput(inputList.inputType, inputList.cellGroup, input.cellNumber, segmentId, fractAlong, null);
+        logger.logComment("New instance: " + currentSingleInput);
+
+        if (inputList.inputType.equals(IClamp.TYPE))
+        {
+            currentSingleInput.setInstanceProps(inputList.iip);
+        }
+
+        if (inputList.inputType.equals(PERSISTENT_POISSON))
+        {
+            currentSingleInput.setInstanceProps(inputList.rp);
+        }
+        if (inputList.inputType.equals(TRANSIENT_POISSON))
+        {
+            currentSingleInput.setInstanceProps(inputList.trp);
+        }
+        elecInputs.addSingleInput(inputList.inputId, currentSingleInput);
+    }
 
+    private static int getIntAttribute(XMLStreamReader reader, String name, int defaultValue)
+    {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? defaultValue : Integer.parseInt(value);
     }
 
-    private int parseForCellNumber(String cellIdString)
+    private static float getFloatAttribute(XMLStreamReader reader, String name, float defaultValue)
     {
-        //System.out.println("cellIdString: "+cellIdString);
-        int lastSlash = cellIdString.lastIndexOf("/");
-        int secondLastSlash = cellIdString.substring(0, lastSlash).lastIndexOf("/");
-        return Integer.parseInt(cellIdString.substring(secondLastSlash + 1, lastSlash));
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? defaultValue : Float.parseFloat(value);
+    }
+
+    /*
+     * An input in an input list, as read by readNetworkContents()
+     */
+    private static class StreamedInput
+    {
+        int cellNumber;
+        Integer segmentId = null;
+        Float fractionAlong = null;
+    }
+
+    /*
+     * What the inputs in an input list are, as worked out from its component before reading them
+     */
+    private static class StreamedInputList
+    {
+        String inputId;
+        String inputType;
+        String cellGroup;
+        boolean annotate;
+        ElectricalInput electricalInput;
+        IClampInstanceProps iip;
+        RandomSpikeTrainInstanceProps rp;
+        RandomSpikeTrainExtInstanceProps trp;
+
+        StreamedInputList(String inputId, String inputType, String cellGroup, boolean annotate, ElectricalInput electricalInput,
+                          IClampInstanceProps iip, RandomSpikeTrainInstanceProps rp, RandomSpikeTrainExtInstanceProps trp)
+        {
+            this.inputId = inputId;
+            this.inputType = inputType;
+            this.cellGroup = cellGroup;
+            this.annotate = annotate;
+            this.electricalInput = electricalInput;
+            this.iip = iip;
+            this.rp = rp;
+            this.trp = trp;
+        }
     }
 
     public static void main(String args[])
@@ -28,6 +28,8 @@ package ucl.physiol.neuroconstruct.neuroml;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.*;
+import javax.xml.stream.*;
 import org.lemsml.jlems.core.sim.LEMSException;
 import org.lemsml.jlems.core.sim.Sim;
 import org.lemsml.jlems.core.type.Component;
@@ -181,42 +183,14 @@ public class NeuroMLFileManager
     {
         int preferredUnits = UnitConverter.getUnitSystemIndex(units);
 
-        try
+        if (!version.isVersion2())
         {
+            return writeNetworkML(project, neuroMLFile, zipped, extraComments, simConfig, preferredUnits);
+        }
 
-            StringBuilder notes = new StringBuilder("\nNetwork structure (NeuroML " + version + ") for project: "
-                                                    + project.getProjectName() + " saved with neuroConstruct v"
-                                                    + GeneralProperties.getVersionNumber() + " on: " + GeneralUtils.getCurrentTimeAsNiceString() + ", "
-                                                    + GeneralUtils.getCurrentDateAsNiceString() + "\n\n");
-
-
-            Iterator<String> cellGroups = project.generatedCellPositions.getNamesGeneratedCellGroups();
-
-            while (cellGroups.hasNext())
-            {
-                String cg = cellGroups.next();
-                int numHere = project.generatedCellPositions.getNumberInCellGroup(cg);
-                if (numHere > 0)
-                {
-                    notes.append("Cell Group: " + cg + " contains " + numHere + " cells\n");
-                }
-
-            }
-            notes.append("\n");
-
-            Iterator<String> netConns = project.generatedNetworkConnections.getNamesNetConnsIter();
-
-            while (netConns.hasNext())
-            {
-                String mc = netConns.next();
-                int numHere = project.generatedNetworkConnections.getSynapticConnections(mc).size();
-                if (numHere > 0)
-                {
-                    notes.append("Network connection: " + mc + " contains " + numHere + " individual synaptic connections\n");
-                }
-
-            }
-            notes.append("\n");
+        try
+        {
+            String notes = getNetworkNotes(project, version);
 
             logger.logComment("Going to save network in NeuroML format in " + neuroMLFile.getAbsolutePath());
 
@@ -284,7 +258,7 @@ public class NeuroMLFileManager
             rootElement.addContent("\n\n    ");
 
             rootElement.addChildElement(new SimpleXMLElement(metaPrefix
-                                                             + MetadataConstants.NOTES_ELEMENT, "\n" + notes.toString()+"\n    "));
+                                                             + MetadataConstants.NOTES_ELEMENT, "\n" + notes+"\n    "));
 
             SimpleXMLElement props = new SimpleXMLElement(metaPrefix + MorphMLConstants.PROPS_ELEMENT);
 
@@ -517,7 +491,7 @@ public class NeuroMLFileManager
                                                                         ProjectStructure.getNeuroMLCompressedFileExtension(),
                                                                         extension);
 
-                ZipUtils.zipStringAsFile(stringForm, zipFile, internalFilename, notes.toString());
+                ZipUtils.zipStringAsFile(stringForm, zipFile, internalFilename, notes);
 
                 return zipFile;
             }
@@ -534,6 +508,189 @@ public class NeuroMLFileManager
         }
     }
 
+    private static String getNetworkNotes(Project project, NeuroMLVersion version)
+    {
+        StringBuilder notes = new StringBuilder("\nNetwork structure (NeuroML " + version + ") for project: "
+                                                + project.getProjectName() + " saved with neuroConstruct v"
+                                                + GeneralProperties.getVersionNumber() + " on: " + GeneralUtils.getCurrentTimeAsNiceString() + ", "
+                                                + GeneralUtils.getCurrentDateAsNiceString() + "\n\n");
+
+
+        Iterator<String> cellGroups = project.generatedCellPositions.getNamesGeneratedCellGroups();
+
+        while (cellGroups.hasNext())
+        {
+            String cg = cellGroups.next();
+            int numHere = project.generatedCellPositions.getNumberInCellGroup(cg);
+            if (numHere > 0)
+            {
+                notes.append("Cell Group: " + cg + " contains " + numHere + " cells\n");
+            }
+
+        }
+        notes.append("\n");
+
+        Iterator<String> netConns = project.generatedNetworkConnections.getNamesNetConnsIter();
+
+        while (netConns.hasNext())
+        {
+            String mc = netConns.next();
+            NetConnectionStore store = project.generatedNetworkConnections.getConnectionStore(mc);
+            int numHere = store == null ? 0 : store.size();
+            if (numHere > 0)
+            {
+                notes.append("Network connection: " + mc + " contains " + numHere + " individual synaptic connections\n");
+            }
+
+        }
+        notes.append("\n");
+
+        return notes.toString();
+    }
+
+    /*
+     * Saves the network in NetworkML (v1), writing the elements for the cells, connections & inputs
+     * to the file as they're read from the generated network, so the whole document is never held in
+     * memory. If zipped, the file is compressed as it's written, in the same format as ZipUtils.zipStringAsFile()
+     */
+    private static File writeNetworkML(Project project,
+                                       File neuroMLFile,
+                                       boolean zipped,
+                                       boolean extraComments,
+                                       String simConfig,
+                                       int preferredUnits) throws NeuroMLException
+    {
+        NeuroMLVersion version = NeuroMLVersion.NEUROML_VERSION_1;
+
+        String notes = getNetworkNotes(project, version);
+
+        File savedFile = neuroMLFile;
+        OutputStream out = null;
+
+        try
+        {
+            if (!zipped)
+            {
+                out = new BufferedOutputStream(new FileOutputStream(neuroMLFile));
+            }
+            else
+            {
+                if (!neuroMLFile.getName().endsWith(ProjectStructure.getNeuroMLCompressedFileExtension()))
+                {
+                    savedFile = new File(neuroMLFile.getAbsolutePath()
+                                         + ProjectStructure.getNeuroMLCompressedFileExtension());
+                }
+
+                String internalFilename = GeneralUtils.replaceAllTokens(savedFile.getName(),
+                                                                        ProjectStructure.getNeuroMLCompressedFileExtension(),
+                                                                        ProjectStructure.getNeuroML1FileExtension());
+
+                ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(savedFile)));
+                zipOut.putNextEntry(new ZipEntry(internalFilename));
+                zipOut.setComment(notes);
+                out = zipOut;
+            }
+
+            logger.logComment("Going to write network in NeuroML format in " + savedFile.getAbsolutePath());
+
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+
+            writer.writeStartElement(NetworkMLConstants.ROOT_ELEMENT);
+            writer.writeDefaultNamespace(NetworkMLConstants.NAMESPACE_URI);
+            writer.writeNamespace(MetadataConstants.PREFIX, MetadataConstants.NAMESPACE_URI);
+            writer.writeNamespace(NeuroMLConstants.XSI_PREFIX, NeuroMLConstants.XSI_URI);
+            writer.writeAttribute(NeuroMLConstants.XSI_PREFIX, NeuroMLConstants.XSI_URI, "schemaLocation",
+                                  NetworkMLConstants.NAMESPACE_URI + "  " + NetworkMLConstants.DEFAULT_SCHEMA_FILENAME);
+            writer.writeAttribute(MetadataConstants.LENGTH_UNITS_OLD, MetadataConstants.LENGTH_UNITS_MICROMETER);
+
+            writer.writeCharacters("\n\n    ");
+            writer.writeStartElement(MetadataConstants.PREFIX, MetadataConstants.NOTES_ELEMENT, MetadataConstants.NAMESPACE_URI);
+            writer.writeCharacters("\n" + notes + "\n    ");
+            writer.writeEndElement();
+
+            writer.writeCharacters("\n\n    ");
+            writer.writeStartElement(MetadataConstants.PREFIX, MorphMLConstants.PROPS_ELEMENT, MetadataConstants.NAMESPACE_URI);
+
+            writeProperty(writer, NetworkMLConstants.NC_NETWORK_GEN_RAND_SEED, project.generatedCellPositions.getRandomSeed() + "");
+
+            if (simConfig != null)
+            {
+                writeProperty(writer, NetworkMLConstants.NC_SIM_CONFIG, simConfig);
+            }
+
+            SimConfig sc = project.simConfigInfo.getSimConfig(simConfig);
+
+            writeProperty(writer, NetworkMLConstants.NC_SIM_DURATION, Float.toString(sc.getSimDuration()));
+            writeProperty(writer, NetworkMLConstants.NC_SIM_TIME_STEP, Float.toString(project.simulationParameters.getDt()));
+            writeProperty(writer, NetworkMLConstants.NC_TEMPERATURE, Float.toString(project.simulationParameters.getTemperature()));
+
+            writer.writeCharacters("\n    ");
+            writer.writeEndElement();
+
+            writer.writeCharacters("\n\n    ");
+            project.generatedCellPositions.writeNetworkML(writer);
+
+            writer.writeCharacters("\n\n    ");
+            project.generatedNetworkConnections.writeNetworkML(writer, preferredUnits, extraComments);
+
+            writer.writeCharacters("\n\n    ");
+            project.generatedElecInputs.writeNetworkML(writer, preferredUnits);
+
+            writer.writeCharacters("\n\n");
+            writer.writeEndElement();
+            writer.writeEndDocument();
+
+            writer.close();
+            out.close();
+            out = null;
+
+            return savedFile;
+        }
+        catch (NeuroMLException ex)
+        {
+            logger.logError("Problem creating NeuroML file: " + savedFile.getAbsolutePath(), ex);
+
+            throw new NeuroMLException("Problem creating NeuroML file: " + savedFile.getAbsolutePath() + "\n" + ex.getMessage(), ex);
+        }
+        catch (XMLStreamException ex)
+        {
+            logger.logError("Problem creating NeuroML file: " + savedFile.getAbsolutePath(), ex);
+
+            throw new NeuroMLException("Problem creating NeuroML file: " + savedFile.getAbsolutePath() + "\n" + ex.getMessage(), ex);
+        }
+        catch (IOException ex)
+        {
+            logger.logError("Problem creating NeuroML file: " + savedFile.getAbsolutePath(), ex);
+
+            throw new NeuroMLException("Problem creating NeuroML file: " + savedFile.getAbsolutePath() + "\n" + ex.getMessage(), ex);
+        }
+        finally
+        {
+            try
+            {
+                if (out != null) out.close();
+            }
+            catch (IOException ex)
+            {
+                // ignore...
+            }
+        }
+    }
+
+    /*
+     * As MetadataConstants.addProperty() for NeuroML v1
+     */
+    private static void writeProperty(XMLStreamWriter writer, String tag, String value) throws XMLStreamException
+    {
+        writer.writeCharacters("\n        ");
+        writer.writeEmptyElement(MetadataConstants.PREFIX, MetadataConstants.PROP_ELEMENT, MetadataConstants.NAMESPACE_URI);
+        writer.writeAttribute(MetadataConstants.PROP_TAG_ATTR, tag);
+        writer.writeAttribute(MetadataConstants.PROP_VALUE_ATTR, value);
+    }
+
     public void generateNeuroMLFiles(SimConfig simConf,
                                      MorphCompartmentalisation mc,
                                      int seed,
@@ -59,6 +59,17 @@ public class Hdf5Utils
         //logger.setThisClassVerbose(true);
     }
     
+    /**
+     * Number of rows of a table written or read at a time, and the chunk size of the datasets
+     * created, so memory use is bounded by this rather than the size of the network
+     */
+    public static final int ROWS_PER_BLOCK = 65536;
+
+    /**
+     * Level of gzip compression of the chunked datasets
+     */
+    public static final int COMPRESSION_LEVEL = 4;
+
     public Hdf5Utils()
     {
         super();
@@ -689,6 +700,133 @@ public class Hdf5Utils
                 
     }
 
+    /**
+     * Creates a 2D dataset for a table with numRows rows, which can then be filled in blocks of rows with
+     * write2DdatasetRows(). The dataset is chunked in blocks of ROWS_PER_BLOCK rows and compressed
+     */
+    public static Dataset create2Ddataset(H5File h5File,
+                                          String name,
+                                          Group group,
+                                          Datatype dtype,
+                                          long numRows,
+                                          int numColumns) throws Hdf5Exception
+    {
+        long[] dims2D = {numRows, numColumns};
+        long[] maxDims = null;
+        long[] chunks = null;
+        int gzip = 0;
+
+        if (numRows > 0)
+        {
+            maxDims = dims2D;
+            chunks = new long[]{Math.min(numRows, ROWS_PER_BLOCK), numColumns};
+            gzip = COMPRESSION_LEVEL;
+        }
+
+        try
+        {
+            return h5File.createScalarDS(name, group, dtype, dims2D, maxDims, chunks, gzip, null);
+        }
+        catch (Exception ex)
+        {
+            throw new Hdf5Exception("Failed to create dataset: "+ name+" in HDF5 file: "+ h5File.getFilePath(), ex);
+        }
+    }
+
+
+    /**
+     * Writes numRows rows of a 2D dataset, starting at firstRow. The data (int[], float[] or double[], matching
+     * the dataset's type) contains the rows one after the other
+     */
+    public static void write2DdatasetRows(Dataset d, long firstRow, int numRows, Object data) throws Hdf5Exception
+    {
+        try
+        {
+            selectRows(d, firstRow, numRows);
+            d.write(data);
+        }
+        catch (Exception ex)
+        {
+            throw new Hdf5Exception("Failed to write rows "+ firstRow+" to "+ (firstRow + numRows - 1)+" of dataset: "+ d.getName(), ex);
+        }
+    }
+
+
+    /**
+     * Reads numRows rows of a 2D dataset, starting at firstRow, so large datasets can be handled in blocks
+     * rather than all being read into memory at once. Integer datasets are read exactly (float datasets
+     * only represent integers up to 2^24 exactly)
+     */
+    public static double[][] parse2DdatasetRows(Dataset d, long firstRow, int numRows) throws Hdf5Exception
+    {
+        try
+        {
+            selectRows(d, firstRow, numRows);
+
+            int numColumns = (int)d.getDims()[1];
+            Object dataObj = d.read();
+
+            double[][] data = new double[numRows][numColumns];
+
+            for (int i = 0; i < numRows; i++)
+            {
+                for (int j = 0; j < numColumns; j++)
+                {
+                    int index = i * numColumns + j;
+
+                    if (dataObj instanceof float[])
+                        data[i][j] = ((float[])dataObj)[index];
+                    else if (dataObj instanceof double[])
+                        data[i][j] = ((double[])dataObj)[index];
+                    else if (dataObj instanceof int[])
+                        data[i][j] = ((int[])dataObj)[index];
+                    else if (dataObj instanceof long[])
+                        data[i][j] = ((long[])dataObj)[index];
+                    else if (dataObj instanceof short[])
+                        data[i][j] = ((short[])dataObj)[index];
+                    else if (dataObj instanceof byte[])
+                        data[i][j] = ((byte[])dataObj)[index];
+                    else
+                        throw new Hdf5Exception("Couldn't determine the datatype of dataset: "+ d.getName());
+                }
+            }
+            return data;
+        }
+        catch (Hdf5Exception ex)
+        {
+            throw ex;
+        }
+        catch (Exception ex)
+        {
+            throw new Hdf5Exception("Failed to read rows "+ firstRow+" to "+ (firstRow + numRows - 1)+" of dataset: "+ d.getName(), ex);
+        }
+    }
+
+
+    private static void selectRows(Dataset d, long firstRow, int numRows)
+    {
+        d.init();
+
+        long[] dims = d.getDims();
+        long[] start = d.getStartDims();
+        long[] selected = d.getSelectedDims();
+        long[] stride = d.getStride();
+
+        start[0] = firstRow;
+        selected[0] = numRows;
+
+        for (int i = 1; i < dims.length; i++)
+        {
+            start[i] = 0;
+            selected[i] = dims[i];
+        }
+        if (stride != null)
+        {
+            Arrays.fill(stride, 1);
+        }
+    }
+
+    
     public static ArrayList<DataSet> parse2DDataset(Dataset d, boolean includePoints, Properties p)
     {
         String pre = "  -- ";
@@ -395,49 +395,34 @@ public class NetworkMLReader  implements NetworkMLnCInfo
             
         }
         
-        float[][] data = Hdf5Utils.parse2Ddataset(d);
+        d.init();
+
+        if (d.getDims().length!=2)
+        {
+            logger.logComment("Ignoring dataset which isn't 2D: "+d.getName());
+            return;
+        }
+        long numRows = d.getDims()[0];
+        int numColumns = (int)d.getDims()[1];
         
-        logger.logComment("Data has size: ("+data.length+", "+data[0].length+")");
+        logger.logComment("Data has size: ("+numRows+", "+numColumns+")");
         
+        int id_col = -1;
+        
+        int pre_cell_id_col = -1;
+        int pre_segment_id_col = -1;
+        int pre_fraction_along_col = -1;
+        
+        int post_cell_id_col = -1;
+        int post_segment_id_col = -1;
+        int post_fraction_along_col = -1;
+        
+        int prop_delay_col = -1;
         
-        if (inPopulations && currentCellGroup!=null)
-        {
-            for(int i = 0;i<data.length;i++)
-            {
-                int id = (int)data[i][0];
-                float x = data[i][1];
-                float y = data[i][2];
-                float z = data[i][3];
-                
-                
-                PositionRecord posRec = new PositionRecord(id,x,y,z);
-                
-                if (data[0].length==5)
-                {
-                    posRec.setNodeId((int)data[i][4]);
-                }
-                
-                this.project.generatedCellPositions.addPosition(currentCellGroup, posRec);
-            }
-        }
         if (inProjections && currentNetConn!=null)
         {
             logger.logComment("Adding info for NetConn: "+ currentNetConn);
             
-            int id_col = -1;
-            
-            int pre_cell_id_col = -1;
-            int pre_segment_id_col = -1;
-            int pre_fraction_along_col = -1;
-            
-            int post_cell_id_col = -1;
-            int post_segment_id_col = -1;
-            int post_fraction_along_col = -1;
-            
-            int prop_delay_col = -1;
-            
-            
-            
             for (Attribute attribute : attrs) 
             {
                 String storedInColumn = Hdf5Utils.getFirstStringValAttr(attrs, attribute.getName());
@@ -515,94 +500,123 @@ public class NetworkMLReader  implements NetworkMLnCInfo
                 }
 
             }
+        }
+        
+        // Read & add the rows a block at a time, so large networks don't need the whole table in memory
+        for (long firstRow = 0; firstRow < numRows; firstRow += Hdf5Utils.ROWS_PER_BLOCK)
+        {
+            int numInBlock = (int)Math.min(Hdf5Utils.ROWS_PER_BLOCK, numRows - firstRow);
             
-            for(int i = 0;i<data.length;i++)
+            double[][] data = Hdf5Utils.parse2DdatasetRows(d, firstRow, numInBlock);
+        
+            if (inPopulations && currentCellGroup!=null)
             {
-                int pre_seg_id = 0;
-                float pre_fract_along = 0.5f;
-                int post_seg_id = 0;
-                float post_fract_along = 0.5f;
-                
-                int id = (int)data[i][id_col];
-                int pre_cell_id = (int)data[i][pre_cell_id_col];
-                int post_cell_id = (int)data[i][post_cell_id_col];
-                
-                float prop_delay = 0;
-                
-                if (pre_segment_id_col>=0) 
-                    pre_seg_id = (int)data[i][pre_segment_id_col];
-                if (pre_fraction_along_col>=0) 
-                    pre_fract_along = data[i][pre_fraction_along_col];
-                if (post_segment_id_col>=0) 
-                    post_seg_id = (int)data[i][post_segment_id_col];
-                if (post_fraction_along_col>=0) 
-                    post_fract_along = data[i][post_fraction_along_col];
-                
-                
-                    //(float)UnitConverter.getTime(XXXXXXXXX, UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"";
-                if (prop_delay_col>=0) 
-                    prop_delay = (float)UnitConverter.getTime(data[i][prop_delay_col], projUnitSystem, UnitConverter.NEUROCONSTRUCT_UNITS);
-                
-                
-                
-                ArrayList<ConnSpecificProps> props = new ArrayList<ConnSpecificProps>();
-                
-                if (localConnProps.size()>0)
+                for(int i = 0;i<data.length;i++)
                 {
-                    for(ConnSpecificProps currCp:localConnProps)
+                    int id = (int)data[i][0];
+                    float x = (float)data[i][1];
+                    float y = (float)data[i][2];
+                    float z = (float)data[i][3];
+                    
+                    
+                    PositionRecord posRec = new PositionRecord(id,x,y,z);
+                    
+                    if (numColumns==5)
                     {
-                        logger.logComment("Pre cp: "+currCp);
-                        ConnSpecificProps cp2 = new ConnSpecificProps(currCp.synapseType);
-                        
-                        if (currCp.internalDelay>0) // index was stored in this val...
-                            cp2.internalDelay = (float)UnitConverter.getTime(data[i][(int)currCp.internalDelay], projUnitSystem, UnitConverter.NEUROCONSTRUCT_UNITS);
-                        if (currCp.weight>0) // index was stored in this val...
-                            cp2.weight = data[i][(int)currCp.weight];
-                        
-                        logger.logComment("Filled cp: "+cp2);
-                        
-                        props.add(cp2);
+                        posRec.setNodeId((int)data[i][4]);
                     }
+                    
+                    this.project.generatedCellPositions.addPosition(currentCellGroup, posRec);
                 }
-                
-                this.project.generatedNetworkConnections.addSynapticConnection(currentNetConn,
-                                                                               GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
-                                                                               pre_cell_id, 
-                                                                               pre_seg_id,
-                                                                               pre_fract_along,
-                                                                               post_cell_id,
-                                                                               post_seg_id,
-                                                                               post_fract_along,
-                                                                               prop_delay,
-                                                                               props);
             }
-            
-        }
-        if (inInputs && currentInput !=null)
-        {
-            logger.logComment("Adding info for: "+ currentInput);
-            StimulationSettings nextStim = project.elecInputInfo.getStim(currentInput);
-            ElectricalInput myElectricalInput = nextStim.getElectricalInput();
-            String electricalInputType = myElectricalInput.getType();
-            String cellGroup = nextStim.getCellGroup();
-                    
-            for(int i = 0;i<data.length;i++)
+            if (inProjections && currentNetConn!=null)
             {
-                Float fileCellId = data[i][0];
-                Float fileSegmentId = data[i][1];
-                Float fractionAlong = data[i][2];
-                int cellId = fileCellId.intValue();
-                int segmentId = fileSegmentId.intValue();                
+                for(int i = 0;i<data.length;i++)
+                {
+                    int pre_seg_id = 0;
+                    float pre_fract_along = 0.5f;
+                    int post_seg_id = 0;
+                    float post_fract_along = 0.5f;
+                    
+                    int id = (int)data[i][id_col];
+                    int pre_cell_id = (int)data[i][pre_cell_id_col];
+                    int post_cell_id = (int)data[i][post_cell_id_col];
+                    
+                    float prop_delay = 0;
+                    
+                    if (pre_segment_id_col>=0) 
+                        pre_seg_id = (int)data[i][pre_segment_id_col];
+                    if (pre_fraction_along_col>=0) 
+                        pre_fract_along = (float)data[i][pre_fraction_along_col];
+                    if (post_segment_id_col>=0) 
+                        post_seg_id = (int)data[i][post_segment_id_col];
+                    if (post_fraction_along_col>=0) 
+                        post_fract_along = (float)data[i][post_fraction_along_col];
+                    
+                    
+                        //(float)UnitConverter.getTime(XXXXXXXXX, UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"";
+                    if (prop_delay_col>=0) 
+                        prop_delay = (float)UnitConverter.getTime(data[i][prop_delay_col], projUnitSystem, UnitConverter.NEUROCONSTRUCT_UNITS);
+                    
+                    
+                    
+                    ArrayList<ConnSpecificProps> props = new ArrayList<ConnSpecificProps>();
+                    
+                    if (localConnProps.size()>0)
+                    {
+                        for(ConnSpecificProps currCp:localConnProps)
+                        {
+                            logger.logComment("Pre cp: "+currCp);
+                            ConnSpecificProps cp2 = new ConnSpecificProps(currCp.synapseType);
+                            
+                            if (currCp.internalDelay>0) // index was stored in this val...
+                                cp2.internalDelay = (float)UnitConverter.getTime(data[i][(int)currCp.internalDelay], projUnitSystem, UnitConverter.NEUROCONSTRUCT_UNITS);
+                            if (currCp.weight>0) // index was stored in this val...
+                                cp2.weight = (float)data[i][(int)currCp.weight];
+                            
+                            logger.logComment("Filled cp: "+cp2);
+                            
+                            props.add(cp2);
+                        }
+                    }
+                    
+                    this.project.generatedNetworkConnections.addSynapticConnection(currentNetConn,
+                                                                                   GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                                                                   pre_cell_id, 
+                                                                                   pre_seg_id,
+                                                                                   pre_fract_along,
+                                                                                   post_cell_id,
+                                                                                   post_seg_id,
+                                                                                   post_fract_along,
+                                                                                   prop_delay,
+                                                                                   props);
+                }
                 
-                SingleElectricalInput singleElectricalInputFromFile 
-                        = new SingleElectricalInput(electricalInputType,
-                                                    cellGroup,
-                                                    cellId,
-                                                    segmentId,
-                                                    fractionAlong,
-                                                    null);
-               
-                this.project.generatedElecInputs.addSingleInput(currentInput,singleElectricalInputFromFile);
+            }
+            if (inInputs && currentInput !=null)
+            {
+                logger.logComment("Adding info for: "+ currentInput);
+                StimulationSettings nextStim = project.elecInputInfo.getStim(currentInput);
+                ElectricalInput myElectricalInput = nextStim.getElectricalInput();
+                String electricalInputType = myElectricalInput.getType();
+                String cellGroup = nextStim.getCellGroup();
+                        
+                for(int i = 0;i<data.length;i++)
+                {
+                    int cellId = (int)data[i][0];
+                    int segmentId = (int)data[i][1];
+                    float fractionAlong = (float)data[i][2];
+                    
+                    SingleElectricalInput singleElectricalInputFromFile 
+                            = new SingleElectricalInput(electricalInputType,
+                                                        cellGroup,
+                                                        cellId,
+                                                        segmentId,
+                                                        fractionAlong,
+                                                        null);
+                   
+                    this.project.generatedElecInputs.addSingleInput(currentInput,singleElectricalInputFromFile);
+                }
             }
         }
         
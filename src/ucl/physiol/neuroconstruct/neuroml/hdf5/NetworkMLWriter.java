@@ -41,6 +41,8 @@ import ucl.physiol.neuroconstruct.project.GeneratedCellPositions;
 import ucl.physiol.neuroconstruct.project.GeneratedNetworkConnections;
 import java.util.Iterator;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
 import java.util.Vector;
 import ucl.physiol.neuroconstruct.cell.SegmentLocation;
 import ucl.physiol.neuroconstruct.neuroml.NetworkMLConstants;
@@ -48,7 +50,7 @@ import ucl.physiol.neuroconstruct.project.ConnSpecificProps;
 import ucl.physiol.neuroconstruct.project.GeneralProperties;
 import ucl.physiol.neuroconstruct.project.GeneratedElecInputs;
 import ucl.physiol.neuroconstruct.project.PositionRecord;
-import ucl.physiol.neuroconstruct.project.GeneratedNetworkConnections.SingleSynapticConnection;
+import ucl.physiol.neuroconstruct.project.NetConnectionStore;
 import ucl.physiol.neuroconstruct.project.SimConfig;
 import ucl.physiol.neuroconstruct.project.SingleElectricalInput;
 import ucl.physiol.neuroconstruct.project.SynapticProperties;
@@ -68,6 +70,11 @@ public class NetworkMLWriter
 {
     private static ClassLogger logger = new ClassLogger("NetworkMLWriter");
 
+    /*
+     * Largest integer which is always stored exactly in a 4 byte float
+     */
+    private static final long MAX_EXACT_FLOAT_INT = 1 << 24;
+
 
 
     public NetworkMLWriter()
@@ -120,7 +127,7 @@ public class NetworkMLWriter
         while (netConns.hasNext())
         {
             String mc = netConns.next();
-            int numHere = gnc.getSynapticConnections(mc).size();
+            int numHere = gnc.getNumberSynapticConnections(mc);
             if (numHere>0)
             notes.append("Network connection: "+mc+" contains "+numHere+" individual synaptic connections\n");
 
@@ -171,7 +178,7 @@ public class NetworkMLWriter
         {
             String cg = cellGroups.next();
 
-            ArrayList<PositionRecord> posRecs = gcp.getPositionRecords(cg);
+            List<PositionRecord> posRecs = gcp.getPositionRecords(cg);
 
             try
             {
@@ -185,8 +192,6 @@ public class NetworkMLWriter
                 Attribute cellTypeAttr = Hdf5Utils.getSimpleAttr(NetworkMLConstants.CELLTYPE_ATTR, cellType, h5File);
                 popGroup.writeMetadata(cellTypeAttr);
 
-                Datatype dtype = getPopDatatype(h5File);
-                
                 int numColumns = 4; // cellNum, x, y, z
                 
                 if (posRecs.get(0).getNodeId()!=PositionRecord.NO_NODE_ID)
@@ -194,28 +199,28 @@ public class NetworkMLWriter
                     numColumns = 5; // cellNum, x, y, z
                 }
 
-                long[] dims2D = {posRecs.size(), numColumns};
+                long maxId = 0;
+                for (PositionRecord p: posRecs)
+                {
+                    maxId = Math.max(maxId, Math.max(p.cellNumber, p.getNodeId()));
+                }
 
-                float[] posArray = new float[posRecs.size() * numColumns];
+                Datatype dtype = getPopDatatype(h5File, maxId);
 
+                Dataset dataset = Hdf5Utils.create2Ddataset(h5File, cg, popGroup, dtype, posRecs.size(), numColumns);
 
-                for (int i=0; i<posRecs.size(); i++)
-                {
-                    PositionRecord p = posRecs.get(i);
+                TableWriter posTable = new TableWriter(dataset, numColumns);
 
-                    posArray[i * numColumns + 0] = p.cellNumber;
-                    posArray[i * numColumns + 1] = p.x_pos;
-                    posArray[i * numColumns + 2] = p.y_pos;
-                    posArray[i * numColumns + 3] = p.z_pos;
+                for (PositionRecord p: posRecs)
+                {
+                    posTable.add(p.cellNumber);
+                    posTable.add(p.x_pos);
+                    posTable.add(p.y_pos);
+                    posTable.add(p.z_pos);
                     if (numColumns>4)
-                        posArray[i * numColumns + 4] = p.getNodeId();
-                        
-
+                        posTable.add(p.getNodeId());
                 }
-
-
-                Dataset dataset = h5File.createScalarDS
-                    (cg, popGroup, dtype, dims2D, null, null, 0, posArray);
+                posTable.finish();
 
                 Attribute attr0 = Hdf5Utils.getSimpleAttr("column_0", NetworkMLConstants.INSTANCE_ID_ATTR, h5File);
                 dataset.writeMetadata(attr0);
@@ -250,7 +255,8 @@ public class NetworkMLWriter
         {
             String nc = nCs.next();
 
-            ArrayList<SingleSynapticConnection> conns = gnc.getSynapticConnections(nc);
+            NetConnectionStore conns = gnc.getConnectionStore(nc);
+            if (conns == null) conns = new NetConnectionStore();
 
             try
             {
@@ -315,23 +321,23 @@ public class NetworkMLWriter
                 
                 for (int i = 0; i < conns.size(); i++)
                 {
-                    SingleSynapticConnection conn = conns.get(i);
+                    ArrayList<ConnSpecificProps> props = conns.getProps(i);
                     
-                    if (conn.sourceEndPoint.location.getSegmentId()!=0 && !columnsNeeded.contains(NetworkMLConstants.PRE_SEGMENT_ID_ATTR))
+                    if (conns.getSourceSegment(i)!=0 && !columnsNeeded.contains(NetworkMLConstants.PRE_SEGMENT_ID_ATTR))
                         columnsNeeded.add(NetworkMLConstants.PRE_SEGMENT_ID_ATTR);
                     
-                    if (conn.sourceEndPoint.location.getFractAlong()!=SegmentLocation.DEFAULT_FRACT_CONN && 
+                    if (conns.getSourceFract(i)!=SegmentLocation.DEFAULT_FRACT_CONN && 
                             !columnsNeeded.contains(NetworkMLConstants.PRE_FRACT_ALONG_ATTR))
                         columnsNeeded.add(NetworkMLConstants.PRE_FRACT_ALONG_ATTR);
                     
-                    if (conn.targetEndPoint.location.getSegmentId()!=0 && !columnsNeeded.contains(NetworkMLConstants.POST_SEGMENT_ID_ATTR))
+                    if (conns.getTargetSegment(i)!=0 && !columnsNeeded.contains(NetworkMLConstants.POST_SEGMENT_ID_ATTR))
                         columnsNeeded.add(NetworkMLConstants.POST_SEGMENT_ID_ATTR);
                     
-                    if (conn.targetEndPoint.location.getFractAlong()!=SegmentLocation.DEFAULT_FRACT_CONN && 
+                    if (conns.getTargetFract(i)!=SegmentLocation.DEFAULT_FRACT_CONN && 
                             !columnsNeeded.contains(NetworkMLConstants.POST_FRACT_ALONG_ATTR))
                         columnsNeeded.add(NetworkMLConstants.POST_FRACT_ALONG_ATTR);
                     
-                    if (conn.apPropDelay!=0)
+                    if (conns.getApPropDelay(i)!=0)
                     {
                         for(SynapticProperties sp:  globalSynPropList)
                         {
@@ -343,9 +349,9 @@ public class NetworkMLWriter
                         }
                     }
                     
-                    if (conn.props!=null)
+                    if (props!=null)
                     {
-                        for(ConnSpecificProps prop: conn.props)
+                        for(ConnSpecificProps prop: props)
                         {
                             if(prop.weight!=1 && !columnsNeeded.contains(NetworkMLConstants.WEIGHT_ATTR+"_"+prop.synapseType))
                                 columnsNeeded.add(NetworkMLConstants.WEIGHT_ATTR+"_"+prop.synapseType);
@@ -356,56 +362,90 @@ public class NetworkMLWriter
                     }
                 }
                 
+                // The segment and fraction columns are written in this order for each connection,
+                // whichever order they were found in above
+                String[] fixedOrder = new String[]{NetworkMLConstants.CONNECTION_ID_ATTR,
+                                                   NetworkMLConstants.PRE_CELL_ID_ATTR,
+                                                   NetworkMLConstants.POST_CELL_ID_ATTR,
+                                                   NetworkMLConstants.PRE_SEGMENT_ID_ATTR,
+                                                   NetworkMLConstants.PRE_FRACT_ALONG_ATTR,
+                                                   NetworkMLConstants.POST_SEGMENT_ID_ATTR,
+                                                   NetworkMLConstants.POST_FRACT_ALONG_ATTR};
+                
+                ArrayList<String> orderedColumns = new ArrayList<String>();
+                for (String col: fixedOrder)
+                {
+                    if (columnsNeeded.contains(col))
+                        orderedColumns.add(col);
+                }
+                for (String col: columnsNeeded)
+                {
+                    if (!orderedColumns.contains(col))
+                        orderedColumns.add(col);
+                }
+                columnsNeeded = orderedColumns;
+
+                boolean integerColumnsOnly = true;
+                for (String col: columnsNeeded)
+                {
+                    if (!col.equals(NetworkMLConstants.CONNECTION_ID_ATTR) &&
+                        !col.equals(NetworkMLConstants.PRE_CELL_ID_ATTR) &&
+                        !col.equals(NetworkMLConstants.POST_CELL_ID_ATTR) &&
+                        !col.equals(NetworkMLConstants.PRE_SEGMENT_ID_ATTR) &&
+                        !col.equals(NetworkMLConstants.POST_SEGMENT_ID_ATTR))
+                    {
+                        integerColumnsOnly = false;
+                    }
+                }
 
-                Datatype dtype = getProjDatatype(h5File);
+                long maxId = conns.size();
+                for (int i = 0; i < conns.size(); i++)
+                {
+                    maxId = Math.max(maxId, Math.max(conns.getSourceCell(i), conns.getTargetCell(i)));
+                    maxId = Math.max(maxId, Math.max(conns.getSourceSegment(i), 
+                                                     conns.getTargetSegment(i)));
+                }
+
+                Datatype dtype = getProjDatatype(h5File, integerColumnsOnly, maxId);
 
-                long[] dims2D = {conns.size(), columnsNeeded.size()};
+                Dataset projDataset = Hdf5Utils.create2Ddataset(h5File, nc, projGroup, dtype, conns.size(), columnsNeeded.size());
 
-                float[] projArray = new float[conns.size() * columnsNeeded.size()];
+                TableWriter projTable = new TableWriter(projDataset, columnsNeeded.size());
 
                 for (int i = 0; i < conns.size(); i++)
                 {
-                    SingleSynapticConnection conn = conns.get(i);
+                    ArrayList<ConnSpecificProps> props = conns.getProps(i);
 
-                    int row = 0;
-                    projArray[i * columnsNeeded.size() +row] = i;
-                    row++;
+                    projTable.add(i);
 
-                    projArray[i * columnsNeeded.size() + row] = conn.sourceEndPoint.cellNumber;
-                    row++;
+                    projTable.add(conns.getSourceCell(i));
                     
-                    projArray[i * columnsNeeded.size() + row] = conn.targetEndPoint.cellNumber;
-                    row++;
+                    projTable.add(conns.getTargetCell(i));
                     
                     if (columnsNeeded.contains(NetworkMLConstants.PRE_SEGMENT_ID_ATTR))
                     {
-                        projArray[i * columnsNeeded.size() + row] = conn.sourceEndPoint.location.getSegmentId();
-                        row++;
+                        projTable.add(conns.getSourceSegment(i));
                     }
                     
                     if (columnsNeeded.contains(NetworkMLConstants.PRE_FRACT_ALONG_ATTR))
                     {
-                        projArray[i * columnsNeeded.size() + row] = conn.sourceEndPoint.location.getFractAlong();
-                        row++;
+                        projTable.add(conns.getSourceFract(i));
                     }
 
                     
                     if (columnsNeeded.contains(NetworkMLConstants.POST_SEGMENT_ID_ATTR))
                     {
-                        projArray[i * columnsNeeded.size() + row] = conn.targetEndPoint.location.getSegmentId();
-                        row++;
+                        projTable.add(conns.getTargetSegment(i));
                     }
                     
                     if (columnsNeeded.contains(NetworkMLConstants.POST_FRACT_ALONG_ATTR))
                     {
-                        projArray[i * columnsNeeded.size() + row] = conn.targetEndPoint.location.getFractAlong();
-                        row++;
+                        projTable.add(conns.getTargetFract(i));
                     }
                     /*
                     if (columnsNeeded.contains(NetworkMLConstants.PROP_DELAY_ATTR))
                     {
-                        projArray[i * columnsNeeded.size() + row] = conn.apPropDelay;
-                        row++;
+                        projTable.add(conn.apPropDelay);
                     }*/
                     
                     for(SynapticProperties sp:  globalSynPropList)
@@ -413,35 +453,29 @@ public class NetworkMLWriter
                         String colName = NetworkMLConstants.PROP_DELAY_ATTR +"_"+sp.getSynapseType();
                         if (columnsNeeded.contains(colName))
                         {
-                            projArray[i * columnsNeeded.size() + row] = 
-                                    (float)UnitConverter.getTime(conn.apPropDelay, UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem);
-                            row++;
+                            projTable.add((float)UnitConverter.getTime(conns.getApPropDelay(i), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem));
                         }
                     }
                     
                     
-                    if (conn.props!=null)
+                    if (props!=null)
                     {
-                        for(ConnSpecificProps prop: conn.props)
+                        for(ConnSpecificProps prop: props)
                         {
                             if(columnsNeeded.contains(NetworkMLConstants.WEIGHT_ATTR+"_"+prop.synapseType))
                             {
-                                projArray[i * columnsNeeded.size() + row] = prop.weight;
-                                row++;
+                                projTable.add(prop.weight);
                             }
                             if(columnsNeeded.contains(NetworkMLConstants.INTERNAL_DELAY_ATTR+"_"+prop.synapseType))
                             {
-                                projArray[i * columnsNeeded.size() + row] = 
-                                        (float)UnitConverter.getTime(prop.internalDelay, UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem);
-                                row++;
+                                projTable.add((float)UnitConverter.getTime(prop.internalDelay, UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem));
                             }
                             
                         }
                     }
 
                 }
-
-                Dataset projDataset = h5File.createScalarDS(nc, projGroup, dtype, dims2D, null, null, 0, projArray);
+                projTable.finish();
                 
                 for(int i=0;i<columnsNeeded.size();i++)
                 {
@@ -504,22 +538,27 @@ public class NetworkMLWriter
 
                     int inputNumber = inputsHere.size();
 
-                    long[] dims2D = {inputNumber, inputsNumCols};
+                    long maxId = 0;
+                    for (SingleElectricalInput input: inputsHere)
+                    {
+                        maxId = Math.max(maxId, Math.max(input.getCellNumber(), input.getSegmentId()));
+                    }
 
-                    float[] sitesArray = new float[inputNumber * inputsNumCols];
+                    Datatype dtype = getInputDatatype(h5File, maxId);
 
-                    Datatype dtype = getInputDatatype(h5File);
+                    Dataset sitesDataset = Hdf5Utils.create2Ddataset(h5File, ei+"_"+"input_sites", inputGroup, dtype, inputNumber, inputsNumCols);
 
-                    // Build array of sites as stim setting
+                    // Build table of sites as stim setting
 
-                    for (int i=0; i<inputNumber; i++)
-                    {
-                        sitesArray[i * inputsNumCols + 0] = inputsHere.get(i).getCellNumber();
-                        sitesArray[i * inputsNumCols + 1] = inputsHere.get(i).getSegmentId();
-                        sitesArray[i * inputsNumCols + 2] = inputsHere.get(i).getFractionAlong();
-                    }               
+                    TableWriter sitesTable = new TableWriter(sitesDataset, inputsNumCols);
 
-                    Dataset sitesDataset = h5File.createScalarDS (ei+"_"+"input_sites", inputGroup, dtype, dims2D, null, null, 0, sitesArray);
+                    for (SingleElectricalInput input: inputsHere)
+                    {
+                        sitesTable.add(input.getCellNumber());
+                        sitesTable.add(input.getSegmentId());
+                        sitesTable.add(input.getFractionAlong());
+                    }
+                    sitesTable.finish();
 
                     Attribute attr0 = Hdf5Utils.getSimpleAttr("column_0", NetworkMLConstants.INPUT_SITE_CELLID_ATTR, h5File);
                     sitesDataset.writeMetadata(attr0);
@@ -608,13 +647,14 @@ public class NetworkMLWriter
         return file;
     }
 
-    public static Datatype getPopDatatype(H5File h5File) throws Hdf5Exception
+    /**
+     * 4 byte floats, or 8 byte floats if there are ids too large to be stored exactly in 4 byte floats
+     */
+    public static Datatype getPopDatatype(H5File h5File, long maxId) throws Hdf5Exception
     {
         try
         {
-
-            Datatype popDataType = h5File.createDatatype(Datatype.CLASS_FLOAT, 4, Datatype.NATIVE, -1);
-            return popDataType;
+            return getFloatDatatype(h5File, maxId);
         }
         catch (Exception ex)
         {
@@ -624,12 +664,18 @@ public class NetworkMLWriter
 
     }
 
-    public static Datatype getProjDatatype(H5File h5File) throws Hdf5Exception
+    /**
+     * 4 byte integers if all the columns are ids (i.e. connection, cell & segment ids), otherwise floats
+     * as in getPopDatatype()
+     */
+    public static Datatype getProjDatatype(H5File h5File, boolean integerColumnsOnly, long maxId) throws Hdf5Exception
     {
         try
         {
-            Datatype projDataType = h5File.createDatatype(Datatype.CLASS_FLOAT, 4, Datatype.NATIVE, -1);
-            return projDataType;
+            if (integerColumnsOnly && maxId <= Integer.MAX_VALUE)
+                return h5File.createDatatype(Datatype.CLASS_INTEGER, 4, Datatype.NATIVE, Datatype.NATIVE);
+
+            return getFloatDatatype(h5File, maxId);
         }
         catch (Exception ex)
         {
@@ -639,12 +685,14 @@ public class NetworkMLWriter
 
     }
 
-    public static Datatype getInputDatatype(H5File h5File) throws Hdf5Exception
+    /**
+     * Floats as in getPopDatatype()
+     */
+    public static Datatype getInputDatatype(H5File h5File, long maxId) throws Hdf5Exception
     {
         try
         {
-            Datatype projDataType = h5File.createDatatype(Datatype.CLASS_FLOAT, 4, Datatype.NATIVE, -1);
-            return projDataType;
+            return getFloatDatatype(h5File, maxId);
         }
         catch (Exception ex)
         {
@@ -652,6 +700,93 @@ public class NetworkMLWriter
         }
     }
 
+    private static Datatype getFloatDatatype(H5File h5File, long maxId) throws Exception
+    {
+        if (maxId > MAX_EXACT_FLOAT_INT)
+            return h5File.createDatatype(Datatype.CLASS_FLOAT, 8, Datatype.NATIVE, -1);
+
+        return h5File.createDatatype(Datatype.CLASS_FLOAT, 4, Datatype.NATIVE, -1);
+    }
+
+
+    /*
+     * Fills a 2D dataset with values given row by row, writing Hdf5Utils.ROWS_PER_BLOCK
+     * rows at a time
+     */
+    private static class TableWriter
+    {
+        private Dataset dataset;
+        private int numColumns;
+        private int rowsPerBlock;
+
+        private boolean integerType;
+        private boolean doubleType;
+
+        private double[] block;
+        private int numInBlock = 0;
+        private long rowsWritten = 0;
+
+        TableWriter(Dataset dataset, int numColumns)
+        {
+            this.dataset = dataset;
+            this.numColumns = numColumns;
+
+            dataset.init();
+
+            Datatype dtype = dataset.getDatatype();
+            integerType = dtype.getDatatypeClass() == Datatype.CLASS_INTEGER;
+            doubleType = !integerType && dtype.getDatatypeSize() == 8;
+
+            rowsPerBlock = (int)Math.max(1, Math.min(Hdf5Utils.ROWS_PER_BLOCK, dataset.getDims()[0]));
+            block = new double[rowsPerBlock * numColumns];
+        }
+
+        void add(double value) throws Hdf5Exception
+        {
+            block[numInBlock++] = value;
+
+            if (numInBlock == block.length)
+                writeBlock();
+        }
+
+        void finish() throws Hdf5Exception
+        {
+            if (numInBlock % numColumns != 0)
+                throw new Hdf5Exception("Incomplete row in dataset: "+ dataset.getName());
+
+            if (numInBlock > 0)
+                writeBlock();
+        }
+
+        private void writeBlock() throws Hdf5Exception
+        {
+            int numRows = numInBlock / numColumns;
+            Object data;
+
+            if (integerType)
+            {
+                int[] ints = new int[numInBlock];
+                for (int i = 0; i < numInBlock; i++) ints[i] = (int)block[i];
+                data = ints;
+            }
+            else if (doubleType)
+            {
+                data = Arrays.copyOf(block, numInBlock);
+            }
+            else
+            {
+                float[] floats = new float[numInBlock];
+                for (int i = 0; i < numInBlock; i++) floats[i] = (float)block[i];
+                data = floats;
+            }
+
+            Hdf5Utils.write2DdatasetRows(dataset, rowsWritten, numRows, data);
+
+            rowsWritten += numRows;
+            numInBlock = 0;
+        }
+    }
+
     public static void main(String[] args)
     {
         File h5File = new File("../temp/net.h5");
@@ -134,6 +134,11 @@ public class NeuronFileManager
      * A list of the NEURON template files which will be needed by the cells in the simulation
      */
     private Vector<String> cellTemplatesGenAndIncluded = new Vector<String>();
+
+    /**
+     * The hoc files with the network connections for each host, if these are used
+     */
+    private Vector<String> netConnFilesGenerated = new Vector<String>();
     
     /**
      * To manage multiple runs, as specified through the GUI. Will prob be removed in favour of easier 
@@ -197,6 +202,7 @@ public class NeuronFileManager
         cellTemplatesGenAndIncluded = new Vector<String>();
         cellMechFilesGenAndIncl = new Vector<String>();
         stimModFilesRequired =  new Vector<String>();
+        netConnFilesGenerated = new Vector<String>();
         
         graphsCreated = new Vector<String>();
         
@@ -639,6 +645,7 @@ public class NeuronFileManager
             {
                 allFiles.add( (new File( cellTemplatesGenAndIncluded.get(i))).getName());
             }
+            allFiles.addAll(netConnFilesGenerated);
             allFiles.add(getMainHocFile().getName());
             return allFiles;
         }
@@ -805,7 +812,7 @@ public class NeuronFileManager
                 String nameOfNumberOfTheseCells = "n_" + cellGroupName;
                 String nameOfArrayOfTheseCells = "a_" + cellGroupName;
 
-                ArrayList cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
+                List cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
 
                 addHocComment(responseType0, "Setting initial vals in cell group: " + cellGroupName
                            + " which has " + cellGroupPositions.size() + " cells");
@@ -1184,7 +1191,7 @@ public class NeuronFileManager
         for (int cellGroupIndex = 0; cellGroupIndex < cellGroupNames.size(); cellGroupIndex++)
         {
             String cellGroupName = cellGroupNames.get(cellGroupIndex);
-            ArrayList<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cellGroupName);
+            List<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cellGroupName);
 
             ////////////response.append("    if (strcmp($s1,\""+cellGroupName+"\")==0) {\n");
 
@@ -1246,7 +1253,7 @@ public class NeuronFileManager
         {
             String cellGroupName = cellGroupNames.get(ii);
 
-            ArrayList cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
+            List cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
             if (project.generatedCellPositions.getNumberInCellGroup(cellGroupName) == 0)
             {
                 logger.logComment("No cells generated in that group. Ignoring...");
@@ -2373,6 +2380,37 @@ public class NeuronFileManager
         return project.neuronSettings.getDataSaveFormat().equals(NeuronSettings.DataSaveFormat.HDF5_NC);
     }
 
+    private boolean isBinarySaveFormat()
+    {
+        return project.neuronSettings.getDataSaveFormat().equals(NeuronSettings.DataSaveFormat.BINARY_NC);
+    }
+
+    /*
+     * Added to the names of the files the recorded vectors are saved in
+     */
+    private String getSaveFileSuffix()
+    {
+        if (isBinarySaveFormat()) return SimulationData.getBinaryFileSuffix();
+        return "";
+    }
+
+    /*
+     * Hoc to write the vector to the open file, as text, or in binary as a single column
+     * BinaryTraceFile. Vector.fwrite uses the native byte order, so v_byteOrder (holding
+     * BinaryTraceFile.BYTE_ORDER_MARK) is written the same way first, for the reader to check
+     */
+    private String getVectorWriteHoc(String vectObj, String fileObj)
+    {
+        if (isBinarySaveFormat())
+        {
+            return "{ " + fileObj + ".printf(\"" + BinaryTraceFile.MAGIC + " " + BinaryTraceFile.VERSION + " "
+                + BinaryTraceFile.DOUBLE_FORMAT + " %d 1\\n\", " + vectObj + ".size()) "
+                + "v_byteOrder.fwrite(" + fileObj + ") "
+                + vectObj + ".fwrite(" + fileObj + ") }";
+        }
+        return vectObj + ".printf(" + fileObj + ")";
+    }
+
     /**
      *
      * Creates the vectors to store the data generated, runs the simulation, and writes the data to file
@@ -2402,6 +2440,12 @@ public class NeuronFileManager
         response.append("objref f_time\n");
         response.append("objref propsFile\n\n");
 
+        if (isBinarySaveFormat())
+        {
+            response.append("objref v_byteOrder\n");
+            response.append("v_byteOrder = new Vector(1, " + BinaryTraceFile.BYTE_ORDER_MARK + ")\n\n");
+        }
+
         if (recordingSomething)
         {
             String prefix = "";
@@ -2923,11 +2967,11 @@ public class NeuronFileManager
                                 response.append(prefix+"    " + fileObj + "[i] = new File()\n");
                                 response.append(prefix+"    strdef filename\n");
 
-                                String fileName = SimPlot.getFilename(record, segToRecord, "%d");
+                                String fileName = SimPlot.getFilename(record, segToRecord, "%d") + getSaveFileSuffix();
 
                                 response.append(prefix+"    {sprint(filename, \"%s" + fileName + "\", targetDir, i)}\n");
                                 response.append(prefix+"    " + fileObj + "[i].wopen(filename)\n");
-                                response.append(prefix+"    " + vectObj + "[i].printf(" + fileObj + "[i])\n");
+                                response.append(prefix+"    " + getVectorWriteHoc(vectObj + "[i]", fileObj + "[i]") + "\n");
                                 response.append(prefix+"    " + fileObj + "[i].close()\n");
                                 response.append(post);
                                 response.append("}\n\n");
@@ -2992,13 +3036,13 @@ public class NeuronFileManager
                                         response.append(prefix + fileObj + " = new File()\n");
                                         response.append(prefix + "strdef filename\n");
 
-                                        String fileName = SimPlot.getFilename(record, postSynObj, "%d");
+                                        String fileName = SimPlot.getFilename(record, postSynObj, "%d") + getSaveFileSuffix();
 
                                         response.append(prefix + "{sprint(filename, \"%s" + fileName + "\", targetDir, " +
                                                         cellNum + ")}\n");
 
                                         response.append(prefix +"{"+ fileObj + ".wopen(filename)}\n");
-                                        response.append(prefix +"{"+ vectorObj + ".printf(" + fileObj + ")}\n");
+                                        response.append(prefix +"{"+ getVectorWriteHoc(vectorObj, fileObj) + "}\n");
                                         response.append(prefix +"{"+ fileObj + ".close()}\n\n");
                                         response.append(post);
 
@@ -3037,12 +3081,12 @@ public class NeuronFileManager
                                     response.append(prefix + fileObj + " = new File()\n");
                                     response.append(prefix + "strdef filename\n");
 
-                                    String fileName = SimPlot.getFilename(record, segToRecord, "%d");
+                                    String fileName = SimPlot.getFilename(record, segToRecord, "%d") + getSaveFileSuffix();
 
                                     response.append(prefix +"{"+ "sprint(filename, \"%s" + fileName + "\", targetDir, " +
                                                     cellNum + ")}\n");
                                     response.append(prefix +"{"+ fileObj + ".wopen(filename)}\n");
-                                    response.append(prefix +"{"+ vectObj + ".printf(" + fileObj + ")}\n");
+                                    response.append(prefix +"{"+ getVectorWriteHoc(vectObj, fileObj) + "}\n");
                                     response.append(prefix +"{"+ fileObj + ".close()}\n\n");
                                     response.append(post);
                                 }
@@ -3062,9 +3106,9 @@ public class NeuronFileManager
                 response.append("if (hostid == 0) {\n");
             }
             
-            response.append(prefix+"{ sprint(timeFilename, \"%s%s\", targetDir, \"" + SimulationData.getStandardTimesFilename() + "\")}\n");
+            response.append(prefix+"{ sprint(timeFilename, \"%s%s\", targetDir, \"" + SimulationData.getStandardTimesFilename() + getSaveFileSuffix() + "\")}\n");
             response.append(prefix+"{ f_time.wopen(timeFilename) }\n");
-            response.append(prefix+"{ v_time.printf(f_time) }\n");
+            response.append(prefix+"{ " + getVectorWriteHoc("v_time", "f_time") + " }\n");
             response.append(prefix+"{ f_time.close() }\n");
 
             response.append(post);
@@ -3574,7 +3618,7 @@ public class NeuronFileManager
                 {
                     String currentRegionName = project.cellGroupsInfo.getRegionName(cellGroupName);
     
-                    ArrayList cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
+                    List cellGroupPositions = project.generatedCellPositions.getPositionRecords(cellGroupName);
     
                     addHocComment(response, "Adding " + cellGroupPositions.size()
                                       + " cells of type " + cellTypeName
@@ -3859,7 +3903,7 @@ public class NeuronFileManager
 
     }
 
-    private void generateNetworkConnections(FileWriter hocWriter) throws IOException
+    private void generateNetworkConnections(FileWriter hocWriter) throws NeuronException, IOException
     {
 
         logger.logComment("Starting generation of the net conns");
@@ -3901,6 +3945,12 @@ public class NeuronFileManager
         GeneralUtils.timeCheck("Starting gen of syn conns");
 
 
+        if (simConfig.getMpiConf().isParallelNet() && project.neuronSettings.isPerHostNetConns())
+        {
+            generatePerHostNetworkConnections(hocWriter);
+            return;
+        }
+
         // refresh iterator...
         allNetConnNames = project.generatedNetworkConnections.getNamesNetConnsIter();
 
@@ -4529,6 +4579,45 @@ public class NeuronFileManager
 
     }
 
+    /*
+     * Writes the connections in one file per host (see PerHostNetConnWriter), and the hoc for
+     * each host to load its own file
+     */
+    private void generatePerHostNetworkConnections(FileWriter hocWriter) throws NeuronException, IOException
+    {
+        File dirForNeuronFiles = ProjectStructure.getNeuronCodeDir(project.getProjectMainDirectory());
+
+        PerHostNetConnWriter netConnWriter = new PerHostNetConnWriter(project, simConfig);
+
+        netConnWriter.writeFiles(dirForNeuronFiles);
+
+        for (File f: netConnWriter.getFilesGenerated())
+        {
+            netConnFilesGenerated.add(f.getName());
+        }
+
+        StringBuilder response = new StringBuilder();
+
+        addHocComment(response, "Each host only loads the connections to/from the cells on it");
+
+        response.append("strdef netConnsFile\n");
+        response.append("{sprint(netConnsFile, \""+PerHostNetConnWriter.FILE_NAME_FORMAT+"\", hostid)}\n");
+        response.append("{load_file(netConnsFile)}\n\n");
+
+        if (netConnWriter.containsGapJunctions())
+        {
+            response.append("{pnm.pc.setup_transfer()}\n\n");
+        }
+
+        if (addComments)
+        {
+            response.append("print \"Created netcons: \", allCurrentNetConns.count(), \" on host \", hostid\n\n");
+        }
+
+        hocWriter.write(response.toString());
+    }
+
+
     public String generatePlots()
     {
         StringBuilder response = new StringBuilder();
@@ -69,10 +69,15 @@ public class NeuronSettings
 
     private boolean forceCorrectInit = true;
 
-    public enum DataSaveFormat{ TEXT_NC, HDF5_NC };
+    public enum DataSaveFormat{ TEXT_NC, HDF5_NC, BINARY_NC };
 
     private DataSaveFormat dataSaveFormat = DataSaveFormat.TEXT_NC;
 
+    /*
+     * If true, parallel simulations load the network connections from one file per host
+     */
+    private boolean perHostNetConns = false;
+
     //private subsApPropVel
 
     public NeuronSettings()
@@ -319,6 +324,20 @@ public class NeuronSettings
 
 
 
+    /*
+     * Currently these funcs are only used through Python interface
+     */
+    public boolean isPerHostNetConns()
+    {
+        return perHostNetConns;
+    }
+
+    public void setPerHostNetConns(boolean perHostNetConns)
+    {
+        this.perHostNetConns = perHostNetConns;
+    }
+
+
     public boolean isModSilentMode()
     {
         return modSilentMode;
@@ -0,0 +1,593 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.neuron;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.cell.utils.*;
+import ucl.physiol.neuroconstruct.gui.*;
+import ucl.physiol.neuroconstruct.mechanisms.*;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.simulation.*;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * Writes the network connections of a parallel NEURON simulation as one hoc file per host.
+ * The file for a host only contains the post synaptic setup for connections whose target
+ * cell is on that host, and the spike source (NetCon and gid) setup for sections of cells on
+ * that host, so no host needs to parse the connections of the whole network, and there are
+ * no isCellOnNode() checks. The text for each network connection is generated on a separate
+ * thread, and written to the host files in order as soon as it's ready.
+ *
+ * Spike source gids are ncell + the index of the section among all the sections of all the
+ * cells (in the order of getCellGlobalId()), so every host can calculate the gid of any source
+ * without a global counter, and there is no ceiling other than NEURON's int gids.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class PerHostNetConnWriter
+{
+    private static ClassLogger logger = new ClassLogger("PerHostNetConnWriter");
+
+    public static final String FILE_NAME_FORMAT = "NetConns_host%d.hoc";
+
+    private static final String PRE_NETCON = "preNetCon";
+
+    private Project project;
+    private SimConfig simConfig;
+
+    private int numHosts;
+
+    /*
+     * Host of each cell, by cell group and cell number
+     */
+    private Hashtable<String, int[]> cellHosts = new Hashtable<String, int[]>();
+
+    /*
+     * Gid of the first section of the first cell in each cell group
+     */
+    private Hashtable<String, Long> firstSectionGids = new Hashtable<String, Long>();
+
+    /*
+     * For each cell type, the section index and hoc section name of each segment, by segment id
+     */
+    private Hashtable<String, int[]> segmentSectionIndices = new Hashtable<String, int[]>();
+    private Hashtable<String, String[]> segmentHocSections = new Hashtable<String, String[]>();
+    private Hashtable<String, Integer> numSections = new Hashtable<String, Integer>();
+
+    private boolean containsGapJunctions = false;
+
+    private ArrayList<File> filesGenerated = new ArrayList<File>();
+
+
+    public PerHostNetConnWriter(Project project, SimConfig simConfig)
+    {
+        this.project = project;
+        this.simConfig = simConfig;
+        this.numHosts = simConfig.getMpiConf().getTotalNumProcessors();
+    }
+
+
+    public static String getFileName(int host)
+    {
+        return String.format(FILE_NAME_FORMAT, host);
+    }
+
+    public boolean containsGapJunctions()
+    {
+        return containsGapJunctions;
+    }
+
+    public ArrayList<File> getFilesGenerated()
+    {
+        return filesGenerated;
+    }
+
+
+    /**
+     * Generates the connections of all the network connections in parallel, and writes
+     * the hoc file for each host in the directory
+     */
+    public void writeFiles(File dir) throws NeuronException, IOException
+    {
+        initialiseLookups();
+
+        ArrayList<NetConnTask> tasks = new ArrayList<NetConnTask>();
+
+        long gapJunctionIndex = 0;
+        Iterator<String> netConnNames = project.generatedNetworkConnections.getNamesNetConnsIter();
+
+        while (netConnNames.hasNext())
+        {
+            NetConnTask task = new NetConnTask(netConnNames.next(), gapJunctionIndex);
+
+            if (task.isGapJunction)
+            {
+                gapJunctionIndex += task.conns.size();
+                containsGapJunctions = true;
+            }
+            tasks.add(task);
+        }
+
+        // Ids used with source_var/target_var for gap junctions are 2*index and 2*index+1
+        if (2 * gapJunctionIndex > Integer.MAX_VALUE)
+        {
+            throw new NeuronException("Too many gap junctions ("+gapJunctionIndex+") for the ids used by NEURON");
+        }
+
+        int numThreads = GeneralProperties.getNumProcessorstoUse();
+
+        // Net conns are only generated this far ahead of the one being written, so the hoc of
+        // just a few of them is held in memory at a time
+        int maxAhead = 2 * numThreads;
+
+        Writer[] hostWriters = new Writer[numHosts];
+        File[] hostFiles = new File[numHosts];
+
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try
+        {
+            for (int host = 0; host < numHosts; host++)
+            {
+                hostFiles[host] = new File(dir, getFileName(host));
+                hostWriters[host] = new BufferedWriter(new FileWriter(hostFiles[host]));
+
+                StringBuilder header = new StringBuilder();
+                NeuronFileManager.addMajorHocComment(header, "Network connections for host "+host+" of "+numHosts);
+                header.append("objref "+PRE_NETCON+"\n\n");
+                hostWriters[host].write(header.toString());
+            }
+
+            ArrayList<ForkJoinTask<Object>> submitted = new ArrayList<ForkJoinTask<Object>>();
+
+            // Only the first NetCon created for a source section is used
+            HashSet<Integer> preGidsDone = new HashSet<Integer>();
+
+            for (int i = 0; i < tasks.size(); i++)
+            {
+                while (submitted.size() < tasks.size() && submitted.size() <= i + maxAhead)
+                {
+                    submitted.add(pool.submit(tasks.get(submitted.size())));
+                }
+                submitted.get(i).join();
+                submitted.set(i, null);
+
+                NetConnTask task = tasks.get(i);
+
+                if (task.failure != null) throw task.failure;
+
+                if (task.zeroDelaySynapse != null)
+                {
+                    GuiUtils.showWarningMessage(logger, "Warning, zero delay for at least one synaptic connection for synapse type: " +
+                            task.zeroDelaySynapse+" on "+task.netConnName+"\nAs this is a parallel simulation, this will probably throw errors when NEURON is run.", null);
+                }
+
+                for (int j = 0; j < task.preGids.size(); j++)
+                {
+                    if (preGidsDone.add(task.preGids.get(j)))
+                    {
+                        hostWriters[task.preHosts.get(j)].write(task.preText.get(j));
+                    }
+                }
+                for (int host = 0; host < numHosts; host++)
+                {
+                    if (task.hostText[host] != null)
+                    {
+                        hostWriters[host].write(task.hostText[host].toString());
+                    }
+                }
+                task.releaseText();
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+
+            for (Writer out: hostWriters)
+            {
+                if (out != null) out.close();
+            }
+        }
+
+        filesGenerated.addAll(Arrays.asList(hostFiles));
+
+        logger.logComment("Written the connections of "+tasks.size()+" net conns in "+numHosts+" host files");
+    }
+
+
+    private void initialiseLookups() throws NeuronException
+    {
+        long nextSectionGid = project.generatedCellPositions.getNumberInAllCellGroups();
+
+        for (String cellGroup: simConfig.getCellGroups())
+        {
+            List<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cellGroup);
+
+            int maxCellNumber = -1;
+            for (PositionRecord pr: posRecs)
+            {
+                maxCellNumber = Math.max(maxCellNumber, pr.cellNumber);
+            }
+            int[] hosts = new int[maxCellNumber + 1];
+            for (PositionRecord pr: posRecs)
+            {
+                hosts[pr.cellNumber] = pr.getNodeId();
+            }
+            cellHosts.put(cellGroup, hosts);
+
+            String cellType = project.cellGroupsInfo.getCellType(cellGroup);
+            Cell cell = project.cellManager.getCell(cellType);
+
+            if (!numSections.containsKey(cellType))
+            {
+                ArrayList<Section> sections = cell.getAllSections();
+                HashMap<Section, Integer> sectionIndices = new HashMap<Section, Integer>();
+
+                for (int i = 0; i < sections.size(); i++)
+                {
+                    sectionIndices.put(sections.get(i), i);
+                }
+
+                int maxSegId = -1;
+                for (Segment seg: cell.getAllSegments())
+                {
+                    maxSegId = Math.max(maxSegId, seg.getSegmentId());
+                }
+                int[] secIndices = new int[maxSegId + 1];
+                String[] hocSections = new String[maxSegId + 1];
+
+                for (Segment seg: cell.getAllSegments())
+                {
+                    secIndices[seg.getSegmentId()] = sectionIndices.get(seg.getSection());
+                    hocSections[seg.getSegmentId()] = NeuronFileManager.getHocSectionName(seg.getSection().getSectionName());
+                }
+                segmentSectionIndices.put(cellType, secIndices);
+                segmentHocSections.put(cellType, hocSections);
+                numSections.put(cellType, sections.size());
+            }
+
+            firstSectionGids.put(cellGroup, nextSectionGid);
+            nextSectionGid += (long)(maxCellNumber + 1) * numSections.get(cellType);
+        }
+
+        if (nextSectionGid > Integer.MAX_VALUE)
+        {
+            throw new NeuronException("The network has too many cell sections ("+nextSectionGid
+                                      +") for a gid to be given to each in NEURON");
+        }
+    }
+
+
+    /*
+     * Generates the hoc for one network connection, for each host
+     */
+    private class NetConnTask implements Callable<Object>
+    {
+        String netConnName;
+        long firstGapJunctionIndex;
+
+        String sourceCellGroup;
+        String targetCellGroup;
+        Vector<SynapticProperties> synPropList;
+        NetConnectionStore conns;
+
+        boolean isGapJunction = false;
+        boolean isNeuroML2GapJunction = false;
+
+        StringBuilder[] hostText = new StringBuilder[numHosts];
+
+        /*
+         * The spike sources needed, in the order they're first used in this net conn
+         */
+        ArrayList<Integer> preGids = new ArrayList<Integer>();
+        ArrayList<Integer> preHosts = new ArrayList<Integer>();
+        ArrayList<String> preText = new ArrayList<String>();
+
+        String zeroDelaySynapse = null;
+
+        RuntimeException failure = null;
+
+        NetConnTask(String netConnName, long firstGapJunctionIndex)
+        {
+            this.netConnName = netConnName;
+            this.firstGapJunctionIndex = firstGapJunctionIndex;
+
+            if (project.morphNetworkConnectionsInfo.isValidSimpleNetConn(netConnName))
+            {
+                sourceCellGroup = project.morphNetworkConnectionsInfo.getSourceCellGroup(netConnName);
+                targetCellGroup = project.morphNetworkConnectionsInfo.getTargetCellGroup(netConnName);
+                synPropList = project.morphNetworkConnectionsInfo.getSynapseList(netConnName);
+            }
+            else if (project.volBasedConnsInfo.isValidVolBasedConn(netConnName))
+            {
+                sourceCellGroup = project.volBasedConnsInfo.getSourceCellGroup(netConnName);
+                targetCellGroup = project.volBasedConnsInfo.getTargetCellGroup(netConnName);
+                synPropList = project.volBasedConnsInfo.getSynapseList(netConnName);
+            }
+
+            if (synPropList.size()==1)
+            {
+                CellMechanism cm = project.cellMechanismInfo.getCellMechanism(synPropList.get(0).getSynapseType());
+
+                isGapJunction = cm.getMechanismType().equals(CellMechanism.GAP_JUNCTION) ||
+                                cm.getMechanismType().equals(CellMechanism.NEUROML2_GAP_JUNCTION);
+                isNeuroML2GapJunction = cm.getMechanismType().equals(CellMechanism.NEUROML2_GAP_JUNCTION);
+            }
+
+            conns = project.generatedNetworkConnections.getConnectionStore(netConnName);
+            if (conns == null) conns = new NetConnectionStore();
+        }
+
+
+        public Object call()
+        {
+            try
+            {
+                generate();
+            }
+            catch (RuntimeException e)
+            {
+                failure = e;
+            }
+            return null;
+        }
+
+
+        /*
+         * Once written to the host files
+         */
+        void releaseText()
+        {
+            hostText = null;
+            preText = null;
+        }
+
+
+        private StringBuilder getHostText(int host)
+        {
+            if (hostText[host] == null)
+            {
+                hostText[host] = new StringBuilder();
+
+                if (NeuronFileManager.addComments())
+                {
+                    hostText[host].append("\n// Connections of NetConn: "+netConnName+" from: "+sourceCellGroup
+                                          +" to: "+targetCellGroup+" with syn(s): "+synPropList+"\n\n");
+                }
+                for (SynapticProperties synProps: synPropList)
+                {
+                    String arrayName = getArrayName(synProps);
+                    if (!isGapJunction)
+                    {
+                        hostText[host].append("objectvar "+arrayName+"["+conns.size()+"]\n");
+                        hostText[host].append("objectvar "+arrayName+"_temp["+conns.size()+"]\n\n");
+                    }
+                    else
+                    {
+                        hostText[host].append("objectvar "+arrayName+"_A["+conns.size()+"]\n");
+                        hostText[host].append("objectvar "+arrayName+"_B["+conns.size()+"]\n\n");
+                    }
+                }
+            }
+            return hostText[host];
+        }
+
+
+        private String getArrayName(SynapticProperties synProps)
+        {
+            String arrayName = "syn_" + netConnName + "_" + synProps.getSynapseType();
+
+            if (isGapJunction) arrayName = "elec" + arrayName;
+
+            return arrayName;
+        }
+
+
+        private void generate()
+        {
+            String targetCellType = project.cellGroupsInfo.getCellType(targetCellGroup);
+            Cell targetCell = project.cellManager.getCell(targetCellType);
+
+            String sourceCellType = project.cellGroupsInfo.getCellType(sourceCellGroup);
+            Cell sourceCell = project.cellManager.getCell(sourceCellType);
+
+            int[] targetHosts = cellHosts.get(targetCellGroup);
+            int[] sourceHosts = cellHosts.get(sourceCellGroup);
+
+            String[] targetHocSections = segmentHocSections.get(targetCellType);
+            String[] sourceHocSections = segmentHocSections.get(sourceCellType);
+            int[] sourceSectionIndices = segmentSectionIndices.get(sourceCellType);
+            int sourceNumSections = numSections.get(sourceCellType);
+            long sourceFirstGid = firstSectionGids.get(sourceCellGroup);
+
+            // Alternative connection points when there are ApPropSpeeds on sections, as in
+            // NeuronFileManager.generateNetworkConnections()
+            HashMap<Integer, SegmentLocation> substituteConnPoints = new HashMap<Integer, SegmentLocation>();
+
+            if (sourceCell.getApPropSpeedsVsGroups().size() > 0)
+            {
+                for (Section nextSec: sourceCell.getAllSections())
+                {
+                    if (sourceCell.getApPropSpeedForSection(nextSec) != null)
+                    {
+                        LinkedList<Segment> segs = sourceCell.getAllSegmentsInSection(nextSec);
+
+                        SegmentLocation synconloc = CellTopologyHelper.getConnLocOnExpModParent(sourceCell, segs.getFirst());
+
+                        for (Segment seg: segs)
+                        {
+                            substituteConnPoints.put(seg.getSegmentId(), synconloc);
+                        }
+                    }
+                }
+            }
+
+            HashSet<Integer> preGidsCreated = new HashSet<Integer>();
+
+            for (int singleConnIndex = 0; singleConnIndex < conns.size(); singleConnIndex++)
+            {
+                ArrayList<ConnSpecificProps> props = conns.getProps(singleConnIndex);
+
+                int tgtCellNum = conns.getTargetCell(singleConnIndex);
+                int srcCellNum = conns.getSourceCell(singleConnIndex);
+                int tgtHost = targetHosts[tgtCellNum];
+                int srcHost = sourceHosts[srcCellNum];
+
+                Segment targetSegment = targetCell.getSegmentWithId(conns.getTargetSegment(singleConnIndex));
+
+                float fractTgtSection = CellTopologyHelper.getFractionAlongSection(targetCell,
+                                                                                  targetSegment,
+                                                                                  conns.getTargetFract(singleConnIndex));
+                int origId = conns.getSourceSegment(singleConnIndex);
+                Segment sourceSegment;
+                float fractionAlongSrcSeg;
+                float apSegmentPropDelay = 0;
+
+                SegmentLocation subsSynConLoc = substituteConnPoints.get(origId);
+
+                if (subsSynConLoc == null)
+                {
+                    sourceSegment = sourceCell.getSegmentWithId(origId);
+                    fractionAlongSrcSeg = conns.getSourceFract(singleConnIndex);
+                }
+                else
+                {
+                    sourceSegment = sourceCell.getSegmentWithId(subsSynConLoc.getSegmentId());
+                    fractionAlongSrcSeg = subsSynConLoc.getFractAlong();
+
+                    apSegmentPropDelay = CellTopologyHelper.getTimeToFirstExpModParent(sourceCell,
+                                                                                   sourceCell.getSegmentWithId(origId),
+                                                                                   conns.getSourceFract(singleConnIndex));
+                }
+
+                float fractSrcSection = CellTopologyHelper.getFractionAlongSection(sourceCell,
+                                                                                  sourceSegment,
+                                                                                  fractionAlongSrcSeg);
+
+                String tgtCellName = "a_" + targetCellGroup + "[" + tgtCellNum + "]";
+                String tgtSecNameFull = tgtCellName + "." + targetHocSections[targetSegment.getSegmentId()];
+
+                String srcCellName = "a_" + sourceCellGroup + "[" + srcCellNum + "]";
+                String srcSecNameFull = srcCellName + "." + sourceHocSections[sourceSegment.getSegmentId()];
+
+                for (SynapticProperties synProps: synPropList)
+                {
+                    String synapseType = synProps.getSynapseType();
+                    if (synapseType.indexOf(" ") > 0)
+                    {
+                        synapseType = synapseType.substring(0, synapseType.indexOf(" "));
+                    }
+
+                    float synInternalDelay = synProps.getDelayGenerator().getNominalNumber();
+                    float weight = synProps.getWeightsGenerator().getNominalNumber();
+
+                    if (props != null)
+                    {
+                        for (ConnSpecificProps prop: props)
+                        {
+                            if (prop.synapseType.equals(synProps.getSynapseType()))
+                            {
+                                synInternalDelay = prop.internalDelay;
+                                weight = prop.weight;
+                            }
+                        }
+                    }
+                    float totalDelay = synInternalDelay + apSegmentPropDelay + conns.getApPropDelay(singleConnIndex);
+
+                    String arrayName = getArrayName(synProps);
+
+                    if (!isGapJunction)
+                    {
+                        if (totalDelay == 0 && zeroDelaySynapse == null)
+                        {
+                            zeroDelaySynapse = synProps.getSynapseType();
+                        }
+
+                        int gid = (int)(sourceFirstGid + (long)srcCellNum * sourceNumSections
+                                        + sourceSectionIndices[sourceSegment.getSegmentId()]);
+
+                        if (preGidsCreated.add(gid))
+                        {
+                            preGids.add(gid);
+                            preHosts.add(srcHost);
+                            preText.add("{pnm.pc.set_gid2node("+gid+", hostid)}\n"
+                                        + "{"+srcSecNameFull+" "+PRE_NETCON+" = new NetCon(&v("+fractSrcSection+"), nil)}\n"
+                                        + "{"+PRE_NETCON+".threshold = "+synProps.getThreshold()+"}\n"
+                                        + "{pnm.pc.cell("+gid+", "+PRE_NETCON+")}\n"
+                                        + "{allCurrentNetConns.append("+PRE_NETCON+")}\n\n");
+                        }
+
+                        String synObj = arrayName + "[" + singleConnIndex + "]";
+                        String netConObj = arrayName + "_temp[" + singleConnIndex + "]";
+
+                        StringBuilder text = getHostText(tgtHost);
+
+                        text.append("{"+tgtSecNameFull+" "+synObj+" = new "+synapseType+"("+fractTgtSection+")}\n");
+                        text.append("{"+tgtCellName+".synlist.append("+synObj+")}\n");
+                        text.append("{"+netConObj+" = pnm.pc.gid_connect("+gid+", "+synObj+")}\n");
+                        text.append("{"+netConObj+".delay = "+totalDelay+"}\n");
+                        text.append("{"+netConObj+".weight = "+weight+"}\n");
+                        text.append("{"+netConObj+".threshold = "+synProps.getThreshold()+"}\n\n");
+                    }
+                    else
+                    {
+                        long gapJunctionIndex = firstGapJunctionIndex + singleConnIndex;
+                        long tgtGlobalId = 2 * gapJunctionIndex;
+                        long srcGlobalId = 2 * gapJunctionIndex + 1;
+
+                        String gapVar = isNeuroML2GapJunction ? "vpeer" : "vgap";
+
+                        String gjListenObjA = arrayName + "_A[" + singleConnIndex + "]";
+                        String gjListenObjB = arrayName + "_B[" + singleConnIndex + "]";
+
+                        StringBuilder text = getHostText(tgtHost);
+
+                        text.append("{"+tgtSecNameFull+" "+gjListenObjA+" = new "+synapseType+"("+fractTgtSection+")}\n");
+                        if (!isNeuroML2GapJunction) text.append("{"+gjListenObjA+".weight = "+weight+"}\n");
+                        text.append("{pnm.pc.target_var(&"+gjListenObjA+"."+gapVar+", "+tgtGlobalId+")}\n");
+                        text.append("{pnm.pc.source_var(&"+tgtSecNameFull+".v("+fractTgtSection+"), "+srcGlobalId+")}\n\n");
+
+                        text = getHostText(srcHost);
+
+                        text.append("{"+srcSecNameFull+" "+gjListenObjB+" = new "+synapseType+"("+fractSrcSection+")}\n");
+                        if (!isNeuroML2GapJunction) text.append("{"+gjListenObjB+".weight = "+weight+"}\n");
+                        text.append("{pnm.pc.target_var(&"+gjListenObjB+"."+gapVar+", "+srcGlobalId+")}\n");
+                        text.append("{pnm.pc.source_var(&"+srcSecNameFull+".v("+fractSrcSection+"), "+tgtGlobalId+")}\n\n");
+                    }
+                }
+            }
+            if (logger.isEnabled()) logger.logComment("Generated "+conns.size()+" conns of "+netConnName);
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.util.*;
+
+/**
+ * Storage for the positions, node ids and initial potentials of the cells in one cell group,
+ * in arrays indexed by cell number, so no object is kept per cell. PositionRecords for the
+ * cells are created as views of the store when requested.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+class CellGroupPositionStore
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    /*
+     * Indexed by cell number. Cell numbers not in the group have x, y, z = Float.NaN,
+     * NO_NODE_ID, NO_INIT_V and order = -1
+     */
+    float[] x = null;
+    float[] y = null;
+    float[] z = null;
+    int[] nodeIds = null;
+    float[] initVs = null;
+    private int[] order = null;
+
+    /*
+     * The cell numbers, in the order they were added
+     */
+    private int[] cellNumbers = null;
+
+    private int size = 0;
+
+    private List<PositionRecord> records = null;
+
+    CellGroupPositionStore()
+    {
+        x = new float[0];
+        y = new float[0];
+        z = new float[0];
+        nodeIds = new int[0];
+        initVs = new float[0];
+        order = new int[0];
+        cellNumbers = new int[INITIAL_CAPACITY];
+
+        records = new RecordList();
+    }
+
+    int size()
+    {
+        return size;
+    }
+
+    boolean contains(int cellNumber)
+    {
+        return cellNumber >= 0 && cellNumber < order.length && order[cellNumber] >= 0;
+    }
+
+    int getCellNumberAt(int index)
+    {
+        return cellNumbers[index];
+    }
+
+    /*
+     * Adds the cell. If the cell number is already in the group, its values are replaced
+     * and it stays at its original place in the order
+     */
+    void add(int cellNumber, float xPos, float yPos, float zPos, int nodeId, float initV)
+    {
+        if (cellNumber >= order.length)
+        {
+            growArrays(Math.max(cellNumber + 1, order.length * 2));
+        }
+
+        if (order[cellNumber] < 0)
+        {
+            if (size == cellNumbers.length)
+            {
+                cellNumbers = Arrays.copyOf(cellNumbers, size * 2);
+            }
+            cellNumbers[size] = cellNumber;
+            order[cellNumber] = size;
+            size++;
+        }
+
+        x[cellNumber] = xPos;
+        y[cellNumber] = yPos;
+        z[cellNumber] = zPos;
+        nodeIds[cellNumber] = nodeId;
+        initVs[cellNumber] = initV;
+    }
+
+    private void growArrays(int capacity)
+    {
+        int oldCapacity = order.length;
+
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        nodeIds = Arrays.copyOf(nodeIds, capacity);
+        initVs = Arrays.copyOf(initVs, capacity);
+        order = Arrays.copyOf(order, capacity);
+
+        Arrays.fill(x, oldCapacity, capacity, Float.NaN);
+        Arrays.fill(y, oldCapacity, capacity, Float.NaN);
+        Arrays.fill(z, oldCapacity, capacity, Float.NaN);
+        Arrays.fill(nodeIds, oldCapacity, capacity, PositionRecord.NO_NODE_ID);
+        Arrays.fill(initVs, oldCapacity, capacity, PositionRecord.NO_INIT_V);
+        Arrays.fill(order, oldCapacity, capacity, -1);
+    }
+
+    /*
+     * Views of the cells in the order they were added. Not a copy, so it changes as cells are added
+     */
+    List<PositionRecord> getRecords()
+    {
+        return records;
+    }
+
+
+    private class RecordList extends AbstractList<PositionRecord> implements RandomAccess
+    {
+        @Override
+        public PositionRecord get(int index)
+        {
+            if (index >= size)
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+
+            return new PositionRecord(CellGroupPositionStore.this, cellNumbers[index]);
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+
+}
@@ -28,6 +28,7 @@ package ucl.physiol.neuroconstruct.project;
 
 import ucl.physiol.neuroconstruct.utils.*;
 import java.util.*;
+import java.util.concurrent.*;
 import ucl.physiol.neuroconstruct.project.packing.*;
 import ucl.physiol.neuroconstruct.cell.*;
 import javax.vecmath.*;
@@ -100,174 +101,396 @@ public class CellPositionGenerator extends Thread
         //ArrayList<String> cellGroupNamesUnordered = simConfig.getCellGroups();
         LinkedList<String> cellGroupNames = simConfig.getPrioritizedCellGroups(project);
 
-        logger.logComment("getPrioritizedCellGroups: "+ cellGroupNames);
+        if (logger.isEnabled()) logger.logComment("getPrioritizedCellGroups: "+ cellGroupNames);
 
         project.generatedCellPositions.reset();
 
+        boolean success;
+
+        if (GeneralProperties.getReproducibleParallelGeneration())
+        {
+            success = generateInParallel(cellGroupNames);
+        }
+        else
+        {
+            success = generateInOrder(cellGroupNames);
+        }
+
+        if (!success) return;
+
+        long positionsGeneratedTime = System.currentTimeMillis();
+        float secondsPosns = (float) (positionsGeneratedTime - startGenerationTime) / 1000f;
+
+        logger.logComment("Generating the report to send...");
+
+        StringBuffer generationReport = new StringBuffer();
+
+        generationReport.append("Cell positions generated for Sim Config: <b>"+this.simConfig.getName()+"</b>.<br><br>");
+
+        if (!continueGeneration)
+            generationReport.append("<center><b>NOTE: Generation was interrupted</b></center><br>");
+
+
+
+        generationReport.append("<center><b>Cell Groups:</b></center>");
+
+        int totCells = project.generatedCellPositions.getNumberInAllCellGroups();
+        int totCG = project.generatedCellPositions.getNumberNonEmptyCellGroups();
+
+
+        generationReport.append("Time taken to generate <b>"+totCells+"</b> cell positions in <b>"+totCG+"</b> cell groups: " + secondsPosns + " seconds.<br>");
+
+        generationReport.append(project.generatedCellPositions.getHtmlReport());
+
+        if (myReportInterface!=null)
+        {
+            myReportInterface.giveGenerationReport(generationReport.toString(),
+                                                   myGeneratorType,
+                                                   simConfig);
+        }
+    }
+
+
+    /*
+     * Gets the packing adapter for the cell group, reset and given the region and cell
+     * @return null if there was an error, which has been shown to the user
+     */
+    private CellPackingAdapter getPreparedAdapter(String cellGroup)
+    {
+        String cellType = project.cellGroupsInfo.getCellType(cellGroup);
+        String regionName = project.cellGroupsInfo.getRegionName(cellGroup);
+
+        CellPackingAdapter adapter = project.cellGroupsInfo.getCellPackingAdapter(cellGroup);
+
+        if (adapter==null)
+        {
+            String error = "Error finding cell packing adaptor!\nAsked for one for "+cellGroup+"\n"
+                + "Have:\n";
+            for(String cg: project.cellGroupsInfo.getAllCellGroupNames())
+            {
+                error = error +cg+": "+ project.cellGroupsInfo.getCellPackingAdapter(cg)+"\n";
+            }
+            error = error+project.getProjectFileName()+ "\n";
+            error = error+project.cellGroupsInfo.getAllCellGroupNames()+ "\n";
+            error = error+project.cellManager.getAllCells()+ "\n";
+            GuiUtils.showErrorMessage(logger, error, null, null);
+            return null;
+        }
+
+        adapter.reset();
+
+        Cell cell = project.cellManager.getCell(cellType);
+
+        if (cell==null)
+        {
+            GuiUtils.showErrorMessage(logger, "Error finding cell for type: "+ cellType+".\n" +
+                    "Make sure there is a cell of that type in the project.\n" +
+                    "Try pressing Validate for more information", null, null);
+            return null;
+        }
+
+        if (logger.isEnabled()) logger.logComment("Adapter for this cell group: " + adapter);
+
+        adapter.addRegionAndCellInfo(project.regionsInfo.getRegionObject(regionName),
+                                     cell);
+        return adapter;
+    }
+
+
+    /*
+     * Generates the cell groups one after the other in priority order, taking random
+     * numbers from the shared generator
+     * @return false if there was an error
+     */
+    private boolean generateInOrder(LinkedList<String> cellGroupNames)
+    {
+        // All cells placed in the cell groups generated so far, for adapters which avoid other cell groups
+        CellCollisionGrid cellsInPreviousGroups = new CellCollisionGrid();
+
         for (int l = 0; l < cellGroupNames.size(); l++)
         {
             if (continueGeneration)
             {
                 String nextCellGroup = cellGroupNames.get(l);
 
-                logger.logComment(">>>>>   Generating cell group: " + nextCellGroup+", all cell groups: "+ cellGroupNames);
+                if (logger.isEnabled()) logger.logComment(">>>>>   Generating cell group: " + nextCellGroup+", all cell groups: "+ cellGroupNames);
 
                 this.myReportInterface.giveUpdate("Generating Cell Group: " + nextCellGroup+"...");
 
-                String cellType = project.cellGroupsInfo.getCellType(nextCellGroup);
-                String regionName = project.cellGroupsInfo.getRegionName(nextCellGroup);
+                CellPackingAdapter adapter = getPreparedAdapter(nextCellGroup);
 
-                Vector<CellPackingAdapter> adaptersToCheckForCollisions = new Vector<CellPackingAdapter>();
+                if (adapter==null) return false;
 
-                for (int m = 0; m < l; m++) // look through previous cell groups...
-                {
-                    String otherCellGroup = cellGroupNames.get(m);
+                Cell cell = project.cellManager.getCell(project.cellGroupsInfo.getCellType(nextCellGroup));
 
-                    CellPackingAdapter otherAdapter
-                        = project.cellGroupsInfo.getCellPackingAdapter(otherCellGroup);
+                ArrayList<Point3f> positionsInGroup = placeCells(nextCellGroup, adapter, cell, cellsInPreviousGroups);
 
-                    adaptersToCheckForCollisions.add(otherAdapter);
+                addPositions(nextCellGroup, positionsInGroup);
 
+                for (Point3f posn: positionsInGroup)
+                {
+                    cellsInPreviousGroups.addCell(posn, cell);
                 }
 
-                CellPackingAdapter adapter = project.cellGroupsInfo.getCellPackingAdapter(nextCellGroup);
+            }
+            if (myReportInterface != null) myReportInterface.majorStepComplete();
+        }
+        return true;
+    }
 
-                if (adapter==null)
-                {
-                    String error = "Error finding cell packing adaptor!\nAsked for one for "+nextCellGroup+"\n"
-                        + "Have:\n";
-                    for(String cg: project.cellGroupsInfo.getAllCellGroupNames())
-                    {
-                        error = error +cg+": "+ project.cellGroupsInfo.getCellPackingAdapter(cg)+"\n";
-                    }
-                    error = error+project.getProjectFileName()+ "\n";
-                    error = error+project.cellGroupsInfo.getAllCellGroupNames()+ "\n";
-                    error = error+project.cellManager.getAllCells()+ "\n";
-                    GuiUtils.showErrorMessage(logger, error, null, null);
-                    return;
-                }
 
-                adapter.reset();
+    /*
+     * Generates the cell groups concurrently. A cell group whose adapter avoids other cell
+     * groups depends on all of the groups before it in priority order, so the groups are
+     * put in stages: those which don't avoid other groups are in the first stage, and one
+     * which does comes a stage after the latest of the groups before it. The groups in a stage
+     * are generated at the same time, each with its own stream of random numbers seeded from
+     * the generation seed and the cell group name. Adapters with independent positions also
+     * check their lattice points in parallel. The positions are then the same for a given
+     * seed, whatever the number of processors.
+     * @return false if there was an error
+     */
+    private boolean generateInParallel(LinkedList<String> cellGroupNames)
+    {
+        int numGroups = cellGroupNames.size();
 
-                Cell cell = project.cellManager.getCell(cellType);
-                
-                if (cell==null)
-                {
-                    GuiUtils.showErrorMessage(logger, "Error finding cell for type: "+ cellType+".\n" +
-                            "Make sure there is a cell of that type in the project.\n" +
-                            "Try pressing Validate for more information", null, null);
-                    return;
-                }
+        CellPackingAdapter[] adapters = new CellPackingAdapter[numGroups];
+        Cell[] cells = new Cell[numGroups];
+        int[] stages = new int[numGroups];
+        int numStages = 0;
 
-                logger.logComment("Adapter for this cell group: " + adapter);
+        for (int l = 0; l < numGroups; l++)
+        {
+            String cellGroup = cellGroupNames.get(l);
 
-                adapter.addRegionAndCellInfo(project.regionsInfo.getRegionObject(regionName),
-                                             cell);
-                try
-                {
-                    int numCellsInGroupSoFar = 0;
-                    int triesAtFittingOneCell = 0;
+            adapters[l] = getPreparedAdapter(cellGroup);
 
-                    while (triesAtFittingOneCell < MAX_NUM_TRIES && continueGeneration)
-                    {
+            if (adapters[l]==null) return false;
 
-                        Point3f nextPosn = adapter.getNextPosition();
+            cells[l] = project.cellManager.getCell(project.cellGroupsInfo.getCellType(cellGroup));
 
-                        logger.logComment("Trying position " + nextPosn
-                                          + " for cell number: " + numCellsInGroupSoFar
-                                          + ". Have tried " + triesAtFittingOneCell
-                                          + " time(s) so far to fit it...");
+            stages[l] = adapters[l].avoidOtherCellGroups() ? numStages : 0;
+            numStages = Math.max(numStages, stages[l] + 1);
 
-                        boolean canBeUsed = true;
+            if (logger.isEnabled()) logger.logComment("Cell group: " + cellGroup+" will be generated in stage: "+stages[l]);
+        }
 
-                        if (adapter.avoidOtherCellGroups())
-                        {
-                            //System.out.println("Checking...");
-                            for (int k = 0; k < adaptersToCheckForCollisions.size(); k++)
-                            {
-                                CellPackingAdapter otherAdapter = adaptersToCheckForCollisions.elementAt(k);
+        final ForkJoinPool pool = new ForkJoinPool(GeneralProperties.getNumProcessorstoUse());
 
-                                boolean collision
-                                    = otherAdapter.doesCellCollideWithExistingCells(nextPosn, cell);
+        ArrayList<ArrayList<Point3f>> positionsInGroups = new ArrayList<ArrayList<Point3f>>(numGroups);
+        for (int l = 0; l < numGroups; l++)
+        {
+            positionsInGroups.add(null);
+        }
 
-                                if (collision)
-                                {
-                                    canBeUsed = false;
-                                }
-                            }
-                        }
-                        if (canBeUsed)
+        try
+        {
+            for (int stage = 0; stage < numStages && continueGeneration; stage++)
+            {
+                ArrayList<Integer> groupsInStage = new ArrayList<Integer>();
+                ArrayList<ForkJoinTask<ArrayList<Point3f>>> tasks = new ArrayList<ForkJoinTask<ArrayList<Point3f>>>();
+
+                for (int l = 0; l < numGroups; l++)
+                {
+                    if (stages[l] != stage) continue;
+
+                    final String cellGroup = cellGroupNames.get(l);
+                    final CellPackingAdapter adapter = adapters[l];
+                    final Cell cell = cells[l];
+
+                    this.myReportInterface.giveUpdate("Generating Cell Group: " + cellGroup+"...");
+
+                    // All cells in the groups before this one, which will have been generated in earlier stages
+                    final CellCollisionGrid cellsInPreviousGroups = new CellCollisionGrid();
+
+                    if (adapter.avoidOtherCellGroups())
+                    {
+                        for (int prev = 0; prev < l; prev++)
                         {
-                            logger.logComment("That point can be used...");
-
-                            PositionRecord pr = new PositionRecord(numCellsInGroupSoFar,
-                                                                       nextPosn.x,
-                                                                       nextPosn.y,
-                                                                       nextPosn.z);
-                            /* This should be done AFTER all cell pos, conns, inputs, etc. generated,
-                             * to pereserve ablity to regenerate old networks from neuroConstruct rand seeds
-                            if (!cell.getInitialPotential().isTypeFixedNum())
+                            for (Point3f posn: positionsInGroups.get(prev))
                             {
-                                float initPot = cell.getInitialPotential().getNextNumber();
-                                pr.setInitV(initPot);
-                            }*/
-
-                            project.generatedCellPositions.addPosition(nextCellGroup,
-                                                                       pr);
-                            numCellsInGroupSoFar++;
-                            triesAtFittingOneCell = 0;
+                                cellsInPreviousGroups.addCell(posn, cells[prev]);
+                            }
                         }
-                        else
+                    }
+
+                    groupsInStage.add(l);
+                    tasks.add(pool.submit(new Callable<ArrayList<Point3f>>()
+                    {
+                        public ArrayList<Point3f> call() throws CellPackingException
                         {
-                            logger.logComment("That point can't be used...");
-                            adapter.cancelPosition(nextPosn);
-                            triesAtFittingOneCell++;
+                            // Different number of stream ids from the net conns, so no clash with a net conn of the same name
+                            ProjectManager.setThreadRandomGenerator(ProjectManager.createRandomStream(cellGroup.hashCode()));
+                            try
+                            {
+                                if (adapter.hasIndependentPositions())
+                                    return placeCellsOnLattice(cellGroup, adapter, cell, cellsInPreviousGroups, pool);
+                                else
+                                    return placeCells(cellGroup, adapter, cell, cellsInPreviousGroups);
+                            }
+                            finally
+                            {
+                                ProjectManager.setThreadRandomGenerator(null);
+                            }
                         }
-
-                    }
-                    logger.logComment("Reached end of trying to fit the cell...");
+                    }));
                 }
-                catch (CellPackingException ex)
+
+                for (int i = 0; i < tasks.size(); i++)
                 {
-                    logger.logComment("Reached end of generating positions for cell group: " +
-                                      nextCellGroup);
-                    logger.logComment("Reason for ending: " + ex);
-                    logger.logComment("Number in cell group: " + adapter.getCurrentNumberPositions());
+                    int l = groupsInStage.get(i);
+                    try
+                    {
+                        positionsInGroups.set(l, tasks.get(i).get());
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        GuiUtils.showErrorMessage(logger, "Interrupted while generating cell group: "+ cellGroupNames.get(l), ex, null);
+                        return false;
+                    }
+                    catch (ExecutionException ex)
+                    {
+                        GuiUtils.showErrorMessage(logger, "Error generating cell group: "+ cellGroupNames.get(l), ex.getCause(), null);
+                        return false;
+                    }
+                    if (myReportInterface != null) myReportInterface.majorStepComplete();
                 }
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
 
+        // Added in priority order, as when generating in order
+        for (int l = 0; l < numGroups; l++)
+        {
+            if (positionsInGroups.get(l) != null)
+            {
+                addPositions(cellGroupNames.get(l), positionsInGroups.get(l));
             }
-            if (myReportInterface != null) myReportInterface.majorStepComplete();
         }
+        return true;
+    }
 
-        long positionsGeneratedTime = System.currentTimeMillis();
-        float secondsPosns = (float) (positionsGeneratedTime - startGenerationTime) / 1000f;
 
-        logger.logComment("Generating the report to send...");
+    /*
+     * Places the cells of the group one at a time with the adapter, rejecting positions where the cell
+     * would collide with one in cellsInPreviousGroups if the adapter avoids other cell groups
+     */
+    private ArrayList<Point3f> placeCells(String cellGroup,
+                                          CellPackingAdapter adapter,
+                                          Cell cell,
+                                          CellCollisionGrid cellsInPreviousGroups)
+    {
+        ArrayList<Point3f> positionsInGroup = new ArrayList<Point3f>();
 
-        StringBuffer generationReport = new StringBuffer();
+        try
+        {
+            int triesAtFittingOneCell = 0;
 
-        generationReport.append("Cell positions generated for Sim Config: <b>"+this.simConfig.getName()+"</b>.<br><br>");
+            while (triesAtFittingOneCell < MAX_NUM_TRIES && continueGeneration)
+            {
 
-        if (!continueGeneration)
-            generationReport.append("<center><b>NOTE: Generation was interrupted</b></center><br>");
+                Point3f nextPosn = adapter.getNextPosition();
 
+                if (logger.isEnabled()) logger.logComment("Trying position " + nextPosn
+                                  + " for cell number: " + positionsInGroup.size()
+                                  + ". Have tried " + triesAtFittingOneCell
+                                  + " time(s) so far to fit it...");
 
+                boolean canBeUsed = true;
 
-        generationReport.append("<center><b>Cell Groups:</b></center>");
+                if (adapter.avoidOtherCellGroups())
+                {
+                    canBeUsed = !cellsInPreviousGroups.doesCellCollide(nextPosn, cell);
+                }
+                if (canBeUsed)
+                {
+                    logger.logComment("That point can be used...");
 
-        int totCells = project.generatedCellPositions.getNumberInAllCellGroups();
-        int totCG = project.generatedCellPositions.getNumberNonEmptyCellGroups();
+                    positionsInGroup.add(nextPosn);
+                    triesAtFittingOneCell = 0;
+                }
+                else
+                {
+                    logger.logComment("That point can't be used...");
+                    adapter.cancelPosition(nextPosn);
+                    triesAtFittingOneCell++;
+                }
+
+            }
+            logger.logComment("Reached end of trying to fit the cell...");
+        }
+        catch (CellPackingException ex)
+        {
+            if (logger.isEnabled())
+            {
+                logger.logComment("Reached end of generating positions for cell group: " +
+                                  cellGroup);
+                logger.logComment("Reason for ending: " + ex);
+                logger.logComment("Number in cell group: " + adapter.getCurrentNumberPositions());
+            }
+        }
+        return positionsInGroup;
+    }
 
 
-        generationReport.append("Time taken to generate <b>"+totCells+"</b> cell positions in <b>"+totCG+"</b> cell groups: " + secondsPosns + " seconds.<br>");
+    /*
+     * As placeCells(), for an adapter with independent positions. All of the lattice points are
+     * generated first, and the region and collision checks for them run in parallel on the pool.
+     * The positions accepted are the same as placeCells() would accept.
+     */
+    private ArrayList<Point3f> placeCellsOnLattice(String cellGroup,
+                                                   CellPackingAdapter adapter,
+                                                   Cell cell,
+                                                   CellCollisionGrid cellsInPreviousGroups,
+                                                   ForkJoinPool pool) throws CellPackingException
+    {
+        ArrayList<Point3f> positionsInRegion = adapter.getAllPositionsInRegion(pool);
 
-        generationReport.append(project.generatedCellPositions.getHtmlReport());
+        boolean[] collide = adapter.avoidOtherCellGroups() ?
+                            cellsInPreviousGroups.doCellsCollide(positionsInRegion, cell, pool) :
+                            new boolean[positionsInRegion.size()];
 
-        if (myReportInterface!=null)
+        ArrayList<Point3f> positionsInGroup = new ArrayList<Point3f>();
+        int triesAtFittingOneCell = 0;
+
+        for (int i = 0; i < positionsInRegion.size() && triesAtFittingOneCell < MAX_NUM_TRIES && continueGeneration; i++)
         {
-            myReportInterface.giveGenerationReport(generationReport.toString(),
-                                                   myGeneratorType,
-                                                   simConfig);
+            if (collide[i])
+            {
+                triesAtFittingOneCell++;
+            }
+            else
+            {
+                adapter.addPosition(positionsInRegion.get(i));
+                positionsInGroup.add(positionsInRegion.get(i));
+                triesAtFittingOneCell = 0;
+            }
+        }
+
+        if (logger.isEnabled()) logger.logComment("Placed "+positionsInGroup.size()+" of "+positionsInRegion.size()
+                                                  +" lattice positions in region for cell group: " + cellGroup);
+        return positionsInGroup;
+    }
+
+
+    private void addPositions(String cellGroup, ArrayList<Point3f> positionsInGroup)
+    {
+        for (int cellNumber = 0; cellNumber < positionsInGroup.size(); cellNumber++)
+        {
+            Point3f posn = positionsInGroup.get(cellNumber);
+
+            PositionRecord pr = new PositionRecord(cellNumber,
+                                                   posn.x,
+                                                   posn.y,
+                                                   posn.z);
+            /* Initial potentials should be set AFTER all cell pos, conns, inputs, etc. generated,
+             * to pereserve ablity to regenerate old networks from neuroConstruct rand seeds
+             */
+            project.generatedCellPositions.addPosition(cellGroup,
+                                                       pr);
         }
     }
 
@@ -0,0 +1,464 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.util.*;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.hpc.mpi.*;
+import ucl.physiol.neuroconstruct.utils.*;
+
+
+/**
+ * Estimates the computational cost of each generated cell and assigns the cells to the
+ * processors of an MpiConfiguration so that the load is balanced. The cost of a cell is the
+ * number of compartments (weighted by the channel mechanisms on each) plus the number of
+ * synapses on the cell. Cells are assigned largest first to the least loaded processor, and
+ * optionally moved so that connected cells are on the same host.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class CompNodeBalancer
+{
+    private static ClassLogger logger = new ClassLogger("CompNodeBalancer");
+
+    /*
+     * Relative costs of one compartment, one channel mechanism in one compartment,
+     * and one synapse
+     */
+    public static final double COMPARTMENT_COST = 1;
+    public static final double CHANNEL_COST = 1;
+    public static final double SYNAPSE_COST = 1;
+
+    /*
+     * How far above the largest processor load after the initial assignment a processor
+     * can go when moving connected cells together
+     */
+    public static final double LOAD_TOLERANCE = 0.05;
+
+    private static final int MAX_REFINEMENT_PASSES = 8;
+
+    /*
+     * All the cells, in the order of the prioritised cell groups
+     */
+    private ArrayList<PositionRecord> cells = new ArrayList<PositionRecord>();
+
+    private double[] costs = null;
+
+    /*
+     * Cells connected to cell i are neighbours[neighbourStarts[i]] to neighbours[neighbourStarts[i+1]-1],
+     * once for each connection
+     */
+    private int[] neighbourStarts = null;
+    private int[] neighbours = null;
+
+
+    public CompNodeBalancer(Project project, SimConfig simConfig)
+    {
+        Hashtable<String, int[]> cellIndices = new Hashtable<String, int[]>();
+        ArrayList<Double> cellCosts = new ArrayList<Double>();
+        Hashtable<String, Double> cellTypeCosts = new Hashtable<String, Double>();
+
+        for (String cellGroup: simConfig.getPrioritizedCellGroups(project))
+        {
+            List<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(cellGroup);
+
+            int maxCellNumber = -1;
+            for (PositionRecord pos: posRecs)
+            {
+                maxCellNumber = Math.max(maxCellNumber, pos.cellNumber);
+            }
+            int[] indices = new int[maxCellNumber + 1];
+            Arrays.fill(indices, -1);
+            cellIndices.put(cellGroup, indices);
+
+            String cellType = project.cellGroupsInfo.getCellType(cellGroup);
+            Double cellTypeCost = cellTypeCosts.get(cellType);
+            if (cellTypeCost == null)
+            {
+                cellTypeCost = getCellCost(project.cellManager.getCell(cellType));
+                cellTypeCosts.put(cellType, cellTypeCost);
+            }
+
+            for (PositionRecord pos: posRecs)
+            {
+                indices[pos.cellNumber] = cells.size();
+                cells.add(pos);
+                cellCosts.add(cellTypeCost);
+            }
+        }
+
+        costs = new double[cells.size()];
+        for (int i = 0; i < costs.length; i++)
+        {
+            costs[i] = cellCosts.get(i);
+        }
+
+        int[] degrees = new int[cells.size()];
+        ArrayList<int[]> allConns = new ArrayList<int[]>();
+
+        Iterator<String> netConns = project.generatedNetworkConnections.getNamesNetConnsIter();
+
+        while (netConns.hasNext())
+        {
+            String netConnName = netConns.next();
+
+            String sourceCellGroup = null;
+            String targetCellGroup = null;
+            int numSynapses = 1;
+
+            if (project.morphNetworkConnectionsInfo.isValidSimpleNetConn(netConnName))
+            {
+                sourceCellGroup = project.morphNetworkConnectionsInfo.getSourceCellGroup(netConnName);
+                targetCellGroup = project.morphNetworkConnectionsInfo.getTargetCellGroup(netConnName);
+                numSynapses = project.morphNetworkConnectionsInfo.getSynapseList(netConnName).size();
+            }
+            else if (project.volBasedConnsInfo.isValidVolBasedConn(netConnName))
+            {
+                sourceCellGroup = project.volBasedConnsInfo.getSourceCellGroup(netConnName);
+                targetCellGroup = project.volBasedConnsInfo.getTargetCellGroup(netConnName);
+                numSynapses = project.volBasedConnsInfo.getSynapseList(netConnName).size();
+            }
+
+            int[] sourceIndices = cellIndices.get(sourceCellGroup);
+            int[] targetIndices = cellIndices.get(targetCellGroup);
+
+            // i.e. one of the cell groups not in the sim config
+            if (sourceIndices == null || targetIndices == null) continue;
+
+            NetConnectionStore synConns = project.generatedNetworkConnections.getConnectionStore(netConnName);
+
+            if (synConns == null) continue;
+
+            int[] conns = new int[synConns.size() * 2];
+
+            for (int i = 0; i < synConns.size(); i++)
+            {
+                int source = sourceIndices[synConns.getSourceCell(i)];
+                int target = targetIndices[synConns.getTargetCell(i)];
+
+                costs[target] += SYNAPSE_COST * numSynapses;
+
+                conns[2 * i] = source;
+                conns[2 * i + 1] = target;
+
+                if (source != target)
+                {
+                    degrees[source]++;
+                    degrees[target]++;
+                }
+            }
+            allConns.add(conns);
+        }
+
+        neighbourStarts = new int[cells.size() + 1];
+        for (int i = 0; i < degrees.length; i++)
+        {
+            neighbourStarts[i + 1] = neighbourStarts[i] + degrees[i];
+        }
+        neighbours = new int[neighbourStarts[cells.size()]];
+
+        int[] filled = new int[cells.size()];
+
+        for (int[] conns: allConns)
+        {
+            for (int i = 0; i < conns.length; i = i + 2)
+            {
+                int source = conns[i];
+                int target = conns[i + 1];
+                if (source != target)
+                {
+                    neighbours[neighbourStarts[source] + filled[source]++] = target;
+                    neighbours[neighbourStarts[target] + filled[target]++] = source;
+                }
+            }
+        }
+
+        if (logger.isEnabled()) logger.logComment("Estimated costs of "+cells.size()+" cells with "
+                                                  +(neighbours.length/2)+" connections between cells");
+    }
+
+
+    /**
+     * Estimated cost of simulating one cell of this type, without its synapses: the
+     * number of compartments (internal divisions of each section), each weighted by the
+     * channel mechanisms present on the section
+     */
+    public static double getCellCost(Cell cell)
+    {
+        double cost = 0;
+
+        for (Section section: cell.getAllSections())
+        {
+            ArrayList<ChannelMechanism> chanMechs = new ArrayList<ChannelMechanism>();
+
+            for (String group: section.getGroups())
+            {
+                for (ChannelMechanism cm: cell.getChanMechsForGroup(group))
+                {
+                    if (!chanMechs.contains(cm)) chanMechs.add(cm);
+                }
+            }
+            cost += section.getNumberInternalDivisions() * (COMPARTMENT_COST + CHANNEL_COST * chanMechs.size());
+        }
+        return cost;
+    }
+
+
+    public int getNumCells()
+    {
+        return cells.size();
+    }
+
+    /**
+     * Estimated cost of the cells, in the order of the prioritised cell groups
+     */
+    public double[] getCosts()
+    {
+        return costs;
+    }
+
+
+    /**
+     * Generates the node ids of all the cells using the load balancing of the MpiConfiguration,
+     * sets them on the PositionRecords and returns them
+     */
+    public int[] assignNodes(MpiConfiguration mpiConfig)
+    {
+        int totalProcs = mpiConfig.getTotalNumProcessors();
+        int[] nodeIds;
+
+        if (mpiConfig.getLoadBalancing() == MpiConfiguration.ROUND_ROBIN_BALANCING)
+        {
+            nodeIds = new int[cells.size()];
+            for (int i = 0; i < nodeIds.length; i++)
+            {
+                nodeIds[i] = i % totalProcs;
+            }
+        }
+        else
+        {
+            nodeIds = assignLargestFirst(costs, totalProcs);
+
+            if (mpiConfig.getLoadBalancing() == MpiConfiguration.COST_AND_CONNECTION_BALANCING)
+            {
+                int[] hostOfNode = getHostIndices(mpiConfig);
+                int before = countCrossHostConns(nodeIds, hostOfNode);
+
+                int moves = moveConnectedCells(nodeIds, costs, neighbourStarts, neighbours, hostOfNode,
+                                               totalProcs, LOAD_TOLERANCE);
+
+                if (logger.isEnabled()) logger.logComment("Moved "+moves+" cells, cross host connections reduced from "
+                                                          +before+" to "+countCrossHostConns(nodeIds, hostOfNode));
+            }
+        }
+
+        for (int i = 0; i < nodeIds.length; i++)
+        {
+            cells.get(i).setNodeId(nodeIds[i]);
+        }
+        return nodeIds;
+    }
+
+
+    /**
+     * Index in the host list of the host of each processor
+     */
+    public static int[] getHostIndices(MpiConfiguration mpiConfig)
+    {
+        int[] hostOfNode = new int[mpiConfig.getTotalNumProcessors()];
+        int nodeId = 0;
+        ArrayList<MpiHost> hosts = mpiConfig.getHostList();
+
+        for (int h = 0; h < hosts.size(); h++)
+        {
+            for (int p = 0; p < hosts.get(h).getNumProcessors(); p++)
+            {
+                hostOfNode[nodeId++] = h;
+            }
+        }
+        return hostOfNode;
+    }
+
+
+    /**
+     * Number of connections between cells on different hosts
+     */
+    public int countCrossHostConns(int[] nodeIds, int[] hostOfNode)
+    {
+        int count = 0;
+        for (int i = 0; i < nodeIds.length; i++)
+        {
+            for (int n = neighbourStarts[i]; n < neighbourStarts[i + 1]; n++)
+            {
+                if (hostOfNode[nodeIds[i]] != hostOfNode[nodeIds[neighbours[n]]]) count++;
+            }
+        }
+        return count / 2;
+    }
+
+
+    /**
+     * Summed cost of the cells on each processor
+     */
+    public static double[] getLoads(double[] costs, int[] nodeIds, int numNodes)
+    {
+        double[] loads = new double[numNodes];
+        for (int i = 0; i < costs.length; i++)
+        {
+            loads[nodeIds[i]] += costs[i];
+        }
+        return loads;
+    }
+
+
+    /**
+     * Longest processing time first assignment: the cells are taken in order of decreasing
+     * cost and each is put on the processor with the lowest load so far
+     */
+    public static int[] assignLargestFirst(final double[] costs, int numNodes)
+    {
+        Integer[] order = new Integer[costs.length];
+        for (int i = 0; i < order.length; i++)
+        {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                int c = Double.compare(costs[b], costs[a]);
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+
+        final double[] loads = new double[numNodes];
+
+        PriorityQueue<Integer> nodes = new PriorityQueue<Integer>(numNodes, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                int c = Double.compare(loads[a], loads[b]);
+                return c != 0 ? c : a.compareTo(b);
+            }
+        });
+        for (int n = 0; n < numNodes; n++)
+        {
+            nodes.add(n);
+        }
+
+        int[] nodeIds = new int[costs.length];
+
+        for (int cell: order)
+        {
+            int node = nodes.poll();
+            nodeIds[cell] = node;
+            loads[node] += costs[cell];
+            nodes.add(node);
+        }
+        return nodeIds;
+    }
+
+
+    /**
+     * Reduces the number of connections between hosts by moving each cell to the host with
+     * most of its connected cells, onto the least loaded processor there, as long as no processor
+     * goes more than tolerance above the largest load before the moves.
+     * @return the number of cells moved
+     */
+    public static int moveConnectedCells(int[] nodeIds,
+                                         double[] costs,
+                                         int[] neighbourStarts,
+                                         int[] neighbours,
+                                         int[] hostOfNode,
+                                         int numNodes,
+                                         double tolerance)
+    {
+        double[] loads = getLoads(costs, nodeIds, numNodes);
+
+        double maxLoad = 0;
+        int numHosts = 0;
+        for (int n = 0; n < numNodes; n++)
+        {
+            maxLoad = Math.max(maxLoad, loads[n]);
+            numHosts = Math.max(numHosts, hostOfNode[n] + 1);
+        }
+        maxLoad = maxLoad * (1 + tolerance);
+
+        if (numHosts < 2) return 0;
+
+        int[] connsToHost = new int[numHosts];
+        int totalMoves = 0;
+
+        for (int pass = 0; pass < MAX_REFINEMENT_PASSES; pass++)
+        {
+            int moves = 0;
+
+            for (int i = 0; i < nodeIds.length; i++)
+            {
+                if (neighbourStarts[i] == neighbourStarts[i + 1]) continue;
+
+                Arrays.fill(connsToHost, 0);
+                for (int n = neighbourStarts[i]; n < neighbourStarts[i + 1]; n++)
+                {
+                    connsToHost[hostOfNode[nodeIds[neighbours[n]]]]++;
+                }
+
+                int currentHost = hostOfNode[nodeIds[i]];
+                int bestGain = 0;
+                int bestNode = -1;
+
+                for (int n = 0; n < numNodes; n++)
+                {
+                    int gain = connsToHost[hostOfNode[n]] - connsToHost[currentHost];
+
+                    if (gain > 0 && loads[n] + costs[i] <= maxLoad
+                        && (gain > bestGain || (gain == bestGain && loads[n] < loads[bestNode])))
+                    {
+                        bestGain = gain;
+                        bestNode = n;
+                    }
+                }
+
+                if (bestNode >= 0)
+                {
+                    loads[nodeIds[i]] -= costs[i];
+                    loads[bestNode] += costs[i];
+                    nodeIds[i] = bestNode;
+                    moves++;
+                }
+            }
+            totalMoves += moves;
+
+            if (moves == 0) break;
+        }
+        return totalMoves;
+    }
+
+}
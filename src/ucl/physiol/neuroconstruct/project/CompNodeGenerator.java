@@ -91,13 +91,15 @@ public class CompNodeGenerator extends Thread
         
         MpiConfiguration mpiConfig = simConfig.getMpiConf();
 
-        int totalProcs = mpiConfig.getTotalNumProcessors();
-        
-       
-        
-        //Random r = ProjectManager.getRandomGenerator();
+        this.myReportInterface.giveUpdate("Estimating computational load of cells...");
+
+        CompNodeBalancer balancer = new CompNodeBalancer(project, simConfig);
+
+        int[] nodeIds = balancer.assignNodes(mpiConfig);
+        double[] costs = balancer.getCosts();
         
         Hashtable<String, ArrayList<Integer>> hostsVsNumOnProcs = new Hashtable<String, ArrayList<Integer>>();
+        Hashtable<String, ArrayList<Double>> hostsVsLoadOnProcs = new Hashtable<String, ArrayList<Double>>();
         
         int cellCount = 0;
 
@@ -113,35 +115,37 @@ public class CompNodeGenerator extends Thread
 
                 this.myReportInterface.giveUpdate("Generating compute nodes for Cell Group: " + nextCellGroup+"...");
 
-                ArrayList<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(nextCellGroup);
+                int numInGroup = project.generatedCellPositions.getNumberInCellGroup(nextCellGroup);
                 
-                for(PositionRecord pos: posRecs)
+                for(int i=0;i<numInGroup;i++)
                 {
+                    int nodeID = nodeIds[cellCount];
+                    double cost = costs[cellCount];
                     cellCount++;
                     
-                    //int nodeID = r.nextInt(totalProcs);
-                    int nodeID = ((cellCount-1)%totalProcs);
+                    if (logger.isEnabled()) logger.logComment("cellCount: "+cellCount+", nextCellGroup: "
+                            +nextCellGroup+", nodeID: "+nodeID+", cost: "+cost);
                     
-                    logger.logComment("cellCount: "+cellCount+", nextCellGroup: "
-                            +nextCellGroup+", nodeID: "+nodeID);
-                    
-                    
-                    pos.setNodeId(nodeID);
                     String host = mpiConfig.getHostForGlobalId(nodeID);
                     int procNum = mpiConfig.getProcForGlobalId(nodeID);
                     
                     if (hostsVsNumOnProcs.get(host)==null)
                     {
                         ArrayList<Integer> numOnProcs = new ArrayList<Integer>();
-                        for(int i=0;i<mpiConfig.getNumProcessorsOnHost(host);i++)
+                        ArrayList<Double> loadOnProcs = new ArrayList<Double>();
+                        for(int j=0;j<mpiConfig.getNumProcessorsOnHost(host);j++)
                         {
                             numOnProcs.add(0);
+                            loadOnProcs.add(0d);
                         }
                         hostsVsNumOnProcs.put(host, numOnProcs);
+                        hostsVsLoadOnProcs.put(host, loadOnProcs);
                     }
                     ArrayList<Integer> numOnProcs = hostsVsNumOnProcs.get(host);
                     numOnProcs.set(procNum, numOnProcs.get(procNum)+1);
                     
+                    ArrayList<Double> loadOnProcs = hostsVsLoadOnProcs.get(host);
+                    loadOnProcs.set(procNum, loadOnProcs.get(procNum)+cost);
                 }
                 
 
@@ -195,7 +199,16 @@ public class CompNodeGenerator extends Thread
         }
         generationReport.append("<br>");*/
         
-        StringBuffer generationReport = new StringBuffer(generateCompNodesReport(hostsVsNumOnProcs, mpiConfig, seconds));
+        StringBuffer generationReport = new StringBuffer(generateCompNodesReport(hostsVsNumOnProcs,
+                                                                                 hostsVsLoadOnProcs,
+                                                                                 mpiConfig,
+                                                                                 seconds));
+        
+        if (mpiConfig.getHostList().size()>1)
+        {
+            generationReport.append("Connections between cells on different hosts: <b>"
+                +balancer.countCrossHostConns(nodeIds, CompNodeBalancer.getHostIndices(mpiConfig))+"</b><br><br>");
+        }
         
         if (!continueGeneration)
             generationReport.append("<center><b>NOTE: Generation interrupted</b></center><br>");
@@ -226,7 +239,7 @@ public class CompNodeGenerator extends Thread
         {
             String nextCellGroup = cellGroupNames.next();
 
-            ArrayList<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(nextCellGroup);
+            List<PositionRecord> posRecs = project.generatedCellPositions.getPositionRecords(nextCellGroup);
 
             for(PositionRecord pos: posRecs)
             {
@@ -254,6 +267,17 @@ public class CompNodeGenerator extends Thread
     
     
     public static String generateCompNodesReport(Hashtable<String, ArrayList<Integer>> hostsVsNumOnProcs, MpiConfiguration mpiConfig, float seconds)
+    {
+        return generateCompNodesReport(hostsVsNumOnProcs, null, mpiConfig, seconds);
+    }
+    
+    /**
+     * As above, with the predicted load on each processor (from CompNodeBalancer) if hostsVsLoadOnProcs isn't null
+     */
+    public static String generateCompNodesReport(Hashtable<String, ArrayList<Integer>> hostsVsNumOnProcs, 
+                                                 Hashtable<String, ArrayList<Double>> hostsVsLoadOnProcs,
+                                                 MpiConfiguration mpiConfig, 
+                                                 float seconds)
     {
         StringBuffer generationReport = new StringBuffer();
         
@@ -273,6 +297,25 @@ public class CompNodeGenerator extends Thread
             generationReport.append("Compute nodes reloaded using:<br><b>"+info+"</b>");
         }
         
+        double totalLoad = 0;
+        double maxLoad = 0;
+        int totalProcs = 0;
+        
+        if (hostsVsLoadOnProcs!=null)
+        {
+            for (ArrayList<Double> loadOnProcs: hostsVsLoadOnProcs.values())
+            {
+                for (double load: loadOnProcs)
+                {
+                    totalLoad += load;
+                    maxLoad = Math.max(maxLoad, load);
+                    totalProcs++;
+                }
+            }
+            generationReport.append("Load balancing: <b>"+MpiConfiguration.getLoadBalancingDesc(mpiConfig.getLoadBalancing())+"</b><br>");
+        }
+        double meanLoad = totalProcs>0 ? totalLoad/totalProcs : 0;
+        
         Enumeration<String> hosts = hostsVsNumOnProcs.keys();
         
         while(hosts.hasMoreElements())
@@ -286,6 +329,12 @@ public class CompNodeGenerator extends Thread
             for(int i=0;i<numOnProcs.size();i++)
             {
                 generationReport.append("proc: "+i+" has <b>"+numOnProcs.get(i)+"</b> cells");
+                
+                if (hostsVsLoadOnProcs!=null && meanLoad>0)
+                {
+                    double load = hostsVsLoadOnProcs.get(host).get(i);
+                    generationReport.append(" (predicted load: <b>"+Math.round(100*load/meanLoad)+"%</b> of mean)");
+                }
                 if(i<numOnProcs.size()-1) 
                     generationReport.append(", ");
                 else
@@ -293,6 +342,12 @@ public class CompNodeGenerator extends Thread
                     
             }
         }
+        
+        if (meanLoad>0)
+        {
+            generationReport.append("Predicted load imbalance (max/mean): <b>"
+                +(float)(Math.round(100*maxLoad/meanLoad)/100d)+"</b><br>");
+        }
         generationReport.append("<br>");
         
         return generationReport.toString();
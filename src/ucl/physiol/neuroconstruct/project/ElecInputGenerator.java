@@ -127,14 +127,14 @@ public class ElecInputGenerator extends Thread
 
             String elecInputRef =  elecInputsInSimConfig.get(j);
 
-            logger.logComment("Looking at ElecInput: " + elecInputRef);
+            if (logger.isEnabled()) logger.logComment("Looking at ElecInput: " + elecInputRef);
 
 
                 this.myReportInterface.giveUpdate("Generating input: " + elecInputRef+"...");
 
             StimulationSettings nextStim = project.elecInputInfo.getStim(elecInputRef);
 
-            logger.logComment("nextStim chooser: " + nextStim.getCellChooser());
+            if (logger.isEnabled()) logger.logComment("nextStim chooser: " + nextStim.getCellChooser());
 
             if (!project.cellGroupsInfo.getAllCellGroupNames().contains(nextStim.getCellGroup()))
             {
@@ -147,7 +147,7 @@ public class ElecInputGenerator extends Thread
 
             CellChooser cellChooser = nextStim.getCellChooser();
             
-            ArrayList<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(nextStim.getCellGroup());
+            List<PositionRecord> positions = project.generatedCellPositions.getPositionRecords(nextStim.getCellGroup());
 
             cellChooser.initialise(positions);
             
@@ -174,7 +174,7 @@ public class ElecInputGenerator extends Thread
                     logger.logComment("Getting the next cell num...");
                     int nextCellNumber = cellChooser.getNextCellIndex();
 
-                    logger.logComment("Adding stim to cell number: "+ nextCellNumber);
+                    if (logger.isEnabled()) logger.logComment("Adding stim to cell number: "+ nextCellNumber);
 
                     
                     Cell cell = project.cellManager.getCell(project.cellGroupsInfo.getCellType(nextStim.getCellGroup()));
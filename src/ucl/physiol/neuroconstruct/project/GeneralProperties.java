@@ -587,6 +587,36 @@ public class GeneralProperties
         userSettings.setNumProcessorstoUse(num);
     }
 
+    /**
+     * If true, each cell group and network connection is generated from its own stream of random
+     * numbers (split further by ranges of cells where the connectivity conditions allow it), so
+     * the generated network for a given seed doesn't depend on the number of processors used
+     */
+    public static boolean getReproducibleParallelGeneration()
+    {
+        return userSettings.getReproducibleParallelGeneration();
+    }
+
+    public static void setReproducibleParallelGeneration(boolean reproducible)
+    {
+        userSettings.setReproducibleParallelGeneration(reproducible);
+    }
+
+    /**
+     * Maximum size in MB of the simulation traces which are kept in memory once loaded.
+     * When more than this is loaded, the least recently used traces are dropped, and
+     * read in again from file if needed
+     */
+    public static int getTraceCacheSizeMB()
+    {
+        return userSettings.getTraceCacheSizeMB();
+    }
+
+    public static void setTraceCacheSizeMB(int sizeMB)
+    {
+        userSettings.setTraceCacheSizeMB(sizeMB);
+    }
+
     public static boolean getGenerateMatlab()
     {
         return userSettings.getGenerateMatlab();
@@ -31,6 +31,7 @@ import java.io.*;
 import java.util.*;
 import java.util.ArrayList;
 import javax.vecmath.*;
+import javax.xml.stream.*;
 
 import ucl.physiol.neuroconstruct.gui.*;
 import ucl.physiol.neuroconstruct.neuroml.*;
@@ -52,7 +53,10 @@ public class GeneratedCellPositions
 {
     private ClassLogger logger = new ClassLogger("GeneratedCellPositions");
 
-    private Hashtable<String, ArrayList<PositionRecord>> myCellGroupPosns = null;
+    /*
+     * The positions of the cells in each cell group, in arrays indexed by cell number
+     */
+    private Hashtable<String, CellGroupPositionStore> myCellGroupPosns = null;
 
     private Project project = null;
 
@@ -65,16 +69,13 @@ public class GeneratedCellPositions
     public GeneratedCellPositions(Project project)
     {
         this.project = project;
-        myCellGroupPosns = new Hashtable<String, ArrayList<PositionRecord>>();
+        myCellGroupPosns = new Hashtable<String, CellGroupPositionStore>();
     }
 
     public void reset()
     {
         this.myCellGroupPosns.clear();
-        logger.logComment("Reset called. Info: "+ this.toString());
-        cachedCellPosition1 = null;
-        cachedCellPosition2 = null;
-        cachedCellPosition3 = null;
+        if (logger.isEnabled()) logger.logComment("Reset called. Info: "+ this.toString());
     }
 
     public void setRandomSeed(long rs)
@@ -88,65 +89,101 @@ public class GeneratedCellPositions
     }
 
 
+    private synchronized CellGroupPositionStore getStore(String cellGroupName)
+    {
+        CellGroupPositionStore store = myCellGroupPosns.get(cellGroupName);
+
+        if (store == null)
+        {
+            store = new CellGroupPositionStore();
+            myCellGroupPosns.put(cellGroupName, store);
+        }
+        return store;
+    }
 
+    /**
+     * Adds a cell to the cell group. If there is already a cell with that number in the
+     * group, its position is replaced
+     */
     public void addPosition(String cellGroupName,
                             int cellIndex,
                             float xPos,
                             float yPos,
                             float zPos)
     {
-        PositionRecord posRec = new PositionRecord(cellIndex,
-                                                   xPos,
-                                                   yPos,
-                                                   zPos);
-
-        addPosition(cellGroupName, posRec);
-        cachedCellPosition1 = null;
-        cachedCellPosition2 = null;
-        cachedCellPosition3 = null;
+        getStore(cellGroupName).add(cellIndex,
+                                    xPos,
+                                    yPos,
+                                    zPos,
+                                    PositionRecord.NO_NODE_ID,
+                                    PositionRecord.NO_INIT_V);
     }
 
 
+    /**
+     * Adds the position, node id and initial potential of the record to the cell group.
+     * Note: later changes to posRecord aren't stored, use the records from getPositionRecords() for that
+     */
     public void addPosition(String cellGroupName,
                             PositionRecord posRecord)
     {
-
-        if (!myCellGroupPosns.containsKey(cellGroupName))
-        {
-            ArrayList<PositionRecord> newCellGroupArrayList = new ArrayList<PositionRecord>();
-            myCellGroupPosns.put(cellGroupName, newCellGroupArrayList);
-        }
-        ArrayList<PositionRecord> cellGroupVector = myCellGroupPosns.get(cellGroupName);
-
-        cellGroupVector.add(posRecord);
-        cachedCellPosition1 = null;
-        cachedCellPosition2 = null;
-        cachedCellPosition3 = null;
+        getStore(cellGroupName).add(posRecord.cellNumber,
+                                    posRecord.x_pos,
+                                    posRecord.y_pos,
+                                    posRecord.z_pos,
+                                    posRecord.getNodeId(),
+                                    posRecord.getInitV());
     }
 
 
-    public ArrayList<PositionRecord> getPositionRecords(String cellGroupName)
+    /**
+     * Gets the cells in the group, in the order they were added. The list isn't a copy, and
+     * its records are views of the stored cells, so setting the node id or initial potential
+     * on them changes the stored values.
+     */
+    public List<PositionRecord> getPositionRecords(String cellGroupName)
     {
         if (!myCellGroupPosns.containsKey(cellGroupName))
         {
             return new ArrayList<PositionRecord>();
         }
-        ArrayList<PositionRecord> cellGroupArrayList = myCellGroupPosns.get(cellGroupName);
-
-        return cellGroupArrayList;
+        return myCellGroupPosns.get(cellGroupName).getRecords();
     }
 
-    public ArrayList<PositionRecord> getAllPositionRecords()
+    /**
+     * Gets the cells in all the groups. As with getPositionRecords(), this isn't a copy
+     */
+    public List<PositionRecord> getAllPositionRecords()
     {
-        
-        ArrayList<PositionRecord> all = new ArrayList<PositionRecord>();
-        
-        Enumeration<ArrayList<PositionRecord>> posLists =  myCellGroupPosns.elements();
-        while (posLists.hasMoreElements())
+        final ArrayList<CellGroupPositionStore> stores = new ArrayList<CellGroupPositionStore>(myCellGroupPosns.values());
+
+        return new AbstractList<PositionRecord>()
         {
-            all.addAll(posLists.nextElement());
-        }
-        return all;
+            @Override
+            public PositionRecord get(int index)
+            {
+                int indexInGroup = index;
+                for (CellGroupPositionStore store: stores)
+                {
+                    if (indexInGroup < store.size())
+                        return store.getRecords().get(indexInGroup);
+
+                    indexInGroup = indexInGroup - store.size();
+                }
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+
+            @Override
+            public int size()
+            {
+                int total = 0;
+                for (CellGroupPositionStore store: stores)
+                {
+                    total = total + store.size();
+                }
+                return total;
+            }
+        };
     }
 
     public Iterator<String> getNamesGeneratedCellGroups()
@@ -170,12 +207,10 @@ public class GeneratedCellPositions
     public int getNumberInAllCellGroups()
     {
         int total = 0;
-        Enumeration<ArrayList<PositionRecord>> posLists =  myCellGroupPosns.elements();
 
-        while (posLists.hasMoreElements())
+        for (CellGroupPositionStore store: myCellGroupPosns.values())
         {
-            ArrayList posList = posLists.nextElement();
-            total= total + posList.size();
+            total= total + store.size();
         }
         return total;
     }
@@ -183,12 +218,10 @@ public class GeneratedCellPositions
     public int getNumberNonEmptyCellGroups()
     {
         int total = 0;
-        Enumeration<ArrayList<PositionRecord>> posLists =  myCellGroupPosns.elements();
 
-        while (posLists.hasMoreElements())
+        for (CellGroupPositionStore store: myCellGroupPosns.values())
         {
-            ArrayList posList = posLists.nextElement();
-            if (!posList.isEmpty()) total+=1;
+            if (store.size()>0) total+=1;
         }
         return total;
     }
@@ -200,85 +233,64 @@ public class GeneratedCellPositions
         {
             return 0;
         }
-        ArrayList cellGroupVector = myCellGroupPosns.get(cellGroupName);
-
-        return cellGroupVector.size();
-    }
-    
-    // As there is often multiple requests for the same cells, e.g. srcCell1 -> tgtCell1,  srcCell1 -> tgtCell2...
-    private CachedCellPosition cachedCellPosition1 = null;
-    private CachedCellPosition cachedCellPosition2 = null;
-    private CachedCellPosition cachedCellPosition3 = null;
-    
-    public class CachedCellPosition
-    {
-        String cellGroupName;
-        int index;
-        Point3f point;
+        return myCellGroupPosns.get(cellGroupName).size();
     }
 
 
     public Point3f getOneCellPosition(String cellGroupName, int index)
     {
-        //logger.logComment("Being requested for posn of cell num: "+ index+ " in group: "+ cellGroupName, true);
-        if (cachedCellPosition1!=null && 
-            cachedCellPosition1.index == index && 
-            cachedCellPosition1.cellGroupName.equals(cellGroupName))
-            return new Point3f(cachedCellPosition1.point.x, cachedCellPosition1.point.y,cachedCellPosition1.point.z);
-        
-        if (cachedCellPosition2!=null && 
-            cachedCellPosition2.index == index && 
-            cachedCellPosition2.cellGroupName.equals(cellGroupName))
-            return new Point3f(cachedCellPosition2.point.x, cachedCellPosition2.point.y,cachedCellPosition2.point.z);
-        
-        if (cachedCellPosition3!=null && 
-            cachedCellPosition3.index == index && 
-            cachedCellPosition3.cellGroupName.equals(cellGroupName))
-            return new Point3f(cachedCellPosition3.point.x, cachedCellPosition3.point.y,cachedCellPosition3.point.z);
-        
-        if (!myCellGroupPosns.containsKey(cellGroupName))
+        CellGroupPositionStore store = myCellGroupPosns.get(cellGroupName);
+
+        if (store == null || !store.contains(index))
         {
+            if (logger.isEnabled()) logger.logComment("No record of cell with index: "+ index);
             return null;
         }
-        ArrayList<PositionRecord> cellGroupArrayList = myCellGroupPosns.get(cellGroupName);
+        return new Point3f(store.x[index], store.y[index], store.z[index]);
+    }
 
-        for (int i = 0; i < cellGroupArrayList.size(); i++)
-        {
-            PositionRecord posRec = cellGroupArrayList.get(i);
-            if (posRec.cellNumber==index)
-            {
-                Point3f p = new Point3f(posRec.x_pos,posRec.y_pos,posRec.z_pos);
-                CachedCellPosition cp = new CachedCellPosition();
-                cp.index = index;
-                cp.cellGroupName = cellGroupName;
-                cp.point = new Point3f(p);
-                cachedCellPosition3 = cachedCellPosition2;
-                cachedCellPosition2 = cachedCellPosition1;
-                cachedCellPosition1 = cp;
-                return p;
-            }
-        }
-        logger.logComment("No record of cell with index: "+ index);
-        return null;
 
+    /**
+     * Gets the x coordinates of the cells in the group, indexed by cell number, for use in
+     * loops which shouldn't create a Point3f per cell. Cell numbers not in the group have
+     * Float.NaN, and the array may be longer than the largest cell number + 1. The array is
+     * the one used for storage (until more cells are added), so should not be changed.
+     */
+    public float[] getXPositions(String cellGroupName)
+    {
+        return getStoreOrEmpty(cellGroupName).x;
     }
 
+    /**
+     * Gets the y coordinates of the cells in the group, indexed by cell number. See getXPositions()
+     */
+    public float[] getYPositions(String cellGroupName)
+    {
+        return getStoreOrEmpty(cellGroupName).y;
+    }
 
+    /**
+     * Gets the z coordinates of the cells in the group, indexed by cell number. See getXPositions()
+     */
+    public float[] getZPositions(String cellGroupName)
+    {
+        return getStoreOrEmpty(cellGroupName).z;
+    }
 
-
-    public int getNumberPositionRecords()
+    private CellGroupPositionStore getStoreOrEmpty(String cellGroupName)
     {
-        int totalCount = 0;
+        CellGroupPositionStore store = myCellGroupPosns.get(cellGroupName);
+        if (store == null)
+            return new CellGroupPositionStore();
+        return store;
+    }
+
 
-        Enumeration keys = myCellGroupPosns.keys();
 
-        while(keys.hasMoreElements())
-        {
-            ArrayList cellGroupArrayList = myCellGroupPosns.get((String)keys.nextElement());
-            totalCount = totalCount+ cellGroupArrayList.size();
-        }
 
-        return totalCount;
+    public int getNumberPositionRecords()
+    {
+        return getNumberInAllCellGroups();
     }
 
 
@@ -346,7 +358,7 @@ public class GeneratedCellPositions
         while(keys.hasMoreElements())
         {
             String cellGroupName = (String)keys.nextElement();
-            ArrayList<PositionRecord> cellGroupArrayList = myCellGroupPosns.get(cellGroupName);
+            List<PositionRecord> cellGroupArrayList = getPositionRecords(cellGroupName);
             sb.append(cellGroupName+" has "+cellGroupArrayList.size()
                       + " entries. First: "+cellGroupArrayList.get(0)+"\n");
         }
@@ -378,7 +390,7 @@ public class GeneratedCellPositions
         while(keys.hasMoreElements())
         {
             String cellGroupName = (String)keys.nextElement();
-            ArrayList<PositionRecord> cellGroupArrayList = myCellGroupPosns.get(cellGroupName);
+            List<PositionRecord> cellGroupArrayList = getPositionRecords(cellGroupName);
             
             String cell_s = cellGroupArrayList.size()>1 ? "cells": "cell";
             
@@ -410,7 +422,7 @@ public class GeneratedCellPositions
         // will create the parent dir if it doesn't exist.
         if (!positionFile.exists())
         {
-            logger.logComment("File: "+positionFile + " doesn't exist.");
+            if (logger.isEnabled()) logger.logComment("File: "+positionFile + " doesn't exist.");
             if (!positionFile.getParentFile().exists())
             {
                 logger.logComment("Parent dir: "+positionFile.getParentFile() + " doesn't exist.", true);
@@ -423,11 +435,11 @@ public class GeneratedCellPositions
                 }
                 //logger.logComment("Going to create dir: "+ parentDirName +" in dir :"+ projectDir);
 
-                logger.logComment("Going to create dir: "+ positionFile.getParentFile());
+                if (logger.isEnabled()) logger.logComment("Going to create dir: "+ positionFile.getParentFile());
 
                 positionFile.getParentFile().mkdir();
 
-                logger.logComment("Success? "+ positionFile.getParentFile().exists());
+                if (logger.isEnabled()) logger.logComment("Success? "+ positionFile.getParentFile().exists());
 
             }
         }
@@ -439,8 +451,8 @@ public class GeneratedCellPositions
         while (keys.hasMoreElements())
         {
             String cellGroup = (String)keys.nextElement();
-            ArrayList<PositionRecord> cellsHere = getPositionRecords(cellGroup);
-            logger.logComment("Adding "+cellsHere.size()+" cells in: "+ cellGroup);
+            List<PositionRecord> cellsHere = getPositionRecords(cellGroup);
+            if (logger.isEnabled()) logger.logComment("Adding "+cellsHere.size()+" cells in: "+ cellGroup);
 
             fw.write(cellGroup+":\n");
 
@@ -453,14 +465,14 @@ public class GeneratedCellPositions
 
 
         }
-        logger.logComment("Finished saving data to file: "+ positionFile.getAbsolutePath());
+        if (logger.isEnabled()) logger.logComment("Finished saving data to file: "+ positionFile.getAbsolutePath());
         fw.flush();
         fw.close();
     }
 
     public void loadFromFile(File positionFile) throws java.io.IOException
     {
-        logger.logComment("Loading position records from file: "
+        if (logger.isEnabled()) logger.logComment("Loading position records from file: "
                           + positionFile.getAbsolutePath());
 
         this.reset();
@@ -478,7 +490,7 @@ public class GeneratedCellPositions
             if (nextLine.endsWith(":"))
             {
                 currentCellGroupName = nextLine.substring(0, nextLine.length()-1);
-                logger.logComment("Current cell group: "+ currentCellGroupName);
+                if (logger.isEnabled()) logger.logComment("Current cell group: "+ currentCellGroupName);
             }
             else
             {
@@ -488,7 +500,7 @@ public class GeneratedCellPositions
         }
         in.close();
 
-        logger.logComment("Finished loading cell info. Internal state: "+ this.toString());
+        if (logger.isEnabled()) logger.logComment("Finished loading cell info. Internal state: "+ this.toString());
 
     }
 
@@ -507,7 +519,7 @@ public class GeneratedCellPositions
         boolean nml2 = version.isVersion2();
         try
         {
-            logger.logComment("Going to save file in NeuroML format: "+version+", " + this.getNumberInAllCellGroups() +
+            if (logger.isEnabled()) logger.logComment("Going to save file in NeuroML format: "+version+", " + this.getNumberInAllCellGroups() +
                               " cells in total");
 
             String v1Root = NetworkMLConstants.POPULATIONS_ELEMENT;
@@ -521,8 +533,8 @@ public class GeneratedCellPositions
             while (keys.hasMoreElements())
             {
                 String cellGroup = (String) keys.nextElement();
-                ArrayList<PositionRecord> cellsHere = getPositionRecords(cellGroup);
-                logger.logComment("Adding " + cellsHere.size() + " cells in: " + cellGroup);
+                List<PositionRecord> cellsHere = getPositionRecords(cellGroup);
+                if (logger.isEnabled()) logger.logComment("Adding " + cellsHere.size() + " cells in: " + cellGroup);
 
                 String type = project.cellGroupsInfo.getCellType(cellGroup);
 
@@ -674,6 +686,82 @@ public class GeneratedCellPositions
 
     }
 
+    /**
+     * Writes the populations element of NetworkML (v1) straight to the writer, reading the
+     * positions from the store, so no element tree is built for the cells. Gives the same
+     * XML as getNetworkMLElement()
+     */
+    public void writeNetworkML(XMLStreamWriter writer) throws XMLStreamException
+    {
+        if (logger.isEnabled()) logger.logComment("Going to write populations: " + this.getNumberInAllCellGroups() +
+                          " cells in total");
+
+        writer.writeStartElement(NetworkMLConstants.POPULATIONS_ELEMENT);
+
+        Enumeration<String> keys = myCellGroupPosns.keys();
+
+        while (keys.hasMoreElements())
+        {
+            String cellGroup = keys.nextElement();
+            CellGroupPositionStore store = myCellGroupPosns.get(cellGroup);
+
+            writer.writeCharacters("\n        ");
+            writer.writeStartElement(NetworkMLConstants.POPULATION_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.POP_NAME_ATTR, cellGroup);
+            writer.writeAttribute(NetworkMLConstants.CELLTYPE_ATTR, project.cellGroupsInfo.getCellType(cellGroup));
+
+            Color c = project.cellGroupsInfo.getColourOfCellGroup(cellGroup);
+
+            if (c!=null)
+            {
+                writer.writeCharacters("\n            ");
+                writer.writeStartElement(MetadataConstants.PREFIX, MorphMLConstants.PROPS_ELEMENT, MetadataConstants.NAMESPACE_URI);
+                writer.writeCharacters("\n                ");
+                writer.writeEmptyElement(MetadataConstants.PREFIX, MetadataConstants.PROP_ELEMENT, MetadataConstants.NAMESPACE_URI);
+                writer.writeAttribute(MetadataConstants.PROP_TAG_ATTR, "color");
+                writer.writeAttribute(MetadataConstants.PROP_VALUE_ATTR,
+                                      (c.getRed()/256.0)+" "+ (c.getGreen()/256.0)+" "+(c.getBlue()/256.0));
+                writer.writeCharacters("\n            ");
+                writer.writeEndElement();
+            }
+
+            writer.writeCharacters("\n            ");
+            writer.writeStartElement(NetworkMLConstants.INSTANCES_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.INSTANCES_SIZE_ATTR, store.size()+"");
+
+            for (int i = 0; i < store.size(); i++)
+            {
+                int cellNumber = store.getCellNumberAt(i);
+
+                writer.writeCharacters("\n                ");
+                writer.writeStartElement(NetworkMLConstants.INSTANCE_ELEMENT);
+                writer.writeAttribute(NetworkMLConstants.INSTANCE_ID_ATTR, cellNumber+"");
+
+                if (store.nodeIds[cellNumber]!=PositionRecord.NO_NODE_ID)
+                {
+                    writer.writeAttribute(NetworkMLConstants.NODE_ID_ATTR, store.nodeIds[cellNumber]+"");
+                }
+
+                writer.writeCharacters("\n                    ");
+                writer.writeEmptyElement(NetworkMLConstants.LOCATION_ELEMENT);
+                writer.writeAttribute(NetworkMLConstants.LOC_X_ATTR, store.x[cellNumber]+"");
+                writer.writeAttribute(NetworkMLConstants.LOC_Y_ATTR, store.y[cellNumber]+"");
+                writer.writeAttribute(NetworkMLConstants.LOC_Z_ATTR, store.z[cellNumber]+"");
+                writer.writeCharacters("\n                ");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n            ");
+            writer.writeEndElement();
+
+            writer.writeCharacters("\n        ");
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+
+        logger.logComment("Finished writing populations element");
+    }
+
     public static void main(String[] args)
     {
         try
@@ -28,6 +28,7 @@ package ucl.physiol.neuroconstruct.project;
 
 import java.io.*;
 import java.util.*;
+import javax.xml.stream.*;
 
 
 import ucl.physiol.neuroconstruct.gui.ClickProjectHelper;
@@ -756,6 +757,148 @@ public class GeneratedElecInputs
     }
         
         
+    /**
+     * Writes the inputs element of NetworkML (v1) straight to the writer, without building an
+     * element tree for the input sites. Gives the same XML as getNetworkMLElement()
+     */
+    public void writeNetworkML(XMLStreamWriter writer, int unitSystem) throws XMLStreamException, NeuroMLException
+    {
+        logger.logComment("Going to write inputs: " + this.getNumberSingleInputs() +
+                          " inputs in total");
+
+        if (getNumberSingleInputs()==0)
+        {
+            writer.writeComment("There are no electrical inputs present in the network");
+            return;
+        }
+
+        writer.writeStartElement(NetworkMLConstants.INPUTS_ELEMENT);
+
+        if (unitSystem == UnitConverter.GENESIS_PHYSIOLOGICAL_UNITS)
+        {
+            writer.writeAttribute(NetworkMLConstants.UNITS_ATTR, NetworkMLConstants.UNITS_PHYSIOLOGICAL);
+        }
+        else if (unitSystem == UnitConverter.GENESIS_SI_UNITS)
+        {
+            writer.writeAttribute(NetworkMLConstants.UNITS_ATTR, NetworkMLConstants.UNITS_SI);
+        }
+
+        Enumeration<String> keys = myElecInputs.keys();
+
+        while (keys.hasMoreElements())
+        {
+            String inputReference = keys.nextElement();
+            ArrayList<SingleElectricalInput> inputsHere = getInputLocations(inputReference);
+
+            StimulationSettings nextStim = project.elecInputInfo.getStim(inputReference);
+
+            ElectricalInput myElectricalInput = nextStim.getElectricalInput();
+
+            writer.writeCharacters("\n        ");
+            writer.writeStartElement(NetworkMLConstants.INPUT_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.INPUT_NAME_ATTR, inputReference);
+            writer.writeCharacters("\n            ");
+
+            if (myElectricalInput instanceof IClamp)
+            {
+                IClamp ic = (IClamp)myElectricalInput;
+
+                writer.writeEmptyElement(NetworkMLConstants.PULSEINPUT_ELEMENT);
+                writer.writeAttribute(NetworkMLConstants.INPUT_DELAY_ATTR,
+                        (float)UnitConverter.getTime(ic.getDel().getNominalNumber(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                writer.writeAttribute(NetworkMLConstants.INPUT_DUR_ATTR,
+                        (float)UnitConverter.getTime(ic.getDur().getNominalNumber(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                writer.writeAttribute(NetworkMLConstants.INPUT_AMP_ATTR,
+                        (float)UnitConverter.getCurrent(ic.getAmp().getNominalNumber(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+            }
+            else if (myElectricalInput instanceof RandomSpikeTrain)
+            {
+                RandomSpikeTrain rst = (RandomSpikeTrain)myElectricalInput;
+
+                writer.writeEmptyElement(NetworkMLConstants.RANDOMSTIM_ELEMENT);
+                writer.writeAttribute(NetworkMLConstants.RND_STIM_FREQ_ATTR,
+                        (float)UnitConverter.getRate(rst.getRate().getNominalNumber(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                writer.writeAttribute(NetworkMLConstants.RND_STIM_MECH_ATTR, rst.getSynapseType());
+            }
+            else
+            {
+                throw new NeuroMLException("Error trying to save input "+inputReference+". Cannot save in NeuroML an input of type: "+ myElectricalInput.getType());
+            }
+
+            writer.writeCharacters("\n            ");
+            writer.writeStartElement(NetworkMLConstants.INPUT_TARGET_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.INPUT_TARGET_POPULATION_ATTR, nextStim.getCellGroup());
+
+            writer.writeCharacters("\n                ");
+            writer.writeStartElement(NetworkMLConstants.INPUT_TARGET_SITES_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.INPUT_SITES_SIZE_ATTR, inputsHere.size()+"");
+
+            for (SingleElectricalInput sei: inputsHere)
+            {
+                writer.writeCharacters("\n                    ");
+
+                if (sei.getInstanceProps()==null)
+                {
+                    writer.writeEmptyElement(NetworkMLConstants.INPUT_TARGET_SITE_ELEMENT);
+                }
+                else
+                {
+                    writer.writeStartElement(NetworkMLConstants.INPUT_TARGET_SITE_ELEMENT);
+                }
+                writer.writeAttribute(NetworkMLConstants.INPUT_SITE_CELLID_ATTR, sei.getCellNumber()+"");
+                writer.writeAttribute(NetworkMLConstants.INPUT_SITE_SEGID_ATTR, sei.getSegmentId()+"");
+                writer.writeAttribute(NetworkMLConstants.INPUT_SITE_FRAC_ATTR, sei.getFractionAlong()+"");
+
+                if (sei.getInstanceProps()!=null)
+                {
+                    writer.writeCharacters("\n                        ");
+                    writer.writeComment("Adding the site specific props");
+                    writer.writeCharacters("\n                        ");
+
+                    if (sei.getInstanceProps() instanceof IClampInstanceProps)
+                    {
+                        IClampInstanceProps ic = (IClampInstanceProps)sei.getInstanceProps();
+
+                        writer.writeEmptyElement(NetworkMLConstants.PULSEINPUT_INSTANCE_ELEMENT);
+                        writer.writeAttribute(NetworkMLConstants.INPUT_DELAY_ATTR,
+                                (float)UnitConverter.getTime(ic.getDelay(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                        writer.writeAttribute(NetworkMLConstants.INPUT_DUR_ATTR,
+                                (float)UnitConverter.getTime(ic.getDuration(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                        writer.writeAttribute(NetworkMLConstants.INPUT_AMP_ATTR,
+                                (float)UnitConverter.getCurrent(ic.getAmplitude(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                    }
+                    else if (sei.getInstanceProps() instanceof RandomSpikeTrainInstanceProps)
+                    {
+                        RandomSpikeTrainInstanceProps rstip = (RandomSpikeTrainInstanceProps)sei.getInstanceProps();
+
+                        writer.writeEmptyElement(NetworkMLConstants.RANDOMSTIM_INSTANCE_ELEMENT);
+                        writer.writeAttribute(NetworkMLConstants.RND_STIM_FREQ_ATTR,
+                                (float)UnitConverter.getRate(rstip.getRate(), UnitConverter.NEUROCONSTRUCT_UNITS, unitSystem)+"");
+                    }
+                    else
+                    {
+                        throw new NeuroMLException("Error trying to save input "+inputReference+". Cannot save in NeuroML an input of type: "+ myElectricalInput.getType());
+                    }
+                    writer.writeCharacters("\n                    ");
+                    writer.writeEndElement();
+                }
+            }
+            writer.writeCharacters("\n                ");
+            writer.writeEndElement();
+
+            writer.writeCharacters("\n            ");
+            writer.writeEndElement();
+
+            writer.writeCharacters("\n        ");
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+
+        logger.logComment("Finished writing inputs element");
+    }
+
+
     public String getHtmlReport()
     {    
         StringBuilder generationReport = new StringBuilder();
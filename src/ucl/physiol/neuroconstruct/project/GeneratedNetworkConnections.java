@@ -38,6 +38,7 @@ import ucl.physiol.neuroconstruct.neuroml.*;
 import ucl.physiol.neuroconstruct.utils.units.*;
 import ucl.physiol.neuroconstruct.cell.utils.*;
 import javax.vecmath.*;
+import javax.xml.stream.*;
 import ucl.physiol.neuroconstruct.gui.ClickProjectHelper;
 import ucl.physiol.neuroconstruct.gui.ValidityStatus;
 import ucl.physiol.neuroconstruct.neuroml.NeuroMLConstants.*;
@@ -56,8 +57,8 @@ public class GeneratedNetworkConnections
 {
     ClassLogger logger = new ClassLogger("GeneratedNetworkConnections");
 
-    private final Hashtable<String, ArrayList<SingleSynapticConnection>> mySynapticConnectionVectors
-        = new Hashtable<String, ArrayList<SingleSynapticConnection>>();
+    private final Hashtable<String, NetConnectionStore> mySynapticConnectionVectors
+        = new Hashtable<String, NetConnectionStore>();
 
     public static final int MORPH_NETWORK_CONNECTION = 0;
     public static final int COMPLEX_NETWORK_CONNECTION = 1;
@@ -78,7 +79,7 @@ public class GeneratedNetworkConnections
     public void reset()
     {
 
-        logger.logComment("--------------------------------    Resetting: "+this.hashCode());
+        if (logger.isEnabled()) logger.logComment("--------------------------------    Resetting: "+this.hashCode());
         this.mySynapticConnectionVectors.clear();
     }
 
@@ -116,32 +117,64 @@ public class GeneratedNetworkConnections
                                       float apPropDelay,
                                       ArrayList<ConnSpecificProps> props)
     {
-        if (!mySynapticConnectionVectors.containsKey(netConnectionName))
+        NetConnectionStore cellGroupSyns = mySynapticConnectionVectors.get(netConnectionName);
+
+        if (cellGroupSyns == null)
         {
-            ArrayList<SingleSynapticConnection> newSynapticConnections = new ArrayList<SingleSynapticConnection>();
+            cellGroupSyns = new NetConnectionStore();
             mySynapticConnectionVectors.put(netConnectionName,
-                                            newSynapticConnections);
+                                            cellGroupSyns);
+        }
+
+        cellGroupSyns.addConnection(connectionType,
+                                    sourceCellNumber,
+                                    sourceCellSegmentIndex,
+                                    sourceCellDisplacement,
+                                    targetCellNumber,
+                                    targetCellSgmentIndex,
+                                    targetCellDisplacement,
+                                    apPropDelay,
+                                    props);
+
+        if (logger.isEnabled())
+        {
+            logger.logComment("Adding new net conn: "+netConnectionName+", type: "+connectionType);
+            logger.logComment("From src " + sourceCellNumber +"("+sourceCellSegmentIndex+"("+sourceCellDisplacement+")) to "
+                    +targetCellNumber+"("+targetCellSgmentIndex+"("+targetCellDisplacement+")), props: "+props);
         }
-        ArrayList<SingleSynapticConnection> cellGroupSyns = mySynapticConnectionVectors.get(netConnectionName);
-
-        SingleSynapticConnection conn
-            = new SingleSynapticConnection(connectionType,
-                                           sourceCellNumber,
-                                           sourceCellSegmentIndex,
-                                           sourceCellDisplacement,
-                                           targetCellNumber,
-                                           targetCellSgmentIndex,
-                                           targetCellDisplacement,
-                                           apPropDelay,
-                                           props);
-
-
-        cellGroupSyns.add(conn);
-        logger.logComment("Adding new net conn: "+netConnectionName+", type: "+connectionType);
-        logger.logComment("From src " + sourceCellNumber +"("+sourceCellSegmentIndex+"("+sourceCellDisplacement+")) to "
-                +targetCellNumber+"("+targetCellSgmentIndex+"("+targetCellDisplacement+")), props: "+props);
         //logger.logComment("Current num syn conns: "+ getNumberSynapticConnections());
     }
+
+    /**
+     * Adds all of the connections in conns to the network connection, in order
+     */
+    public void addSynapticConnections(String netConnectionName,
+                                       NetConnectionStore conns)
+    {
+        NetConnectionStore cellGroupSyns = mySynapticConnectionVectors.get(netConnectionName);
+
+        if (cellGroupSyns == null)
+        {
+            cellGroupSyns = new NetConnectionStore();
+            mySynapticConnectionVectors.put(netConnectionName,
+                                            cellGroupSyns);
+        }
+
+        for (int i = 0; i < conns.size(); i++)
+        {
+            cellGroupSyns.addConnection(conns.getConnectionType(i),
+                                        conns.getSourceCell(i),
+                                        conns.getSourceSegment(i),
+                                        conns.getSourceFract(i),
+                                        conns.getTargetCell(i),
+                                        conns.getTargetSegment(i),
+                                        conns.getTargetFract(i),
+                                        conns.getApPropDelay(i),
+                                        conns.getProps(i));
+        }
+
+        if (logger.isEnabled()) logger.logComment("Added "+conns.size()+" conns to net conn: "+netConnectionName);
+    }
     
     /*
      * @returns A matrix of size (pre syn cell number) x (post syn cell number) with entry (i,j)
@@ -150,7 +183,7 @@ public class GeneratedNetworkConnections
      */
     public int[][] getConnectionMatrix(String netConnectionName, Project project)
     {
-        logger.logComment("Synaptic conn matrix sought for: #" + this.hashCode() + " out of my " +
+        if (logger.isEnabled()) logger.logComment("Synaptic conn matrix sought for: #" + this.hashCode() + " out of my " +
                           getNumberSynapticConnections(ANY_NETWORK_CONNECTION)
                           + " net conns from " + mySynapticConnectionVectors.keySet());
         
@@ -161,7 +194,7 @@ public class GeneratedNetworkConnections
             return null;
         }
         
-        ArrayList<SingleSynapticConnection> synapticConnectionVector
+        NetConnectionStore synapticConnectionVector
             = mySynapticConnectionVectors.get(netConnectionName);
         
         String src = null;
@@ -185,20 +218,25 @@ public class GeneratedNetworkConnections
        
         
         
-        for(SingleSynapticConnection conn: synapticConnectionVector)
+        for(int i = 0; i < synapticConnectionVector.size(); i++)
         {
-            mx[conn.sourceEndPoint.cellNumber][conn.targetEndPoint.cellNumber]++;
+            mx[synapticConnectionVector.getSourceCell(i)][synapticConnectionVector.getTargetCell(i)]++;
         }
 
-        logger.logComment(synapticConnectionVector.size()+ " SingleSynapticConnections so far...");
+        if (logger.isEnabled()) logger.logComment(synapticConnectionVector.size()+ " SingleSynapticConnections so far...");
         
         return mx;
     }
 
 
+    /**
+     * Creates a SingleSynapticConnection object for each connection in the net conn. Use
+     * getConnectionStore() or getNumberSynapticConnections(String) where these aren't needed,
+     * as the list isn't kept and is as large as the store itself
+     */
     public ArrayList<SingleSynapticConnection> getSynapticConnections(String netConnectionName)
     {
-        logger.logComment("SynapticConnections sought for: #" + this.hashCode() + " out of my " +
+        if (logger.isEnabled()) logger.logComment("SynapticConnections sought for: #" + this.hashCode() + " out of my " +
                           getNumberSynapticConnections(ANY_NETWORK_CONNECTION)
                           + " net conns from " + mySynapticConnectionVectors.keySet());
 
@@ -210,15 +248,46 @@ public class GeneratedNetworkConnections
             return new ArrayList<SingleSynapticConnection>();
         }
 
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+
         ArrayList<SingleSynapticConnection> synapticConnectionVector
-            = mySynapticConnectionVectors.get(netConnectionName);
+            = new ArrayList<SingleSynapticConnection>(store.size());
+
+        for (int i = 0; i < store.size(); i++)
+        {
+            synapticConnectionVector.add(getSynapticConnection(store, i));
+        }
 
-        logger.logComment(synapticConnectionVector.size()+ " SingleSynapticConnections so far...");
+        if (logger.isEnabled()) logger.logComment(synapticConnectionVector.size()+ " SingleSynapticConnections so far...");
 
         return synapticConnectionVector;
     }
 
 
+    /**
+     * Gives direct access to the primitive store of connections for the net conn, 
+     * which avoids creating SingleSynapticConnection objects for every connection
+     * @return the store, or null if no connections have been added to the net conn
+     */
+    public NetConnectionStore getConnectionStore(String netConnectionName)
+    {
+        return mySynapticConnectionVectors.get(netConnectionName);
+    }
+
+    private SingleSynapticConnection getSynapticConnection(NetConnectionStore store, int index)
+    {
+        return new SingleSynapticConnection(store.getConnectionType(index),
+                                            store.getSourceCell(index),
+                                            store.getSourceSegment(index),
+                                            store.getSourceFract(index),
+                                            store.getTargetCell(index),
+                                            store.getTargetSegment(index),
+                                            store.getTargetFract(index),
+                                            store.getApPropDelay(index),
+                                            store.getProps(index));
+    }
+
+
     public Iterator<String> getNamesNetConnsIter()
     {
         return mySynapticConnectionVectors.keySet().iterator();
@@ -237,7 +306,7 @@ public class GeneratedNetworkConnections
 
         while(keys.hasMoreElements())
         {
-            ArrayList<SingleSynapticConnection> synConns = mySynapticConnectionVectors.get((String)keys.nextElement());
+            NetConnectionStore synConns = mySynapticConnectionVectors.get((String)keys.nextElement());
             if (synConns.size()>0)
                 totalCount++;
         }
@@ -254,7 +323,7 @@ public class GeneratedNetworkConnections
         while(keys.hasMoreElements())
         {
             String nc = keys.nextElement();
-            ArrayList<SingleSynapticConnection> synConns = mySynapticConnectionVectors.get(nc);
+            NetConnectionStore synConns = mySynapticConnectionVectors.get(nc);
             if (synConns.size()>0)
                 ncs.add(nc);
         }
@@ -271,10 +340,10 @@ public class GeneratedNetworkConnections
 
         while(keys.hasMoreElements())
         {
-            ArrayList<SingleSynapticConnection> synConns = mySynapticConnectionVectors.get((String)keys.nextElement());
+            NetConnectionStore synConns = mySynapticConnectionVectors.get((String)keys.nextElement());
             if (connType == ANY_NETWORK_CONNECTION ||
-                (connType == MORPH_NETWORK_CONNECTION && (synConns.get(0).connectionType == connType)) ||
-                 (connType == VOL_NETWORK_CONNECTION && (synConns.get(0).connectionType == connType)))
+                (connType == MORPH_NETWORK_CONNECTION && (synConns.getConnectionType(0) == connType)) ||
+                 (connType == VOL_NETWORK_CONNECTION && (synConns.getConnectionType(0) == connType)))
             {
                 totalCount = totalCount + synConns.size();
             }
@@ -283,6 +352,16 @@ public class GeneratedNetworkConnections
         return totalCount;
     }
 
+    /**
+     * @return the number of connections in the net conn, 0 if none have been added
+     */
+    public int getNumberSynapticConnections(String netConnectionName)
+    {
+        NetConnectionStore synConns = mySynapticConnectionVectors.get(netConnectionName);
+
+        return synConns == null ? 0 : synConns.size();
+    }
+
 
     /**
      * Gets the indices of all target cells already connected to this source cell
@@ -293,39 +372,59 @@ public class GeneratedNetworkConnections
      */
     public ArrayList<Integer> getTargetCellIndices(String netConnectionName, int sourceCellIndex, boolean uniqueValues)
     {
-        ArrayList<SingleSynapticConnection> synConns = getSynapticConnections(netConnectionName);
-
-        /** @todo Do this quicker with collections... */
         ArrayList<Integer> allIndices = new ArrayList<Integer>();
-        for (SingleSynapticConnection conn : synConns)
+
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return allIndices;
+
+        HashSet<Integer> found = uniqueValues ? new HashSet<Integer>() : null;
+
+        for (int connIndex : store.getConnIndicesFromSource(sourceCellIndex))
         {
-            if (conn.sourceEndPoint.cellNumber==sourceCellIndex)
-            {
-                if (uniqueValues)
-                {
-                    if (!allIndices.contains(conn.targetEndPoint.cellNumber))
-                        allIndices.add(conn.targetEndPoint.cellNumber);
-                }
-                else
-                {
-                    allIndices.add(conn.targetEndPoint.cellNumber);
-                }
-            }
+            int targetCellIndex = store.getTargetCell(connIndex);
+
+            if (!uniqueValues || found.add(targetCellIndex))
+                allIndices.add(targetCellIndex);
         }
         return allIndices;
     }
+
+    /**
+     * Gets the number of connections (including multiple connections from the same cell)
+     * which terminate on the target cell. Quicker than getSourceCellIndices(...).size()
+     */
+    public int getNumConnsToTarget(String netConnectionName, int targetCellIndex)
+    {
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return 0;
+
+        return store.getNumConnsToTarget(targetCellIndex);
+    }
+
+    /**
+     * Gets the number of connections (including multiple connections to the same cell)
+     * which start on the source cell. Quicker than getTargetCellIndices(...).size()
+     */
+    public int getNumConnsFromSource(String netConnectionName, int sourceCellIndex)
+    {
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return 0;
+
+        return store.getNumConnsFromSource(sourceCellIndex);
+    }
     
     public boolean areConnected(String netConnectionName, 
                                int sourceCellIndex, 
                                int targetCellIndex)
     {
-        for (SingleSynapticConnection synConn: getSynapticConnections(netConnectionName))
-        {
-            if (synConn.sourceEndPoint.cellNumber==sourceCellIndex &&
-                synConn.targetEndPoint.cellNumber==targetCellIndex)
-                return true;
-        }
-        return false;
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return false;
+
+        return store.areConnected(sourceCellIndex, targetCellIndex);
         
     }
     
@@ -366,17 +465,15 @@ public class GeneratedNetworkConnections
     public ArrayList<SingleSynapticConnection> getConnsFromSource(String netConnectionName,
                                                                   int sourceCellIndex)
     {
-        ArrayList<SingleSynapticConnection> synConns = getSynapticConnections(netConnectionName);
-
-        /** @todo Do this quicker with collections... */
         ArrayList<SingleSynapticConnection> allConns = new ArrayList<SingleSynapticConnection> ();
-        for (SingleSynapticConnection conn : synConns)
+
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return allConns;
+
+        for (int connIndex : store.getConnIndicesFromSource(sourceCellIndex))
         {
-            if (conn.sourceEndPoint.cellNumber == sourceCellIndex)
-            {
-                allConns.add(conn);
-                
-            }
+            allConns.add(getSynapticConnection(store, connIndex));
         }
         return allConns;
     }
@@ -385,17 +482,15 @@ public class GeneratedNetworkConnections
     public ArrayList<SingleSynapticConnection> getConnsToTarget(String netConnectionName,
                                                                   int targetCellIndex)
     {
-        ArrayList<SingleSynapticConnection> synConns = getSynapticConnections(netConnectionName);
-
-        /** @todo Do this quicker with collections... */
         ArrayList<SingleSynapticConnection> allConns = new ArrayList<SingleSynapticConnection> ();
-        for (SingleSynapticConnection conn : synConns)
+
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return allConns;
+
+        for (int connIndex : store.getConnIndicesToTarget(targetCellIndex))
         {
-            if (conn.targetEndPoint.cellNumber == targetCellIndex)
-            {
-                allConns.add(conn);
-                
-            }
+            allConns.add(getSynapticConnection(store, connIndex));
         }
         return allConns;
     }
@@ -412,25 +507,20 @@ public class GeneratedNetworkConnections
      */
     public ArrayList<Integer> getSourceCellIndices(String netConnectionName, int targetCellIndex, boolean uniqueValues)
     {
-        ArrayList<SingleSynapticConnection> synConns = getSynapticConnections(netConnectionName);
-
-        /** @todo Do this quicker with collections... */
         ArrayList<Integer> allIndices = new ArrayList<Integer>();
-        for (SingleSynapticConnection conn : synConns)
+
+        NetConnectionStore store = mySynapticConnectionVectors.get(netConnectionName);
+        if (store == null)
+            return allIndices;
+
+        HashSet<Integer> found = uniqueValues ? new HashSet<Integer>() : null;
+
+        for (int connIndex : store.getConnIndicesToTarget(targetCellIndex))
         {
-            if (conn.targetEndPoint.cellNumber==targetCellIndex)
-            {
-                if (uniqueValues)
-                {
-                    if (!allIndices.contains(conn.sourceEndPoint.cellNumber))
-                        allIndices.add(conn.sourceEndPoint.cellNumber);
-                }
-                else
-                {
-                    allIndices.add(conn.sourceEndPoint.cellNumber);
-                }
+            int sourceCellIndex = store.getSourceCell(connIndex);
 
-            }
+            if (!uniqueValues || found.add(sourceCellIndex))
+                allIndices.add(sourceCellIndex);
         }
         return allIndices;
     }
@@ -451,9 +541,9 @@ public class GeneratedNetworkConnections
         while (keys.hasMoreElements())
         {
             String netConnName = (String) keys.nextElement();
-            ArrayList<SingleSynapticConnection> synConns = mySynapticConnectionVectors.get(netConnName);
+            NetConnectionStore synConns = mySynapticConnectionVectors.get(netConnName);
             sb.append(netConnName+" has "+synConns.size()
-                      + " entries. First: "+synConns.get(0)+"\n");
+                      + " entries. First: "+getSynapticConnection(synConns, 0)+"\n");
         }
         return sb.toString();
     }
@@ -480,7 +570,7 @@ public class GeneratedNetworkConnections
         {
             String netConnName = (String) keys.nextElement();
             
-            ArrayList<SingleSynapticConnection> synConns = mySynapticConnectionVectors.get(netConnName);
+            ArrayList<SingleSynapticConnection> synConns = getSynapticConnections(netConnName);
             String src, tgt;
 
             if (project.morphNetworkConnectionsInfo.isValidSimpleNetConn(netConnName))
@@ -514,7 +604,7 @@ public class GeneratedNetworkConnections
 
     public void saveToFile(File netConnFile) throws java.io.IOException
     {
-        logger.logComment("Saving "
+        if (logger.isEnabled()) logger.logComment("Saving "
                           + getNumberSynapticConnections(ANY_NETWORK_CONNECTION)
                           + " connection records to file: "
                           + netConnFile.getAbsolutePath()+ ": "+ this.hashCode());
@@ -536,7 +626,7 @@ public class GeneratedNetworkConnections
             }
 
         }
-        logger.logComment("Finished saving data to file: " + netConnFile.getAbsolutePath());
+        if (logger.isEnabled()) logger.logComment("Finished saving data to file: " + netConnFile.getAbsolutePath());
         fw.flush();
         fw.close();
     }
@@ -589,7 +679,7 @@ public class GeneratedNetworkConnections
                 int srcCellNum = project.generatedCellPositions.getNumberInCellGroup(src);
                 int tgtCellNum = project.generatedCellPositions.getNumberInCellGroup(tgt);
 
-                logger.logComment("srcCellNum: "+srcCellNum+", tgtCellNum: "+ tgtCellNum);
+                if (logger.isEnabled()) logger.logComment("srcCellNum: "+srcCellNum+", tgtCellNum: "+ tgtCellNum);
 
                 int[] numInEachSrcCell = new int[srcCellNum];
                 int[] numInEachTgtCell = new int[tgtCellNum];
@@ -753,7 +843,7 @@ public class GeneratedNetworkConnections
 
                 generationReport.append("No. of conns: <b>"
                                         +
-                                        project.generatedNetworkConnections.getSynapticConnections(netConnName).size()
+                                        conns.size()
                                         + weightReport+ "</b> (<font color=\"green\">" + srcAvg + srcStdString + " each</font> -> " +
                                         "<font color=\"red\">" + tgtAvg + tgtStdString + " each</font>)<br>");
                 
@@ -854,7 +944,7 @@ public class GeneratedNetworkConnections
         
         int numConns = this.getNumberSynapticConnections(ANY_NETWORK_CONNECTION);
         
-        logger.logComment("Going to save file in NeuroML format: " + numConns +
+        if (logger.isEnabled()) logger.logComment("Going to save file in NeuroML format: " + numConns +
                           " connections in total");
         if (numConns==0)
         {
@@ -1252,6 +1342,180 @@ public class GeneratedNetworkConnections
 
 
 
+    /**
+     * Writes the projections element of NetworkML (v1) straight to the writer, reading the
+     * connections from the NetConnectionStores, so no SingleSynapticConnection objects or
+     * element tree are created for them. Gives the same XML as getNetworkMLElement()
+     */
+    public void writeNetworkML(XMLStreamWriter writer,
+                               int unitSystem,
+                               boolean extraComments) throws XMLStreamException, NeuroMLException
+    {
+        int numConns = this.getNumberSynapticConnections(ANY_NETWORK_CONNECTION);
+
+        if (logger.isEnabled()) logger.logComment("Going to write projections: " + numConns +
+                          " connections in total");
+        if (numConns==0)
+        {
+            writer.writeComment("There are no synaptic connections present in the network");
+            return;
+        }
+
+        writer.writeStartElement(NetworkMLConstants.PROJECTIONS_ELEMENT);
+
+        if (unitSystem == UnitConverter.GENESIS_PHYSIOLOGICAL_UNITS)
+            writer.writeAttribute(NetworkMLConstants.UNITS_ATTR, "Physiological Units");
+        else if (unitSystem == UnitConverter.GENESIS_SI_UNITS)
+            writer.writeAttribute(NetworkMLConstants.UNITS_ATTR, "SI Units");
+
+        Enumeration<String> keys = mySynapticConnectionVectors.keys();
+
+        while (keys.hasMoreElements())
+        {
+            String netConnName = keys.nextElement();
+            NetConnectionStore store = mySynapticConnectionVectors.get(netConnName);
+
+            String sourceCellGroup = null;
+            String targetCellGroup = null;
+
+            Vector<SynapticProperties> globalSynPropList = null;
+
+            if (project.morphNetworkConnectionsInfo.isValidSimpleNetConn(netConnName))
+            {
+                sourceCellGroup = project.morphNetworkConnectionsInfo.getSourceCellGroup(netConnName);
+                targetCellGroup = project.morphNetworkConnectionsInfo.getTargetCellGroup(netConnName);
+                globalSynPropList = project.morphNetworkConnectionsInfo.getSynapseList(netConnName);
+            }
+            else if (project.volBasedConnsInfo.isValidVolBasedConn(netConnName))
+            {
+                sourceCellGroup = project.volBasedConnsInfo.getSourceCellGroup(netConnName);
+                targetCellGroup = project.volBasedConnsInfo.getTargetCellGroup(netConnName);
+                globalSynPropList = project.volBasedConnsInfo.getSynapseList(netConnName);
+            }
+            else
+            {
+                throw new NeuroMLException("Problem writing projections element: "+netConnName+" is not a valid network connection");
+            }
+
+            writer.writeCharacters("\n        ");
+            writer.writeStartElement(NetworkMLConstants.PROJECTION_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.PROJ_NAME_ATTR, netConnName);
+            writer.writeAttribute(NetworkMLConstants.SOURCE_ATTR, sourceCellGroup);
+            writer.writeAttribute(NetworkMLConstants.TARGET_ATTR, targetCellGroup);
+
+            for (SynapticProperties synProps:  globalSynPropList)
+            {
+                writer.writeCharacters("\n            ");
+                writer.writeEmptyElement(NetworkMLConstants.SYN_PROPS_ELEMENT);
+                writer.writeAttribute(NetworkMLConstants.SYN_TYPE_ATTR, synProps.getSynapseType());
+                writer.writeAttribute(NetworkMLConstants.INTERNAL_DELAY_ATTR,
+                        (float)UnitConverter.getTime(synProps.getDelayGenerator().getNominalNumber(), UnitConverter.NEUROCONSTRUCT_UNITS,unitSystem) +"");
+                writer.writeAttribute(NetworkMLConstants.WEIGHT_ATTR, synProps.getWeightsGenerator().getNominalNumber()+"");
+                writer.writeAttribute(NetworkMLConstants.THRESHOLD_ATTR,
+                        (float)UnitConverter.getVoltage(synProps.getThreshold(), UnitConverter.NEUROCONSTRUCT_UNITS,unitSystem)+"");
+            }
+
+            writer.writeCharacters("\n            ");
+            writer.writeStartElement(NetworkMLConstants.CONNECTIONS_ELEMENT);
+            writer.writeAttribute(NetworkMLConstants.CONNECTIONS_SIZE_ATTR, ""+store.size());
+
+            for (int index = 0; index < store.size(); index++)
+            {
+                int sourceSegment = store.getSourceSegment(index);
+                float sourceFract = store.getSourceFract(index);
+                int targetSegment = store.getTargetSegment(index);
+                float targetFract = store.getTargetFract(index);
+                float apPropDelay = store.getApPropDelay(index);
+                ArrayList<ConnSpecificProps> props = store.getProps(index);
+
+                writer.writeCharacters("\n                ");
+                writer.writeStartElement(NetworkMLConstants.CONNECTION_ELEMENT);
+                writer.writeAttribute(NetworkMLConstants.CONNECTION_ID_ATTR, index+"");
+
+                writer.writeAttribute(NetworkMLConstants.PRE_CELL_ID_ATTR, store.getSourceCell(index)+"");
+
+                if (sourceSegment!=0)
+                {
+                    writer.writeAttribute(NetworkMLConstants.PRE_SEGMENT_ID_ATTR, sourceSegment+"");
+                }
+                if (sourceFract!=SegmentLocation.DEFAULT_FRACT_CONN)
+                {
+                    writer.writeAttribute(NetworkMLConstants.PRE_FRACT_ALONG_ATTR, sourceFract+"");
+                }
+
+                writer.writeAttribute(NetworkMLConstants.POST_CELL_ID_ATTR, store.getTargetCell(index)+"");
+
+                if (targetSegment!=0)
+                {
+                    writer.writeAttribute(NetworkMLConstants.POST_SEGMENT_ID_ATTR, targetSegment+"");
+                }
+                if (targetFract!=SegmentLocation.DEFAULT_FRACT_CONN)
+                {
+                    writer.writeAttribute(NetworkMLConstants.POST_FRACT_ALONG_ATTR, targetFract+"");
+                }
+
+                if (extraComments)
+                {
+                    Point3f sourceSynLoc = CellTopologyHelper.getAbsolutePosSegLoc(project,
+                                                                                   sourceCellGroup,
+                                                                                   store.getSourceCell(index),
+                                                                                   new SegmentLocation(sourceSegment, sourceFract));
+
+                    Point3f tgtSynLoc = CellTopologyHelper.getAbsolutePosSegLoc(project,
+                                                                                targetCellGroup,
+                                                                                store.getTargetCell(index),
+                                                                                new SegmentLocation(targetSegment, targetFract));
+
+                    writer.writeCharacters("\n                    ");
+                    writer.writeStartElement(MetadataConstants.PREFIX, MetadataConstants.NOTES_ELEMENT, MetadataConstants.NAMESPACE_URI);
+                    writer.writeCharacters("\nSource synaptic location: "+ sourceSynLoc+"\n"+
+                                           "Target synaptic location: "+ tgtSynLoc+"\n"+
+                                           "Separation: "+ tgtSynLoc.distance(sourceSynLoc));
+                    writer.writeEndElement();
+                }
+
+                if (props!=null && props.size()>0)
+                {
+                    for (ConnSpecificProps prop: props)
+                    {
+                        writer.writeCharacters("\n                    ");
+                        writer.writeEmptyElement(NetworkMLConstants.CONN_PROP_ELEMENT);
+
+                        if (globalSynPropList.size()>1)
+                        {
+                            writer.writeAttribute(NetworkMLConstants.SYN_TYPE_ATTR, prop.synapseType);
+                        }
+                        writer.writeAttribute(NetworkMLConstants.PROP_DELAY_ATTR,
+                                (float)UnitConverter.getTime(apPropDelay, UnitConverter.NEUROCONSTRUCT_UNITS,unitSystem) + "");
+                        writer.writeAttribute(NetworkMLConstants.INTERNAL_DELAY_ATTR,
+                                (float)UnitConverter.getTime(prop.internalDelay, UnitConverter.NEUROCONSTRUCT_UNITS,unitSystem)+"");
+                        writer.writeAttribute(NetworkMLConstants.WEIGHT_ATTR, prop.weight+"");
+                    }
+                }
+                else if (apPropDelay>0)
+                {
+                    writer.writeCharacters("\n                    ");
+                    writer.writeEmptyElement(NetworkMLConstants.CONN_PROP_ELEMENT);
+                    writer.writeAttribute(NetworkMLConstants.PROP_DELAY_ATTR,
+                            (float)UnitConverter.getTime(apPropDelay, UnitConverter.NEUROCONSTRUCT_UNITS,unitSystem) + "");
+                }
+
+                writer.writeCharacters("\n                ");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n            ");
+            writer.writeEndElement();
+
+            writer.writeCharacters("\n        ");
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n    ");
+        writer.writeEndElement();
+
+        logger.logComment("Finished writing projections element");
+    }
+
+
     /**
      * Gets all PostSynapticObjects for the specified synapse on the segment
      *
@@ -1267,19 +1531,17 @@ public class GeneratedNetworkConnections
     {
         ArrayList<PostSynapticObject> objNames = new ArrayList<PostSynapticObject>();
 
-        ArrayList<SingleSynapticConnection> allConns = project.generatedNetworkConnections.getSynapticConnections(netConnName);
+        NetConnectionStore allConns = project.generatedNetworkConnections.getConnectionStore(netConnName);
 
-        for (int singleConnIndex=0; singleConnIndex<allConns.size(); singleConnIndex++)
-        {
-            SingleSynapticConnection synConn = allConns.get(singleConnIndex);
+        if (allConns == null)
+            return objNames;
 
-            if (synConn.targetEndPoint.cellNumber == cellNumber)
+        for (int singleConnIndex: allConns.getConnIndicesToTarget(cellNumber))
+        {
+            if (segmentId == -1 || allConns.getTargetSegment(singleConnIndex) == segmentId)
             {
-                if (segmentId == -1 || synConn.targetEndPoint.location.getSegmentId() == segmentId)
-                {
-                    PostSynapticObject object = new PostSynapticObject(netConnName, synapseType, cellNumber, segmentId, singleConnIndex);
-                    objNames.add(object);
-                }
+                PostSynapticObject object = new PostSynapticObject(netConnName, synapseType, cellNumber, segmentId, singleConnIndex);
+                objNames.add(object);
             }
         }
 
@@ -1297,7 +1559,7 @@ public class GeneratedNetworkConnections
 
     public void loadFromFile(File netConnFile) throws java.io.IOException
     {
-        logger.logComment("Loading net connections from file: "
+        if (logger.isEnabled()) logger.logComment("Loading net connections from file: "
                           + netConnFile.getAbsolutePath());
 
         this.reset();
@@ -1312,7 +1574,7 @@ public class GeneratedNetworkConnections
             if (nextLine.endsWith(":"))
             {
                 currentNetConnName = nextLine.substring(0, nextLine.length()-1);
-                logger.logComment("Current net conn: "+ currentNetConnName);
+                if (logger.isEnabled()) logger.logComment("Current net conn: "+ currentNetConnName);
             }
             else
             {
@@ -1347,7 +1609,7 @@ public class GeneratedNetworkConnections
         }
         in.close();
 
-        logger.logComment("Finished loading info. Internal state: "+ this.toString());
+        if (logger.isEnabled()) logger.logComment("Finished loading info. Internal state: "+ this.toString());
 
     }
 
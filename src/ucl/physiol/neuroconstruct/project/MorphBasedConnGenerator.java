@@ -30,6 +30,7 @@ import java.io.File;
 import ucl.physiol.neuroconstruct.utils.*;
 import java.util.*;
 import java.util.ArrayList;
+import java.util.concurrent.*;
 import ucl.physiol.neuroconstruct.cell.*;
 import ucl.physiol.neuroconstruct.cell.utils.*;
 import javax.vecmath.*;
@@ -59,6 +60,29 @@ public class MorphBasedConnGenerator extends Thread
     private SimConfig simConfig = null;
 
     private ArrayList<String> generatingNetConns = new ArrayList<String>();
+
+    /*
+     * When generating reproducibly, the cells in the start group of a net conn are split into
+     * ranges of this size, each with its own stream of random numbers. The ranges don't depend
+     * on the number of processors, so neither do the generated conns.
+     */
+    private static final int CELLS_PER_RANGE = 256;
+
+    /*
+     * Runs the ranges of cells when generating reproducibly
+     */
+    private ForkJoinPool rangePool = null;
+
+    /*
+     * Indices of the possible synaptic locations on the cell types, built once per generation
+     * and shared by the net conns which connect to the same cell type with the same synapses
+     */
+    private HashMap<String, SegmentSpatialIndex> segmentIndices = new HashMap<String, SegmentSpatialIndex>();
+
+    /*
+     * Segment displacement tables of the cell types, built once per generation
+     */
+    private HashMap<String, SegmentDisplacementTable> displacementTables = new HashMap<String, SegmentDisplacementTable>();
     
     private String synLocWarning = "Please ensure there is a Synaptic Mechanism of that name at tab Cell Mechanisms and that the locations where synaptic connections \n"
                                   +"of that type are allowed on the cell are specified via Visualisation -> (View cell type) -> Synaptic Conn Locations in drop down box.\n" +
@@ -116,9 +140,16 @@ public class MorphBasedConnGenerator extends Thread
 
         ArrayList<String> simpNetConnsInSimConfig = getRelevantNetConns();
 
+        clearSegmentIndices();
+
         int maxNumThreads = GeneralProperties.getNumProcessorstoUse();
         int waitMillis = 100;
 
+        if (GeneralProperties.getReproducibleParallelGeneration())
+        {
+            rangePool = new ForkJoinPool(maxNumThreads);
+        }
+
         for (int j = 0; j < simpNetConnsInSimConfig.size(); j++)
         {
             if (!continueGeneration)
@@ -134,13 +165,13 @@ public class MorphBasedConnGenerator extends Thread
             netConnStarting(netConnName);
             scg.start();
 
-            logger.logComment("Generating: "+generatingNetConns+"...");
+            if (logger.isEnabled()) logger.logComment("Generating: "+generatingNetConns+"...");
 
             while(netConnsRunning()>=maxNumThreads)
             {
                 try
                 {
-                    logger.logComment("Waiting for: "+generatingNetConns+"...");
+                    if (logger.isEnabled()) logger.logComment("Waiting for: "+generatingNetConns+"...");
                     Thread.sleep(waitMillis);
                 }
                 catch (InterruptedException ex)
@@ -157,7 +188,7 @@ public class MorphBasedConnGenerator extends Thread
         {
             try
             {
-                logger.logComment("Waiting for: "+generatingNetConns+"...");
+                if (logger.isEnabled()) logger.logComment("Waiting for: "+generatingNetConns+"...");
                 Thread.sleep(waitMillis);
             }
             catch (InterruptedException ex)
@@ -166,6 +197,12 @@ public class MorphBasedConnGenerator extends Thread
             }
         }
 
+        if (rangePool != null)
+        {
+            rangePool.shutdown();
+            rangePool = null;
+        }
+
         // Finished the main generation part...
 
         sendGenerationReport(false);
@@ -174,13 +211,13 @@ public class MorphBasedConnGenerator extends Thread
 
     protected synchronized void netConnCompleted(String netConnName)
     {
-        logger.logComment("Finished generating: "+netConnName+"...");
+        if (logger.isEnabled()) logger.logComment("Finished generating: "+netConnName+"...");
         generatingNetConns.remove(netConnName);
     }
 
     protected synchronized void netConnStarting(String netConnName)
     {
-        logger.logComment("Starting generating: "+netConnName+"...");
+        if (logger.isEnabled()) logger.logComment("Starting generating: "+netConnName+"...");
         generatingNetConns.add(netConnName);
     }
     protected synchronized int netConnsRunning()
@@ -188,6 +225,51 @@ public class MorphBasedConnGenerator extends Thread
         return generatingNetConns.size();
     }
 
+    private synchronized void clearSegmentIndices()
+    {
+        segmentIndices.clear();
+        displacementTables.clear();
+    }
+
+    protected synchronized SegmentDisplacementTable getDisplacementTable(String cellType, Cell cell)
+    {
+        SegmentDisplacementTable table = displacementTables.get(cellType);
+
+        if (table == null)
+        {
+            table = new SegmentDisplacementTable(cell);
+            displacementTables.put(cellType, table);
+        }
+        return table;
+    }
+
+    /*
+     * Gets the index of the locations on cells of the type where all of the synapse types are allowed,
+     * creating it the first time it's needed in this generation
+     */
+    protected synchronized SegmentSpatialIndex getSegmentIndex(String cellType,
+                                                               Cell cell,
+                                                               String[] synTypeNames,
+                                                               PrePostAllowedLocs pp,
+                                                               boolean postSynaptic)
+    {
+        String[] sortedSynTypes = synTypeNames.clone();
+        Arrays.sort(sortedSynTypes);
+
+        String key = cellType + ", " + Arrays.toString(sortedSynTypes) + ", " + pp + ", post: " + postSynaptic;
+
+        SegmentSpatialIndex index = segmentIndices.get(key);
+
+        if (index == null)
+        {
+            index = new SegmentSpatialIndex(cell, synTypeNames, pp, postSynaptic);
+            segmentIndices.put(key, index);
+
+            if (logger.isEnabled()) logger.logComment("Created index of " + index.getNumSegments() + " segments for: " + key);
+        }
+        return index;
+    }
+
     private class SingleConnGenerator extends Thread
     {
 
@@ -195,6 +277,35 @@ public class MorphBasedConnGenerator extends Thread
 
         String netConnName = null;
 
+        /*
+         * Settings for the net conn, set at the start of run()
+         */
+        private ConnectivityConditions connConds = null;
+        private Vector<SynapticProperties> synPropList = null;
+        private String[] synTypeNames = null;
+
+        private String sourceCellGroup = null;
+        private String targetCellGroup = null;
+
+        private String genStartCellGroup = null;
+        private Cell genStartCellInstance = null;
+        private int numberInGenStartCellGroup = -1;
+
+        private String genFinishCellGroup = null;
+        private Cell genFinishCellInstance = null;
+        private int numberInGenFinishCellGroup = -1;
+        private List<PositionRecord> finishPosRecords = null;
+        private SegmentSpatialIndex finishSegmentIndex = null;
+        private EndpointDistanceCalculator distances = null;
+
+        private Point3f sourceSomaPosition = null;
+        private Point3f targetSomaPosition = null;
+
+        private MaxMinLength maxMin = null;
+        private SearchPattern searchPattern = null;
+
+        private long startGen;
+
         public SingleConnGenerator(GenerationReport reportInterface, String netConnName)
         {
             super("SingleConnGenerator_"+netConnName);
@@ -206,44 +317,33 @@ public class MorphBasedConnGenerator extends Thread
         @Override
         public void run()
         {
+            connConds = project.morphNetworkConnectionsInfo.getConnectivityConditions(netConnName);
 
-            CellTopologyHelper cth = new CellTopologyHelper(); // so that synapse locations can be cached...
-
-            ConnectivityConditions connConds = project.morphNetworkConnectionsInfo.getConnectivityConditions(netConnName);
-
-            logger.logComment("Looking at Network Connection: " + netConnName);
+            if (logger.isEnabled()) logger.logComment("Looking at Network Connection: " + netConnName);
 
             this.myReportInterface.giveUpdate("Generating Net Conn: " + netConnName+"...");
 
-            Vector<SynapticProperties> synPropList = project.morphNetworkConnectionsInfo.getSynapseList(netConnName);
+            synPropList = project.morphNetworkConnectionsInfo.getSynapseList(netConnName);
 
-            String[] synTypeNames = new String[synPropList.size()];
+            synTypeNames = new String[synPropList.size()];
             for (int i = 0; i < synPropList.size(); i++)
             {
                 synTypeNames[i] = synPropList.elementAt(i).getSynapseType();
             }
 
-            String sourceCellGroup = project.morphNetworkConnectionsInfo.getSourceCellGroup(netConnName);
+            sourceCellGroup = project.morphNetworkConnectionsInfo.getSourceCellGroup(netConnName);
             String sourceCellType = project.cellGroupsInfo.getCellType(sourceCellGroup);
             Cell sourceCellInstance = project.cellManager.getCell(sourceCellType);
             int numberInSourceCellGroup
                 = project.generatedCellPositions.getNumberInCellGroup(sourceCellGroup);
 
 
-            String targetCellGroup = project.morphNetworkConnectionsInfo.getTargetCellGroup(netConnName);
+            targetCellGroup = project.morphNetworkConnectionsInfo.getTargetCellGroup(netConnName);
             String targetCellType = project.cellGroupsInfo.getCellType(targetCellGroup);
             Cell targetCellInstance = project.cellManager.getCell(targetCellType);
             int numberInTargetCellGroup
                 = project.generatedCellPositions.getNumberInCellGroup(targetCellGroup);
 
-            String genStartCellGroup = null;
-            Cell genStartCellInstance = null;
-            int numberInGenStartCellGroup = -1;
-
-            String genFinishCellGroup = null;
-            Cell genFinishCellInstance = null;
-            int numberInGenFinishCellGroup = -1;
-
 
             // NOTE: we create the name "GenerationStartCellGroup", etc for the cell group we generate from
             // and "GenerationFinishCellGroup" for the one we connect to, so if
@@ -277,24 +377,25 @@ public class MorphBasedConnGenerator extends Thread
             Section sourceSec = sourceCellInstance.getFirstSomaSegment().getSection();
             Section targetSec = targetCellInstance.getFirstSomaSegment().getSection();
 
-            Point3f sourceSomaPosition = CellTopologyHelper.convertSectionDisplacement(sourceCellInstance, sourceSec, (float) 0.5);
-
-            Point3f targetSomaPosition = CellTopologyHelper.convertSectionDisplacement(targetCellInstance, targetSec, (float) 0.5);
+            sourceSomaPosition = CellTopologyHelper.convertSectionDisplacement(sourceCellInstance, sourceSec, (float) 0.5);
 
-            MaxMinLength maxMin = project.morphNetworkConnectionsInfo.getMaxMinLength(netConnName);
-            SearchPattern searchPattern = project.morphNetworkConnectionsInfo.getSearchPattern(netConnName);
+            targetSomaPosition = CellTopologyHelper.convertSectionDisplacement(targetCellInstance, targetSec, (float) 0.5);
 
-            logger.logComment("\nThere are " + numberInGenStartCellGroup
-                              + " cells in cell group: " + genStartCellGroup
-                              + ", and each will have connections given by: (" + connConds + ")");
+            maxMin = project.morphNetworkConnectionsInfo.getMaxMinLength(netConnName);
+            searchPattern = project.morphNetworkConnectionsInfo.getSearchPattern(netConnName);
 
-            logger.logComment("These will synapse with " + numberInGenFinishCellGroup
-                              + " cells in cell group " + genFinishCellGroup);
+            if (logger.isEnabled())
+            {
+                logger.logComment("\nThere are " + numberInGenStartCellGroup
+                                  + " cells in cell group: " + genStartCellGroup
+                                  + ", and each will have connections given by: (" + connConds + ")");
 
+                logger.logComment("These will synapse with " + numberInGenFinishCellGroup
+                                  + " cells in cell group " + genFinishCellGroup);
+            }
 
-            ArrayList<Integer> finCellsMaxedOut = new ArrayList<Integer>(numberInGenFinishCellGroup);
 
-            long startGen = System.currentTimeMillis();
+            startGen = System.currentTimeMillis();
 
             if (numberInGenStartCellGroup==0)
             {
@@ -308,36 +409,91 @@ public class MorphBasedConnGenerator extends Thread
             }
             else
             {
+                for(String synType: synTypeNames)
+                {
+                    if (!CellTopologyHelper.isSynapseAllowed(genStartCellInstance, synType))
+                    {
+                        GuiUtils.showErrorMessage(logger, "Error getting synaptic location for: "+synType+" on cell of type " +
+                                              genStartCellInstance+", netConn: "+this.netConnName+".\n"+synLocWarning, null, null);
 
-    //////////////////////            Main loop over cells in start group
+                        continueGeneration = false;
+                    }
+                    if (!CellTopologyHelper.isSynapseAllowed(genFinishCellInstance, synType))
+                    {
+                        GuiUtils.showErrorMessage(logger, "Error getting synaptic location for: "+synType+" on cell of type " +
+                                              genFinishCellInstance+", netConn: "+this.netConnName+".\n"+synLocWarning, null, null);
+
+                        continueGeneration = false;
+                    }
+                }
+
+                finishPosRecords = project.generatedCellPositions.getPositionRecords(genFinishCellGroup);
+
+                finishSegmentIndex = getSegmentIndex(project.cellGroupsInfo.getCellType(genFinishCellGroup),
+                                                     genFinishCellInstance,
+                                                     synTypeNames,
+                                                     connConds.getPrePostAllowedLoc(),
+                                                     connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET);
+
+                String genStartCellType = project.cellGroupsInfo.getCellType(genStartCellGroup);
+                String genFinishCellType = project.cellGroupsInfo.getCellType(genFinishCellGroup);
+
+                distances = new EndpointDistanceCalculator(project,
+                                                           genStartCellGroup,
+                                                           getDisplacementTable(genStartCellType, genStartCellInstance),
+                                                           genFinishCellGroup,
+                                                           getDisplacementTable(genFinishCellType, genFinishCellInstance));
+
+                boolean completed;
+
+                if (rangePool != null)
+                {
+                    completed = generateReproducibly();
+                }
+                else
+                {
+                    completed = generateConnsForCells(0, numberInGenStartCellGroup, null, null);
+                }
 
-                for (int genStartCellNumber = 0; genStartCellNumber < numberInGenStartCellGroup; genStartCellNumber++)
+                if (!completed)
                 {
-                    if(genStartCellNumber==0)
+                    if (!continueGeneration)
                     {
-                        for(String synType: synTypeNames)
-                        {
-                            if (!CellTopologyHelper.isSynapseAllowed(genStartCellInstance, synType))
-                            {
-                                
-                                GuiUtils.showErrorMessage(logger, "Error getting synaptic location for: "+synType+" on cell of type " +
-                                                      genStartCellInstance+", netConn: "+this.netConnName+".\n"+synLocWarning, null, null);
+                        logger.logComment("Discontinuing generation...");
+                        sendGenerationReport(true);
+                    }
+                    return;
+                }
+            }
+            if (logger.isEnabled()) logger.logComment("Finished looking at all " + numberInGenStartCellGroup + " cells in group: " +
+                              genStartCellGroup);
 
-                                continueGeneration = false;
-                            }
-                            if (!CellTopologyHelper.isSynapseAllowed(genFinishCellInstance, synType))
-                            {
-                                
-                                GuiUtils.showErrorMessage(logger, "Error getting synaptic location for: "+synType+" on cell of type " +
-                                                      genFinishCellInstance+", netConn: "+this.netConnName+".\n"+synLocWarning, null, null);
+            if (myReportInterface != null) myReportInterface.majorStepComplete();
 
-                                continueGeneration = false;
-                            }
-                        }
-                    }
+            netConnCompleted(netConnName);
 
+        }
+
+
+        /**
+         * Generates the connections for cells firstCell to lastCell-1 in the start group. The connections are
+         * added to rangeConns if it's not null, otherwise straight to the project's generated net conns.
+         * If randomStream isn't null, it's used for all random numbers needed while generating them.
+         * @return false if generation has been stopped, or there was a problem generating the connections
+         */
+        private boolean generateConnsForCells(int firstCell, int lastCell, Random randomStream, NetConnectionStore rangeConns)
+        {
+            CellTopologyHelper cth = new CellTopologyHelper(); // so that synapse locations can be cached...
 
-                    ArrayList<PositionRecord> finishPosRecords = project.generatedCellPositions.getPositionRecords(genFinishCellGroup);
+            ArrayList<Integer> finCellsMaxedOut = new ArrayList<Integer>(numberInGenFinishCellGroup);
+
+            if (randomStream != null)
+                ProjectManager.setThreadRandomGenerator(randomStream);
+
+            try
+            {
+                for (int genStartCellNumber = firstCell; genStartCellNumber < lastCell; genStartCellNumber++)
+                {
                     Point3f startCellPos = project.generatedCellPositions.getOneCellPosition(genStartCellGroup, genStartCellNumber);
 
                     int[] allowedFinishCells
@@ -410,7 +566,7 @@ public class MorphBasedConnGenerator extends Thread
                             numberConnections = numberConnections + 1;
                     }
 
-                    logger.logComment(".........   For cell number: " + genStartCellNumber + ", there will be " + numberConnections + " connections");
+                    if (logger.isEnabled()) logger.logComment(".........   For cell number: " + genStartCellNumber + ", there will be " + numberConnections + " connections");
 
 
     //////////////////////            Loop over numberConnections cells in FINISH group
@@ -423,13 +579,12 @@ public class MorphBasedConnGenerator extends Thread
                         if (!continueGeneration)
                         {
                             logger.logComment("Discontinuing generation...");
-                            sendGenerationReport(true);
-                            return;
+                            return false;
                         }
 
                         boolean continueSingleConnGeneration = true;
 
-                        logger.logComment("-----   Connection number " + connNumber
+                        if (logger.isEnabled()) logger.logComment("-----   Connection number " + connNumber
                                           + " for cell number: " + genStartCellNumber
                                           + ". Asking cell of type: " + genStartCellInstance.toString()
                                           + " for a synaptic location");
@@ -468,13 +623,13 @@ public class MorphBasedConnGenerator extends Thread
                         if (genFinCellsAlreadyConnected.size() == numberInGenFinishCellGroup &&
                             connConds.isOnlyConnectToUniqueCells())
                         {
-                            logger.logComment("There are the max number of connections at the opposite cell group, " +
+                            if (logger.isEnabled()) logger.logComment("There are the max number of connections at the opposite cell group, " +
                                               "and each one has to be unique...");
                             continueSingleConnGeneration = false;
                         }
                         else
                         {
-                            logger.logComment("There are currently "
+                            if (logger.isEnabled()) logger.logComment("There are currently "
                                               + genFinCellsAlreadyConnected.size()
                                               + " unique connection cells in the opposite cell group: "+
                                               genFinCellsAlreadyConnected.toString());
@@ -491,18 +646,18 @@ public class MorphBasedConnGenerator extends Thread
 
                             }
 
-                                logger.logComment("alreadyReciveConnectionFrom: "+ alreadyReciveConnectionFrom);
+                                if (logger.isEnabled()) logger.logComment("alreadyReciveConnectionFrom: "+ alreadyReciveConnectionFrom);
 
 
                             if (alreadyReciveConnectionFrom.size() == numberInGenFinishCellGroup)
                             {
-                                logger.logComment("Every possible connection will be a recurrent connection, " +
+                                if (logger.isEnabled()) logger.logComment("Every possible connection will be a recurrent connection, " +
                                                   "and these are not allowed...");
                                 continueSingleConnGeneration = false;
                             }
                             else
                             {
-                                logger.logComment("The cell already recive connections from "
+                                if (logger.isEnabled()) logger.logComment("The cell already recive connections from "
                                                   + alreadyReciveConnectionFrom.size()
                                                   + " unique cells... ");
                             }
@@ -545,7 +700,7 @@ public class MorphBasedConnGenerator extends Thread
                                 boolean foundOne = false;
 
                                 logger.logComment("Linking will be done in completely random manner...");
-                                logger.logComment("Asking cell of type: " + genFinishCellInstance.toString() +
+                                if (logger.isEnabled()) logger.logComment("Asking cell of type: " + genFinishCellInstance.toString() +
                                                   " for a synaptic location");
 
                                 int numFailedAttemptsMaxMin = 0;
@@ -562,8 +717,11 @@ public class MorphBasedConnGenerator extends Thread
                                 {
                                     logger.logComment("***************************************");
                                     logger.logComment("   Restarting loop for random");
-                                    logger.logComment("numFaliedAttemptsMaxMin: " + numFailedAttemptsMaxMin);
-                                    logger.logComment("finCellsMaxedOut.size(): " + finCellsMaxedOut.size());
+                                    if (logger.isEnabled())
+                                    {
+                                        logger.logComment("numFaliedAttemptsMaxMin: " + numFailedAttemptsMaxMin);
+                                        logger.logComment("finCellsMaxedOut.size(): " + finCellsMaxedOut.size());
+                                    }
 
 
                                     if (connConds.isNoRecurrent())
@@ -574,9 +732,12 @@ public class MorphBasedConnGenerator extends Thread
                                         if (!connConds.isAllowAutapses())
                                             totalPossibleConnectTo = totalPossibleConnectTo -1;
 
-                                        logger.logComment("totalPossibleConnectTo: " + totalPossibleConnectTo);
-                                        logger.logComment("alreadyReciveConnectionFrom: " + alreadyReciveConnectionFrom);
-                                        logger.logComment("genFinCellsAlreadyConnected: " + genFinCellsAlreadyConnected);
+                                        if (logger.isEnabled())
+                                        {
+                                            logger.logComment("totalPossibleConnectTo: " + totalPossibleConnectTo);
+                                            logger.logComment("alreadyReciveConnectionFrom: " + alreadyReciveConnectionFrom);
+                                            logger.logComment("genFinCellsAlreadyConnected: " + genFinCellsAlreadyConnected);
+                                        }
 
                                         if (alreadyReciveConnectionFrom.size() + genFinCellsAlreadyConnected.size() >=
                                                 totalPossibleConnectTo)
@@ -601,7 +762,7 @@ public class MorphBasedConnGenerator extends Thread
                                             connConds.getPrePostAllowedLoc());
                                     }
 
-                                    logger.logComment("genFinishConnPoint: " + genFinishConnPoint);
+                                    if (logger.isEnabled()) logger.logComment("genFinishConnPoint: " + genFinishConnPoint);
 
                                     if (genFinishConnPoint == null)
                                     {
@@ -627,29 +788,32 @@ public class MorphBasedConnGenerator extends Thread
 
                                             genFinishCellNumber = allowedFinishCells[ProjectManager.getRandomGenerator().nextInt(allowedFinishCells.length)];
 
-                                            logger.logComment("--------------------------Testing if cell num: " + genFinishCellNumber +
-                                                              " is appropriate for cell number: " + genStartCellNumber+", ignoreDistance: "+ignoreDistance);
+                                            if (logger.isEnabled())
+                                            {
+                                                logger.logComment("--------------------------Testing if cell num: " + genFinishCellNumber +
+                                                                  " is appropriate for cell number: " + genStartCellNumber+", ignoreDistance: "+ignoreDistance);
 
-                                            logger.logComment("finCellsMaxedOut: " + finCellsMaxedOut);
-                                            logger.logComment("availableCellsToConnectTo: " + availableCellsToConnectTo);
+                                                logger.logComment("finCellsMaxedOut: " + finCellsMaxedOut);
+                                                logger.logComment("availableCellsToConnectTo: " + availableCellsToConnectTo);
+                                            }
 
 
-                                            ArrayList<Integer> connsOnFinishCell = null;
+                                            int connsOnFinishCell = 0;
 
                                             if (connConds.isNoRecurrent())
                                             {
-                                                    logger.logComment("alreadyReciveConnectionFrom: "+ alreadyReciveConnectionFrom);
+                                                    if (logger.isEnabled()) logger.logComment("alreadyReciveConnectionFrom: "+ alreadyReciveConnectionFrom);
 
                                                 if (!alreadyReciveConnectionFrom.contains(genFinishCellNumber))
                                                 {
                                                     satisfiesGAPj = true;
-                                                    logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj);
+                                                    if (logger.isEnabled()) logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj);
 
                                                 }
                                                 else
                                                 {
                                                     satisfiesGAPj = false;
-                                                    logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj + "the two cells are already coupled");
+                                                    if (logger.isEnabled()) logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj + "the two cells are already coupled");
                                                 }
                                             }
                                             else
@@ -661,42 +825,42 @@ public class MorphBasedConnGenerator extends Thread
                                             {
                                                 if (connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET)
                                                 {
-                                                    connsOnFinishCell = project.generatedNetworkConnections.getSourceCellIndices(netConnName,
-                                                        genFinishCellNumber, false);
+                                                    connsOnFinishCell = project.generatedNetworkConnections.getNumConnsToTarget(netConnName,
+                                                        genFinishCellNumber);
                                                 }
                                                 else
                                                 {
-                                                    connsOnFinishCell = project.generatedNetworkConnections.getTargetCellIndices(netConnName,
-                                                        genFinishCellNumber, false);
+                                                    connsOnFinishCell = project.generatedNetworkConnections.getNumConnsFromSource(netConnName,
+                                                        genFinishCellNumber);
                                                 }
                                             }
 
-                                            logger.logComment("connsOnFinishCell: " + connsOnFinishCell);
+                                            if (logger.isEnabled()) logger.logComment("connsOnFinishCell: " + connsOnFinishCell);
 
 
-                                            if ( !checkMaxingOutFinCells || ((connsOnFinishCell.size()+1) <= connConds.getMaxNumInitPerFinishCell()) )
+                                            if ( !checkMaxingOutFinCells || ((connsOnFinishCell+1) <= connConds.getMaxNumInitPerFinishCell()) )
                                             {
-                                                logger.logComment("There are not more than: " + connConds.getMaxNumInitPerFinishCell()
+                                                if (logger.isEnabled()) logger.logComment("There are not more than: " + connConds.getMaxNumInitPerFinishCell()
                                                                   + " src conns on finish cell "+genFinishCellNumber);
 
                                                 satisfiesMaxNumPerFinCell = true;
 
                                                 if (connConds.isOnlyConnectToUniqueCells())
                                                 {
-                                                    logger.logComment("genFinCellsAlreadyConnected: " + genFinCellsAlreadyConnected);
+                                                    if (logger.isEnabled()) logger.logComment("genFinCellsAlreadyConnected: " + genFinCellsAlreadyConnected);
 
                                                     if (!genFinCellsAlreadyConnected.contains(genFinishCellNumber))
                                                     {
                                                         satisfiesUniqueness = true;
-                                                        logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
+                                                        if (logger.isEnabled()) logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
                                                     }
                                                     else
                                                     {
                                                         satisfiesUniqueness = false;
-                                                        logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
+                                                        if (logger.isEnabled()) logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
                                                     }
                                                     availableCellsToConnectTo = numberInGenFinishCellGroup - genFinCellsAlreadyConnected.size();
-                                                    logger.logComment("--- availableCellsToConnectTo: " + availableCellsToConnectTo);
+                                                    if (logger.isEnabled()) logger.logComment("--- availableCellsToConnectTo: " + availableCellsToConnectTo);
 
                                                 }
                                                 else
@@ -707,7 +871,7 @@ public class MorphBasedConnGenerator extends Thread
                                             }
                                             else
                                             {
-                                                logger.logComment("There are already: " + connsOnFinishCell + " src conns on tgt cell "+genFinishCellNumber);
+                                                if (logger.isEnabled()) logger.logComment("There are already: " + connsOnFinishCell + " src conns on tgt cell "+genFinishCellNumber);
 
                                                 satisfiesMaxNumPerFinCell = false;
                                                 satisfiesUniqueness = false;
@@ -733,16 +897,12 @@ public class MorphBasedConnGenerator extends Thread
 
                                                 if(!ignoreDistance || nonZeroPropDelay)
                                                 {
-                                                    logger.logComment("Distancebeing calc, ignored dist: "+ ignoreDistance+", nonZeroPropDelay: "+nonZeroPropDelay);
-                                                    distApart = CellTopologyHelper.getSynapticEndpointsDistance(
-                                                                                            project,
-                                                                                            genStartCellGroup,
-                                                                                            new SynapticConnectionEndPoint(genStartConnPoint,
-                                                                                                    genStartCellNumber),
-                                                                                                    genFinishCellGroup,
-                                                                                            new SynapticConnectionEndPoint(genFinishConnPoint,
-                                                                                                    genFinishCellNumber),
-                                                                                            maxMin.getDimension());
+                                                    if (logger.isEnabled()) logger.logComment("Distancebeing calc, ignored dist: "+ ignoreDistance+", nonZeroPropDelay: "+nonZeroPropDelay);
+                                                    distApart = distances.getDistance(genStartCellNumber,
+                                                        genStartConnPoint,
+                                                        genFinishCellNumber,
+                                                        genFinishConnPoint,
+                                                        maxMin.getDimension());
                                                     
                                                     if (!maxMin.getDimension().equals("s"))
                                                     {
@@ -751,26 +911,24 @@ public class MorphBasedConnGenerator extends Thread
                                                     }
                                                     else
                                                     {
-                                                        Point3f absoluteStartPoint = project.generatedCellPositions.getOneCellPosition(genStartCellGroup, genStartCellNumber);
-                                                        Point3f absoluteEndPoint = project.generatedCellPositions.getOneCellPosition(genFinishCellGroup, genFinishCellNumber);
-
-                                                        absoluteStartPoint.add(sourceSomaPosition); //add the displacement of the soma referred to the cell axes
-                                                        absoluteEndPoint.add(targetSomaPosition);
-
-                                                        distForMaxMin =  absoluteStartPoint.distance(absoluteEndPoint);
+                                                        // the displacement of the soma referred to the cell axes is added to the cell positions
+                                                        distForMaxMin = distances.getOffsetsDistance(genStartCellNumber,
+                                                            sourceSomaPosition,
+                                                            genFinishCellNumber,
+                                                            targetSomaPosition);
                                                      }
                                                 }
 
                                                 if (ignoreDistance || (distForMaxMin >= maxMin.getMinLength()
                                                     && distForMaxMin <= maxMin.getMaxLength()))
                                                 {
-                                                    logger.logComment("Distance condition satisfied, ignored dist: "+ ignoreDistance+", nonZeroPropDelay: "+nonZeroPropDelay);
+                                                    if (logger.isEnabled()) logger.logComment("Distance condition satisfied, ignored dist: "+ ignoreDistance+", nonZeroPropDelay: "+nonZeroPropDelay);
                                                     foundOne = true;
                                                     connDistance = distApart;
                                                 }
                                                 else
                                                 {
-                                                    logger.logComment("The length: " + distForMaxMin + " isn't between " +
+                                                    if (logger.isEnabled()) logger.logComment("The length: " + distForMaxMin + " isn't between " +
                                                                       maxMin.getMinLength() + " and " + maxMin.getMaxLength());
                                                     numFailedAttemptsMaxMin++;
                                                     genFinishConnPoint = null;
@@ -795,7 +953,7 @@ public class MorphBasedConnGenerator extends Thread
 
                                 for (int o = 0; o < numberOfSectionsToCheck; o++)
                                 {
-                                    logger.logComment("Checking number " + o + " of the " + numberOfSectionsToCheck +
+                                    if (logger.isEnabled()) logger.logComment("Checking number " + o + " of the " + numberOfSectionsToCheck +
                                                       " sections I've to check");
 
                                     SegmentLocation tempGenFinishConnPoint = null;
@@ -814,14 +972,14 @@ public class MorphBasedConnGenerator extends Thread
                                                                             connConds.getPrePostAllowedLoc());
                                     }
 
-                                    logger.logComment("tempGenFinishConnPoint: " + tempGenFinishConnPoint);
+                                    if (logger.isEnabled()) logger.logComment("tempGenFinishConnPoint: " + tempGenFinishConnPoint);
 
                                     if (tempGenFinishConnPoint == null)
                                     {
                                         GuiUtils.showErrorMessage(logger,
                                                                   "Error getting synaptic location on cell of type " +
                                                                   genFinishCellInstance.toString()+", netConn: "+this.netConnName+"", null, null);
-                                        return;
+                                        return false;
                                     }
 
                                     int tempGenFinishCellNumber = -1;
@@ -841,33 +999,36 @@ public class MorphBasedConnGenerator extends Thread
 
                                         tempGenFinishCellNumber = allowedFinishCells[ProjectManager.getRandomGenerator().nextInt(allowedFinishCells.length)];
 
-                                        logger.logComment("----  Testing if cell num: " + tempGenFinishCellNumber +
-                                                          " is appropriate for cell number: "
-                                                          + genStartCellNumber);
+                                        if (logger.isEnabled())
+                                        {
+                                            logger.logComment("----  Testing if cell num: " + tempGenFinishCellNumber +
+                                                              " is appropriate for cell number: "
+                                                              + genStartCellNumber);
 
-                                        logger.logComment("finCellsMaxedOut: " + finCellsMaxedOut);
-                                        logger.logComment("numCellsNotConnTo: " + numCellsNotConnTo);
-                                        logger.logComment("genFinCellsAlreadyConnected: " + genFinCellsAlreadyConnected);
+                                            logger.logComment("finCellsMaxedOut: " + finCellsMaxedOut);
+                                            logger.logComment("numCellsNotConnTo: " + numCellsNotConnTo);
+                                            logger.logComment("genFinCellsAlreadyConnected: " + genFinCellsAlreadyConnected);
+                                        }
 
                                         int numConnsOnFinishCell = 0;
 
                                         if (connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET)
                                         {
-                                            numConnsOnFinishCell = project.generatedNetworkConnections.getSourceCellIndices(netConnName,
-                                                tempGenFinishCellNumber, false).size();
+                                            numConnsOnFinishCell = project.generatedNetworkConnections.getNumConnsToTarget(netConnName,
+                                                tempGenFinishCellNumber);
                                         }
                                         else
                                         {
-                                            numConnsOnFinishCell = project.generatedNetworkConnections.getTargetCellIndices(netConnName,
-                                                tempGenFinishCellNumber, false).size();
+                                            numConnsOnFinishCell = project.generatedNetworkConnections.getNumConnsFromSource(netConnName,
+                                                tempGenFinishCellNumber);
 
                                         }
 
-                                        logger.logComment("numConnsOnFinishCell: " + numConnsOnFinishCell);
+                                        if (logger.isEnabled()) logger.logComment("numConnsOnFinishCell: " + numConnsOnFinishCell);
 
                                         if ( (numConnsOnFinishCell + 1) <= connConds.getMaxNumInitPerFinishCell())
                                         {
-                                            logger.logComment("There are not more than: " + connConds.getMaxNumInitPerFinishCell()
+                                            if (logger.isEnabled()) logger.logComment("There are not more than: " + connConds.getMaxNumInitPerFinishCell()
                                                               + " src conns on finish cell " + tempGenFinishCellNumber);
                                             satisfiesMaxNumPerFinCell = true;
 
@@ -876,12 +1037,12 @@ public class MorphBasedConnGenerator extends Thread
                                                 if (!(project.generatedNetworkConnections.areConnected(netConnName, genStartCellNumber, tempGenFinishCellNumber))
                                                     && (!(project.generatedNetworkConnections.areConnected(netConnName, tempGenFinishCellNumber, genStartCellNumber)))) {
                                                     satisfiesGAPj = true;
-                                                    logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj);
+                                                    if (logger.isEnabled()) logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj);
                                                 }
                                                 else
                                                 {
                                                     satisfiesGAPj = false;
-                                                    logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj + "the two cells are already connected");
+                                                    if (logger.isEnabled()) logger.logComment("Reccurent connections are not allowed, satisfies condition: " + satisfiesGAPj + "the two cells are already connected");
                                                 }
                                             }
                                             else
@@ -894,12 +1055,12 @@ public class MorphBasedConnGenerator extends Thread
                                                 if (!genFinCellsAlreadyConnected.contains(new Integer(tempGenFinishCellNumber)))
                                                 {
                                                     satisfiesUniqueness = true;
-                                                        logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
+                                                        if (logger.isEnabled()) logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
 
                                                 }
                                                 else
                                                 {
-                                                    logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
+                                                    if (logger.isEnabled()) logger.logComment("Needs uniqueness, satisfiesUniqueness: " + satisfiesUniqueness);
                                                     satisfiesUniqueness = false;
                                                 }
                                                 numCellsNotConnTo = numberInGenFinishCellGroup - genFinCellsAlreadyConnected.size();
@@ -912,7 +1073,7 @@ public class MorphBasedConnGenerator extends Thread
                                         }
                                         else
                                         {
-                                            logger.logComment("There are already: " + numConnsOnFinishCell + " src conns on tgt cell " +
+                                            if (logger.isEnabled()) logger.logComment("There are already: " + numConnsOnFinishCell + " src conns on tgt cell " +
                                                               tempGenFinishCellNumber);
 
                                             satisfiesMaxNumPerFinCell = false;
@@ -924,7 +1085,7 @@ public class MorphBasedConnGenerator extends Thread
 
                                     }
 
-                                    logger.logComment("tempGenFinishCellNumber: " + tempGenFinishCellNumber);
+                                    if (logger.isEnabled()) logger.logComment("tempGenFinishCellNumber: " + tempGenFinishCellNumber);
 
                                     if(satisfiesMaxNumPerFinCell && satisfiesUniqueness && satisfiesGAPj)
                                     {
@@ -937,7 +1098,7 @@ public class MorphBasedConnGenerator extends Thread
                                         else
                                         {
 
-                                            logger.logComment("Not an autapse? "+sourceCellGroup.equals(targetCellGroup) +" "+!connConds.isAllowAutapses()+" "+
+                                            if (logger.isEnabled()) logger.logComment("Not an autapse? "+sourceCellGroup.equals(targetCellGroup) +" "+!connConds.isAllowAutapses()+" "+
                                             (genStartCellNumber == tempGenFinishCellNumber));
 
                                             SynapticConnectionEndPoint tempGenFinishEndpoint =
@@ -949,24 +1110,19 @@ public class MorphBasedConnGenerator extends Thread
 
                                             if (!maxMin.getDimension().equals("s")) {
 
-                                                distToThisPoint = CellTopologyHelper.getSynapticEndpointsDistance(
-                                                    project,
-                                                    genStartCellGroup,
-                                                    new SynapticConnectionEndPoint(genStartConnPoint,
-                                                    genStartCellNumber),
-                                                    genFinishCellGroup,
-                                                    tempGenFinishEndpoint,
+                                                distToThisPoint = distances.getDistance(genStartCellNumber,
+                                                    genStartConnPoint,
+                                                    tempGenFinishEndpoint.cellNumber,
+                                                    tempGenFinishEndpoint.location,
                                                     maxMin.getDimension());
 
                                             } else {
 
-                                                Point3f absoluteStartPoint = project.generatedCellPositions.getOneCellPosition(genStartCellGroup, genStartCellNumber);
-                                                Point3f absoluteEndPoint = project.generatedCellPositions.getOneCellPosition(genFinishCellGroup, tempGenFinishCellNumber);
-
-                                                absoluteStartPoint.add(sourceSomaPosition); //add the displacement of the soma referred to the cell axes
-                                                absoluteEndPoint.add(targetSomaPosition);
-
-                                                distToThisPoint = absoluteStartPoint.distance(absoluteEndPoint);
+                                                // the displacement of the soma referred to the cell axes is added to the cell positions
+                                                distToThisPoint = distances.getOffsetsDistance(genStartCellNumber,
+                                                    sourceSomaPosition,
+                                                    tempGenFinishCellNumber,
+                                                    targetSomaPosition);
                                             }
 
                                             if (distToThisPoint >= maxMin.getMinLength()
@@ -985,7 +1141,7 @@ public class MorphBasedConnGenerator extends Thread
                                                 }
                                                 else
                                                 {
-                                                    logger.logComment("Not good enough, genFinishCellNumber: "+ genFinishCellNumber);
+                                                    if (logger.isEnabled()) logger.logComment("Not good enough, genFinishCellNumber: "+ genFinishCellNumber);
                                                 }
                                             }
                                             else
@@ -996,13 +1152,16 @@ public class MorphBasedConnGenerator extends Thread
                                     }
                                     else
                                     {
-                                        logger.logComment("satisfiesMaxNumPerFinCell: " + satisfiesMaxNumPerFinCell);
-                                        logger.logComment("satisfiesUniqueness: " + satisfiesUniqueness);
-                                        logger.logComment("satisfiesGAPj: " + satisfiesGAPj);
+                                        if (logger.isEnabled())
+                                        {
+                                            logger.logComment("satisfiesMaxNumPerFinCell: " + satisfiesMaxNumPerFinCell);
+                                            logger.logComment("satisfiesUniqueness: " + satisfiesUniqueness);
+                                            logger.logComment("satisfiesGAPj: " + satisfiesGAPj);
+                                        }
 
                                     }
                                 }
-                                logger.logComment("Finished checking the " + numberOfSectionsToCheck +
+                                if (logger.isEnabled()) logger.logComment("Finished checking the " + numberOfSectionsToCheck +
                                                   " cells I'd to check...");
                             }
 
@@ -1039,7 +1198,7 @@ public class MorphBasedConnGenerator extends Thread
                                 {
                                     int nextGenFinishCellNum = allowedFinishCells[nextGenFinishCellIndex];
 
-                                    logger.logComment("Checking cell number: " + nextGenFinishCellNum + " in cell group: " +
+                                    if (logger.isEnabled()) logger.logComment("Checking cell number: " + nextGenFinishCellNum + " in cell group: " +
                                                       genFinishCellGroup);
 
                                     boolean alreadyConnected;
@@ -1063,13 +1222,13 @@ public class MorphBasedConnGenerator extends Thread
                                                 || ((project.generatedNetworkConnections.areConnected(netConnName, nextGenFinishCellNum, genStartCellNumber))))
                                             {
                                                 satisfiesGAPj = false;
-                                                logger.logComment("Needs GAPj, satisfiesGAPj: " + satisfiesGAPj + "the two cells are already coupled");
+                                                if (logger.isEnabled()) logger.logComment("Needs GAPj, satisfiesGAPj: " + satisfiesGAPj + "the two cells are already coupled");
 
                                             }
                                             else
                                             {
                                                 satisfiesGAPj = true;
-                                                logger.logComment("Needs GAPj, satisfiesGAPj: " + satisfiesGAPj);
+                                                if (logger.isEnabled()) logger.logComment("Needs GAPj, satisfiesGAPj: " + satisfiesGAPj);
                                             }
                                         }
                                         else
@@ -1088,22 +1247,22 @@ public class MorphBasedConnGenerator extends Thread
                                             ConnectivityConditions.SOURCE_TO_TARGET)
                                         {
                                             numConnsOnFinishCell = project.generatedNetworkConnections.
-                                                getSourceCellIndices(netConnName,
-                                                                     nextGenFinishCellNum, false).size();
+                                                getNumConnsToTarget(netConnName,
+                                                                     nextGenFinishCellNum);
                                         }
                                         else
                                         {
                                             numConnsOnFinishCell = project.generatedNetworkConnections.
-                                                getTargetCellIndices(netConnName,
-                                                                     nextGenFinishCellNum, false).size();
+                                                getNumConnsFromSource(netConnName,
+                                                                     nextGenFinishCellNum);
 
                                         }
 
-                                        logger.logComment("numConnsOnFinishCell: " + numConnsOnFinishCell);
+                                        if (logger.isEnabled()) logger.logComment("numConnsOnFinishCell: " + numConnsOnFinishCell);
 
                                         if ( (numConnsOnFinishCell + 1) <= connConds.getMaxNumInitPerFinishCell())
                                         {
-                                            logger.logComment("There are not more than: " +
+                                            if (logger.isEnabled()) logger.logComment("There are not more than: " +
                                                               connConds.getMaxNumInitPerFinishCell()
                                                               + " src conns on finish cell " + nextGenFinishCellNum);
 
@@ -1114,7 +1273,7 @@ public class MorphBasedConnGenerator extends Thread
                                         }
                                         else
                                         {
-                                            logger.logComment("There are already: " + numConnsOnFinishCell +
+                                            if (logger.isEnabled()) logger.logComment("There are already: " + numConnsOnFinishCell +
                                                               " src conns on tgt cell " + nextGenFinishCellNum);
 
                                             if (!finCellsMaxedOut.contains(nextGenFinishCellNum))
@@ -1151,47 +1310,28 @@ public class MorphBasedConnGenerator extends Thread
                                                 if (absGenStartSynPosition.distance(enclosingSphere.getCentre()) - enclosingSphere.getRadius() <= bestDistanceSoFar)
                                                 {
 
-                                                    if (connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET)
-                                                    {
-                                                        bestPointOnGenFinishCell
-                                                            = CellTopologyHelper.getClosestPostSynapticTerminalLocation(
-                                                                genFinishCellInstance,
-                                                                synTypeNames,
-                                                                posnStartSynapseRelToFinishCell,
-                                                                connConds.getPrePostAllowedLoc());
-                                                    }
-                                                    else
-                                                    {
-                                                        bestPointOnGenFinishCell
-                                                            = CellTopologyHelper.getClosestPreSynapticTerminalLocation(
-                                                                genFinishCellInstance,
-                                                                synTypeNames,
-                                                                posnStartSynapseRelToFinishCell,
-                                                                connConds.getPrePostAllowedLoc());
-
-                                                    }
+                                                    // Post synaptic location if SOURCE_TO_TARGET, pre synaptic otherwise
+                                                    bestPointOnGenFinishCell
+                                                        = finishSegmentIndex.getClosestLocation(posnStartSynapseRelToFinishCell);
 
                                                     if (bestPointOnGenFinishCell == null)
                                                     {
                                                         GuiUtils.showErrorMessage(logger,
                                                                                   "Error getting synaptic location on cell of type " +
                                                                                   genFinishCellInstance.toString()+", netConn: "+this.netConnName+"", null, null);
-                                                        return;
+                                                        return false;
                                                     }
 
                                                     SynapticConnectionEndPoint tempGenFinishEndpoint =
                                                         new SynapticConnectionEndPoint(bestPointOnGenFinishCell, nextGenFinishCellNum);
 
-                                                       float distToThisPoint = CellTopologyHelper.getSynapticEndpointsDistance(
-                                                                project,
-                                                                genStartCellGroup,
-                                                                new SynapticConnectionEndPoint(genStartConnPoint,
-                                                                genStartCellNumber),
-                                                                genFinishCellGroup,
-                                                                tempGenFinishEndpoint,
-                                                                maxMin.getDimension());
+                                                       float distToThisPoint = distances.getDistance(genStartCellNumber,
+                                                           genStartConnPoint,
+                                                           tempGenFinishEndpoint.cellNumber,
+                                                           tempGenFinishEndpoint.location,
+                                                           maxMin.getDimension());
 
-                                                    logger.logComment("Distance to that point: " + distToThisPoint);
+                                                    if (logger.isEnabled()) logger.logComment("Distance to that point: " + distToThisPoint);
 
                                                     if (distToThisPoint < bestDistanceSoFar)
                                                     {
@@ -1220,7 +1360,7 @@ public class MorphBasedConnGenerator extends Thread
                                 && genFinishConnPoint != null
                                 && finCellsMaxedOut.size()<numberInGenFinishCellGroup)
                             {
-                                logger.logComment("Generated a synaptic point for cell number " +
+                                if (logger.isEnabled()) logger.logComment("Generated a synaptic point for cell number " +
                                                   genFinishCellNumber + ": " +genFinishConnPoint.toString());
 
                                 ArrayList<ConnSpecificProps> props = new ArrayList<ConnSpecificProps>();
@@ -1239,15 +1379,11 @@ public class MorphBasedConnGenerator extends Thread
                                             if (!synProp.getWeightsGenerator().isSomaToSoma()) {
 
 
-                                                float distRadial = CellTopologyHelper.getSynapticEndpointsDistance(
-                                                            project,
-                                                            genStartCellGroup,
-                                                            new SynapticConnectionEndPoint(genStartConnPoint,
-                                                            genStartCellNumber),
-                                                            genFinishCellGroup,
-                                                            new SynapticConnectionEndPoint(genFinishConnPoint,
-                                                            genFinishCellNumber),
-                                                            MaxMinLength.RADIAL);
+                                                float distRadial = distances.getDistance(genStartCellNumber,
+                                                    genStartConnPoint,
+                                                    genFinishCellNumber,
+                                                    genFinishConnPoint,
+                                                    MaxMinLength.RADIAL);
 
                                                 csp.weight = synProp.getWeightsGenerator().getNextNumber(distRadial);
                                                 //System.out.println("csp.weight: " + csp.weight + ", dist " + distRadial);
@@ -1257,13 +1393,11 @@ public class MorphBasedConnGenerator extends Thread
                                             else
                                             {
 
-                                                Point3f absoluteStartPoint = project.generatedCellPositions.getOneCellPosition(genStartCellGroup, genStartCellNumber);
-                                                Point3f absoluteEndPoint = project.generatedCellPositions.getOneCellPosition(genFinishCellGroup, genFinishCellNumber);
-
-                                                absoluteStartPoint.add(sourceSomaPosition); //add the displacement of the soma referred to the cell axes
-                                                absoluteEndPoint.add(targetSomaPosition);
-
-                                                float somaConnDistance =  absoluteStartPoint.distance(absoluteEndPoint);
+                                                // the displacement of the soma referred to the cell axes is added to the cell positions
+                                                float somaConnDistance = distances.getOffsetsDistance(genStartCellNumber,
+                                                    sourceSomaPosition,
+                                                    genFinishCellNumber,
+                                                    targetSomaPosition);
 
                                                 csp.weight = synProp.getWeightsGenerator().getNextNumber(somaConnDistance);
                                                 //System.out.println(synProp.getWeightsGenerator());
@@ -1290,8 +1424,7 @@ public class MorphBasedConnGenerator extends Thread
 
                                 if (connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET)
                                 {
-                                    project.generatedNetworkConnections.addSynapticConnection(netConnName,
-                                        GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                    addConnection(rangeConns,
                                         genStartCellNumber,
                                         genStartConnPoint.getSegmentId(),
                                         genStartConnPoint.getFractAlong(),
@@ -1303,8 +1436,7 @@ public class MorphBasedConnGenerator extends Thread
                                 }
                                 else
                                 {
-                                    project.generatedNetworkConnections.addSynapticConnection(netConnName,
-                                        GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                    addConnection(rangeConns,
                                         genFinishCellNumber,
                                         genFinishConnPoint.getSegmentId(),
                                         genFinishConnPoint.getFractAlong(),
@@ -1329,17 +1461,130 @@ public class MorphBasedConnGenerator extends Thread
                                             genStartCellInstance.toString(), null);
                         }
                     }
-                    logger.logComment("Finished creating the " + numberConnections + " conns for cell number: " +
+                    if (logger.isEnabled()) logger.logComment("Finished creating the " + numberConnections + " conns for cell number: " +
                                       genStartCellNumber);
                 }
             }
-            logger.logComment("Finished looking at all " + numberInGenStartCellGroup + " cells in group: " +
-                              genStartCellGroup);
+            finally
+            {
+                if (randomStream != null)
+                    ProjectManager.setThreadRandomGenerator(null);
+            }
+            return true;
+        }
 
-            if (myReportInterface != null) myReportInterface.majorStepComplete();
 
-            netConnCompleted(netConnName);
+        /**
+         * Generates the connections with random numbers from streams based on the seed, the name of the
+         * net conn and the range of cells, so that the result doesn't depend on the number of threads.
+         * If the connections from one start cell don't depend on those from the others (i.e. no max number
+         * per finish cell and no check on recurrent connections), the ranges are generated in parallel
+         * and the connections added in order of range afterwards.
+         * @return false if generation has been stopped, or there was a problem generating the connections
+         */
+        private boolean generateReproducibly()
+        {
+            final int netConnId = netConnName.hashCode();
+
+            boolean independentCells = connConds.getMaxNumInitPerFinishCell() == Integer.MAX_VALUE
+                                       && !connConds.isNoRecurrent();
 
+            if (!independentCells)
+            {
+                if (logger.isEnabled()) logger.logComment("Conns in "+netConnName+" depend on those already generated, so using one range for all cells");
+
+                return generateConnsForCells(0, numberInGenStartCellGroup, ProjectManager.createRandomStream(netConnId, 0), null);
+            }
+
+            int numRanges = (numberInGenStartCellGroup + CELLS_PER_RANGE - 1) / CELLS_PER_RANGE;
+
+            if (logger.isEnabled()) logger.logComment("Generating "+netConnName+" in "+numRanges+" ranges of up to "+CELLS_PER_RANGE+" cells");
+
+            ArrayList<Callable<NetConnectionStore>> rangeTasks = new ArrayList<Callable<NetConnectionStore>>(numRanges);
+
+            for (int range = 0; range < numRanges; range++)
+            {
+                final int rangeId = range;
+                final int firstCell = range * CELLS_PER_RANGE;
+                final int lastCell = Math.min(firstCell + CELLS_PER_RANGE, numberInGenStartCellGroup);
+
+                rangeTasks.add(new Callable<NetConnectionStore>()
+                {
+                    public NetConnectionStore call()
+                    {
+                        NetConnectionStore rangeConns = new NetConnectionStore();
+
+                        if (!generateConnsForCells(firstCell, lastCell, ProjectManager.createRandomStream(netConnId, rangeId), rangeConns))
+                            return null;
+
+                        return rangeConns;
+                    }
+                });
+            }
+
+            try
+            {
+                List<Future<NetConnectionStore>> results = rangePool.invokeAll(rangeTasks);
+
+                for (Future<NetConnectionStore> result: results)
+                {
+                    NetConnectionStore rangeConns = result.get();
+
+                    if (rangeConns == null)
+                        return false;
+
+                    project.generatedNetworkConnections.addSynapticConnections(netConnName, rangeConns);
+                }
+            }
+            catch (InterruptedException ex)
+            {
+                GuiUtils.showErrorMessage(logger, "Error when generating "+ netConnName, ex, null);
+                return false;
+            }
+            catch (ExecutionException ex)
+            {
+                GuiUtils.showErrorMessage(logger, "Error when generating "+ netConnName, ex.getCause(), null);
+                return false;
+            }
+            return true;
+        }
+
+
+        private void addConnection(NetConnectionStore rangeConns,
+                                   int sourceCellNumber,
+                                   int sourceCellSegmentIndex,
+                                   float sourceCellDisplacement,
+                                   int targetCellNumber,
+                                   int targetCellSegmentIndex,
+                                   float targetCellDisplacement,
+                                   float apPropDelay,
+                                   ArrayList<ConnSpecificProps> props)
+        {
+            if (rangeConns != null)
+            {
+                rangeConns.addConnection(GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                         sourceCellNumber,
+                                         sourceCellSegmentIndex,
+                                         sourceCellDisplacement,
+                                         targetCellNumber,
+                                         targetCellSegmentIndex,
+                                         targetCellDisplacement,
+                                         apPropDelay,
+                                         props);
+            }
+            else
+            {
+                project.generatedNetworkConnections.addSynapticConnection(netConnName,
+                                                                          GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                                                          sourceCellNumber,
+                                                                          sourceCellSegmentIndex,
+                                                                          sourceCellDisplacement,
+                                                                          targetCellNumber,
+                                                                          targetCellSegmentIndex,
+                                                                          targetCellDisplacement,
+                                                                          apPropDelay,
+                                                                          props);
+            }
         }
     }
 
@@ -1375,7 +1620,7 @@ public class MorphBasedConnGenerator extends Thread
 
         }
 
-        logger.logComment("Sending: "+ generationReport);
+        if (logger.isEnabled()) logger.logComment("Sending: "+ generationReport);
         if (myReportInterface!=null)
         {
             myReportInterface.giveGenerationReport(generationReport.toString(),
@@ -1390,7 +1635,7 @@ public class MorphBasedConnGenerator extends Thread
 
         Project project = Project.loadProject(new File("../nC_projects/Speed/Speed.ncx"),null);
 
-        logger.logComment("Loading proj: "+ project);
+        if (logger.isEnabled()) logger.logComment("Loading proj: "+ project);
 
         ProjectManager pm = new ProjectManager(null, null);
 
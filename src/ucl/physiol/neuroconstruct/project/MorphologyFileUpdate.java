@@ -144,9 +144,16 @@ public class MorphologyFileUpdate
         }
 
 
-        FileWriter fw = new FileWriter(morphFile);
-        fw.write(newFileString.toString());
-        fw.close();
+        lineReader.close();
+
+        // Only rewritten if something was replaced, so the time of the file (and so its
+        // MorphologyCache) isn't changed each time the project is opened
+        if (userWarned)
+        {
+            FileWriter fw = new FileWriter(morphFile);
+            fw.write(newFileString.toString());
+            fw.close();
+        }
 
         return true;
     }
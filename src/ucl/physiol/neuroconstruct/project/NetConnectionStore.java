@@ -0,0 +1,306 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.util.*;
+
+
+/**
+ * Column oriented storage for the individual synaptic connections of a single
+ * network connection. Each connection is identified by its index (in order of
+ * addition), and the connections from each source cell and to each target cell
+ * are indexed as they are added, so per cell queries take time proportional to
+ * the number of connections on that cell rather than the size of the net conn.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class NetConnectionStore
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size = 0;
+
+    private int[] connectionTypes = new int[INITIAL_CAPACITY];
+
+    private int[] sourceCells = new int[INITIAL_CAPACITY];
+    private int[] sourceSegments = new int[INITIAL_CAPACITY];
+    private float[] sourceFracts = new float[INITIAL_CAPACITY];
+
+    private int[] targetCells = new int[INITIAL_CAPACITY];
+    private int[] targetSegments = new int[INITIAL_CAPACITY];
+    private float[] targetFracts = new float[INITIAL_CAPACITY];
+
+    private float[] apPropDelays = new float[INITIAL_CAPACITY];
+
+    /*
+     * Only allocated when a connection with specific props is added. Entry i holds the props
+     * of connection i, with connections added before the first props padded with null
+     */
+    private ArrayList<ArrayList<ConnSpecificProps>> props = null;
+
+    /*
+     * Row i holds the indices of the connections from source cell i, in order of addition.
+     * Only the first numFromSource[i] entries of each row are valid.
+     */
+    private int[][] connsFromSource = new int[0][];
+    private int[] numFromSource = new int[0];
+
+    private int[][] connsToTarget = new int[0][];
+    private int[] numToTarget = new int[0];
+
+
+    public NetConnectionStore()
+    {
+    }
+
+
+    /**
+     * Adds a connection to the store
+     * @return the index of the new connection
+     */
+    public int addConnection(int connectionType,
+                             int sourceCellNumber,
+                             int sourceCellSegmentIndex,
+                             float sourceCellDisplacement,
+                             int targetCellNumber,
+                             int targetCellSegmentIndex,
+                             float targetCellDisplacement,
+                             float apPropDelay,
+                             ArrayList<ConnSpecificProps> connProps)
+    {
+        if (size == sourceCells.length)
+        {
+            ensureCapacity(size * 2);
+        }
+
+        int index = size;
+
+        connectionTypes[index] = connectionType;
+        sourceCells[index] = sourceCellNumber;
+        sourceSegments[index] = sourceCellSegmentIndex;
+        sourceFracts[index] = sourceCellDisplacement;
+        targetCells[index] = targetCellNumber;
+        targetSegments[index] = targetCellSegmentIndex;
+        targetFracts[index] = targetCellDisplacement;
+        apPropDelays[index] = apPropDelay;
+
+        if (connProps != null)
+        {
+            if (props == null)
+            {
+                props = new ArrayList<ArrayList<ConnSpecificProps>>(sourceCells.length);
+            }
+            while (props.size() < index)
+            {
+                props.add(null);
+            }
+            props.add(connProps);
+        }
+
+        if (sourceCellNumber >= numFromSource.length)
+        {
+            connsFromSource = growRows(connsFromSource, sourceCellNumber + 1);
+            numFromSource = Arrays.copyOf(numFromSource, connsFromSource.length);
+        }
+        connsFromSource[sourceCellNumber] = appendToRow(connsFromSource[sourceCellNumber], numFromSource[sourceCellNumber], index);
+        numFromSource[sourceCellNumber]++;
+
+        if (targetCellNumber >= numToTarget.length)
+        {
+            connsToTarget = growRows(connsToTarget, targetCellNumber + 1);
+            numToTarget = Arrays.copyOf(numToTarget, connsToTarget.length);
+        }
+        connsToTarget[targetCellNumber] = appendToRow(connsToTarget[targetCellNumber], numToTarget[targetCellNumber], index);
+        numToTarget[targetCellNumber]++;
+
+        size++;
+
+        return index;
+    }
+
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getConnectionType(int index)
+    {
+        return connectionTypes[index];
+    }
+
+    public int getSourceCell(int index)
+    {
+        return sourceCells[index];
+    }
+
+    public int getSourceSegment(int index)
+    {
+        return sourceSegments[index];
+    }
+
+    public float getSourceFract(int index)
+    {
+        return sourceFracts[index];
+    }
+
+    public int getTargetCell(int index)
+    {
+        return targetCells[index];
+    }
+
+    public int getTargetSegment(int index)
+    {
+        return targetSegments[index];
+    }
+
+    public float getTargetFract(int index)
+    {
+        return targetFracts[index];
+    }
+
+    public float getApPropDelay(int index)
+    {
+        return apPropDelays[index];
+    }
+
+    /**
+     * @return the connection specific props for this connection, or null if there are none
+     */
+    public ArrayList<ConnSpecificProps> getProps(int index)
+    {
+        if (props == null || index >= props.size()) return null;
+        return props.get(index);
+    }
+
+
+    public int getNumConnsFromSource(int sourceCellNumber)
+    {
+        if (sourceCellNumber < 0 || sourceCellNumber >= numFromSource.length) return 0;
+        return numFromSource[sourceCellNumber];
+    }
+
+    public int getNumConnsToTarget(int targetCellNumber)
+    {
+        if (targetCellNumber < 0 || targetCellNumber >= numToTarget.length) return 0;
+        return numToTarget[targetCellNumber];
+    }
+
+
+    /**
+     * @return the indices of the connections from this source cell, in order of addition
+     */
+    public int[] getConnIndicesFromSource(int sourceCellNumber)
+    {
+        int num = getNumConnsFromSource(sourceCellNumber);
+        if (num == 0) return new int[0];
+        return Arrays.copyOf(connsFromSource[sourceCellNumber], num);
+    }
+
+    /**
+     * @return the indices of the connections to this target cell, in order of addition
+     */
+    public int[] getConnIndicesToTarget(int targetCellNumber)
+    {
+        int num = getNumConnsToTarget(targetCellNumber);
+        if (num == 0) return new int[0];
+        return Arrays.copyOf(connsToTarget[targetCellNumber], num);
+    }
+
+
+    /**
+     * Checks for a connection from source to target, searching whichever of the
+     * two cells has fewer connections
+     */
+    public boolean areConnected(int sourceCellNumber, int targetCellNumber)
+    {
+        int numFrom = getNumConnsFromSource(sourceCellNumber);
+        int numTo = getNumConnsToTarget(targetCellNumber);
+
+        if (numFrom == 0 || numTo == 0) return false;
+
+        if (numFrom <= numTo)
+        {
+            int[] row = connsFromSource[sourceCellNumber];
+            for (int i = 0; i < numFrom; i++)
+            {
+                if (targetCells[row[i]] == targetCellNumber) return true;
+            }
+        }
+        else
+        {
+            int[] row = connsToTarget[targetCellNumber];
+            for (int i = 0; i < numTo; i++)
+            {
+                if (sourceCells[row[i]] == sourceCellNumber) return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void ensureCapacity(int capacity)
+    {
+        connectionTypes = Arrays.copyOf(connectionTypes, capacity);
+        sourceCells = Arrays.copyOf(sourceCells, capacity);
+        sourceSegments = Arrays.copyOf(sourceSegments, capacity);
+        sourceFracts = Arrays.copyOf(sourceFracts, capacity);
+        targetCells = Arrays.copyOf(targetCells, capacity);
+        targetSegments = Arrays.copyOf(targetSegments, capacity);
+        targetFracts = Arrays.copyOf(targetFracts, capacity);
+        apPropDelays = Arrays.copyOf(apPropDelays, capacity);
+    }
+
+    private static int[][] growRows(int[][] rows, int minLength)
+    {
+        return Arrays.copyOf(rows, Math.max(minLength, rows.length * 2));
+    }
+
+    private static int[] appendToRow(int[] row, int num, int value)
+    {
+        if (row == null)
+        {
+            row = new int[4];
+        }
+        else if (num == row.length)
+        {
+            row = Arrays.copyOf(row, num * 2);
+        }
+        row[num] = value;
+        return row;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "NetConnectionStore with "+size+" connections";
+    }
+
+}
@@ -32,7 +32,9 @@ import ucl.physiol.neuroconstruct.utils.GeneralUtils;
 
 
 /**
- * Single position record
+ * Single position record. The records of generated cells are views of the cell group's
+ * store in GeneratedCellPositions: the public fields are set from the store when the record
+ * is created, and changes to the node id or initial potential are written to the store.
  *
  * @author Padraig Gleeson
  *  
@@ -57,6 +59,11 @@ public class PositionRecord
 
     private float initV = NO_INIT_V;
 
+    /*
+     * The store this is a view of, or null for a record which isn't part of GeneratedCellPositions
+     */
+    private CellGroupPositionStore store = null;
+
     public PositionRecord(int cellNumber, float x_pos, float y_pos, float z_pos)
     {
         this.cellNumber = cellNumber;
@@ -64,6 +71,15 @@ public class PositionRecord
         this.y_pos = y_pos;
         this.z_pos = z_pos;
     }
+
+    PositionRecord(CellGroupPositionStore store, int cellNumber)
+    {
+        this.store = store;
+        this.cellNumber = cellNumber;
+        this.x_pos = store.x[cellNumber];
+        this.y_pos = store.y[cellNumber];
+        this.z_pos = store.z[cellNumber];
+    }
     
     @Override
     public Object clone()
@@ -73,7 +89,7 @@ public class PositionRecord
                                                this.x_pos,
                                                this.y_pos,
                                                this.z_pos);
-        pr.nodeId = this.nodeId;
+        pr.nodeId = this.getNodeId();
         
         return pr;
     }
@@ -88,22 +104,22 @@ public class PositionRecord
     public String toString()
     {
         String initVInfo = "";
-        if (initV!=NO_INIT_V)
-            initVInfo = "; initial v: "+initV;
+        if (hasUniqueInitV())
+            initVInfo = "; initial v: "+getInitV();
 
-        if (nodeId == NO_NODE_ID) return "Cell: [" + cellNumber + "] (" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo;
-        return "Cell: [" + cellNumber + "] (" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo+"; node id: "+nodeId;
+        if (getNodeId() == NO_NODE_ID) return "Cell: [" + cellNumber + "] (" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo;
+        return "Cell: [" + cellNumber + "] (" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo+"; node id: "+getNodeId();
     }
     
     
     public String toHtmlString()
     {
         String initVInfo = "";
-        if (initV!=NO_INIT_V)
-            initVInfo = "; initial v: "+initV;
+        if (hasUniqueInitV())
+            initVInfo = "; initial v: "+getInitV();
 
-        if (nodeId == NO_NODE_ID) return "Cell " + cellNumber + ": "+GeneralUtils.getBold("(" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo, true);
-        return "Cell: [" + cellNumber + "] "+GeneralUtils.getBold("(" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo, true)+"; node id: "+GeneralUtils.getBold(nodeId, true) ;
+        if (getNodeId() == NO_NODE_ID) return "Cell " + cellNumber + ": "+GeneralUtils.getBold("(" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo, true);
+        return "Cell: [" + cellNumber + "] "+GeneralUtils.getBold("(" + x_pos + ", " + y_pos + ", " + z_pos + ")"+initVInfo, true)+"; node id: "+GeneralUtils.getBold(getNodeId(), true) ;
     }
 
     /*
@@ -128,29 +144,52 @@ public class PositionRecord
     
     public int getNodeId()
     {
+        if (store!=null) return store.nodeIds[cellNumber];
         return nodeId;
     }
     
     public void setNodeId(int nodeId)
     {
+        if (store!=null) store.nodeIds[cellNumber] = nodeId;
         this.nodeId = nodeId;
     }
 
     public float getInitV()
     {
+        if (store!=null) return store.initVs[cellNumber];
         return initV;
     }
 
     public boolean hasUniqueInitV()
     {
-        return initV!=NO_INIT_V;
+        return getInitV()!=NO_INIT_V;
     }
 
     public void setInitV(float initV)
     {
+        if (store!=null) store.initVs[cellNumber] = initV;
         this.initV = initV;
     }
 
+    /**
+     * Views of the same generated cell are equal. Other records are only equal to themselves
+     */
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (store==null || !(obj instanceof PositionRecord)) return this==obj;
+
+        PositionRecord other = (PositionRecord)obj;
+        return store==other.store && cellNumber==other.cellNumber;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        if (store==null) return super.hashCode();
+        return System.identityHashCode(store)*31 + cellNumber;
+    }
+
     
     
     public static void main(String[] args)
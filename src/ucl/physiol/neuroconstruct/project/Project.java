@@ -29,6 +29,7 @@ package ucl.physiol.neuroconstruct.project;
 import java.beans.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.swing.event.*;
 
@@ -488,404 +489,479 @@ public class Project implements TableModelListener
 
             cellMechDirs = GeneralUtils.reorderAlphabetically(cellMechDirs, true);
 
+            ArrayList<CellMechanismLoadTask> mechTasks = new ArrayList<CellMechanismLoadTask>();
+
             for (int i = 0; i < cellMechDirs.length; i++)
             {
                 if (cellMechDirs[i].isDirectory() && !GeneralUtils.isVersionControlDir(cellMechDirs[i]))
                 {
-                    Properties cellMechProps = new Properties();
-                    File propsFile = new File(cellMechDirs[i], CellMechanismHelper.PROPERTIES_FILENAME);
+                    mechTasks.add(new CellMechanismLoadTask(cellMechDirs[i], proj));
+                }
+            }
 
-                    //System.out.println("propsFile: "+propsFile.getAbsolutePath());
+            runLoadTasks(mechTasks);
 
-                    try
-                    {
-                        cellMechProps.loadFromXML(new FileInputStream(propsFile));
-                        String implMethod = cellMechProps.getProperty(CellMechanismHelper.PROP_IMPL_METHOD);
-                        
-                        logger.logComment("Channel mech: "+ cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_NAME)
-                            +", type: "+ cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_TYPE));
+            // Added in the same (alphabetical) order as if they had been loaded one at a time
+            for (CellMechanismLoadTask task: mechTasks)
+            {
+                task.showErrors();
 
-                        if (implMethod.equals(CellMechanism.CHANNELML_BASED_CELL_MECHANISM))
-                        {
-                            ChannelMLCellMechanism cmlcm = new ChannelMLCellMechanism();
+                if (task.loaded != null)
+                {
+                    proj.cellMechanismInfo.addCellMechanism(task.loaded);
+                }
+            }
+        }
 
-                            cmlcm.initPropsFromPropsFile(propsFile);
 
-                            try
-                            {
-                                cmlcm.initialise(proj, false);
 
-                               logger.logComment("CML Channel mech: "+ cmlcm.toString());
-                            }
-                            catch (XMLMechanismException ex1)
-                            {
-                                GuiUtils.showErrorMessage(logger,
-                                                          "Error creating implementation of Cell Mechanism: " +
-                                                          cmlcm.getInstanceName(),
-                                                          ex1,
-                                                          null);
-                            }
+        try
+        {
+            // this is to make sure all the tables which have just been populated
+            // have time to send tableChanged notifications before the status of the
+            // project is changed
+            Thread.sleep(200);
+        }
+        catch (InterruptedException ex)
+        {
+            //ex.printStackTrace();
+        }
 
-                            proj.cellMechanismInfo.addCellMechanism(cmlcm);
+        logger.logComment("Ensuring the sim config info is up to date...");
+        proj.simConfigInfo.validateStoredSimConfigs(proj);
 
-                        }
-                        if (implMethod.equals(CellMechanism.SBML_BASED_CELL_MECHANISM))
-                        {
-                            SBMLCellMechanism sbmlCm = new SBMLCellMechanism();
+        logger.logComment("<> <> <> Populating the cellManager with the cell morphology file data...");
 
-                            sbmlCm.initPropsFromPropsFile(propsFile);
+        File[] contents
+            = ProjectStructure.getMorphologiesDir(proj.getProjectFile().getParentFile()).listFiles();
 
-                            try
-                            {
-                                sbmlCm.initialise(proj, false);
+        if (contents != null)
+        {
+            ArrayList<CellTypeLoadTask> cellTasks = new ArrayList<CellTypeLoadTask>();
 
-                               logger.logComment("SBML Channel mech: "+ sbmlCm.toString());
-                            }
-                            catch (XMLMechanismException ex1)
-                            {
-                                GuiUtils.showErrorMessage(logger,
-                                                          "Error creating implementation of Cell Mechanism: " +
-                                                          sbmlCm.getInstanceName(),
-                                                          ex1,
-                                                          null);
-                            }
+            for (int i = 0; i < contents.length; i++)
+            {
+                if (!isCellTypeFile(contents[i]))
+                    continue;
 
-                            proj.cellMechanismInfo.addCellMechanism(sbmlCm);
+                // This may need to ask the user, so isn't done on the pool's threads. If the
+                // cache is up to date the file has been checked already.
+                if (contents[i].getName().endsWith(ProjectStructure.getJavaXMLFileExtension()) &&
+                    !MorphologyCache.isUpToDate(contents[i]))
+                {
+                    try
+                    {
+                        userAgreedUpdate = MorphologyFileUpdate.updateMorphologyFile(contents[i]);
+                    }
+                    catch (Exception ex3)
+                    {
+                        throw new ProjectFileParsingException(
+                            "Problem while attempting to check the version of the morphology file", ex3);
+                    }
 
-                        }
-                        else if(implMethod.equals(CellMechanism.NEUROML2_BASED_CELL_MECHANISM))
-                        {
-                            NeuroML2Component nml2Cm = new NeuroML2Component();
+                    if (!userAgreedUpdate)
+                    {
+                        logger.logComment("User cancelled update...");
+                        return null;
+                    }
+                }
+                cellTasks.add(new CellTypeLoadTask(contents[i]));
+            }
 
-                            nml2Cm.initPropsFromPropsFile(propsFile);
+            runLoadTasks(cellTasks);
 
-                            try
-                            {
-                                nml2Cm.initialise(proj, false);
+            for (CellTypeLoadTask task: cellTasks)
+            {
+                task.showErrors();
 
-                               logger.logComment("NML 2 Channel mech: "+ nml2Cm.toString());
-                            }
-                            catch (XMLMechanismException ex1)
-                            {
-                                GuiUtils.showErrorMessage(logger,
-                                                          "Error creating implementation of Cell Mechanism: " +
-                                                          nml2Cm.getInstanceName(),
-                                                          ex1,
-                                                          null);
-                            }
+                Cell cellGenerated = task.loaded;
+                String fileName = task.file.getName();
 
-                            proj.cellMechanismInfo.addCellMechanism(nml2Cm);
+                try
+                {
+                    if (fileName.endsWith(ProjectStructure.getMorphMLFileExtension()) ||
+                        fileName.endsWith(ProjectStructure.getJavaXMLFileExtension()))
+                    {
+                        // to cope with a legacy method for storing channels
+                        CellTopologyHelper.updateChannelMechanisms(cellGenerated, proj);
+                    }
+                    proj.cellManager.addCellType(cellGenerated);
+                }
+                catch (NamingException ex2)
+                {
+                    GuiUtils.showErrorMessage(logger, "Problem with morphology file: " + task.file, ex2, null);
+                }
 
-                        }
-                        else if (implMethod.equals(CellMechanism.ABSTRACTED_CELL_MECHANISM) ||
-                                 implMethod.equals(CellMechanism.FILE_BASED_CELL_MECHANISM))
-                        {
-                            String mechType = cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_TYPE);
-                            AbstractedCellMechanism acm = null;
+                logger.logComment("Loaded: " + cellGenerated);
+            }
+        }
 
-                            File internalPropsFile = new File(cellMechDirs[i],
-                                                              CellMechanismHelper.INTERNAL_PROPS_FILENAME);
+        proj.myStatus = Project.PROJECT_SAVED;
 
-                            if (implMethod.equals(CellMechanism.FILE_BASED_CELL_MECHANISM))
-                            {
-                                FileBasedMembraneMechanism fmm = new FileBasedMembraneMechanism();
+        return proj;
+    }
 
-                                fmm.specifyMechanismType(cellMechProps.getProperty(CellMechanismHelper.
-                                    PROP_CELL_MECH_TYPE));
+    private static boolean isCellTypeFile(File file)
+    {
+        String name = file.getName();
+
+        return name.endsWith(ProjectStructure.getMorphMLFileExtension()) ||
+               name.endsWith(ProjectStructure.getNeuroML1FileExtension()) ||
+               name.endsWith(ProjectStructure.getNeuroML2FileExtension()) ||
+               name.endsWith(ProjectStructure.getJavaXMLFileExtension()) ||
+               name.endsWith(ProjectStructure.getJavaObjFileExtension()) ||
+               name.endsWith(".obj"); /** @todo remove... */
+    }
 
-                                acm = fmm;
-                            }
-                            else
-                            {
-                                if (mechType.equals(CellMechanism.CHANNEL_MECHANISM))
-                                {
-                                    logger.logComment("Size of file: " + internalPropsFile.length());
-
-                                    if (internalPropsFile.length() > 4000) // very hack like way to distinguish a pass mech from a big hh mech file
-                                    {
-                                        //acm = new HHMembraneMechanism();
-                                    }
-                                    else
-                                    {
-                                        acm = new PassiveMembraneMechanism();
-                                    }
-                                }
-                                else if (mechType.equals(CellMechanism.SYNAPTIC_MECHANISM))
-                                {
-                                    acm = new Exp2SynMechanism(); // Not always, but usually...
-                                }
-                            }
 
-                            acm.setInstanceName(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_NAME));
-                            acm.setDescription(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_DESCRIPTION));
-                            acm.setMechanismModel(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_MODEL));
-                            acm.setMechanismType(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_TYPE));
-                            acm.setDefaultInstanceName(cellMechProps.getProperty(CellMechanismHelper.
-                                PROP_CELL_MECH_DEFAULT_NAME));
+    /*
+     * Runs the tasks on a pool of GeneralProperties.getNumProcessorstoUse() threads, returning
+     * when all have finished
+     */
+    private static void runLoadTasks(ArrayList<? extends LoadTask> tasks)
+    {
+        if (tasks.isEmpty()) return;
 
-                            acm.setPlotInfoFile(cellMechProps.getProperty(CellMechanismHelper.PROP_PLOT_INFO_FILE));
+        ForkJoinPool pool = new ForkJoinPool(GeneralProperties.getNumProcessorstoUse());
+        try
+        {
+            pool.invokeAll(tasks);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
 
-                            //System.out.println("Int props file: "+internalPropsFile.getAbsolutePath());
+        for (LoadTask task: tasks)
+        {
+            if (task.failure != null) throw task.failure;
+        }
+    }
 
-                            try
-                            {
-                                XMLDecoder d = new XMLDecoder(new BufferedInputStream(new FileInputStream(
-                                    internalPropsFile)));
 
-                                Object nextParams = null;
+    /*
+     * Loads one cell type or cell mechanism when opening a project. Errors aren't shown on the
+     * pool's threads, but stored until showErrors() is called after all the tasks have finished,
+     * so they're reported in the same order as if the files had been loaded one at a time.
+     */
+    private static abstract class LoadTask implements Callable<Object>
+    {
+        File file;
 
-                                try
-                                {
-                                    while ( (nextParams = d.readObject()) != null)
-                                    {
-                                        InternalPhysicalParameter ipp = (InternalPhysicalParameter) nextParams;
-                                        //System.out.println("Param found: "+ipp);
-                                        boolean success = acm.setParameter(ipp.getParameterName(), ipp.getValue());
+        ArrayList<String> errorMessages = new ArrayList<String>();
+        ArrayList<Throwable> errors = new ArrayList<Throwable>();
 
-                                        if (!success)
-                                        {
-                                            acm.addNewParameter(ipp.getParameterName(), ipp.getParameterDescription(),
-                                                                ipp.getDefaultValue(), ipp.getUnits());
+        RuntimeException failure = null;
 
-                                            success = acm.setParameter(ipp.getParameterName(), ipp.getValue());
+        LoadTask(File file)
+        {
+            this.file = file;
+        }
 
-                                            logger.logComment("Tried adding new param & setting: " + success);
+        abstract void load();
 
-                                        }
-                                    }
-                                }
-                                catch (ArrayIndexOutOfBoundsException ex5)
-                                {
-                                    logger.logComment("End of objects...");
-                                }
-                            }
-                            catch (IOException ex4)
-                            {
-                                GuiUtils.showErrorMessage(logger,
-                                                          "Error loading information on Cell Mechanism in directory: " +
-                                                          cellMechDirs[i], ex4, null);
-                            }
-                            catch (CellMechanismException ex4)
-                            {
-                                GuiUtils.showErrorMessage(logger,
-                                                          "Error setting information on Cell Mechanism in directory: " +
-                                                          cellMechDirs[i], ex4, null);
-                            }
+        public Object call()
+        {
+            try
+            {
+                load();
+            }
+            catch (RuntimeException e)
+            {
+                failure = e;
+            }
+            return null;
+        }
 
-                            Enumeration names = cellMechProps.propertyNames();
+        void addError(String message, Throwable t)
+        {
+            errorMessages.add(message);
+            errors.add(t);
+        }
 
-                            while (names.hasMoreElements())
-                            {
-                                String nextPropName = (String) names.nextElement();
-                                //System.out.println("nextPropName: " + nextPropName);
+        void showErrors()
+        {
+            for (int i = 0; i < errors.size(); i++)
+            {
+                GuiUtils.showErrorMessage(logger, errorMessages.get(i), errors.get(i), null);
+            }
+        }
+    }
 
-                                if (nextPropName.endsWith(CellMechanismHelper.PROP_SIMENV_SUFFIX))
-                                {
-                                    String simEnv = nextPropName.substring(0, nextPropName.lastIndexOf(" "));
-                                    //System.out.println("-- Impl: "+ simEnv);
 
-                                    acm.specifyNewImplFile(simEnv, cellMechProps.getProperty(nextPropName));
-                                }
-                            }
-                            acm.printDetails();
+    private static class CellTypeLoadTask extends LoadTask
+    {
+        Cell loaded = null;
 
-                            proj.cellMechanismInfo.addCellMechanism(acm);
+        CellTypeLoadTask(File morphFile)
+        {
+            super(morphFile);
+        }
 
-                        }
-                    }
-                    catch (IOException ex4)
-                    {
-                        GuiUtils.showErrorMessage(logger,
-                                                  "Error loading information on Cell Mechanism in directory: " +
-                                                  cellMechDirs[i], ex4, null);
+        /*
+         * Uses the binary cache of the file if it's up to date, otherwise loads the file
+         * and updates the cache. Java serialized files aren't cached, as they're already binary
+         */
+        void load()
+        {
+            logger.logComment("Reading Cell Type info from: " + file);
 
-                    }
+            String name = file.getName();
+            try
+            {
+                if (name.endsWith(ProjectStructure.getJavaObjFileExtension()) || name.endsWith(".obj"))
+                {
+                    loaded = MorphMLConverter.loadFromJavaObjFile(file);
+                    return;
+                }
+
+                loaded = MorphologyCache.loadCell(file);
 
+                if (loaded != null)
+                    return;
+
+                if (name.endsWith(ProjectStructure.getJavaXMLFileExtension()))
+                {
+                    loaded = MorphMLConverter.loadFromJavaXMLFile(file);
+                }
+                else
+                {
+                    loaded = new MorphMLConverter().loadFromMorphologyFile(file, null);
                 }
 
+                if (loaded != null)
+                {
+                    MorphologyCache.saveCell(loaded, file);
+                }
+            }
+            catch (MorphologyException ex1)
+            {
+                if (name.endsWith(ProjectStructure.getJavaObjFileExtension()) || name.endsWith(".obj"))
+                    addError(ex1.getLocalizedMessage(), ex1);
+                else
+                    addError("Problem loading the Cell morphology information in: " + file, ex1);
             }
         }
+    }
 
 
+    private static class CellMechanismLoadTask extends LoadTask
+    {
+        Project proj;
 
-        try
-        {
-            // this is to make sure all the tables which have just been populated
-            // have time to send tableChanged notifications before the status of the
-            // project is changed
-            Thread.sleep(200);
-        }
-        catch (InterruptedException ex)
+        CellMechanism loaded = null;
+
+        CellMechanismLoadTask(File cellMechDir, Project proj)
         {
-            //ex.printStackTrace();
+            super(cellMechDir);
+            this.proj = proj;
         }
 
-        logger.logComment("Ensuring the sim config info is up to date...");
-        proj.simConfigInfo.validateStoredSimConfigs(proj);
+        void load()
+        {
+            File cellMechDir = file;
 
-        logger.logComment("<> <> <> Populating the cellManager with the cell morphology file data...");
+            Properties cellMechProps = new Properties();
+            File propsFile = new File(cellMechDir, CellMechanismHelper.PROPERTIES_FILENAME);
 
-        File[] contents
-            = ProjectStructure.getMorphologiesDir(proj.getProjectFile().getParentFile()).listFiles();
+            //System.out.println("propsFile: "+propsFile.getAbsolutePath());
 
-        if (contents != null)
-        {
-            for (int i = 0; i < contents.length; i++)
+            try
             {
-                if (contents[i].getName().endsWith(ProjectStructure.getMorphMLFileExtension()))
+                cellMechProps.loadFromXML(new FileInputStream(propsFile));
+                String implMethod = cellMechProps.getProperty(CellMechanismHelper.PROP_IMPL_METHOD);
+                
+                logger.logComment("Channel mech: "+ cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_NAME)
+                    +", type: "+ cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_TYPE));
+
+                if (implMethod.equals(CellMechanism.CHANNELML_BASED_CELL_MECHANISM))
                 {
-                    logger.logComment("Reading Cell Type info from: " + contents[i]);
+                    ChannelMLCellMechanism cmlcm = new ChannelMLCellMechanism();
+
+                    cmlcm.initPropsFromPropsFile(propsFile);
 
-                    Cell cellGenerated = null;
-                    MorphMLConverter morphMLConverter = new MorphMLConverter();
                     try
                     {
-                        cellGenerated = morphMLConverter.loadFromMorphologyFile(contents[i], null);
+                        cmlcm.initialise(proj, false);
 
-                        logger.logComment(CellTopologyHelper.printShortDetails(cellGenerated));
+                       logger.logComment("CML Channel mech: "+ cmlcm.toString());
                     }
-                    catch (MorphologyException ex1)
+                    catch (XMLMechanismException ex1)
                     {
-                        GuiUtils.showErrorMessage(logger,
-                                                  "Problem loading the Cell morphology information in: " + contents[i],
-                                                  ex1, null);
+                        addError("Error creating implementation of Cell Mechanism: " +
+                                 cmlcm.getInstanceName(), ex1);
                     }
 
+                    loaded = cmlcm;
+
+                }
+                if (implMethod.equals(CellMechanism.SBML_BASED_CELL_MECHANISM))
+                {
+                    SBMLCellMechanism sbmlCm = new SBMLCellMechanism();
+
+                    sbmlCm.initPropsFromPropsFile(propsFile);
+
                     try
                     {
-                        // to cope with a legacy method for storing channels
-                        CellTopologyHelper.updateChannelMechanisms(cellGenerated, proj);
+                        sbmlCm.initialise(proj, false);
 
-                        proj.cellManager.addCellType(cellGenerated);
+                       logger.logComment("SBML Channel mech: "+ sbmlCm.toString());
                     }
-                    catch (NamingException ex2)
+                    catch (XMLMechanismException ex1)
                     {
-                        GuiUtils.showErrorMessage(logger, "Problem with morphology file: " + contents[i], ex2, null);
+                        addError("Error creating implementation of Cell Mechanism: " +
+                                 sbmlCm.getInstanceName(), ex1);
                     }
 
-                    logger.logComment("Loaded: " + cellGenerated);
+                    loaded = sbmlCm;
 
-                    logger.logComment(CellTopologyHelper.printShortDetails(cellGenerated));
                 }
-                else if(contents[i].getName().endsWith(ProjectStructure.getNeuroML1FileExtension()) ||
-                        contents[i].getName().endsWith(ProjectStructure.getNeuroML2FileExtension()))
+                else if(implMethod.equals(CellMechanism.NEUROML2_BASED_CELL_MECHANISM))
                 {
-                    logger.logComment("Reading Cell Type info from: " + contents[i]);
+                    NeuroML2Component nml2Cm = new NeuroML2Component();
+
+                    nml2Cm.initPropsFromPropsFile(propsFile);
 
-                    Cell cellGenerated = null;
-                    MorphMLConverter morphMLConverter = new MorphMLConverter();
                     try
                     {
-                        cellGenerated = morphMLConverter.loadFromMorphologyFile(contents[i], null);
+                        nml2Cm.initialise(proj, false);
 
-                        logger.logComment(CellTopologyHelper.printShortDetails(cellGenerated));
+                       logger.logComment("NML 2 Channel mech: "+ nml2Cm.toString());
                     }
-                    catch (MorphologyException ex1)
+                    catch (XMLMechanismException ex1)
                     {
-                        GuiUtils.showErrorMessage(logger,
-                                                  "Problem loading the Cell morphology information in: " + contents[i],
-                                                  ex1, null);
+                        addError("Error creating implementation of Cell Mechanism: " +
+                                 nml2Cm.getInstanceName(), ex1);
                     }
 
-                    try
+                    loaded = nml2Cm;
+
+                }
+                else if (implMethod.equals(CellMechanism.ABSTRACTED_CELL_MECHANISM) ||
+                         implMethod.equals(CellMechanism.FILE_BASED_CELL_MECHANISM))
+                {
+                    String mechType = cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_TYPE);
+                    AbstractedCellMechanism acm = null;
+
+                    File internalPropsFile = new File(cellMechDir,
+                                                      CellMechanismHelper.INTERNAL_PROPS_FILENAME);
+
+                    if (implMethod.equals(CellMechanism.FILE_BASED_CELL_MECHANISM))
                     {
-                        proj.cellManager.addCellType(cellGenerated);
+                        FileBasedMembraneMechanism fmm = new FileBasedMembraneMechanism();
+
+                        fmm.specifyMechanismType(cellMechProps.getProperty(CellMechanismHelper.
+                            PROP_CELL_MECH_TYPE));
+
+                        acm = fmm;
                     }
-                    catch (NamingException ex2)
+                    else
                     {
-                        GuiUtils.showErrorMessage(logger, "Problem with morphology file: " + contents[i], ex2, null);
+                        if (mechType.equals(CellMechanism.CHANNEL_MECHANISM))
+                        {
+                            logger.logComment("Size of file: " + internalPropsFile.length());
+
+                            if (internalPropsFile.length() > 4000) // very hack like way to distinguish a pass mech from a big hh mech file
+                            {
+                                //acm = new HHMembraneMechanism();
+                            }
+                            else
+                            {
+                                acm = new PassiveMembraneMechanism();
+                            }
+                        }
+                        else if (mechType.equals(CellMechanism.SYNAPTIC_MECHANISM))
+                        {
+                            acm = new Exp2SynMechanism(); // Not always, but usually...
+                        }
                     }
 
-                    logger.logComment("Loaded: " + cellGenerated);
+                    acm.setInstanceName(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_NAME));
+                    acm.setDescription(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_DESCRIPTION));
+                    acm.setMechanismModel(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_MODEL));
+                    acm.setMechanismType(cellMechProps.getProperty(CellMechanismHelper.PROP_CELL_MECH_TYPE));
+                    acm.setDefaultInstanceName(cellMechProps.getProperty(CellMechanismHelper.
+                        PROP_CELL_MECH_DEFAULT_NAME));
 
-                    logger.logComment(CellTopologyHelper.printShortDetails(cellGenerated));
-                }
+                    acm.setPlotInfoFile(cellMechProps.getProperty(CellMechanismHelper.PROP_PLOT_INFO_FILE));
 
-                else if(contents[i].getName().endsWith(ProjectStructure.getJavaXMLFileExtension()))
-                {
-                    logger.logComment("Reading Cell Type info from: " + contents[i]);
+                    //System.out.println("Int props file: "+internalPropsFile.getAbsolutePath());
 
-                    Cell cellGenerated = null;
                     try
                     {
+                        XMLDecoder d = new XMLDecoder(new BufferedInputStream(new FileInputStream(
+                            internalPropsFile)));
+
+                        Object nextParams = null;
+
                         try
                         {
-                            userAgreedUpdate = MorphologyFileUpdate.updateMorphologyFile(contents[i]);
-                        }
-                        catch (Exception ex3)
-                        {
-                            throw new ProjectFileParsingException(
-                                "Problem while attempting to check the version of the morphology file", ex3);
-                        }
+                            while ( (nextParams = d.readObject()) != null)
+                            {
+                                InternalPhysicalParameter ipp = (InternalPhysicalParameter) nextParams;
+                                //System.out.println("Param found: "+ipp);
+                                boolean success = acm.setParameter(ipp.getParameterName(), ipp.getValue());
+
+                                if (!success)
+                                {
+                                    acm.addNewParameter(ipp.getParameterName(), ipp.getParameterDescription(),
+                                                        ipp.getDefaultValue(), ipp.getUnits());
 
-                        if (!userAgreedUpdate)
+                                    success = acm.setParameter(ipp.getParameterName(), ipp.getValue());
+
+                                    logger.logComment("Tried adding new param & setting: " + success);
+
+                                }
+                            }
+                        }
+                        catch (ArrayIndexOutOfBoundsException ex5)
                         {
-                            logger.logComment("User cancelled update...");
-                            return null;
+                            logger.logComment("End of objects...");
                         }
-                        cellGenerated = MorphMLConverter.loadFromJavaXMLFile(contents[i]);
                     }
-                    catch (MorphologyException ex1)
+                    catch (IOException ex4)
                     {
-                        GuiUtils.showErrorMessage(logger,
-                                                  "Problem loading the Cell morphology information in: " + contents[i],
-                                                  ex1, null);
+                        addError("Error loading information on Cell Mechanism in directory: " +
+                                 cellMechDir, ex4);
                     }
-                    try
+                    catch (CellMechanismException ex4)
                     {
-                        // to cope with a legacy method for storing channels
-                        CellTopologyHelper.updateChannelMechanisms(cellGenerated, proj);
-
-                        proj.cellManager.addCellType(cellGenerated);
+                        addError("Error setting information on Cell Mechanism in directory: " +
+                                 cellMechDir, ex4);
                     }
-                    catch (NamingException ex2)
-                    {
-                        GuiUtils.showErrorMessage(logger, "Problem with morphology file: " + contents[i], ex2, null);
-                    }
-
-                    logger.logComment("Loaded: " + cellGenerated);
-                }
 
-                else if(contents[i].getName().endsWith(ProjectStructure.getJavaObjFileExtension()) ||
-                    contents[i].getName().endsWith(".obj")) /** @todo remove... */
-                {
-                    //System.out.println("----Reading Cell Type info from: " + contents[i]);
+                    Enumeration names = cellMechProps.propertyNames();
 
-                    Cell cellGenerated = null;
-                    try
+                    while (names.hasMoreElements())
                     {
-                        cellGenerated = MorphMLConverter.loadFromJavaObjFile(contents[i]);
+                        String nextPropName = (String) names.nextElement();
+                        //System.out.println("nextPropName: " + nextPropName);
 
-                        //System.out.println("----cellGenerated: " + cellGenerated.getAllSegments());
-                        //System.out.println("----cellGenerated: " + CellTopologyHelper.printDetails(cellGenerated, null) );
-                        
-                    }
-                    catch (MorphologyException ex1)
-                    {
-                        GuiUtils.showErrorMessage(logger,
-                                                  ex1.getLocalizedMessage(),
-                                                  ex1, null);
-                    }
-                    try
-                    {
-                        proj.cellManager.addCellType(cellGenerated);
-                    }
-                    catch (NamingException ex2)
-                    {
-                        GuiUtils.showErrorMessage(logger, "Problem with morphology file: " + contents[i], ex2, null);
+                        if (nextPropName.endsWith(CellMechanismHelper.PROP_SIMENV_SUFFIX))
+                        {
+                            String simEnv = nextPropName.substring(0, nextPropName.lastIndexOf(" "));
+                            //System.out.println("-- Impl: "+ simEnv);
+
+                            acm.specifyNewImplFile(simEnv, cellMechProps.getProperty(nextPropName));
+                        }
                     }
+                    acm.printDetails();
 
-                    logger.logComment("Loaded: " + cellGenerated);
-                }
+                    loaded = acm;
 
+                }
             }
-        }
+            catch (IOException ex4)
+            {
+                addError("Error loading information on Cell Mechanism in directory: " +
+                         cellMechDir, ex4);
 
-        proj.myStatus = Project.PROJECT_SAVED;
+            }
 
-        return proj;
+        }
     }
 
+
     private void initialiseInternalObjects()
     {
         logger.logComment("Internal project objects initialisind...");
@@ -1080,7 +1156,7 @@ public class Project implements TableModelListener
             while (netConns.hasNext())
             {
             String mc = netConns.next();
-            int numHere = generatedNetworkConnections.getSynapticConnections(mc).size();
+            int numHere = generatedNetworkConnections.getNumberSynapticConnections(mc);
             if (numHere>0)
             notes.append("Network connection: "+mc+" contains "+numHere+" individual synaptic connections\n");
             
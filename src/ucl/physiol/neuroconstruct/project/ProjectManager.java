@@ -95,6 +95,12 @@ public class ProjectManager implements GenerationReport
 
     private static Random randomGenerator = new Random();
     private static long currentSeed = 1;
+
+    /*
+     * Generator used in place of randomGenerator by a thread which is generating
+     * from its own stream, see setThreadRandomGenerator()
+     */
+    private static final ThreadLocal<Random> threadRandomGenerator = new ThreadLocal<Random>();
     
     private boolean currentlyGenerating = false;
     
@@ -518,6 +524,8 @@ public class ProjectManager implements GenerationReport
         plotSaveGenerator = null;
         cellInitialiser = null;
 
+        NeuroML2DocumentCache.clear();
+
         System.gc();
         System.gc();
 
@@ -888,7 +896,7 @@ public class ProjectManager implements GenerationReport
             while (netConns.hasNext())
             {
                 String mc = netConns.next();
-                int numHere = project.generatedNetworkConnections.getSynapticConnections(mc).size();
+                int numHere = project.generatedNetworkConnections.getNumberSynapticConnections(mc);
                 if (numHere>0)
                 notes.append("Network connection: "+mc+" contains "+numHere+" individual synaptic connections\n");
 
@@ -1601,11 +1609,57 @@ public class ProjectManager implements GenerationReport
         return activeProject.projProperties;
     }
 
+    /**
+     * Gets the random number generator to use for generation. This is the generator
+     * seeded with the current seed, unless the calling thread has been given its own
+     * stream with setThreadRandomGenerator()
+     */
     public static Random getRandomGenerator()
     {
+        Random threadRandom = threadRandomGenerator.get();
+        if (threadRandom != null) return threadRandom;
+
         return randomGenerator;
     }
 
+    /**
+     * Sets the generator returned by getRandomGenerator() for the calling thread only.
+     * Set to null to go back to using the shared generator.
+     */
+    public static void setThreadRandomGenerator(Random random)
+    {
+        if (random == null)
+            threadRandomGenerator.remove();
+        else
+            threadRandomGenerator.set(random);
+    }
+
+    /**
+     * Creates a generator for an independent stream of random numbers, seeded from the
+     * current seed and the stream ids, so the same ids give the same numbers for a given
+     * seed, regardless of which thread uses the stream or in which order
+     */
+    public static Random createRandomStream(long... streamIds)
+    {
+        long seed = mixSeed(currentSeed);
+
+        for (long id: streamIds)
+        {
+            seed = mixSeed(seed ^ mixSeed(id + 0x9E3779B97F4A7C15L));
+        }
+        return new Random(seed);
+    }
+
+    /*
+     * Finalisation step of SplitMix64, so that nearby seeds/ids give unrelated streams
+     */
+    private static long mixSeed(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
     public static long getRandomGeneratorSeed()
     {
         return currentSeed;
@@ -94,6 +94,8 @@ public class ProjectStructure
 
     private static final String javaObjFileExtension = ".java.ser";
 
+    private static final String morphCacheFileExtension = ".cache";
+
     private static final String oldZippedProjectFileExtension = ".neuro.zip";
 
     private static final String newZippedProjectFileExtension = ".ncx.zip";
@@ -122,6 +124,10 @@ public class ProjectStructure
         + System.getProperty("file.separator")
         + "nmodlEditor.recent";
 
+    private static final String morphCacheDir = userSettingsDir
+        + System.getProperty("file.separator")
+        + "morphologyCache";
+
 
 
     private static String nCprojectsDir = "nC_projects";
@@ -1018,6 +1024,15 @@ public class ProjectStructure
         return nmodlEditRecentFilesFilename;
     }
 
+    /**
+     * @return The directory in the user's settings for the binary caches of morphology files,
+     * kept out of the project directories
+     */
+    public static File getMorphCacheDir()
+    {
+        return new File(morphCacheDir);
+    }
+
 
     public static String getOldProjectFileExtension()
     {
@@ -1183,6 +1198,14 @@ public class ProjectStructure
         return javaObjFileExtension;
     }
 
+    /**
+     * @return The extension added to the name of a morphology file for its binary cache
+     */
+    public static String getMorphCacheFileExtension()
+    {
+        return morphCacheFileExtension;
+    }
+
 
 
     public static String getOldProjectZipFileExtension()
@@ -30,6 +30,7 @@ import java.awt.*;
 import java.beans.*;
 import java.io.*;
 import java.util.*;
+import java.util.List;
 
 import javax.swing.table.*;
 
@@ -291,7 +292,7 @@ public class RegionsInfo extends AbstractTableModel
         
         if (project!=null)
         {
-            ArrayList<PositionRecord> allPositions = project.generatedCellPositions.getAllPositionRecords();
+            List<PositionRecord> allPositions = project.generatedCellPositions.getAllPositionRecords();
 
             for(PositionRecord pos: allPositions)
             {
@@ -136,7 +136,7 @@ public class VolumeBasedConnGenerator extends Thread
 
             String volConnName =  volNetConnsInSimConfig.get(j);
             logger.logComment("\n");
-            logger.logComment("------------     Looking at Connection: " + volConnName);
+            if (logger.isEnabled()) logger.logComment("------------     Looking at Connection: " + volConnName);
 
             this.myReportInterface.giveUpdate("Generating Net Conn: " + volConnName+"...");
 
@@ -147,10 +147,12 @@ public class VolumeBasedConnGenerator extends Thread
             String exp = project.volBasedConnsInfo.getInhomogenousExp(volConnName);
 
             EquationUnit inhomoExp = null;
+            CompiledExpression inhomoEval = null;
 
             try
             {
                 inhomoExp = Expression.parseExpression(exp, VolumeBasedConnGenerator.allowedVars);
+                inhomoEval = inhomoExp.compile(VolumeBasedConnGenerator.allowedVars);
 
             }
             catch (EquationException ex1)
@@ -159,6 +161,9 @@ public class VolumeBasedConnGenerator extends Thread
                 return;
             }
 
+            boolean uniformProb = inhomoExp.toString().equals("1");
+            double[] inhomoVals = new double[VolumeBasedConnGenerator.allowedVars.length];
+
             String[] synPropList = new String[synapticPropList.size()];
             for (int i = 0; i < synapticPropList.size(); i++)
             {
@@ -217,18 +222,21 @@ public class VolumeBasedConnGenerator extends Thread
 
             }
 
-            logger.logComment("There are "
-                              + numberInGenStartCellGroup
-                              + " cells in cell group: "
-                              + generationStartCellGroup
-                              + ", and each will have connections given by: ("
-                              + connConds
-                              + ")");
-
-            logger.logComment("These will synapse with "
-                              + numberInGenFinishCellGroup
-                              + " cells in cell group "
-                              + generationFinishCellGroup);
+            if (logger.isEnabled())
+            {
+                logger.logComment("There are "
+                                  + numberInGenStartCellGroup
+                                  + " cells in cell group: "
+                                  + generationStartCellGroup
+                                  + ", and each will have connections given by: ("
+                                  + connConds
+                                  + ")");
+
+                logger.logComment("These will synapse with "
+                                  + numberInGenFinishCellGroup
+                                  + " cells in cell group "
+                                  + generationFinishCellGroup);
+            }
             
           
             Vector<AxonalConnRegion> allVolRegions = generationStartCellInstance.getAxonalArbours();
@@ -245,6 +253,12 @@ public class VolumeBasedConnGenerator extends Thread
                 }
             }
 
+            EndpointDistanceCalculator distances
+                = new EndpointDistanceCalculator(project,
+                                                 generationStartCellGroup,
+                                                 new SegmentDisplacementTable(generationStartCellInstance),
+                                                 generationFinishCellGroup,
+                                                 new SegmentDisplacementTable(generationFinishCellInstance));
 
             for (int genStartCellNumber = 0; genStartCellNumber < numberInGenStartCellGroup; genStartCellNumber++)
             {
@@ -257,7 +271,7 @@ public class VolumeBasedConnGenerator extends Thread
                         numberConnections = numberConnections +1;
                 }
 
-                logger.logComment("For cell number: " + genStartCellNumber + ", there will be " + numberConnections +
+                if (logger.isEnabled()) logger.logComment("For cell number: " + genStartCellNumber + ", there will be " + numberConnections +
                                   " connections");
 
                 ArrayList<Integer> finishCellsMaxedOut = new ArrayList<Integer>(numberInGenFinishCellGroup);
@@ -273,7 +287,7 @@ public class VolumeBasedConnGenerator extends Thread
 
                     boolean continueSingleConnGeneration = true;
 
-                    logger.logComment("-----   Connection number " + p + " for cell number: " + genStartCellNumber);
+                    if (logger.isEnabled()) logger.logComment("-----   Connection number " + p + " for cell number: " + genStartCellNumber);
 
                     SegmentLocation genStartConnPoint = null;
 
@@ -305,22 +319,28 @@ public class VolumeBasedConnGenerator extends Thread
                             genStartCellNumber, true);
                     }
 
-                    logger.logComment("genStartConnPoint: " + genStartConnPoint);
-                    logger.logComment("genFinCellsConnToThis: " + genFinCellsConnToThis);
+                    if (logger.isEnabled())
+                    {
+                        logger.logComment("genStartConnPoint: " + genStartConnPoint);
+                        logger.logComment("genFinCellsConnToThis: " + genFinCellsConnToThis);
+                    }
 
                     if (genFinCellsConnToThis.size() == numberInGenFinishCellGroup &&
                         connConds.isOnlyConnectToUniqueCells())
                     {
-                        logger.logComment("There are the max number of connections at the opposite cell group, " +
+                        if (logger.isEnabled()) logger.logComment("There are the max number of connections at the opposite cell group, " +
                                           "and each one has to be unique...");
                         continueSingleConnGeneration = false;
                     }
                     else
                     {
-                        logger.logComment("There are currently "
-                                          + genFinCellsConnToThis.size()
-                                          + " unique connection cells in the opposite cell group: ");
-                        logger.logComment(genFinCellsConnToThis.toString());
+                        if (logger.isEnabled())
+                        {
+                            logger.logComment("There are currently "
+                                              + genFinCellsConnToThis.size()
+                                              + " unique connection cells in the opposite cell group: ");
+                            logger.logComment(genFinCellsConnToThis.toString());
+                        }
                     }
 
                     if (genStartConnPoint == null)
@@ -339,7 +359,7 @@ public class VolumeBasedConnGenerator extends Thread
                         int genFinishCellNumber = -1;
 
                         logger.logComment("Linking will be done in completely random manner...");
-                        logger.logComment("Asking cell of type: " + generationFinishCellInstance.toString() +
+                        if (logger.isEnabled()) logger.logComment("Asking cell of type: " + generationFinishCellInstance.toString() +
                                           " for a synaptic location");
 
                         int numFailedAttempts = 0;
@@ -353,7 +373,7 @@ public class VolumeBasedConnGenerator extends Thread
                                && continueGeneration
                                && finishCellsMaxedOut.size()<numberInGenFinishCellGroup)
                         {
-                            logger.logComment("....   numFaliedAttempts: " + numFailedAttempts);
+                            if (logger.isEnabled()) logger.logComment("....   numFaliedAttempts: " + numFailedAttempts);
 
                             if (connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET)
                             {
@@ -369,7 +389,7 @@ public class VolumeBasedConnGenerator extends Thread
 
                             }
 
-                            logger.logComment("genFinishConnPoint: " + genFinishConnPoint);
+                            if (logger.isEnabled()) logger.logComment("genFinishConnPoint: " + genFinishConnPoint);
 
                             if (genFinishConnPoint == null)
                             {
@@ -390,7 +410,7 @@ public class VolumeBasedConnGenerator extends Thread
 
                                     genFinishCellNumber = ProjectManager.getRandomGenerator().nextInt(numberInGenFinishCellGroup);
 
-                                    logger.logComment("genFinishCellNumber: " + genFinishCellNumber);
+                                    if (logger.isEnabled()) logger.logComment("genFinishCellNumber: " + genFinishCellNumber);
 
                                     //if (!numFinishCellsTried.contains(genFinishCellNumber))
                                     //    numFinishCellsTried.add(genFinishCellNumber);
@@ -398,29 +418,29 @@ public class VolumeBasedConnGenerator extends Thread
                                     int numConnsOnFinishCell = 0;
                                     if (connConds.getGenerationDirection() == ConnectivityConditions.SOURCE_TO_TARGET)
                                     {
-                                        numConnsOnFinishCell = project.generatedNetworkConnections.getSourceCellIndices(volConnName,
-                                            genFinishCellNumber, false).size();
+                                        numConnsOnFinishCell = project.generatedNetworkConnections.getNumConnsToTarget(volConnName,
+                                            genFinishCellNumber);
                                     }
                                     else
                                     {
-                                        numConnsOnFinishCell = project.generatedNetworkConnections.getTargetCellIndices(volConnName,
-                                            genFinishCellNumber, false).size();
+                                        numConnsOnFinishCell = project.generatedNetworkConnections.getNumConnsFromSource(volConnName,
+                                            genFinishCellNumber);
 
                                     }
 
-                                    logger.logComment("numConnsOnFinishCell: " + numConnsOnFinishCell);
+                                    if (logger.isEnabled()) logger.logComment("numConnsOnFinishCell: " + numConnsOnFinishCell);
 
 
                                     if ((numConnsOnFinishCell+1)<=connConds.getMaxNumInitPerFinishCell())
                                     {
-                                        logger.logComment("There are not more than: " + connConds.getMaxNumInitPerFinishCell()
+                                        if (logger.isEnabled()) logger.logComment("There are not more than: " + connConds.getMaxNumInitPerFinishCell()
                                                           + " src conns on finish cell " + genFinishCellNumber);
 
                                         satisfiesMaxPerFinish = true;
                                     }
                                     else
                                     {
-                                        logger.logComment("There are already: " + numConnsOnFinishCell
+                                        if (logger.isEnabled()) logger.logComment("There are already: " + numConnsOnFinishCell
                                                           + " src conns on tgt cell "+genFinishCellNumber);
 
                                         satisfiesMaxPerFinish = false;
@@ -484,7 +504,7 @@ public class VolumeBasedConnGenerator extends Thread
                                     Point3f absGenFinishSynPosition = new Point3f(absoluteGenFinishCellPosition);
                                     absGenFinishSynPosition.add(cellCoordsSynPointGenFinish);
 
-                                    logger.logComment("absGenFinishSynPosition: " + absGenFinishSynPosition);
+                                    if (logger.isEnabled()) logger.logComment("absGenFinishSynPosition: " + absGenFinishSynPosition);
 
                                     connectionDistance = absGenFinishSynPosition.distance(absGenStartSynPosition);
 
@@ -500,11 +520,11 @@ public class VolumeBasedConnGenerator extends Thread
 
                                     for (Region reg : translatedRegions)
                                     {
-                                        logger.logComment("Looking in region: " + reg);
+                                        if (logger.isEnabled()) logger.logComment("Looking in region: " + reg);
 
                                         if (reg.isPointInRegion(absGenFinishSynPosition))
                                         {
-                                            logger.logComment("Found point in region: " + reg);
+                                            if (logger.isEnabled()) logger.logComment("Found point in region: " + reg);
                                             foundOne = true;
                                         }
                                     }
@@ -522,68 +542,58 @@ public class VolumeBasedConnGenerator extends Thread
                                     {
                                         logger.logComment("Going to apply probability of connectivity...");
 
-                                        try
+                                        if (uniformProb)
                                         {
+                                            logger.logComment("Uniform prob of conn...");
+                                        }
+                                        else
+                                        {
+                                            if (logger.isEnabled()) logger.logComment("Nonuniform prob of conn given by: " + inhomoExp);
 
-                                            if (inhomoExp.toString().equals("1"))
-                                            {
-                                                logger.logComment("Uniform prob of conn...");
-                                            }
-                                            else
-                                            {
-                                                logger.logComment("Nonuniform prob of conn given by: " + inhomoExp);
-
-                                                Point3f synPosnRelToStartCell = new Point3f(absoluteGenFinishCellPosition);
-                                                synPosnRelToStartCell.sub(genStartCellPosition);
+                                            Point3f synPosnRelToStartCell = new Point3f(absoluteGenFinishCellPosition);
+                                            synPosnRelToStartCell.sub(genStartCellPosition);
 
-                                                logger.logComment("synPosnRelToStartCell: "+synPosnRelToStartCell);
+                                            if (logger.isEnabled()) logger.logComment("synPosnRelToStartCell: "+synPosnRelToStartCell);
 
-                                                float x = synPosnRelToStartCell.x;
-                                                float y = synPosnRelToStartCell.y;
-                                                float z = synPosnRelToStartCell.z;
+                                            float x = synPosnRelToStartCell.x;
+                                            float y = synPosnRelToStartCell.y;
+                                            float z = synPosnRelToStartCell.z;
 
-                                                float r = (float)Math.sqrt((x*x)+(y*y)+(z*z));
+                                            float r = (float)Math.sqrt((x*x)+(y*y)+(z*z));
 
-                                                Argument[] args = new Argument[]
-                                                    {new Argument("x", x),
-                                                    new Argument("y", y),
-                                                    new Argument("z", z),
-                                                    new Argument("r", r)};
+                                            inhomoVals[0] = x;
+                                            inhomoVals[1] = y;
+                                            inhomoVals[2] = z;
+                                            inhomoVals[3] = r;
 
-                                                double prob = inhomoExp.evaluateAt(args);
-                                                logger.logComment("Probability of conn: " + prob);
-                                                if (prob <= 0)
+                                            double prob = inhomoEval.evaluate(inhomoVals);
+                                            if (logger.isEnabled()) logger.logComment("Probability of conn: " + prob);
+                                            if (prob <= 0)
+                                            {
+                                                logger.logComment("Zero or negative prob, so rejecting...");
+                                                foundOne = false;
+                                            }
+                                            else if (prob >= 1)
+                                            {
+                                                logger.logComment("Prob >= 1, so accepting...");
+                                                foundOne = true;
+                                            }
+                                            else
+                                            {
+                                                float coin = ProjectManager.getRandomGenerator().nextFloat();
+                                                if (coin > prob)
                                                 {
-                                                    logger.logComment("Zero or negative prob, so rejecting...");
+                                                    if (logger.isEnabled()) logger.logComment("Coin said " + coin + " so rejecting");
                                                     foundOne = false;
                                                 }
-                                                else if (prob >= 1)
-                                                {
-                                                    logger.logComment("Prob >= 1, so accepting...");
-                                                    foundOne = true;
-                                                }
                                                 else
                                                 {
-                                                    float coin = ProjectManager.getRandomGenerator().nextFloat();
-                                                    if (coin > prob)
-                                                    {
-                                                        logger.logComment("Coin said " + coin + " so rejecting");
-                                                        foundOne = false;
-                                                    }
-                                                    else
-                                                    {
-                                                        logger.logComment("Coin said " + coin + " so accepting...");
-                                                        foundOne = true;
-                                                    }
+                                                    if (logger.isEnabled()) logger.logComment("Coin said " + coin + " so accepting...");
+                                                    foundOne = true;
                                                 }
-
-                                                logger.logComment("Equation evaluated as: " + inhomoExp.getNiceString());
                                             }
-                                        }
-                                        catch (EquationException ex1)
-                                        {
-                                            GuiUtils.showErrorMessage(logger, "Error evaluating expression: "+exp, ex1, null);
 
+                                            if (logger.isEnabled()) logger.logComment("Equation evaluated as: " + inhomoExp.getNiceString());
                                         }
                                     }
 
@@ -604,21 +614,20 @@ public class VolumeBasedConnGenerator extends Thread
                             && genFinishConnPoint != null
                             && finishCellsMaxedOut.size()<numberInGenFinishCellGroup)
                         {
-                            logger.logComment("Generated a synaptic point for cell number " +
-                                              genFinishCellNumber + ": ");
+                            if (logger.isEnabled())
+                            {
+                                logger.logComment("Generated a synaptic point for cell number " +
+                                                  genFinishCellNumber + ": ");
 
-                            logger.logComment(genFinishConnPoint.toString());
+                                logger.logComment(genFinishConnPoint.toString());
+                            }
 
                             ArrayList<ConnSpecificProps> props = new ArrayList<ConnSpecificProps> ();
                             
-                            float connDistance = CellTopologyHelper.getSynapticEndpointsDistance(
-                                            project,
-                                            generationStartCellGroup,
-                                            new SynapticConnectionEndPoint(genStartConnPoint,
-                                            genStartCellNumber),
-                                            generationFinishCellGroup,
-                                            new SynapticConnectionEndPoint(genFinishConnPoint,
-                                            genFinishCellNumber),
+                            float connDistance = distances.getDistance(genStartCellNumber,
+                                            genStartConnPoint,
+                                            genFinishCellNumber,
+                                            genFinishConnPoint,
                                             MaxMinLength.RADIAL);
                             
                             
@@ -648,13 +657,11 @@ public class VolumeBasedConnGenerator extends Thread
 
                                         } else {
 
-                                            Point3f absoluteStartPoint = project.generatedCellPositions.getOneCellPosition(generationStartCellGroup, genStartCellNumber);
-                                            Point3f absoluteEndPoint = project.generatedCellPositions.getOneCellPosition(generationFinishCellGroup, genFinishCellNumber);
-
-                                            absoluteStartPoint.add(sourceSomaPosition); //add the displacement of the soma referred to the cell axes
-                                            absoluteEndPoint.add(targetSomaPosition);
-
-                                            float somaConnDistance =  absoluteStartPoint.distance(absoluteEndPoint);
+                                            // the displacement of the soma referred to the cell axes is added to the cell positions
+                                            float somaConnDistance = distances.getOffsetsDistance(genStartCellNumber,
+                                                sourceSomaPosition,
+                                                genFinishCellNumber,
+                                                targetSomaPosition);
 
                                             csp.weight = synProp.getWeightsGenerator().getNextNumber(somaConnDistance);
                                             //System.out.println("csp.weight: " + csp.weight + ", dist " + somaConnDistance);
@@ -719,10 +726,10 @@ public class VolumeBasedConnGenerator extends Thread
                                         generationStartCellInstance.toString(), null);
                     }
                 }
-                logger.logComment("Finished creating the " + numberConnections + " conns for cell number: " +
+                if (logger.isEnabled()) logger.logComment("Finished creating the " + numberConnections + " conns for cell number: " +
                                   genStartCellNumber);
             }
-            logger.logComment("Finished looking at all " + numberInGenStartCellGroup + " cells in group: " +
+            if (logger.isEnabled()) logger.logComment("Finished looking at all " + numberInGenStartCellGroup + " cells in group: " +
                               generationStartCellGroup);
 
             if (myReportInterface!=null) myReportInterface.majorStepComplete();
@@ -828,7 +835,7 @@ public class VolumeBasedConnGenerator extends Thread
             System.out.println("Number of cells generated: "+ proj.generatedCellPositions.getNumberInAllCellGroups());
             for (String nc: proj.generatedNetworkConnections.getNamesNonEmptyNetConns())
             {
-                System.out.println("with "+ proj.generatedNetworkConnections.getSynapticConnections(nc).size()+" conns in "+ nc);
+                System.out.println("with "+ proj.generatedNetworkConnections.getNumberSynapticConnections(nc)+" conns in "+ nc);
             }
 
             
@@ -47,7 +47,7 @@ public abstract class CellChooser
 {
     static ClassLogger logger = new ClassLogger("CellChooser");
 
-    ArrayList<PositionRecord> cellPositions = null;
+    List<PositionRecord> cellPositions = null;
 
     String description = null;
 
@@ -88,7 +88,7 @@ public abstract class CellChooser
         return description;
     };
 
-    public void initialise(ArrayList<PositionRecord> cellPositions)
+    public void initialise(List<PositionRecord> cellPositions)
     {
         this.cellPositions = cellPositions;
         this.reinitialise();
@@ -0,0 +1,519 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.project.packing;
+
+import java.util.*;
+import java.util.concurrent.*;
+import javax.vecmath.*;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.j3D.*;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * Uniform grid of the cells placed so far by one or more packing adapters, used to check
+ * whether the finite volume segments of a new cell collide with those of existing cells.
+ * Each placed cell is bucketed on the centre of a sphere bounding all of its finite
+ * volume segments, so a query only runs the segment by segment check against cells whose
+ * bounding spheres could overlap that of the new cell.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class CellCollisionGrid
+{
+    private static ClassLogger logger = new ClassLogger("CellCollisionGrid");
+
+    /*
+     * Cells with a bounding radius greater than this many grid spacings are kept in a
+     * separate list and checked against every query
+     */
+    private static final int MAX_SPACINGS_PER_CELL = 4;
+
+    private static final float MIN_GRID_SPACING = 1;
+
+    private static final int LOCATIONS_PER_TASK = 256;
+
+    private float gridSpacing = -1;
+
+    private float maxGriddedRadius = 0;
+
+    private final HashMap<Long, ArrayList<PlacedCell>> grid = new HashMap<Long, ArrayList<PlacedCell>>();
+
+    private final ArrayList<PlacedCell> largeCells = new ArrayList<PlacedCell>();
+
+    private final IdentityHashMap<Cell, VolumeSegments> volumeSegmentsCache = new IdentityHashMap<Cell, VolumeSegments>();
+
+    private int size = 0;
+
+
+    public CellCollisionGrid()
+    {
+    }
+
+
+    /**
+     * Adds a cell at the given location. Cells without any finite volume segments
+     * can never collide, so are not stored
+     */
+    public void addCell(Point3f location, Cell cell)
+    {
+        PlacedCell placed = new PlacedCell(location, getVolumeSegments(cell));
+
+        if (placed.segs.numSegments == 0) return;
+
+        if (gridSpacing < 0 && !Float.isInfinite(placed.segs.boundingRadius))
+        {
+            gridSpacing = Math.max(MIN_GRID_SPACING, 2 * placed.segs.boundingRadius);
+            if (logger.isEnabled()) logger.logComment("Grid spacing set to: "+ gridSpacing);
+        }
+
+        if (isLarge(placed))
+        {
+            largeCells.add(placed);
+        }
+        else
+        {
+            long key = getKey(getIndex(placed.centreX), getIndex(placed.centreY), getIndex(placed.centreZ));
+            ArrayList<PlacedCell> bucket = grid.get(key);
+            if (bucket == null)
+            {
+                bucket = new ArrayList<PlacedCell>(4);
+                grid.put(key, bucket);
+            }
+            bucket.add(placed);
+            maxGriddedRadius = Math.max(maxGriddedRadius, placed.segs.boundingRadius);
+        }
+        size++;
+    }
+
+
+    /**
+     * Removes a cell previously added at the given location
+     * @return true if the cell was present
+     */
+    public boolean removeCell(Point3f location, Cell cell)
+    {
+        VolumeSegments segs = volumeSegmentsCache.get(cell);
+        if (segs == null || segs.numSegments == 0) return false;
+
+        PlacedCell placed = new PlacedCell(location, segs);
+
+        ArrayList<PlacedCell> list = null;
+        if (isLarge(placed))
+        {
+            list = largeCells;
+        }
+        else
+        {
+            list = grid.get(getKey(getIndex(placed.centreX), getIndex(placed.centreY), getIndex(placed.centreZ)));
+        }
+
+        if (list != null)
+        {
+            for (int i = 0; i < list.size(); i++)
+            {
+                PlacedCell other = list.get(i);
+                if (other.segs == segs && other.location.equals(location))
+                {
+                    list.remove(i);
+                    size--;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    public void clear()
+    {
+        grid.clear();
+        largeCells.clear();
+        volumeSegmentsCache.clear();
+        gridSpacing = -1;
+        maxGriddedRadius = 0;
+        size = 0;
+    }
+
+
+    /**
+     * @return the number of cells stored, i.e. those with finite volume segments
+     */
+    public int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * Checks whether the finite volume segments of newCell placed at suggestedLocation
+     * collide with those of any of the cells in the grid
+     */
+    public boolean doesCellCollide(Point3f suggestedLocation, Cell newCell)
+    {
+        if (size == 0) return false;
+
+        PlacedCell candidate = new PlacedCell(suggestedLocation, getVolumeSegments(newCell));
+
+        if (candidate.segs.numSegments == 0) return false;
+
+        for (PlacedCell existing: largeCells)
+        {
+            if (collides(existing, candidate)) return true;
+        }
+
+        if (grid.isEmpty()) return false;
+
+        float reach = candidate.segs.boundingRadius + maxGriddedRadius;
+
+        int minX = getIndex(candidate.centreX - reach);
+        int maxX = getIndex(candidate.centreX + reach);
+        int minY = getIndex(candidate.centreY - reach);
+        int maxY = getIndex(candidate.centreY + reach);
+        int minZ = getIndex(candidate.centreZ - reach);
+        int maxZ = getIndex(candidate.centreZ + reach);
+
+        double numBucketsInReach = ((double)maxX - minX + 1) * ((double)maxY - minY + 1) * ((double)maxZ - minZ + 1);
+
+        // Quicker to go through the occupied buckets than all those in reach
+        if (Float.isInfinite(reach) || numBucketsInReach > grid.size())
+        {
+            for (ArrayList<PlacedCell> bucket: grid.values())
+            {
+                for (PlacedCell existing: bucket)
+                {
+                    if (collides(existing, candidate)) return true;
+                }
+            }
+            return false;
+        }
+
+        for (int i = minX; i <= maxX; i++)
+        {
+            for (int j = minY; j <= maxY; j++)
+            {
+                for (int k = minZ; k <= maxZ; k++)
+                {
+                    ArrayList<PlacedCell> bucket = grid.get(getKey(i, j, k));
+                    if (bucket != null)
+                    {
+                        for (PlacedCell existing: bucket)
+                        {
+                            if (collides(existing, candidate)) return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Checks each of the locations as in doesCellCollide(), running the checks in parallel on the pool
+     * @return For each location, whether newCell placed there would collide with any cell in the grid
+     */
+    public boolean[] doCellsCollide(final List<Point3f> suggestedLocations,
+                                    final Cell newCell,
+                                    ForkJoinPool pool)
+    {
+        final boolean[] collide = new boolean[suggestedLocations.size()];
+
+        if (size == 0) return collide;
+
+        // Only the checks run in parallel, so fill the cache for the new cell first
+        getVolumeSegments(newCell);
+
+        pool.invoke(new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                checkLocations(suggestedLocations, newCell, collide, 0, collide.length);
+            }
+        });
+        return collide;
+    }
+
+    /*
+     * Splits the locations in [from, to) until there are few enough to check on one thread
+     */
+    private void checkLocations(final List<Point3f> suggestedLocations,
+                                final Cell newCell,
+                                final boolean[] collide,
+                                final int from,
+                                final int to)
+    {
+        if (to - from <= LOCATIONS_PER_TASK)
+        {
+            for (int i = from; i < to; i++)
+            {
+                collide[i] = doesCellCollide(suggestedLocations.get(i), newCell);
+            }
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+
+        ForkJoinTask.invokeAll(new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                checkLocations(suggestedLocations, newCell, collide, from, mid);
+            }
+        },
+        new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                checkLocations(suggestedLocations, newCell, collide, mid, to);
+            }
+        });
+    }
+
+
+    private boolean isLarge(PlacedCell placed)
+    {
+        return gridSpacing < 0 || placed.segs.boundingRadius > MAX_SPACINGS_PER_CELL * gridSpacing;
+    }
+
+    private int getIndex(float coord)
+    {
+        return (int)Math.floor(coord / gridSpacing);
+    }
+
+    private static long getKey(int i, int j, int k)
+    {
+        return (((long)(i & 0x1FFFFF)) << 42) | (((long)(j & 0x1FFFFF)) << 21) | (k & 0x1FFFFF);
+    }
+
+    private VolumeSegments getVolumeSegments(Cell cell)
+    {
+        VolumeSegments segs = volumeSegmentsCache.get(cell);
+        if (segs == null)
+        {
+            segs = new VolumeSegments(cell);
+            volumeSegmentsCache.put(cell, segs);
+        }
+        return segs;
+    }
+
+
+    /**
+     * Checks each finite volume segment of the candidate cell against each one of the
+     * existing cell, using the same criteria as the original per adapter check
+     */
+    private static boolean collides(PlacedCell mine, PlacedCell candidate)
+    {
+        float dx = mine.centreX - candidate.centreX;
+        float dy = mine.centreY - candidate.centreY;
+        float dz = mine.centreZ - candidate.centreZ;
+        float maxDist = mine.segs.boundingRadius + candidate.segs.boundingRadius;
+
+        if (dx*dx + dy*dy + dz*dz > maxDist*maxDist)
+            return false;
+
+        VolumeSegments newSegs = candidate.segs;
+        VolumeSegments mySegs = mine.segs;
+
+        Point3f realStartPosNew = new Point3f();
+        Point3f realEndPosNew = new Point3f();
+        Point3f realStartPosMine = new Point3f();
+        Point3f realEndPosMine = new Point3f();
+
+        for (int n = 0; n < newSegs.numSegments; n++)
+        {
+            realStartPosNew.set(newSegs.startPoints[n]);
+            realStartPosNew.add(candidate.location);
+            realEndPosNew.set(newSegs.endPoints[n]);
+            realEndPosNew.add(candidate.location);
+
+            for (int m = 0; m < mySegs.numSegments; m++)
+            {
+                /** @todo Redo this for all eventualities... */
+
+                realStartPosMine.set(mySegs.startPoints[m]);
+                realStartPosMine.add(mine.location);
+                realEndPosMine.set(mySegs.endPoints[m]);
+                realEndPosMine.add(mine.location);
+
+                // CASE: both segments are spherical...
+                if (mySegs.spherical[m] && newSegs.spherical[n])
+                {
+                    if (realStartPosMine.distance(realStartPosNew) < mySegs.radii[m] + newSegs.radii[n])
+                    {
+                        logger.logComment("2 Spherical collision");
+                        return true;
+                    }
+                }
+                // CASE: Only my segment is spherical
+                else if (mySegs.spherical[m])
+                {
+                    if (Utils3D.checkIntersectCylinderSphere(realStartPosMine,
+                                                             mySegs.radii[m],
+                                                             realStartPosNew,
+                                                             realEndPosNew,
+                                                             newSegs.radii[n]))
+                    {
+                        logger.logComment("Cylindrical collision");
+                        return true;
+                    }
+                }
+                // CASE: Both are cylindrical (or only the new one is spherical, which
+                // the original check also treated this way)
+                else
+                {
+                    // Check whether the spheres at the new segment start point
+                    // and end points collide with the cylinder of my segment.
+                    // Obviously not a perfect criterion, but will sufice in most cases.
+
+                    if (Utils3D.checkIntersectCylinderSphere(realStartPosNew,
+                                                             newSegs.startRadii[n],
+                                                             realStartPosMine,
+                                                             realEndPosMine,
+                                                             mySegs.radii[m]))
+                    {
+                        logger.logComment("Start point new collision");
+                        return true;
+                    }
+                    if (Utils3D.checkIntersectCylinderSphere(realEndPosNew,
+                                                             newSegs.radii[n],
+                                                             realStartPosMine,
+                                                             realEndPosMine,
+                                                             mySegs.radii[m]))
+                    {
+                        logger.logComment("End point new collision");
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+
+    private static class PlacedCell
+    {
+        Point3f location;
+        VolumeSegments segs;
+        float centreX, centreY, centreZ;
+
+        PlacedCell(Point3f location, VolumeSegments segs)
+        {
+            this.location = location;
+            this.segs = segs;
+            centreX = location.x + segs.centre.x;
+            centreY = location.y + segs.centre.y;
+            centreZ = location.z + segs.centre.z;
+        }
+    }
+
+
+    /**
+     * The finite volume segments of a cell (relative to the cell position), extracted once
+     */
+    private static class VolumeSegments
+    {
+        int numSegments;
+        Point3f[] startPoints;
+        Point3f[] endPoints;
+        float[] radii;
+        float[] startRadii;
+        boolean[] spherical;
+
+        /*
+         * Sphere around each segment's midpoint reaching its ends plus twice its larger radius.
+         * If the segment by segment checks above find a collision, the spheres of the two cells
+         * built from these must overlap.
+         */
+        Point3f centre = new Point3f();
+        float boundingRadius = 0;
+
+        VolumeSegments(Cell cell)
+        {
+            ArrayList<Segment> volSegs = new ArrayList<Segment>();
+
+            for (Segment segment: cell.getAllSegments())
+            {
+                if (segment.isFiniteVolume())
+                    volSegs.add(segment);
+            }
+
+            numSegments = volSegs.size();
+            startPoints = new Point3f[numSegments];
+            endPoints = new Point3f[numSegments];
+            radii = new float[numSegments];
+            startRadii = new float[numSegments];
+            spherical = new boolean[numSegments];
+
+            if (numSegments == 0) return;
+
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+            float maxX = -1 * Float.MAX_VALUE, maxY = -1 * Float.MAX_VALUE, maxZ = -1 * Float.MAX_VALUE;
+
+            for (int i = 0; i < numSegments; i++)
+            {
+                Segment seg = volSegs.get(i);
+                startPoints[i] = new Point3f(seg.getStartPointPosition());
+                endPoints[i] = new Point3f(seg.getEndPointPosition());
+                radii[i] = seg.getRadius();
+                startRadii[i] = seg.getSegmentStartRadius();
+                spherical[i] = seg.getSegmentShape() == Segment.SPHERICAL_SHAPE;
+
+                minX = Math.min(minX, Math.min(startPoints[i].x, endPoints[i].x));
+                minY = Math.min(minY, Math.min(startPoints[i].y, endPoints[i].y));
+                minZ = Math.min(minZ, Math.min(startPoints[i].z, endPoints[i].z));
+                maxX = Math.max(maxX, Math.max(startPoints[i].x, endPoints[i].x));
+                maxY = Math.max(maxY, Math.max(startPoints[i].y, endPoints[i].y));
+                maxZ = Math.max(maxZ, Math.max(startPoints[i].z, endPoints[i].z));
+            }
+
+            centre.set((minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2);
+
+            Point3f mid = new Point3f();
+
+            for (int i = 0; i < numSegments; i++)
+            {
+                float pad = 2 * Math.max(radii[i], startRadii[i]);
+
+                // A NaN radius cannot be bounded, so the cell is checked against everything
+                if (Float.isNaN(pad))
+                {
+                    boundingRadius = Float.POSITIVE_INFINITY;
+                    return;
+                }
+                mid.interpolate(startPoints[i], endPoints[i], 0.5f);
+
+                float reach = centre.distance(mid) + startPoints[i].distance(endPoints[i]) / 2 + pad;
+                boundingRadius = Math.max(boundingRadius, reach);
+            }
+        }
+    }
+
+}
@@ -27,10 +27,10 @@
 package ucl.physiol.neuroconstruct.project.packing;
 
 import java.util.*;
+import java.util.concurrent.*;
 import javax.vecmath.*;
 import ucl.physiol.neuroconstruct.cell.*;
 import ucl.physiol.neuroconstruct.utils.*;
-import ucl.physiol.neuroconstruct.j3D.*;
 import ucl.physiol.neuroconstruct.project.*;
 
 /**
@@ -53,11 +53,18 @@ public abstract class CellPackingAdapter
     protected String description = null;
     private Vector<Point3f> positionsAlreadyTaken = new Vector<Point3f>();
 
+    /*
+     * The cells at positionsAlreadyTaken, indexed for the collision checks
+     */
+    private CellCollisionGrid cellsAlreadyPlaced = new CellCollisionGrid();
+
     protected InternalParameter[] parameterList = null;
 
 
     public final static String OTHER_OVERLAP_POLICY = "Existing Group Overlap";
 
+    private static final int CANDIDATES_PER_TASK = 512;
+
     /**
      * Create a new CellPackingAdapter
      *
@@ -105,12 +112,13 @@ public abstract class CellPackingAdapter
     public void reset()
     {
         this.positionsAlreadyTaken.removeAllElements();
+        this.cellsAlreadyPlaced.clear();
     }
 
     public int getCurrentNumberPositions()
     {
         int num = positionsAlreadyTaken.size();
-        logger.logComment("There are "+num+" cells in this: "+ this.toString());
+        if (logger.isEnabled()) logger.logComment("There are "+num+" cells in this: "+ this.toString());
         return num;
     }
 
@@ -127,169 +135,182 @@ public abstract class CellPackingAdapter
      */
     public Point3f getNextPosition() throws CellPackingException
     {
-        logger.logComment("       +++++       getNextPosition called with cell: "+ myCell.getInstanceName()+" and adapter: "+ toString());
+        if (logger.isEnabled()) logger.logComment("       +++++       getNextPosition called with cell: "+ myCell.getInstanceName()+" and adapter: "+ toString());
         Point3f newPoint = generateNextPosition();
 
         this.positionsAlreadyTaken.add(newPoint);
+        this.cellsAlreadyPlaced.addCell(newPoint, myCell);
 
         return newPoint;
     }
 
     /**
-     * After this class has suggested a position, it may later be rejected,
-     * i.e. due to a collision with another cell in another region. The
-     * suggested position can be cancelled here.
-     *
-     * @param point Point3f of position
+     * Records a position generated by getAllPositionsInRegion() as taken, in the same way
+     * as one returned by getNextPosition()
      */
-    public void cancelPosition(Point3f point)
+    public void addPosition(Point3f point)
     {
-        logger.logComment("Position: "+ point +" being cancelled...");
-        boolean success = positionsAlreadyTaken.remove(point);
-        if (success) logger.logComment("Successfully removed");
-        else logger.logComment("Point never present...");
-     }
+        this.positionsAlreadyTaken.add(point);
+        this.cellsAlreadyPlaced.addCell(point, myCell);
+    }
 
 
-    public boolean doesCellCollideWithExistingCells(Point3f suggestedLocation,
-                                                    Cell newCell)
+    /**
+     * True if the positions suggested don't depend on random numbers or on which of the
+     * previous positions were accepted, i.e. the cells are placed on a fixed lattice. Such
+     * adapters override generateNextCandidate() and isCandidateWithinRegion(), and all of
+     * their positions can be generated in one go with getAllPositionsInRegion()
+     */
+    public boolean hasIndependentPositions()
     {
-        logger.logComment("Packer of cells: "+myCell.getInstanceName()+" checking if cell: "+newCell.getInstanceName()+" at: "+ suggestedLocation + " collides with one of my "+positionsAlreadyTaken.size()+ " cells");
+        return false;
+    }
 
-        Iterator iter = positionsAlreadyTaken.iterator();
 
-        while (iter.hasNext())
+    /**
+     * Generates the next point on the lattice, whether or not the cell would be inside the region there
+     * @throws CellPackingException when all points have been tried
+     */
+    protected Point3f generateNextCandidate() throws CellPackingException
+    {
+        throw new CellPackingException("Positions for "+toString()+" can't be generated independently");
+    }
+
+
+    /**
+     * Checks whether a cell at a point returned by generateNextCandidate() would be inside the region.
+     * Must be safe to call for several points at once.
+     */
+    protected boolean isCandidateWithinRegion(Point3f point)
+    {
+        return myRegion.isCellWithinRegion(point, myCell, true);
+    }
+
+
+    /**
+     * For use in generateNextPosition() by adapters with independent positions
+     * @return The next lattice point at which the cell is inside the region
+     */
+    protected Point3f generateNextCandidateInRegion() throws CellPackingException
+    {
+        while (true)
         {
-            Point3f locationMyCell = (Point3f) iter.next();
+            Point3f proposedPoint = generateNextCandidate();
+
+            if (isCandidateWithinRegion(proposedPoint))
+                return proposedPoint;
 
-            logger.logComment("Checking one of my cells at: " + Utils3D.getShortStringDesc(locationMyCell));
+            logger.logComment("Found a valid position in XYZ space, but the cell's not inside the region...");
+        }
+    }
 
-            Vector<Segment> volumeSegmentsMyCell = new Vector<Segment>();
-            Vector<Segment> mySegments = myCell.getAllSegments();
 
-            for (int i = 0; i < mySegments.size(); i++)
+    /**
+     * Generates all the positions on the lattice where the cell is inside the region, checking
+     * the region for the points in parallel on the pool. The positions are returned in the order
+     * getNextPosition() would have given them, but are not recorded as taken, see addPosition()
+     */
+    public ArrayList<Point3f> getAllPositionsInRegion(ForkJoinPool pool) throws CellPackingException
+    {
+        if (!hasIndependentPositions())
+            throw new CellPackingException("Positions for "+toString()+" can't be generated independently");
+
+        final ArrayList<Point3f> candidates = new ArrayList<Point3f>();
+        try
+        {
+            while (true)
             {
-                Segment segment = mySegments.elementAt(i);
-                if (segment.isFiniteVolume())
-                    volumeSegmentsMyCell.add(segment);
+                candidates.add(generateNextCandidate());
             }
+        }
+        catch (CellPackingException ex)
+        {
+            if (logger.isEnabled()) logger.logComment("Generated "+candidates.size()+" candidates, reason for ending: " + ex);
+        }
+
+        final boolean[] inRegion = new boolean[candidates.size()];
 
-            Vector<Segment> volumeSegmentsNewCell = new Vector<Segment>();
-            Vector<Segment> newSegments = newCell.getAllSegments();
+        pool.invoke(new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                checkCandidates(candidates, inRegion, 0, candidates.size());
+            }
+        });
 
-            for (int i = 0; i < newSegments.size(); i++)
+        ArrayList<Point3f> positions = new ArrayList<Point3f>();
+        for (int i = 0; i < inRegion.length; i++)
+        {
+            if (inRegion[i]) positions.add(candidates.get(i));
+        }
+        return positions;
+    }
+
+    /*
+     * Splits the candidates in [from, to) until there are few enough to check on one thread
+     */
+    private void checkCandidates(final ArrayList<Point3f> candidates,
+                                 final boolean[] inRegion,
+                                 final int from,
+                                 final int to)
+    {
+        if (to - from <= CANDIDATES_PER_TASK)
+        {
+            for (int i = from; i < to; i++)
             {
-                Segment segment = newSegments.elementAt(i);
-                if (segment.isFiniteVolume())
-                    volumeSegmentsNewCell.add(segment);
+                inRegion[i] = isCandidateWithinRegion(candidates.get(i));
             }
+            return;
+        }
+        final int mid = (from + to) >>> 1;
 
-            for (int newSecs = 0; newSecs < volumeSegmentsNewCell.size(); newSecs++)
+        ForkJoinTask.invokeAll(new RecursiveAction()
+        {
+            @Override
+            protected void compute()
             {
-                Segment segmentNewCell = volumeSegmentsNewCell.elementAt(newSecs);
-
-
-                for (int mySecs = 0; mySecs < volumeSegmentsMyCell.size(); mySecs++)
-                {
-                    Segment segmentMyCell = volumeSegmentsMyCell.elementAt(mySecs);
-
-                    /** @todo Redo this for all eventualities... */
-
-                    Point3f realStartPosNew = new Point3f(segmentNewCell.getStartPointPosition());
-                    realStartPosNew.add(suggestedLocation);
-                    Point3f realEndPosNew = new Point3f(segmentNewCell.getEndPointPosition());
-                    realEndPosNew.add(suggestedLocation);
-
-                    Point3f realStartPosMine = new Point3f(segmentMyCell.getStartPointPosition());
-                    realStartPosMine.add(locationMyCell);
-                    Point3f realEndPosMine = new Point3f(segmentMyCell.getEndPointPosition());
-                    realEndPosMine.add(locationMyCell);
-
-                    logger.logComment("realStartPosNew: "+ realStartPosNew + ", sec: "+segmentNewCell);
-                    logger.logComment("realStartPosMine: "+ realStartPosMine+ ", sec: "+segmentMyCell);
-
-                    boolean collides = false;
-
-                    // CASE: both segments are spherical...
-
-                    if (segmentMyCell.getSegmentShape()==Segment.SPHERICAL_SHAPE &&
-                        segmentNewCell.getSegmentShape()==Segment.SPHERICAL_SHAPE)
-                    {
-
-                        if (realStartPosMine.distance(realStartPosNew)
-                            < segmentMyCell.getRadius() + segmentNewCell.getRadius())
-                        {
-                            logger.logComment("2 Spherical collision");
-                            collides = true;
-                        }
-                    }
-
-                    // CASE: Only my segment is spherical
-                    else if (segmentMyCell.getSegmentShape()==Segment.SPHERICAL_SHAPE)
-                    {
-                        if (Utils3D.checkIntersectCylinderSphere(realStartPosMine,
-                                                             segmentMyCell.getRadius(),
-                                                             realStartPosNew,
-                                                             realEndPosNew,
-                                                             segmentNewCell.getRadius()))
-                        {
-                            logger.logComment("Cylindrical collision");
-                            collides = true;
-                        }
-                    }
-
-                    // CASE: Only new segment is spherical
-                    else if (segmentMyCell.getSegmentShape()==Segment.SPHERICAL_SHAPE)
-                    {
-                        if (Utils3D.checkIntersectCylinderSphere(realStartPosNew,
-                                                             segmentNewCell.getRadius(),
-                                                             realStartPosMine,
-                                                             realEndPosMine,
-                                                             segmentMyCell.getRadius()))
-                        {
-                            logger.logComment("Cylindrical collision");
-                            collides = true;
-                        }
-                    }
-
-                    // CASE: Both are cylindrical
-                    else
-                    {
-                        // Check whether the spheres at the new segment start point
-                        // and end points collide with the cylinder of my segment.
-                        // Obviously not a perfect criterion, but will sufice in most cases.
-
-                        if (Utils3D.checkIntersectCylinderSphere(realStartPosNew,
-                                                                 segmentNewCell.getSegmentStartRadius(),
-                                                                 realStartPosMine,
-                                                                 realEndPosMine,
-                                                                 segmentMyCell.getRadius()))
-                          {
-                              logger.logComment("Start point new collision");
-                              collides = true;
-                          }
-                          if (Utils3D.checkIntersectCylinderSphere(realEndPosNew,
-                                                                   segmentNewCell.getRadius(),
-                                                                   realStartPosMine,
-                                                                   realEndPosMine,
-                                                                   segmentMyCell.getRadius()))
-                          {
-                              logger.logComment("End point new collision");
-                              collides = true;
-                          }
-                    }
-
-                    if (collides)
-                    {
-                        logger.logComment("Collides...");
-                        return true;
-                    }
-
-                }
+                checkCandidates(candidates, inRegion, from, mid);
             }
+        },
+        new RecursiveAction()
+        {
+            @Override
+            protected void compute()
+            {
+                checkCandidates(candidates, inRegion, mid, to);
+            }
+        });
+    }
 
-        }
-        return false;
+
+    /**
+     * After this class has suggested a position, it may later be rejected,
+     * i.e. due to a collision with another cell in another region. The
+     * suggested position can be cancelled here.
+     *
+     * @param point Point3f of position
+     */
+    public void cancelPosition(Point3f point)
+    {
+        if (logger.isEnabled()) logger.logComment("Position: "+ point +" being cancelled...");
+        boolean success = positionsAlreadyTaken.remove(point);
+        cellsAlreadyPlaced.removeCell(point, myCell);
+        if (success) logger.logComment("Successfully removed");
+        else logger.logComment("Point never present...");
+     }
+
+
+    /**
+     * Checks whether the finite volume segments of newCell at suggestedLocation would
+     * collide with those of any of the cells placed so far by this adapter
+     */
+    public boolean doesCellCollideWithExistingCells(Point3f suggestedLocation,
+                                                    Cell newCell)
+    {
+        if (logger.isEnabled()) logger.logComment("Packer of cells: "+myCell.getInstanceName()+" checking if cell: "+newCell.getInstanceName()+" at: "+ suggestedLocation + " collides with one of my "+positionsAlreadyTaken.size()+ " cells");
+
+        return cellsAlreadyPlaced.doesCellCollide(suggestedLocation, newCell);
     }
 
 
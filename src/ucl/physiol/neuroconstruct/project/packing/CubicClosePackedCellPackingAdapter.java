@@ -85,6 +85,24 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
 
 
     protected Point3f generateNextPosition() throws CellPackingException
+    {
+        return generateNextCandidateInRegion();
+    }
+
+    @Override
+    public boolean hasIndependentPositions()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean isCandidateWithinRegion(Point3f point)
+    {
+        return myRegion.isCellWithinRegion(point, myCell, mustBeCompletelyInsideRegion());
+    }
+
+    @Override
+    protected Point3f generateNextCandidate() throws CellPackingException
     {
         // See note above on Cubic Close Packing...
 
@@ -144,7 +162,7 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
         else
         {
             Point3f lastPositionedPoint = positionsAlreadyAttempted.lastElement();
-            logger.logComment("Last point attempted at: "+ lastPositionedPoint);
+            if (logger.isEnabled()) logger.logComment("Last point attempted at: "+ lastPositionedPoint);
 
             // Separation of planes is sqrt(2) times radius. This can be seen from
             // considering 4 spheres in a plane and a fifth on top. The centres form a
@@ -156,12 +174,12 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
       ///      float division = (lastPositionedPoint.y - lowestYLocation)/separationOfLayers;
       //      int currentLayerNumber = (int)Math.ceil(division);
 
-            logger.logComment("We're in layer number: "+ currentYLayerNumber);
+            if (logger.isEnabled()) logger.logComment("We're in layer number: "+ currentYLayerNumber);
 
             float proposedNewXPos = lastPositionedPoint.x + (getEffectiveRadius() * 2f);
 
 
-            logger.logComment("Checking if x val of "+proposedNewXPos+" is allowed...");
+            if (logger.isEnabled()) logger.logComment("Checking if x val of "+proposedNewXPos+" is allowed...");
 
             if (proposedNewXPos <= (maxXLoc))
             {
@@ -187,7 +205,7 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
                 {
                     proposedNewXPos = minXLoc + getEffectiveRadius(); // CCP, xpos moved to middle of 2 spheres
                 }
-                logger.logComment("Checking if z val of "+proposedNewZPos+" is allowed...");
+                if (logger.isEnabled()) logger.logComment("Checking if z val of "+proposedNewZPos+" is allowed...");
 
                 if (proposedNewZPos <= (maxZLoc))
                 {
@@ -204,13 +222,13 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
                     ///int newLayerNumber = currentLayerNumber +1;
                     currentYLayerNumber++;
 
-                    logger.logComment("Entering layer number: "+ currentYLayerNumber);
+                    if (logger.isEnabled()) logger.logComment("Entering layer number: "+ currentYLayerNumber);
 
                     float proposedNewYPos;
 
                     proposedNewYPos = lastPositionedPoint.y + separationOfLayers;
 
-                    logger.logComment("Checking if y val of "+proposedNewYPos+" is allowed...");
+                    if (logger.isEnabled()) logger.logComment("Checking if y val of "+proposedNewYPos+" is allowed...");
 
                     if (proposedNewYPos <= (maxYLoc))
                     {
@@ -219,18 +237,18 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
 
                         if ((currentYLayerNumber/2)*2 == currentYLayerNumber) // i.e. even layer...
                         {
-                            logger.logComment("xxxxxxxxxxxxxxxEven numbered layer: ("+currentYLayerNumber+")");
+                            if (logger.isEnabled()) logger.logComment("xxxxxxxxxxxxxxxEven numbered layer: ("+currentYLayerNumber+")");
                             newXPosition = minXLoc; // for CCP...
                             newZPosition = minZLoc; // for CCP...
                         }
                         else
                         {
-                            logger.logComment("xxxxxxxxxxxxxxOdd numbered layer: ("+currentYLayerNumber+")");
+                            if (logger.isEnabled()) logger.logComment("xxxxxxxxxxxxxxOdd numbered layer: ("+currentYLayerNumber+")");
                             newXPosition = minXLoc + getEffectiveRadius(); // for CCP...
                             newZPosition = minZLoc + getEffectiveRadius(); // for CCP...
                         }
 
-                        logger.logComment("Positioning this cell with a y displacement from the last of: "+ (proposedNewYPos-lastPositionedPoint.y));
+                        if (logger.isEnabled()) logger.logComment("Positioning this cell with a y displacement from the last of: "+ (proposedNewYPos-lastPositionedPoint.y));
                         proposedPoint = new Point3f(newXPosition,
                                                     proposedNewYPos,
                                                     newZPosition);
@@ -248,24 +266,8 @@ public class CubicClosePackedCellPackingAdapter extends CellPackingAdapter
         }
 
 
-        if (proposedPoint!=null && myRegion.isCellWithinRegion(proposedPoint, myCell, mustBeCompletelyInsideRegion()))
-        {
-            logger.logComment("Adding point "+proposedPoint
-                              +"to list of attempts, which already has "
-                              + positionsAlreadyAttempted.size()
-                              + "entries, compared to "
-                              + getNumPosAlreadyTaken()
-                              + " successful ones so far...");
-            positionsAlreadyAttempted.add(proposedPoint);
-            return proposedPoint;
-        }
-        else
-        {
-            logger.logComment("Found a valid position in XYZ space, but the cell's not inside the region...");
-            // go again until all positions used up..
-            positionsAlreadyAttempted.add(proposedPoint);
-            return generateNextPosition();
-        }
+        positionsAlreadyAttempted.add(proposedPoint);
+        return proposedPoint;
 
 
     }
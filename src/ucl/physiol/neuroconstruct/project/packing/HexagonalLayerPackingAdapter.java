@@ -81,6 +81,24 @@ public class HexagonalLayerPackingAdapter extends CellPackingAdapter
 
 
     protected Point3f generateNextPosition() throws CellPackingException
+    {
+        return generateNextCandidateInRegion();
+    }
+
+    @Override
+    public boolean hasIndependentPositions()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean isCandidateWithinRegion(Point3f point)
+    {
+        return myRegion.isCellWithinRegion(point, myCell, mustBeCompletelyInsideRegion());
+    }
+
+    @Override
+    protected Point3f generateNextCandidate() throws CellPackingException
     {
         Point3f proposedPoint = null;
 
@@ -137,7 +155,7 @@ public class HexagonalLayerPackingAdapter extends CellPackingAdapter
         else
         {
             Point3f lastPositionedPoint = positionsAlreadyAttempted.lastElement();
-            logger.logComment("Last point attempted at: " + lastPositionedPoint);
+            if (logger.isEnabled()) logger.logComment("Last point attempted at: " + lastPositionedPoint);
 
             float proposedNewXPos = lastPositionedPoint.x + getCentreSpacing();
 
@@ -166,7 +184,7 @@ public class HexagonalLayerPackingAdapter extends CellPackingAdapter
                     //float division = (lastPositionedPoint.z - lowestZLocation) / increaseInZdir;
                     //int currentLayerNumber = (int) Math.ceil(division);
 
-                    logger.logComment("Looks like we're in layer number: " + zLayerNumber);
+                    if (logger.isEnabled()) logger.logComment("Looks like we're in layer number: " + zLayerNumber);
 
                     if ( (zLayerNumber / 2) * 2 == zLayerNumber) // i.e. even layer...
                     {
@@ -192,26 +210,8 @@ public class HexagonalLayerPackingAdapter extends CellPackingAdapter
         }
 
 
-        if (proposedPoint!=null  && myRegion.isCellWithinRegion(proposedPoint, myCell, mustBeCompletelyInsideRegion()))
-        {
-            logger.logComment("Adding point "+proposedPoint
-                              +"to list of attempts, which already has "
-                              + positionsAlreadyAttempted.size()
-                              + " entries, compared to "
-                              + getNumPosAlreadyTaken()
-                              + " successful ones so far...");
-            
-            positionsAlreadyAttempted.add(proposedPoint);
-
-            return proposedPoint;
-        }
-        else
-        {
-            logger.logComment("Found a valid position in XYZ space, but the cell's not inside the region...");
-            // go again until all positions used up..
-            positionsAlreadyAttempted.add(proposedPoint);
-            return generateNextPosition();
-        }
+        positionsAlreadyAttempted.add(proposedPoint);
+        return proposedPoint;
 
     }
 
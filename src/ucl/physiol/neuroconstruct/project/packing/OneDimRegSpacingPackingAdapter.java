@@ -102,7 +102,7 @@ public class OneDimRegSpacingPackingAdapter extends CellPackingAdapter
     {
         Point3f proposedPoint = null;
 
-        logger.logComment("----   Generating next position. positionsAlreadyTaken.size() = "+getNumPosAlreadyTaken());
+        if (logger.isEnabled()) logger.logComment("----   Generating next position. positionsAlreadyTaken.size() = "+getNumPosAlreadyTaken());
 
         float minXLoc, minYLoc, minZLoc, maxXLoc, maxYLoc, maxZLoc;
 
@@ -138,7 +138,7 @@ public class OneDimRegSpacingPackingAdapter extends CellPackingAdapter
                                          minYLoc,
                                          minZLoc);
 
-        logger.logComment("minXLoc: "+ minXLoc+", maxXLoc: "+maxXLoc);
+        if (logger.isEnabled()) logger.logComment("minXLoc: "+ minXLoc+", maxXLoc: "+maxXLoc);
 
         if (maxXLoc-minXLoc<0||maxYLoc-minYLoc<0||maxZLoc-minZLoc<0)
         {
@@ -195,7 +195,7 @@ public class OneDimRegSpacingPackingAdapter extends CellPackingAdapter
                 proposedPoint = new Point3f(startPoint);
                 proposedPoint.add(new Point3f(distanceApart*numProposedPoints, 0, 0));
                 
-                logger.logComment("Placing one of "+getNumberCells()+" cells in x dim..."+distanceApart
+                if (logger.isEnabled()) logger.logComment("Placing one of "+getNumberCells()+" cells in x dim..."+distanceApart
                     +" apart, new: "+proposedPoint+", already proposed: "+numProposedPoints);
                 
                 if(proposedPoint.x > maxXLoc)
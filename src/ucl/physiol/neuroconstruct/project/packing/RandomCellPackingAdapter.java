@@ -116,7 +116,7 @@ public class RandomCellPackingAdapter extends CellPackingAdapter
 
             proposedPoint = new Point3f(newXLoc, newYLoc, newZLoc);
 
-            logger.logComment("Generated a new proposed point: "+ Utils3D.getShortStringDesc(proposedPoint));
+            if (logger.isEnabled()) logger.logComment("Generated a new proposed point: "+ Utils3D.getShortStringDesc(proposedPoint));
 
             boolean satisfiesOverlapPolicy = true;
 
@@ -60,6 +60,24 @@ public class SimpleRegularCellPackingAdapter extends CellPackingAdapter
 
 
     protected Point3f generateNextPosition() throws CellPackingException
+    {
+        return generateNextCandidateInRegion();
+    }
+
+    @Override
+    public boolean hasIndependentPositions()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean isCandidateWithinRegion(Point3f point)
+    {
+        return myRegion.isCellWithinRegion(point, myCell, mustBeCompletelyInsideRegion());
+    }
+
+    @Override
+    protected Point3f generateNextCandidate() throws CellPackingException
     {
         Point3f proposedPoint = null;
 
@@ -117,13 +135,13 @@ public class SimpleRegularCellPackingAdapter extends CellPackingAdapter
         else
         {
             Point3f lastPositionedPoint = positionsAlreadyAttempted.lastElement();
-            logger.logComment("Last point attempted at: "+ lastPositionedPoint);
+            if (logger.isEnabled()) logger.logComment("Last point attempted at: "+ lastPositionedPoint);
 
             float proposedNewXPos = lastPositionedPoint.x
                                     + (CellTopologyHelper.getMaxXExtent(myCell, true, false)
                                     - CellTopologyHelper.getMinXExtent(myCell, true, false));
 
-            logger.logComment("Checking if x val of "+proposedNewXPos+" is allowed...");
+            if (logger.isEnabled()) logger.logComment("Checking if x val of "+proposedNewXPos+" is allowed...");
 
             if (proposedNewXPos <= (maxXLoc))
             {
@@ -141,7 +159,7 @@ public class SimpleRegularCellPackingAdapter extends CellPackingAdapter
                                         + (CellTopologyHelper.getMaxYExtent(myCell, true, false)
                                            - CellTopologyHelper.getMinYExtent(myCell, true, false));
 
-                logger.logComment("Checking if y val of "+proposedNewYPos+" is allowed...");
+                if (logger.isEnabled()) logger.logComment("Checking if y val of "+proposedNewYPos+" is allowed...");
 
                 if (proposedNewYPos <= (maxYLoc))
                 {
@@ -158,7 +176,7 @@ public class SimpleRegularCellPackingAdapter extends CellPackingAdapter
                                              + (CellTopologyHelper.getMaxZExtent(myCell, true, false)
                                                 - CellTopologyHelper.getMinZExtent(myCell, true, false));
 
-                    logger.logComment("Checking if z val of "+proposedNewZPos+" is allowed...");
+                    if (logger.isEnabled()) logger.logComment("Checking if z val of "+proposedNewZPos+" is allowed...");
 
                     if (proposedNewZPos <= (maxZLoc))
                     {
@@ -179,19 +197,8 @@ public class SimpleRegularCellPackingAdapter extends CellPackingAdapter
         }
 
 
-        if (proposedPoint!=null && myRegion.isCellWithinRegion(proposedPoint, myCell, mustBeCompletelyInsideRegion()))
-        {
-
-            positionsAlreadyAttempted.add(proposedPoint);
-            return proposedPoint;
-        }
-        else
-        {
-            logger.logComment("Found a valid position in XYZ space, but the cell's not inside the region...");
-            // go again until all positions used up..
-            positionsAlreadyAttempted.add(proposedPoint);
-            return generateNextPosition();
-        }
+        positionsAlreadyAttempted.add(proposedPoint);
+        return proposedPoint;
 
 
     }
@@ -739,7 +739,7 @@ public class PynnFileManager
                     {
                         throw new PynnException("Error, mapping to PyNN does not currently support network connections with non fixed weights, as in "+nc+": "+syns+"!!");
                     }
-                    if(project.generatedNetworkConnections.getSynapticConnections(nc).size()>0)
+                    if(project.generatedNetworkConnections.getNumberSynapticConnections(nc)>0)
                     {
                         try
                         {
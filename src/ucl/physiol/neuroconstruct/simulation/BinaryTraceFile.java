@@ -0,0 +1,391 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * Binary format for saved traces, as an alternative to the one value per line text files.
+ * The file starts with a single line of ASCII text:
+ *
+ *     NCBT 2 f8 numRows numColumns
+ *
+ * where f8 (or f4) gives the width of each value. This is followed by BYTE_ORDER_MARK as
+ * a double (or float) and then the values, one column after another, all in the byte order
+ * of the writer (NEURON's Vector.fwrite uses the native order of the machine), which is
+ * found from the mark when reading. Version 1 files have no mark and are little endian.
+ * A single trace is a one column file, and each column of a multi column file is the
+ * trace from one cell.
+ *
+ * Only the header is read when the file is opened. Columns are read on demand by memory
+ * mapping just the part of the file they occupy.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class BinaryTraceFile
+{
+    private static ClassLogger logger = new ClassLogger("BinaryTraceFile");
+
+    public static final String MAGIC = "NCBT";
+    public static final int VERSION = 2;
+
+    /**
+     * Value written before the data, from which the byte order of the file is found
+     */
+    public static final double BYTE_ORDER_MARK = 1;
+
+    public static final String DOUBLE_FORMAT = "f8";
+    public static final String FLOAT_FORMAT = "f4";
+
+    /**
+     * Longest header which will be looked for at the start of a file
+     */
+    private static final int MAX_HEADER_LENGTH = 256;
+
+    private File file = null;
+
+    private int numRows = 0;
+    private int numColumns = 0;
+
+    /**
+     * Bytes per value, 8 or 4
+     */
+    private int valueWidth = 8;
+
+    private long dataOffset = 0;
+
+    /**
+     * Null until the byte order mark has been read, as it may not have been written yet when the file is opened
+     */
+    private ByteOrder byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+
+    public BinaryTraceFile(File file) throws SimulationDataException
+    {
+        this.file = file;
+        readHeader();
+    }
+
+    /**
+     * The header line for a file of this size, including the terminating newline. It should
+     * be followed by BYTE_ORDER_MARK in the format of the values
+     */
+    public static String getHeader(boolean singlePrecision, int numRows, int numColumns)
+    {
+        return MAGIC + " " + VERSION + " " + (singlePrecision ? FLOAT_FORMAT : DOUBLE_FORMAT)
+            + " " + numRows + " " + numColumns + "\n";
+    }
+
+    private void readHeader() throws SimulationDataException
+    {
+        byte[] start = new byte[(int)Math.min(MAX_HEADER_LENGTH, file.length())];
+
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                raf.readFully(start);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SimulationDataException("Error reading header of binary trace file: " + file.getAbsolutePath(), e);
+        }
+
+        int lineEnd = -1;
+        for (int i = 0; i < start.length && lineEnd < 0; i++)
+        {
+            if (start[i] == '\n') lineEnd = i;
+        }
+        if (lineEnd < 0)
+            throw new SimulationDataException("No header line found in binary trace file: " + file.getAbsolutePath());
+
+        String header = new String(start, 0, lineEnd).trim();
+
+        logger.logComment("Header of " + file + ": " + header);
+
+        String[] items = header.split("\\s+");
+
+        if (items.length != 5 || !items[0].equals(MAGIC))
+            throw new SimulationDataException("Unrecognised header (" + header + ") in binary trace file: " + file.getAbsolutePath());
+
+        int version;
+        try
+        {
+            version = Integer.parseInt(items[1]);
+
+            if (version > VERSION)
+                throw new SimulationDataException("Unsupported version of binary trace file (" + header + "): " + file.getAbsolutePath());
+
+            if (items[2].equals(DOUBLE_FORMAT))
+                valueWidth = 8;
+            else if (items[2].equals(FLOAT_FORMAT))
+                valueWidth = 4;
+            else
+                throw new SimulationDataException("Unsupported value format (" + items[2] + ") in binary trace file: " + file.getAbsolutePath());
+
+            // Values may be written as floats by some simulators, e.g. 1001.0
+            numRows = (int)Double.parseDouble(items[3]);
+            numColumns = (int)Double.parseDouble(items[4]);
+        }
+        catch (NumberFormatException ne)
+        {
+            throw new SimulationDataException("Unrecognised header (" + header + ") in binary trace file: " + file.getAbsolutePath(), ne);
+        }
+
+        dataOffset = lineEnd + 1;
+
+        if (version >= 2)
+        {
+            byteOrder = null;
+
+            if (start.length >= dataOffset + valueWidth)
+                byteOrder = getByteOrder(ByteBuffer.wrap(start, (int)dataOffset, valueWidth));
+
+            dataOffset = dataOffset + valueWidth;
+        }
+    }
+
+    private ByteOrder getByteOrder(ByteBuffer mark) throws SimulationDataException
+    {
+        if (readMark(mark.order(ByteOrder.LITTLE_ENDIAN)) == BYTE_ORDER_MARK)
+            return ByteOrder.LITTLE_ENDIAN;
+
+        if (readMark(mark.order(ByteOrder.BIG_ENDIAN)) == BYTE_ORDER_MARK)
+            return ByteOrder.BIG_ENDIAN;
+
+        throw new SimulationDataException("Unrecognised byte order mark in binary trace file: " + file.getAbsolutePath());
+    }
+
+    private double readMark(ByteBuffer mark)
+    {
+        return valueWidth == 8 ? mark.getDouble(mark.position()) : mark.getFloat(mark.position());
+    }
+
+    /*
+     * Reads the byte order mark if it wasn't there when the header was read
+     */
+    private void readByteOrder() throws SimulationDataException
+    {
+        byte[] mark = new byte[valueWidth];
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                raf.seek(dataOffset - valueWidth);
+                raf.readFully(mark);
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SimulationDataException("Error reading byte order mark of binary trace file: " + file.getAbsolutePath(), e);
+        }
+        byteOrder = getByteOrder(ByteBuffer.wrap(mark));
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public int getNumRows()
+    {
+        return numRows;
+    }
+
+    public int getNumColumns()
+    {
+        return numColumns;
+    }
+
+    public ByteOrder getByteOrder() throws SimulationDataException
+    {
+        if (byteOrder == null) readByteOrder();
+
+        return byteOrder;
+    }
+
+    /**
+     * The size the file will have when all of the data given in the header has been written
+     */
+    public long getExpectedLength()
+    {
+        return dataOffset + (long)numRows * numColumns * valueWidth;
+    }
+
+    public boolean isComplete()
+    {
+        return file.length() >= getExpectedLength();
+    }
+
+
+    /**
+     * Reads one column of the file, multiplying each value by scaleFactor
+     */
+    public double[] readColumn(int column, double scaleFactor) throws SimulationDataException
+    {
+        if (column < 0 || column >= numColumns)
+            throw new SimulationDataException("Column " + column + " requested, but there are only " + numColumns
+                                              + " in binary trace file: " + file.getAbsolutePath());
+
+        double[] data = new double[numRows];
+
+        if (numRows == 0) return data;
+
+        ByteOrder order = getByteOrder();
+
+        long length = (long)numRows * valueWidth;
+        long position = dataOffset + column * length;
+
+        try
+        {
+            FileInputStream fis = new FileInputStream(file);
+            try
+            {
+                // The mapping stays valid after the channel is closed
+                MappedByteBuffer mapped = fis.getChannel().map(FileChannel.MapMode.READ_ONLY, position, length);
+                mapped.order(order);
+
+                if (valueWidth == 8)
+                {
+                    DoubleBuffer values = mapped.asDoubleBuffer();
+                    values.get(data);
+                    if (scaleFactor != 1)
+                    {
+                        for (int i = 0; i < numRows; i++)
+                        {
+                            data[i] = data[i] * scaleFactor;
+                        }
+                    }
+                }
+                else
+                {
+                    FloatBuffer values = mapped.asFloatBuffer();
+                    for (int i = 0; i < numRows; i++)
+                    {
+                        data[i] = values.get(i) * scaleFactor;
+                    }
+                }
+            }
+            finally
+            {
+                fis.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SimulationDataException("Error reading column " + column + " from binary trace file: " + file.getAbsolutePath(), e);
+        }
+
+        return data;
+    }
+
+
+    /**
+     * Writes the columns, which should all be the same length, to a new little endian binary trace file
+     */
+    public static void write(File file, double[][] columns, boolean singlePrecision) throws SimulationDataException
+    {
+        write(file, columns, singlePrecision, ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Writes the columns, which should all be the same length, to a new binary trace file in the given byte order
+     */
+    public static void write(File file, double[][] columns, boolean singlePrecision, ByteOrder order) throws SimulationDataException
+    {
+        int numRows = columns.length == 0 ? 0 : columns[0].length;
+        int width = singlePrecision ? 4 : 8;
+
+        try
+        {
+            FileOutputStream fos = new FileOutputStream(file);
+            try
+            {
+                FileChannel channel = fos.getChannel();
+
+                channel.write(ByteBuffer.wrap(getHeader(singlePrecision, numRows, columns.length).getBytes("US-ASCII")));
+
+                ByteBuffer mark = ByteBuffer.allocate(width).order(order);
+                if (singlePrecision) mark.putFloat((float)BYTE_ORDER_MARK);
+                else mark.putDouble(BYTE_ORDER_MARK);
+                mark.flip();
+                channel.write(mark);
+
+                ByteBuffer buffer = ByteBuffer.allocate(numRows * width).order(order);
+
+                for (double[] column : columns)
+                {
+                    if (column.length != numRows)
+                        throw new SimulationDataException("All columns in a binary trace file must have the same length");
+
+                    buffer.clear();
+                    for (double val : column)
+                    {
+                        if (singlePrecision) buffer.putFloat((float)val);
+                        else buffer.putDouble(val);
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                    {
+                        channel.write(buffer);
+                    }
+                }
+            }
+            finally
+            {
+                fos.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SimulationDataException("Error writing binary trace file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BinaryTraceFile " + file.getName() + " with " + numColumns + " column(s) of " + numRows + " values";
+    }
+
+}
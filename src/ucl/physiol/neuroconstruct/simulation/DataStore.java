@@ -26,8 +26,10 @@
 
 package ucl.physiol.neuroconstruct.simulation;
 
+import java.util.Hashtable;
 import ucl.physiol.neuroconstruct.project.SimPlot;
 import ucl.physiol.neuroconstruct.project.PostSynapticObject;
+import ucl.physiol.neuroconstruct.utils.ClassLogger;
 
 /**
  * Class which stores info on one recorded set of data from a simulation, e.g. one voltage trace. Could do with a better name...
@@ -38,13 +40,41 @@ import ucl.physiol.neuroconstruct.project.PostSynapticObject;
 
 public class DataStore
 {
- 
+    private static ClassLogger logger = new ClassLogger("DataStore");
 
-    private double[] dataPoints;
+    /**
+     * Reads the data points for a DataStore whose contents are only loaded when first needed
+     */
+    public interface DataLoader
+    {
+        public double[] loadData() throws SimulationDataException;
+    }
+
+    /**
+     * If there is a loader, this will be null until first needed, and may be set
+     * back to null by the DataStoreCache when memory is needed for other traces
+     */
+    private volatile double[] dataPoints;
+
+    private DataLoader loader = null;
+
+    /**
+     * Whether maxVal & minVal have been set, so the data doesn't need to be reloaded for them
+     */
+    private volatile boolean maxMinKnown = false;
+
+    /**
+     * Times of all the threshold crossings in the data, for each threshold used. These are kept
+     * when the data points are unloaded, as they're much smaller
+     */
+    private Hashtable<Float, double[]> spikeTimesCache = new Hashtable<Float, double[]>();
 
     private String cellGroupName = null;
     private int cellNumber = -1;
     private int segId = -1;
+    /**
+     * Interned, as there are usually many DataStores for each variable
+     */
     private String variable = SimPlot.VOLTAGE;
 
     private String xUnit = "";
@@ -81,7 +111,7 @@ public class DataStore
         this.cellGroupName = cellGroupName;
         this.cellNumber = cellNumber;
         this.segId = segId;
-        this.variable = variable;
+        this.variable = variable == null ? null : variable.intern();
         this.xUnit = xUnit;
         this.yUnit = yUnit;
         this.pso = pso;
@@ -116,7 +146,7 @@ public class DataStore
         this.cellGroupName = cellGroupName;
         this.cellNumber = cellNumber;
         this.segId = segId;
-        this.variable = variable;
+        this.variable = variable == null ? null : variable.intern();
         this.xUnit = xUnit;
         this.yUnit = yUnit;
         this.pso = pso;
@@ -126,14 +156,167 @@ public class DataStore
         refreshMaxMin();
     }
 
+    /**
+     * A DataStore for continuous data which will only be read by the loader when first needed
+     */
+    public DataStore(DataLoader loader,
+                     String cellGroupName,
+                     int cellNumber,
+                     int segId,
+                     String variable,
+                     String xUnit,
+                     String yUnit,
+                     PostSynapticObject pso)
+    {
+        this((double[])null, cellGroupName, cellNumber, segId, variable, xUnit, yUnit, pso);
+        this.loader = loader;
+    }
+
+    /**
+     * A DataStore for spike times which will only be read by the loader when first needed
+     */
+    public DataStore(DataLoader loader,
+                     double nonSpikingVal,
+                     double spikingVal,
+                     double startTime,
+                     double endTime,
+                     double timeStep,
+                     String cellGroupName,
+                     int cellNumber,
+                     int segId,
+                     String variable,
+                     String xUnit,
+                     String yUnit,
+                     PostSynapticObject pso)
+    {
+        this((double[])null, nonSpikingVal, spikingVal, startTime, endTime, timeStep,
+             cellGroupName, cellNumber, segId, variable, xUnit, yUnit, pso);
+        this.loader = loader;
+    }
+
+    public boolean isLoaded()
+    {
+        return dataPoints != null;
+    }
+
+    /**
+     * Reads in the data points if this DataStore was created with a loader and they aren't currently loaded
+     */
+    public void load() throws SimulationDataException
+    {
+        loadData();
+    }
+
+    private double[] loadData() throws SimulationDataException
+    {
+        double[] data = dataPoints;
+
+        if (loader == null) return data;
+
+        if (data != null)
+        {
+            DataStoreCache.dataUsed(this);
+            return data;
+        }
+
+        synchronized (this)
+        {
+            data = dataPoints;
+            if (data == null)
+            {
+                logger.logComment("Loading data for: "+ getCellSegRef()+", "+variable);
+                data = loader.loadData();
+                dataPoints = data;
+                if (!maxMinKnown) refreshMaxMin();
+            }
+        }
+        // Outside the lock on this, as the cache may unload other DataStores
+        DataStoreCache.dataLoaded(this, data.length * 8L);
+
+        return data;
+    }
+
+    private double[] loadIfNeeded()
+    {
+        try
+        {
+            return loadData();
+        }
+        catch (SimulationDataException e)
+        {
+            logger.logError("Problem loading data for: "+ getCellSegRef()+", "+variable, e);
+            return new double[0];
+        }
+    }
+
+    /**
+     * Drops the data points if they can be read in again by the loader
+     */
+    void unload()
+    {
+        if (loader != null)
+        {
+            dataPoints = null;
+        }
+    }
+
+    /**
+     * Stops the DataStoreCache keeping track of this DataStore
+     */
+    void release()
+    {
+        if (loader != null)
+        {
+            DataStoreCache.remove(this);
+        }
+    }
+
     public boolean isSpikeTimes()
     {
         return containsSpikeTimes;
     }
 
+    /**
+     * The spike times as recorded, if this contains spike times (see isSpikeTimes()), otherwise null.
+     * Note getDataPoints() returns these converted to a continuous trace
+     */
+    public double[] getRecordedSpikeTimes()
+    {
+        if (!containsSpikeTimes) return null;
+
+        return loadIfNeeded().clone();
+    }
+
+    /**
+     * Times of all the upward crossings of the threshold in the (continuous form of the) data,
+     * calculated once per threshold and cached
+     */
+    double[] getSpikeTimes(double[] times, float threshold) throws SimulationDataException
+    {
+        double[] spikeTimes = spikeTimesCache.get(threshold);
+
+        if (spikeTimes == null)
+        {
+            loadData();
+            spikeTimes = SpikeAnalyser.getSpikeTimes(getDataPoints(),
+                                                     times,
+                                                     threshold,
+                                                     -1 * Float.MAX_VALUE,
+                                                     Float.MAX_VALUE);
+            if (spikeTimes == null)
+                throw new SimulationDataException("Number of points in "+ this +" doesn't match the number of time points");
+
+            spikeTimesCache.put(threshold, spikeTimes);
+        }
+        return spikeTimes;
+    }
+
     public void setDataPoints(double[] dataPoints)
     {
+        release();
+        spikeTimesCache.clear();
         this.dataPoints = dataPoints;
+        this.loader = null;
         containsSpikeTimes = false;
         refreshMaxMin();
     }
@@ -145,7 +328,10 @@ public class DataStore
                               double endTime,
                               double timeStep)
     {
+        release();
+        spikeTimesCache.clear();
         this.dataPoints = spikeTimes;
+        this.loader = null;
         this.spikingVal = spikingVal;
         this.nonSpikingVal = nonSpikingVal;
         this.nonSpikingVal = nonSpikingVal;
@@ -158,20 +344,27 @@ public class DataStore
 
     private void refreshMaxMin()
     {
+        double[] data = dataPoints;
         if (containsSpikeTimes)
         {
             maxVal = Math.max(spikingVal, nonSpikingVal);
             minVal = Math.min(spikingVal, nonSpikingVal);
+            maxMinKnown = true;
         }
-        else
+        else if (data != null)
         {
             maxVal = -1* Double.MAX_VALUE;
             minVal = Double.MAX_VALUE;
-            for (int i = 0; i < dataPoints.length; i++)
+            for (int i = 0; i < data.length; i++)
             {
-                if (dataPoints[i]>maxVal) maxVal = dataPoints[i];
-                if (dataPoints[i]<minVal) minVal = dataPoints[i];
+                if (data[i]>maxVal) maxVal = data[i];
+                if (data[i]<minVal) minVal = data[i];
             }
+            maxMinKnown = true;
+        }
+        else
+        {
+            maxMinKnown = false;
         }
     }
 
@@ -213,14 +406,16 @@ public class DataStore
 
     public double[] getDataPoints()
     {
+        double[] data = loadIfNeeded();
+
         if (!containsSpikeTimes)
         {
-            return dataPoints;
+            return data;
         }
         else
         {
             double[] continuous 
-                = SimulationData.convertSpikeTimesToContinuous(this.dataPoints, 
+                = SimulationData.convertSpikeTimesToContinuous(data, 
                                                                this.startTime, 
                                                                this.endTime, 
                                                                this.timeStep, 
@@ -240,11 +435,13 @@ public class DataStore
 
     public double getMaxVal()
     {
+        if (!maxMinKnown) loadIfNeeded();
         return this.maxVal;
     }
 
     public double getMinVal()
     {
+        if (!maxMinKnown) loadIfNeeded();
         return this.minVal;
     }
 
@@ -277,7 +474,13 @@ public class DataStore
 
         info = info + ": (";
 
-        if (dataPoints.length==1) info = info + (float)dataPoints[0]+")";
+        double[] dataPoints = this.dataPoints;
+
+        if (dataPoints==null) info = info + "not yet loaded)";
+
+        else if (dataPoints.length==0) info = info + "no entries)";
+
+        else if (dataPoints.length==1) info = info + (float)dataPoints[0]+")";
 
         else if(dataPoints.length == 2) info = info + (float) dataPoints[0] + ", " + (float) dataPoints[1] + ")";
 
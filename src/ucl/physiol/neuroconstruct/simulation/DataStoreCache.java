@@ -0,0 +1,142 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.util.*;
+import ucl.physiol.neuroconstruct.project.GeneralProperties;
+import ucl.physiol.neuroconstruct.utils.ClassLogger;
+
+/**
+ * Keeps track of the data points which have been read in for DataStores created with a
+ * DataStore.DataLoader. When the total size goes over the budget set in GeneralProperties,
+ * the least recently used DataStores are unloaded, to be read from file again if needed.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class DataStoreCache
+{
+    private static ClassLogger logger = new ClassLogger("DataStoreCache");
+
+    /*
+     * Size in bytes of the loaded data of each DataStore, in order of access
+     */
+    private static LinkedHashMap<DataStore, Long> loadedStores = new LinkedHashMap<DataStore, Long>(16, 0.75f, true);
+
+    private static long bytesLoaded = 0;
+
+
+    private DataStoreCache()
+    {
+    }
+
+    public static long getBudgetBytes()
+    {
+        return GeneralProperties.getTraceCacheSizeMB() * 1024L * 1024L;
+    }
+
+    public static synchronized long getBytesLoaded()
+    {
+        return bytesLoaded;
+    }
+
+    public static synchronized int getNumberLoaded()
+    {
+        return loadedStores.size();
+    }
+
+
+    /**
+     * Called when the data for the DataStore has been read in. May unload other DataStores
+     */
+    static void dataLoaded(DataStore ds, long bytes)
+    {
+        ArrayList<DataStore> toUnload = new ArrayList<DataStore>();
+
+        synchronized (DataStoreCache.class)
+        {
+            Long previous = loadedStores.put(ds, bytes);
+            if (previous != null) bytesLoaded -= previous;
+            bytesLoaded += bytes;
+
+            long budget = getBudgetBytes();
+
+            Iterator<Map.Entry<DataStore, Long>> iter = loadedStores.entrySet().iterator();
+
+            // The most recent one is always kept, even if it's bigger than the budget
+            while (bytesLoaded > budget && loadedStores.size() > 1)
+            {
+                Map.Entry<DataStore, Long> eldest = iter.next();
+                bytesLoaded -= eldest.getValue();
+                toUnload.add(eldest.getKey());
+                iter.remove();
+            }
+        }
+
+        // Unloaded outside the lock, as DataStores call in here while loading
+        for (DataStore old : toUnload)
+        {
+            logger.logComment("Unloading data for: " + old.getCellSegRef() + ", " + old.getVariable());
+            old.unload();
+        }
+    }
+
+    /**
+     * Marks the DataStore as most recently used
+     */
+    static synchronized void dataUsed(DataStore ds)
+    {
+        loadedStores.get(ds);
+    }
+
+    /**
+     * Stops tracking the DataStore, e.g. when the SimulationData it belongs to is reset
+     */
+    static synchronized void remove(DataStore ds)
+    {
+        Long bytes = loadedStores.remove(ds);
+        if (bytes != null) bytesLoaded -= bytes;
+    }
+
+    public static void clear()
+    {
+        ArrayList<DataStore> toUnload;
+
+        synchronized (DataStoreCache.class)
+        {
+            toUnload = new ArrayList<DataStore>(loadedStores.keySet());
+            loadedStores.clear();
+            bytesLoaded = 0;
+        }
+        for (DataStore old : toUnload)
+        {
+            old.unload();
+        }
+    }
+
+}
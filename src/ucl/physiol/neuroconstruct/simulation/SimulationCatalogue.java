@@ -0,0 +1,466 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.io.*;
+import java.util.*;
+import ucl.physiol.neuroconstruct.hpc.mpi.RemoteLogin;
+import ucl.physiol.neuroconstruct.utils.*;
+
+/**
+ * A record of the summary information (properties, data files, sizes, modification times) of each
+ * simulation in a project's simulations directory, saved in a file in that directory, so the
+ * directories don't all have to be read again each time the simulations are listed. An entry
+ * is only used if the modification times of the simulation's directory, properties files and
+ * time data file, and the sizes and modification times of its data files, are the same as when
+ * it was recorded.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+class SimulationCatalogue
+{
+    private static ClassLogger logger = new ClassLogger("SimulationCatalogue");
+
+    public static final String catalogueFileName = ".simulations.catalogue";
+
+    /*
+     * Changed when the format of the file changes, so an old file is ignored
+     */
+    private static final int FORMAT_VERSION = 3;
+
+    private File simulationsDir = null;
+
+    private LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+    /*
+     * Whether there are changes which haven't been saved
+     */
+    private boolean changed = false;
+
+
+    /**
+     * Summary of one simulation directory
+     */
+    static class Entry
+    {
+        String name = null;
+
+        long dirModified = 0;
+        long summaryModified = 0;
+        long simulatorPropsModified = 0;
+
+        /*
+         * Name of the file SimulationData.getTimesFile() returned, and its modification time (0 if it doesn't exist)
+         */
+        String timesFileName = null;
+        long timesModified = 0;
+
+        boolean summaryExists = false;
+        boolean pullRemoteScriptExists = false;
+
+        /*
+         * As returned by SimulationsInfo.getSimulationProperties(), so may be null
+         */
+        Properties simProps = null;
+
+        String[] fileNames = new String[0];
+        long[] fileSizes = new long[0];
+        long[] filesModified = new long[0];
+
+        /**
+         * True if this is a simulation with its data present
+         */
+        boolean isLocalSimulation()
+        {
+            return summaryExists && timesModified != 0;
+        }
+
+        /**
+         * True if this is a simulation run remotely whose data hasn't been pulled back yet
+         */
+        boolean isRemoteSimulation()
+        {
+            return summaryExists && timesModified == 0 && pullRemoteScriptExists;
+        }
+
+        long getTotalFileSize()
+        {
+            long total = 0;
+            for (long size: fileSizes)
+            {
+                total = total + size;
+            }
+            return total;
+        }
+    }
+
+
+    SimulationCatalogue(File simulationsDir)
+    {
+        this.simulationsDir = simulationsDir;
+
+        load();
+    }
+
+    File getCatalogueFile()
+    {
+        return new File(simulationsDir, catalogueFileName);
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Gets the entry for the directory, reading the directory again only if it has changed since it was recorded.
+     * Returns null if simDir isn't a directory
+     */
+    synchronized Entry getEntry(File simDir)
+    {
+        Entry entry = entries.get(simDir.getName());
+
+        if (entry != null && isUpToDate(entry, simDir))
+        {
+            return entry;
+        }
+
+        if (!simDir.isDirectory())
+        {
+            if (entry != null)
+            {
+                entries.remove(simDir.getName());
+                changed = true;
+            }
+            return null;
+        }
+
+        logger.logComment("Reading simulation directory: " + simDir);
+
+        entry = createEntry(simDir);
+        entries.put(entry.name, entry);
+        changed = true;
+
+        return entry;
+    }
+
+    /**
+     * Removes the entries for any simulations not in the list
+     */
+    synchronized void retainOnly(Set<String> simNames)
+    {
+        if (entries.keySet().retainAll(simNames))
+        {
+            changed = true;
+        }
+    }
+
+    private static File getSummaryFile(File simDir)
+    {
+        File simSummaryFile = new File(simDir, SimulationsInfo.simSummaryFileName);
+
+        if (!simSummaryFile.exists())
+        {
+            simSummaryFile = new File(simDir, SimulationsInfo.oldSimSummaryFileName);
+        }
+        return simSummaryFile;
+    }
+
+    /*
+     * Files are added to a simulation directory as the simulation runs and its data is pulled back,
+     * which changes the directory's modification time. The properties & time files and the sizes and
+     * times of the data files are checked too, in case they're overwritten, which doesn't change the
+     * directory's time
+     */
+    private static boolean isUpToDate(Entry entry, File simDir)
+    {
+        if (simDir.lastModified() != entry.dirModified ||
+            getSummaryFile(simDir).lastModified() != entry.summaryModified ||
+            new File(simDir, SimulationsInfo.simulatorPropsFileName).lastModified() != entry.simulatorPropsModified ||
+            new File(simDir, entry.timesFileName).lastModified() != entry.timesModified)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < entry.fileNames.length; i++)
+        {
+            File file = new File(simDir, entry.fileNames[i]);
+
+            if (file.length() != entry.fileSizes[i] || file.lastModified() != entry.filesModified[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Entry createEntry(File simDir)
+    {
+        Entry entry = new Entry();
+
+        entry.name = simDir.getName();
+        entry.dirModified = simDir.lastModified();
+
+        File simSummaryFile = getSummaryFile(simDir);
+        entry.summaryModified = simSummaryFile.lastModified();
+        entry.summaryExists = simSummaryFile.exists();
+
+        entry.simulatorPropsModified = new File(simDir, SimulationsInfo.simulatorPropsFileName).lastModified();
+
+        File timesFile = SimulationData.getTimesFile(simDir);
+        entry.timesFileName = timesFile.getName();
+        entry.timesModified = timesFile.lastModified();
+
+        entry.pullRemoteScriptExists = new File(simDir, RemoteLogin.remotePullScriptName).exists();
+
+        if (entry.summaryExists)
+        {
+            entry.simProps = SimulationsInfo.getSimulationProperties(simDir);
+        }
+
+        File[] files = simDir.listFiles();
+
+        if (files != null)
+        {
+            ArrayList<File> dataFiles = new ArrayList<File>();
+            for (File file: files)
+            {
+                if (file.isFile()) dataFiles.add(file);
+            }
+            entry.fileNames = new String[dataFiles.size()];
+            entry.fileSizes = new long[dataFiles.size()];
+            entry.filesModified = new long[dataFiles.size()];
+
+            for (int i = 0; i < dataFiles.size(); i++)
+            {
+                entry.fileNames[i] = dataFiles.get(i).getName();
+                entry.fileSizes[i] = dataFiles.get(i).length();
+                entry.filesModified[i] = dataFiles.get(i).lastModified();
+            }
+        }
+        return entry;
+    }
+
+
+    /*
+     * Reads the saved catalogue, if there is one. Any problem reading it just means the directories are read again
+     */
+    private void load()
+    {
+        File catalogueFile = getCatalogueFile();
+
+        if (!catalogueFile.exists()) return;
+
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(catalogueFile)));
+
+            if (in.readInt() != FORMAT_VERSION)
+            {
+                logger.logComment("Ignoring catalogue in old format: " + catalogueFile);
+                return;
+            }
+
+            int numEntries = in.readInt();
+
+            for (int i = 0; i < numEntries; i++)
+            {
+                Entry entry = new Entry();
+
+                entry.name = readString(in);
+                entry.dirModified = in.readLong();
+                entry.summaryModified = in.readLong();
+                entry.simulatorPropsModified = in.readLong();
+                entry.timesFileName = readString(in);
+                entry.timesModified = in.readLong();
+                entry.summaryExists = in.readBoolean();
+                entry.pullRemoteScriptExists = in.readBoolean();
+
+                int numProps = in.readInt();
+                if (numProps >= 0)
+                {
+                    entry.simProps = new Properties();
+                    for (int j = 0; j < numProps; j++)
+                    {
+                        String propName = readString(in);
+                        entry.simProps.setProperty(propName, readString(in));
+                    }
+                }
+
+                int numFiles = in.readInt();
+                if (numFiles < 0) throw new IOException("Invalid number of files: " + numFiles);
+
+                entry.fileNames = new String[numFiles];
+                entry.fileSizes = new long[numFiles];
+                entry.filesModified = new long[numFiles];
+
+                for (int j = 0; j < numFiles; j++)
+                {
+                    entry.fileNames[j] = readString(in);
+                    entry.fileSizes[j] = in.readLong();
+                    entry.filesModified[j] = in.readLong();
+                }
+                entries.put(entry.name, entry);
+            }
+            logger.logComment("Read " + entries.size() + " entries from: " + catalogueFile);
+        }
+        catch (IOException ex)
+        {
+            logger.logComment("Problem reading the catalogue: " + catalogueFile + ", " + ex);
+            entries.clear();
+        }
+        finally
+        {
+            try
+            {
+                if (in != null) in.close();
+            }
+            catch (IOException ex)
+            {
+                // ignore...
+            }
+        }
+    }
+
+    /**
+     * Saves the catalogue if any entries have changed. It's written to a temporary file first, so a
+     * partly written catalogue is never read
+     */
+    synchronized void save()
+    {
+        if (!changed) return;
+
+        File catalogueFile = getCatalogueFile();
+        File tempFile = new File(simulationsDir, catalogueFileName + ".tmp");
+
+        DataOutputStream out = null;
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for (Entry entry: entries.values())
+            {
+                writeString(out, entry.name);
+                out.writeLong(entry.dirModified);
+                out.writeLong(entry.summaryModified);
+                out.writeLong(entry.simulatorPropsModified);
+                writeString(out, entry.timesFileName);
+                out.writeLong(entry.timesModified);
+                out.writeBoolean(entry.summaryExists);
+                out.writeBoolean(entry.pullRemoteScriptExists);
+
+                if (entry.simProps == null)
+                {
+                    out.writeInt(-1);
+                }
+                else
+                {
+                    Set<String> propNames = entry.simProps.stringPropertyNames();
+                    out.writeInt(propNames.size());
+                    for (String propName: propNames)
+                    {
+                        writeString(out, propName);
+                        writeString(out, entry.simProps.getProperty(propName));
+                    }
+                }
+
+                out.writeInt(entry.fileNames.length);
+                for (int j = 0; j < entry.fileNames.length; j++)
+                {
+                    writeString(out, entry.fileNames[j]);
+                    out.writeLong(entry.fileSizes[j]);
+                    out.writeLong(entry.filesModified[j]);
+                }
+            }
+            out.close();
+            out = null;
+
+            if (catalogueFile.exists() && !catalogueFile.delete())
+            {
+                logger.logComment("Unable to replace the catalogue: " + catalogueFile);
+                tempFile.delete();
+                return;
+            }
+            if (!tempFile.renameTo(catalogueFile))
+            {
+                logger.logComment("Unable to rename " + tempFile + " to " + catalogueFile);
+                tempFile.delete();
+                return;
+            }
+            changed = false;
+
+            logger.logComment("Saved " + entries.size() + " entries to: " + catalogueFile);
+        }
+        catch (IOException ex)
+        {
+            // Not essential, the directories will just be read again next time
+            logger.logComment("Problem saving the catalogue: " + catalogueFile + ", " + ex);
+        }
+        finally
+        {
+            try
+            {
+                if (out != null)
+                {
+                    out.close();
+                    tempFile.delete();
+                }
+            }
+            catch (IOException ex)
+            {
+                // ignore...
+            }
+        }
+    }
+
+    /*
+     * Unlike writeUTF(), not limited to 64K
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid string length: " + length);
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+}
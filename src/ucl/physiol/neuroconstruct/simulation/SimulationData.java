@@ -30,6 +30,7 @@ import java.io.*;
 import ucl.physiol.neuroconstruct.utils.*;
 import java.util.*;
 import java.text.*;
+import java.util.concurrent.*;
 import ncsa.hdf.object.Group;
 import ncsa.hdf.object.h5.H5File;
 import ucl.physiol.neuroconstruct.dataset.DataSet;
@@ -37,6 +38,7 @@ import ucl.physiol.neuroconstruct.neuroml.NetworkMLConstants;
 import ucl.physiol.neuroconstruct.neuroml.hdf5.Hdf5Exception;
 import ucl.physiol.neuroconstruct.neuroml.hdf5.Hdf5Utils;
 import ucl.physiol.neuroconstruct.utils.units.*;
+import ucl.physiol.neuroconstruct.project.GeneralProperties;
 import ucl.physiol.neuroconstruct.project.SimPlot;
 import ucl.physiol.neuroconstruct.project.PostSynapticObject;
 
@@ -54,6 +56,24 @@ public class SimulationData
 
     private ArrayList<DataStore> dataSources = new ArrayList<DataStore>();
 
+    /*
+     * The first DataStore (in the order of dataSources) for each cell group, cell number, segment,
+     * variable and (optionally) synapse, and all the DataStores for each cell. Built at the end of
+     * initialise(), so lookups of single traces don't need to check every DataStore
+     */
+    private HashMap<DataStoreKey, DataStore> firstStoreForKey = new HashMap<DataStoreKey, DataStore>();
+    private HashMap<DataStoreKey, ArrayList<DataStore>> storesForCell = new HashMap<DataStoreKey, ArrayList<DataStore>>();
+
+    /*
+     * Used in place of the variable in keys for the first voltage or spike DataStore
+     */
+    private static final String SPIKE_OR_VOLTAGE = "*"+SimPlot.SPIKE+"|"+SimPlot.VOLTAGE+"*";
+
+    /*
+     * Used in place of the segment id in the keys of storesForCell
+     */
+    private static final int ANY_SEGMENT = -1;
+
     private ArrayList<String> allCellRefsCached = null;
     private ArrayList<String> allVoltCellRefsCached = null;
 
@@ -61,6 +81,7 @@ public class SimulationData
 
     private static final String TIME_DATA_FILE_STD = "time."+SimPlot.CONTINUOUS_DATA_EXT;
     private static final String TIME_DATA_FILE_PSICS = "time.txt";
+    private static final String TIME_DATA_FILE_BINARY = TIME_DATA_FILE_STD+"."+SimPlot.BINARY_EXT;
     public static final String POSITION_DATA_FILE = "CellPositions."+SimPlot.CONTINUOUS_DATA_EXT;
     public static final String NETCONN_DATA_FILE = "NetworkConnections."+SimPlot.CONTINUOUS_DATA_EXT;
     public static final String ELEC_INPUT_DATA_FILE = "ElectricalInputs."+SimPlot.CONTINUOUS_DATA_EXT;
@@ -84,6 +105,117 @@ public class SimulationData
     private static double NON_SPIKING_VOLTAGE = -100;
     private static double SPIKING_VOLTAGE = 100;
 
+    /**
+     * Longest time to wait for a binary time file to be fully written
+     */
+    private static final int MAX_BINARY_WAIT_MS = 10000;
+
+    /*
+     * Pool shared by all the spike time calls, replaced only when the number of processors to use changes
+     */
+    private static ForkJoinPool spikeTimesPool = null;
+
+
+    /*
+     * Key for the index of DataStores. Segment ids < 0 (no segment given) are stored as 0, as
+     * cellSegRefsEqual() treats e.g. CellGroup_0 and CellGroup_0.0 as the same
+     */
+    private static final class DataStoreKey
+    {
+        final String cellGroup;
+        final int cellNumber;
+        final int segmentId;
+        final String variable;
+        final String synRef;
+        final int hash;
+
+        DataStoreKey(String cellGroup, int cellNumber, int segmentId, String variable, String synRef)
+        {
+            this.cellGroup = cellGroup;
+            this.cellNumber = cellNumber;
+            this.segmentId = segmentId;
+            this.variable = variable;
+            this.synRef = synRef;
+
+            int h = cellGroup.hashCode();
+            h = 31*h + cellNumber;
+            h = 31*h + segmentId;
+            h = 31*h + (variable == null ? 0 : variable.hashCode());
+            h = 31*h + (synRef == null ? 0 : synRef.hashCode());
+            hash = h;
+        }
+
+        DataStoreKey getCellKey()
+        {
+            return new DataStoreKey(cellGroup, cellNumber, ANY_SEGMENT, null, null);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof DataStoreKey)) return false;
+
+            DataStoreKey other = (DataStoreKey)obj;
+
+            return hash == other.hash
+                && cellNumber == other.cellNumber
+                && segmentId == other.segmentId
+                && cellGroup.equals(other.cellGroup)
+                && (variable == null ? other.variable == null : variable.equals(other.variable))
+                && (synRef == null ? other.synRef == null : synRef.equals(other.synRef));
+        }
+    }
+
+    /**
+     * Reads one column of a binary trace file when the DataStore is first used
+     */
+    private static class BinaryColumnLoader implements DataStore.DataLoader
+    {
+        private File file;
+        private int column;
+        private double scaleFactor;
+
+        BinaryColumnLoader(File file, int column, double scaleFactor)
+        {
+            this.file = file;
+            this.column = column;
+            this.scaleFactor = scaleFactor;
+        }
+
+        public double[] loadData() throws SimulationDataException
+        {
+            return new BinaryTraceFile(file).readColumn(column, scaleFactor);
+        }
+    }
+
+    /**
+     * Reads a text data file when the DataStore is first used
+     */
+    private static class TextFileLoader implements DataStore.DataLoader
+    {
+        private File file;
+        private double scaleFactor;
+        private boolean allowDoubleColumn;
+
+        TextFileLoader(File file, double scaleFactor, boolean allowDoubleColumn)
+        {
+            this.file = file;
+            this.scaleFactor = scaleFactor;
+            this.allowDoubleColumn = allowDoubleColumn;
+        }
+
+        public double[] loadData() throws SimulationDataException
+        {
+            return readDataFileToArray(file, scaleFactor, allowDoubleColumn);
+        }
+    }
+
 
     private SimulationData()
     {
@@ -136,6 +268,9 @@ public class SimulationData
         File psicsFile = new File(simDir,TIME_DATA_FILE_PSICS);
         if (psicsFile.exists())
             return psicsFile;
+        File binaryFile = new File(simDir,TIME_DATA_FILE_BINARY);
+        if (binaryFile.exists())
+            return binaryFile;
         return new File(simDir,TIME_DATA_FILE_STD);
     }
     public static String getStandardTimesFilename()
@@ -143,11 +278,40 @@ public class SimulationData
         return TIME_DATA_FILE_STD;
     }
 
+    /**
+     * Binary traces (see BinaryTraceFile) are saved with the name of the equivalent text file plus this suffix
+     */
+    public static String getBinaryFileSuffix()
+    {
+        return "."+SimPlot.BINARY_EXT;
+    }
+
+    public static boolean isBinaryTraceFile(String fileName)
+    {
+        return fileName.endsWith(getBinaryFileSuffix());
+    }
+
+    /*
+     * The name of the file, without the binary suffix if present
+     */
+    private static String getTextFileName(String fileName)
+    {
+        if (isBinaryTraceFile(fileName))
+            return fileName.substring(0, fileName.length() - getBinaryFileSuffix().length());
+        return fileName;
+    }
+
     public void reset()
     {
         this.allCellRefsCached = null;
         this.allVoltCellRefsCached = null;
+        for (DataStore ds: dataSources)
+        {
+            ds.release();
+        }
         this.dataSources.clear();
+        this.firstStoreForKey.clear();
+        this.storesForCell.clear();
         times = null;
         dataLoaded = false;
     }
@@ -185,22 +349,41 @@ public class SimulationData
                                                      unitSystem,
                                                      UnitConverter.NEUROCONSTRUCT_UNITS);
 
-        long timeLen = getTimesFile().length();
-        logger.logComment("Time file "+getTimesFile().getAbsolutePath()+" has length "+ timeLen);
-        try {
-            Thread.sleep(500);
-            
-            while (getTimesFile().length() != timeLen) {
-                timeLen = getTimesFile().length();
-                logger.logComment("Time file "+getTimesFile().getAbsolutePath()+" has length "+ timeLen);
-                Thread.sleep(500);
+        if (isBinaryTraceFile(getTimesFile().getName()))
+        {
+            // The header gives the full size, so no need to wait for the file to stop growing
+            BinaryTraceFile timeFile = new BinaryTraceFile(getTimesFile());
+            long startWait = System.currentTimeMillis();
+            try {
+                while (!timeFile.isComplete()) {
+                    if (System.currentTimeMillis()-startWait > MAX_BINARY_WAIT_MS)
+                        throw new SimulationDataException("Time file "+getTimesFile().getAbsolutePath()+" has length "
+                                                          +getTimesFile().length()+", expected "+timeFile.getExpectedLength());
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException ex) {
+                //
             }
-        } catch (InterruptedException ex) {
-            //
+            times = timeFile.readColumn(0, timeConversionFactor);
         }
-        
+        else
+        {
+            long timeLen = getTimesFile().length();
+            logger.logComment("Time file "+getTimesFile().getAbsolutePath()+" has length "+ timeLen);
+            try {
+                Thread.sleep(500);
 
-        times = readDataFileToArray(getTimesFile(), timeConversionFactor);
+                while (getTimesFile().length() != timeLen) {
+                    timeLen = getTimesFile().length();
+                    logger.logComment("Time file "+getTimesFile().getAbsolutePath()+" has length "+ timeLen);
+                    Thread.sleep(500);
+                }
+            } catch (InterruptedException ex) {
+                //
+            }
+
+            times = readDataFileToArray(getTimesFile(), timeConversionFactor);
+        }
         logger.logComment("There are "+times.length+" entries in the time file");
 
         double startTime = times[0];
@@ -213,12 +396,14 @@ public class SimulationData
         File[] cellDataFiles = dataDirectory.listFiles(
             new FilenameFilter()
         {
-            public boolean accept(File dir, String name)
+            public boolean accept(File dir, String fullName)
             {
+                String name = getTextFileName(fullName);
+
                 if ( (name.endsWith("." + SimPlot.CONTINUOUS_DATA_EXT) || 
                     name.endsWith("." + SimPlot.CONTINUOUS_DATA_EXT+".txt") || /* TEMP for PSICS!!*/
                     name.endsWith("." + SimPlot.SPIKE_EXT) ||
-                    name.endsWith("." + SimPlot.H5_EXT))
+                    (name.endsWith("." + SimPlot.H5_EXT) && name.equals(fullName)))
                     && !name.equals(TIME_DATA_FILE_STD)
                     && !name.equals(TIME_DATA_FILE_PSICS)
                     && !name.equals(POSITION_DATA_FILE)
@@ -228,12 +413,12 @@ public class SimulationData
                     && !name.equals(NetworkMLConstants.DEFAULT_NETWORKML_FILENAME_XML)
                     && name.indexOf("psics-out")<0)
                 {
-                    logger.logComment("-----   Taking " + name);
+                    logger.logComment("-----   Taking " + fullName);
                     return true;
                 }
                 else
                 {
-                    logger.logComment("-----   Rejecting " + name);
+                    logger.logComment("-----   Rejecting " + fullName);
                     return false;
                 }
 
@@ -250,7 +435,11 @@ public class SimulationData
             //for (DataStore ds: dataSources)
             //    System.out.print(ds.getCellSegRef()+".. ");
 
-            if (cellDataFiles[fileIndex].getName().indexOf("."+SimPlot.H5_EXT)>0)
+            boolean binary = isBinaryTraceFile(cellDataFiles[fileIndex].getName());
+
+            String fileName = getTextFileName(cellDataFiles[fileIndex].getName());
+
+            if (!binary && fileName.indexOf("."+SimPlot.H5_EXT)>0)
             {
                 try
                 {
@@ -290,19 +479,19 @@ public class SimulationData
 
                 String dataSourceName = null;
 
-                if (cellDataFiles[fileIndex].getName().indexOf("."+SimPlot.CONTINUOUS_DATA_EXT+".txt")>0)
+                if (fileName.indexOf("."+SimPlot.CONTINUOUS_DATA_EXT+".txt")>0)
                 {
-                    dataSourceName = cellDataFiles[fileIndex].getName().substring(0, cellDataFiles[fileIndex].getName().length()
+                    dataSourceName = fileName.substring(0, fileName.length()
                                                                           - ("." + SimPlot.CONTINUOUS_DATA_EXT+".txt").length());
                 }
-                else if (cellDataFiles[fileIndex].getName().indexOf("."+SimPlot.CONTINUOUS_DATA_EXT)>0)
+                else if (fileName.indexOf("."+SimPlot.CONTINUOUS_DATA_EXT)>0)
                 {
-                    dataSourceName = cellDataFiles[fileIndex].getName().substring(0, cellDataFiles[fileIndex].getName().length()
+                    dataSourceName = fileName.substring(0, fileName.length()
                                                                           - ("." + SimPlot.CONTINUOUS_DATA_EXT).length());
                 }
-                else if (cellDataFiles[fileIndex].getName().indexOf("."+SimPlot.SPIKE_EXT)>0)
+                else if (fileName.indexOf("."+SimPlot.SPIKE_EXT)>0)
                 {
-                    dataSourceName = cellDataFiles[fileIndex].getName().substring(0, cellDataFiles[fileIndex].getName().length()
+                    dataSourceName = fileName.substring(0, fileName.length()
                                                                           - ("." + SimPlot.SPIKE_EXT).length());
                 }
 
@@ -401,7 +590,46 @@ public class SimulationData
                 logger.logComment("yUnit: "+yUnit+", xUnit: "+xUnit+", conversionFactor: "+conversionFactor);
 
 
-                if (cellNum<0)  // probably from PyNN...
+                if (binary)
+                {
+                    File dataFile = cellDataFiles[fileIndex];
+
+                    if (cellNum<0)  // one column per cell
+                    {
+                        int numColumns = new BinaryTraceFile(dataFile).getNumColumns();
+
+                        for (int cellNumIndex= 0 ; cellNumIndex<numColumns;cellNumIndex++)
+                        {
+                            DataStore ds = new DataStore(new BinaryColumnLoader(dataFile, cellNumIndex, conversionFactor),
+                                                         cellGroup, cellNumIndex, segId, variable, xUnit, yUnit, pso);
+                            dataSources.add(ds);
+                        }
+                    }
+                    else if (variable.indexOf(SimPlot.SPIKE)<0)
+                    {
+                        DataStore ds = new DataStore(new BinaryColumnLoader(dataFile, 0, conversionFactor),
+                                                     cellGroup, cellNum, segId, variable, xUnit, yUnit, pso);
+                        dataSources.add(ds);
+                    }
+                    else
+                    {
+                        DataStore ds = new DataStore(new BinaryColumnLoader(dataFile, 0, timeConversionFactor),
+                                                     NON_SPIKING_VOLTAGE,
+                                                     SPIKING_VOLTAGE,
+                                                     startTime,
+                                                     endTime,
+                                                     timeStepToUse,
+                                                     cellGroup,
+                                                     cellNum,
+                                                     segId,
+                                                     variable,
+                                                     xUnit,
+                                                     yUnit,
+                                                     pso);
+                        dataSources.add(ds);
+                    }
+                }
+                else if (cellNum<0)  // probably from PyNN...
                 {
                     double[][] dataArrays = read2dDataFileToArrays(cellDataFiles[fileIndex], conversionFactor);
 
@@ -420,17 +648,15 @@ public class SimulationData
                 }
                 else if (variable.indexOf(SimPlot.SPIKE)<0)
                 {
-                    double[] dataArray = readDataFileToArray(cellDataFiles[fileIndex], conversionFactor, true);
-                    DataStore ds = new DataStore(dataArray, cellGroup, cellNum, segId, variable, xUnit, yUnit, pso);
+                    DataStore ds = new DataStore(new TextFileLoader(cellDataFiles[fileIndex], conversionFactor, true),
+                                                 cellGroup, cellNum, segId, variable, xUnit, yUnit, pso);
 
                     dataSources.add(ds);
 
                 }
                 else
                 {
-                    double[] spikeTimes = readDataFileToArray(cellDataFiles[fileIndex], timeConversionFactor);
-                    
-                    DataStore ds = new DataStore(spikeTimes,
+                    DataStore ds = new DataStore(new TextFileLoader(cellDataFiles[fileIndex], timeConversionFactor, false),
                                                  NON_SPIKING_VOLTAGE,
                                                  SPIKING_VOLTAGE,
                                                  startTime,
@@ -460,8 +686,104 @@ public class SimulationData
             logger.logComment(ds.toString());
         }
 
+        buildIndex();
+
         dataLoaded = true;
     }
+
+
+    private void buildIndex()
+    {
+        for (DataStore ds: dataSources)
+        {
+            String cellGroup = ds.getCellGroupName();
+            int cellNumber = ds.getCellNumber();
+            int segId = ds.getAssumedSegmentId();
+            String variable = ds.getVariable();
+
+            String synRef = null;
+            if (ds.isSynapticMechData())
+                synRef = ds.getPostSynapticObject().getSynRef();
+
+            addFirstStore(new DataStoreKey(cellGroup, cellNumber, segId, variable, null), ds);
+
+            if (synRef != null)
+                addFirstStore(new DataStoreKey(cellGroup, cellNumber, segId, variable, synRef), ds);
+
+            if (isSpikeOrVoltage(variable))
+            {
+                addFirstStore(new DataStoreKey(cellGroup, cellNumber, segId, SPIKE_OR_VOLTAGE, null), ds);
+
+                if (synRef != null)
+                    addFirstStore(new DataStoreKey(cellGroup, cellNumber, segId, SPIKE_OR_VOLTAGE, synRef), ds);
+            }
+
+            DataStoreKey cellKey = new DataStoreKey(cellGroup, cellNumber, ANY_SEGMENT, null, null);
+            ArrayList<DataStore> cellStores = storesForCell.get(cellKey);
+
+            if (cellStores == null)
+            {
+                cellStores = new ArrayList<DataStore>();
+                storesForCell.put(cellKey, cellStores);
+            }
+            cellStores.add(ds);
+        }
+    }
+
+    private void addFirstStore(DataStoreKey key, DataStore ds)
+    {
+        if (!firstStoreForKey.containsKey(key))
+            firstStoreForKey.put(key, ds);
+    }
+
+    private static boolean isSpikeOrVoltage(String variable)
+    {
+        return variable.indexOf(SimPlot.SPIKE) >= 0 || variable.equals(SimPlot.VOLTAGE);
+    }
+
+    /*
+     * Key for a cell seg ref in the form CellGroup_0 or CellGroup_0.3, or null if the
+     * reference can't be parsed (in which case there is no DataStore for it)
+     */
+    private static DataStoreKey getKey(String cellSegRef, String variable, String synRef)
+    {
+        int dotIndex = cellSegRef.indexOf('.');
+        String cellRef = dotIndex < 0 ? cellSegRef : cellSegRef.substring(0, dotIndex);
+
+        int underscoreIndex = cellRef.lastIndexOf('_');
+        if (underscoreIndex < 0) return null;
+
+        try
+        {
+            int cellNumber = Integer.parseInt(cellRef.substring(underscoreIndex + 1));
+            int segId = dotIndex < 0 ? 0 : Math.max(0, Integer.parseInt(cellSegRef.substring(dotIndex + 1)));
+
+            return new DataStoreKey(cellRef.substring(0, underscoreIndex), cellNumber, segId, variable, synRef);
+        }
+        catch (NumberFormatException ex)
+        {
+            return null;
+        }
+    }
+
+    /*
+     * The synapse reference (e.g. NetConn_1.DoubExpSyn.6) in cell item refs like
+     * SampleCellGroup_0.0.NetConn_1.DoubExpSyn.6, or null if there isn't one
+     */
+    private static String getSynRef(String cellItemRef, String cellSegRef)
+    {
+        if (cellItemRef.length() <= cellSegRef.length() + 1
+            || !cellItemRef.startsWith(cellSegRef)
+            || cellItemRef.charAt(cellSegRef.length()) != '.')
+            return null;
+
+        String rest = cellItemRef.substring(cellSegRef.length() + 1);
+
+        if (rest.indexOf('.') <= 0 || rest.indexOf('.') == rest.lastIndexOf('.'))
+            return null;
+
+        return rest;
+    }
     
     public boolean isDataLoaded()
     {
@@ -559,30 +881,188 @@ public class SimulationData
     {
         if (!dataLoaded) throw new SimulationDataException("Data not yet loaded from files!");
 
-        ArrayList<DataStore> datas = this.getDataForCellSegRef(cellSegRef, false);
+        DataStore volts = firstStoreForKey.get(getKey(cellSegRef, SPIKE_OR_VOLTAGE, null));
 
-        DataStore volts;
+        if (volts == null)
+            throw new SimulationDataException("Problem finding voltage data in "+cellSegRef+"");
 
+        volts.load();
+        return volts.getDataPoints();
+    }
 
-        for (DataStore ds: datas)
+
+    /**
+     * Spike times from startTime to stopTime (inclusive) in the voltage (or spike) data for the cell segment.
+     * The threshold crossings are cached in the DataStore, so asking again with the same threshold is quick
+     */
+    public double[] getSpikeTimes(String cellSegRef,
+                                  float threshold,
+                                  float startTime,
+                                  float stopTime) throws SimulationDataException
+    {
+        ArrayList<String> cellSegRefs = new ArrayList<String>();
+        cellSegRefs.add(cellSegRef);
+
+        return getSpikeTimes(cellSegRefs, threshold, startTime, stopTime).get(0);
+    }
+
+
+    /**
+     * Spike times from startTime to stopTime (inclusive) in the voltage (or spike) data for each of the
+     * cell segments, in the same order. The traces are analysed in parallel, and the threshold crossings
+     * are cached in the DataStores, so e.g. redrawing rasters & histograms doesn't recalculate them
+     */
+    public ArrayList<double[]> getSpikeTimes(List<String> cellSegRefs,
+                                             float threshold,
+                                             float startTime,
+                                             float stopTime) throws SimulationDataException
+    {
+        double[][] allSpikeTimes = getAllThresholdCrossings(cellSegRefs, threshold);
+
+        ArrayList<double[]> spikeSets = new ArrayList<double[]>(allSpikeTimes.length);
+
+        for (double[] spikeTimes: allSpikeTimes)
         {
-            String var = ds.getVariable();
+            spikeSets.add(SpikeAnalyser.getSpikeTimesInRange(spikeTimes, startTime, stopTime, true));
+        }
+        return spikeSets;
+    }
 
-            if (var.equals(SimPlot.VOLTAGE))
-            {
-                volts = getDataAtAllTimes(cellSegRef, SimPlot.VOLTAGE, true);
-                return volts.getDataPoints();
-            }
 
-            if (var.indexOf(SimPlot.SPIKE)>=0)
-            {
-                volts = getDataAtAllTimes(cellSegRef, var, true);
-                return volts.getDataPoints();
-            }
+    /**
+     * Interspike intervals of spikes from startTime up to (but not including) stopTime in the voltage
+     * (or spike) data for each of the cell segments, in the same order. See getSpikeTimes()
+     */
+    public ArrayList<double[]> getInterSpikeIntervals(List<String> cellSegRefs,
+                                                      float threshold,
+                                                      float startTime,
+                                                      float stopTime) throws SimulationDataException
+    {
+        double[][] allSpikeTimes = getAllThresholdCrossings(cellSegRefs, threshold);
+
+        ArrayList<double[]> isiSets = new ArrayList<double[]>(allSpikeTimes.length);
+
+        for (double[] spikeTimes: allSpikeTimes)
+        {
+            double[] spikesInRange = SpikeAnalyser.getSpikeTimesInRange(spikeTimes, startTime, stopTime, false);
+            isiSets.add(SpikeAnalyser.getInterSpikeIntervals(spikesInRange));
+        }
+        return isiSets;
+    }
+
+
+    private double[][] getAllThresholdCrossings(List<String> cellSegRefs,
+                                                float threshold) throws SimulationDataException
+    {
+        if (!dataLoaded) throw new SimulationDataException("Data not yet loaded from files!");
+
+        final double[] allTimes = getAllTimes();
+
+        DataStore[] stores = new DataStore[cellSegRefs.size()];
+
+        for (int i = 0; i < stores.length; i++)
+        {
+            // The first voltage or spike DataStore for the cell seg ref, as in getVoltageAtAllTimes()
+            stores[i] = firstStoreForKey.get(getKey(cellSegRefs.get(i), SPIKE_OR_VOLTAGE, null));
+
+            if (stores[i] == null)
+                throw new SimulationDataException("Problem finding voltage data in "+cellSegRefs.get(i)+"");
         }
-        throw new SimulationDataException("Problem finding voltage data in "+cellSegRef+"");
 
+        double[][] allSpikeTimes = new double[stores.length][];
+
+        SpikeTimesTask task = new SpikeTimesTask(stores, allTimes, threshold, allSpikeTimes, 0, stores.length);
+
+        getSpikeTimesPool().invoke(task);
 
+        if (task.getError() != null) throw task.getError();
+
+        return allSpikeTimes;
+    }
+
+
+    private static synchronized ForkJoinPool getSpikeTimesPool()
+    {
+        int numProcs = GeneralProperties.getNumProcessorstoUse();
+
+        if (spikeTimesPool == null || spikeTimesPool.getParallelism() != numProcs)
+        {
+            if (spikeTimesPool != null) spikeTimesPool.shutdown();
+
+            spikeTimesPool = new ForkJoinPool(numProcs);
+        }
+        return spikeTimesPool;
+    }
+
+
+    /*
+     * Finds the threshold crossings in a range of the DataStores, splitting the range up
+     * into separate tasks until there are only a few DataStores in each
+     */
+    private static class SpikeTimesTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 6301839527741268354L;
+
+        private static final int STORES_PER_TASK = 4;
+
+        DataStore[] stores;
+        double[] times;
+        float threshold;
+        double[][] allSpikeTimes;
+        int from;
+        int to;
+
+        /*
+         * Shared by all the subtasks
+         */
+        SimulationDataException[] error;
+
+        SpikeTimesTask(DataStore[] stores, double[] times, float threshold, double[][] allSpikeTimes, int from, int to)
+        {
+            this(stores, times, threshold, allSpikeTimes, from, to, new SimulationDataException[1]);
+        }
+
+        private SpikeTimesTask(DataStore[] stores, double[] times, float threshold, double[][] allSpikeTimes,
+                               int from, int to, SimulationDataException[] error)
+        {
+            this.stores = stores;
+            this.times = times;
+            this.threshold = threshold;
+            this.allSpikeTimes = allSpikeTimes;
+            this.from = from;
+            this.to = to;
+            this.error = error;
+        }
+
+        SimulationDataException getError()
+        {
+            return error[0];
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= STORES_PER_TASK)
+            {
+                for (int i = from; i < to; i++)
+                {
+                    try
+                    {
+                        allSpikeTimes[i] = stores[i].getSpikeTimes(times, threshold);
+                    }
+                    catch (SimulationDataException e)
+                    {
+                        error[0] = e;
+                        return;
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+
+            invokeAll(new SpikeTimesTask(stores, times, threshold, allSpikeTimes, from, mid, error),
+                      new SpikeTimesTask(stores, times, threshold, allSpikeTimes, mid, to, error));
+        }
     }
 
 
@@ -593,19 +1073,27 @@ public class SimulationData
         if (!dataLoaded) throw new SimulationDataException("Data not yet loaded from files!");
 
         String cellSegRef = getCellSegRef(cellItemRef);
+        String synRef = getSynRef(cellItemRef, cellSegRef);
 
-        for (DataStore ds : dataSources)
+        String variableToFind = variable;
+        if (incSpikeOrVoltage && isSpikeOrVoltage(variable))
+            variableToFind = SPIKE_OR_VOLTAGE;
+
+        DataStore ds = null;
+
+        // If a synapse is given, use the data for that one if present...
+        if (synRef != null)
+            ds = firstStoreForKey.get(getKey(cellSegRef, variableToFind, synRef));
+
+        // ...otherwise the first data for the variable on the segment
+        if (ds == null)
+            ds = firstStoreForKey.get(getKey(cellSegRef, variableToFind, null));
+
+        if (ds != null)
         {
-            if ( (ds.getVariable().equals(variable) ||
-                  (incSpikeOrVoltage &&
-                   (variable.indexOf(SimPlot.SPIKE) >= 0 || variable.equals(SimPlot.VOLTAGE)) &&
-                   (ds.getVariable().indexOf(SimPlot.SPIKE) >= 0 || ds.getVariable().equals(SimPlot.VOLTAGE))))
-                 && cellSegRefsEqual(cellSegRef, ds.getCellSegRef()))
-            {
-                return ds;
-            }
+            ds.load();
+            return ds;
         }
-
         
         throw new SimulationDataException("Problem loading data for "+variable+" in "+cellItemRef+". Data stores: "+ getCellSegRefs(false));
     }
@@ -662,12 +1150,12 @@ public class SimulationData
     }
 
 
-    private double[] readDataFileToArray(File dataFile, double scaleFactor) throws SimulationDataException
+    private static double[] readDataFileToArray(File dataFile, double scaleFactor) throws SimulationDataException
     {
         return readDataFileToArray(dataFile, scaleFactor, false);
     }
 
-    private double[] readDataFileToArray(File dataFile, double scaleFactor, boolean allowDoubleColumn) throws SimulationDataException
+    private static double[] readDataFileToArray(File dataFile, double scaleFactor, boolean allowDoubleColumn) throws SimulationDataException
     {
         String nextLine = null;
         double[] data;
@@ -682,7 +1170,7 @@ public class SimulationData
             /** @todo check if there's a quicker way to do this */
 
             //ArrayList<Double> tempList = new ArrayList<Double>(suggestedInitCapData);
-            double[] tempArray = new double[suggestedInitCapData];
+            double[] tempArray = new double[Math.max(16, suggestedInitCapData)];
 
             int numDataPointsAdded = 0;
 
@@ -752,9 +1240,10 @@ public class SimulationData
             Reader in = new FileReader(dataFile);
             LineNumberReader reader = new LineNumberReader(in);
 
-            /** @todo check if there's a quicker way to do this */
-            
-            HashMap<Integer, ArrayList<Double>> tempList = new HashMap<Integer, ArrayList<Double>>();
+            // Growable arrays of values for each cell number, with the number of values added to each
+            double[][] tempArrays = new double[0][];
+            int[] numAdded = new int[0];
+            int numCells = 0;
 
             while ( (nextLine = reader.readLine()) != null)
             {
@@ -771,31 +1260,42 @@ public class SimulationData
                     double nextVal = Double.parseDouble(sp[0]);
                     int cellNum = (int)Float.parseFloat(sp[1]); // in case it's 0.0, 1.0 etc.
                     //logger.logComment(cellNum+": "+nextVal, true);
-                    if (!tempList.containsKey(cellNum))
-                        tempList.put(cellNum, new ArrayList<Double>(suggestedInitCapData));
-                    ArrayList<Double> arr = tempList.get(cellNum);
-                    arr.add(scaleFactor * nextVal);
-                        
+
+                    if (cellNum >= tempArrays.length)
+                    {
+                        tempArrays = Arrays.copyOf(tempArrays, Math.max(cellNum + 1, tempArrays.length * 2));
+                        numAdded = Arrays.copyOf(numAdded, tempArrays.length);
+                    }
+                    if (tempArrays[cellNum] == null)
+                    {
+                        tempArrays[cellNum] = new double[Math.max(16, suggestedInitCapData)];
+                        numCells++;
+                    }
+                    else if (numAdded[cellNum] == tempArrays[cellNum].length)
+                    {
+                        tempArrays[cellNum] = Arrays.copyOf(tempArrays[cellNum], Math.max(16, numAdded[cellNum] * 2));
+                    }
+                    tempArrays[cellNum][numAdded[cellNum]] = scaleFactor * nextVal;
+                    numAdded[cellNum]++;
+
                 }
             }
 
-            if (tempList.size() > suggestedInitCapData) suggestedInitCapData = tempList.size();
-
             in.close();
-            
-            data = new double[tempList.keySet().size()][tempList.get(0).size()];
 
-            Set<Integer> cellNums = tempList.keySet();
-            
-            for (int cellNum: cellNums)
+            if (numCells == 0 || tempArrays[0] == null)
+                throw new SimulationDataException("No values found for cell 0 in PyNN format data file "+dataFile.getAbsolutePath());
+
+            int numPoints = numAdded[0];
+
+            data = new double[numCells][];
+
+            for (int cellNum = 0; cellNum < numCells; cellNum++)
             {
-                ArrayList<Double> vals = tempList.get(cellNum);
-                
-                for (int i = 0; i < vals.size(); i++)
-                {
-                    data[cellNum][i] = vals.get(i);
-                }
-                ////////////data[i] = tempList.get(i);
+                data[cellNum] = new double[numPoints];
+
+                if (tempArrays[cellNum] != null)
+                    System.arraycopy(tempArrays[cellNum], 0, data[cellNum], 0, Math.min(numPoints, numAdded[cellNum]));
             }
             //logger.logComment("Read in "+data[0].length+" values. First: "+data[0][0]+", last: "+data[data.length-1][data[0].length-1], true);
             return data;
@@ -975,8 +1475,14 @@ public class SimulationData
 
     public String getDateModified()
     {
-        long timeModified = getTimesFile().lastModified();
+        return getDateModified(getTimesFile().lastModified());
+    }
 
+    /**
+     * The time, e.g. the last modified time of the times file, in the format used by getDateModified()
+     */
+    public static String getDateModified(long timeModified)
+    {
         SimpleDateFormat formatter = new SimpleDateFormat("H:mm:ss (MMM d, yy)");
         java.util.Date modified = new java.util.Date(timeModified);
 
@@ -1054,22 +1560,21 @@ public class SimulationData
 
         ArrayList<DataStore> vars = new ArrayList<DataStore>();
 
-        for (DataStore ds : dataSources)
-        {
-            logger.logComment("Checking getDataForCellSegRef: "+ds+" against "+ cellSegRef);
+        DataStoreKey key = getKey(cellSegRef, null, null);
+        if (key == null) return vars;
+
+        ArrayList<DataStore> cellStores = storesForCell.get(key.getCellKey());
+        if (cellStores == null) return vars;
 
-            if (cellSegRefsEqual(ds.getCellSegRef(), cellSegRef))
+        for (DataStore ds : cellStores)
+        {
+            if (ds.getAssumedSegmentId() == key.segmentId)
             {
-                logger.logComment("Equals...: " );
                 vars.add(ds);
             }
-            if (inclSynapses && ds.getCellRef().equals(getCellOnlyReference(cellSegRef)))
+            if (inclSynapses && ds.isSynapticMechData())
             {
-                if (ds.isSynapticMechData())
-                {
-                    logger.logComment("Found a syn mech...: " );
-                    vars.add(ds);
-                }
+                vars.add(ds);
             }
         }
         return vars;
@@ -1103,15 +1608,16 @@ public class SimulationData
 
         ArrayList<String> cellSegRefs = new ArrayList<String>();
 
-        for (DataStore ds : dataSources)
-        {
-            logger.logComment("Checking getCellSegRefsForCellRef: "+ds+" against "+ cellRef);
+        DataStoreKey key = getKey(cellRef, null, null);
+        if (key == null) return cellSegRefs;
 
-            if (ds.getCellRef().equals(cellRef))
-            {
-                if (!cellSegRefs.contains(ds.getCellSegRef()))
-                    cellSegRefs.add(ds.getCellSegRef());
-            }
+        ArrayList<DataStore> cellStores = storesForCell.get(key.getCellKey());
+        if (cellStores == null) return cellSegRefs;
+
+        for (DataStore ds : cellStores)
+        {
+            if (!cellSegRefs.contains(ds.getCellSegRef()))
+                cellSegRefs.add(ds.getCellSegRef());
         }
         return cellSegRefs;
     }
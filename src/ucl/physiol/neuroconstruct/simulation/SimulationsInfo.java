@@ -28,9 +28,12 @@ package ucl.physiol.neuroconstruct.simulation;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.util.ArrayList;
 
+import javax.swing.SwingUtilities;
 import javax.swing.event.TreeModelListener;
 import javax.swing.table.*;
 
@@ -73,12 +76,20 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
 
     public static final String simSummaryFileName = "simulation.props";
 
-    private static String oldSimSummaryFileName = "sim_summary";
+    static String oldSimSummaryFileName = "sim_summary";
 
     public static final String simulatorPropsFileName = "simulator.props";
 
     public static final String psicsLogFile = "log.txt";
 
+    /**
+     * The simulations in the table, in the order shown
+     */
+    Vector<SimulationCatalogue.Entry> simEntries = new Vector<SimulationCatalogue.Entry>();
+
+    /**
+     * The SimulationData for each row, created from the entry when first needed
+     */
     Vector<SimulationData> simDataObjs = new Vector<SimulationData>();
 
     Vector<Properties> extraColumns = new Vector<Properties>();
@@ -87,6 +98,15 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
 
     ProcessFeedback pf = null;
 
+    private SimulationCatalogue catalogue = null;
+
+    /**
+     * Incremented on each refresh, so updates from remote pulls started before the last refresh can be ignored
+     */
+    private volatile int refreshCount = 0;
+
+    private static final int MAX_PARALLEL_REMOTE_PULLS = 8;
+
     private static HashMap<String, String> extraSimProperties = new HashMap<String, String>();
 
 
@@ -114,6 +134,8 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
             }
         };
 
+        catalogue = new SimulationCatalogue(simulationsDir);
+
         refresh(false);
     }
 
@@ -273,7 +295,7 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
     {
         if (parent instanceof AllSimRoot)
         {
-            SimulationData sd = simDataObjs.get(index);
+            SimulationData sd = getSimulationData(index);
             SimNode sn = new SimNode(sd);
             //sn.
             return sn;
@@ -336,7 +358,7 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
     {
         if (parent instanceof AllSimRoot)
         {
-            return simDataObjs.size();
+            return simEntries.size();
         }
         if (parent instanceof SimNode)
         {
@@ -437,11 +459,19 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
     }
 
 
+    /**
+     * Updates the list of simulations. Only simulation directories which have changed since they were
+     * recorded in the catalogue are read again. If checkRemote is true, the data of simulations run on
+     * remote machines is pulled back in the background, and their rows updated when it arrives
+     */
     public final void refresh(boolean checkRemote)
     {
         logger.logComment("Refreshing the contents of table model");
 
+        refreshCount++;
+
         allColumns.removeAllElements();
+        simEntries.removeAllElements();
         simDataObjs.removeAllElements();
         extraColumns.removeAllElements();
 
@@ -453,182 +483,182 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
 
         File[] childrenDirs = simulationsDir.listFiles();
 
+        ArrayList<SimulationCatalogue.Entry> remoteSims = new ArrayList<SimulationCatalogue.Entry>();
+        HashSet<String> simNames = new HashSet<String>();
 
-        // Quick reorder...
-        if (childrenDirs!=null && childrenDirs.length>1)
+        if (childrenDirs!=null)
         {
-
             logger.logComment("There are " + childrenDirs.length + " files in dir: " +
                           simulationsDir.getAbsolutePath());
-            if (listStyle.equals(listStyle.Date))
-            {
-                for (int j = 1; j < childrenDirs.length; j++)
-                {
-                    for (int k = 0; k < j; k++)
-                    {
-                        if (childrenDirs[j].lastModified()<childrenDirs[k].lastModified())
-                        {
-                            File earlierFile = childrenDirs[j];
-                            File laterFile = childrenDirs[k];
-                            childrenDirs[j] = laterFile;
-                            childrenDirs[k] = earlierFile;
-                        }
-                    }
-                }
-            }
-            else if (listStyle.equals(listStyle.Alphabetic))
+
+            if (childrenDirs.length>1 && listStyle.equals(ListStyle.Alphabetic))
             {
                 childrenDirs = GeneralUtils.reorderAlphabetically(childrenDirs, true);
             }
-        }
 
-        int rowNumber = 0;
-
-        if (childrenDirs!=null)
-        {
             for (int i = 0; i < childrenDirs.length; i++)
             {
                 if (childrenDirs[i].isDirectory())
                 {
-                    logger.logComment("Looking at directory: " + childrenDirs[i].getAbsolutePath());
-
-                    SimulationData simData = null;
-
-                    File timeFile = SimulationData.getTimesFile(childrenDirs[i]);
+                    SimulationCatalogue.Entry entry = catalogue.getEntry(childrenDirs[i]);
 
-                    File pullRemoteScript = new File(childrenDirs[i], RemoteLogin.remotePullScriptName);
+                    if (entry==null) continue;
 
-                    File simSummaryFile = new File(childrenDirs[i], simSummaryFileName);
+                    simNames.add(entry.name);
 
-                    if (!simSummaryFile.exists())
+                    if (entry.isLocalSimulation())
                     {
-                        logger.logComment("Trying for the legacy name...");
-                        simSummaryFile = new File(childrenDirs[i], oldSimSummaryFileName);
+                        simEntries.add(entry);
                     }
-
-                    logger.logComment("Simulation summary file: " + simSummaryFile+", exists: "+ simSummaryFile.exists());
-
-                    if (pullRemoteScript.exists() && !timeFile.exists() && checkRemote)
+                    else if (entry.isRemoteSimulation())
                     {
-
-                        try
-                        {
-                            String toRun = pullRemoteScript.getAbsolutePath();
-
-                            if (GeneralUtils.isWindowsBasedPlatform())
-                            {
-                                String cygwinFriendlyFile = GeneralUtils.convertToCygwinPath(pullRemoteScript.getAbsolutePath());
-
-                                toRun = "bash -c "+cygwinFriendlyFile; // Assumes cygwin installed...
-                            }
-
-                            String res = ProcessManager.runCommand(toRun, pf, 3000);
-                            logger.logComment("Result of executing pullRemoteScript file: " + pullRemoteScript+": "+ res);
-                        }
-                        catch (Exception ex)
-                        {
-                            logger.logComment("Error running: "+ pullRemoteScript+ex);
-                        }
+                        simEntries.add(entry);
+                        remoteSims.add(entry);
                     }
-
-                    try
+                    else
                     {
-                        if (simSummaryFile.exists() && timeFile.exists())
-                        {
-                            simData = new SimulationData(childrenDirs[i].getAbsoluteFile(), true);
-
-                            simDataObjs.add(simData);
+                        logger.logComment("That's not a valid simulation dir: " + childrenDirs[i]);
+                    }
+                }
+            }
+        }
 
-                            extraColumns.setSize(rowNumber + 1);
+        catalogue.retainOnly(simNames);
+        catalogue.save();
 
-                            Properties simProps = new Properties();
+        if (listStyle.equals(ListStyle.Date))
+        {
+            Collections.sort(simEntries, new Comparator<SimulationCatalogue.Entry>()
+            {
+                public int compare(SimulationCatalogue.Entry e1, SimulationCatalogue.Entry e2)
+                {
+                    return Long.compare(e1.dirModified, e2.dirModified);
+                }
+            });
+        }
 
-                            try
-                            {
-                                logger.logComment("Row number: " + rowNumber);
+        simDataObjs.setSize(simEntries.size());
 
-                                //FileInputStream fis = new FileInputStream(simSummaryFile);
-                                //simProps.load(fis);
-                                //fis.close();
+        for (SimulationCatalogue.Entry entry: simEntries)
+        {
+            extraColumns.add(entry.simProps);
 
-                                simProps = getSimulationProperties(simSummaryFile.getParentFile());
-                                logger.logComment("simProps at: " + simSummaryFile.getParentFile()+": "+simProps.keySet());
+            if (entry.simProps!=null)
+            {
+                for (String nextSimProp: entry.simProps.stringPropertyNames())
+                {
+                    if (!allColumns.contains(nextSimProp))
+                        allColumns.add(nextSimProp);
+                }
+            }
+        }
 
+        logger.logComment("Found " + simEntries.size() + " simulations, " + remoteSims.size() + " remote");
 
-                                extraColumns.setElementAt(simProps, rowNumber);
-                                logger.logComment("extraColumns: " + extraColumns);
+        if (checkRemote && !remoteSims.isEmpty())
+        {
+            pullRemoteSimulations(remoteSims);
+        }
 
-                                Enumeration simPropNames = simProps.propertyNames();
-                                while (simPropNames.hasMoreElements())
-                                {
-                                    String nextSimProp = (String) simPropNames.nextElement();
-                                    if (!allColumns.contains(nextSimProp))
-                                        allColumns.add(nextSimProp);
-                                }
+        this.fireTableStructureChanged();
 
-                                rowNumber++;
+    }
 
-                                logger.logComment("That's a valid simulation dir...");
 
-                            }
-                            catch (Exception ex)
-                            {
-                                logger.logError("Problem reading the sim summary from file: " + simSummaryFile, ex);
-                            }
+    /*
+     * Runs the scripts to pull back the data of simulations run remotely, a few at a time in the
+     * background. The rows of simulations whose data arrives are updated on the event dispatch thread
+     */
+    private void pullRemoteSimulations(ArrayList<SimulationCatalogue.Entry> remoteSims)
+    {
+        final int refreshNumber = refreshCount;
+        final AtomicInteger remaining = new AtomicInteger(remoteSims.size());
 
-                        }
-                        else if (simSummaryFile.exists() && pullRemoteScript.exists())
-                        {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(remoteSims.size(), MAX_PARALLEL_REMOTE_PULLS));
 
-                            simData = new SimulationData(childrenDirs[i].getAbsoluteFile(), false);
+        for (final SimulationCatalogue.Entry entry: remoteSims)
+        {
+            pool.execute(new Runnable()
+            {
+                public void run()
+                {
+                    File simDir = new File(simulationsDir, entry.name);
 
-                            simData.setDataAtRemoteLocation(true);
+                    runPullRemoteScript(new File(simDir, RemoteLogin.remotePullScriptName));
 
-                            simDataObjs.add(simData);
+                    final SimulationCatalogue.Entry updatedEntry = catalogue.getEntry(simDir);
 
-                            extraColumns.setSize(rowNumber + 1);
+                    if (remaining.decrementAndGet()==0)
+                    {
+                        catalogue.save();
+                    }
 
-                            logger.logComment("pullRemoteScript file: " + pullRemoteScript+", exists: "+ pullRemoteScript.exists());
-                            Properties simProps = new Properties();
-                            try
+                    if (updatedEntry!=entry)
+                    {
+                        SwingUtilities.invokeLater(new Runnable()
+                        {
+                            public void run()
                             {
-                                simProps = getSimulationProperties(simSummaryFile.getParentFile());
+                                replaceEntry(refreshNumber, entry, updatedEntry);
+                            }
+                        });
+                    }
+                }
+            });
+        }
+        // Tasks already submitted will still be run
+        pool.shutdown();
+    }
 
-                                extraColumns.setElementAt(simProps, rowNumber);
-                                logger.logComment("extraColumns: " + extraColumns);
+    private void runPullRemoteScript(File pullRemoteScript)
+    {
+        try
+        {
+            String toRun = pullRemoteScript.getAbsolutePath();
 
-                                Enumeration simPropNames = simProps.propertyNames();
-                                while (simPropNames.hasMoreElements())
-                                {
-                                    String nextSimProp = (String) simPropNames.nextElement();
-                                    if (!allColumns.contains(nextSimProp))
-                                        allColumns.add(nextSimProp);
-                                }
+            if (GeneralUtils.isWindowsBasedPlatform())
+            {
+                String cygwinFriendlyFile = GeneralUtils.convertToCygwinPath(pullRemoteScript.getAbsolutePath());
 
+                toRun = "bash -c "+cygwinFriendlyFile; // Assumes cygwin installed...
+            }
 
-                                rowNumber++;
+            String res = ProcessManager.runCommand(toRun, pf, 3000);
+            logger.logComment("Result of executing pullRemoteScript file: " + pullRemoteScript+": "+ res);
+        }
+        catch (Exception ex)
+        {
+            logger.logComment("Error running: "+ pullRemoteScript+ex);
+        }
+    }
 
-                                logger.logComment("That's a valid simulation dir...");
-                            }
-                            catch (Exception ex)
-                            {
-                                logger.logError("Problem reading the sim summary from file: " + simSummaryFile, ex);
-                            }
-                        }
+    /*
+     * Replaces the entry for a simulation after its data has been pulled back, unless the list has been refreshed since
+     */
+    private void replaceEntry(int refreshNumber, SimulationCatalogue.Entry oldEntry, SimulationCatalogue.Entry newEntry)
+    {
+        if (refreshNumber!=refreshCount) return;
 
-                    }
-                    catch (SimulationDataException ex1)
-                    {
-                        logger.logComment("That's not a valid simulation dir...");
-                    }
+        int row = simEntries.indexOf(oldEntry);
 
-                }
-            }
+        if (row<0) return;
+
+        if (newEntry==null)
+        {
+            simEntries.remove(row);
+            simDataObjs.remove(row);
+            extraColumns.remove(row);
+            fireTableRowsDeleted(row, row);
+            return;
         }
-        this.fireTableStructureChanged();
 
-    }
+        simEntries.set(row, newEntry);
+        simDataObjs.set(row, null);
+        extraColumns.set(row, newEntry.simProps);
+        dataInSims.remove(newEntry.name);
 
+        fireTableRowsUpdated(row, row);
+    }
 
 
     public int getColumnCount()
@@ -638,7 +668,7 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
 
     public int getRowCount()
     {
-        return simDataObjs.size();
+        return simEntries.size();
     }
 
     @Override
@@ -649,26 +679,44 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
 
     public SimulationData getSimulationData(int row)
     {
-        return simDataObjs.get(row);
+        SimulationData simData = simDataObjs.get(row);
+
+        if (simData==null)
+        {
+            SimulationCatalogue.Entry entry = simEntries.get(row);
+            try
+            {
+                simData = new SimulationData(new File(simulationsDir, entry.name).getAbsoluteFile(), false);
+
+                simData.setDataAtRemoteLocation(entry.isRemoteSimulation());
+
+                simDataObjs.set(row, simData);
+            }
+            catch (SimulationDataException ex)
+            {
+                logger.logError("Problem reading simulation: " + entry.name, ex);
+            }
+        }
+        return simData;
     }
 
 
     public Object getValueAt(int row, int col)
     {
-        SimulationData sim = simDataObjs.get(row);
+        SimulationCatalogue.Entry entry = simEntries.get(row);
 
         switch (col)
         {
             case COL_NUM_NAME:
-                return sim.getSimulationName();
+                return entry.name;
 
             case COL_NUM_DATE:
             {
-                if (sim.isDataAtRemoteLocation() && !sim.getTimesFile().exists())
+                if (entry.isRemoteSimulation())
                 {
                     return "Remote simulation";
                 }
-                return sim.getDateModified();
+                return SimulationData.getDateModified(entry.timesModified);
             }
             default:
             {
@@ -865,7 +913,7 @@ public class SimulationsInfo extends AbstractTableModel implements TreeModel
         StringBuilder conns = new StringBuilder();
         for (String netConn: project.generatedNetworkConnections.getNamesNonEmptyNetConns())
         {
-            conns.append(netConn+" ("+project.generatedNetworkConnections.getSynapticConnections(netConn).size()+")  ");
+            conns.append(netConn+" ("+project.generatedNetworkConnections.getNumberSynapticConnections(netConn)+")  ");
         }
 
         props.setProperty("Net connections", conns.toString());
@@ -93,7 +93,8 @@ public class SpikeAnalyser
 
         //logger.logComment("Getting spikes in data of length "+voltages.length, true);
 
-        ArrayList<Double> spikeTimes = new ArrayList<Double>();
+        double[] spikeTimes = new double[16];
+        int numSpikes = 0;
 
         boolean spiking = false;
 
@@ -107,7 +108,10 @@ public class SpikeAnalyser
                     if (times[i] >= startTime &&
                         times[i] <= stopTime)
                     {
-                        spikeTimes.add(new Double(times[i]));
+                        if (numSpikes == spikeTimes.length)
+                            spikeTimes = Arrays.copyOf(spikeTimes, numSpikes * 2);
+
+                        spikeTimes[numSpikes++] = times[i];
                     }
                 }
                 spiking = true;
@@ -118,16 +122,50 @@ public class SpikeAnalyser
             }
         }
 
-        /** @todo Improve... */
-        double[] spikeTimeArray = new double[spikeTimes.size()];
+        return Arrays.copyOf(spikeTimes, numSpikes);
+
+    }
+
 
-        for (int i = 0; i < spikeTimes.size(); i++)
+    /**
+     * The spike times (in increasing order) from startTime up to stopTime (including stopTime
+     * only if includeStopTime is true)
+     */
+    public static double[] getSpikeTimesInRange(double[] spikeTimes,
+                                                double startTime,
+                                                double stopTime,
+                                                boolean includeStopTime)
+    {
+        int first = 0;
+        while (first < spikeTimes.length && spikeTimes[first] < startTime)
         {
-            spikeTimeArray[i] = spikeTimes.get(i);
+            first++;
         }
+        int last = spikeTimes.length;
+        while (last > first &&
+               (spikeTimes[last - 1] > stopTime || (!includeStopTime && spikeTimes[last - 1] == stopTime)))
+        {
+            last--;
+        }
+        // A copy even if all are in range, as spikeTimes may be cached (e.g. in a DataStore)
+        if (first == 0 && last == spikeTimes.length) return spikeTimes.clone();
+
+        return Arrays.copyOfRange(spikeTimes, first, last);
+    }
+
 
-        return spikeTimeArray;
+    /**
+     * The intervals between successive spikes (in increasing order)
+     */
+    public static double[] getInterSpikeIntervals(double[] spikeTimes)
+    {
+        double[] isis = new double[Math.max(0, spikeTimes.length - 1)];
 
+        for (int i = 0; i < isis.length; i++)
+        {
+            isis[i] = spikeTimes[i + 1] - spikeTimes[i];
+        }
+        return isis;
     }
 
     public static ArrayList<Double> getInterSpikeIntervals(float[] voltages,
@@ -302,7 +340,7 @@ public class SpikeAnalyser
             if (binNum>=0 && binNum<numBins)
             {
                 numInEach[binNum]++;
-                logger.logComment("numInEach[binNum]: " + numInEach[binNum]);
+                if (logger.isEnabled()) logger.logComment("numInEach[binNum]: " + numInEach[binNum]);
             }
         }
 
@@ -317,15 +355,18 @@ public class SpikeAnalyser
                                            float pauseMin)
     {
 
-        logger.logComment("spikes1 len: " + spikes1.length);
-        logger.logComment("spikes2 len: " + spikes2.length);
+        if (logger.isEnabled())
+        {
+            logger.logComment("spikes1 len: " + spikes1.length);
+            logger.logComment("spikes2 len: " + spikes2.length);
+        }
 
 
         float[] correl = new float[ ( (int) Math.ceil(window / binSize) * 2) + 1];
 
         int binNum = (int)Math.ceil(window/binSize);
 
-        logger.logComment("correl size: " + correl.length+", binNum: "+binNum);
+        if (logger.isEnabled()) logger.logComment("correl size: " + correl.length+", binNum: "+binNum);
 
         int binCnt, spike1Cnt, spike2Cnt, spike2Start = 0;
 
@@ -334,16 +375,19 @@ public class SpikeAnalyser
         for (spike1Cnt = 0; spike1Cnt < spikes1.length; spike1Cnt++)
         {
             logger.logComment("-------------------------------------------------------------------");
-            logger.logComment("    Spike num of spikes1: " + spike1Cnt);
-            logger.logComment("    spikes1[spike1Cnt]: " + spikes1[spike1Cnt]);
+            if (logger.isEnabled())
+            {
+                logger.logComment("    Spike num of spikes1: " + spike1Cnt);
+                logger.logComment("    spikes1[spike1Cnt]: " + spikes1[spike1Cnt]);
+            }
 
             spike2Cnt = spike2Start;
 
-            logger.logComment("spike2Cnt: " + spike2Cnt+", size: "+ spikes2.length);
+            if (logger.isEnabled()) logger.logComment("spike2Cnt: " + spike2Cnt+", size: "+ spikes2.length);
 
             if (spike2Cnt< spikes2.length)
             {
-                logger.logComment("spikes2[spike2Cnt]: " + spikes2[spike2Cnt]);
+                if (logger.isEnabled()) logger.logComment("spikes2[spike2Cnt]: " + spikes2[spike2Cnt]);
 
                 if (spike1Cnt == 0 || ( (spikes1[spike1Cnt] - spikes1[spike1Cnt - 1]) >= pauseMin))
                 {
@@ -351,39 +395,48 @@ public class SpikeAnalyser
 
                     pSpike1Num++;
 
-                    logger.logComment("pSpike1Num: " + pSpike1Num);
+                    if (logger.isEnabled()) logger.logComment("pSpike1Num: " + pSpike1Num);
 
                     while ( (spike2Cnt < spikes2.length) && ( (spikes2[spike2Cnt] - spikes1[spike1Cnt]) <= window))
                     {
-                        logger.logComment("---   in while, spike2Cnt: " + spike2Cnt);
+                        if (logger.isEnabled())
+                        {
+                            logger.logComment("---   in while, spike2Cnt: " + spike2Cnt);
 
 
-                        logger.logComment("(spikes2[spike2Cnt] - spikes1[spike1Cnt]): "
-                                          + (spikes2[spike2Cnt] - spikes1[spike1Cnt]));
+                            logger.logComment("(spikes2[spike2Cnt] - spikes1[spike1Cnt]): "
+                                              + (spikes2[spike2Cnt] - spikes1[spike1Cnt]));
+                        }
 
 
                         if ( (spike2Cnt < spikes2.length) && (spikes1[spike1Cnt] - spikes2[spike2Cnt]) <= window)
                         {
                             logger.logComment("in if");
 
-                            logger.logComment("spikes2[spike2Cnt]: " + spikes2[spike2Cnt]);
+                            if (logger.isEnabled())
+                            {
+                                logger.logComment("spikes2[spike2Cnt]: " + spikes2[spike2Cnt]);
 
-                            logger.logComment("(spikes2[spike2Cnt] - spikes1[spike1Cnt]): "
-                                              + (spikes2[spike2Cnt] - spikes1[spike1Cnt]));
+                                logger.logComment("(spikes2[spike2Cnt] - spikes1[spike1Cnt]): "
+                                                  + (spikes2[spike2Cnt] - spikes1[spike1Cnt]));
+                            }
 
                             binCnt = (int) (Math.round( (spikes2[spike2Cnt] - spikes1[spike1Cnt]) / binSize) + binNum);
-                            logger.logComment("binCnt; " + binCnt);
+                            if (logger.isEnabled()) logger.logComment("binCnt; " + binCnt);
                             correl[binCnt]++;
-                            logger.logComment("correl[binCnt]; " + correl[binCnt]);
+                            if (logger.isEnabled()) logger.logComment("correl[binCnt]; " + correl[binCnt]);
                         }
                         else
                         {
                             spike2Start = spike2Cnt + 1;
-                            logger.logComment("in else.....spike2Start: " + spike2Start);
-                            logger.logComment("in else.....spikes2[spike2Cnt]: " + spikes2[spike2Cnt]);
+                            if (logger.isEnabled())
+                            {
+                                logger.logComment("in else.....spike2Start: " + spike2Start);
+                                logger.logComment("in else.....spikes2[spike2Cnt]: " + spikes2[spike2Cnt]);
+                            }
                         }
                         spike2Cnt++;
-                        logger.logComment("---> spike2Cnt: " + spike2Cnt);
+                        if (logger.isEnabled()) logger.logComment("---> spike2Cnt: " + spike2Cnt);
                     }
                 }
                 else
@@ -405,53 +458,214 @@ public class SpikeAnalyser
             correl[i] = correl[i]/(float)pSpike1Num;
         }
 
-        logger.logComment(pSpike1Num + " relevant spikes in train 1.");
+        if (logger.isEnabled()) logger.logComment(pSpike1Num + " relevant spikes in train 1.");
 
         return correl;
     }
 
 
+    /**
+     * Number of spikes in all the spike sets in [t, t + slideSize] for each of the times t between
+     * startTime and stopTime. See SpikeTrainMatrix.getSlidingSynchrony()
+     */
     public static DataSet getSlidingSpikeSynchrony(ArrayList<double[]> spikeSets,
                                                  double[] times,
                                                  float slideSize,
                                                  float startTime,
                                                  float stopTime)
     {
-        String desc = "Synchrony of "+spikeSets.size()+" spike sets over "+slideSize+" ms sliding window";
+        SpikeTrainMatrix matrix = new SpikeTrainMatrix(spikeSets, slideSize, startTime, stopTime);
 
-        DataSet cellGroupSync = new DataSet(desc.toString(), desc.toString(),
-            "ms", "", "Time", "Num spikes over "+slideSize+" ms");
+        return matrix.getSlidingSynchrony(times, slideSize);
+    }
+
+
+    /**
+     * Cross correlation of two continuous traces sampled at the same times, c[k - minLag] = sum of
+     * traceA[i]*traceB[i+k] over all i, for each lag k from minLag to maxLag. Points beyond the
+     * ends of the traces count as 0. An FFT is used (O(n log n)) unless the traces or the range
+     * of lags are small enough for the direct sum to be quicker.
+     */
+    public static double[] continuousCrossCorrelation(double[] traceA,
+                                                      double[] traceB,
+                                                      int minLag,
+                                                      int maxLag)
+    {
+        int numLags = maxLag - minLag + 1;
+        double[] correl = new double[Math.max(numLags, 0)];
+
+        if (numLags <= 0 || traceA.length == 0 || traceB.length == 0)
+            return correl;
 
+        if ((long)traceA.length * numLags <= MAX_DIRECT_CORRELATION_OPS)
+        {
+            for (int k = minLag; k <= maxLag; k++)
+            {
+                int start = Math.max(0, -k);
+                int end = Math.min(traceA.length, traceB.length - k);
+                double sum = 0;
 
-        cellGroupSync.setGraphFormat(PlotCanvas.USE_LINES_FOR_PLOT);
+                for (int i = start; i < end; i++)
+                {
+                    sum += traceA[i] * traceB[i + k];
+                }
+                correl[k - minLag] = sum;
+            }
+            return correl;
+        }
 
-        for(int j=0;j<times.length;j++)
+        int n = 1;
+        while (n < traceA.length + traceB.length - 1)
         {
-            double time = times[j];
+            n = n << 1;
+        }
 
-            int numSpikes = 0;
+        double[] reA = Arrays.copyOf(traceA, n);
+        double[] imA = new double[n];
+        double[] reB = Arrays.copyOf(traceB, n);
+        double[] imB = new double[n];
 
-            if(time>=startTime && time <=stopTime)
+        fft(reA, imA, false);
+        fft(reB, imB, false);
+
+        // conj(A) * B
+        for (int i = 0; i < n; i++)
+        {
+            double re = reA[i] * reB[i] + imA[i] * imB[i];
+            double im = reA[i] * imB[i] - imA[i] * reB[i];
+            reA[i] = re;
+            imA[i] = im;
+        }
+
+        fft(reA, imA, true);
+
+        for (int k = minLag; k <= maxLag; k++)
+        {
+            if (k > -traceA.length && k < traceB.length)
             {
-                for (int i = 0; i <  spikeSets.size(); i++)
-                {
-                    double[] spikes = spikeSets.get(i);
+                correl[k - minLag] = reA[(k + n) % n];
+            }
+        }
+        return correl;
+    }
 
-                    for (int idx = 0; idx < spikes.length; idx++)
-                    {
-                        if ((spikes[idx]>=time) && (spikes[idx] <= time + slideSize))
-                        {
-                            numSpikes++;
-                        }
-                    }
-                }
 
-                cellGroupSync.addPoint(time, numSpikes);
+    /**
+     * Normalised cross correlation (Pearson correlation coefficient at each lag) of two traces
+     * sampled at the same times, for lags -maxLag to maxLag points
+     */
+    public static double[] normalisedCrossCorrelation(double[] traceA,
+                                                      double[] traceB,
+                                                      int maxLag)
+    {
+        double[] devA = getDeviations(traceA);
+        double[] devB = getDeviations(traceB);
+
+        double[] correl = continuousCrossCorrelation(devA, devB, -1 * maxLag, maxLag);
+
+        double norm = Math.sqrt(continuousCrossCorrelation(devA, devA, 0, 0)[0]
+                                * continuousCrossCorrelation(devB, devB, 0, 0)[0]);
+
+        for (int i = 0; i < correl.length; i++)
+        {
+            correl[i] = norm == 0 ? 0 : correl[i] / norm;
+        }
+        return correl;
+    }
+
+
+    private static double[] getDeviations(double[] trace)
+    {
+        double total = 0;
+        for (double val: trace)
+        {
+            total += val;
+        }
+        double average = total / trace.length;
+
+        double[] devs = new double[trace.length];
+        for (int i = 0; i < trace.length; i++)
+        {
+            devs[i] = trace[i] - average;
+        }
+        return devs;
+    }
+
+
+    /*
+     * Below this (points * lags) the direct sum is used for continuousCrossCorrelation()
+     */
+    private static final long MAX_DIRECT_CORRELATION_OPS = 1 << 16;
+
+    /*
+     * In place radix 2 FFT, length of arrays must be a power of 2. The inverse is scaled by 1/n
+     */
+    private static void fft(double[] re, double[] im, boolean inverse)
+    {
+        int n = re.length;
+
+        for (int i = 1, j = 0; i < n; i++)
+        {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit = bit >> 1)
+            {
+                j = j ^ bit;
             }
+            j = j ^ bit;
 
+            if (i < j)
+            {
+                double tmp = re[i];
+                re[i] = re[j];
+                re[j] = tmp;
+                tmp = im[i];
+                im[i] = im[j];
+                im[j] = tmp;
+            }
+        }
+
+        double[] cos = new double[n / 2];
+        double[] sin = new double[n / 2];
+        for (int i = 0; i < n / 2; i++)
+        {
+            double angle = 2 * Math.PI * i / n;
+            cos[i] = Math.cos(angle);
+            sin[i] = inverse ? Math.sin(angle) : -1 * Math.sin(angle);
         }
 
-        return cellGroupSync;
+        for (int len = 2; len <= n; len = len << 1)
+        {
+            int half = len >> 1;
+            int step = n / len;
+
+            for (int i = 0; i < n; i += len)
+            {
+                for (int j = 0; j < half; j++)
+                {
+                    double wr = cos[j * step];
+                    double wi = sin[j * step];
+                    int u = i + j;
+                    int v = u + half;
+
+                    double tr = re[v] * wr - im[v] * wi;
+                    double ti = re[v] * wi + im[v] * wr;
+
+                    re[v] = re[u] - tr;
+                    im[v] = im[u] - ti;
+                    re[u] += tr;
+                    im[u] += ti;
+                }
+            }
+        }
+
+        if (inverse)
+        {
+            for (int i = 0; i < n; i++)
+            {
+                re[i] = re[i] / n;
+                im[i] = im[i] / n;
+            }
+        }
     }
 
     
@@ -0,0 +1,447 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.util.*;
+import java.util.concurrent.*;
+import ucl.physiol.neuroconstruct.dataset.*;
+import ucl.physiol.neuroconstruct.gui.plotter.*;
+import ucl.physiol.neuroconstruct.project.GeneralProperties;
+import ucl.physiol.neuroconstruct.utils.*;
+
+
+/**
+ * A population of spike trains binned into a sparse matrix (for each train, the sorted bin
+ * numbers of its spikes), for calculating all-pairs cross correlograms and population
+ * synchrony. The calculations are split over a ForkJoinPool shared by all instances.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class SpikeTrainMatrix
+{
+    private static ClassLogger logger = new ClassLogger("SpikeTrainMatrix");
+
+    private float binSize;
+    private float startTime;
+    private float stopTime;
+    private int numBins;
+
+    /*
+     * Bins of the spikes in train i are spikeBins[trainStarts[i]] to spikeBins[trainStarts[i+1]-1]
+     */
+    private int[] trainStarts = null;
+    private int[] spikeBins = null;
+
+    /*
+     * All the spike times, in order, for the sliding synchrony
+     */
+    private double[] allSpikes = null;
+
+    /*
+     * Shared by all instances, sized by the processor setting in GeneralProperties
+     */
+    private static ForkJoinPool pool = null;
+
+    /*
+     * Number of trains handled in one task
+     */
+    private static final int TRAINS_PER_TASK = 16;
+
+    /*
+     * Number of time points handled in one task for the sliding synchrony
+     */
+    private static final int TIMES_PER_TASK = 4096;
+
+
+    /**
+     * @param spikeSets Spike times of each train, in increasing order
+     * @param binSize Size of bins in ms
+     * @param startTime Spikes before this aren't binned
+     * @param stopTime Spikes after this aren't binned
+     */
+    public SpikeTrainMatrix(List<double[]> spikeSets,
+                            float binSize,
+                            float startTime,
+                            float stopTime)
+    {
+        this.binSize = binSize;
+        this.startTime = startTime;
+        this.stopTime = stopTime;
+        this.numBins = (int)Math.ceil((stopTime - startTime) / binSize);
+
+        int numTrains = spikeSets.size();
+        int totalSpikes = 0;
+
+        for (double[] spikes: spikeSets)
+        {
+            totalSpikes += spikes.length;
+        }
+
+        trainStarts = new int[numTrains + 1];
+        int[] bins = new int[totalSpikes];
+        allSpikes = new double[totalSpikes];
+
+        int binCount = 0;
+        int spikeCount = 0;
+
+        for (int i = 0; i < numTrains; i++)
+        {
+            trainStarts[i] = binCount;
+
+            for (double spike: spikeSets.get(i))
+            {
+                allSpikes[spikeCount++] = spike;
+
+                if (spike >= startTime && spike <= stopTime)
+                {
+                    int bin = (int)Math.floor((spike - startTime) / binSize);
+                    if (bin == numBins) bin = numBins - 1; // i.e. exactly at stopTime
+
+                    bins[binCount++] = bin;
+                }
+            }
+            Arrays.sort(bins, trainStarts[i], binCount);
+        }
+        trainStarts[numTrains] = binCount;
+        spikeBins = Arrays.copyOf(bins, binCount);
+
+        Arrays.parallelSort(allSpikes);
+
+        if (logger.isEnabled()) logger.logComment("Binned "+binCount+" of "+totalSpikes+" spikes from "+numTrains
+                                                  +" trains into "+numBins+" bins");
+    }
+
+
+    public int getNumTrains()
+    {
+        return trainStarts.length - 1;
+    }
+
+    public int getNumBins()
+    {
+        return numBins;
+    }
+
+    public float getBinSize()
+    {
+        return binSize;
+    }
+
+    /**
+     * Number of spikes of the train between startTime and stopTime
+     */
+    public int getNumSpikes(int train)
+    {
+        return trainStarts[train + 1] - trainStarts[train];
+    }
+
+    /**
+     * Index of the correlogram of trains i and j (i &lt; j) in the array returned by
+     * getAllCrossCorrelograms()
+     */
+    public static int getPairIndex(int i, int j, int numTrains)
+    {
+        return (int)(((long)i * (2L * numTrains - i - 1)) / 2) + (j - i - 1);
+    }
+
+
+    /**
+     * Cross correlogram of two trains. Element maxLagBins + k is the number of spikes in train2
+     * which are k bins after a spike in train1, divided by the number of spikes in train1
+     */
+    public float[] getCrossCorrelogram(int train1, int train2, int maxLagBins)
+    {
+        float[] correl = new float[2 * maxLagBins + 1];
+
+        addCrossCorrelogram(train1, train2, maxLagBins, correl);
+
+        int num1 = getNumSpikes(train1);
+        if (num1 > 0)
+        {
+            for (int i = 0; i < correl.length; i++)
+            {
+                correl[i] = correl[i] / num1;
+            }
+        }
+        return correl;
+    }
+
+
+    /*
+     * Adds the counts of spike pairs at each lag to counts, using a window moving along train2
+     */
+    private void addCrossCorrelogram(int train1, int train2, int maxLagBins, float[] counts)
+    {
+        int end1 = trainStarts[train1 + 1];
+        int start2 = trainStarts[train2];
+        int end2 = trainStarts[train2 + 1];
+
+        int windowStart = start2;
+
+        for (int s1 = trainStarts[train1]; s1 < end1; s1++)
+        {
+            int bin1 = spikeBins[s1];
+
+            while (windowStart < end2 && spikeBins[windowStart] < bin1 - maxLagBins)
+            {
+                windowStart++;
+            }
+
+            for (int s2 = windowStart; s2 < end2; s2++)
+            {
+                int lag = spikeBins[s2] - bin1;
+                if (lag > maxLagBins) break;
+
+                counts[lag + maxLagBins]++;
+            }
+        }
+    }
+
+
+    /**
+     * Cross correlograms (as in getCrossCorrelogram()) of every pair of trains i &lt; j, in the
+     * order given by getPairIndex(). Note: the result has n(n-1)/2 rows, so for large populations
+     * getPopulationCrossCorrelogram() may be more appropriate
+     */
+    public float[][] getAllCrossCorrelograms(final int maxLagBins)
+    {
+        final int numTrains = getNumTrains();
+        final float[][] correls = new float[(int)((long)numTrains * (numTrains - 1) / 2)][];
+
+        runInPool(new TrainRangeTask(0, numTrains, new TrainProcessor()
+        {
+            public void processTrain(int i)
+            {
+                for (int j = i + 1; j < numTrains; j++)
+                {
+                    correls[getPairIndex(i, j, numTrains)] = getCrossCorrelogram(i, j, maxLagBins);
+                }
+            }
+        }));
+
+        return correls;
+    }
+
+
+    /**
+     * Average of the cross correlograms (as in getCrossCorrelogram()) of every pair of trains
+     * i &lt; j, where train i has at least one spike
+     */
+    public float[] getPopulationCrossCorrelogram(final int maxLagBins)
+    {
+        final int numTrains = getNumTrains();
+        final double[] total = new double[2 * maxLagBins + 1];
+        final int[] numPairs = new int[1];
+
+        runInPool(new TrainRangeTask(0, numTrains, new TrainProcessor()
+        {
+            public void processTrain(int i)
+            {
+                int num1 = getNumSpikes(i);
+                if (num1 == 0) return;
+
+                float[] counts = new float[total.length];
+
+                for (int j = i + 1; j < numTrains; j++)
+                {
+                    addCrossCorrelogram(i, j, maxLagBins, counts);
+                }
+
+                synchronized (total)
+                {
+                    for (int k = 0; k < total.length; k++)
+                    {
+                        total[k] += counts[k] / num1;
+                    }
+                    numPairs[0] += numTrains - i - 1;
+                }
+            }
+        }));
+
+        float[] correl = new float[total.length];
+        for (int k = 0; k < total.length; k++)
+        {
+            correl[k] = numPairs[0] == 0 ? 0 : (float)(total[k] / numPairs[0]);
+        }
+        return correl;
+    }
+
+
+    /**
+     * For each of the times t between startTime and stopTime, the number of spikes of all the
+     * trains in [t, t + slideSize]. Each count is found with a binary search on the ordered spike
+     * times, so the cost doesn't depend on the number of trains
+     */
+    public DataSet getSlidingSynchrony(final double[] times, final float slideSize)
+    {
+        String desc = "Synchrony of "+getNumTrains()+" spike sets over "+slideSize+" ms sliding window";
+
+        DataSet cellGroupSync = new DataSet(desc, desc,
+            "ms", "", "Time", "Num spikes over "+slideSize+" ms");
+
+        cellGroupSync.setGraphFormat(PlotCanvas.USE_LINES_FOR_PLOT);
+
+        final int[] numSpikes = new int[times.length];
+
+        runInPool(new TimeRangeTask(times, 0, times.length, slideSize, numSpikes));
+
+        for (int j = 0; j < times.length; j++)
+        {
+            if (times[j] >= startTime && times[j] <= stopTime)
+            {
+                cellGroupSync.addPoint(times[j], numSpikes[j]);
+            }
+        }
+        return cellGroupSync;
+    }
+
+
+    /*
+     * Index of first spike >= time (if inclusive), or > time
+     */
+    private int firstSpikeAfter(double time, boolean inclusive)
+    {
+        int low = 0;
+        int high = allSpikes.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (allSpikes[mid] < time || (!inclusive && allSpikes[mid] == time))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+
+    private void runInPool(ForkJoinTask<?> task)
+    {
+        getPool().invoke(task);
+    }
+
+    private static synchronized ForkJoinPool getPool()
+    {
+        int numThreads = GeneralProperties.getNumProcessorstoUse();
+
+        if (pool == null || pool.getParallelism() != numThreads)
+        {
+            // Tasks already running in an old pool are allowed to finish
+            if (pool != null) pool.shutdown();
+
+            pool = new ForkJoinPool(numThreads);
+        }
+        return pool;
+    }
+
+
+    private interface TrainProcessor
+    {
+        public void processTrain(int train);
+    }
+
+
+    private static class TrainRangeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 4872361925408317652L;
+
+        int fromTrain;
+        int toTrain;
+        TrainProcessor processor;
+
+        TrainRangeTask(int fromTrain, int toTrain, TrainProcessor processor)
+        {
+            this.fromTrain = fromTrain;
+            this.toTrain = toTrain;
+            this.processor = processor;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (toTrain - fromTrain <= TRAINS_PER_TASK)
+            {
+                for (int i = fromTrain; i < toTrain; i++)
+                {
+                    processor.processTrain(i);
+                }
+                return;
+            }
+            int mid = (fromTrain + toTrain) >>> 1;
+
+            invokeAll(new TrainRangeTask(fromTrain, mid, processor),
+                      new TrainRangeTask(mid, toTrain, processor));
+        }
+    }
+
+
+    private class TimeRangeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = -2209451736640584193L;
+
+        double[] times;
+        int from;
+        int to;
+        float slideSize;
+        int[] numSpikes;
+
+        TimeRangeTask(double[] times, int from, int to, float slideSize, int[] numSpikes)
+        {
+            this.times = times;
+            this.from = from;
+            this.to = to;
+            this.slideSize = slideSize;
+            this.numSpikes = numSpikes;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= TIMES_PER_TASK)
+            {
+                for (int j = from; j < to; j++)
+                {
+                    double time = times[j];
+                    if (time >= startTime && time <= stopTime)
+                    {
+                        numSpikes[j] = firstSpikeAfter(time + slideSize, false) - firstSpikeAfter(time, true);
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+
+            invokeAll(new TimeRangeTask(times, from, mid, slideSize, numSpikes),
+                      new TimeRangeTask(times, mid, to, slideSize, numSpikes));
+        }
+    }
+
+}
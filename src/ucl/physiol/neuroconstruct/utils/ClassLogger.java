@@ -27,6 +27,7 @@
 package ucl.physiol.neuroconstruct.utils;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.io.*;
 
 /**
@@ -80,6 +81,35 @@ public class ClassLogger
                                                                       forceConsoleOut || verboseMode);
     }
 
+    /**
+     * Whether a call to logComment(comment) will output anything. In frequently called code,
+     * check this before building the comment, e.g.
+     *
+     *     if (logger.isEnabled()) logger.logComment("Point: "+ Utils3D.getShortStringDesc(point));
+     *
+     * so no Strings are created when logging is off.
+     */
+    public boolean isEnabled()
+    {
+        return verboseMode || (!silentMode && logger.isLogging());
+    }
+
+    /**
+     * Logs the comment given by the supplier, which is only called if logging is enabled
+     */
+    public void logComment(Supplier<String> comment)
+    {
+        if (isEnabled()) logComment(comment.get(), false);
+    }
+
+    /**
+     * Logs String.format(format, args), which is only created if logging is enabled
+     */
+    public void logFormat(String format, Object... args)
+    {
+        if (isEnabled()) logComment(String.format(format, args), false);
+    }
+
 
     /**
      * Logs a comment to the console/logfile based on settings in GeneralProperties,
@@ -47,6 +47,7 @@ public class Display3DProperties
     public static final String DISPLAY_SOMA_SOLID_NEURITE_NONE= "Soma solid, no neurites";
     public static final String DISPLAY_SOMA_SOLID_NEURITE_LINE= "Soma solid, neurite lines";
     public static final String DISPLAY_SOMA_LINE_NEURITE_LINE = "All lines";
+    public static final String DISPLAY_MERGED_LOD = "Merged, level of detail (large networks)";
     public static final String DISPLAY_INPUTS_AS_PROBES = "Probes";
     public static final String DISPLAY_INPUTS_AS_SPHERES = "Spheres";
 
@@ -162,6 +163,7 @@ public class Display3DProperties
         options.add(DISPLAY_SOMA_SOLID_NEURITE_LINE);
         options.add(DISPLAY_SOMA_SOLID_NEURITE_NONE);
         options.add(DISPLAY_SOMA_LINE_NEURITE_LINE);
+        options.add(DISPLAY_MERGED_LOD);
         //options.add(DISPLAY_NEURON);
         //options.add(DISPLAY_GENESIS_SIMPLE);
         //options.add(DISPLAY_GENESIS_MULTI);
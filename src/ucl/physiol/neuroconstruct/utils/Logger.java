@@ -131,12 +131,20 @@ public class Logger
     }
 
 
-    protected void log(String className, String comment, boolean error, boolean forceConsoleOut)
+    /**
+     * Whether anything logged (without forcing console output) will be written anywhere
+     */
+    public boolean isLogging()
     {
-        if (! (initialSaveToFileState ||
+        return initialSaveToFileState ||
                GeneralProperties.getLogFileSaveToFilePolicy() ||
-               GeneralProperties.getLogFilePrintToScreenPolicy() ||
-               forceConsoleOut))
+               GeneralProperties.getLogFilePrintToScreenPolicy();
+    }
+
+
+    protected void log(String className, String comment, boolean error, boolean forceConsoleOut)
+    {
+        if (!(forceConsoleOut || isLogging()))
             return;
 
         if (comment.indexOf("\n") > 0)
@@ -61,6 +61,10 @@ public class UserSettings
     private boolean generateIgor = false;
 
     private int numProcessorstoUse = -1;
+
+    private boolean reproducibleParallelGeneration = false;
+
+    private int traceCacheSizeMB = 256;
     
     private String prefNeuroMLVersionString = null;
 
@@ -104,6 +108,26 @@ public class UserSettings
         this.numProcessorstoUse = numProcessorstoUse;
     }
 
+    public boolean getReproducibleParallelGeneration()
+    {
+        return reproducibleParallelGeneration;
+    }
+
+    public void setReproducibleParallelGeneration(boolean reproducible)
+    {
+        this.reproducibleParallelGeneration = reproducible;
+    }
+
+    public int getTraceCacheSizeMB()
+    {
+        return traceCacheSizeMB;
+    }
+
+    public void setTraceCacheSizeMB(int sizeMB)
+    {
+        this.traceCacheSizeMB = sizeMB;
+    }
+
 
 
 
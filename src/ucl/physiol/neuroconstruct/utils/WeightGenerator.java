@@ -31,10 +31,11 @@ package ucl.physiol.neuroconstruct.utils;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import ucl.physiol.neuroconstruct.project.*;
-import ucl.physiol.neuroconstruct.utils.equation.Argument;
+import ucl.physiol.neuroconstruct.utils.equation.CompiledExpression;
 import ucl.physiol.neuroconstruct.utils.equation.EquationException;
 import ucl.physiol.neuroconstruct.utils.equation.EquationUnit;
 import ucl.physiol.neuroconstruct.utils.equation.Expression;
+import ucl.physiol.neuroconstruct.utils.equation.Variable;
 
 /**
  * Generates numbers according to a fixed pattern (see NumberGenerator)
@@ -55,6 +56,26 @@ public class WeightGenerator extends NumberGenerator
     
     public EquationUnit inhomoExpr; 
     //public String inhomoExprString;
+
+    /*
+     * inhomoExpr compiled with r as the only variable, and the expression it was compiled from
+     */
+    private transient volatile CompiledExpression compiledExpr = null;
+    private transient volatile EquationUnit compiledFrom = null;
+
+    /*
+     * Per thread buffer for the value of r passed to compiledExpr
+     */
+    private static final ThreadLocal<double[]> distBuffer = new ThreadLocal<double[]>()
+    {
+        @Override
+        protected double[] initialValue()
+        {
+            return new double[1];
+        }
+    };
+
+    private static final Variable[] functionVars = new Variable[]{new Variable("r")};
     
     public boolean somaToSoma = false; // if this flag is true the expression is a function of the soma to soma distance
       
@@ -178,14 +199,26 @@ public class WeightGenerator extends NumberGenerator
     public float getNextNumber(float dist)
     {
 
-        Argument r = new Argument("r", dist);
-        Argument[] args = new Argument[]{r};
-        
         double y = 0.0;
         
         try {
             
-            y = this.inhomoExpr.evaluateAt(args);
+            EquationUnit expr = this.inhomoExpr;
+            
+            // compiledFrom is read first and written last, so compiledExpr is at least as new
+            boolean sameExpr = compiledFrom == expr;
+            CompiledExpression compiled = this.compiledExpr;
+            
+            if (compiled == null || !sameExpr || !compiled.isCurrent())
+            {
+                compiled = expr.compile(functionVars);
+                this.compiledExpr = compiled;
+                this.compiledFrom = expr;
+            }
+            
+            double[] r = distBuffer.get();
+            r[0] = dist;
+            y = compiled.evaluate(r);
             
             
         } catch (EquationException ex) {
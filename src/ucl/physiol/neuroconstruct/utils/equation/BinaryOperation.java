@@ -75,38 +75,6 @@ public class BinaryOperation extends EquationUnit
         logger.logComment("New BinaryOperation created: "+ this.getName());
     }
 
-    public double evaluateAt(Argument[] args)  throws EquationException
-    {
-
-        if (operation == POWER)
-        {
-            return Math.pow( first.evaluateAt(args) , second.evaluateAt(args) );
-        }
-        else if (operation == PLUS)
-        {
-            return first.evaluateAt(args) + second.evaluateAt(args);
-        }
-        else if (operation == MINUS)
-        {
-            return first.evaluateAt(args) - second.evaluateAt(args);
-        }
-        else if (operation == PRODUCT)
-        {
-            return first.evaluateAt(args) * second.evaluateAt(args);
-        }
-        else if (operation == DIVISION)
-        {
-            return first.evaluateAt(args) / second.evaluateAt(args);
-        }
-
-        else
-        {
-            throw new EquationException("Unknown operation: "+ operation);
-        }
-    }
-
-
-
     public String getNiceString()
     {
         String niceFirst = first.getNiceString();
@@ -166,6 +134,7 @@ public class BinaryOperation extends EquationUnit
     public void setFirst(EquationUnit first)
     {
         this.first = first;
+        resetCompiled();
     }
 
     public char getOperation()
@@ -176,6 +145,7 @@ public class BinaryOperation extends EquationUnit
     public void setOperation(char operation)
     {
         this.operation = operation;
+        resetCompiled();
     }
 
     public EquationUnit getSecond()
@@ -186,6 +156,7 @@ public class BinaryOperation extends EquationUnit
     public void setSecond(EquationUnit second)
     {
         this.second = second;
+        resetCompiled();
     }
 
 
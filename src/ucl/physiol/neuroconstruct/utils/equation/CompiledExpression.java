@@ -0,0 +1,482 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.utils.equation;
+
+import java.util.ArrayList;
+
+
+/**
+ * Compiled form of an EquationUnit tree. Each variable is resolved to a slot index once
+ * and subtrees which don't depend on any variable (and don't call random()) are folded
+ * into constants, so {@link #evaluate(double[])} does no String comparisons and allocates
+ * nothing. Instances are immutable and can be evaluated by several threads at once.
+ *
+ * @author Padraig Gleeson
+ *
+ */
+
+public class CompiledExpression
+{
+    private final String[] variableNames;
+
+    private final Node root;
+
+    private final String niceString;
+
+    /*
+     * Every unit in the tree, with its getModificationCount() just before the tree was read
+     */
+    private final EquationUnit[] units;
+    private final int[] unitModifications;
+
+    /*
+     * Per thread buffer for the values matched to the arguments in evaluateAt(), grown as needed
+     */
+    private static final ThreadLocal<double[]> valueBuffer = new ThreadLocal<double[]>()
+    {
+        @Override
+        protected double[] initialValue()
+        {
+            return new double[4];
+        }
+    };
+
+
+    private CompiledExpression(String[] variableNames, Node root, String niceString,
+                               EquationUnit[] units, int[] unitModifications)
+    {
+        this.variableNames = variableNames;
+        this.root = root;
+        this.niceString = niceString;
+        this.units = units;
+        this.unitModifications = unitModifications;
+    }
+
+
+    /**
+     * Compiles the expression with one slot per variable, in the order the variables
+     * first appear in the expression
+     */
+    public static CompiledExpression compile(EquationUnit expression) throws EquationException
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        findVariables(expression, names);
+
+        return compile(expression, names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * Compiles the expression so that the value of variables[i] is read from slot i of the
+     * array passed to {@link #evaluate(double[])}
+     * @throws EquationException if the expression uses a variable not in the list
+     */
+    public static CompiledExpression compile(EquationUnit expression, Variable[] variables) throws EquationException
+    {
+        String[] names = new String[variables.length];
+        for (int i = 0; i < variables.length; i++)
+        {
+            names[i] = variables[i].getName();
+        }
+        return compile(expression, names);
+    }
+
+    /**
+     * Compiles the expression so that the value of variable variableNames[i] is read from
+     * slot i of the array passed to {@link #evaluate(double[])}
+     * @throws EquationException if the expression uses a variable not in the list
+     */
+    public static CompiledExpression compile(EquationUnit expression, String[] variableNames) throws EquationException
+    {
+        ArrayList<EquationUnit> unitList = new ArrayList<EquationUnit>();
+        findUnits(expression, unitList);
+
+        EquationUnit[] units = unitList.toArray(new EquationUnit[unitList.size()]);
+        int[] unitModifications = new int[units.length];
+        for (int i = 0; i < units.length; i++)
+        {
+            unitModifications[i] = units[i].getModificationCount();
+        }
+
+        String[] names = variableNames.clone();
+        Node root = compileNode(expression, names);
+
+        return new CompiledExpression(names, root, expression.getNiceString(), units, unitModifications);
+    }
+
+
+    private static void findUnits(EquationUnit unit, ArrayList<EquationUnit> units)
+    {
+        units.add(unit);
+
+        if (unit instanceof BinaryOperation)
+        {
+            BinaryOperation bo = (BinaryOperation)unit;
+            findUnits(bo.getFirst(), units);
+            findUnits(bo.getSecond(), units);
+        }
+        else if (unit instanceof FunctionUnit)
+        {
+            findUnits(((FunctionUnit)unit).getInternalEqn(), units);
+        }
+    }
+
+
+    private static void findVariables(EquationUnit unit, ArrayList<String> names)
+    {
+        if (unit instanceof Variable)
+        {
+            if (!names.contains(unit.getName()))
+                names.add(unit.getName());
+        }
+        else if (unit instanceof BinaryOperation)
+        {
+            BinaryOperation bo = (BinaryOperation)unit;
+            findVariables(bo.getFirst(), names);
+            findVariables(bo.getSecond(), names);
+        }
+        else if (unit instanceof FunctionUnit)
+        {
+            findVariables(((FunctionUnit)unit).getInternalEqn(), names);
+        }
+    }
+
+
+    private static Node compileNode(EquationUnit unit, String[] names) throws EquationException
+    {
+        if (unit instanceof Constant)
+        {
+            return new ConstantNode(((Constant)unit).getValue());
+        }
+        else if (unit instanceof Variable)
+        {
+            String name = unit.getName();
+            for (int i = 0; i < names.length; i++)
+            {
+                if (names[i].equals(name))
+                    return new VariableNode(i);
+            }
+            throw new EquationException("Asked to compile variable "+ name
+                                        + " but it is not one of the allowed variables: "
+                                        + java.util.Arrays.toString(names));
+        }
+        else if (unit instanceof BinaryOperation)
+        {
+            BinaryOperation bo = (BinaryOperation)unit;
+            Node first = compileNode(bo.getFirst(), names);
+            Node second = compileNode(bo.getSecond(), names);
+
+            Node node;
+            switch (bo.getOperation())
+            {
+                case BinaryOperation.PLUS:
+                    node = new PlusNode(first, second);
+                    break;
+                case BinaryOperation.MINUS:
+                    node = new MinusNode(first, second);
+                    break;
+                case BinaryOperation.PRODUCT:
+                    node = new ProductNode(first, second);
+                    break;
+                case BinaryOperation.DIVISION:
+                    node = new DivisionNode(first, second);
+                    break;
+                case BinaryOperation.POWER:
+                    node = new PowerNode(first, second);
+                    break;
+                default:
+                    throw new EquationException("Unknown operation: "+ bo.getOperation());
+            }
+
+            if (first instanceof ConstantNode && second instanceof ConstantNode)
+                return new ConstantNode(node.evaluate(null));
+
+            return node;
+        }
+        else if (unit instanceof FunctionUnit)
+        {
+            FunctionUnit fu = (FunctionUnit)unit;
+            Node internal = compileNode(fu.getInternalEqn(), names);
+
+            Node node = new FunctionNode(fu, internal);
+
+            if (internal instanceof ConstantNode && fu.isDeterministic())
+                return new ConstantNode(node.evaluate(null));
+
+            return node;
+        }
+        throw new EquationException("Unable to compile expression unit: "+ unit);
+    }
+
+
+    /**
+     * Evaluates the expression with the value of each variable taken from its slot
+     */
+    public double evaluate(double[] values)
+    {
+        return root.evaluate(values);
+    }
+
+    /**
+     * Evaluates the expression with the variables matched to the arguments by name
+     */
+    public double evaluateAt(Argument[] args) throws EquationException
+    {
+        if (variableNames.length == 0)
+            return root.evaluate(null);
+
+        double[] values = valueBuffer.get();
+        if (values.length < variableNames.length)
+        {
+            values = new double[variableNames.length];
+            valueBuffer.set(values);
+        }
+
+        for (int i = 0; i < variableNames.length; i++)
+        {
+            String name = variableNames[i];
+            boolean found = false;
+
+            for (int j = 0; j < args.length && !found; j++)
+            {
+                String argName = args[j].getName();
+                if (argName == name || argName.equals(name))
+                {
+                    values[i] = args[j].getValue();
+                    found = true;
+                }
+            }
+            if (!found)
+            {
+                throw new EquationException("Asked to evaluate variable "
+                                            + name + " with: "+
+                                            Argument.toString(args) +
+                                            " but can't find variable in arguments");
+            }
+        }
+        return root.evaluate(values);
+    }
+
+
+    /**
+     * @return the slot used for the named variable, or -1 if it has no slot
+     */
+    public int getSlot(String variableName)
+    {
+        for (int i = 0; i < variableNames.length; i++)
+        {
+            if (variableNames[i].equals(variableName))
+                return i;
+        }
+        return -1;
+    }
+
+    public String[] getVariableNames()
+    {
+        return variableNames.clone();
+    }
+
+    /**
+     * @return the name of the variable read from the slot
+     */
+    public String getVariableName(int slot)
+    {
+        return variableNames[slot];
+    }
+
+    public int getNumVariables()
+    {
+        return variableNames.length;
+    }
+
+    /**
+     * False if any EquationUnit in the tree this was compiled from has been changed since,
+     * in which case it may no longer match the expression
+     */
+    public boolean isCurrent()
+    {
+        for (int i = 0; i < units.length; i++)
+        {
+            if (units[i].getModificationCount() != unitModifications[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * True if the whole expression folded to a single constant
+     */
+    public boolean isConstant()
+    {
+        return root instanceof ConstantNode;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompiledExpression: "+ niceString + " with slots: "+ java.util.Arrays.toString(variableNames);
+    }
+
+
+
+    private static abstract class Node
+    {
+        abstract double evaluate(double[] values);
+    }
+
+    private static final class ConstantNode extends Node
+    {
+        private final double value;
+
+        ConstantNode(double value)
+        {
+            this.value = value;
+        }
+
+        double evaluate(double[] values)
+        {
+            return value;
+        }
+    }
+
+    private static final class VariableNode extends Node
+    {
+        private final int slot;
+
+        VariableNode(int slot)
+        {
+            this.slot = slot;
+        }
+
+        double evaluate(double[] values)
+        {
+            return values[slot];
+        }
+    }
+
+    private static final class FunctionNode extends Node
+    {
+        private final FunctionUnit function;
+        private final Node internal;
+
+        FunctionNode(FunctionUnit function, Node internal)
+        {
+            this.function = function;
+            this.internal = internal;
+        }
+
+        double evaluate(double[] values)
+        {
+            return function.evaluate(internal.evaluate(values));
+        }
+    }
+
+    private static final class PlusNode extends Node
+    {
+        private final Node first;
+        private final Node second;
+
+        PlusNode(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        double evaluate(double[] values)
+        {
+            return first.evaluate(values) + second.evaluate(values);
+        }
+    }
+
+    private static final class MinusNode extends Node
+    {
+        private final Node first;
+        private final Node second;
+
+        MinusNode(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        double evaluate(double[] values)
+        {
+            return first.evaluate(values) - second.evaluate(values);
+        }
+    }
+
+    private static final class ProductNode extends Node
+    {
+        private final Node first;
+        private final Node second;
+
+        ProductNode(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        double evaluate(double[] values)
+        {
+            return first.evaluate(values) * second.evaluate(values);
+        }
+    }
+
+    private static final class DivisionNode extends Node
+    {
+        private final Node first;
+        private final Node second;
+
+        DivisionNode(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        double evaluate(double[] values)
+        {
+            return first.evaluate(values) / second.evaluate(values);
+        }
+    }
+
+    private static final class PowerNode extends Node
+    {
+        private final Node first;
+        private final Node second;
+
+        PowerNode(Node first, Node second)
+        {
+            this.first = first;
+            this.second = second;
+        }
+
+        double evaluate(double[] values)
+        {
+            return Math.pow(first.evaluate(values), second.evaluate(values));
+        }
+    }
+
+}
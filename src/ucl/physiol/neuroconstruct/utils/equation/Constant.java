@@ -57,12 +57,6 @@ public class Constant extends EquationUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
-    {
-        return value;
-    };
-
-
     public String getNiceString()  // who doesn't like a nice string..?
     {
         if ( (int) value == value)
@@ -110,6 +104,7 @@ public class Constant extends EquationUnit
     public void setValue(double value)
     {
         this.value = value;
+        resetCompiled();
     }
 
 
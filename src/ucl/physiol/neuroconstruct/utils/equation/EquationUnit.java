@@ -48,6 +48,15 @@ public abstract class EquationUnit implements Serializable
     
     private String name = null;
 
+    private transient volatile CompiledExpression compiled = null;
+
+    /*
+     * Incremented on every change to this unit. A unit can be part of several trees and doesn't
+     * know its parents, so a compiled form records the count of each unit in its tree, and is
+     * only reused while they're all unchanged
+     */
+    private transient volatile int modificationCount = 0;
+
     public EquationUnit()
     {
     }
@@ -55,6 +64,7 @@ public abstract class EquationUnit implements Serializable
     protected void setName(String name)
     {
         this.name = name;
+        resetCompiled();
     }
     
     public EquationUnit(String name)
@@ -82,7 +92,48 @@ public abstract class EquationUnit implements Serializable
     
 
 
-    public abstract double evaluateAt(Argument[] args) throws EquationException;
+    /**
+     * Evaluates the expression with the variables matched to the arguments by name. The
+     * expression is compiled on first use (see {@link CompiledExpression}) and the compiled
+     * form reused after that.
+     */
+    public double evaluateAt(Argument[] args) throws EquationException
+    {
+        CompiledExpression c = compiled;
+        if (c == null || !c.isCurrent())
+        {
+            c = CompiledExpression.compile(this);
+            compiled = c;
+        }
+        return c.evaluateAt(args);
+    }
+
+    /**
+     * Compiles the expression, with the value of variables[i] read from slot i of the
+     * array passed to {@link CompiledExpression#evaluate(double[])}
+     */
+    public CompiledExpression compile(Variable[] variables) throws EquationException
+    {
+        return CompiledExpression.compile(this, variables);
+    }
+
+    /**
+     * Should be called when the expression is changed, so it (and any expression containing
+     * it) is recompiled on next evaluation
+     */
+    protected void resetCompiled()
+    {
+        compiled = null;
+        modificationCount++;
+    }
+
+    /**
+     * The number of changes made so far to this unit (not including those below it in the tree)
+     */
+    int getModificationCount()
+    {
+        return modificationCount;
+    }
 
         public static void main(String[] args)
     {
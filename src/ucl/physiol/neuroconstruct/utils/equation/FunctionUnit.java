@@ -52,7 +52,18 @@ public abstract class FunctionUnit extends EquationUnit
     }
     
 
-    public abstract double evaluateAt(Argument[] args) throws EquationException;
+    /**
+     * Applies the function to the already evaluated internal expression
+     */
+    public abstract double evaluate(double arg);
+
+    /**
+     * If false, the function is reevaluated each time even when its argument is constant
+     */
+    public boolean isDeterministic()
+    {
+        return true;
+    }
     
     
    @Override
@@ -97,6 +108,7 @@ public abstract class FunctionUnit extends EquationUnit
     public void setInternalEqn(EquationUnit internalEqn)
     {
         this.internalEqn = internalEqn;
+        resetCompiled();
     }
     
     @Override
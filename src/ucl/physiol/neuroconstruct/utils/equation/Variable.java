@@ -44,23 +44,6 @@ public class Variable extends EquationUnit
         super(name);
     }
 
-    public double evaluateAt(Argument[] args) throws EquationException
-    {
-        for (int i = 0; i < args.length; i++)
-        {
-            //logger.logComment("Checking if "+ args[i].getName()
-            //    + " equals "+ getName());
-
-            if (args[i].getName().equals(getName()))
-                return args[i].getValue();
-        }
-        throw new EquationException("Asked to evaluate variable "
-                                    + getName() + " with: "+
-                                    Argument.toString(args) +
-                                    " but can't find variable in arguments");
-    };
-
-
     public String getNiceString()
     {
         return getName();
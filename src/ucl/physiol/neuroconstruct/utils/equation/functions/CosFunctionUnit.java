@@ -53,9 +53,9 @@ public class CosFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.cos(internalEqn.evaluateAt(args));
+        return Math.cos(arg);
     }    
     
 
@@ -53,9 +53,9 @@ public class ExpFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.exp(internalEqn.evaluateAt(args));
+        return Math.exp(arg);
     }    
     
 
@@ -57,10 +57,8 @@ public class HeavisideStepFunctionUnit extends FunctionUnit
      * Heaviside step function. 
      * @return 0 if argument evaluates to <0, else returns 1
      */
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double val)
     {
-        double val = internalEqn.evaluateAt(args);
-        
         if (val<0) 
             return 0;
         else
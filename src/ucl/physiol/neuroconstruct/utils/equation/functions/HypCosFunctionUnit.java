@@ -53,9 +53,9 @@ public class HypCosFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.cosh(internalEqn.evaluateAt(args));
+        return Math.cosh(arg);
     }    
     
 
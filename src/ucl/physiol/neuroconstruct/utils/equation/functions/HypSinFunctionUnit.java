@@ -53,9 +53,9 @@ public class HypSinFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.sinh(internalEqn.evaluateAt(args));
+        return Math.sinh(arg);
     }    
     
 
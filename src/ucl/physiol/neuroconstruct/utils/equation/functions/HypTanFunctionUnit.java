@@ -53,9 +53,9 @@ public class HypTanFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.tanh(internalEqn.evaluateAt(args));
+        return Math.tanh(arg);
     }    
     
 
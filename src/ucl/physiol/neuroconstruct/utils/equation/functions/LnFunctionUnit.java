@@ -53,9 +53,9 @@ public class LnFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.log(internalEqn.evaluateAt(args));
+        return Math.log(arg);
     }    
     
 
@@ -52,9 +52,9 @@ public class LogFunctionUnit extends FunctionUnit
     }
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.log10(internalEqn.evaluateAt(args));
+        return Math.log10(arg);
     }    
     
 
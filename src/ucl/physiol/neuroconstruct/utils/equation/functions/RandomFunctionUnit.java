@@ -52,12 +52,19 @@ public class RandomFunctionUnit extends FunctionUnit
     {
     }
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        double arg = internalEqn.evaluateAt(args);
-        
         return ProjectManager.getRandomGenerator().nextFloat()*arg;
-    }    
+    }
+
+    /**
+     * A new random value is needed on each evaluation
+     */
+    @Override
+    public boolean isDeterministic()
+    {
+        return false;
+    }
     
 
 
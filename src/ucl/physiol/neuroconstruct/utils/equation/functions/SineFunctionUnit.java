@@ -53,9 +53,9 @@ public class SineFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.sin(internalEqn.evaluateAt(args));
+        return Math.sin(arg);
     }    
     
 
@@ -53,9 +53,9 @@ public class SqrtFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.sqrt(internalEqn.evaluateAt(args));
+        return Math.sqrt(arg);
     }    
     
 
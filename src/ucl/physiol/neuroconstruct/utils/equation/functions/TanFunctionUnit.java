@@ -53,9 +53,9 @@ public class TanFunctionUnit extends FunctionUnit
     
     
 
-    public double evaluateAt(Argument[] args) throws EquationException
+    public double evaluate(double arg)
     {
-        return Math.tan(internalEqn.evaluateAt(args));
+        return Math.tan(arg);
     }    
     
 
@@ -174,6 +174,48 @@ public class ParameterisedGroupTest
 
         
     }
+
+    @Test
+    public void testEvaluateAll() throws Exception
+    {
+        System.out.println("---  testEvaluateAll...");
+        
+        Cell gCell = new GenesisCompartmentalisation().getCompartmentalisation(cell);
+        
+        VariableMechanism vm = VariableMechanismTest.getVariableMechanism();
+        
+        for (Cell c: new Cell[]{cell, gCell})
+        {
+            float[] dists = CellTopologyHelper.getDistancesFromRoot(c);
+            
+            for (Segment seg: c.getAllSegments())
+            {
+                assertEquals(CellTopologyHelper.getLengthFromRoot(c, new SegmentLocation(seg.getSegmentId(), 0)), 
+                             dists[seg.getSegmentId()], 1e-5);
+            }
+            
+            for (ParameterisedGroup pg: new ParameterisedGroup[]{pg1, pg2, pg3, pg4, pg5})
+            {
+                double[] all = pg.evaluateAll(c, dists, 0.5f);
+                double[] vmAll = vm.evaluateAll(c, pg, dists);
+                
+                for (Segment seg: c.getAllSegments())
+                {
+                    if (seg.getSection().getGroups().contains(pg.getGroup()))
+                    {
+                        double val = pg.evaluateAt(c, seg, 0.5f);
+                        assertEquals(val, all[seg.getSegmentId()], 1e-5);
+                        assertEquals(vm.evaluateAt(val), vmAll[seg.getSegmentId()], 1e-4);
+                    }
+                    else
+                    {
+                        assertTrue(Double.isNaN(all[seg.getSegmentId()]));
+                        assertTrue(Double.isNaN(vmAll[seg.getSegmentId()]));
+                    }
+                }
+            }
+        }
+    }
     
     
     
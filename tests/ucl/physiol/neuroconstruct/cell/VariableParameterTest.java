@@ -83,6 +83,21 @@ public class VariableParameterTest
         double val2 = vp1.evaluateAt(1);
         
         assertEquals(val2, 2, 0);
+        
+        // Changes to the expression after the first evaluation must be picked up
+        ((BinaryOperation)vp1.getExpression()).setFirst(new Constant(10));
+        
+        assertEquals(10, vp1.evaluateAt(1), 0);
+        
+        vp1.getExpressionArgs().get(1).setValue(3);
+        
+        assertEquals(16, vp1.evaluateAt(3), 0);
+        
+        // Renaming the arguments changes which values go in the slots
+        vp1.getExpressionArgs().get(0).setName("C");
+        vp1.getExpressionArgs().get(2).setName("A");
+        
+        assertEquals(25, vp1.evaluateAt(3), 0);
     }
 
 
@@ -0,0 +1,163 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.cell.converters;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.cell.examples.*;
+import ucl.physiol.neuroconstruct.cell.utils.*;
+import ucl.physiol.neuroconstruct.project.ProjectStructure;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import ucl.physiol.neuroconstruct.utils.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class MorphologyCacheTest
+{
+    File morphDir = null;
+
+    public MorphologyCacheTest()
+    {
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        System.out.println("---------------   setUp() MorphologyCacheTest");
+
+        morphDir = File.createTempFile("morphCache", "");
+        morphDir.delete();
+        morphDir.mkdir();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (File f: morphDir.listFiles())
+        {
+            MorphologyCache.getCacheFile(f).delete();
+            f.delete();
+        }
+        morphDir.delete();
+    }
+
+    @Test
+    public void testCache() throws Exception
+    {
+        System.out.println("---  testCache...");
+
+        Cell cell = new PurkinjeCell("Purk");
+        File morphFile = new File(morphDir, "Purk.java.xml");
+
+        MorphMLConverter.saveCellInJavaXMLFormat(cell, morphFile);
+
+        assertNull(MorphologyCache.loadCell(morphFile));
+        assertFalse(MorphologyCache.isUpToDate(morphFile));
+
+        Cell loaded = MorphMLConverter.loadFromJavaXMLFile(morphFile);
+        assertTrue(MorphologyCache.saveCell(loaded, morphFile));
+        assertTrue(MorphologyCache.isUpToDate(morphFile));
+
+        Cell cached = MorphologyCache.loadCell(morphFile);
+
+        String compare = CellTopologyHelper.compare(loaded, cached, false);
+        assertTrue(compare.indexOf(CellTopologyHelper.CELLS_ARE_IDENTICAL)>=0);
+
+        // A new time but the same contents, e.g. after a checkout
+        morphFile.setLastModified(morphFile.lastModified() + 10000);
+        assertTrue(MorphologyCache.isUpToDate(morphFile));
+        assertNotNull(MorphologyCache.loadCell(morphFile));
+
+        // Changed contents
+        Cell changed = new PurkinjeCell("Purk");
+        changed.getFirstSomaSegment().setRadius(33);
+        MorphMLConverter.saveCellInJavaXMLFormat(changed, morphFile);
+
+        assertFalse(MorphologyCache.isUpToDate(morphFile));
+        assertNull(MorphologyCache.loadCell(morphFile));
+
+        // Not a valid cache
+        FileWriter fw = new FileWriter(MorphologyCache.getCacheFile(morphFile));
+        fw.write("Not a cache");
+        fw.close();
+        assertNull(MorphologyCache.loadCell(morphFile));
+    }
+
+    @Test
+    public void testNotInProject() throws Exception
+    {
+        System.out.println("---  testNotInProject...");
+
+        File morphFile = new File(morphDir, "Purk.java.xml");
+        Cell cell = new PurkinjeCell("Purk");
+
+        MorphMLConverter.saveCellInJavaXMLFormat(cell, morphFile);
+        assertTrue(MorphologyCache.saveCell(cell, morphFile));
+        assertTrue(MorphologyCache.getCacheFile(morphFile).exists());
+
+        assertEquals(ProjectStructure.getMorphCacheDir(), MorphologyCache.getCacheFile(morphFile).getParentFile());
+        assertEquals(1, morphDir.listFiles().length);
+
+        // Same name in another directory
+        File otherMorphFile = new File(morphDir.getParentFile(), "Purk.java.xml");
+        assertFalse(MorphologyCache.getCacheFile(otherMorphFile).equals(MorphologyCache.getCacheFile(morphFile)));
+
+        File zipFile = File.createTempFile("morphCache", ".zip");
+        ZipUtils.zipUp(morphDir, zipFile.getAbsolutePath(), new ArrayList<String>(), new ArrayList<String>());
+
+        ArrayList<String> entries = new ArrayList<String>();
+        ZipFile zf = new ZipFile(zipFile);
+        Enumeration<? extends ZipEntry> e = zf.entries();
+        while (e.hasMoreElements())
+        {
+            entries.add(e.nextElement().getName());
+        }
+        zf.close();
+        zipFile.delete();
+
+        assertEquals(1, entries.size());
+        assertTrue(entries.get(0).endsWith(morphFile.getName()));
+    }
+
+
+    public static void main(String[] args)
+    {
+        MorphologyCacheTest ct = new MorphologyCacheTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.cell.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.project.GeneratedNetworkConnections.*;
+import ucl.physiol.neuroconstruct.project.packing.RandomCellPackingAdapter;
+
+/**
+ * Compares the cost of the distance checks made when generating a net conn with max/min
+ * length conditions: CellTopologyHelper.getSynapticEndpointsDistance() (a Point3f per
+ * cell position and segment displacement, cell positions from getOneCellPosition()) and
+ * EndpointDistanceCalculator (position arrays and SegmentDisplacementTables). Generates
+ * a network with (by default) 20000 cells in TestNetworkConns, with a radial length of
+ * 20 to 200 um on the net conn, then repeats the checks for every generated connection
+ * in all dimensions. Not part of MainTest; run with:
+ *
+ *     java ucl.physiol.neuroconstruct.cell.utils.EndpointDistanceBenchmark [numCells]
+ *
+ * @author Padraig Gleeson
+ */
+public class EndpointDistanceBenchmark
+{
+    private static final int REPEATS = 5;
+
+    private static final String[] DIMENSIONS
+        = new String[]{MaxMinLength.RADIAL, MaxMinLength.X_DIR, MaxMinLength.Y_DIR, MaxMinLength.Z_DIR};
+
+    private static long getAllocatedBytes()
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static float checkWithCellTopologyHelper(Project proj, String src, String tgt, ArrayList<SingleSynapticConnection> conns)
+    {
+        float total = 0;
+        for (SingleSynapticConnection conn: conns)
+        {
+            for (String dim: DIMENSIONS)
+            {
+                total += CellTopologyHelper.getSynapticEndpointsDistance(proj, src, conn.sourceEndPoint, tgt, conn.targetEndPoint, dim);
+            }
+        }
+        return total;
+    }
+
+    private static float checkWithCalculator(EndpointDistanceCalculator distances, ArrayList<SingleSynapticConnection> conns)
+    {
+        float total = 0;
+        for (SingleSynapticConnection conn: conns)
+        {
+            for (String dim: DIMENSIONS)
+            {
+                total += distances.getDistance(conn.sourceEndPoint.cellNumber, conn.sourceEndPoint.location,
+                                               conn.targetEndPoint.cellNumber, conn.targetEndPoint.location, dim);
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numCells = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        GeneralProperties.setLogFilePrintToScreenPolicy(false);
+        GeneralProperties.setLogFileSaveToFilePolicy(false);
+
+        ProjectManager pm = new ProjectManager();
+        pm.loadProject(ProjectStructure.findProjectFile(new File("testProjects/TestNetworkConns")));
+        Project proj = pm.getCurrentProject();
+
+        String netConn = proj.morphNetworkConnectionsInfo.getNetConnNameAt(2);
+        String src = proj.morphNetworkConnectionsInfo.getSourceCellGroup(netConn);
+        String tgt = proj.morphNetworkConnectionsInfo.getTargetCellGroup(netConn);
+
+        ((RandomCellPackingAdapter)proj.cellGroupsInfo.getCellPackingAdapter(src)).setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, numCells/2);
+        ((RandomCellPackingAdapter)proj.cellGroupsInfo.getCellPackingAdapter(tgt)).setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, numCells - numCells/2);
+
+        MaxMinLength maxMin = proj.morphNetworkConnectionsInfo.getMaxMinLength(netConn);
+        maxMin.setMinLength(20);
+        maxMin.setMaxLength(200);
+        maxMin.setDimension(MaxMinLength.RADIAL);
+
+        long start = System.currentTimeMillis();
+        pm.doGenerate("TwoCG", 1234);
+        while (pm.isGenerating())
+        {
+            Thread.sleep(50);
+        }
+        System.out.println("Generated " + proj.generatedCellPositions.getNumberInAllCellGroups() + " cells and "
+                           + proj.generatedNetworkConnections.getNumAllSynConns() + " connections with "+maxMin+" in "
+                           + (System.currentTimeMillis() - start) + " ms\n");
+
+        ArrayList<SingleSynapticConnection> conns = proj.generatedNetworkConnections.getSynapticConnections(netConn);
+
+        Cell srcCell = proj.cellManager.getCell(proj.cellGroupsInfo.getCellType(src));
+        Cell tgtCell = proj.cellManager.getCell(proj.cellGroupsInfo.getCellType(tgt));
+
+        EndpointDistanceCalculator distances
+            = new EndpointDistanceCalculator(proj, src, new SegmentDisplacementTable(srcCell),
+                                             tgt, new SegmentDisplacementTable(tgtCell));
+
+        // Warm up
+        for (int i = 0; i < 3; i++)
+        {
+            checkWithCellTopologyHelper(proj, src, tgt, conns);
+            checkWithCalculator(distances, conns);
+        }
+
+        for (int variant = 0; variant < 2; variant++)
+        {
+            long bestTime = Long.MAX_VALUE;
+            long bestBytes = Long.MAX_VALUE;
+            float total = 0;
+
+            for (int i = 0; i < REPEATS; i++)
+            {
+                long startBytes = getAllocatedBytes();
+                long startTime = System.nanoTime();
+
+                if (variant == 0) total = checkWithCellTopologyHelper(proj, src, tgt, conns);
+                else total = checkWithCalculator(distances, conns);
+
+                bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+                bestBytes = Math.min(bestBytes, getAllocatedBytes() - startBytes);
+            }
+            String name = variant == 0 ? "CellTopologyHelper" : "EndpointDistanceCalculator";
+
+            System.out.println(String.format("%-28s %10.2f ms  %12.1f kB allocated  (%d checks, total dist: %f)",
+                                             name, bestTime / 1e6, bestBytes / 1024.0, conns.size()*DIMENSIONS.length, total));
+        }
+
+        System.exit(0);
+    }
+}
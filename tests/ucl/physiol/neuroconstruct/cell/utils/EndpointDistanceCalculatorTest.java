@@ -0,0 +1,183 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.cell.utils;
+
+import java.io.File;
+import java.util.Iterator;
+import javax.vecmath.Point3f;
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.project.GeneratedNetworkConnections.*;
+import ucl.physiol.neuroconstruct.test.MainTest;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class EndpointDistanceCalculatorTest
+{
+    ProjectManager pm = null;
+
+    public EndpointDistanceCalculatorTest()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        System.out.println("---------------   setUp() EndpointDistanceCalculatorTest");
+        String projName = "TestNetworkConns";
+        File projDir = new File("testProjects/"+ projName);
+        File projFile = ProjectStructure.findProjectFile(projDir);
+
+        pm = new ProjectManager();
+
+        try
+        {
+            pm.loadProject(projFile);
+        }
+        catch (ProjectFileParsingException ex)
+        {
+            fail("Error loading: "+ projFile.getAbsolutePath());
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Checks the distances are exactly the same as those from CellTopologyHelper for the generated connections
+     */
+    @Test
+    public void testSameAsCellTopologyHelper() throws InterruptedException
+    {
+        System.out.println("---  testSameAsCellTopologyHelper()");
+
+        Project proj = pm.getCurrentProject();
+
+        pm.doGenerate(proj.simConfigInfo.getDefaultSimConfig().getName(), 1234);
+
+        while(pm.isGenerating())
+        {
+            Thread.sleep(200);
+        }
+
+        String[] dims = new String[]{MaxMinLength.X_DIR, MaxMinLength.Y_DIR, MaxMinLength.Z_DIR, MaxMinLength.RADIAL};
+
+        int numChecked = 0;
+
+        Iterator<String> netConns = proj.generatedNetworkConnections.getNamesNetConnsIter();
+
+        while (netConns.hasNext())
+        {
+            String netConn = netConns.next();
+            String src = proj.morphNetworkConnectionsInfo.getSourceCellGroup(netConn);
+            String tgt = proj.morphNetworkConnectionsInfo.getTargetCellGroup(netConn);
+
+            if (src == null)
+            {
+                src = proj.volBasedConnsInfo.getSourceCellGroup(netConn);
+                tgt = proj.volBasedConnsInfo.getTargetCellGroup(netConn);
+            }
+
+            Cell srcCell = proj.cellManager.getCell(proj.cellGroupsInfo.getCellType(src));
+            Cell tgtCell = proj.cellManager.getCell(proj.cellGroupsInfo.getCellType(tgt));
+
+            EndpointDistanceCalculator distances
+                = new EndpointDistanceCalculator(proj, src, new SegmentDisplacementTable(srcCell),
+                                                 tgt, new SegmentDisplacementTable(tgtCell));
+
+            Point3f srcSoma = CellTopologyHelper.convertSectionDisplacement(srcCell, srcCell.getFirstSomaSegment().getSection(), 0.5f);
+            Point3f tgtSoma = CellTopologyHelper.convertSectionDisplacement(tgtCell, tgtCell.getFirstSomaSegment().getSection(), 0.5f);
+
+            for (SingleSynapticConnection conn: proj.generatedNetworkConnections.getSynapticConnections(netConn))
+            {
+                for (String dim: dims)
+                {
+                    float expected = CellTopologyHelper.getSynapticEndpointsDistance(proj, src, conn.sourceEndPoint,
+                                                                                    tgt, conn.targetEndPoint, dim);
+
+                    assertEquals(expected,
+                                 distances.getDistance(conn.sourceEndPoint.cellNumber, conn.sourceEndPoint.location,
+                                                       conn.targetEndPoint.cellNumber, conn.targetEndPoint.location, dim),
+                                 0);
+                }
+
+                Point3f srcPoint = proj.generatedCellPositions.getOneCellPosition(src, conn.sourceEndPoint.cellNumber);
+                Point3f tgtPoint = proj.generatedCellPositions.getOneCellPosition(tgt, conn.targetEndPoint.cellNumber);
+                srcPoint.add(srcSoma);
+                tgtPoint.add(tgtSoma);
+
+                assertEquals(srcPoint.distance(tgtPoint),
+                             distances.getOffsetsDistance(conn.sourceEndPoint.cellNumber, srcSoma,
+                                                          conn.targetEndPoint.cellNumber, tgtSoma),
+                             0);
+                numChecked++;
+            }
+        }
+        System.out.println("Checked "+numChecked+" connections");
+
+        assertTrue(numChecked > 0);
+    }
+
+    @Test
+    public void testPositionArrays()
+    {
+        System.out.println("---  testPositionArrays()");
+
+        GeneratedCellPositions posns = pm.getCurrentProject().generatedCellPositions;
+        posns.reset();
+
+        posns.addPosition("CG", 0, 1, 2, 3);
+        posns.addPosition("CG", 2, 4, 5, 6);
+
+        float[] x = posns.getXPositions("CG");
+        assertTrue(x.length >= 3);
+        assertEquals(1, x[0], 0);
+        assertTrue(Float.isNaN(x[1]));
+        assertEquals(6, posns.getZPositions("CG")[2], 0);
+
+        posns.addPosition("CG", 1, 7, 8, 9);
+        assertEquals(8, posns.getYPositions("CG")[1], 0);
+
+        assertEquals(0, posns.getXPositions("Empty").length);
+    }
+
+    public static void main(String[] args)
+    {
+        EndpointDistanceCalculatorTest ct = new EndpointDistanceCalculatorTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+    }
+
+}
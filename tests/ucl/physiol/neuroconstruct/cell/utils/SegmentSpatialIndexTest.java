@@ -0,0 +1,179 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.cell.utils;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.Vector;
+import javax.vecmath.Point3f;
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.test.MainTest;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class SegmentSpatialIndexTest
+{
+    Cell cell = null;
+
+    public SegmentSpatialIndexTest()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        System.out.println("---------------   setUp() SegmentSpatialIndexTest");
+
+        cell = new Cell();
+        cell.setInstanceName("BranchingCell");
+
+        Section somaSec = new Section("Soma");
+        somaSec.addToGroup(Section.SOMA_GROUP);
+        Segment soma = cell.addFirstSomaSegment(10, 10, "Soma", new Point3f(0,0,0), new Point3f(0,0,0), somaSec);
+
+        Random r = new Random(4321);
+
+        ArrayList<Segment> dends = new ArrayList<Segment>();
+        dends.add(soma);
+
+        for (int i = 0; i < 300; i++)
+        {
+            Segment parent = dends.get(r.nextInt(dends.size()));
+            Point3f end = new Point3f(parent.getEndPointPosition());
+            end.add(new Point3f(r.nextFloat()*40 - 20, r.nextFloat()*40, r.nextFloat()*40 - 20));
+
+            Segment dend = cell.addDendriticSegment(1, "Dend"+i, end, parent, 1, "DendSec"+i, false);
+            dend.getSection().addToGroup(i%3==0 ? "apical" : "basal");
+            dends.add(dend);
+
+            if (i%50==0)
+            {
+                // One exactly on top of the last, so there are ties
+                Segment copy = cell.addDendriticSegment(1, "Copy"+i, new Point3f(end), parent, 1, "CopySec"+i, false);
+                copy.getSection().addToGroup("basal");
+            }
+        }
+
+        Segment axonParent = soma;
+        for (int i = 0; i < 40; i++)
+        {
+            Point3f end = new Point3f(axonParent.getEndPointPosition());
+            end.add(new Point3f(r.nextFloat()*10 - 5, -1*r.nextFloat()*30, r.nextFloat()*10 - 5));
+            axonParent = cell.addAxonalSegment(1, "Axon"+i, end, axonParent, 1, "AxonSec"+i);
+        }
+
+        cell.associateGroupWithSynapse("all", "SynA");
+        cell.associateGroupWithSynapse("basal", "SynB");
+        cell.associateGroupWithSynapse("all", "SynB");
+        cell.associateGroupWithSynapse("basal", "SynA");
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private void checkSameAsLinearSearch(String[] synTypes, PrePostAllowedLocs pp, boolean post)
+    {
+        SegmentSpatialIndex index = new SegmentSpatialIndex(cell, synTypes, pp, post);
+
+        assertEquals(CellTopologyHelper.getPossibleSynapticSegments(cell, synTypes, pp, post).size(),
+                     index.getNumSegments());
+
+        Random r = new Random(1234);
+
+        for (int i = 0; i < 2000; i++)
+        {
+            Point3f point = new Point3f(r.nextFloat()*400 - 200, r.nextFloat()*400 - 100, r.nextFloat()*400 - 200);
+
+            // include points on segment ends, for exact ties
+            if (i%10==0)
+            {
+                Vector<Segment> segs = cell.getAllSegments();
+                point = new Point3f(segs.get(r.nextInt(segs.size())).getEndPointPosition());
+            }
+
+            SegmentLocation linear = post ?
+                CellTopologyHelper.getClosestPostSynapticTerminalLocation(cell, synTypes, point, pp) :
+                CellTopologyHelper.getClosestPreSynapticTerminalLocation(cell, synTypes, point, pp);
+
+            SegmentLocation indexed = index.getClosestLocation(point);
+
+            assertEquals(linear.getClass(), indexed.getClass());
+            assertEquals(linear.getSegmentId(), indexed.getSegmentId());
+            assertEquals(linear.getFractAlong(), indexed.getFractAlong(), 0);
+        }
+    }
+
+    @Test
+    public void testClosestLocations()
+    {
+        System.out.println("---  testClosestLocations()");
+
+        PrePostAllowedLocs pp = new PrePostAllowedLocs();
+
+        checkSameAsLinearSearch(new String[]{"SynA"}, pp, true);
+        checkSameAsLinearSearch(new String[]{"SynA"}, pp, false);
+
+        Vector<String> groupsBefore = new Vector<String>(cell.getGroupsWithSynapse("SynB"));
+
+        checkSameAsLinearSearch(new String[]{"SynB", "SynA"}, pp, true);
+
+        // the groups in the cell shouldn't be changed when more than one synapse type is given
+        assertEquals(groupsBefore, cell.getGroupsWithSynapse("SynB"));
+
+        pp.setAxonsAllowedPost(true);
+        pp.setSomaAllowedPost(false);
+        checkSameAsLinearSearch(new String[]{"SynA"}, pp, true);
+    }
+
+    @Test
+    public void testNoPossibleLocations()
+    {
+        System.out.println("---  testNoPossibleLocations()");
+
+        SegmentSpatialIndex index = new SegmentSpatialIndex(cell, new String[]{"NotOnCell"}, new PrePostAllowedLocs(), true);
+
+        assertEquals(0, index.getNumSegments());
+        assertNull(index.getClosestLocation(new Point3f(1, 2, 3)));
+    }
+
+    public static void main(String[] args)
+    {
+        SegmentSpatialIndexTest ct = new SegmentSpatialIndexTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+    }
+
+}
@@ -314,6 +314,109 @@ public class DataSetTest
 
 
 
+    /**
+     * Checks getMinMaxY against a scan through the points, for ranges inside and across the summary's blocks
+     */
+    @Test
+    public void testGetMinMaxY() throws DataSetException
+    {
+        System.out.println("testGetMinMaxY");
+        Random rand = new Random(1234);
+
+        DataSet instance = new DataSet("DataSet3", "DataSet3", "s", "mV", "Time", "Membrane Potential");
+
+        for(int i=0;i<5000;i++)
+        {
+            double y = rand.nextGaussian();
+            if (i%97==0) y = Double.NaN;
+            instance.addPoint(i, y);
+        }
+        double[] minMax = new double[2];
+
+        for (int check=0;check<2;check++)
+        {
+            for (int i=0;i<1000;i++)
+            {
+                int from = rand.nextInt(instance.getNumberPoints());
+                int to = from + rand.nextInt(instance.getNumberPoints() - from + 1);
+
+                if (i%10==0) to = from + rand.nextInt(Math.min(40, instance.getNumberPoints() - from + 1));
+
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int j=from;j<to;j++)
+                {
+                    if (instance.getY(j) < min) min = instance.getY(j);
+                    if (instance.getY(j) > max) max = instance.getY(j);
+                }
+                instance.getMinMaxY(from, to, minMax);
+
+                assertEquals(min, minMax[0], 0);
+                assertEquals(max, minMax[1], 0);
+            }
+            // Summary is recalculated after a change...
+            instance.setYValue(2500, 100);
+            instance.setYValue(20, -100);
+        }
+
+        instance.getMinMaxY(97, 97, minMax);
+        assertTrue(minMax[0] > minMax[1]);
+
+        instance.getMinMaxY(0, 1, minMax);
+        assertTrue(minMax[0] > minMax[1]);
+    }
+
+    /**
+     * Checks the max/min points found as points are added & changed are those found by scanning the points
+     */
+    @Test
+    public void testMaxMinAfterChanges() throws DataSetException
+    {
+        System.out.println("testMaxMinAfterChanges");
+
+        assertEquals(ds1Size-1, ds1.getMaxX()[0], 0);
+
+        ds1.addPoint(-5, 3);
+        assertEquals(-5, ds1.getMinX()[0], 0);
+        assertEquals(3, ds1.getMaxY()[1], 0);
+
+        ds1.setYValue(10, -7);
+        assertEquals(-7, ds1.getMinY()[1], 0);
+        assertEquals(10, ds1.getMinY()[0], 0);
+
+        ds1.deletePoint(10);
+        assertEquals(-1, ds1.getMinY()[1], 0.0001);
+
+        ds1.addPoint(ds1Size, -8);
+        assertEquals(-8, ds1.getMinY()[1], 0);
+        assertEquals(ds1Size, ds1.getMaxX()[0], 0);
+
+        DataSet empty = new DataSet("Empty", "Empty", "s", "mV", "Time", "Membrane Potential");
+        assertEquals(0, empty.getMaxY()[1], 0);
+    }
+
+    @Test
+    public void testAreXvalsNonDecreasing() throws DataSetException
+    {
+        System.out.println("testAreXvalsNonDecreasing");
+
+        assertTrue(ds1.areXvalsNonDecreasing());
+        assertTrue(ds2.areXvalsNonDecreasing());
+        assertFalse(ds2.areXvalsStrictlyIncreasing());
+        assertFalse(ds1.containsNaNOrInfinity());
+
+        ds1.setXValue(ds1Size/2, 3);
+        assertFalse(ds1.areXvalsNonDecreasing());
+
+        ds1.deletePoint(ds1Size/2);
+        assertTrue(ds1.areXvalsNonDecreasing());
+
+        ds1.addPoint(ds1Size + 1, Double.POSITIVE_INFINITY);
+        assertTrue(ds1.containsNaNOrInfinity());
+
+        ds1.addPoint(Double.NaN, 0);
+        assertFalse(ds1.areXvalsNonDecreasing());
+    }
 
 
     public static void main(String[] args)
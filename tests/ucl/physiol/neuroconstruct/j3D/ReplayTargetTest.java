@@ -0,0 +1,132 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.j3D;
+
+import java.awt.Color;
+import java.io.File;
+import javax.media.j3d.Appearance;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.cell.examples.*;
+import ucl.physiol.neuroconstruct.project.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig
+ */
+public class ReplayTargetTest {
+
+    private OneCell3D oneCell = null;
+
+    public ReplayTargetTest() {
+    }
+
+
+    @Before
+    public void setUp() throws NoProjectLoadedException
+    {
+        System.out.println("---------------   setUp() ReplayTargetTest");
+
+        String projName = "TestingFrameworkProject";
+
+        File projDir = new File(MainTest.getTempProjectDirectory()+"/"+projName);// won't be saved...
+
+        Project proj = Project.createNewProject(projDir.getAbsolutePath(), projName, null);
+
+        Cell cell = new OneSegment("Dummy");
+
+        oneCell = new OneCell3D(cell, 0, proj);
+    }
+
+    @Test
+    public void testSetAppearance()
+    {
+        System.out.println("---  testSetAppearance...");
+
+        Appearance red = Utils3D.getGeneralObjectAppearance(Color.red);
+        Appearance blue = Utils3D.getGeneralObjectAppearance(Color.blue);
+
+        ReplayTarget seg = ReplayTarget.forSegment(oneCell, 0);
+        ReplayTarget cell = ReplayTarget.forWholeCell(oneCell);
+
+        assertTrue(seg.setAppearance(red));
+        assertFalse(seg.setAppearance(red));
+        assertTrue(seg.setAppearance(blue));
+
+        // Other targets replayed on the same cell don't force a redraw
+        assertTrue(cell.setAppearance(red));
+        assertFalse(seg.setAppearance(blue));
+        assertFalse(cell.setAppearance(red));
+
+        seg.reset();
+        assertTrue(seg.setAppearance(blue));
+        assertFalse(seg.setAppearance(blue));
+    }
+
+    @Test
+    public void testRecolouredOutsideReplay()
+    {
+        System.out.println("---  testRecolouredOutsideReplay...");
+
+        Appearance red = Utils3D.getGeneralObjectAppearance(Color.red);
+
+        ReplayTarget seg = ReplayTarget.forSegment(oneCell, 0);
+        ReplayTarget cell = ReplayTarget.forWholeCell(oneCell);
+
+        assertTrue(seg.setAppearance(red));
+        assertTrue(cell.setAppearance(red));
+
+        // e.g. colour of the cell group changed in the 3D view
+        oneCell.setDefaultCellAppearance(Color.yellow);
+
+        assertTrue(seg.setAppearance(red));
+        assertTrue(cell.setAppearance(red));
+        assertFalse(seg.setAppearance(red));
+
+        // e.g. Main3DPanel.setColour() when a replay is restarted
+        ReplayTarget.forSegment(oneCell, 0).applyAppearance(Utils3D.getGeneralObjectAppearance(Color.black), false);
+
+        assertTrue(seg.setAppearance(red));
+        assertFalse(seg.setAppearance(red));
+
+        oneCell.setSegmentAppearance(red, 0);
+        assertTrue(seg.setAppearance(red));
+    }
+
+    public static void main(String[] args)
+    {
+        ReplayTargetTest ct = new ReplayTargetTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+
+    }
+
+}
@@ -27,16 +27,24 @@ package ucl.physiol.neuroconstruct.neuroml;
 
 import java.io.File;
 import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 import org.junit.runner.Result;
 import org.neuroml.model.Cell;
 import org.neuroml.model.ExpTwoSynapse;
+import org.neuroml.model.InputList;
 import org.neuroml.model.IonChannel;
 import org.neuroml.model.Network;
 import org.neuroml.model.NeuroMLDocument;
+import org.neuroml.model.Population;
+import org.neuroml.model.Projection;
 import org.neuroml.model.util.NeuroMLConverter;
+import ucl.physiol.neuroconstruct.cell.Section;
+import ucl.physiol.neuroconstruct.project.ConnectivityConditions;
+import ucl.physiol.neuroconstruct.project.NetConnectionStore;
 import ucl.physiol.neuroconstruct.project.NoProjectLoadedException;
 import ucl.physiol.neuroconstruct.project.Project;
 import ucl.physiol.neuroconstruct.project.ProjectManager;
@@ -45,7 +53,7 @@ import ucl.physiol.neuroconstruct.test.MainTest;
 public class NeuroML2ReaderTest
 {
 
-    private void loadNML2File(File nml2File) throws NeuroMLException, InterruptedException, NoProjectLoadedException, IOException, org.neuroml.model.util.NeuroMLException
+    private Project loadNML2File(File nml2File, boolean inferConnConditions) throws NeuroMLException, InterruptedException, NoProjectLoadedException, IOException, org.neuroml.model.util.NeuroMLException
     {
         ProjectManager pm = new ProjectManager(null, null);
         Project testNeuroML2Proj = null;
@@ -72,7 +80,7 @@ public class NeuroML2ReaderTest
         if (pm.getCurrentProject() != null)
         {
            System.out.println("Test project is set in "+System.getProperty("user.home")+"/nC_projects/");
-           pm.doLoadNeuroML2Network(nml2File, false);
+           pm.doLoadNeuroML2Network(nml2File, inferConnConditions);
         }
 
         Thread.sleep(5);
@@ -90,6 +98,22 @@ public class NeuroML2ReaderTest
 
             assertTrue(testNeuroML2Proj.cellGroupsInfo.getAllCellGroupNames().size()==nml2net.getPopulation().size());
             assertTrue(testNeuroML2Proj.morphNetworkConnectionsInfo.getAllSimpleNetConnNames().size()==nml2net.getProjection().size());
+
+            for (Population pop: nml2net.getPopulation())
+            {
+                assertEquals(pop.getInstance().size(), testNeuroML2Proj.generatedCellPositions.getNumberInCellGroup(pop.getId()));
+            }
+            for (Projection proj: nml2net.getProjection())
+            {
+                NetConnectionStore conns = testNeuroML2Proj.generatedNetworkConnections.getConnectionStore(proj.getId());
+                int numConns = conns == null ? 0 : conns.size();
+
+                assertEquals(proj.getConnection().size() + proj.getConnectionWD().size(), numConns);
+            }
+            for (InputList inputList: nml2net.getInputList())
+            {
+                assertEquals(inputList.getInput().size(), testNeuroML2Proj.generatedElecInputs.getNumberSingleInputs(inputList.getId()));
+            }
           
         }
         //ArrayList<String> ics = new ArrayList<String>();
@@ -127,26 +151,72 @@ public class NeuroML2ReaderTest
     	//NeuroMLDocument nmlDocumentReloaded = nmlc.loadNeuroML(nmlFile, true, true);
         
         //System.out.println("NeuroML 2 summary (reloaded from "+nmlFile.getAbsolutePath()+"):\n"+nmlc.summary(nmlDocumentReloaded));
+
+        return testNeuroML2Proj;
+    }
+
+    /*
+     * Checks each of the segments is in a group on the cell which is associated with the synapse
+     */
+    private void checkSegmentsAllowed(ucl.physiol.neuroconstruct.cell.Cell cell, String synapse, int... segmentIds)
+    {
+        for (int segmentId: segmentIds)
+        {
+            String sectionName = cell.getSegmentWithId(segmentId).getSection().getSectionName();
+            boolean allowed = false;
+
+            for (String group: cell.getGroupsWithSynapse(synapse))
+            {
+                for (Section section: cell.getSectionsInGroup(group))
+                {
+                    if (section.getSectionName().equals(sectionName))
+                        allowed = true;
+                }
+            }
+            assertTrue("Segment "+segmentId+" of "+cell.getInstanceName()+" isn't in a group with "+synapse, allowed);
+        }
     }
 
     @Test
     public void testTwoCell() throws NeuroMLException, InterruptedException, NoProjectLoadedException, IOException, org.neuroml.model.util.NeuroMLException
     {
-        loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/TwoCell.net.nml"));
+        loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/TwoCell.net.nml"), false);
         
     }
 
     @Test
     public void testACNet2() throws NeuroMLException, InterruptedException, NoProjectLoadedException, IOException, org.neuroml.model.util.NeuroMLException
     {
-        loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/MediumNet.net.nml"));
+        loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/MediumNet.net.nml"), false);
         
     }
     @Test
     public void testPyrCell() throws NeuroMLException, InterruptedException, NoProjectLoadedException, IOException, org.neuroml.model.util.NeuroMLException
     {
-        loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/pyr_4_sym.cell.nml"));
+        loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/pyr_4_sym.cell.nml"), false);
         
+    }
+
+    @Test
+    public void testInferConnectivityConditions() throws NeuroMLException, InterruptedException, NoProjectLoadedException, IOException, org.neuroml.model.util.NeuroMLException
+    {
+        System.out.println("---  testInferConnectivityConditions...");
+
+        Project proj = loadNML2File(new File("testProjects/TestNeuroML2Files/ACnet2/AutapseNet.net.nml"), true);
+
+        // Only inferred from the connections, which are read after the projections
+        ConnectivityConditions pyrPyr = proj.morphNetworkConnectionsInfo.getConnectivityConditions("pyr_pyr");
+        ConnectivityConditions pyrBask = proj.morphNetworkConnectionsInfo.getConnectivityConditions("pyr_bask");
+
+        assertTrue(pyrPyr.isAllowAutapses());
+        assertFalse(pyrBask.isAllowAutapses());
+
+        ucl.physiol.neuroconstruct.cell.Cell pyr = proj.cellManager.getCell("pyr_4_sym");
+        ucl.physiol.neuroconstruct.cell.Cell bask = proj.cellManager.getCell("bask");
+
+        checkSegmentsAllowed(pyr, "AMPA_syn", 0, 6, 7, 8);
+        checkSegmentsAllowed(pyr, "AMPA_syn_inh", 0);
+        checkSegmentsAllowed(bask, "AMPA_syn_inh", 0);
     }/**/
     
     
@@ -27,8 +27,14 @@
 package ucl.physiol.neuroconstruct.neuroml;
 
 import ucl.physiol.neuroconstruct.neuroml.NeuroMLConstants.NeuroMLVersion;
-import java.io.File;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import javax.xml.parsers.*;
+import org.w3c.dom.*;
 import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.utils.units.UnitConverter;
+import ucl.physiol.neuroconstruct.utils.xml.*;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.Result;
@@ -197,6 +203,150 @@ public class NeuroMLFileManagerTest {
     }
 
 
+    /**
+     * Checks the streamed NetworkML (v1) has the same populations, projections & inputs as the
+     * elements built by getNetworkMLElement(), and that the zipped form has the same contents
+     */
+    @Test
+    public void testNetworkMLStreaming() throws Exception
+    {
+        System.out.println("---  testNetworkMLStreaming");
+
+        Project proj = pm.getCurrentProject();
+        SimConfig sc = proj.simConfigInfo.getDefaultSimConfig();
+
+        pm.doGenerate(sc.getName(), 1234);
+
+        while(pm.isGenerating())
+        {
+            Thread.sleep(200);
+        }
+
+        assertTrue(proj.generatedNetworkConnections.getNumberSynapticConnections(GeneratedNetworkConnections.ANY_NETWORK_CONNECTION) > 0);
+        assertTrue(proj.generatedElecInputs.getNumberSingleInputs() > 0);
+
+        int units = UnitConverter.getUnitSystemIndex(NetworkMLConstants.UNITS_PHYSIOLOGICAL);
+
+        File saveNetsDir = ProjectStructure.getSavedNetworksDir(projDir);
+
+        File nmlFile = NeuroMLFileManager.saveNetworkStructureXML(proj,
+                                                                  new File(saveNetsDir, "testStreaming.nml"),
+                                                                  false,
+                                                                  true,
+                                                                  sc.getName(),
+                                                                  NetworkMLConstants.UNITS_PHYSIOLOGICAL,
+                                                                  NeuroMLVersion.NEUROML_VERSION_1,
+                                                                  null);
+
+        List<Node> streamed = getContents(parse(new FileInputStream(nmlFile)));
+
+        assertEquals(MetadataConstants.PREFIX+":"+MetadataConstants.NOTES_ELEMENT, streamed.get(0).getNodeName());
+        assertEquals(MetadataConstants.PREFIX+":"+MorphMLConstants.PROPS_ELEMENT, streamed.get(1).getNodeName());
+        assertEquals(5, streamed.size());
+
+        assertSameXML(toNode(proj.generatedCellPositions.getNetworkMLElement()), streamed.get(2));
+        assertSameXML(toNode(proj.generatedNetworkConnections.getNetworkMLElement(units, true)), streamed.get(3));
+        assertSameXML(toNode(proj.generatedElecInputs.getNetworkMLElement(units)), streamed.get(4));
+
+        File zipFile = NeuroMLFileManager.saveNetworkStructureXML(proj,
+                                                                  new File(saveNetsDir, "testStreaming"+ProjectStructure.getNeuroMLCompressedFileExtension()),
+                                                                  true,
+                                                                  true,
+                                                                  sc.getName(),
+                                                                  NetworkMLConstants.UNITS_PHYSIOLOGICAL,
+                                                                  NeuroMLVersion.NEUROML_VERSION_1,
+                                                                  null);
+        ZipFile zf = new ZipFile(zipFile);
+        ZipEntry entry = zf.entries().nextElement();
+
+        assertEquals("testStreaming"+ProjectStructure.getNeuroML1FileExtension(), entry.getName());
+
+        List<Node> unzipped = getContents(parse(zf.getInputStream(entry)));
+        zf.close();
+
+        assertEquals(streamed.size(), unzipped.size());
+
+        for (int i = 1; i < streamed.size(); i++)
+        {
+            assertSameXML(streamed.get(i), unzipped.get(i));
+        }
+
+        nmlFile.delete();
+        zipFile.delete();
+    }
+
+    private static Element parse(InputStream in) throws Exception
+    {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Element root = builder.parse(in).getDocumentElement();
+        in.close();
+        return root;
+    }
+
+    private static Node toNode(SimpleXMLEntity entity) throws Exception
+    {
+        if (entity instanceof SimpleXMLComment)
+        {
+            return parse(new ByteArrayInputStream(("<root>"+entity.getXMLString("", false)+"</root>").getBytes())).getFirstChild();
+        }
+        return parse(new ByteArrayInputStream(entity.getXMLString("", false).getBytes()));
+    }
+
+    /*
+     * The child nodes apart from whitespace between elements
+     */
+    private static List<Node> getContents(Node node)
+    {
+        ArrayList<Node> contents = new ArrayList<Node>();
+        NodeList children = node.getChildNodes();
+
+        for (int i = 0; i < children.getLength(); i++)
+        {
+            Node child = children.item(i);
+            if (child.getNodeType() != Node.TEXT_NODE || child.getNodeValue().trim().length() > 0)
+            {
+                contents.add(child);
+            }
+        }
+        return contents;
+    }
+
+    private static void assertSameXML(Node expected, Node actual)
+    {
+        assertEquals(expected.getNodeType(), actual.getNodeType());
+        assertEquals(expected.getNodeName(), actual.getNodeName());
+
+        if (expected.getNodeType() == Node.ELEMENT_NODE)
+        {
+            NamedNodeMap expectedAttrs = expected.getAttributes();
+            NamedNodeMap actualAttrs = actual.getAttributes();
+
+            assertEquals(expectedAttrs.getLength(), actualAttrs.getLength());
+
+            for (int i = 0; i < expectedAttrs.getLength(); i++)
+            {
+                Node attr = expectedAttrs.item(i);
+                assertNotNull("Missing "+attr.getNodeName()+" on "+actual.getNodeName(), actualAttrs.getNamedItem(attr.getNodeName()));
+                assertEquals(attr.getNodeValue(), actualAttrs.getNamedItem(attr.getNodeName()).getNodeValue());
+            }
+
+            List<Node> expectedContents = getContents(expected);
+            List<Node> actualContents = getContents(actual);
+
+            assertEquals("Contents of "+expected.getNodeName(), expectedContents.size(), actualContents.size());
+
+            for (int i = 0; i < expectedContents.size(); i++)
+            {
+                assertSameXML(expectedContents.get(i), actualContents.get(i));
+            }
+        }
+        else
+        {
+            assertEquals(expected.getNodeValue().trim(), actual.getNodeValue().trim());
+        }
+    }
+
+
     //todo: move to utils class
 
 
@@ -27,6 +27,7 @@
 package ucl.physiol.neuroconstruct.neuroml.hdf5;
 
 import java.io.File;
+import java.util.ArrayList;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -168,6 +169,85 @@ public class NetworkMLReaderTest
     
     
     
+    @Test
+    public void testLargeNetworkMLHDF5() throws Exception
+    {
+        System.out.println("---  testLargeNetworkMLHDF5");
+        
+        if (GeneralUtils.isMacBasedPlatform() || 
+            (GeneralUtils.is64bitPlatform() && GeneralUtils.isWindowsBasedPlatform() && System.getProperty("os.arch").contains("64")))
+        {
+            System.out.println("****  Not testing NetworkML HDF5 functionality on this platform  ****");
+            return;
+        }
+        
+        Project proj = pm.getCurrentProject();
+        SimConfig sc = proj.simConfigInfo.getDefaultSimConfig();
+        
+        String nc = proj.morphNetworkConnectionsInfo.getAllSimpleNetConnNames().get(0);
+        String src = proj.morphNetworkConnectionsInfo.getSourceCellGroup(nc);
+        String tgt = proj.morphNetworkConnectionsInfo.getTargetCellGroup(nc);
+        
+        // Too large to be stored exactly in a float
+        int bigId = (1 << 24) + 1;
+        
+        // More than one block of rows
+        int numConns = Hdf5Utils.ROWS_PER_BLOCK + 1234;
+        
+        for (int fractsAlong = 0; fractsAlong <= 1; fractsAlong++)
+        {
+            proj.resetGenerated();
+            
+            for (int i = 0; i < 10; i++)
+            {
+                proj.generatedCellPositions.addPosition(src, i, i, 2 * i, 3 * i);
+                if (!tgt.equals(src))
+                    proj.generatedCellPositions.addPosition(tgt, i, -i, -2 * i, -3 * i);
+            }
+            proj.generatedCellPositions.addPosition(src, bigId, 1.5f, 2.5f, 3.5f);
+            
+            for (int i = 0; i < numConns; i++)
+            {
+                int pre = i % 1000 == 0 ? bigId : i % 10;
+                float fract = fractsAlong == 0 ? 0.5f : (i % 7) / 7f;
+                
+                proj.generatedNetworkConnections.addSynapticConnection(nc, GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                                                       pre, i % 3, fract, (i * 7) % 10, 0, 0.5f, 0, null);
+            }
+            
+            String posString1 = proj.generatedCellPositions.toLongString(false);
+            ArrayList<String> conns1 = new ArrayList<String>();
+            for (GeneratedNetworkConnections.SingleSynapticConnection conn: proj.generatedNetworkConnections.getSynapticConnections(nc))
+            {
+                conns1.add(conn.toString());
+            }
+            
+            File nmlFile = new File(ProjectStructure.getSavedNetworksDir(projDir), "testLarge.h5");
+            
+            nmlFile = NetworkMLWriter.createNetworkMLH5file(nmlFile, proj, sc, NetworkMLConstants.UNITS_PHYSIOLOGICAL);
+            
+            proj.resetGenerated();
+            
+            pm.doLoadNetworkML(nmlFile, true);
+            
+            assertEquals(posString1, proj.generatedCellPositions.toLongString(false));
+            
+            ArrayList<GeneratedNetworkConnections.SingleSynapticConnection> conns2 
+                = proj.generatedNetworkConnections.getSynapticConnections(nc);
+            
+            assertEquals(numConns, conns2.size());
+            
+            for (int i = 0; i < numConns; i++)
+            {
+                assertEquals(conns1.get(i), conns2.get(i).toString());
+            }
+            
+            nmlFile.delete();
+        }
+    }
+    
+    
+    
     public static void main(String[] args)
     {
         NetworkMLReaderTest ct = new NetworkMLReaderTest();
@@ -28,7 +28,8 @@ package ucl.physiol.neuroconstruct.neuron;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Vector;
+import java.util.*;
+import java.util.regex.*;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.Result;
@@ -41,6 +42,7 @@ import ucl.physiol.neuroconstruct.mechanisms.ChannelMLCellMechanism;
 import ucl.physiol.neuroconstruct.mechanisms.SimulatorMapping;
 import ucl.physiol.neuroconstruct.nmodleditor.processes.ProcessManager;
 import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.project.GeneratedNetworkConnections.*;
 import ucl.physiol.neuroconstruct.simulation.SimEnvHelper;
 import ucl.physiol.neuroconstruct.simulation.SimulationData;
 import static org.junit.Assert.*;
@@ -381,6 +383,116 @@ public class NeuronFileManagerTest {
 
 
 
+    @Test public void testPerHostNetConns() throws ProjectFileParsingException, InterruptedException, NeuronException, IOException
+    {
+        System.out.println("---  testPerHostNetConns...");
+
+        ProjectManager pm = loadProject(testProjectDir.getAbsolutePath()+ "/TestParallel.neuro.xml");
+
+        Project proj = pm.getCurrentProject();
+        SimConfig sc = proj.simConfigInfo.getDefaultSimConfig();
+        MpiSettings mpiSettings = new MpiSettings();
+
+        sc.setMpiConf(mpiSettings.getMpiConfiguration(MpiSettings.LOCAL_4PROC));
+
+        int numHosts = sc.getMpiConf().getTotalNumProcessors();
+        assertEquals(4, numHosts);
+
+        pm.doGenerate(sc.getName(), 1234);
+
+        while(pm.isGenerating())
+        {
+            Thread.sleep(200);
+        }
+
+        assertTrue(proj.generatedNetworkConnections.getNumAllSynConns() > 0);
+
+        proj.neuronSettings.setPerHostNetConns(true);
+        proj.neuronSettings.setGraphicsMode(NeuronSettings.GraphicsMode.NO_CONSOLE);
+
+        proj.neuronFileManager.generateTheNeuronFiles(sc, null, NeuronFileManager.RUN_HOC, 1234);
+
+        File neuronDir = ProjectStructure.getNeuronCodeDir(proj.getProjectMainDirectory());
+
+        Pattern synCreated = Pattern.compile("\\{\\S+ (syn_\\S+\\[\\d+\\]) = new ");
+        Pattern gidCreated = Pattern.compile("pc\\.set_gid2node\\((\\d+), hostid\\)");
+        Pattern gidUsed = Pattern.compile("pc\\.gid_connect\\((\\d+), ");
+
+        HashMap<String, Integer> synHosts = new HashMap<String, Integer>();
+        HashSet<Integer> gidsCreated = new HashSet<Integer>();
+        HashSet<Integer> gidsUsed = new HashSet<Integer>();
+
+        for (int host = 0; host < numHosts; host++)
+        {
+            File hostFile = new File(neuronDir, PerHostNetConnWriter.getFileName(host));
+            assertTrue(hostFile.exists());
+
+            for (String line: GeneralUtils.readShortFile(hostFile).split("\\n"))
+            {
+                Matcher m = synCreated.matcher(line);
+                if (m.find())
+                {
+                    assertNull("Connection written twice: "+ m.group(1), synHosts.put(m.group(1), host));
+                }
+                m = gidCreated.matcher(line);
+                if (m.find())
+                {
+                    assertTrue("Gid used twice: "+ m.group(1), gidsCreated.add(Integer.parseInt(m.group(1))));
+                }
+                m = gidUsed.matcher(line);
+                if (m.find())
+                {
+                    gidsUsed.add(Integer.parseInt(m.group(1)));
+                }
+            }
+        }
+
+        assertEquals(gidsCreated, gidsUsed);
+
+        int numSynsExpected = 0;
+
+        Iterator<String> netConnNames = proj.generatedNetworkConnections.getNamesNetConnsIter();
+
+        while (netConnNames.hasNext())
+        {
+            String netConnName = netConnNames.next();
+
+            String targetCellGroup = proj.morphNetworkConnectionsInfo.isValidSimpleNetConn(netConnName) ?
+                                     proj.morphNetworkConnectionsInfo.getTargetCellGroup(netConnName) :
+                                     proj.volBasedConnsInfo.getTargetCellGroup(netConnName);
+
+            Vector<SynapticProperties> synPropList = proj.morphNetworkConnectionsInfo.isValidSimpleNetConn(netConnName) ?
+                                                     proj.morphNetworkConnectionsInfo.getSynapseList(netConnName) :
+                                                     proj.volBasedConnsInfo.getSynapseList(netConnName);
+
+            HashMap<Integer, Integer> cellHosts = new HashMap<Integer, Integer>();
+            for (PositionRecord pr: proj.generatedCellPositions.getPositionRecords(targetCellGroup))
+            {
+                cellHosts.put(pr.cellNumber, pr.getNodeId());
+            }
+
+            ArrayList<SingleSynapticConnection> conns = proj.generatedNetworkConnections.getSynapticConnections(netConnName);
+
+            for (int i = 0; i < conns.size(); i++)
+            {
+                Integer tgtHost = cellHosts.get(conns.get(i).targetEndPoint.cellNumber);
+
+                for (SynapticProperties synProps: synPropList)
+                {
+                    String synObj = "syn_" + netConnName + "_" + synProps.getSynapseType() + "[" + i + "]";
+
+                    assertEquals(synObj, tgtHost, synHosts.get(synObj));
+                    numSynsExpected++;
+                }
+            }
+        }
+
+        assertEquals(numSynsExpected, synHosts.size());
+
+        System.out.println("Checked "+numSynsExpected+" connections and "+gidsCreated.size()+" gids on "+numHosts+" hosts");
+    }
+
+
     @SuppressWarnings("SleepWhileInLoop")
     private void compareSims(int runMode, boolean parallel, DataSaveFormat dsf) throws ProjectFileParsingException, InterruptedException, NeuronException, IOException, SimulationDataException
     {
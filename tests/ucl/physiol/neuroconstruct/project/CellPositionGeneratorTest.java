@@ -0,0 +1,173 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.io.File;
+import org.junit.*;
+import org.junit.Test;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import ucl.physiol.neuroconstruct.project.packing.*;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class CellPositionGeneratorTest
+{
+    ProjectManager pm = null;
+
+    String simConfig = "Default Simulation Configuration";
+
+    public CellPositionGeneratorTest()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        System.out.println("---------------   setUp() CellPositionGeneratorTest");
+        String projName = "TestGenNetworks";
+        File projDir = new File("testProjects/"+ projName);
+        File projFile = ProjectStructure.findProjectFile(projDir);
+
+        pm = new ProjectManager();
+
+        try
+        {
+            pm.loadProject(projFile);
+
+            System.out.println("Proj status: "+ pm.getCurrentProject().getProjectStatusAsString());
+        }
+        catch (ProjectFileParsingException ex)
+        {
+            fail("Error loading: "+ projFile.getAbsolutePath());
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private void generate(long seed) throws InterruptedException
+    {
+        pm.doGenerate(simConfig, seed);
+
+        while(pm.isGenerating())
+        {
+            Thread.sleep(100);
+        }
+    }
+
+    private String getPositions(String cellGroup)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (PositionRecord pr: pm.getCurrentProject().generatedCellPositions.getPositionRecords(cellGroup))
+        {
+            sb.append(pr.toString()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks that cell positions generated in parallel don't depend on the number of processors,
+     * and that positions on a lattice are the same as when generated in order
+     */
+    @Test
+    public void testParallelGeneration() throws InterruptedException, CellPackingException
+    {
+        System.out.println("---  testParallelGeneration()");
+
+        Project proj = pm.getCurrentProject();
+
+        HexagonalLayerPackingAdapter hex = new HexagonalLayerPackingAdapter();
+        hex.setParameter("CentreSpacing", 20);
+        proj.cellGroupsInfo.setCellPackingAdapter("CellGroup_2", hex);
+        proj.cellGroupsInfo.setCellGroupPriority("CellGroup_2", 10);
+
+        // Avoids the cells in CellGroup_2, so is generated after it
+        RandomCellPackingAdapter avoiding = new RandomCellPackingAdapter();
+        avoiding.setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, 40);
+        avoiding.setParameter(CellPackingAdapter.OTHER_OVERLAP_POLICY, 0);
+        proj.cellGroupsInfo.setCellPackingAdapter("SampleCellGroup", avoiding);
+        proj.cellGroupsInfo.setCellGroupPriority("SampleCellGroup", 5);
+
+        RandomCellPackingAdapter independent = new RandomCellPackingAdapter();
+        independent.setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, 30);
+        proj.cellGroupsInfo.setCellPackingAdapter("Pacemaker", independent);
+        proj.cellGroupsInfo.setCellGroupPriority("Pacemaker", 0);
+
+        boolean origReproducible = GeneralProperties.getReproducibleParallelGeneration();
+        int origNumProcs = GeneralProperties.getNumProcessorstoUse();
+
+        try
+        {
+            GeneralProperties.setReproducibleParallelGeneration(false);
+            generate(1234);
+            String latticeInOrder = getPositions("CellGroup_2");
+
+            GeneralProperties.setReproducibleParallelGeneration(true);
+
+            GeneralProperties.setNumProcessorstoUse(1);
+            generate(1234);
+            String latticeOneProc = getPositions("CellGroup_2");
+            String avoidingOneProc = getPositions("SampleCellGroup");
+            String independentOneProc = getPositions("Pacemaker");
+
+            GeneralProperties.setNumProcessorstoUse(4);
+            generate(1234);
+
+            assertTrue(proj.generatedCellPositions.getNumberInCellGroup("CellGroup_2") > 1);
+            assertEquals(40, proj.generatedCellPositions.getNumberInCellGroup("SampleCellGroup"));
+            assertEquals(30, proj.generatedCellPositions.getNumberInCellGroup("Pacemaker"));
+
+            assertEquals(latticeInOrder, latticeOneProc);
+            assertEquals(latticeOneProc, getPositions("CellGroup_2"));
+            assertEquals(avoidingOneProc, getPositions("SampleCellGroup"));
+            assertEquals(independentOneProc, getPositions("Pacemaker"));
+
+            generate(4321);
+            assertFalse(independentOneProc.equals(getPositions("Pacemaker")));
+        }
+        finally
+        {
+            GeneralProperties.setReproducibleParallelGeneration(origReproducible);
+            GeneralProperties.setNumProcessorstoUse(origNumProcs);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        CellPositionGeneratorTest ct = new CellPositionGeneratorTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.io.File;
+import java.util.*;
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.hpc.mpi.*;
+import ucl.physiol.neuroconstruct.test.MainTest;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class CompNodeBalancerTest
+{
+    ProjectManager pm = null;
+
+    public CompNodeBalancerTest()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        System.out.println("---------------   setUp() CompNodeBalancerTest");
+        String projName = "TestGenNetworks";
+        File projDir = new File("testProjects/"+ projName);
+        File projFile = ProjectStructure.findProjectFile(projDir);
+
+        pm = new ProjectManager();
+
+        try
+        {
+            pm.loadProject(projFile);
+        }
+        catch (ProjectFileParsingException ex)
+        {
+            fail("Error loading: "+ projFile.getAbsolutePath());
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+
+    @Test
+    public void testAssignLargestFirst()
+    {
+        System.out.println("---  testAssignLargestFirst...");
+
+        double[] costs = new double[]{1, 1, 1, 1, 1, 1, 100, 100};
+
+        int[] nodeIds = CompNodeBalancer.assignLargestFirst(costs, 2);
+        double[] loads = CompNodeBalancer.getLoads(costs, nodeIds, 2);
+
+        assertEquals(103, loads[0], 0);
+        assertEquals(103, loads[1], 0);
+        assertTrue(nodeIds[6] != nodeIds[7]);
+
+        costs = new double[]{7, 5, 4, 4, 3, 3, 3, 1};
+        loads = CompNodeBalancer.getLoads(costs, CompNodeBalancer.assignLargestFirst(costs, 3), 3);
+
+        double max = 0;
+        for (double load: loads) max = Math.max(max, load);
+        assertEquals(11, max, 0);
+    }
+
+
+    @Test
+    public void testMoveConnectedCells()
+    {
+        System.out.println("---  testMoveConnectedCells...");
+
+        // Two pairs of connected cells: 0-1 and 2-3, with one processor on each of 2 hosts
+        double[] costs = new double[]{1, 1, 1, 1};
+        int[] neighbourStarts = new int[]{0, 1, 2, 3, 4};
+        int[] neighbours = new int[]{1, 0, 3, 2};
+        int[] hostOfNode = new int[]{0, 1};
+
+        int[] nodeIds = new int[]{0, 1, 0, 1};
+
+        int moves = CompNodeBalancer.moveConnectedCells(nodeIds, costs, neighbourStarts, neighbours,
+                                                        hostOfNode, 2, 0.05);
+        // Moving a cell would put 3 on one processor
+        assertEquals(0, moves);
+
+        moves = CompNodeBalancer.moveConnectedCells(nodeIds, costs, neighbourStarts, neighbours,
+                                                    hostOfNode, 2, 0.5);
+        assertEquals(2, moves);
+        assertEquals(nodeIds[0], nodeIds[1]);
+        assertEquals(nodeIds[2], nodeIds[3]);
+        assertTrue(nodeIds[0] != nodeIds[2]);
+    }
+
+
+    @Test
+    public void testGeneratedNodes() throws InterruptedException
+    {
+        System.out.println("---  testGeneratedNodes...");
+
+        Project proj = pm.getCurrentProject();
+        SimConfig simConfig = proj.simConfigInfo.getDefaultSimConfig();
+
+        MpiConfiguration mpiConf = new MpiConfiguration("TestBalancing");
+        mpiConf.getHostList().add(new MpiHost("hostA", 2, 1));
+        mpiConf.getHostList().add(new MpiHost("hostB", 2, 1));
+        mpiConf.setLoadBalancing(MpiConfiguration.COST_AND_CONNECTION_BALANCING);
+        simConfig.setMpiConf(mpiConf);
+
+        pm.doGenerate(simConfig.getName(), 1234);
+
+        while(pm.isGenerating())
+        {
+            Thread.sleep(200);
+        }
+
+        CompNodeBalancer balancer = new CompNodeBalancer(proj, simConfig);
+        assertEquals(proj.generatedCellPositions.getNumberInAllCellGroups(), balancer.getNumCells());
+
+        int[] nodeIds = new int[balancer.getNumCells()];
+        int i = 0;
+        for (String cellGroup: simConfig.getPrioritizedCellGroups(proj))
+        {
+            for (PositionRecord pos: proj.generatedCellPositions.getPositionRecords(cellGroup))
+            {
+                assertTrue(pos.getNodeId()>=0 && pos.getNodeId()<4);
+                nodeIds[i++] = pos.getNodeId();
+            }
+        }
+
+        double[] costs = balancer.getCosts();
+        double[] loads = CompNodeBalancer.getLoads(costs, nodeIds, 4);
+
+        int[] roundRobin = new int[nodeIds.length];
+        for (int j = 0; j < roundRobin.length; j++) roundRobin[j] = j % 4;
+        double[] rrLoads = CompNodeBalancer.getLoads(costs, roundRobin, 4);
+
+        double max = 0, rrMax = 0, largest = 0;
+        for (int n = 0; n < 4; n++)
+        {
+            max = Math.max(max, loads[n]);
+            rrMax = Math.max(rrMax, rrLoads[n]);
+        }
+        for (double cost: costs) largest = Math.max(largest, cost);
+
+        System.out.println("Max load: "+max+", with round robin: "+rrMax);
+
+        double lptMax = 0;
+        for (double load: CompNodeBalancer.getLoads(costs, CompNodeBalancer.assignLargestFirst(costs, 4), 4))
+        {
+            lptMax = Math.max(lptMax, load);
+        }
+        assertTrue(max <= lptMax * (1 + CompNodeBalancer.LOAD_TOLERANCE) + 1e-9);
+
+        int[] hostOfNode = CompNodeBalancer.getHostIndices(mpiConf);
+        assertTrue(balancer.countCrossHostConns(nodeIds, hostOfNode) <= balancer.countCrossHostConns(
+            CompNodeBalancer.assignLargestFirst(costs, 4), hostOfNode));
+    }
+
+
+    public static void main(String[] args)
+    {
+        CompNodeBalancerTest ct = new CompNodeBalancerTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+    }
+
+}
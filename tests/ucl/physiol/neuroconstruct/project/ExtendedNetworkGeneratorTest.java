@@ -144,7 +144,7 @@ public class ExtendedNetworkGeneratorTest
 
         generate(proj, sc, 12345);
 
-        ArrayList<PositionRecord> posRecs = proj.generatedCellPositions.getPositionRecords(cg2);
+        List<PositionRecord> posRecs = proj.generatedCellPositions.getPositionRecords(cg2);
 
         Point3f aPoint = posRecs.get(19).getPoint();
         System.out.println(aPoint);
@@ -0,0 +1,146 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.util.List;
+import javax.vecmath.Point3f;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class GeneratedCellPositionsTest {
+
+    public GeneratedCellPositionsTest() {
+    }
+
+    @Before
+    public void setUp() 
+    {
+        System.out.println("---------------   setUp() GeneratedCellPositionsTest");
+    }
+
+    private GeneratedCellPositions getTestPositions()
+    {
+        GeneratedCellPositions posns = new GeneratedCellPositions(null);
+
+        // Added out of order, and enough to force the arrays to grow
+        for (int i = 0; i < 100; i++)
+        {
+            int cellNum = (i * 37) % 100;
+            posns.addPosition("CG1", cellNum, cellNum, cellNum * 2, cellNum * 3);
+        }
+        posns.addPosition("CG2", 5, 1, 2, 3);
+
+        return posns;
+    }
+
+    /**
+     * Test of getPositionRecords and getOneCellPosition, of class GeneratedCellPositions.
+     */
+    @Test
+    public void testPositionRecords()
+    {
+        System.out.println("--- positionRecords");
+
+        GeneratedCellPositions posns = getTestPositions();
+
+        List<PositionRecord> recs = posns.getPositionRecords("CG1");
+        assertEquals(100, recs.size());
+        assertEquals(100, posns.getNumberInCellGroup("CG1"));
+        assertEquals(101, posns.getNumberInAllCellGroups());
+        assertEquals(101, posns.getAllPositionRecords().size());
+
+        for (int i = 0; i < recs.size(); i++)
+        {
+            PositionRecord pr = recs.get(i);
+            assertEquals((i * 37) % 100, pr.cellNumber);
+            assertEquals(pr.cellNumber * 3, pr.z_pos, 0);
+            assertEquals(pr.getPoint(), posns.getOneCellPosition("CG1", pr.cellNumber));
+        }
+
+        assertEquals(new Point3f(1, 2, 3), posns.getOneCellPosition("CG2", 5));
+        assertNull(posns.getOneCellPosition("CG2", 4));
+        assertNull(posns.getOneCellPosition("CG2", 500));
+        assertNull(posns.getOneCellPosition("CG3", 0));
+        assertEquals(0, posns.getPositionRecords("CG3").size());
+
+        // The list is a view, so sees cells added later
+        posns.addPosition("CG2", 7, 4, 5, 6);
+        assertEquals(2, posns.getPositionRecords("CG2").size());
+
+        // Adding an existing cell number replaces the position
+        posns.addPosition("CG2", 5, 7, 8, 9);
+        assertEquals(2, posns.getNumberInCellGroup("CG2"));
+        assertEquals(new Point3f(7, 8, 9), posns.getOneCellPosition("CG2", 5));
+        assertEquals(5, posns.getPositionRecords("CG2").get(0).cellNumber);
+    }
+
+    /**
+     * Test that node ids and initial potentials set on the records are stored, of class GeneratedCellPositions.
+     */
+    @Test
+    public void testWriteThrough()
+    {
+        System.out.println("--- writeThrough");
+
+        GeneratedCellPositions posns = getTestPositions();
+
+        for (PositionRecord pr: posns.getPositionRecords("CG1"))
+        {
+            assertEquals(PositionRecord.NO_NODE_ID, pr.getNodeId());
+            assertFalse(pr.hasUniqueInitV());
+            pr.setNodeId(pr.cellNumber % 4);
+            if (pr.cellNumber == 10) pr.setInitV(-70);
+        }
+
+        for (PositionRecord pr: posns.getPositionRecords("CG1"))
+        {
+            assertEquals(pr.cellNumber % 4, pr.getNodeId());
+            assertEquals(pr.cellNumber == 10, pr.hasUniqueInitV());
+        }
+        PositionRecord cell10 = posns.getPositionRecords("CG1").get(30);
+        assertEquals(10, cell10.cellNumber);
+        assertEquals(-70, cell10.getInitV(), 0);
+
+        PositionRecord copy = new PositionRecord(3, 1, 1, 1);
+        copy.setNodeId(2);
+        copy.setInitV(-60);
+        posns.addPosition("CG4", copy);
+
+        PositionRecord stored = posns.getPositionRecords("CG4").get(0);
+        assertEquals(2, stored.getNodeId());
+        assertEquals(-60, stored.getInitV(), 0);
+
+        assertEquals(stored, posns.getPositionRecords("CG4").get(0));
+        assertFalse(stored.equals(copy));
+    }
+
+}
@@ -381,6 +381,77 @@ public class MorphBasedConnGeneratorTest
     
     
     
+    /**
+     * Checks that the conns generated reproducibly don't depend on the number of processors used
+     */
+    @Test
+    public void testReproducibleGeneration() throws InterruptedException, CellPackingException
+    {
+        System.out.println("---  testReproducibleGeneration()");
+
+        Project proj = pm.getCurrentProject();
+
+        String nc1 = proj.morphNetworkConnectionsInfo.getNetConnNameAt(2);
+        String src = proj.morphNetworkConnectionsInfo.getSourceCellGroup(nc1);
+        String tgt = proj.morphNetworkConnectionsInfo.getTargetCellGroup(nc1);
+
+        SimConfig sc = proj.simConfigInfo.getSimConfig("TwoCG");
+
+        int numPreMany = 600; // enough for a few ranges of start cells
+
+        ((RandomCellPackingAdapter)proj.cellGroupsInfo.getCellPackingAdapter(src)).setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, numPreMany);
+        ((RandomCellPackingAdapter)proj.cellGroupsInfo.getCellPackingAdapter(tgt)).setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, numPost);
+
+        NumberGenerator ngNum = new NumberGenerator(0);
+        ngNum.initialiseAsGaussianIntGenerator(maxPre, minPre, meanPre, stdPre);
+
+        proj.morphNetworkConnectionsInfo.getConnectivityConditions(nc1).setNumConnsInitiatingCellGroup(ngNum);
+        proj.morphNetworkConnectionsInfo.getConnectivityConditions(nc1).setMaxNumInitPerFinishCell(Integer.MAX_VALUE);
+
+        NumberGenerator ngWeight = new NumberGenerator(0);
+        ngWeight.initialiseAsRandomFloatGenerator(weightMax, weightMin);
+        proj.morphNetworkConnectionsInfo.getSynapseList(nc1).get(0).setWeightsGenerator(ngWeight);
+
+        boolean origReproducible = GeneralProperties.getReproducibleParallelGeneration();
+        int origNumProcs = GeneralProperties.getNumProcessorstoUse();
+
+        try
+        {
+            GeneralProperties.setReproducibleParallelGeneration(true);
+
+            GeneralProperties.setNumProcessorstoUse(1);
+            generate(proj, sc);
+            String connsOneProc = getConnDetails(proj, nc1);
+            int numConns = proj.generatedNetworkConnections.getSynapticConnections(nc1).size();
+
+            GeneralProperties.setNumProcessorstoUse(4);
+            generate(proj, sc);
+            String connsFourProcs = getConnDetails(proj, nc1);
+
+            System.out.println("Generated "+numConns+" conns in each case");
+
+            assertTrue(numConns >= numPreMany * minPre);
+            assertEquals(numConns, proj.generatedNetworkConnections.getSynapticConnections(nc1).size());
+            assertEquals(connsOneProc, connsFourProcs);
+        }
+        finally
+        {
+            GeneralProperties.setReproducibleParallelGeneration(origReproducible);
+            GeneralProperties.setNumProcessorstoUse(origNumProcs);
+        }
+    }
+
+    private String getConnDetails(Project proj, String netConnName)
+    {
+        StringBuilder sb = new StringBuilder();
+        for(SingleSynapticConnection ssc: proj.generatedNetworkConnections.getSynapticConnections(netConnName))
+        {
+            sb.append(ssc.details(false));
+        }
+        return sb.toString();
+    }
+
+
     public static void main(String[] args)
     {
         MorphBasedConnGeneratorTest ct = new MorphBasedConnGeneratorTest();
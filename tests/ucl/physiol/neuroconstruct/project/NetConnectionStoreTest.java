@@ -0,0 +1,189 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.project;
+
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class NetConnectionStoreTest {
+
+    public NetConnectionStoreTest() {
+    }
+
+    @Before
+    public void setUp() 
+    {
+        System.out.println("---------------   setUp() NetConnectionStoreTest");
+    }
+
+
+    private NetConnectionStore getTestStore()
+    {
+        NetConnectionStore store = new NetConnectionStore();
+
+        // Enough connections to force the columns and the per cell rows to grow
+        for (int src = 0; src < 30; src++)
+        {
+            for (int tgt = src % 3; tgt < 40; tgt+=3)
+            {
+                ArrayList<ConnSpecificProps> props = null;
+                if (tgt == 0)
+                {
+                    props = new ArrayList<ConnSpecificProps>();
+                    ConnSpecificProps csp = new ConnSpecificProps("syn1");
+                    csp.weight = src;
+                    props.add(csp);
+                }
+                store.addConnection(GeneratedNetworkConnections.MORPH_NETWORK_CONNECTION,
+                                    src, 0, 0.5f, tgt, tgt % 5, 0.25f, src * 0.1f, props);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Test of addConnection and the column accessors, of class NetConnectionStore.
+     */
+    @Test
+    public void testAddConnection()
+    {
+        System.out.println("--- addConnection");
+
+        NetConnectionStore store = getTestStore();
+
+        int index = store.addConnection(GeneratedNetworkConnections.VOL_NETWORK_CONNECTION,
+                                        100, 3, 0.1f, 200, 4, 0.9f, 2.5f, null);
+
+        assertEquals(store.size() - 1, index);
+        assertEquals(GeneratedNetworkConnections.VOL_NETWORK_CONNECTION, store.getConnectionType(index));
+        assertEquals(100, store.getSourceCell(index));
+        assertEquals(3, store.getSourceSegment(index));
+        assertEquals(0.1f, store.getSourceFract(index), 0);
+        assertEquals(200, store.getTargetCell(index));
+        assertEquals(4, store.getTargetSegment(index));
+        assertEquals(0.9f, store.getTargetFract(index), 0);
+        assertEquals(2.5f, store.getApPropDelay(index), 0);
+        assertNull(store.getProps(index));
+
+        assertEquals(0, store.getTargetCell(0));
+        assertEquals(1, store.getProps(0).size());
+        assertEquals(0, store.getProps(0).get(0).weight, 0);
+    }
+
+    /**
+     * Test of the per cell indices, of class NetConnectionStore.
+     */
+    @Test
+    public void testCellIndices()
+    {
+        System.out.println("--- cellIndices");
+
+        NetConnectionStore store = getTestStore();
+
+        for (int src = 0; src < 30; src++)
+        {
+            int[] fromSrc = store.getConnIndicesFromSource(src);
+            assertEquals(fromSrc.length, store.getNumConnsFromSource(src));
+
+            int lastIndex = -1;
+            for (int connIndex: fromSrc)
+            {
+                assertEquals(src, store.getSourceCell(connIndex));
+                assertTrue(connIndex > lastIndex);
+                lastIndex = connIndex;
+            }
+        }
+
+        int total = 0;
+        for (int tgt = 0; tgt < 40; tgt++)
+        {
+            for (int connIndex: store.getConnIndicesToTarget(tgt))
+            {
+                assertEquals(tgt, store.getTargetCell(connIndex));
+            }
+            total += store.getNumConnsToTarget(tgt);
+        }
+        assertEquals(store.size(), total);
+
+        assertEquals(0, store.getNumConnsFromSource(1000));
+        assertEquals(0, store.getConnIndicesToTarget(-1).length);
+    }
+
+    /**
+     * Test of areConnected method, of class NetConnectionStore.
+     */
+    @Test
+    public void testAreConnected()
+    {
+        System.out.println("--- areConnected");
+
+        NetConnectionStore store = getTestStore();
+
+        for (int src = 0; src < 30; src++)
+        {
+            for (int tgt = 0; tgt < 40; tgt++)
+            {
+                assertEquals(tgt % 3 == src % 3, store.areConnected(src, tgt));
+            }
+        }
+        assertFalse(store.areConnected(30, 0));
+    }
+
+    /**
+     * Test of counting the connections in GeneratedNetworkConnections from the stores.
+     */
+    @Test
+    public void testNumberSynapticConnections()
+    {
+        System.out.println("--- getNumberSynapticConnections");
+
+        GeneratedNetworkConnections gnc = new GeneratedNetworkConnections(null);
+
+        assertEquals(0, gnc.getNumberSynapticConnections("NC1"));
+
+        NetConnectionStore store = getTestStore();
+        gnc.addSynapticConnections("NC1", store);
+
+        assertEquals(store.size(), gnc.getNumberSynapticConnections("NC1"));
+        assertEquals(store.size(), gnc.getSynapticConnections("NC1").size());
+
+        // The list of objects isn't kept, so is rebuilt with the conns added since
+        assertNotSame(gnc.getSynapticConnections("NC1"), gnc.getSynapticConnections("NC1"));
+
+        gnc.addSynapticConnection("NC1", 0, 1);
+
+        assertEquals(store.size() + 1, gnc.getNumberSynapticConnections("NC1"));
+        assertEquals(store.size() + 1, gnc.getSynapticConnections("NC1").size());
+    }
+
+}
@@ -0,0 +1,125 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.project.packing;
+
+import java.util.*;
+import javax.vecmath.Point3f;
+import org.junit.Before;
+import org.junit.Test;
+import ucl.physiol.neuroconstruct.cell.*;
+import ucl.physiol.neuroconstruct.cell.examples.*;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class CellCollisionGridTest {
+
+    public CellCollisionGridTest() {
+    }
+
+    @Before
+    public void setUp() 
+    {
+        System.out.println("---------------   setUp() CellCollisionGridTest");
+    }
+
+    /**
+     * Test of doesCellCollide method, of class CellCollisionGrid, against the
+     * pairwise sphere check for single segment cells
+     */
+    @Test
+    public void testSphericalCells()
+    {
+        System.out.println("--- testSphericalCells");
+
+        Cell cell = new OneSegment("Dummy");
+        float radius = cell.getFirstSomaSegment().getRadius();
+
+        CellCollisionGrid grid = new CellCollisionGrid();
+        ArrayList<Point3f> placed = new ArrayList<Point3f>();
+
+        Random r = new Random(1234);
+
+        for (int i = 0; i < 300; i++)
+        {
+            Point3f p = new Point3f(r.nextFloat()*500, r.nextFloat()*500, r.nextFloat()*100);
+
+            boolean expected = false;
+            for (Point3f other: placed)
+            {
+                if (other.distance(p) < 2 * radius) expected = true;
+            }
+
+            assertEquals(expected, grid.doesCellCollide(p, cell));
+
+            if (!expected)
+            {
+                grid.addCell(p, cell);
+                placed.add(p);
+            }
+        }
+        assertEquals(placed.size(), grid.size());
+    }
+
+    /**
+     * Test of addCell and removeCell methods, of class CellCollisionGrid, with
+     * cells which have cylindrical segments
+     */
+    @Test
+    public void testAddRemove()
+    {
+        System.out.println("--- testAddRemove");
+
+        Cell cell = new SimpleCell("Simple");
+        Cell small = new OneSegment("Dummy");
+
+        CellCollisionGrid grid = new CellCollisionGrid();
+
+        Point3f origin = new Point3f(0, 0, 0);
+        Point3f farAway = new Point3f(10000, 10000, 10000);
+
+        grid.addCell(origin, cell);
+
+        assertEquals(1, grid.size());
+        assertTrue(grid.doesCellCollide(new Point3f(1, 1, 1), small));
+        assertFalse(grid.doesCellCollide(farAway, small));
+
+        assertFalse(grid.removeCell(farAway, cell));
+        assertTrue(grid.removeCell(origin, cell));
+
+        assertEquals(0, grid.size());
+        assertFalse(grid.doesCellCollide(new Point3f(1, 1, 1), small));
+
+        grid.addCell(origin, cell);
+        grid.clear();
+        assertEquals(0, grid.size());
+    }
+
+}
@@ -0,0 +1,201 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ */
+
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.io.*;
+import java.nio.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class BinaryTraceFileTest
+{
+
+    @Before
+    public void setUp()
+    {
+        System.out.println("---------------   setUp() BinaryTraceFileTest");
+    }
+
+    private File getTempFile() throws IOException
+    {
+        File f = File.createTempFile("trace", ".dat.bin");
+        f.deleteOnExit();
+        return f;
+    }
+
+    @Test
+    public void testWriteRead() throws IOException, SimulationDataException
+    {
+        double[][] columns = new double[3][1001];
+        for (int col = 0; col < columns.length; col++)
+        {
+            for (int i = 0; i < columns[col].length; i++)
+            {
+                columns[col][i] = -65 + col + Math.sin(i * 0.01);
+            }
+        }
+
+        for (boolean singlePrecision : new boolean[]{false, true})
+        {
+            File f = getTempFile();
+            BinaryTraceFile.write(f, columns, singlePrecision);
+
+            BinaryTraceFile btf = new BinaryTraceFile(f);
+            System.out.println("Read: " + btf);
+
+            assertEquals(3, btf.getNumColumns());
+            assertEquals(1001, btf.getNumRows());
+            assertTrue(btf.isComplete());
+
+            double tolerance = singlePrecision ? 1e-5 : 0;
+
+            for (int col = 0; col < columns.length; col++)
+            {
+                double[] read = btf.readColumn(col, 1);
+                assertArrayEquals(columns[col], read, tolerance);
+
+                double[] scaled = btf.readColumn(col, 1000);
+                assertEquals(columns[col][500] * 1000, scaled[500], tolerance * 1000);
+            }
+        }
+    }
+
+    /*
+     * As written by NEURON with a printf of the header followed by Vector.fwrite of the
+     * byte order mark and the data, in the native byte order
+     */
+    @Test
+    public void testHeaderOnlyWrittenFirst() throws IOException, SimulationDataException
+    {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN})
+        {
+            File f = getTempFile();
+            int numRows = 20;
+
+            FileOutputStream fos = new FileOutputStream(f);
+            fos.write(BinaryTraceFile.getHeader(false, numRows, 1).getBytes("US-ASCII"));
+
+            BinaryTraceFile btf = new BinaryTraceFile(f);
+            assertFalse(btf.isComplete());
+
+            ByteBuffer buffer = ByteBuffer.allocate((numRows + 1) * 8).order(order);
+            buffer.putDouble(BinaryTraceFile.BYTE_ORDER_MARK);
+            for (int i = 0; i < numRows; i++)
+            {
+                buffer.putDouble(i * 0.5);
+            }
+            fos.write(buffer.array());
+            fos.close();
+
+            assertTrue(btf.isComplete());
+            assertEquals(order, btf.getByteOrder());
+            assertEquals(9.5, btf.readColumn(0, 1)[numRows - 1], 0);
+        }
+    }
+
+    @Test
+    public void testByteOrder() throws IOException, SimulationDataException
+    {
+        double[][] columns = new double[][]{{-70, -65, 20, -80}, {1e-3, 2e-3, 3e-3, 4e-3}};
+
+        for (boolean singlePrecision : new boolean[]{false, true})
+        {
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN})
+            {
+                File f = getTempFile();
+                BinaryTraceFile.write(f, columns, singlePrecision, order);
+
+                BinaryTraceFile btf = new BinaryTraceFile(f);
+                assertEquals(order, btf.getByteOrder());
+                assertTrue(btf.isComplete());
+
+                assertArrayEquals(columns[1], btf.readColumn(1, 1), singlePrecision ? 1e-9 : 0);
+            }
+        }
+
+        // Version 1 files have no byte order mark and are little endian
+        File f = getTempFile();
+        FileOutputStream fos = new FileOutputStream(f);
+        fos.write((BinaryTraceFile.MAGIC + " 1 " + BinaryTraceFile.DOUBLE_FORMAT + " 2 1\n").getBytes("US-ASCII"));
+        ByteBuffer buffer = ByteBuffer.allocate(2 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putDouble(-65).putDouble(-64);
+        fos.write(buffer.array());
+        fos.close();
+
+        BinaryTraceFile btf = new BinaryTraceFile(f);
+        assertEquals(ByteOrder.LITTLE_ENDIAN, btf.getByteOrder());
+        assertTrue(btf.isComplete());
+        assertArrayEquals(new double[]{-65, -64}, btf.readColumn(0, 1), 0);
+    }
+
+    @Test
+    public void testLazyDataStore() throws IOException, SimulationDataException
+    {
+        final File f = getTempFile();
+        BinaryTraceFile.write(f, new double[][]{{-70, -65, 20, -80}}, false);
+
+        DataStore ds = new DataStore(new DataStore.DataLoader()
+        {
+            public double[] loadData() throws SimulationDataException
+            {
+                return new BinaryTraceFile(f).readColumn(0, 1);
+            }
+        }, "CellGroup", 0, 0, "VOLTAGE", "ms", "mV", null);
+
+        assertFalse(ds.isLoaded());
+        System.out.println(ds);
+
+        assertEquals(20, ds.getMaxVal(), 0);
+        assertTrue(ds.isLoaded());
+        assertEquals(-80, ds.getMinVal(), 0);
+        assertEquals(4, ds.getDataPoints().length);
+    }
+
+    @Test(expected=SimulationDataException.class)
+    public void testBadHeader() throws IOException, SimulationDataException
+    {
+        File f = getTempFile();
+        FileWriter fw = new FileWriter(f);
+        fw.write("-65.0\n-65.1\n");
+        fw.close();
+
+        new BinaryTraceFile(f);
+    }
+
+
+    public static void main(String[] args)
+    {
+        BinaryTraceFileTest ct = new BinaryTraceFileTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+    }
+
+}
@@ -5,6 +5,7 @@
 
 package ucl.physiol.neuroconstruct.simulation;
 
+import ucl.physiol.neuroconstruct.project.GeneralProperties;
 import ucl.physiol.neuroconstruct.test.MainTest;
 import org.junit.runner.Result;
 import org.junit.Before;
@@ -117,6 +118,60 @@ public class DataStoreTest {
 
     }
 
+    @Test
+    public void testLazyLoadingWithCache() throws SimulationDataException
+    {
+        int origSize = GeneralProperties.getTraceCacheSizeMB();
+        GeneralProperties.setTraceCacheSizeMB(1);
+        DataStoreCache.clear();
+
+        final int[] numLoads = new int[]{0};
+
+        try
+        {
+            DataStore[] stores = new DataStore[3];
+            for (int i = 0; i < stores.length; i++)
+            {
+                final double offset = i;
+                stores[i] = new DataStore(new DataStore.DataLoader()
+                {
+                    public double[] loadData()
+                    {
+                        numLoads[0]++;
+                        double[] vals = new double[100000]; // 800kB
+                        for (int j = 0; j < vals.length; j++) vals[j] = offset + j;
+                        return vals;
+                    }
+                }, "fggjghj", i, 0, "fggjghj", "fggjghj", "fggjghj", null);
+            }
+
+            assertFalse(stores[0].isLoaded());
+            assertEquals(0, numLoads[0]);
+
+            assertEquals(99999, stores[0].getMaxVal(), 0);
+            assertEquals(1, numLoads[0]);
+            assertTrue(stores[0].isLoaded());
+
+            assertEquals(1, stores[1].getDataPoints()[0], 0);
+
+            // Over the 1MB budget, so the first should have been dropped, but min/max remembered
+            assertFalse(stores[0].isLoaded());
+            assertTrue(stores[1].isLoaded());
+            assertEquals(1, DataStoreCache.getNumberLoaded());
+            assertEquals(0, stores[0].getMinVal(), 0);
+            assertEquals(2, numLoads[0]);
+
+            assertEquals(99999, stores[0].getDataPoints()[99999], 0);
+            assertEquals(3, numLoads[0]);
+            assertFalse(stores[1].isLoaded());
+        }
+        finally
+        {
+            GeneralProperties.setTraceCacheSizeMB(origSize);
+            DataStoreCache.clear();
+        }
+    }
+
 
     public static void main(String[] args)
     {
@@ -6,13 +6,16 @@
 package ucl.physiol.neuroconstruct.simulation;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Hashtable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.Result;
 import static org.junit.Assert.*;
 import ucl.physiol.neuroconstruct.dataset.DataSet;
+import ucl.physiol.neuroconstruct.project.SimPlot;
 import ucl.physiol.neuroconstruct.test.MainTest;
 import ucl.physiol.neuroconstruct.utils.GeneralUtils;
 
@@ -103,6 +106,271 @@ public class SimulationDataTest
 
     }
 
+    @Test
+    public void testGetSpikeTimes() throws IOException, SimulationDataException
+    {
+        System.out.println("---  testGetSpikeTimes...");
+
+        ArrayList<File> files = new ArrayList<File>();
+
+        files.add(new File("testProjects/TestHDF5/simulations/TestText"));
+        files.add(new File("testProjects/TestHDF5/simulations/TestSpikesText"));
+
+        for (File f: files)
+        {
+            SimulationData simData = new SimulationData(f, true);
+            simData.initialise();
+
+            double[] times = simData.getAllTimes();
+            ArrayList<String> cellSegRefs = new ArrayList<String>();
+            for (DataStore ds: simData.getAllLoadedDataStores())
+            {
+                if (ds.getVariable().equals(SimPlot.VOLTAGE) || ds.getVariable().indexOf(SimPlot.SPIKE)>=0)
+                    cellSegRefs.add(ds.getCellSegRef());
+            }
+            assertTrue(cellSegRefs.size() > 0);
+
+            float[][] windows = new float[][]{{0, (float)times[times.length-1]}, {5, 15}, {10, 10}};
+
+            for (float threshold = -40; threshold <= 40; threshold = threshold + 40)
+            {
+                for (float[] window: windows)
+                {
+                    // Twice, to check the cached values are the same
+                    for (int rep = 0; rep < 2; rep++)
+                    {
+                        ArrayList<double[]> spikeSets = simData.getSpikeTimes(cellSegRefs, threshold, window[0], window[1]);
+                        ArrayList<double[]> isiSets = simData.getInterSpikeIntervals(cellSegRefs, threshold, window[0], window[1]);
+
+                        assertEquals(cellSegRefs.size(), spikeSets.size());
+
+                        for (int i = 0; i < cellSegRefs.size(); i++)
+                        {
+                            double[] volts = simData.getVoltageAtAllTimes(cellSegRefs.get(i));
+
+                            double[] expected = SpikeAnalyser.getSpikeTimes(volts, times, threshold, window[0], window[1]);
+                            assertArrayEquals(expected, spikeSets.get(i), 0);
+                            assertArrayEquals(expected, simData.getSpikeTimes(cellSegRefs.get(i), threshold, window[0], window[1]), 0);
+
+                            ArrayList<Double> expectedIsis = SpikeAnalyser.getInterSpikeIntervals(volts, times, threshold, window[0], window[1]);
+                            assertEquals(expectedIsis.size(), isiSets.get(i).length);
+                            for (int j = 0; j < expectedIsis.size(); j++)
+                            {
+                                assertEquals(expectedIsis.get(j), isiSets.get(i)[j], 0);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        try
+        {
+            SimulationData simData = new SimulationData(files.get(0), true);
+            simData.initialise();
+            ArrayList<String> refs = new ArrayList<String>();
+            refs.add("NoSuchCellGroup_0");
+            simData.getSpikeTimes(refs, -20, 0, 10);
+            fail("Should not find spikes for a missing cell");
+        }
+        catch (SimulationDataException e)
+        {
+            System.out.println("Expected: "+ e.getMessage());
+        }
+    }
+
+
+    @Test
+    public void testRecordedSpikeTimes() throws IOException, SimulationDataException
+    {
+        System.out.println("---  testRecordedSpikeTimes...");
+
+        File simDir = new File("testProjects/TestHDF5/simulations/TestSpikesText");
+        SimulationData simData = new SimulationData(simDir, true);
+        simData.initialise();
+
+        double[] times = simData.getAllTimes();
+        ArrayList<double[]> spikeSets = new ArrayList<double[]>();
+
+        for (DataStore ds: simData.getAllLoadedDataStores())
+        {
+            assertTrue(ds.isSpikeTimes());
+
+            double[] recorded = ds.getRecordedSpikeTimes();
+
+            // As saved in the file, not the continuous form given by getDataPoints()
+            File spikeFile = new File(simDir, ds.getCellSegRef() + "." + ds.getVariable() + "." + SimPlot.SPIKE_EXT);
+            String[] lines = GeneralUtils.readShortFile(spikeFile).trim().split("\\s+");
+            assertEquals(lines.length, recorded.length);
+            for (int i = 0; i < lines.length; i++)
+            {
+                assertEquals(Double.parseDouble(lines[i]), recorded[i], 1e-9);
+            }
+            assertEquals(times.length, ds.getDataPoints().length);
+
+            spikeSets.add(recorded);
+        }
+
+        SpikeTrainMatrix matrix = new SpikeTrainMatrix(spikeSets, 1, 0, (float)times[times.length-1]);
+
+        for (int i = 0; i < spikeSets.size(); i++)
+        {
+            assertEquals(spikeSets.get(i).length, matrix.getNumSpikes(i));
+        }
+
+        simData = new SimulationData(new File("testProjects/TestHDF5/simulations/TestText"), true);
+        simData.initialise();
+        assertNull(simData.getAllLoadedDataStores().get(0).getRecordedSpikeTimes());
+    }
+
+
+    /*
+     * The DataStore getDataAtAllTimes() used to return, found by checking all of them
+     */
+    private DataStore findByScanning(SimulationData simData, String cellSegRef, String variable, boolean incSpikeOrVoltage)
+    {
+        for (DataStore ds : simData.getAllLoadedDataStores())
+        {
+            if ( (ds.getVariable().equals(variable) ||
+                  (incSpikeOrVoltage &&
+                   (variable.indexOf(SimPlot.SPIKE) >= 0 || variable.equals(SimPlot.VOLTAGE)) &&
+                   (ds.getVariable().indexOf(SimPlot.SPIKE) >= 0 || ds.getVariable().equals(SimPlot.VOLTAGE))))
+                 && SimulationData.cellSegRefsEqual(cellSegRef, ds.getCellSegRef()))
+            {
+                return ds;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testIndexedLookups() throws IOException, SimulationDataException
+    {
+        System.out.println("---  testIndexedLookups...");
+
+        ArrayList<File> files = new ArrayList<File>();
+
+        files.add(new File("testProjects/TestHDF5/simulations/TestText"));
+        files.add(new File("testProjects/TestHDF5/simulations/TestSpikesText"));
+
+        for (File f: files)
+        {
+            SimulationData simData = new SimulationData(f, true);
+            simData.initialise();
+
+            ArrayList<String> vars = simData.getVariablesForAny();
+            vars.add("NoSuchVariable");
+
+            for (DataStore ds: simData.getAllLoadedDataStores())
+            {
+                String ref = ds.getCellSegRef();
+                String otherRef = ref.endsWith(".0") ? ref.substring(0, ref.length()-2) : ref+".0";
+
+                for (String var: vars)
+                {
+                    for (boolean inc: new boolean[]{true, false})
+                    {
+                        DataStore expected = findByScanning(simData, ref, var, inc);
+                        try
+                        {
+                            assertSame(expected, simData.getDataAtAllTimes(ref, var, inc));
+                            assertSame(expected, simData.getDataAtAllTimes(otherRef, var, inc));
+                        }
+                        catch (SimulationDataException e)
+                        {
+                            assertNull(expected);
+                        }
+                    }
+                }
+                DataStore volts = findByScanning(simData, ref, SimPlot.VOLTAGE, true);
+                if (volts != null)
+                    assertArrayEquals(volts.getDataPoints(), simData.getVoltageAtAllTimes(ref), 0);
+
+                ArrayList<DataStore> forRef = simData.getDataForCellSegRef(otherRef, true);
+                assertTrue(forRef.contains(ds));
+                for (DataStore other: forRef)
+                {
+                    assertTrue(SimulationData.cellSegRefsEqual(ref, other.getCellSegRef()));
+                }
+                assertTrue(simData.getCellSegRefsForCellRef(ds.getCellRef()).contains(ref));
+            }
+
+            assertEquals(0, simData.getDataForCellSegRef("NoSuchCellGroup_0", true).size());
+            assertEquals(0, simData.getDataForCellSegRef("NotARef", false).size());
+        }
+    }
+
+    @Test
+    public void testSynapseLookups() throws IOException, SimulationDataException
+    {
+        System.out.println("---  testSynapseLookups...");
+
+        File simDir = new File(MainTest.getTempProjectDirectory(), "TestSynapseData");
+        GeneralUtils.removeAllFiles(simDir, false, true, true);
+        simDir.mkdirs();
+
+        GeneralUtils.copyFileIntoDir(new File("testProjects/TestHDF5/simulations/TestText/simulation.props"), simDir);
+
+        String[] fileNames = new String[]{"time.dat",
+                                          "CG_0.dat",
+                                          "CG_0.2.dat",
+                                          "CG_0.0.NetConn_1.DoubExpSyn.1.COND.dat",
+                                          "CG_0.0.NetConn_1.DoubExpSyn.2.COND.dat",
+                                          "CG_0.2.NetConn_2.DoubExpSyn.3.COND.dat"};
+
+        for (int i = 0; i < fileNames.length; i++)
+        {
+            FileWriter fw = new FileWriter(new File(simDir, fileNames[i]));
+            for (int t = 0; t < 5; t++)
+            {
+                fw.write((i == 0 ? t : i*10 + t) + "\n");
+            }
+            fw.close();
+        }
+
+        SimulationData simData = new SimulationData(simDir, true);
+        simData.initialise();
+
+        assertEquals(5, simData.getAllLoadedDataStores().size());
+
+        assertEquals(10, simData.getVoltageAtAllTimes("CG_0")[0], 0);
+        assertEquals(20, simData.getVoltageAtAllTimes("CG_0.2")[0], 0);
+
+        // Each synapse's own data, not just the first on the segment
+        assertEquals("NetConn_1.DoubExpSyn.1", simData.getDataAtAllTimes("CG_0.0.NetConn_1.DoubExpSyn.1", "COND", true).getPostSynapticObject().getSynRef());
+        assertEquals("NetConn_1.DoubExpSyn.2", simData.getDataAtAllTimes("CG_0.0.NetConn_1.DoubExpSyn.2", "COND", true).getPostSynapticObject().getSynRef());
+        assertEquals("NetConn_2.DoubExpSyn.3", simData.getDataAtAllTimes("CG_0.2.NetConn_2.DoubExpSyn.3", "COND", true).getPostSynapticObject().getSynRef());
+        assertEquals("NetConn_1.DoubExpSyn.1", simData.getDataAtAllTimes("CG_0", "COND", true).getPostSynapticObject().getSynRef());
+
+        assertEquals(3, simData.getDataForCellSegRef("CG_0", false).size());
+        assertEquals(2, simData.getDataForCellSegRef("CG_0.2", false).size());
+
+        // All the synapses on the cell are included, and those on the segment twice, as before
+        assertEquals(6, simData.getDataForCellSegRef("CG_0", true).size());
+        assertEquals(5, simData.getDataForCellSegRef("CG_0.2", true).size());
+
+        ArrayList<String> cellItemRefs = simData.getCellItemRefsForVar("COND", true, getCellsToUse("CG", 0));
+        assertEquals(3, cellItemRefs.size());
+
+        for (String itemRef: cellItemRefs)
+        {
+            DataStore ds = simData.getDataAtAllTimes(itemRef, "COND", true);
+            assertEquals(itemRef, ds.getCellSegRef()+"."+ds.getPostSynapticObject().getSynRef());
+        }
+
+        GeneralUtils.removeAllFiles(simDir, false, true, true);
+    }
+
+    private Hashtable<String, ArrayList<Integer>> getCellsToUse(String cellGroup, int cellNumber)
+    {
+        Hashtable<String, ArrayList<Integer>> cellsToUse = new Hashtable<String, ArrayList<Integer>>();
+        ArrayList<Integer> cells = new ArrayList<Integer>();
+        cells.add(cellNumber);
+        cellsToUse.put(cellGroup, cells);
+        return cellsToUse;
+    }
+
+
     @Test
     public void testConvertSpikeTimesToContinuous1()
     {
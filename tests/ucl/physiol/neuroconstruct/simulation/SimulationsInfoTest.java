@@ -0,0 +1,249 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Vector;
+import javax.swing.SwingUtilities;
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.hpc.mpi.RemoteLogin;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import ucl.physiol.neuroconstruct.utils.GeneralUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class SimulationsInfoTest
+{
+    File simsDir = null;
+
+    Vector<String> cols = null;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        System.out.println("---------------   setUp() SimulationsInfoTest");
+
+        simsDir = new File(MainTest.getTempProjectDirectory(), "TestSimulationsInfo");
+        GeneralUtils.removeAllFiles(simsDir, false, true, true);
+        simsDir.mkdirs();
+
+        GeneralUtils.copyDirIntoDir(new File("testProjects/TestHDF5/simulations/TestText"),
+                                    new File(simsDir, "TestText"), false, true);
+        GeneralUtils.copyDirIntoDir(new File("testProjects/TestHDF5/simulations/TestSpikesText"),
+                                    new File(simsDir, "TestSpikesText"), false, true);
+
+        // Not a simulation
+        new File(simsDir, "Other").mkdir();
+
+        // Run remotely, the data not yet pulled back
+        File remoteDir = new File(simsDir, "TestRemote");
+        remoteDir.mkdir();
+        GeneralUtils.copyFileIntoDir(new File("testProjects/TestHDF5/simulations/TestText/simulation.props"), remoteDir);
+
+        FileWriter fw = new FileWriter(new File(remoteDir, RemoteLogin.remotePullScriptName));
+        fw.write("#!/bin/sh\n");
+        fw.write("cp "+new File(simsDir, "TestText/time.dat").getAbsolutePath()+" "+remoteDir.getAbsolutePath()+"\n");
+        fw.close();
+        new File(remoteDir, RemoteLogin.remotePullScriptName).setExecutable(true);
+
+        new File(simsDir, "TestText").setLastModified(System.currentTimeMillis() - 20000);
+        new File(simsDir, "TestSpikesText").setLastModified(System.currentTimeMillis() - 10000);
+
+        cols = new Vector<String>();
+        cols.add(SimulationsInfo.COL_NAME_NAME);
+        cols.add(SimulationsInfo.COL_NAME_DATE);
+        cols.add("Simulator");
+    }
+
+    @After
+    public void tearDown()
+    {
+        GeneralUtils.removeAllFiles(simsDir, false, true, true);
+    }
+
+    @Test
+    public void testListSimulations()
+    {
+        System.out.println("---  testListSimulations()");
+
+        SimulationsInfo simsInfo = new SimulationsInfo(simsDir, cols);
+
+        assertEquals(3, simsInfo.getRowCount());
+
+        // In date order
+        assertEquals("TestText", simsInfo.getValueAt(0, SimulationsInfo.COL_NUM_NAME));
+        assertEquals("TestSpikesText", simsInfo.getValueAt(1, SimulationsInfo.COL_NUM_NAME));
+        assertEquals("TestRemote", simsInfo.getValueAt(2, SimulationsInfo.COL_NUM_NAME));
+
+        assertEquals(simsInfo.getSimulationData(0).getDateModified(), simsInfo.getValueAt(0, SimulationsInfo.COL_NUM_DATE));
+        assertEquals("Remote simulation", simsInfo.getValueAt(2, SimulationsInfo.COL_NUM_DATE));
+        assertTrue(simsInfo.getSimulationData(2).isDataAtRemoteLocation());
+
+        assertEquals("NEURON", simsInfo.getValueAt(0, 2));
+        assertTrue(simsInfo.getAllColumns().contains("dt"));
+
+        assertEquals(new File(simsDir, "TestText").getAbsoluteFile(), simsInfo.getSimulationData(0).getSimulationDirectory());
+
+        simsInfo.setListStyle(SimulationsInfo.ListStyle.Alphabetic);
+        simsInfo.refresh(false);
+        assertEquals("TestRemote", simsInfo.getValueAt(0, SimulationsInfo.COL_NUM_NAME));
+
+        assertTrue(new File(simsDir, SimulationCatalogue.catalogueFileName).exists());
+    }
+
+    @Test
+    public void testCatalogue() throws IOException
+    {
+        System.out.println("---  testCatalogue()");
+
+        SimulationCatalogue catalogue = new SimulationCatalogue(simsDir);
+        assertEquals(0, catalogue.size());
+
+        File textDir = new File(simsDir, "TestText");
+
+        SimulationCatalogue.Entry entry = catalogue.getEntry(textDir);
+
+        assertTrue(entry.isLocalSimulation());
+        assertEquals("NEURON", entry.simProps.getProperty("Simulator"));
+        assertEquals(textDir.listFiles().length, entry.fileNames.length);
+        assertTrue(entry.getTotalFileSize() > 0);
+
+        assertFalse(catalogue.getEntry(new File(simsDir, "Other")).isLocalSimulation());
+        assertTrue(catalogue.getEntry(new File(simsDir, "TestRemote")).isRemoteSimulation());
+
+        // Not read again if unchanged
+        assertSame(entry, catalogue.getEntry(textDir));
+
+        catalogue.save();
+
+        SimulationCatalogue reloaded = new SimulationCatalogue(simsDir);
+        assertEquals(3, reloaded.size());
+
+        SimulationCatalogue.Entry reloadedEntry = reloaded.getEntry(textDir);
+        assertSame(reloadedEntry, reloaded.getEntry(textDir));
+        assertEquals(entry.simProps, reloadedEntry.simProps);
+        assertEquals(entry.timesModified, reloadedEntry.timesModified);
+        assertArrayEquals(entry.fileSizes, reloadedEntry.fileSizes);
+
+        // Read again after a change
+        new File(textDir, "time.dat").setLastModified(entry.timesModified - 5000);
+        SimulationCatalogue.Entry changedEntry = reloaded.getEntry(textDir);
+        assertNotSame(reloadedEntry, changedEntry);
+        assertEquals(entry.timesModified - 5000, changedEntry.timesModified);
+
+        // Read again after a data file is rewritten in place with the same time
+        File dataFile = new File(textDir, changedEntry.fileNames[0]);
+        long modified = dataFile.lastModified();
+        long dirModified = textDir.lastModified();
+        FileWriter dataWriter = new FileWriter(dataFile, true);
+        dataWriter.write("0\n");
+        dataWriter.close();
+        dataFile.setLastModified(modified);
+        textDir.setLastModified(dirModified);
+
+        SimulationCatalogue.Entry rewrittenEntry = reloaded.getEntry(textDir);
+        assertNotSame(changedEntry, rewrittenEntry);
+        assertEquals(changedEntry.getTotalFileSize() + 2, rewrittenEntry.getTotalFileSize());
+
+        GeneralUtils.removeAllFiles(textDir, false, true, true);
+        assertNull(reloaded.getEntry(textDir));
+
+        // A damaged catalogue is ignored
+        FileWriter fw = new FileWriter(reloaded.getCatalogueFile());
+        fw.write("Not a catalogue");
+        fw.close();
+        assertEquals(0, new SimulationCatalogue(simsDir).size());
+    }
+
+    @Test
+    public void testRemovedSimulation()
+    {
+        System.out.println("---  testRemovedSimulation()");
+
+        SimulationsInfo simsInfo = new SimulationsInfo(simsDir, cols);
+        assertEquals(3, simsInfo.getRowCount());
+
+        GeneralUtils.removeAllFiles(new File(simsDir, "TestSpikesText"), false, true, true);
+
+        simsInfo.refresh(false);
+        assertEquals(2, simsInfo.getRowCount());
+        assertEquals(3, new SimulationCatalogue(simsDir).size());
+    }
+
+    @Test
+    public void testPullRemote() throws Exception
+    {
+        System.out.println("---  testPullRemote()");
+
+        if (GeneralUtils.isWindowsBasedPlatform())
+        {
+            System.out.println("****  Not testing the remote pull script on Windows  ****");
+            return;
+        }
+
+        final SimulationsInfo simsInfo = new SimulationsInfo(simsDir, cols);
+        assertEquals("Remote simulation", simsInfo.getValueAt(2, SimulationsInfo.COL_NUM_DATE));
+
+        simsInfo.refresh(true);
+
+        final Object[] date = new Object[1];
+        long start = System.currentTimeMillis();
+
+        while (System.currentTimeMillis() - start < 20000)
+        {
+            Thread.sleep(100);
+
+            // The row is updated on the event dispatch thread
+            SwingUtilities.invokeAndWait(new Runnable()
+            {
+                public void run()
+                {
+                    date[0] = simsInfo.getValueAt(2, SimulationsInfo.COL_NUM_DATE);
+                }
+            });
+            if (!date[0].equals("Remote simulation")) break;
+        }
+
+        assertEquals(SimulationData.getDateModified(new File(simsDir, "TestRemote/time.dat").lastModified()), date[0]);
+        assertFalse(simsInfo.getSimulationData(2).isDataAtRemoteLocation());
+    }
+
+    public static void main(String[] args)
+    {
+        SimulationsInfoTest ct = new SimulationsInfoTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+    }
+
+}
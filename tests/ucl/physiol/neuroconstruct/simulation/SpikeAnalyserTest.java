@@ -128,6 +128,24 @@ public class SpikeAnalyserTest {
 
     }
 
+
+    @Test
+    public void testSpikeTimesInRange()
+    {
+        System.out.println("---  testSpikeTimesInRange...");
+
+        double[] spikes = new double[]{10, 25, 45, 55};
+
+        assertArrayEquals(new double[]{25, 45}, SpikeAnalyser.getSpikeTimesInRange(spikes, 20, 55, false), 0);
+        assertArrayEquals(new double[]{25, 45, 55}, SpikeAnalyser.getSpikeTimesInRange(spikes, 20, 55, true), 0);
+
+        // Changing the result mustn't change the (possibly cached) spike times passed in
+        double[] all = SpikeAnalyser.getSpikeTimesInRange(spikes, 0, 100, true);
+        assertArrayEquals(spikes, all, 0);
+        all[0] = -1;
+        assertEquals(10, spikes[0], 0);
+    }
+
     @Test
     public void testBinning()
     {
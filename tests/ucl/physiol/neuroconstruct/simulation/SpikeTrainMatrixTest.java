@@ -0,0 +1,227 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+
+package ucl.physiol.neuroconstruct.simulation;
+
+import java.util.*;
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.dataset.DataSet;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class SpikeTrainMatrixTest {
+
+    Random r = new Random(1234);
+
+    public SpikeTrainMatrixTest() {
+    }
+
+    @Before
+    public void setUp() {
+        System.out.println("---------------   setUp() SpikeTrainMatrixTest");
+    }
+
+    private ArrayList<double[]> getSpikeSets(int numTrains, int maxSpikes, double duration)
+    {
+        ArrayList<double[]> spikeSets = new ArrayList<double[]>();
+        for (int i = 0; i < numTrains; i++)
+        {
+            double[] spikes = new double[r.nextInt(maxSpikes + 1)];
+            for (int j = 0; j < spikes.length; j++)
+            {
+                spikes[j] = r.nextDouble() * duration;
+            }
+            Arrays.sort(spikes);
+            spikeSets.add(spikes);
+        }
+        return spikeSets;
+    }
+
+    @Test
+    public void testContinuousCrossCorrelation()
+    {
+        System.out.println("---  testContinuousCrossCorrelation...");
+
+        // Long enough to use the FFT
+        double[] a = new double[3000];
+        double[] b = new double[2500];
+        for (int i = 0; i < a.length; i++) a[i] = r.nextGaussian();
+        for (int i = 0; i < b.length; i++) b[i] = Math.sin(i / 10.0) + r.nextGaussian();
+
+        int minLag = -200;
+        int maxLag = 300;
+        double[] correl = SpikeAnalyser.continuousCrossCorrelation(a, b, minLag, maxLag);
+
+        assertEquals(maxLag - minLag + 1, correl.length);
+
+        for (int k = minLag; k <= maxLag; k++)
+        {
+            double sum = 0;
+            for (int i = 0; i < a.length; i++)
+            {
+                if (i + k >= 0 && i + k < b.length) sum += a[i] * b[i + k];
+            }
+            assertEquals(sum, correl[k - minLag], 1e-8 * a.length);
+        }
+
+        double[] norm = SpikeAnalyser.normalisedCrossCorrelation(a, a, 5);
+        assertEquals(1, norm[5], 1e-10);
+        for (double c: norm)
+        {
+            assertTrue(Math.abs(c) <= 1 + 1e-10);
+        }
+    }
+
+    @Test
+    public void testCrossCorrelograms()
+    {
+        System.out.println("---  testCrossCorrelograms...");
+
+        float binSize = 0.5f;
+        float start = 10;
+        float stop = 190;
+        int maxLagBins = 20;
+
+        ArrayList<double[]> spikeSets = getSpikeSets(40, 30, 200);
+        SpikeTrainMatrix matrix = new SpikeTrainMatrix(spikeSets, binSize, start, stop);
+
+        assertEquals(40, matrix.getNumTrains());
+        assertEquals(360, matrix.getNumBins());
+
+        float[][] all = matrix.getAllCrossCorrelograms(maxLagBins);
+        assertEquals(40 * 39 / 2, all.length);
+
+        double[] popTotal = new double[2 * maxLagBins + 1];
+        int numPairs = 0;
+
+        for (int i = 0; i < spikeSets.size(); i++)
+        {
+            ArrayList<Integer> bins1 = getBins(spikeSets.get(i), binSize, start, stop);
+            assertEquals(bins1.size(), matrix.getNumSpikes(i));
+
+            for (int j = i + 1; j < spikeSets.size(); j++)
+            {
+                ArrayList<Integer> bins2 = getBins(spikeSets.get(j), binSize, start, stop);
+                float[] expected = new float[2 * maxLagBins + 1];
+
+                for (int b1: bins1)
+                {
+                    for (int b2: bins2)
+                    {
+                        if (Math.abs(b2 - b1) <= maxLagBins) expected[b2 - b1 + maxLagBins]++;
+                    }
+                }
+                for (int k = 0; k < expected.length; k++)
+                {
+                    if (bins1.size() > 0) expected[k] = expected[k] / bins1.size();
+                }
+
+                assertArrayEquals(expected, all[SpikeTrainMatrix.getPairIndex(i, j, spikeSets.size())], 1e-6f);
+                assertArrayEquals(expected, matrix.getCrossCorrelogram(i, j, maxLagBins), 1e-6f);
+
+                if (bins1.size() > 0)
+                {
+                    for (int k = 0; k < expected.length; k++) popTotal[k] += expected[k];
+                    numPairs++;
+                }
+            }
+        }
+
+        float[] pop = matrix.getPopulationCrossCorrelogram(maxLagBins);
+        for (int k = 0; k < pop.length; k++)
+        {
+            assertEquals(popTotal[k] / numPairs, pop[k], 1e-5);
+        }
+    }
+
+    private ArrayList<Integer> getBins(double[] spikes, float binSize, float start, float stop)
+    {
+        ArrayList<Integer> bins = new ArrayList<Integer>();
+        int numBins = (int)Math.ceil((stop - start) / binSize);
+        for (double spike: spikes)
+        {
+            if (spike >= start && spike <= stop)
+                bins.add(Math.min(numBins - 1, (int)Math.floor((spike - start) / binSize)));
+        }
+        return bins;
+    }
+
+    @Test
+    public void testSlidingSynchrony()
+    {
+        System.out.println("---  testSlidingSynchrony...");
+
+        float slideSize = 5;
+        float start = 20;
+        float stop = 80;
+
+        ArrayList<double[]> spikeSets = getSpikeSets(25, 20, 100);
+        // Spikes exactly at the edges of the windows
+        spikeSets.add(new double[]{20, 25, 50.5});
+
+        double[] times = new double[1001];
+        for (int i = 0; i < times.length; i++) times[i] = i * 0.1;
+        times[250] = 25; // exact value
+
+        DataSet sync = SpikeAnalyser.getSlidingSpikeSynchrony(spikeSets, times, slideSize, start, stop);
+
+        int pointIndex = 0;
+        for (double time: times)
+        {
+            if (time >= start && time <= stop)
+            {
+                int numSpikes = 0;
+                for (double[] spikes: spikeSets)
+                {
+                    for (double spike: spikes)
+                    {
+                        if (spike >= time && spike <= time + slideSize) numSpikes++;
+                    }
+                }
+                double[] point = sync.getPoint(pointIndex++);
+                assertEquals(time, point[0], 0);
+                assertEquals(numSpikes, point[1], 0);
+            }
+        }
+        assertEquals(pointIndex, sync.getNumberPoints());
+    }
+
+
+    public static void main(String[] args)
+    {
+        SpikeTrainMatrixTest ct = new SpikeTrainMatrixTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+
+    }
+
+}
@@ -108,13 +108,17 @@ public class MainTest
                 ucl.physiol.neuroconstruct.cell.CellTest.class,
                 ucl.physiol.neuroconstruct.cell.IonPropertiesTest.class,
                 ucl.physiol.neuroconstruct.cell.utils.CellTopologyHelperTest.class,
+                ucl.physiol.neuroconstruct.cell.utils.SegmentSpatialIndexTest.class,
+                ucl.physiol.neuroconstruct.cell.utils.EndpointDistanceCalculatorTest.class,
                 ucl.physiol.neuroconstruct.cell.SegmentTest.class,
                 ucl.physiol.neuroconstruct.cell.converters.MorphMLReaderTest.class,
                 ucl.physiol.neuroconstruct.cell.converters.SWCMorphReaderTest.class,
+                ucl.physiol.neuroconstruct.cell.converters.MorphologyCacheTest.class,
                 ucl.physiol.neuroconstruct.cell.compartmentalisation.GenesisCompartmentalisationTest.class,
                 ucl.physiol.neuroconstruct.dataset.DataSetTest.class,
                 ucl.physiol.neuroconstruct.genesis.GenesisFileManagerTest.class,
                 ucl.physiol.neuroconstruct.genesis.GenesisMorphologyGeneratorTest.class,
+                ucl.physiol.neuroconstruct.j3D.ReplayTargetTest.class,
                 ucl.physiol.neuroconstruct.neuron.NeuronFileManagerTest.class,
                 ucl.physiol.neuroconstruct.neuron.NeuronTemplateGeneratorTest.class,
                 ucl.physiol.neuroconstruct.neuroml.NetworkMLReaderTest.class,
@@ -125,18 +129,27 @@ public class MainTest
                 ucl.physiol.neuroconstruct.project.InputsTest.class,
                 ucl.physiol.neuroconstruct.project.ElecInputGeneratorTest.class,
                 ucl.physiol.neuroconstruct.project.ConnSpecificPropsTest.class,
+                ucl.physiol.neuroconstruct.project.NetConnectionStoreTest.class,
+                ucl.physiol.neuroconstruct.project.GeneratedCellPositionsTest.class,
                 ucl.physiol.neuroconstruct.project.ProjectStructureTest.class,
                 ucl.physiol.neuroconstruct.project.ProjectTest.class,
                 ucl.physiol.neuroconstruct.project.MorphBasedConnGeneratorTest.class,
                 ucl.physiol.neuroconstruct.project.VolumeBasedConnGeneratorTest.class,
                 ucl.physiol.neuroconstruct.project.ExtendedNetworkGeneratorTest.class,
                 ucl.physiol.neuroconstruct.project.SimConfigPriorityTest.class,
+                ucl.physiol.neuroconstruct.project.CellPositionGeneratorTest.class,
+                ucl.physiol.neuroconstruct.project.CompNodeBalancerTest.class,
                 ucl.physiol.neuroconstruct.project.packing.OneDimRegSpacingPackingAdapterTest.class,
+                ucl.physiol.neuroconstruct.project.packing.CellCollisionGridTest.class,
                 ucl.physiol.neuroconstruct.simulation.DataStoreTest.class,
                 ucl.physiol.neuroconstruct.simulation.SimulationDataTest.class,
+                ucl.physiol.neuroconstruct.simulation.SimulationsInfoTest.class,
+                ucl.physiol.neuroconstruct.simulation.BinaryTraceFileTest.class,
                 ucl.physiol.neuroconstruct.simulation.SpikeAnalyserTest.class,
+                ucl.physiol.neuroconstruct.simulation.SpikeTrainMatrixTest.class,
                 ucl.physiol.neuroconstruct.utils.NumberGeneratorTest.class,
-                ucl.physiol.neuroconstruct.utils.equation.ExpressionTest.class/**/);
+                ucl.physiol.neuroconstruct.utils.equation.ExpressionTest.class,
+                ucl.physiol.neuroconstruct.utils.equation.CompiledExpressionTest.class/**/);
 
         /*
         Class[] cl = new Class[]{ucl.physiol.neuroconstruct.cell.VariableParameterTest.class,
@@ -0,0 +1,168 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ * 
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *  
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ */
+
+
+package ucl.physiol.neuroconstruct.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.vecmath.Point3f;
+import ucl.physiol.neuroconstruct.j3D.Utils3D;
+import ucl.physiol.neuroconstruct.project.*;
+import ucl.physiol.neuroconstruct.project.packing.RandomCellPackingAdapter;
+
+/**
+ * Compares the cost of the comments logged in the cell packing and connection generation
+ * loops when logging is off: built eagerly as before, behind ClassLogger.isEnabled(), and
+ * through a Supplier. Generates a network with (by default) 50000 cells in TestNetworkConns,
+ * then logs the same comments as RandomCellPackingAdapter and the conn generators for every
+ * cell position. Not part of MainTest; run with:
+ *
+ *     java ucl.physiol.neuroconstruct.utils.ClassLoggerBenchmark [numCells]
+ *
+ * @author Padraig Gleeson
+ */
+public class ClassLoggerBenchmark
+{
+    private static ClassLogger logger = new ClassLogger("ClassLoggerBenchmark");
+
+    private static final int REPEATS = 5;
+
+    private static long getAllocatedBytes()
+    {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int logEagerly(List<PositionRecord> positions)
+    {
+        int count = 0;
+        for (PositionRecord pos : positions)
+        {
+            Point3f point = pos.getPoint();
+            logger.logComment("Generated a new proposed point: "+ Utils3D.getShortStringDesc(point));
+            logger.logComment("Cell num: "+ pos.cellNumber + " at " + point + ", distance from origin: " + point.distance(new Point3f()));
+            count++;
+        }
+        return count;
+    }
+
+    private static int logIfEnabled(List<PositionRecord> positions)
+    {
+        int count = 0;
+        for (PositionRecord pos : positions)
+        {
+            Point3f point = pos.getPoint();
+            if (logger.isEnabled()) logger.logComment("Generated a new proposed point: "+ Utils3D.getShortStringDesc(point));
+            if (logger.isEnabled()) logger.logComment("Cell num: "+ pos.cellNumber + " at " + point + ", distance from origin: " + point.distance(new Point3f()));
+            count++;
+        }
+        return count;
+    }
+
+    private static int logWithSupplier(List<PositionRecord> positions)
+    {
+        int count = 0;
+        for (final PositionRecord pos : positions)
+        {
+            final Point3f point = pos.getPoint();
+            logger.logComment(() -> "Generated a new proposed point: "+ Utils3D.getShortStringDesc(point));
+            logger.logComment(() -> "Cell num: "+ pos.cellNumber + " at " + point + ", distance from origin: " + point.distance(new Point3f()));
+            count++;
+        }
+        return count;
+    }
+
+    private static void report(String name, List<PositionRecord> positions, int variant)
+    {
+        long bestTime = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+
+        for (int i = 0; i < REPEATS; i++)
+        {
+            long startBytes = getAllocatedBytes();
+            long start = System.nanoTime();
+
+            if (variant == 0) logEagerly(positions);
+            else if (variant == 1) logIfEnabled(positions);
+            else logWithSupplier(positions);
+
+            bestTime = Math.min(bestTime, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, getAllocatedBytes() - startBytes);
+        }
+        System.out.println(String.format("%-28s %10.2f ms  %12.1f kB allocated  (%d cells)",
+                                         name, bestTime / 1e6, bestBytes / 1024.0, positions.size()));
+    }
+
+
+    public static void main(String[] args) throws Exception
+    {
+        int numCells = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+
+        GeneralProperties.setLogFilePrintToScreenPolicy(false);
+        GeneralProperties.setLogFileSaveToFilePolicy(false);
+
+        ProjectManager pm = new ProjectManager();
+        pm.loadProject(ProjectStructure.findProjectFile(new File("testProjects/TestNetworkConns")));
+        Project proj = pm.getCurrentProject();
+
+        String netConn = proj.morphNetworkConnectionsInfo.getNetConnNameAt(2);
+        String src = proj.morphNetworkConnectionsInfo.getSourceCellGroup(netConn);
+        String tgt = proj.morphNetworkConnectionsInfo.getTargetCellGroup(netConn);
+
+        ((RandomCellPackingAdapter)proj.cellGroupsInfo.getCellPackingAdapter(src)).setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, numCells/2);
+        ((RandomCellPackingAdapter)proj.cellGroupsInfo.getCellPackingAdapter(tgt)).setParameter(RandomCellPackingAdapter.CELL_NUMBER_POLICY, numCells - numCells/2);
+
+        NumberGenerator numConns = new NumberGenerator(0);
+        numConns.initialiseAsFixedIntGenerator(2);
+        proj.morphNetworkConnectionsInfo.getConnectivityConditions(netConn).setNumConnsInitiatingCellGroup(numConns);
+
+        System.out.println("Logging enabled: " + logger.isEnabled());
+
+        long start = System.currentTimeMillis();
+        pm.doGenerate("TwoCG", 1234);
+        while (pm.isGenerating())
+        {
+            Thread.sleep(50);
+        }
+        System.out.println("Generated " + proj.generatedCellPositions.getNumberInAllCellGroups() + " cells and "
+                           + proj.generatedNetworkConnections.getNumAllSynConns() + " connections in "
+                           + (System.currentTimeMillis() - start) + " ms\n");
+
+        List<PositionRecord> positions = proj.generatedCellPositions.getAllPositionRecords();
+
+        // Warm up
+        for (int i = 0; i < 3; i++)
+        {
+            logEagerly(positions);
+            logIfEnabled(positions);
+            logWithSupplier(positions);
+        }
+
+        report("Eager String building", positions, 0);
+        report("if (logger.isEnabled())", positions, 1);
+        report("Supplier", positions, 2);
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ *  neuroConstruct
+ *  Software for developing large scale 3D networks of biologically realistic neurons
+ *
+ *  Copyright (c) 2009 Padraig Gleeson
+ *  UCL Department of Neuroscience, Physiology and Pharmacology
+ *
+ *  Development of this software was made possible with funding from the
+ *  Medical Research Council and the Wellcome Trust
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ *
+ */
+
+package ucl.physiol.neuroconstruct.utils.equation;
+
+
+import org.junit.*;
+import org.junit.runner.Result;
+import ucl.physiol.neuroconstruct.test.MainTest;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Padraig Gleeson
+ */
+public class CompiledExpressionTest {
+
+    Variable v = new Variable("v");
+    Variable t = new Variable("t");
+
+    public CompiledExpressionTest() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    @Test
+    public void testEvaluate() throws EquationException
+    {
+        System.out.println("---  testEvaluate...");
+
+        Variable[] vars = new Variable[]{v, t};
+
+        EquationUnit eqn = Expression.parseExpression("0.005 *(exp(-0.05*(v - (-60)))) + t^2 - sqrt(t)/cosh(v)", vars);
+        CompiledExpression ce = eqn.compile(vars);
+
+        assertEquals(2, ce.getNumVariables());
+        assertEquals(0, ce.getSlot("v"));
+        assertEquals(1, ce.getSlot("t"));
+        assertEquals(-1, ce.getSlot("x"));
+
+        for (double vv = -100; vv <= 100; vv = vv + 7.3)
+        {
+            for (double tt = 0; tt <= 10; tt = tt + 1.1)
+            {
+                double expected = 0.005 *(Math.exp(-0.05*(vv - (-60)))) + Math.pow(tt, 2) - Math.sqrt(tt)/Math.cosh(vv);
+
+                assertEquals(expected, ce.evaluate(new double[]{vv, tt}), 0);
+
+                Argument[] args = new Argument[]{new Argument("t", tt), new Argument("v", vv)};
+                assertEquals(expected, eqn.evaluateAt(args), 0);
+            }
+        }
+
+        // Slots in the order given, not the order in the expression
+        CompiledExpression reversed = eqn.compile(new Variable[]{t, v});
+        assertEquals(ce.evaluate(new double[]{3, 5}), reversed.evaluate(new double[]{5, 3}), 0);
+    }
+
+    @Test
+    public void testConstantFolding() throws EquationException
+    {
+        System.out.println("---  testConstantFolding...");
+
+        Variable[] vars = new Variable[]{v};
+
+        CompiledExpression ce = Expression.parseExpression("2^3+ 2 / 2 ^ 2 * 4 - exp(0)", vars).compile(vars);
+        assertTrue(ce.isConstant());
+        assertEquals(9, ce.evaluate(new double[]{0}), 0);
+
+        ce = Expression.parseExpression("v * (100 - H(-1))", vars).compile(vars);
+        assertFalse(ce.isConstant());
+        assertEquals(200, ce.evaluate(new double[]{2}), 0);
+
+        // random() must give a new value each time, so isn't folded
+        ce = Expression.parseExpression("random(1000)", vars).compile(vars);
+        assertFalse(ce.isConstant());
+
+        boolean different = false;
+        double first = ce.evaluate(new double[]{0});
+        for (int i = 0; i < 10 && !different; i++)
+        {
+            different = ce.evaluate(new double[]{0}) != first;
+        }
+        assertTrue(different);
+    }
+
+    @Test
+    public void testErrors() throws EquationException
+    {
+        System.out.println("---  testErrors...");
+
+        Variable[] vars = new Variable[]{v, t};
+        EquationUnit eqn = Expression.parseExpression("v + t", vars);
+
+        try
+        {
+            eqn.compile(new Variable[]{v});
+            fail("Should not compile without t");
+        }
+        catch (EquationException e)
+        {
+            System.out.println("Expected: "+ e.getMessage());
+        }
+
+        try
+        {
+            eqn.evaluateAt(new Argument[]{new Argument("v", 1)});
+            fail("Should not evaluate without t");
+        }
+        catch (EquationException e)
+        {
+            System.out.println("Expected: "+ e.getMessage());
+        }
+
+        // Changing the expression means it's recompiled
+        Constant c = new Constant(2);
+        BinaryOperation bo = new BinaryOperation(v, c, BinaryOperation.PRODUCT);
+        Argument[] args = new Argument[]{new Argument("v", 3)};
+
+        assertEquals(6, bo.evaluateAt(args), 0);
+        bo.setSecond(new Constant(5));
+        assertEquals(15, bo.evaluateAt(args), 0);
+    }
+
+    @Test
+    public void testChildChanged() throws EquationException
+    {
+        System.out.println("---  testChildChanged...");
+
+        // (v * 2) + 1, changing only nodes below the root after the first evaluation
+        Constant c = new Constant(2);
+        BinaryOperation product = new BinaryOperation(v, c, BinaryOperation.PRODUCT);
+        BinaryOperation sum = new BinaryOperation(product, new Constant(1), BinaryOperation.PLUS);
+        Argument[] args = new Argument[]{new Argument("v", 3)};
+
+        assertEquals(7, sum.evaluateAt(args), 0);
+
+        c.setValue(4);
+        assertEquals(13, sum.evaluateAt(args), 0);
+
+        product.setSecond(new Constant(10));
+        assertEquals(31, sum.evaluateAt(args), 0);
+
+        product.setOperation(BinaryOperation.PLUS);
+        assertEquals(14, sum.evaluateAt(args), 0);
+
+        // Same for an explicitly compiled form
+        Variable[] vars = new Variable[]{v};
+        CompiledExpression ce = sum.compile(vars);
+        assertTrue(ce.isCurrent());
+
+        // Changes to units in other expressions don't affect it
+        Constant other = new Constant(1);
+        other.setValue(2);
+        new BinaryOperation(v, other, BinaryOperation.PLUS).setOperation(BinaryOperation.MINUS);
+        assertTrue(ce.isCurrent());
+
+        product.setFirst(new Constant(0));
+        assertFalse(ce.isCurrent());
+        assertEquals(11, sum.evaluateAt(args), 0);
+    }
+
+
+    public static void main(String[] args)
+    {
+        CompiledExpressionTest ct = new CompiledExpressionTest();
+        Result r = org.junit.runner.JUnitCore.runClasses(ct.getClass());
+        MainTest.checkResults(r);
+
+    }
+
+}